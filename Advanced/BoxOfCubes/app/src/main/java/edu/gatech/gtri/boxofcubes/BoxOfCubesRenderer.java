@@ -6,11 +6,14 @@ import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
 import android.os.SystemClock;
 
+import java.io.File;
 import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESBenchmark;
+import edu.gatech.gtri.common.ESCameraPath;
 import edu.gatech.gtri.common.ESShader;
 import edu.gatech.gtri.common.ESShapes;
 import edu.gatech.gtri.common.ESTransform;
@@ -61,8 +64,8 @@ public class BoxOfCubesRenderer implements GLSurfaceView.Renderer
       // Generate the vertex data for a box of cubes
       CreateBoxOfCubes();
 
-      // Starting rotation angle for the cube
-      mAngle = 45.0f;
+      // Start of the fly-around
+      mDistance = 0.0;
 
       // To use alpha transparency
       GLES30.glEnable( GLES30.GL_BLEND );
@@ -107,10 +110,10 @@ public class BoxOfCubesRenderer implements GLSurfaceView.Renderer
    {
       if ( mLastTime == 0 )
       {
-         mLastTime = SystemClock.uptimeMillis();
+         mLastTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       }
 
-      long curTime = SystemClock.uptimeMillis();
+      long curTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       long elapsedTime = curTime - mLastTime;
       float deltaTime = elapsedTime / 1000.0f;
       mLastTime = curTime;
@@ -119,13 +122,9 @@ public class BoxOfCubesRenderer implements GLSurfaceView.Renderer
       ESTransform modelview = new ESTransform();
       float aspect;
 
-      // Compute a rotation angle based on time to rotate the cube
-      mAngle += ( deltaTime * 40.0f );
-
-      if ( mAngle >= 360.0f )
-      {
-         mAngle -= 360.0f;
-      }
+      // Fly around the box at a constant speed
+      mDistance = ( mDistance + deltaTime * CAMERA_SPEED ) % mCameraPath.getLength();
+      mCameraPath.sample ( mDistance, mCamera, 0 );
 
       // Compute the window aspect ratio
       aspect = ( float ) mWidth / ( float ) mHeight;
@@ -134,26 +133,38 @@ public class BoxOfCubesRenderer implements GLSurfaceView.Renderer
       perspective.matrixLoadIdentity();
       perspective.perspective ( 60.0f, aspect, 1.0f, 200.0f );
 
-      // Generate a model view matrix to rotate/translate the cube
-      modelview.matrixLoadIdentity();
-
-      // Translate away from the viewer
-      modelview.translate ( 0.0f, 0.0f, -100.0f );
-
-      // Rotate the cube
-      modelview.rotate ( mAngle, 0.0f, 1.0f, 0.0f );
+      // Generate a model view matrix looking from the eye on the path to
+      // its look-at point
+      modelview.matrixLookAt ( ( float ) mCamera[0], ( float ) mCamera[1], ( float ) mCamera[2],
+                               ( float ) mCamera[3], ( float ) mCamera[4], ( float ) mCamera[5],
+                               0.0f, 1.0f, 0.0f );
 
       // Compute the final MVP by multiplying the
       // modevleiw and perspective matrices together
       mMVPMatrix.matrixMultiply ( modelview.get(), perspective.get() );
    }
 
+   ///
+   //  Run the next frames as a benchmark if frames > 0, see
+   //  ESBenchmark.Session.  Called before the surface is created.
+   //
+   public void startBenchmark ( int frames, File directory )
+   {
+      mBenchmark.start ( frames, directory );
+   }
+
    ///
    // Draw a triangle using the shader pair created in onSurfaceCreated()
    //
    public void onDrawFrame ( GL10 glUnused )
    {
+      mBenchmark.beginFrame();
+
+      mBenchmark.begin ( ESBenchmark.UPDATE );
       update();
+      mBenchmark.end ( ESBenchmark.UPDATE );
+
+      mBenchmark.begin ( ESBenchmark.SUBMIT );
 
       // Set the viewport
       GLES30.glViewport ( 0, 0, mWidth, mHeight );
@@ -169,6 +180,10 @@ public class BoxOfCubesRenderer implements GLSurfaceView.Renderer
 
       // Load the vertex data and draw
       DrawCubes();
+
+      mBenchmark.end ( ESBenchmark.SUBMIT );
+
+      mBenchmark.finishIfDone();
    }
 
    public void DrawCubes()
@@ -205,8 +220,11 @@ public class BoxOfCubesRenderer implements GLSurfaceView.Renderer
    private ESShapes mCube = new ESShapes();
    private ESShapes [] mCubes = new ESShapes[ xLength * yLength * zLength ];
 
-   // Rotation angle
-   private float mAngle;
+   // Camera path, eye and look-at point per key, the distance flown along
+   // it and the current eye and look-at point
+   private final ESCameraPath mCameraPath = new ESCameraPath ( CAMERA_KEYS, 6, ESCameraPath.CATMULL_ROM_CLOSED );
+   private double mDistance;
+   private final double [] mCamera = new double[6];
 
    // MVP matrix
    private ESTransform mMVPMatrix = new ESTransform();
@@ -215,4 +233,22 @@ public class BoxOfCubesRenderer implements GLSurfaceView.Renderer
    private int mWidth;
    private int mHeight;
    private long mLastTime = 0;
+
+   // Benchmark run, if any
+   private final ESBenchmark.Session mBenchmark = new ESBenchmark.Session ( "BoxOfCubes" );
+
+   // Some constants
+   private static final double CAMERA_SPEED = 30.0;
+
+   // A loop around the box, diving close past its back corner; the
+   // look-at point wanders about the center
+   private static final double [] CAMERA_KEYS =
+   {
+       90.0,  30.0,   8.0,    16.0, 16.0,  8.0,
+       40.0,  60.0,  70.0,    16.0, 12.0,  8.0,
+      -40.0,  40.0,  50.0,    12.0, 16.0,  8.0,
+      -60.0,  10.0,  -5.0,    16.0, 16.0,  4.0,
+      -10.0,  -5.0, -25.0,    20.0, 16.0,  8.0,
+       50.0,   0.0, -40.0,    16.0, 20.0,  8.0
+   };
 }
@@ -11,6 +11,8 @@ import android.os.Bundle;
 import android.util.Log;
 import android.widget.LinearLayout;
 
+import edu.gatech.gtri.common.ESBenchmark;
+
 public class GeoMipMap extends AppCompatActivity
 {
     @Override
@@ -28,8 +30,9 @@ public class GeoMipMap extends AppCompatActivity
             // The LinearLayout is used to hold the GL view
             glView = (ConstraintLayout)findViewById(R.id.glView);
 
-            // Create a GLSurfaceView instance
-            mGLSurfaceView = new GeoMipMapView(this);
+            // Create a GLSurfaceView instance, benchmarking with e.g.
+            // am start --ei benchmark 600
+            mGLSurfaceView = new GeoMipMapView(this, getIntent().getIntExtra(ESBenchmark.EXTRA_FRAMES, 0));
 
             // Now add the GLSurfaceView to the layout component
             glView.addView(mGLSurfaceView, 0);
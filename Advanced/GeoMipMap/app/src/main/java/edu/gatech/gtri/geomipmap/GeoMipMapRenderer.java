@@ -8,6 +8,7 @@ import android.opengl.Matrix;
 import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
@@ -15,6 +16,8 @@ import java.nio.FloatBuffer;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESBenchmark;
+import edu.gatech.gtri.common.ESInertia;
 import edu.gatech.gtri.common.ESShader;
 import edu.gatech.gtri.common.ESShapes;
 import edu.gatech.gtri.common.ESTransform;
@@ -72,6 +75,26 @@ public class GeoMipMapRenderer implements GLSurfaceView.Renderer
     //
     public void onDrawFrame ( GL10 glUnused )
     {
+        mBenchmark.beginFrame();
+
+        long time = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
+
+        mBenchmark.begin ( ESBenchmark.UPDATE );
+
+        if ( mBenchmark.isRunning() )
+        {
+            playBenchmarkInput ( time );
+        }
+
+        // Keep turning after a thrown drag
+        if ( mInertia.step ( time / 1000.0, mGlide ) )
+        {
+            rotateCamera ( ( float ) mGlide[0], ( float ) mGlide[1] );
+        }
+
+        mBenchmark.end ( ESBenchmark.UPDATE );
+        mBenchmark.begin ( ESBenchmark.SUBMIT );
+
         // Clear the color buffer
         GLES30.glClear ( GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT );
 
@@ -106,6 +129,14 @@ public class GeoMipMapRenderer implements GLSurfaceView.Renderer
 
         // Draw the cube
         GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mCube.getNumIndices(), GLES30.GL_UNSIGNED_SHORT, mCube.getIndices() );
+
+        mBenchmark.end ( ESBenchmark.SUBMIT );
+
+        // The scripted glide has no clock time to continue from
+        if ( mBenchmark.finishIfDone() )
+        {
+            mInertia.stop();
+        }
     }
 
     ///
@@ -358,12 +389,70 @@ public class GeoMipMapRenderer implements GLSurfaceView.Renderer
         Log.i("GeoMipMapRenderer", "Drag (" + dx + "," + dy + ") tx=" + tx + " ty=" + ty + " tz=" + tz);
     }
 
-    public void singleFingerDrag(float dx, float dy)
+    //
+    // Rotates the camera about the look-at position by a drag of the finger,
+    // and tracks the speed of the drag for the glide after release.
+    //
+    // @param dx, dy The motion of the finger in pixels
+    // @param eventTime The time of the touch event, in uptime milliseconds
+    //
+    public void singleFingerDrag(float dx, float dy, long eventTime)
     {
         checkGLThread("singleFingerDrag");
 
         Log.d("GeoMipMapRenderer", "rotate " + ((float) dx * 0.5f));
 
+        mDragDelta[0] = dx;
+        mDragDelta[1] = dy;
+        mInertia.drag(eventTime / 1000.0, mDragDelta);
+
+        rotateCamera(dx, dy);
+    }
+
+    //
+    // Ends a single finger drag; the rotation glides on and slows down.
+    //
+    public void releaseDrag(long eventTime)
+    {
+        checkGLThread("releaseDrag");
+
+        mInertia.release(eventTime / 1000.0);
+    }
+
+    public void stopGlide()
+    {
+        checkGLThread("stopGlide");
+
+        mInertia.stop();
+    }
+
+    //
+    // Runs the next frames as a benchmark and writes the times of the phases
+    // to a JSON file in directory at the end, if frames > 0.  The frames
+    // have scripted times and the input is a scripted drag, released to
+    // glide, over and over.  Called before the surface is created.
+    //
+    public void startBenchmark(int frames, File directory)
+    {
+        mBenchmark.start(frames, directory);
+    }
+
+    private void playBenchmarkInput(long time)
+    {
+        int frame = mBenchmark.get().getFrame() % kScriptPeriodFrames;
+
+        if (frame < kScriptDragFrames)
+        {
+            singleFingerDrag(kScriptDragDx, kScriptDragDy, time);
+        }
+        else if (frame == kScriptDragFrames)
+        {
+            releaseDrag(time);
+        }
+    }
+
+    private void rotateCamera(float dx, float dy)
+    {
         // Create a matrix that will rotate a point about the look-at position
         float[] mx = new float[16];
         Matrix.setIdentityM(mx, 0);
@@ -409,9 +498,6 @@ public class GeoMipMapRenderer implements GLSurfaceView.Renderer
     private final float[] mProjectionMatrix = new float[16];
     private final float[] mMVPMatrix = new float[16];
 
-    //	Map scale
-    private static final float kAltScale = 1;
-
     //	For perspective calculation
     private float kNearClip = 1.0f;
     private float kFarClip = 20.0f;
@@ -421,6 +507,26 @@ public class GeoMipMapRenderer implements GLSurfaceView.Renderer
     private static final int ROTATE_YAW = 1;
     private static final int ROTATE_ROLL = 2;
 
+    // Inertia of single finger drags, in pixels
+    private final ESInertia mInertia = new ESInertia(2, kGlideTimeConstant, kGlideStopSpeed);
+    private final double[] mDragDelta = new double[2];
+    private final double[] mGlide = new double[2];
+
+    //	Glide after a drag: time to slow down to 1/e, in seconds, and the speed
+    //	in pixels per second under which it stops
+    private static final double kGlideTimeConstant = 0.35;
+    private static final double kGlideStopSpeed = 5.0;
+
+    // Benchmark run, if any
+    private final ESBenchmark.Session mBenchmark = new ESBenchmark.Session("GeoMipMap");
+
+    //	Benchmark frames, and the scripted input: a drag of a number of frames
+    //	at a fixed motion per frame, then a glide until the period ends
+    private static final int kScriptPeriodFrames = 180;
+    private static final int kScriptDragFrames = 30;
+    private static final float kScriptDragDx = 8.0f;
+    private static final float kScriptDragDy = 2.0f;
+
     // Scene camera
     private float sceneCameraPosition[] = {0.0f, 0.0f,-3.0f, 1.0f};
     private float sceneCameraViewPosition[] = {0.0f, 0.0f, 0.0f, 1.0f};
@@ -12,6 +12,15 @@ public class GeoMipMapView extends GLSurfaceView
     private final int CONTEXT_CLIENT_VERSION = 3;
 
     public GeoMipMapView(Context context)
+    {
+        this(context, 0);
+    }
+
+    //
+    // @param benchmarkFrames Frames of a benchmark run written to
+    // ESBenchmark.OUTPUT_FILE, 0 for none
+    //
+    public GeoMipMapView(Context context, int benchmarkFrames)
     {
         super(context);
 
@@ -21,6 +30,9 @@ public class GeoMipMapView extends GLSurfaceView
 
         // Set the Renderer for drawing on the GLSurfaceView
         mRenderer = new GeoMipMapRenderer(getContext());
+
+        mRenderer.startBenchmark(benchmarkFrames, context.getExternalFilesDir(null));
+
         setRenderer(mRenderer);
 
         // A scale detector is a convenient way to detect multiple finger gestures
@@ -55,6 +67,14 @@ public class GeoMipMapView extends GLSurfaceView
                 // Save the ID of this pointer (for dragging)
                 mPrimaryPointerId = e.getPointerId(pointerIndex);
 
+                // A finger on the screen catches the scene if it still glides
+                queueEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        mRenderer.stopGlide();
+                    }
+                });
+
                 break;
             }
             case MotionEvent.ACTION_POINTER_DOWN:
@@ -88,9 +108,18 @@ public class GeoMipMapView extends GLSurfaceView
                 // Check on how many pointers are involved
                 if(e.getPointerCount() > 1)
                 {
-                    // Promote the motion state to Pan/Zoom.
+                    // Promote the motion state to Pan/Zoom, the rotation
+                    // ends without a throw.
                     if(mMotionState == MotionState.Rotate)
+                    {
                         mMotionState = MotionState.PanZoom;
+                        queueEvent(new Runnable() {
+                            @Override
+                            public void run() {
+                                mRenderer.stopGlide();
+                            }
+                        });
+                    }
 
                     // Find the indices of pointers and fetch positions
                     final int primaryPointerIndex = e.findPointerIndex(mPrimaryPointerId);
@@ -186,6 +215,7 @@ public class GeoMipMapView extends GLSurfaceView
                         // Calculate the distance moved
                         final float dx = x - mPreviousX0;
                         final float dy = y - mPreviousY0;
+                        final long eventTime = e.getEventTime();
 
                         invalidate();
 
@@ -197,7 +227,7 @@ public class GeoMipMapView extends GLSurfaceView
                         queueEvent(new Runnable() {
                             @Override
                             public void run() {
-                                mRenderer.singleFingerDrag(dx, dy);
+                                mRenderer.singleFingerDrag(dx, dy, eventTime);
                             }
                         });
                     }
@@ -207,6 +237,18 @@ public class GeoMipMapView extends GLSurfaceView
             }
             case MotionEvent.ACTION_UP:
             {
+                // A rotation keeps going with the speed of the drag
+                if(mMotionState == MotionState.Rotate)
+                {
+                    final long eventTime = e.getEventTime();
+                    queueEvent(new Runnable() {
+                        @Override
+                        public void run() {
+                            mRenderer.releaseDrag(eventTime);
+                        }
+                    });
+                }
+
                 mPrimaryPointerId = INVALID_POINTER_ID;
                 mPreviousX0 = -32768;
                 mPreviousY0 = -32768;
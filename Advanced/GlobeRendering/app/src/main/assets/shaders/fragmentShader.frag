@@ -1,10 +1,93 @@
 #version 300 es
 
-precision mediump float;
+precision highp float;
+precision highp sampler3D;
 in vec2 v_texCoord;
+in vec3 v_toPoint;
 layout(location = 0) out vec4 outColor;
 uniform sampler2D s_texture;
+uniform sampler2D s_transmittance;
+uniform sampler3D s_inScatter;
+uniform vec3 u_eye;
+uniform vec3 u_sun;
+uniform vec2 u_radii;
+uniform float u_exposure;
+
+// Must match ESAtmosphere
+const vec3 RAYLEIGH = vec3 ( 5.8e-3, 13.5e-3, 33.1e-3 );
+const float MIE_G = 0.8;
+const vec2 TRANSMITTANCE_SIZE = vec2 ( 256.0, 64.0 );
+const vec3 SCATTER_SIZE = vec3 ( 128.0, 32.0, 32.0 );
+
+const float PI = 3.14159265;
+const float SUN_INTENSITY = 100.0;
+const float NIGHT_LIGHT = 0.03;
+
+float radiusCoord ( float r )
+{
+  float b = u_radii.x, t = u_radii.y;
+  return sqrt ( clamp ( ( r * r - b * b ) / ( t * t - b * b ), 0.0, 1.0 ) );
+}
+
+vec3 transmittance ( float r, float mu )
+{
+  vec2 u = clamp ( vec2 ( ( mu + 1.0 ) * 0.5, radiusCoord ( r ) ), 0.0, 1.0 );
+  return texture ( s_transmittance, ( u * ( TRANSMITTANCE_SIZE - 1.0 ) + 0.5 ) / TRANSMITTANCE_SIZE ).rgb;
+}
+
+vec4 inScatter ( float r, float mu, float muS )
+{
+  vec3 u = clamp ( vec3 ( ( mu + 1.0 ) * 0.5, ( muS + 0.2 ) / 1.2, radiusCoord ( r ) ), 0.0, 1.0 );
+  return texture ( s_inScatter, ( u * ( SCATTER_SIZE - 1.0 ) + 0.5 ) / SCATTER_SIZE );
+}
+
+// Single scattering with phase functions, Mie rebuilt from its red channel
+vec3 scattered ( vec4 s, float nu )
+{
+  float g2 = MIE_G * MIE_G;
+  float rayleigh = 3.0 / ( 16.0 * PI ) * ( 1.0 + nu * nu );
+  float mie = 3.0 / ( 8.0 * PI ) * ( 1.0 - g2 ) / ( 2.0 + g2 ) * ( 1.0 + nu * nu ) /
+              pow ( 1.0 + g2 - 2.0 * MIE_G * nu, 1.5 );
+  vec3 mieColor = s.rgb * s.a / max ( s.r, 1e-4 ) * ( RAYLEIGH.r / RAYLEIGH );
+
+  return s.rgb * rayleigh + mieColor * mie;
+}
+
 void main()
 {
-  outColor = texture( s_texture, v_texCoord );
+  vec3 albedo = texture ( s_texture, v_texCoord ).rgb;
+  float d = length ( v_toPoint );
+  vec3 v = v_toPoint / d;
+  vec3 x = u_eye;
+  float r = length ( x );
+  float mu = dot ( x, v ) / r;
+
+  // From space, the ray starts where it enters the atmosphere
+  if ( r > u_radii.y )
+  {
+    float t0 = -r * mu - sqrt ( max ( 0.0, r * r * ( mu * mu - 1.0 ) + u_radii.y * u_radii.y ) );
+
+    x += v * t0;
+    d -= t0;
+    r = u_radii.y;
+    mu = dot ( x, v ) / r;
+  }
+
+  vec3 p = x + v * d;
+  float rp = length ( p );
+  float muP = dot ( p, v ) / rp;
+  float muS = dot ( x, u_sun ) / r;
+  float muSP = dot ( p, u_sun ) / rp;
+  float nu = dot ( v, u_sun );
+
+  // Both ends of the segment see the same end of the ray, the ground
+  vec3 viewT = min ( transmittance ( r, mu ) / max ( transmittance ( rp, muP ), 1e-4 ), 1.0 );
+  vec4 s = max ( inScatter ( r, mu, muS ) - viewT.rgbr * inScatter ( rp, muP, muSP ), 0.0 );
+
+  // Sunlit ground, with a little light on the night side
+  vec3 sunlight = transmittance ( rp, muSP ) * max ( muSP, 0.0 );
+  vec3 ground = albedo * ( sunlight / PI + NIGHT_LIGHT / SUN_INTENSITY ) * viewT;
+  vec3 color = SUN_INTENSITY * ( ground + scattered ( s, nu ) );
+
+  outColor = vec4 ( 1.0 - exp ( -u_exposure * color ), 1.0 );
 }
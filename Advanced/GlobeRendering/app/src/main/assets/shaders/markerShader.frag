@@ -0,0 +1,17 @@
+#version 300 es
+
+precision mediump float;
+in float v_count;
+layout(location = 0) out vec4 outColor;
+void main()
+{
+  // Round sprites, single markers red and clusters blue
+  vec2 p = gl_PointCoord * 2.0 - 1.0;
+
+  if ( dot ( p, p ) > 1.0 )
+  {
+    discard;
+  }
+
+  outColor = v_count > 1.0 ? vec4 ( 0.1, 0.3, 1.0, 1.0 ) : vec4 ( 1.0, 0.1, 0.1, 1.0 );
+}
@@ -0,0 +1,17 @@
+#version 300 es
+
+uniform mat4 u_mvpMatrix;
+uniform float u_pointSize;
+uniform float u_logDepth;
+layout(location = 0) in vec4 a_position;
+layout(location = 1) in float a_count;
+out float v_count;
+void main()
+{
+  gl_Position = u_mvpMatrix * a_position;
+  gl_Position.z = ( log2 ( max ( 1e-6, 1.0 + gl_Position.w ) ) * u_logDepth - 1.0 ) * gl_Position.w;
+
+  // Clusters grow with the log of their number of markers
+  gl_PointSize = u_pointSize * ( 1.0 + 0.5 * log2 ( a_count ) );
+  v_count = a_count;
+}
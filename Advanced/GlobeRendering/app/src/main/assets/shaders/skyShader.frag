@@ -0,0 +1,92 @@
+#version 300 es
+
+precision highp float;
+precision highp sampler3D;
+in vec3 v_ray;
+layout(location = 0) out vec4 outColor;
+uniform sampler2D s_transmittance;
+uniform sampler3D s_inScatter;
+uniform vec3 u_eye;
+uniform vec3 u_sun;
+uniform vec2 u_radii;
+uniform float u_exposure;
+
+// Must match ESAtmosphere and fragmentShader.frag
+const vec3 RAYLEIGH = vec3 ( 5.8e-3, 13.5e-3, 33.1e-3 );
+const float MIE_G = 0.8;
+const vec2 TRANSMITTANCE_SIZE = vec2 ( 256.0, 64.0 );
+const vec3 SCATTER_SIZE = vec3 ( 128.0, 32.0, 32.0 );
+
+const float PI = 3.14159265;
+const float SUN_INTENSITY = 100.0;
+
+// Cosine of the angular radius of the sun disc, drawn a little larger
+const float SUN_COS = 0.99996;
+
+float radiusCoord ( float r )
+{
+  float b = u_radii.x, t = u_radii.y;
+  return sqrt ( clamp ( ( r * r - b * b ) / ( t * t - b * b ), 0.0, 1.0 ) );
+}
+
+vec3 transmittance ( float r, float mu )
+{
+  vec2 u = clamp ( vec2 ( ( mu + 1.0 ) * 0.5, radiusCoord ( r ) ), 0.0, 1.0 );
+  return texture ( s_transmittance, ( u * ( TRANSMITTANCE_SIZE - 1.0 ) + 0.5 ) / TRANSMITTANCE_SIZE ).rgb;
+}
+
+vec4 inScatter ( float r, float mu, float muS )
+{
+  vec3 u = clamp ( vec3 ( ( mu + 1.0 ) * 0.5, ( muS + 0.2 ) / 1.2, radiusCoord ( r ) ), 0.0, 1.0 );
+  return texture ( s_inScatter, ( u * ( SCATTER_SIZE - 1.0 ) + 0.5 ) / SCATTER_SIZE );
+}
+
+vec3 scattered ( vec4 s, float nu )
+{
+  float g2 = MIE_G * MIE_G;
+  float rayleigh = 3.0 / ( 16.0 * PI ) * ( 1.0 + nu * nu );
+  float mie = 3.0 / ( 8.0 * PI ) * ( 1.0 - g2 ) / ( 2.0 + g2 ) * ( 1.0 + nu * nu ) /
+              pow ( 1.0 + g2 - 2.0 * MIE_G * nu, 1.5 );
+  vec3 mieColor = s.rgb * s.a / max ( s.r, 1e-4 ) * ( RAYLEIGH.r / RAYLEIGH );
+
+  return s.rgb * rayleigh + mieColor * mie;
+}
+
+void main()
+{
+  vec3 v = normalize ( v_ray );
+  vec3 x = u_eye;
+  float r = length ( x );
+  float mu = dot ( x, v ) / r;
+  float nu = dot ( v, u_sun );
+  vec3 color = vec3 ( 0.0 );
+
+  // From space, start where the ray enters the atmosphere, if it does
+  if ( r > u_radii.y )
+  {
+    float disc = r * r * ( mu * mu - 1.0 ) + u_radii.y * u_radii.y;
+    float t0 = -r * mu - sqrt ( max ( 0.0, disc ) );
+
+    if ( disc < 0.0 || t0 < 0.0 )
+    {
+      outColor = vec4 ( 0.0, 0.0, 0.0, 1.0 );
+      return;
+    }
+
+    x += v * t0;
+    r = u_radii.y;
+    mu = dot ( x, v ) / r;
+  }
+
+  color = SUN_INTENSITY * scattered ( inScatter ( r, mu, dot ( x, u_sun ) / r ), nu );
+
+  // The sun disc, unless the ground hides it
+  float groundDisc = r * r * ( mu * mu - 1.0 ) + u_radii.x * u_radii.x;
+
+  if ( nu > SUN_COS && ( mu > 0.0 || groundDisc < 0.0 ) )
+  {
+    color += SUN_INTENSITY * transmittance ( r, mu );
+  }
+
+  outColor = vec4 ( 1.0 - exp ( -u_exposure * color ), 1.0 );
+}
@@ -0,0 +1,14 @@
+#version 300 es
+
+uniform mat3 u_rays;
+layout(location = 0) in vec2 a_position;
+out vec3 v_ray;
+void main()
+{
+  // A triangle covering the screen, behind everything
+  gl_Position = vec4 ( a_position, 1.0, 1.0 );
+
+  // View ray through the pixel: right and up scaled by the field of view,
+  // plus forward
+  v_ray = u_rays * vec3 ( a_position, 1.0 );
+}
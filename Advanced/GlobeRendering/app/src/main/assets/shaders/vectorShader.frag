@@ -0,0 +1,9 @@
+#version 300 es
+
+precision mediump float;
+uniform vec4 u_color;
+layout(location = 0) out vec4 outColor;
+void main()
+{
+  outColor = u_color;
+}
@@ -0,0 +1,31 @@
+#version 300 es
+
+uniform mat4 u_mvpMatrix;
+uniform vec2 u_viewport;
+uniform float u_width;
+uniform float u_logDepth;
+layout(location = 0) in vec4 a_position;
+layout(location = 1) in vec3 a_other;
+layout(location = 2) in float a_side;
+void main()
+{
+  gl_Position = u_mvpMatrix * a_position;
+
+  // Lines: move the vertex across the segment by half the width in pixels.
+  // Fills have a side of 0 and stay in place.
+  if ( a_side != 0.0 )
+  {
+    vec4 other = u_mvpMatrix * vec4 ( a_other, 1.0 );
+    vec2 dir = ( other.xy / other.w - gl_Position.xy / gl_Position.w ) * u_viewport;
+    float len = length ( dir );
+
+    if ( len > 0.0 )
+    {
+      vec2 normal = vec2 ( -dir.y, dir.x ) / len;
+      gl_Position.xy += normal * a_side * u_width / u_viewport * gl_Position.w;
+    }
+  }
+
+  // Logarithmic depth, as for the tiles
+  gl_Position.z = ( log2 ( max ( 1e-6, 1.0 + gl_Position.w ) ) * u_logDepth - 1.0 ) * gl_Position.w;
+}
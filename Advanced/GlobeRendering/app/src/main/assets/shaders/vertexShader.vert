@@ -1,11 +1,21 @@
 #version 300 es
 
 uniform mat4 u_mvpMatrix;
+uniform vec4 u_texTransform;
+uniform float u_logDepth;
+uniform vec3 u_tileOffset;
 layout(location = 0) in vec4 a_position;
 layout(location = 1) in vec2 a_texCoord;
 out vec2 v_texCoord;
+out vec3 v_toPoint;
 void main()
 {
   gl_Position = u_mvpMatrix * a_position;
-  v_texCoord = a_texCoord;
-}
\ No newline at end of file
+  // Logarithmic depth, a_position is relative to the eye and w is the distance
+  gl_Position.z = ( log2 ( max ( 1e-6, 1.0 + gl_Position.w ) ) * u_logDepth - 1.0 ) * gl_Position.w;
+  v_texCoord = a_texCoord * u_texTransform.xy + u_texTransform.zw;
+
+  // From the eye to the vertex, for the atmosphere; u_tileOffset is the
+  // tile center relative to the eye
+  v_toPoint = a_position.xyz + u_tileOffset;
+}
@@ -0,0 +1,201 @@
+package edu.gatech.gtri.globerendering;
+
+import edu.gatech.gtri.common.ESFlyTo;
+import edu.gatech.gtri.common.ESGeodesy;
+import edu.gatech.gtri.common.ESRelativeToEye;
+import edu.gatech.gtri.common.ESTransform;
+
+///
+//  Camera of the globe: a tour of the cities by fly-to, the zoom, the sun
+//  and the matrices of a frame.  It has no GL calls, so benchmarks can run
+//  it without a display; the time is passed in, from the clock or from a
+//  benchmark script.
+//
+public class GlobeCamera
+{
+   // WGS84 radii in km, vertical field of view, and the cities of the tour
+   public static final double RADIUS_A = 6378.137;
+   public static final double RADIUS_B = 6356.752314245;
+   public static final float FOVY = 60.0f;
+   public static final double [][] CITIES = { { -74.0, 40.7 }, { 2.35, 48.85 }, { 139.7, 35.7 }, { -43.2, -22.9 }, { 28.0, -26.2 } };
+
+   ///
+   //  Start the tour over from its first city at the initial altitude
+   //
+   public void reset()
+   {
+      mFlight = null;
+      mNextCity = 0;
+      mAltitude = START_ALTITUDE;
+   }
+
+   ///
+   //  Change the camera altitude by a factor
+   //
+   public void zoom ( float factor )
+   {
+      mAltitude = Math.max ( MIN_ALTITUDE, Math.min ( MAX_ALTITUDE, mAltitude * factor ) );
+   }
+
+   ///
+   //  Move the camera and the sun to a time and compute the matrices
+   //  of a viewport
+   //
+   public void update ( long timeMillis, int width, int height )
+   {
+      ESTransform perspective = new ESTransform();
+      ESTransform view = new ESTransform();
+      float aspect, farZ;
+      double eyeDistance, horizonDistance;
+
+      // Tour the cities: fly to the next one, stay a while, go on
+      if ( mFlight == null || timeMillis - mFlightStart >= ( mFlight.getDuration() + STAY_SECONDS ) * 1000.0 )
+      {
+         startFlight ( timeMillis );
+      }
+
+      // The flight rises above the zoomed altitude
+      mFlight.sample ( ( timeMillis - mFlightStart ) / 1000.0, mEyeLonLatHeight, 0 );
+      mEyeLonLatHeight[2] += mAltitude;
+
+      // Eye position in double precision, it never enters a float matrix
+      ESGeodesy.WGS84_KM.geodeticToEcef ( mEyeLonLatHeight[0], mEyeLonLatHeight[1], mEyeLonLatHeight[2], mEye, 0 );
+
+      // Nothing beyond the horizon is visible, and the ground is at least
+      // the altitude away
+      eyeDistance = Math.sqrt ( mEye[0] * mEye[0] + mEye[1] * mEye[1] + mEye[2] * mEye[2] );
+      horizonDistance = Math.sqrt ( eyeDistance * eyeDistance - RADIUS_B * RADIUS_B );
+
+      farZ = ( float ) ( horizonDistance * 1.05 + 1.0 );
+
+      // Compute the window aspect ratio
+      aspect = ( float ) width / ( float ) height;
+
+      // Generate a perspective matrix with a 60 degree FOV.  The depth is
+      // logarithmic, so a 1 m near plane costs no precision in the distance.
+      perspective.matrixLoadIdentity();
+      perspective.perspective ( FOVY, aspect, NEAR_Z, farZ, ESTransform.DEPTH_LOGARITHMIC );
+      mLogDepthFactor = ESTransform.logDepthFactor ( farZ );
+
+      // Look down at the center of the Earth.  The view holds the rotation
+      // only, each tile adds its offset from the eye.
+      view.matrixLookAt ( 0.0f, 0.0f, 0.0f,
+                          ( float ) -mEye[0], ( float ) -mEye[1], ( float ) -mEye[2],
+                          0.0f, 0.0f, 1.0f );
+
+      mViewProj.matrixMultiply ( view.get(), perspective.get() );
+
+      // Culling has its own matrix: with a near plane a millionth of the
+      // far one, the far plane of a float matrix cancels out to nonsense
+      perspective.matrixLoadIdentity();
+      perspective.perspective ( FOVY, aspect, Math.max ( NEAR_Z, farZ * CULL_NEAR_RATIO ), farZ );
+      mCullViewProj.matrixMultiply ( view.get(), perspective.get() );
+
+      // Rays of the sky through the corners of the screen, the same frame
+      // as the view
+      setSkyRays ( aspect );
+
+      // One day per DAY_SECONDS, the sun circling at a fixed declination
+      double sunLon = -2.0 * Math.PI * ( timeMillis / 1000.0 ) / DAY_SECONDS;
+      double sunLat = Math.toRadians ( SUN_DECLINATION );
+
+      mSun[0] = ( float ) ( Math.cos ( sunLat ) * Math.cos ( sunLon ) );
+      mSun[1] = ( float ) ( Math.cos ( sunLat ) * Math.sin ( sunLon ) );
+      mSun[2] = ( float ) Math.sin ( sunLat );
+
+      mRelativeToEye.setEye ( mEye[0], mEye[1], mEye[2] );
+      mRelativeToEye.setViewProjection ( mViewProj.get() );
+   }
+
+   public double [] getEye() { return mEye; }
+   public double [] getEyeLonLatHeight() { return mEyeLonLatHeight; }
+   public float [] getViewProjection() { return mViewProj.get(); }
+   public float [] getCullViewProjection() { return mCullViewProj.get(); }
+   public ESRelativeToEye getRelativeToEye() { return mRelativeToEye; }
+   public float getLogDepthFactor() { return mLogDepthFactor; }
+   public float [] getSun() { return mSun; }
+   public float [] getRays() { return mRays; }
+
+   ///
+   //  Plan the flight from where the eye is to the next city of the tour
+   //
+   private void startFlight ( long time )
+   {
+      double [] city = CITIES[mNextCity];
+      double lon = mFlight == null ? city[0] - 60.0 : mEyeLonLatHeight[0];
+      double lat = mFlight == null ? 20.0 : mEyeLonLatHeight[1];
+      double distance = ESGeodesy.centralAngle ( lon, lat, city[0], city[1] ) * RADIUS_B;
+
+      mFlight = new ESFlyTo ( lon, lat, 0.0, city[0], city[1], 0.0, RADIUS_B,
+                              FLIGHT_SECONDS + FLIGHT_SECONDS * distance / RADIUS_B );
+      mFlightStart = time;
+      mNextCity = ( mNextCity + 1 ) % CITIES.length;
+   }
+
+   ///
+   //  Columns of mRays: right and up scaled to the edges of the screen, and
+   //  forward, towards the center of the Earth with Z up like the view
+   //
+   private void setSkyRays ( float aspect )
+   {
+      double length = Math.sqrt ( mEye[0] * mEye[0] + mEye[1] * mEye[1] + mEye[2] * mEye[2] );
+      double fx = -mEye[0] / length, fy = -mEye[1] / length, fz = -mEye[2] / length;
+
+      // right = forward x Z, undefined right over a pole like the view
+      double rl = Math.max ( 1e-9, Math.sqrt ( fx * fx + fy * fy ) );
+      double rx = fy / rl, ry = -fx / rl, rz = 0.0;
+
+      // up = right x forward
+      double ux = ry * fz - rz * fy, uy = rz * fx - rx * fz, uz = rx * fy - ry * fx;
+      double tanY = Math.tan ( Math.toRadians ( FOVY / 2.0 ) );
+      double tanX = tanY * aspect;
+
+      mRays[0] = ( float ) ( rx * tanX );
+      mRays[1] = ( float ) ( ry * tanX );
+      mRays[2] = ( float ) ( rz * tanX );
+      mRays[3] = ( float ) ( ux * tanY );
+      mRays[4] = ( float ) ( uy * tanY );
+      mRays[5] = ( float ) ( uz * tanY );
+      mRays[6] = ( float ) fx;
+      mRays[7] = ( float ) fy;
+      mRays[8] = ( float ) fz;
+   }
+
+   // Flight of the city tour, its start time and the next city
+   private ESFlyTo mFlight;
+   private long mFlightStart;
+   private int mNextCity;
+
+   // Longitude, latitude and height of the eye
+   private final double [] mEyeLonLatHeight = new double[3];
+
+   // Eye altitude above the ellipsoid in km
+   private double mAltitude = START_ALTITUDE;
+
+   // Eye position, Earth-centered Earth-fixed
+   private final double [] mEye = new double[3];
+
+   // View-projection matrices relative to the eye, for drawing and for
+   // culling, and the per tile MVP computation
+   private final ESTransform mViewProj = new ESTransform();
+   private final ESTransform mCullViewProj = new ESTransform();
+   private final ESRelativeToEye mRelativeToEye = new ESRelativeToEye();
+
+   // Scale of the logarithmic depth
+   private float mLogDepthFactor;
+
+   // Direction to the sun, and the sky ray matrix
+   private final float [] mSun = new float[3];
+   private final float [] mRays = new float[9];
+
+   // Some constants
+   private static final float NEAR_Z = 0.001f;
+   private static final float CULL_NEAR_RATIO = 1e-4f;
+   private static final double START_ALTITUDE = 12756.0;
+   private static final double MIN_ALTITUDE = 1.0;
+   private static final double MAX_ALTITUDE = 40000.0;
+   private static final double FLIGHT_SECONDS = 4.0;
+   private static final double STAY_SECONDS = 3.0;
+   private static final double DAY_SECONDS = 120.0;
+   private static final double SUN_DECLINATION = 15.0;
+}
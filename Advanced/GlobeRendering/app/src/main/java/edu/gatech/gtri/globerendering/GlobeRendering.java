@@ -8,6 +8,10 @@ import android.content.pm.ConfigurationInfo;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+import edu.gatech.gtri.common.ESBenchmark;
 
 public class GlobeRendering extends AppCompatActivity
 {
@@ -24,7 +28,40 @@ public class GlobeRendering extends AppCompatActivity
          // Tell the surface view we want to create an OpenGL ES 3.0-compatible
          // context, and set an OpenGL ES 3.0-compatible renderer.
          mGLSurfaceView.setEGLContextClientVersion ( CONTEXT_CLIENT_VERSION );
-         mGLSurfaceView.setRenderer ( new GlobeRenderingRenderer ( this ) );
+
+         // 24-bit depth for the logarithmic depth of the globe
+         mGLSurfaceView.setEGLConfigChooser ( 8, 8, 8, 8, 24, 0 );
+         mRenderer = new GlobeRenderingRenderer ( this );
+
+         // Benchmark mode, e.g. am start --ei benchmark 600: the frames run
+         // at scripted times and the phase times go to ESBenchmark.OUTPUT_FILE
+         mRenderer.startBenchmark ( getIntent().getIntExtra ( ESBenchmark.EXTRA_FRAMES, 0 ), getExternalFilesDir ( null ) );
+
+         mGLSurfaceView.setRenderer ( mRenderer );
+
+         // Drag up to descend towards the ground, down to climb
+         mGLSurfaceView.setOnTouchListener ( new View.OnTouchListener()
+         {
+            @Override
+            public boolean onTouch ( View v, MotionEvent e )
+            {
+               if ( e.getActionMasked() == MotionEvent.ACTION_MOVE )
+               {
+                  final float factor = ( float ) Math.exp ( 4.0 * ( e.getY() - mLastY ) / v.getHeight() );
+
+                  mGLSurfaceView.queueEvent ( new Runnable()
+                  {
+                     public void run()
+                     {
+                        mRenderer.zoom ( factor );
+                     }
+                  } );
+               }
+
+               mLastY = e.getY();
+               return true;
+            }
+         } );
       }
       else
       {
@@ -61,4 +98,6 @@ public class GlobeRendering extends AppCompatActivity
    }
 
    private GLSurfaceView mGLSurfaceView;
+   private GlobeRenderingRenderer mRenderer;
+   private float mLastY;
 }
\ No newline at end of file
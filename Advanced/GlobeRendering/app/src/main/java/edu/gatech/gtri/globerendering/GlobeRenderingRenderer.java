@@ -1,22 +1,45 @@
 package edu.gatech.gtri.globerendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.os.SystemClock;
+import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESAtmosphere;
+import edu.gatech.gtri.common.ESBenchmark;
+import edu.gatech.gtri.common.ESGeneratedCache;
+import edu.gatech.gtri.common.ESGeodesy;
+import edu.gatech.gtri.common.ESGlobeQuadtree;
+import edu.gatech.gtri.common.ESMarkerClusterer;
+import edu.gatech.gtri.common.ESMarkerLayer;
+import edu.gatech.gtri.common.ESRandom;
+import edu.gatech.gtri.common.ESRingBuffer;
+import edu.gatech.gtri.common.ESRelativeToEye;
 import edu.gatech.gtri.common.ESShader;
 import edu.gatech.gtri.common.ESShapes;
-import edu.gatech.gtri.common.ESTransform;
+import edu.gatech.gtri.common.ESTextureCache;
+import edu.gatech.gtri.common.ESTextureLoader;
+import edu.gatech.gtri.common.ESVectorLayer;
 
 public class GlobeRenderingRenderer implements GLSurfaceView.Renderer
 {
@@ -29,37 +52,496 @@ public class GlobeRenderingRenderer implements GLSurfaceView.Renderer
    }
 
    ///
-   //  Load texture from asset
+   //  Vertex buffer of one tile, positions relative to the tile center
    //
-   private void loadTextureFromAsset ( )
+   private static class TileMesh
    {
-      textureId[0] = 0;
-      Bitmap bitmap;
-      InputStream is;
+      int vbo;
+      int numVertices;
+      final double [] center = new double[3];
+   }
+
+   ///
+   //  Create the vertex buffer of a tile
+   //
+   private TileMesh createTileMesh ( int level, int x, int y )
+   {
+      ESShapes shape = new ESShapes();
+      TileMesh mesh = new TileMesh();
+      int [] vbo = new int[1];
+      double spacing = Math.toRadians ( 180.0 / ( 1 << level ) ) / ( TILE_GRID - 1 );
+
+      // Skirts hide the cracks against coarser neighbours, which are at most
+      // a few times the chord sagitta of this level
+      float skirtDepth = ( float ) ( RADIUS_A * spacing * spacing + 0.001 );
+
+      ESGlobeQuadtree.getTileExtent ( level, x, y, mExtent );
+      shape.genGeodeticTile ( TILE_GRID, ESGeodesy.WGS84_KM,
+                              mExtent[0], mExtent[1], mExtent[2], mExtent[3],
+                              skirtDepth, mesh.center );
+
+      mesh.numVertices = shape.getVertices().capacity() / 3;
+
+      GLES30.glGenBuffers ( 1, vbo, 0 );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, vbo[0] );
+      GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, mesh.numVertices * 5 * 4, null, GLES30.GL_STATIC_DRAW );
+      GLES30.glBufferSubData ( GLES30.GL_ARRAY_BUFFER, 0, mesh.numVertices * 3 * 4, shape.getVertices() );
+      GLES30.glBufferSubData ( GLES30.GL_ARRAY_BUFFER, mesh.numVertices * 3 * 4, mesh.numVertices * 2 * 4,
+                               shape.getTexCoords() );
+      mesh.vbo = vbo[0];
+
+      // All tiles share the index buffer
+      if ( mIndexBuffer[0] == 0 )
+      {
+         GLES30.glGenBuffers ( 1, mIndexBuffer, 0 );
+         GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer[0] );
+         GLES30.glBufferData ( GLES30.GL_ELEMENT_ARRAY_BUFFER, shape.getNumIndices() * 2,
+                               shape.getIndices(), GLES30.GL_STATIC_DRAW );
+         mNumIndices = shape.getNumIndices();
+      }
+
+      return mesh;
+   }
+
+   ///
+   //  Deepest level of the disk pyramid that has the tile or one of its
+   //  ancestors
+   //
+   private int findTextureLevel ( int level, int x, int y )
+   {
+      for ( int l = Math.min ( level, mTilePyramid.getMaxLevel() ); l > 0; l-- )
+      {
+         if ( mTilePyramid.hasTile ( l, x >> ( level - l ), y >> ( level - l ) ) )
+         {
+            return l;
+         }
+      }
+
+      return 0;
+   }
+
+   ///
+   //  Find the texture for a tile, starting at textureLevel.  While the
+   //  texture is not resident the deepest resident ancestor is used, with
+   //  mTexTransform set to the part of the ancestor that covers the tile.
+   //
+   private int findTileTexture ( int level, int x, int y, int textureLevel )
+   {
+      for ( int l = textureLevel; l >= 0; l-- )
+      {
+         int shift = level - l;
+         int ax = x >> shift;
+         int ay = y >> shift;
+         int texture = mTextureCache.peek ( mTilePyramid.getTilePath ( l, ax, ay ) );
+
+         if ( texture != 0 )
+         {
+            float scale = 1.0f / ( 1 << shift );
+
+            mTexTransform[0] = scale;
+            mTexTransform[1] = scale;
+            mTexTransform[2] = ( x - ( ax << shift ) ) * scale;
+            mTexTransform[3] = ( y - ( ay << shift ) ) * scale;
+            return texture;
+         }
+      }
+
+      return 0;
+   }
+
+   ///
+   //  Hold a texture reference for a tile this frame.  References that are
+   //  not renewed are released at the end of the frame.
+   //
+   private void holdTexture ( String key )
+   {
+      ESTextureCache.Entry entry = mHeldTextures.remove ( key );
+
+      if ( entry == null )
+      {
+         entry = mFrameTextures.get ( key );
+      }
+
+      if ( entry == null )
+      {
+         entry = mTextureCache.acquire ( key );
+      }
+
+      mFrameTextures.put ( key, entry );
+   }
+
+   ///
+   //  Load the overlay from files/overlay.esvl (see ESVectorLayer.write()),
+   //  or make a graticule with a sample polygon if there is none
+   //
+   private ESVectorLayer createOverlay()
+   {
+      File file = new File ( mContext.getFilesDir(), "overlay.esvl" );
+      ESVectorLayer layer = null;
+
+      if ( file.exists() )
+      {
+         try
+         {
+            InputStream is = new BufferedInputStream ( new FileInputStream ( file ) );
+
+            try
+            {
+               layer = ESVectorLayer.read ( is );
+            }
+            finally
+            {
+               is.close();
+            }
+         }
+         catch ( IOException ioe )
+         {
+            layer = null;
+         }
+      }
+
+      if ( layer == null )
+      {
+         layer = new ESVectorLayer();
+
+         // Meridians and parallels every 15 degrees
+         for ( int lon = -180; lon < 180; lon += 15 )
+         {
+            layer.addPolyline ( new double [] { lon, -75.0, lon, 75.0 }, 2 );
+         }
+
+         for ( int lat = -75; lat <= 75; lat += 15 )
+         {
+            layer.addPolyline ( new double [] { -180.0, lat, -90.0, lat, 0.0, lat, 90.0, lat, 180.0, lat }, 5 );
+         }
+
+         // A region with a hole
+         layer.addPolygon ( new double [] { -110.0, 30.0, -90.0, 30.0, -90.0, 45.0, -100.0, 50.0, -110.0, 45.0,
+                                            -104.0, 36.0, -96.0, 36.0, -96.0, 42.0, -104.0, 42.0 },
+                            new int [] { 5 }, 9 );
+      }
+
+      // Drape on the ellipsoid, slightly above the tiles
+      layer.setMaxSegmentAngle ( OVERLAY_SEGMENT_ANGLE );
+      layer.build ( ESVectorLayer.globeProjection ( ESGeodesy.WGS84_KM, OVERLAY_HEIGHT ), ForkJoinPool.commonPool() );
+
+      return layer;
+   }
+
+   ///
+   //  Copy the overlay batches to vertex buffers
+   //
+   private void uploadOverlay()
+   {
+      GLES30.glGenBuffers ( 4, mOverlayBuffers, 0 );
+
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mOverlayBuffers[0] );
+      GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, mOverlay.getNumFillVertices() * 3 * 4,
+                            mOverlay.getFillVertices(), GLES30.GL_STATIC_DRAW );
+      GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mOverlayBuffers[1] );
+      GLES30.glBufferData ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mOverlay.getNumFillIndices() * 4,
+                            mOverlay.getFillIndices(), GLES30.GL_STATIC_DRAW );
+
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mOverlayBuffers[2] );
+      GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, mOverlay.getNumLineVertices() * ESVectorLayer.LINE_VERTEX_FLOATS * 4,
+                            mOverlay.getLineVertices(), GLES30.GL_STATIC_DRAW );
+      GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mOverlayBuffers[3] );
+      GLES30.glBufferData ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mOverlay.getNumLineIndices() * 4,
+                            mOverlay.getLineIndices(), GLES30.GL_STATIC_DRAW );
+
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
+      GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, 0 );
+   }
+
+   ///
+   //  Draw the overlay fills, then the lines on top, in one call each
+   //
+   private void drawOverlay()
+   {
+      double [] center = mOverlay.getCenter();
+      int stride = ESVectorLayer.LINE_VERTEX_FLOATS * 4;
+
+      mRelativeToEye.computeMvp ( center[0], center[1], center[2], mTileMvp );
+
+      GLES30.glUseProgram ( mVectorProgram );
+      GLES30.glUniformMatrix4fv ( vectorMvpLoc, 1, false, mTileMvp, 0 );
+      GLES30.glUniform2f ( viewportLoc, mWidth, mHeight );
+      GLES30.glUniform1f ( vectorLogDepthLoc, mCamera.getLogDepthFactor() );
+
+      // Lines are seen from both sides and fills are translucent
+      GLES30.glDisable ( GLES30.GL_CULL_FACE );
+      GLES30.glEnable ( GLES30.GL_BLEND );
+      GLES30.glBlendFunc ( GLES30.GL_SRC_ALPHA, GLES30.GL_ONE_MINUS_SRC_ALPHA );
+      GLES30.glDepthMask ( false );
+
+      // Fills have no other end and no side
+      GLES30.glDisableVertexAttribArray ( 1 );
+      GLES30.glDisableVertexAttribArray ( 2 );
+      GLES30.glVertexAttrib3f ( 1, 0.0f, 0.0f, 0.0f );
+      GLES30.glVertexAttrib1f ( 2, 0.0f );
+
+      GLES30.glUniform4f ( colorLoc, 1.0f, 0.5f, 0.0f, 0.4f );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mOverlayBuffers[0] );
+      GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mOverlayBuffers[1] );
+      GLES30.glVertexAttribPointer ( 0, 3, GLES30.GL_FLOAT, false, 0, 0 );
+      GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mOverlay.getNumFillIndices(), GLES30.GL_UNSIGNED_INT, 0 );
+
+      GLES30.glEnableVertexAttribArray ( 1 );
+      GLES30.glEnableVertexAttribArray ( 2 );
+
+      GLES30.glUniform4f ( colorLoc, 1.0f, 1.0f, 0.0f, 0.8f );
+      GLES30.glUniform1f ( widthLoc, LINE_WIDTH );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mOverlayBuffers[2] );
+      GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mOverlayBuffers[3] );
+      GLES30.glVertexAttribPointer ( 0, 3, GLES30.GL_FLOAT, false, stride, 0 );
+      GLES30.glVertexAttribPointer ( 1, 3, GLES30.GL_FLOAT, false, stride, 3 * 4 );
+      GLES30.glVertexAttribPointer ( 2, 1, GLES30.GL_FLOAT, false, stride, 6 * 4 );
+      GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mOverlay.getNumLineIndices(), GLES30.GL_UNSIGNED_INT, 0 );
+
+      GLES30.glDisableVertexAttribArray ( 2 );
+      GLES30.glDepthMask ( true );
+      GLES30.glDisable ( GLES30.GL_BLEND );
+      GLES30.glEnable ( GLES30.GL_CULL_FACE );
+   }
+
+   ///
+   //  Read the atmosphere tables from the generated cache, or generate
+   //  them on all cores and cache them there for the next start.  The key
+   //  holds the radii and the coefficients, and blobs of an earlier app
+   //  version are generated again, so tables of another integrator are
+   //  never read.
+   //
+   private ESAtmosphere loadAtmosphere()
+   {
+      final ESAtmosphere atmosphere = new ESAtmosphere ( RADIUS_B, RADIUS_B + ATMOSPHERE_HEIGHT );
+      ESGeneratedCache cache = ESTextureLoader.generatedCache ( mContext );
+
+      // Tables of earlier versions, never evicted from the files directory
+      new File ( mContext.getFilesDir(), "atmosphere.lut" ).delete();
+
+      ByteBuffer tables = cache.get ( atmosphere.getCacheKey(), ESAtmosphere.TABLES_SIZE, false, new ESGeneratedCache.Generator()
+      {
+         @Override
+         public void generate ( ByteBuffer out )
+         {
+            atmosphere.generate ( ForkJoinPool.commonPool() );
+            atmosphere.writeTables ( out );
+         }
+      } );
+
+      if ( !atmosphere.isGenerated() )
+      {
+         atmosphere.readTables ( tables );
+      }
+
+      return atmosphere;
+   }
+
+   ///
+   //  Copy the atmosphere tables to a 2D and a 3D half float texture
+   //
+   private void uploadAtmosphere()
+   {
+      GLES30.glGenTextures ( 2, mAtmosphereTextures, 0 );
+
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, mAtmosphereTextures[0] );
+      GLES30.glTexImage2D ( GLES30.GL_TEXTURE_2D, 0, GLES30.GL_RGB16F,
+                            ESAtmosphere.TRANSMITTANCE_MU, ESAtmosphere.TRANSMITTANCE_R, 0,
+                            GLES30.GL_RGB, GLES30.GL_FLOAT, mAtmosphere.getTransmittance() );
+      setTableParameters ( GLES30.GL_TEXTURE_2D );
+
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, mAtmosphereTextures[1] );
+      GLES30.glTexImage3D ( GLES30.GL_TEXTURE_3D, 0, GLES30.GL_RGBA16F,
+                            ESAtmosphere.SCATTER_MU, ESAtmosphere.SCATTER_MU_S, ESAtmosphere.SCATTER_R, 0,
+                            GLES30.GL_RGBA, GLES30.GL_FLOAT, mAtmosphere.getInScatter() );
+      setTableParameters ( GLES30.GL_TEXTURE_3D );
+
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, 0 );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, 0 );
+   }
+
+   private static void setTableParameters ( int target )
+   {
+      GLES30.glTexParameteri ( target, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR );
+      GLES30.glTexParameteri ( target, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
+      GLES30.glTexParameteri ( target, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_CLAMP_TO_EDGE );
+      GLES30.glTexParameteri ( target, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_CLAMP_TO_EDGE );
+      GLES30.glTexParameteri ( target, GLES30.GL_TEXTURE_WRAP_R, GLES30.GL_CLAMP_TO_EDGE );
+   }
+
+   ///
+   //  Bind the atmosphere tables to units 1 and 2 and set the uniforms the
+   //  globe and sky programs share
+   //
+   private void setAtmosphereUniforms ( int transmittanceLoc, int inScatterLoc, int eyeLoc, int sunLoc,
+                                        int radiiLoc, int exposureLoc )
+   {
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE1 );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, mAtmosphereTextures[0] );
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE2 );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, mAtmosphereTextures[1] );
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE0 );
+
+      GLES30.glUniform1i ( transmittanceLoc, 1 );
+      GLES30.glUniform1i ( inScatterLoc, 2 );
+      GLES30.glUniform3f ( eyeLoc, ( float ) mEye[0], ( float ) mEye[1], ( float ) mEye[2] );
+      GLES30.glUniform3fv ( sunLoc, 1, mSun, 0 );
+      GLES30.glUniform2f ( radiiLoc, ( float ) mAtmosphere.getBottomRadius(), ( float ) mAtmosphere.getTopRadius() );
+      GLES30.glUniform1f ( exposureLoc, EXPOSURE );
+   }
+
+   ///
+   //  Fill the screen with the sky, behind the globe
+   //
+   private void drawSky()
+   {
+      GLES30.glUseProgram ( mSkyProgram );
+      setAtmosphereUniforms ( skyTransmittanceLoc, skyInScatterLoc, skyEyeLoc, skySunLoc, skyRadiiLoc, skyExposureLoc );
+      GLES30.glUniformMatrix3fv ( raysLoc, 1, false, mRays, 0 );
+
+      GLES30.glDisable ( GLES30.GL_DEPTH_TEST );
+      GLES30.glDepthMask ( false );
+
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mSkyBuffer[0] );
+      GLES30.glEnableVertexAttribArray ( 0 );
+      GLES30.glVertexAttribPointer ( 0, 2, GLES30.GL_FLOAT, false, 0, 0 );
+      GLES30.glDrawArrays ( GLES30.GL_TRIANGLES, 0, 3 );
+
+      GLES30.glDepthMask ( true );
+      GLES30.glEnable ( GLES30.GL_DEPTH_TEST );
+   }
+
+   ///
+   //  Scatter markers over the land masses, more around a few cities, and
+   //  start the thread that clusters them
+   //
+   private void createMarkers()
+   {
+      ESMarkerLayer layer = new ESMarkerLayer ( NUM_MARKERS );
+      ESRandom random = ESRandom.create ( 1 );
 
-      try
+      for ( int i = 0; i < NUM_MARKERS; i++ )
       {
-         is = mContext.getAssets().open ("textures/worldtopo1024x1024.png");
+         double [] city = GlobeCamera.CITIES[i % GlobeCamera.CITIES.length];
+         double lon = city[0] + 8.0 * random.nextGaussian();
+         double lat = Math.max ( -89.0, Math.min ( 89.0, city[1] + 5.0 * random.nextGaussian() ) );
+
+         layer.add ( lon > 180.0 ? lon - 360.0 : ( lon < -180.0 ? lon + 360.0 : lon ), lat );
       }
-      catch ( IOException ioe )
+
+      for ( int i = 0; i < NUM_MOVING_MARKERS; i++ )
       {
-         is = null;
+         mMovingIds[i] = i;
       }
 
-      if ( is == null )
+      ExecutorService worker = Executors.newSingleThreadExecutor ( new ThreadFactory()
+      {
+         public Thread newThread ( Runnable r )
+         {
+            Thread thread = new Thread ( r, "Marker clustering" );
+            thread.setDaemon ( true );
+            return thread;
+         }
+      } );
+
+      mClusterer = new ESMarkerClusterer ( layer, ESVectorLayer.globeProjection ( ESGeodesy.WGS84_KM, 0.0 ), worker );
+   }
+
+   ///
+   //  Move the first markers and ask for the clusters of the current view
+   //
+   private void requestMarkers ( float time )
+   {
+      double viewDegrees = Math.toDegrees ( mEyeLonLatHeight[2] * Math.tan ( Math.toRadians ( FOVY ) ) / RADIUS_B );
+      double halfLat = Math.min ( 90.0, viewDegrees );
+      double halfLon = halfLat / Math.max ( 0.05, Math.cos ( Math.toRadians ( mEyeLonLatHeight[1] ) ) );
+      int zoom = ( int ) Math.max ( 0.0, Math.min ( 20.0, Math.log ( 45.0 * MARKER_CLUSTERS_ACROSS / viewDegrees ) / Math.log ( 2.0 ) ) );
+      double west = mEyeLonLatHeight[0] - halfLon;
+      double east = mEyeLonLatHeight[0] + halfLon;
+
+      // Markers circling their start positions
+      for ( int i = 0; i < NUM_MOVING_MARKERS; i++ )
+      {
+         mMovingLonLat[i * 2] = -74.0 + 10.0 * Math.cos ( time * 0.1 + i );
+         mMovingLonLat[i * 2 + 1] = 40.7 + 5.0 * Math.sin ( time * 0.1 + i );
+      }
+
+      mClusterer.update ( mMovingIds, mMovingLonLat, NUM_MOVING_MARKERS );
+
+      if ( halfLon >= 180.0 )
+      {
+         west = -180.0;
+         east = 180.0;
+      }
+      else
+      {
+         west = west < -180.0 ? west + 360.0 : west;
+         east = east > 180.0 ? east - 360.0 : east;
+      }
+
+      mClusterer.request ( zoom, west, Math.max ( -90.0, mEyeLonLatHeight[1] - halfLat ), east,
+                           Math.min ( 90.0, mEyeLonLatHeight[1] + halfLat ) );
+   }
+
+   ///
+   //  Stream the newest clusters into the ring buffer and draw them as
+   //  point sprites
+   //
+   private void drawMarkers()
+   {
+      ESMarkerClusterer.Result result = mClusterer.poll();
+
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mMarkerBuffer[0] );
+
+      if ( result != null )
       {
-         return;
+         int count = Math.min ( result.getNumClusters(), mMarkerRing.getCapacity() );
+         int first = count > 0 ? mMarkerRing.allocate ( count ) : -1;
+
+         // Without room, keep drawing the previous clusters
+         if ( first >= 0 )
+         {
+            int stride = ESMarkerClusterer.VERTEX_FLOATS * 4;
+            FloatBuffer vertices = result.getVertices();
+
+            // The ring fenced off the frames that drew this range, no need to wait
+            FloatBuffer mapped = ( ( ByteBuffer ) GLES30.glMapBufferRange ( GLES30.GL_ARRAY_BUFFER,
+               first * stride, count * stride,
+               GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_RANGE_BIT | GLES30.GL_MAP_UNSYNCHRONIZED_BIT )
+            ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+
+            vertices.position ( 0 ).limit ( count * ESMarkerClusterer.VERTEX_FLOATS );
+            mapped.put ( vertices );
+            GLES30.glUnmapBuffer ( GLES30.GL_ARRAY_BUFFER );
+
+            mMarkerFirst = first;
+            mMarkerCount = count;
+            System.arraycopy ( result.getCenter(), 0, mMarkerCenter, 0, 3 );
+         }
+         else if ( count == 0 )
+         {
+            mMarkerCount = 0;
+         }
+
+         mClusterer.recycle ( result );
       }
 
-      bitmap = BitmapFactory.decodeStream ( is );
+      if ( mMarkerCount > 0 )
+      {
+         mRelativeToEye.computeMvp ( mMarkerCenter[0], mMarkerCenter[1], mMarkerCenter[2], mTileMvp );
 
-      GLES30.glGenTextures ( 1, textureId, 0 );
-      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
+         GLES30.glUseProgram ( mMarkerProgram );
+         GLES30.glUniformMatrix4fv ( markerMvpLoc, 1, false, mTileMvp, 0 );
+         GLES30.glUniform1f ( pointSizeLoc, MARKER_SIZE );
+         GLES30.glUniform1f ( markerLogDepthLoc, mCamera.getLogDepthFactor() );
 
-      GLUtils.texImage2D ( GLES30.GL_TEXTURE_2D, 0, bitmap, 0 );
+         GLES30.glEnableVertexAttribArray ( 1 );
+         GLES30.glVertexAttribPointer ( 0, 3, GLES30.GL_FLOAT, false, ESMarkerClusterer.VERTEX_FLOATS * 4, 0 );
+         GLES30.glVertexAttribPointer ( 1, 1, GLES30.GL_FLOAT, false, ESMarkerClusterer.VERTEX_FLOATS * 4, 3 * 4 );
+         GLES30.glDrawArrays ( GLES30.GL_POINTS, mMarkerFirst, mMarkerCount );
+      }
 
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
+      mMarkerRing.endFrame();
    }
 
    ///
@@ -74,64 +556,169 @@ public class GlobeRenderingRenderer implements GLSurfaceView.Renderer
 
       // Get the uniform locations
       mvpLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_mvpMatrix" );
+      texTransformLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_texTransform" );
+      logDepthLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_logDepth" );
 
       // Get the sampler location
       samplerLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_texture" );
 
-      // Load the heightmap texture images from 'assets'
-      loadTextureFromAsset ();
-
-      // Generate the position and indices of a globe
-      // Earth radius 6378 km
-      mGlobe.genSphere ( 250, 6378.0f );
-
-      // Clear color
-      GLES30.glClearColor( 1.0f, 1.0f, 1.0f, 0.0f );
-   }
-
-   private void update()
-   {
-      if ( mLastTime == 0 )
+      // Atmosphere of the globe
+      tileOffsetLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_tileOffset" );
+      transmittanceLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_transmittance" );
+      inScatterLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_inScatter" );
+      eyeLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_eye" );
+      sunLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_sun" );
+      radiiLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_radii" );
+      exposureLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_exposure" );
+
+      // Program of the sky
+      mSkyProgram = ESShader.loadProgramFromAsset ( mContext,
+         "shaders/skyShader.vert",
+         "shaders/skyShader.frag");
+
+      raysLoc = GLES30.glGetUniformLocation ( mSkyProgram, "u_rays" );
+      skyTransmittanceLoc = GLES30.glGetUniformLocation ( mSkyProgram, "s_transmittance" );
+      skyInScatterLoc = GLES30.glGetUniformLocation ( mSkyProgram, "s_inScatter" );
+      skyEyeLoc = GLES30.glGetUniformLocation ( mSkyProgram, "u_eye" );
+      skySunLoc = GLES30.glGetUniformLocation ( mSkyProgram, "u_sun" );
+      skyRadiiLoc = GLES30.glGetUniformLocation ( mSkyProgram, "u_radii" );
+      skyExposureLoc = GLES30.glGetUniformLocation ( mSkyProgram, "u_exposure" );
+
+      // The tables are generated or read once, their textures again for
+      // each context
+      if ( mAtmosphere == null )
       {
-         mLastTime = SystemClock.uptimeMillis();
+         mAtmosphere = loadAtmosphere();
       }
 
-      long curTime = SystemClock.uptimeMillis();
-      long elapsedTime = curTime - mLastTime;
-      float deltaTime = elapsedTime / 2000.0f;
-      mLastTime = curTime;
-
-      ESTransform perspective = new ESTransform();
-      ESTransform modelview = new ESTransform();
-      float aspect;
+      uploadAtmosphere();
+
+      // A single triangle covers the screen
+      GLES30.glGenBuffers ( 1, mSkyBuffer, 0 );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mSkyBuffer[0] );
+      GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, SKY_TRIANGLE.length * 4,
+                            ByteBuffer.allocateDirect ( SKY_TRIANGLE.length * 4 ).order ( ByteOrder.nativeOrder() )
+                               .asFloatBuffer().put ( SKY_TRIANGLE ).position ( 0 ), GLES30.GL_STATIC_DRAW );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
+
+      // Program of the vector overlay
+      mVectorProgram = ESShader.loadProgramFromAsset ( mContext,
+         "shaders/vectorShader.vert",
+         "shaders/vectorShader.frag");
+
+      vectorMvpLoc = GLES30.glGetUniformLocation ( mVectorProgram, "u_mvpMatrix" );
+      viewportLoc = GLES30.glGetUniformLocation ( mVectorProgram, "u_viewport" );
+      widthLoc = GLES30.glGetUniformLocation ( mVectorProgram, "u_width" );
+      vectorLogDepthLoc = GLES30.glGetUniformLocation ( mVectorProgram, "u_logDepth" );
+      colorLoc = GLES30.glGetUniformLocation ( mVectorProgram, "u_color" );
+
+      // Program of the markers
+      mMarkerProgram = ESShader.loadProgramFromAsset ( mContext,
+         "shaders/markerShader.vert",
+         "shaders/markerShader.frag");
+
+      markerMvpLoc = GLES30.glGetUniformLocation ( mMarkerProgram, "u_mvpMatrix" );
+      pointSizeLoc = GLES30.glGetUniformLocation ( mMarkerProgram, "u_pointSize" );
+      markerLogDepthLoc = GLES30.glGetUniformLocation ( mMarkerProgram, "u_logDepth" );
+
+      // The first levels of the tile pyramid are cut from the bundled image,
+      // deeper levels can be added to the same directory
+      mTilePyramid = new GlobeTilePyramid ( new File ( mContext.getFilesDir(), "tiles" ) );
+      mTilePyramid.buildFromAsset ( mContext, "textures/worldtopo1024x1024.png", BASE_LEVELS, TILE_SIZE );
+
+      // GL objects did not survive the loss of the context
+      mMeshes.clear();
+      mIndexBuffer[0] = 0;
+
+      // The overlay is tessellated once, its buffers again for each context
+      if ( mOverlay == null )
+      {
+         mOverlay = createOverlay();
+      }
 
-      // Compute a rotation angle based on time to rotate the cube
-      mAngle += ( deltaTime * 40.0f );
+      uploadOverlay();
 
-      if ( mAngle >= 360.0f )
+      if ( mClusterer == null )
       {
-         mAngle -= 360.0f;
+         createMarkers();
       }
 
-      // Compute the window aspect ratio
-      aspect = ( float ) mWidth / ( float ) mHeight;
-
-      // Generate a perspective matrix with a 60 degree FOV
-      perspective.matrixLoadIdentity();
-      perspective.perspective ( 60.0f, aspect, 1.0f, 12756.0f );
+      // The marker ring buffer is allocated once, and filled as clusters
+      // arrive
+      GLES30.glGenBuffers ( 1, mMarkerBuffer, 0 );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mMarkerBuffer[0] );
+      GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, MARKER_RING_SIZE * ESMarkerClusterer.VERTEX_FLOATS * 4,
+                            null, GLES30.GL_STREAM_DRAW );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
+      mMarkerRing = new ESRingBuffer ( MARKER_RING_SIZE, FRAMES_IN_FLIGHT, new ESRingBuffer.Fences()
+      {
+         public long insert()
+         {
+            return GLES30.glFenceSync ( GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0 );
+         }
+
+         public void clientWait ( long fence )
+         {
+            // Normally already signaled, the frames in flight are the slack
+            while ( GLES30.glClientWaitSync ( fence, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOS )
+                    == GLES30.GL_TIMEOUT_EXPIRED )
+            {
+               Log.w ( "GlobeRendering", "Waiting for the GPU to release marker vertices" );
+            }
+         }
+
+         public void delete ( long fence )
+         {
+            GLES30.glDeleteSync ( fence );
+         }
+      } );
+      mMarkerCount = 0;
+
+      if ( mTextureCache == null )
+      {
+         mTextureCache = new ESTextureCache ( mTilePyramid.getDecoder(), ESTextureLoader.backend ( true ),
+                                              TEXTURE_BUDGET, ESTextureCache.newDecodePool ( DECODE_THREADS ) );
+
+         // The level 0 tiles are the fallback of every tile and stay resident
+         for ( int x = 0; x < 2; x++ )
+         {
+            mTextureCache.acquireNow ( mTilePyramid.getTilePath ( 0, x, 0 ) );
+         }
+      }
+      else
+      {
+         mTextureCache.invalidate();
+      }
 
-      // Generate a model view matrix to rotate/translate the cube
-      modelview.matrixLoadIdentity();
+      // Clear color
+      GLES30.glClearColor( 1.0f, 1.0f, 1.0f, 0.0f );
+   }
 
-      // Translate away from the viewer
-      modelview.translate ( 0.0f, 0.0f, -12756.0f );
+   ///
+   //  Change the camera altitude by a factor, called on the GL thread
+   //
+   public void zoom ( float factor )
+   {
+      mCamera.zoom ( factor );
+   }
 
-      // Rotate the cube
-      modelview.rotate ( mAngle, 0.0f, -1.0f, 0.0f );
+   ///
+   //  Run the next frames as a benchmark if frames > 0, see
+   //  ESBenchmark.Session.  Called before the surface is created.
+   //
+   public void startBenchmark ( int frames, File directory )
+   {
+      // Every run starts the tour over
+      if ( mBenchmark.start ( frames, directory ) )
+      {
+         mCamera.reset();
+      }
+   }
 
-      // Compute the final MVP by multiplying the
-      // modevleiw and perspective matrices together
-      mvpMatrix.matrixMultiply ( modelview.get(), perspective.get() );
+   private void update()
+   {
+      mTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
+      mCamera.update ( mTime, mWidth, mHeight );
    }
 
    ///
@@ -139,40 +726,109 @@ public class GlobeRenderingRenderer implements GLSurfaceView.Renderer
    //
    public void onDrawFrame ( GL10 glUnused )
    {
+      mBenchmark.beginFrame();
+
+      mBenchmark.begin ( ESBenchmark.UPDATE );
       update();
+      mBenchmark.end ( ESBenchmark.UPDATE );
+
+      mBenchmark.begin ( ESBenchmark.CULLING );
+      mQuadtree.select ( mEye[0], mEye[1], mEye[2], mCamera.getCullViewProjection(), mHeight, FOVY );
+      requestMarkers ( mTime / 1000.0f );
+      mBenchmark.end ( ESBenchmark.CULLING );
+
+      mBenchmark.begin ( ESBenchmark.SUBMIT );
 
       // Set the view-port
       GLES30.glViewport ( 0, 0, mWidth, mHeight );
 
-      // Clear the color buffer
-      GLES30.glClear ( GLES30.GL_COLOR_BUFFER_BIT );
+      // Clear the color and depth buffers
+      GLES30.glClear ( GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT );
+
+      drawSky();
 
-      GLES30.glCullFace ( GLES30.GL_FRONT );
+      GLES30.glEnable ( GLES30.GL_DEPTH_TEST );
+      GLES30.glCullFace ( GLES30.GL_BACK );
       GLES30.glEnable ( GLES30.GL_CULL_FACE );
 
       // Use the program object
       GLES30.glUseProgram ( mProgramObject );
 
-      // Load the vertex position
-      GLES30.glVertexAttribPointer ( 0, 3, GLES30.GL_FLOAT, false, 0, mGlobe.getVertices() );
-      GLES30.glEnableVertexAttribArray ( 0 );
+      // The ground is lit through the atmosphere tables
+      setAtmosphereUniforms ( transmittanceLoc, inScatterLoc, eyeLoc, sunLoc, radiiLoc, exposureLoc );
+
+      // Set the texture sampler to texture unit to 0
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE0 );
+      GLES30.glUniform1i ( samplerLoc, 0 );
+      GLES30.glUniform1f ( logDepthLoc, mCamera.getLogDepthFactor() );
 
-      // Load the texture coordinate
-      GLES30.glVertexAttribPointer ( 1, 2, GLES30.GL_FLOAT, false, 0, mGlobe.getTexCoords() );
+      GLES30.glEnableVertexAttribArray ( 0 );
       GLES30.glEnableVertexAttribArray ( 1 );
 
-      // Bind the texture
-      GLES30.glActiveTexture ( GLES30.GL_TEXTURE0 );
-      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
+      for ( int i = 0; i < mQuadtree.getNumSelected(); i++ )
+      {
+         int level = mQuadtree.getSelectedLevel ( i );
+         int x = mQuadtree.getSelectedX ( i );
+         int y = mQuadtree.getSelectedY ( i );
+         long key = GlobeTilePyramid.tileKey ( level, x, y );
+         TileMesh mesh = mMeshes.get ( key );
 
-      // Load the MVP matrix
-      GLES30.glUniformMatrix4fv ( mvpLoc, 1, false, mvpMatrix.getAsFloatBuffer() );
+         if ( mesh == null )
+         {
+            mesh = createTileMesh ( level, x, y );
+            mMeshes.put ( key, mesh );
+         }
 
-      // Set the texture sampler to texture unit to 0
-      GLES30.glUniform1i ( samplerLoc, 0 );
+         // The tile center is subtracted from the eye in double precision
+         mRelativeToEye.computeMvp ( mesh.center[0], mesh.center[1], mesh.center[2], mTileMvp );
 
-      // Draw the globe
-      GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mGlobe.getNumIndices(), GLES30.GL_UNSIGNED_SHORT, mGlobe.getIndices() );
+         int textureLevel = findTextureLevel ( level, x, y );
+         int shift = level - textureLevel;
+
+         holdTexture ( mTilePyramid.getTilePath ( textureLevel, x >> shift, y >> shift ) );
+         GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, findTileTexture ( level, x, y, textureLevel ) );
+
+         GLES30.glUniformMatrix4fv ( mvpLoc, 1, false, mTileMvp, 0 );
+         GLES30.glUniform4fv ( texTransformLoc, 1, mTexTransform, 0 );
+         GLES30.glUniform3f ( tileOffsetLoc, ( float ) ( mesh.center[0] - mEye[0] ),
+                              ( float ) ( mesh.center[1] - mEye[1] ), ( float ) ( mesh.center[2] - mEye[2] ) );
+
+         GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mesh.vbo );
+         GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mIndexBuffer[0] );
+
+         // Load the vertex position and texture coordinate
+         GLES30.glVertexAttribPointer ( 0, 3, GLES30.GL_FLOAT, false, 0, 0 );
+         GLES30.glVertexAttribPointer ( 1, 2, GLES30.GL_FLOAT, false, 0, mesh.numVertices * 3 * 4 );
+
+         // Draw the tile
+         GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mNumIndices, GLES30.GL_UNSIGNED_SHORT, 0 );
+      }
+
+      drawOverlay();
+      drawMarkers();
+
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
+      GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, 0 );
+      mBenchmark.end ( ESBenchmark.SUBMIT );
+
+      mBenchmark.begin ( ESBenchmark.UPLOAD );
+
+      // Release the textures of tiles that left the view
+      for ( ESTextureCache.Entry entry : mHeldTextures.values() )
+      {
+         mTextureCache.release ( entry );
+      }
+
+      HashMap<String, ESTextureCache.Entry> held = mHeldTextures;
+      mHeldTextures = mFrameTextures;
+      mFrameTextures = held;
+      mFrameTextures.clear();
+
+      // Upload decoded tiles for a slice of the frame time, then evict
+      mTextureCache.processUploads ( UPLOAD_SLICE_NANOS );
+      mBenchmark.end ( ESBenchmark.UPLOAD );
+
+      mBenchmark.finishIfDone();
    }
 
    ///
@@ -189,21 +845,117 @@ public class GlobeRenderingRenderer implements GLSurfaceView.Renderer
 
    // Uniform locations
    private int mvpLoc;
+   private int texTransformLoc;
+   private int logDepthLoc;
 
    // Sampler location
    private int samplerLoc;
 
-   // Texture handle
-   private final int [] textureId = new int[1];
+   // Atmosphere uniform locations of the globe program
+   private int tileOffsetLoc;
+   private int transmittanceLoc;
+   private int inScatterLoc;
+   private int eyeLoc;
+   private int sunLoc;
+   private int radiiLoc;
+   private int exposureLoc;
+
+   // Sky program and uniform locations
+   private int mSkyProgram;
+   private int raysLoc;
+   private int skyTransmittanceLoc;
+   private int skyInScatterLoc;
+   private int skyEyeLoc;
+   private int skySunLoc;
+   private int skyRadiiLoc;
+   private int skyExposureLoc;
+
+   // Atmosphere tables, their transmittance and in-scatter textures, and
+   // the vertex buffer of the sky triangle
+   private ESAtmosphere mAtmosphere;
+   private final int [] mAtmosphereTextures = new int[2];
+   private final int [] mSkyBuffer = new int[1];
+
+   // Vector overlay program and uniform locations
+   private int mVectorProgram;
+   private int vectorMvpLoc;
+   private int viewportLoc;
+   private int widthLoc;
+   private int vectorLogDepthLoc;
+   private int colorLoc;
+
+   // Vector overlay and its fill and line vertex and index buffers
+   private ESVectorLayer mOverlay;
+   private final int [] mOverlayBuffers = new int[4];
+
+   // Marker program and uniform locations
+   private int mMarkerProgram;
+   private int markerMvpLoc;
+   private int pointSizeLoc;
+   private int markerLogDepthLoc;
+
+   // Markers, clustered on a worker thread and streamed through a ring
+   // buffer; the clusters drawn are mMarkerCount vertices from mMarkerFirst
+   private ESMarkerClusterer mClusterer;
+   private ESRingBuffer mMarkerRing;
+   private final int [] mMarkerBuffer = new int[1];
+   private int mMarkerFirst;
+   private int mMarkerCount;
+   private final double [] mMarkerCenter = new double[3];
+   private final int [] mMovingIds = new int[NUM_MOVING_MARKERS];
+   private final double [] mMovingLonLat = new double[NUM_MOVING_MARKERS * 2];
+
+   // Tile selection over the WGS84 ellipsoid, in km
+   private final ESGlobeQuadtree mQuadtree = new ESGlobeQuadtree ( RADIUS_A, RADIUS_B, TILE_SIZE, MAX_LEVEL );
+
+   // Texture tiles on disk
+   private GlobeTilePyramid mTilePyramid;
+
+   // Resident tile meshes, least recently drawn first
+   private final LinkedHashMap<Long, TileMesh> mMeshes = new LinkedHashMap<Long, TileMesh> ( 16, 0.75f, true )
+   {
+      @Override
+      protected boolean removeEldestEntry ( Map.Entry<Long, TileMesh> eldest )
+      {
+         if ( size() > MAX_MESHES )
+         {
+            GLES30.glDeleteBuffers ( 1, new int [] { eldest.getValue().vbo }, 0 );
+            return true;
+         }
+
+         return false;
+      }
+   };
+
+   // Tile textures, and the references held for the last and current frame
+   private ESTextureCache mTextureCache;
+   private HashMap<String, ESTextureCache.Entry> mHeldTextures = new HashMap<String, ESTextureCache.Entry>();
+   private HashMap<String, ESTextureCache.Entry> mFrameTextures = new HashMap<String, ESTextureCache.Entry>();
+
+   // Index buffer shared by all tiles
+   private final int [] mIndexBuffer = new int[1];
+   private int mNumIndices;
 
-   // Vertex data
-   private final ESShapes mGlobe = new ESShapes();
+   // Scale and offset of the tile in its texture
+   private final float [] mTexTransform = new float[4];
 
-   // Rotation angle
-   private float mAngle;
+   // Scratch tile extent
+   private final double [] mExtent = new double[4];
 
-   // MVP matrix
-   private final ESTransform mvpMatrix = new ESTransform();
+   // City tour, eye and matrices of the frame, and its time
+   private final GlobeCamera mCamera = new GlobeCamera();
+   private final double [] mEye = mCamera.getEye();
+   private final double [] mEyeLonLatHeight = mCamera.getEyeLonLatHeight();
+   private final ESRelativeToEye mRelativeToEye = mCamera.getRelativeToEye();
+   private final float [] mSun = mCamera.getSun();
+   private final float [] mRays = mCamera.getRays();
+   private long mTime;
+
+   // Per tile MVP
+   private final float [] mTileMvp = new float[16];
+
+   // Benchmark run, if any
+   private final ESBenchmark.Session mBenchmark = new ESBenchmark.Session ( "GlobeRendering" );
 
    // Additional member variables
    private int mWidth;
@@ -211,6 +963,29 @@ public class GlobeRenderingRenderer implements GLSurfaceView.Renderer
 
    private final Context mContext;
 
-   // Additional member variables
-   private long mLastTime = 0;
+   // Some constants
+   private static final double RADIUS_A = GlobeCamera.RADIUS_A;
+   private static final double RADIUS_B = GlobeCamera.RADIUS_B;
+   private static final int TILE_SIZE = 256;
+   private static final int TILE_GRID = 33;
+   private static final int MAX_LEVEL = 18;
+   private static final int BASE_LEVELS = 2;
+   private static final int MAX_MESHES = 512;
+   private static final long TEXTURE_BUDGET = 64L * 1024 * 1024;
+   private static final int DECODE_THREADS = 2;
+   private static final long UPLOAD_SLICE_NANOS = 2000000L;
+   private static final float FOVY = GlobeCamera.FOVY;
+   private static final double OVERLAY_SEGMENT_ANGLE = 0.5;
+   private static final double OVERLAY_HEIGHT = 0.5;
+   private static final float LINE_WIDTH = 3.0f;
+   private static final int NUM_MARKERS = 1000000;
+   private static final int NUM_MOVING_MARKERS = 1000;
+   private static final int MARKER_CLUSTERS_ACROSS = 24;
+   private static final int MARKER_RING_SIZE = 1 << 18;
+   private static final int FRAMES_IN_FLIGHT = 3;
+   private static final long FENCE_TIMEOUT_NANOS = 100000000L;
+   private static final float MARKER_SIZE = 6.0f;
+   private static final double ATMOSPHERE_HEIGHT = 60.0;
+   private static final float EXPOSURE = 0.4f;
+   private static final float [] SKY_TRIANGLE = { -1.0f, -1.0f, 3.0f, -1.0f, -1.0f, 3.0f };
 }
@@ -0,0 +1,218 @@
+package edu.gatech.gtri.globerendering;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+
+import edu.gatech.gtri.common.ESTextureCache;
+import edu.gatech.gtri.common.ESTextureLoader;
+import edu.gatech.gtri.common.ESTileArchive;
+
+///
+//  Geographic texture tile pyramid stored on disk as <root>/<level>/<x>/<y>.png,
+//  laid out as in ESGlobeQuadtree.  Present and missing tiles are remembered
+//  so that the file system is only asked once per tile.
+//
+//  If <root>.esta exists, e.g. built offline by TileBuilder, the tiles are
+//  read from that archive instead.
+//
+public class GlobeTilePyramid
+{
+   public GlobeTilePyramid ( File root )
+   {
+      File archive = new File ( root.getPath() + ".esta" );
+
+      mRoot = root;
+
+      if ( archive.exists() )
+      {
+         try
+         {
+            mArchive = new ESTileArchive ( archive );
+            mMaxLevel = mArchive.getNumLevels() - 1;
+            return;
+         }
+         catch ( IOException ioe )
+         {
+            Log.e ( "GlobeRendering", "Failed to open " + archive + ": " + ioe.getMessage() );
+         }
+      }
+
+      scanLevels();
+   }
+
+   ///
+   //  Decoder of the texture cache for the keys returned by getTilePath()
+   //
+   public ESTextureCache.Decoder getDecoder()
+   {
+      return ( mArchive != null ) ? ESTextureLoader.archiveDecoder ( mArchive ) : ESTextureLoader.fileDecoder();
+   }
+
+   ///
+   //  Cut the first levels of the pyramid out of an equirectangular image
+   //  asset, unless they already exist
+   //
+   public void buildFromAsset ( Context context, String assetName, int levels, int tileSize )
+   {
+      File marker = new File ( mRoot, ".complete" );
+
+      if ( mArchive != null || marker.exists() )
+      {
+         return;
+      }
+
+      Bitmap source;
+
+      try
+      {
+         InputStream is = context.getAssets().open ( assetName );
+         source = BitmapFactory.decodeStream ( is );
+         is.close();
+      }
+      catch ( IOException ioe )
+      {
+         Log.e ( "GlobeRendering", "Failed to open " + assetName + ": " + ioe.getMessage() );
+         return;
+      }
+
+      try
+      {
+         for ( int level = 0; level < levels; level++ )
+         {
+            int tilesX = 2 << level;
+            int tilesY = 1 << level;
+            Bitmap scaled = Bitmap.createScaledBitmap ( source, tilesX * tileSize, tilesY * tileSize, true );
+
+            for ( int y = 0; y < tilesY; y++ )
+            {
+               for ( int x = 0; x < tilesX; x++ )
+               {
+                  Bitmap tile = Bitmap.createBitmap ( scaled, x * tileSize, y * tileSize, tileSize, tileSize );
+                  File file = getTileFile ( level, x, y );
+
+                  file.getParentFile().mkdirs();
+                  OutputStream os = new FileOutputStream ( file );
+                  tile.compress ( Bitmap.CompressFormat.PNG, 100, os );
+                  os.close();
+                  tile.recycle();
+               }
+            }
+
+            scaled.recycle();
+         }
+
+         marker.createNewFile();
+      }
+      catch ( IOException ioe )
+      {
+         Log.e ( "GlobeRendering", "Failed to build tile pyramid: " + ioe.getMessage() );
+      }
+
+      source.recycle();
+      scanLevels();
+   }
+
+   public boolean hasTile ( int level, int x, int y )
+   {
+      if ( level > mMaxLevel )
+      {
+         return false;
+      }
+
+      if ( mArchive != null )
+      {
+         return mArchive.hasTile ( level, x, y );
+      }
+
+      long key = tileKey ( level, x, y );
+
+      if ( mPresent.contains ( key ) )
+      {
+         return true;
+      }
+
+      if ( mMissing.contains ( key ) )
+      {
+         return false;
+      }
+
+      if ( !getTileFile ( level, x, y ).exists() )
+      {
+         mMissing.add ( key );
+         return false;
+      }
+
+      mPresent.add ( key );
+      return true;
+   }
+
+   ///
+   //  Path of a tile image, the key of its texture
+   //
+   public String getTilePath ( int level, int x, int y )
+   {
+      if ( mArchive != null )
+      {
+         return level + "/" + x + "/" + y;
+      }
+
+      return getTileFile ( level, x, y ).getPath();
+   }
+
+   public int getMaxLevel()
+   {
+      return mMaxLevel;
+   }
+
+   public static long tileKey ( int level, int x, int y )
+   {
+      return ( ( long ) level << 58 ) | ( ( long ) x << 29 ) | y;
+   }
+
+   private File getTileFile ( int level, int x, int y )
+   {
+      return new File ( mRoot, level + File.separator + x + File.separator + y + ".png" );
+   }
+
+   // The deepest level is the highest numbered level directory
+   private void scanLevels()
+   {
+      String [] names = mRoot.list();
+
+      mMaxLevel = -1;
+      mPresent.clear();
+      mMissing.clear();
+
+      if ( names == null )
+      {
+         return;
+      }
+
+      for ( String name : names )
+      {
+         try
+         {
+            mMaxLevel = Math.max ( mMaxLevel, Integer.parseInt ( name ) );
+         }
+         catch ( NumberFormatException e )
+         {
+            // Not a level directory
+         }
+      }
+   }
+
+   private final File mRoot;
+   private ESTileArchive mArchive;
+   private final HashSet<Long> mPresent = new HashSet<Long>();
+   private final HashSet<Long> mMissing = new HashSet<Long>();
+   private int mMaxLevel;
+}
@@ -0,0 +1,43 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import edu.gatech.gtri.common.ESAtmosphere;
+
+//
+/// \brief Time to generate the transmittance and in-scatter tables of
+///    ESAtmosphere for the Earth, on one thread and on the common pool
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+public class AtmosphereBenchmark
+{
+    @Benchmark
+    public ESAtmosphere generate()
+    {
+        ESAtmosphere atmosphere = new ESAtmosphere ( BOTTOM_RADIUS, TOP_RADIUS );
+        atmosphere.generate ( null );
+        return atmosphere;
+    }
+
+    @Benchmark
+    public ESAtmosphere generateParallel()
+    {
+        ESAtmosphere atmosphere = new ESAtmosphere ( BOTTOM_RADIUS, TOP_RADIUS );
+        atmosphere.generate ( ForkJoinPool.commonPool() );
+        return atmosphere;
+    }
+
+    // Some constants
+    private static final double BOTTOM_RADIUS = 6356.752314245;
+    private static final double TOP_RADIUS = BOTTOM_RADIUS + 60.0;
+}
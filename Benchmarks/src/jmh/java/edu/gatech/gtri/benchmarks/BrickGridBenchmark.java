@@ -0,0 +1,69 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.gatech.gtri.common.ESBrickGrid;
+import edu.gatech.gtri.common.ESFractalNoise;
+
+//
+/// \brief Min/max bricks of the cloud volume of the Noise3D sample, 128^3
+///    and 256^3, with 4 and 8 voxel bricks, on 1 and more threads
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+@Fork ( 1 )
+public class BrickGridBenchmark
+{
+    @Param ( { "128", "256" } )
+    public int size;
+
+    @Param ( { "4", "8" } )
+    public int brickSize;
+
+    @Param ( { "1", "4" } )
+    public int threads;
+
+    private ForkJoinPool pool;
+    private ByteBuffer volume;
+    private ESBrickGrid grid;
+
+    @Setup ( Level.Trial )
+    public void setup()
+    {
+        ESFractalNoise noise = new ESFractalNoise ( 1 );
+
+        pool = new ForkJoinPool ( threads );
+        volume = ByteBuffer.allocateDirect ( size * size * size );
+        noise.setOctaves ( 3 );
+        noise.createVolume ( volume, size, 3.0f );
+        grid = new ESBrickGrid ( size, size, size, brickSize, threads > 1 ? pool : null );
+    }
+
+    @TearDown ( Level.Trial )
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ESBrickGrid build()
+    {
+        grid.build ( volume );
+        return grid;
+    }
+}
@@ -0,0 +1,143 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.gatech.gtri.common.ESFractalNoise;
+import edu.gatech.gtri.common.ESNoise3D;
+import edu.gatech.gtri.common.ESRandom;
+import edu.gatech.gtri.common.ESSimplexNoise;
+
+//
+/// \brief Throughput of the noise variants over 64k random points: simplex
+///    in 2D, 3D and 4D against the gradient noise of ESNoise3D, and each
+///    fractal type, 6 octaves, with and without warp, scalar and batched,
+///    and the heightfield of the TerrainRendering sample
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+@Fork ( 1 )
+public class FractalNoiseBenchmark
+{
+    @Param ( { "0", "1", "2" } )
+    public int type;
+
+    @Param ( { "0", "0.25" } )
+    public float warp;
+
+    private ESSimplexNoise simplex;
+    private ESNoise3D gradient;
+    private ESFractalNoise fractal;
+    private float[] x, y, z, w, out;
+    private float[] heights;
+
+    @Setup ( Level.Trial )
+    public void setup()
+    {
+        ESRandom random = ESRandom.create ( 1 );
+
+        simplex = new ESSimplexNoise ( 1 );
+        gradient = new ESNoise3D ( 1 );
+        fractal = new ESFractalNoise ( simplex, null );
+        fractal.setType ( type );
+        fractal.setWarp ( warp );
+        x = new float[COUNT];
+        y = new float[COUNT];
+        z = new float[COUNT];
+        w = new float[COUNT];
+        out = new float[COUNT];
+        heights = new float[256 * 256];
+        random.fillUniform ( x, 0, COUNT, -100.0f, 100.0f );
+        random.fillUniform ( y, 0, COUNT, -100.0f, 100.0f );
+        random.fillUniform ( z, 0, COUNT, -100.0f, 100.0f );
+        random.fillUniform ( w, 0, COUNT, -100.0f, 100.0f );
+    }
+
+    @Benchmark
+    public float[] gradient3D()
+    {
+        for ( int i = 0; i < COUNT; i++ )
+        {
+            out[i] = gradient.noise3D ( x[i], y[i], z[i] );
+        }
+
+        return out;
+    }
+
+    @Benchmark
+    public float[] simplex2D()
+    {
+        simplex.noise2D ( x, y, out, 0, COUNT );
+        return out;
+    }
+
+    @Benchmark
+    public float[] simplex3D()
+    {
+        simplex.noise3D ( x, y, z, out, 0, COUNT );
+        return out;
+    }
+
+    @Benchmark
+    public float[] simplex4D()
+    {
+        simplex.noise4D ( x, y, z, w, out, 0, COUNT );
+        return out;
+    }
+
+    @Benchmark
+    public float[] fractal2D()
+    {
+        for ( int i = 0; i < COUNT; i++ )
+        {
+            out[i] = fractal.get ( x[i], y[i] );
+        }
+
+        return out;
+    }
+
+    @Benchmark
+    public float[] fractal2DBatch()
+    {
+        fractal.get ( x, y, out, 0, COUNT );
+        return out;
+    }
+
+    @Benchmark
+    public float[] fractal3D()
+    {
+        for ( int i = 0; i < COUNT; i++ )
+        {
+            out[i] = fractal.get ( x[i], y[i], z[i] );
+        }
+
+        return out;
+    }
+
+    @Benchmark
+    public float[] fractal3DBatch()
+    {
+        fractal.get ( x, y, z, out, 0, COUNT );
+        return out;
+    }
+
+    @Benchmark
+    public float[] heightfield()
+    {
+        fractal.createHeightfield ( heights, 256, 256, 4.0f );
+        return heights;
+    }
+
+    private static final int COUNT = 1 << 16;
+}
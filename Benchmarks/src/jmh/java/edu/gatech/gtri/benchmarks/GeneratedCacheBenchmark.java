@@ -0,0 +1,107 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.gatech.gtri.common.ESGeneratedCache;
+import edu.gatech.gtri.common.ESNoise3D;
+
+//
+/// \brief Start of the Noise3D sample: the noise volume generated against
+///    a hit of ESGeneratedCache, mapped raw or inflated, each reading a
+///    byte per cache line so that every page is faulted in as by an upload.
+///    The files are in the page cache, as on a restart of the app.
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+@Fork ( 1 )
+public class GeneratedCacheBenchmark
+{
+    @Param ( { "64", "128" } )
+    public int size;
+
+    private File directory;
+    private ESGeneratedCache cache;
+    private ESNoise3D noise;
+    private ESGeneratedCache.Generator generator;
+
+    @Setup ( Level.Trial )
+    public void setup() throws IOException
+    {
+        directory = Files.createTempDirectory ( "generated" ).toFile();
+        cache = new ESGeneratedCache ( directory, 1 );
+        noise = new ESNoise3D ( 1 );
+        generator = new ESGeneratedCache.Generator()
+        {
+            @Override
+            public void generate ( ByteBuffer out )
+            {
+                noise.createVolume ( out, size, 5.0f, true );
+            }
+        };
+
+        cache.get ( key ( false ), size * size * size, false, generator );
+        cache.get ( key ( true ), size * size * size, true, generator );
+    }
+
+    @TearDown ( Level.Trial )
+    public void tearDown()
+    {
+        cache.clear();
+        directory.delete();
+    }
+
+    private ESGeneratedCache.Key key ( boolean compress )
+    {
+        return new ESGeneratedCache.Key ( "noise3d" ).put ( size ).put ( compress );
+    }
+
+    private static long touch ( ByteBuffer data )
+    {
+        long sum = 0;
+
+        for ( int i = 0; i < data.limit(); i += 64 )
+        {
+            sum += data.get ( i );
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long generate()
+    {
+        ByteBuffer data = ByteBuffer.allocateDirect ( size * size * size );
+
+        generator.generate ( data );
+        return touch ( data );
+    }
+
+    @Benchmark
+    public long mapped()
+    {
+        return touch ( cache.get ( key ( false ), size * size * size, false, generator ) );
+    }
+
+    @Benchmark
+    public long inflated()
+    {
+        return touch ( cache.get ( key ( true ), size * size * size, true, generator ) );
+    }
+}
@@ -0,0 +1,102 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.gatech.gtri.common.ESGeodesy;
+
+//
+/// \brief Time to convert a load of overlay points with ESGeodesy
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+public class GeodesyBenchmark
+{
+    @Param ( { "1000000" } )
+    public int count;
+
+    private double[] lonLatHeight;
+    private double[] ecef;
+    private double[] geodetic;
+    private FloatBuffer vertices;
+    private int[] tiles;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random ( 1 );
+
+        lonLatHeight = new double[count * 3];
+        ecef = new double[count * 3];
+        geodetic = new double[count * 3];
+        tiles = new int[count * 2];
+        vertices = ByteBuffer.allocateDirect ( count * 3 * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+
+        // Points over a continent sized region, as in an overlay load
+        for ( int i = 0; i < count; i++ )
+        {
+            lonLatHeight[i * 3] = -120.0 + 50.0 * random.nextDouble();
+            lonLatHeight[i * 3 + 1] = 25.0 + 25.0 * random.nextDouble();
+            lonLatHeight[i * 3 + 2] = 3000.0 * random.nextDouble();
+        }
+
+        ESGeodesy.WGS84.geodeticToEcef ( lonLatHeight, count, ecef );
+    }
+
+    @Benchmark
+    public double[] toEcef()
+    {
+        ESGeodesy.WGS84.geodeticToEcef ( lonLatHeight, count, ecef );
+        return ecef;
+    }
+
+    @Benchmark
+    public FloatBuffer toEcefBuffer()
+    {
+        vertices.clear();
+        ESGeodesy.WGS84.geodeticToEcef ( lonLatHeight, count, -1000000.0, -4500000.0, 4000000.0, vertices );
+        return vertices;
+    }
+
+    @Benchmark
+    public FloatBuffer toEcefBufferParallel()
+    {
+        vertices.clear();
+        ESGeodesy.WGS84.geodeticToEcef ( lonLatHeight, count, -1000000.0, -4500000.0, 4000000.0, vertices,
+                                         ForkJoinPool.commonPool() );
+        return vertices;
+    }
+
+    @Benchmark
+    public double[] toGeodetic()
+    {
+        ESGeodesy.WGS84.ecefToGeodetic ( ecef, count, geodetic );
+        return geodetic;
+    }
+
+    @Benchmark
+    public int[] webMercatorTiles()
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            tiles[i * 2] = ESGeodesy.webMercatorTileX ( lonLatHeight[i * 3], 14 );
+            tiles[i * 2 + 1] = ESGeodesy.webMercatorTileY ( lonLatHeight[i * 3 + 1], 14 );
+        }
+
+        return tiles;
+    }
+}
@@ -0,0 +1,223 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.Executor;
+
+import edu.gatech.gtri.common.ESBenchmark;
+import edu.gatech.gtri.common.ESGeodesy;
+import edu.gatech.gtri.common.ESGlobeQuadtree;
+import edu.gatech.gtri.common.ESMarkerClusterer;
+import edu.gatech.gtri.common.ESMarkerLayer;
+import edu.gatech.gtri.common.ESRandom;
+import edu.gatech.gtri.common.ESRelativeToEye;
+import edu.gatech.gtri.common.ESRingBuffer;
+import edu.gatech.gtri.common.ESVectorLayer;
+import edu.gatech.gtri.globerendering.GlobeCamera;
+
+//
+/// \brief Deterministic replay of the frames of the globe sample, without
+///    a GPU, for CI.
+///
+/// Runs the CPU side of GlobeRenderingRenderer.onDrawFrame() at scripted
+/// times: the city tour of GlobeCamera (update), the tile selection and
+/// the marker request (culling), the copy of the newest clusters into a
+/// ring buffer (upload) and the per tile MVP of the draws (submit).  The
+/// GL calls themselves are left out; the clustering job, on a worker
+/// thread on a device, runs between frames outside the phases.
+///
+/// Usage: GlobeReplay [output.json [frames]]
+//
+public class GlobeReplay implements ESBenchmark.Scene
+{
+    public static void main ( String[] args ) throws IOException
+    {
+        File output = new File ( args.length > 0 ? args[0] : "globe-replay.json" );
+        int frames = args.length > 1 ? Integer.parseInt ( args[1] ) : FRAMES;
+        ESBenchmark benchmark = new ESBenchmark ( "GlobeReplay", ESBenchmark.RENDERER_PHASES,
+                                                  WARMUP_FRAMES, frames, FRAME_INTERVAL );
+
+        benchmark.run ( new GlobeReplay() );
+        benchmark.writeJson ( output );
+
+        for ( int i = 0; i < benchmark.getNumPhases(); i++ )
+        {
+            System.out.printf ( "%-8s p50 %8d ns  p99 %8d ns%n", benchmark.getPhaseName ( i ),
+                                benchmark.getHistogram ( i ).getValueAtPercentile ( 50.0 ),
+                                benchmark.getHistogram ( i ).getValueAtPercentile ( 99.0 ) );
+        }
+
+        System.out.println ( "Written to " + output );
+    }
+
+    public GlobeReplay()
+    {
+        ESMarkerLayer layer = new ESMarkerLayer ( NUM_MARKERS );
+        ESRandom random = ESRandom.create ( 1 );
+
+        // The markers of the sample, fewer of them
+        for ( int i = 0; i < NUM_MARKERS; i++ )
+        {
+            double [] city = GlobeCamera.CITIES[i % GlobeCamera.CITIES.length];
+            double lon = city[0] + 8.0 * random.nextGaussian();
+            double lat = Math.max ( -89.0, Math.min ( 89.0, city[1] + 5.0 * random.nextGaussian() ) );
+
+            layer.add ( lon > 180.0 ? lon - 360.0 : ( lon < -180.0 ? lon + 360.0 : lon ), lat );
+        }
+
+        for ( int i = 0; i < NUM_MOVING_MARKERS; i++ )
+        {
+            movingIds[i] = i;
+        }
+
+        // Jobs wait for runPending() between the frames
+        Executor deferred = new Executor()
+        {
+            public void execute ( Runnable r )
+            {
+            }
+        };
+
+        clusterer = new ESMarkerClusterer ( layer, ESVectorLayer.globeProjection ( ESGeodesy.WGS84_KM, 0.0 ), deferred );
+    }
+
+    public void frame ( ESBenchmark benchmark )
+    {
+        long time = benchmark.getTimeMillis();
+
+        benchmark.begin ( ESBenchmark.UPDATE );
+        camera.update ( time, WIDTH, HEIGHT );
+        benchmark.end ( ESBenchmark.UPDATE );
+
+        benchmark.begin ( ESBenchmark.CULLING );
+        double [] eye = camera.getEye();
+        quadtree.select ( eye[0], eye[1], eye[2], camera.getCullViewProjection(), HEIGHT, GlobeCamera.FOVY );
+        requestMarkers ( time / 1000.0f );
+        benchmark.end ( ESBenchmark.CULLING );
+
+        benchmark.begin ( ESBenchmark.UPLOAD );
+        uploadMarkers();
+        benchmark.end ( ESBenchmark.UPLOAD );
+
+        benchmark.begin ( ESBenchmark.SUBMIT );
+        submit();
+        benchmark.end ( ESBenchmark.SUBMIT );
+
+        // The worker thread of the sample
+        clusterer.runPending();
+    }
+
+    // As GlobeRenderingRenderer.requestMarkers()
+    private void requestMarkers ( float time )
+    {
+        double [] eye = camera.getEyeLonLatHeight();
+        double viewDegrees = Math.toDegrees ( eye[2] * Math.tan ( Math.toRadians ( GlobeCamera.FOVY ) ) / GlobeCamera.RADIUS_B );
+        double halfLat = Math.min ( 90.0, viewDegrees );
+        double halfLon = halfLat / Math.max ( 0.05, Math.cos ( Math.toRadians ( eye[1] ) ) );
+        int zoom = ( int ) Math.max ( 0.0, Math.min ( 20.0, Math.log ( 45.0 * MARKER_CLUSTERS_ACROSS / viewDegrees ) / Math.log ( 2.0 ) ) );
+        double west = eye[0] - halfLon;
+        double east = eye[0] + halfLon;
+
+        for ( int i = 0; i < NUM_MOVING_MARKERS; i++ )
+        {
+            movingLonLat[i * 2] = -74.0 + 10.0 * Math.cos ( time * 0.1 + i );
+            movingLonLat[i * 2 + 1] = 40.7 + 5.0 * Math.sin ( time * 0.1 + i );
+        }
+
+        clusterer.update ( movingIds, movingLonLat, NUM_MOVING_MARKERS );
+
+        if ( halfLon >= 180.0 )
+        {
+            west = -180.0;
+            east = 180.0;
+        }
+        else
+        {
+            west = west < -180.0 ? west + 360.0 : west;
+            east = east > 180.0 ? east - 360.0 : east;
+        }
+
+        clusterer.request ( zoom, west, Math.max ( -90.0, eye[1] - halfLat ), east, Math.min ( 90.0, eye[1] + halfLat ) );
+    }
+
+    // As the copy of GlobeRenderingRenderer.drawMarkers(), into a direct
+    // buffer in place of the mapped range
+    private void uploadMarkers()
+    {
+        ESMarkerClusterer.Result result = clusterer.poll();
+
+        if ( result != null )
+        {
+            int count = Math.min ( result.getNumClusters(), markerRing.getCapacity() );
+            int first = count > 0 ? markerRing.allocate ( count ) : -1;
+
+            if ( first >= 0 )
+            {
+                FloatBuffer vertices = result.getVertices();
+
+                vertices.position ( 0 ).limit ( count * ESMarkerClusterer.VERTEX_FLOATS );
+                markerVertices.position ( first * ESMarkerClusterer.VERTEX_FLOATS );
+                markerVertices.put ( vertices );
+                markerCount = count;
+                System.arraycopy ( result.getCenter(), 0, markerCenter, 0, 3 );
+            }
+            else if ( count == 0 )
+            {
+                markerCount = 0;
+            }
+
+            clusterer.recycle ( result );
+        }
+
+        markerRing.endFrame();
+    }
+
+    // The matrices of the draws of a frame
+    private void submit()
+    {
+        ESRelativeToEye relativeToEye = camera.getRelativeToEye();
+
+        for ( int i = 0; i < quadtree.getNumSelected(); i++ )
+        {
+            quadtree.computeBoundingSphere ( quadtree.getSelectedLevel ( i ), quadtree.getSelectedX ( i ),
+                                             quadtree.getSelectedY ( i ), sphere );
+            relativeToEye.computeMvp ( sphere[0], sphere[1], sphere[2], mvp );
+        }
+
+        if ( markerCount > 0 )
+        {
+            relativeToEye.computeMvp ( markerCenter[0], markerCenter[1], markerCenter[2], mvp );
+        }
+    }
+
+    private final GlobeCamera camera = new GlobeCamera();
+    private final ESGlobeQuadtree quadtree = new ESGlobeQuadtree ( GlobeCamera.RADIUS_A, GlobeCamera.RADIUS_B,
+                                                                   TILE_SIZE, MAX_LEVEL );
+    private final ESMarkerClusterer clusterer;
+    private final ESRingBuffer markerRing = new ESRingBuffer ( MARKER_RING_SIZE, FRAMES_IN_FLIGHT );
+    private final FloatBuffer markerVertices = ByteBuffer.allocateDirect ( MARKER_RING_SIZE * ESMarkerClusterer.VERTEX_FLOATS * 4 )
+                                                         .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+    private final double[] markerCenter = new double[3];
+    private int markerCount;
+    private final int[] movingIds = new int[NUM_MOVING_MARKERS];
+    private final double[] movingLonLat = new double[NUM_MOVING_MARKERS * 2];
+    private final double[] sphere = new double[4];
+    private final float[] mvp = new float[16];
+
+    // Some constants, those of the sample but the markers
+    private static final int FRAMES = 1800;
+    private static final int WARMUP_FRAMES = 120;
+    private static final double FRAME_INTERVAL = 1.0 / 60.0;
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_LEVEL = 18;
+    private static final int NUM_MARKERS = 100000;
+    private static final int NUM_MOVING_MARKERS = 1000;
+    private static final int MARKER_CLUSTERS_ACROSS = 24;
+    private static final int MARKER_RING_SIZE = 1 << 18;
+    private static final int FRAMES_IN_FLIGHT = 3;
+}
@@ -0,0 +1,107 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.gatech.gtri.common.ESHeightPyramid;
+
+//
+/// \brief Build, update and cache load cost of ESHeightPyramid at 4k and 16k
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+@Fork ( value = 1, jvmArgs = { "-Xms3g", "-Xmx3g" } )
+public class HeightPyramidBenchmark
+{
+    @Param ( { "4097", "16385" } )
+    public int size;
+
+    private float[] heights;
+    private ESHeightPyramid pyramid;
+    private File serialized;
+    private Random random;
+
+    @Setup ( Level.Trial )
+    public void setup() throws IOException
+    {
+        random = new Random ( 1 );
+        heights = new float[size * size];
+
+        for ( int i = 0; i < heights.length; i++ )
+        {
+            heights[i] = random.nextFloat();
+        }
+
+        pyramid = new ESHeightPyramid ( heights, size, size );
+
+        serialized = File.createTempFile ( "pyramid", ".bin" );
+
+        try ( OutputStream os = new BufferedOutputStream ( new FileOutputStream ( serialized ) ) )
+        {
+            pyramid.write ( os );
+        }
+    }
+
+    @TearDown ( Level.Trial )
+    public void tearDown()
+    {
+        serialized.delete();
+    }
+
+    @Benchmark
+    public ESHeightPyramid buildSequential()
+    {
+        pyramid = null;
+        return pyramid = new ESHeightPyramid ( heights, size, size, null );
+    }
+
+    @Benchmark
+    public ESHeightPyramid buildParallel()
+    {
+        pyramid = null;
+        return pyramid = new ESHeightPyramid ( heights, size, size, ForkJoinPool.commonPool() );
+    }
+
+    // A 64 x 64 sample brush stroke at a random spot
+    @Benchmark
+    @OutputTimeUnit ( TimeUnit.MICROSECONDS )
+    public ESHeightPyramid updateBrush()
+    {
+        int col = random.nextInt ( size - 64 );
+        int row = random.nextInt ( size - 64 );
+
+        pyramid.update ( col, row, col + 63, row + 63 );
+        return pyramid;
+    }
+
+    @Benchmark
+    public ESHeightPyramid read() throws IOException
+    {
+        try ( InputStream is = new BufferedInputStream ( new FileInputStream ( serialized ) ) )
+        {
+            return ESHeightPyramid.read ( is, heights, size, size );
+        }
+    }
+}
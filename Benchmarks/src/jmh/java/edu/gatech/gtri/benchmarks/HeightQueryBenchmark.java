@@ -0,0 +1,126 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.gatech.gtri.common.ESHeightQuery;
+
+//
+/// \brief Throughput of ESHeightQuery point, batch and ray queries
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.Throughput )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+public class HeightQueryBenchmark
+{
+    @Param ( { "1024", "4096" } )
+    public int size;
+
+    private ESHeightQuery query;
+    private float[] xy;
+    private float[] rays;
+    private float[] heights;
+    private float[] normals;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random ( 1 );
+        float[] grid = new float[size * size];
+
+        // Smooth hills plus some noise, similar to a real heightmap
+        for ( int row = 0; row < size; row++ )
+        {
+            for ( int col = 0; col < size; col++ )
+            {
+                grid[row * size + col] = 0.5f + 0.25f * ( float ) Math.sin ( col * 0.01 ) * ( float ) Math.cos ( row * 0.013 )
+                                         + 0.05f * random.nextFloat();
+            }
+        }
+
+        query = new ESHeightQuery ( grid, size, size, 1.0f, 1.0f, 0.1f );
+        xy = new float[BATCH * 2];
+        rays = new float[BATCH * 6];
+        heights = new float[BATCH];
+        normals = new float[BATCH * 3];
+
+        for ( int i = 0; i < BATCH; i++ )
+        {
+            xy[i * 2] = random.nextFloat();
+            xy[i * 2 + 1] = random.nextFloat();
+
+            // Oblique rays from above, as cast by a mouse pick or a camera collision test
+            rays[i * 6] = random.nextFloat();
+            rays[i * 6 + 1] = random.nextFloat();
+            rays[i * 6 + 2] = 0.2f;
+            rays[i * 6 + 3] = random.nextFloat() - 0.5f;
+            rays[i * 6 + 4] = random.nextFloat() - 0.5f;
+            rays[i * 6 + 5] = -0.3f;
+        }
+    }
+
+    @Benchmark
+    public void bilinear ( Blackhole bh )
+    {
+        for ( int i = 0; i < BATCH; i++ )
+        {
+            bh.consume ( query.getHeight ( xy[i * 2], xy[i * 2 + 1] ) );
+        }
+    }
+
+    @Benchmark
+    public float[] bilinearBatch()
+    {
+        query.getHeights ( xy, 0, heights, 0, BATCH );
+        return heights;
+    }
+
+    @Benchmark
+    public float[] bicubicBatch()
+    {
+        query.getHeightsBicubic ( xy, 0, heights, 0, BATCH );
+        return heights;
+    }
+
+    @Benchmark
+    public float[] normalBatch()
+    {
+        query.getNormals ( xy, 0, normals, 0, BATCH );
+        return normals;
+    }
+
+    @Benchmark
+    @Threads ( 4 )
+    public void bilinearContended ( Blackhole bh )
+    {
+        for ( int i = 0; i < BATCH; i++ )
+        {
+            bh.consume ( query.getHeight ( xy[i * 2], xy[i * 2 + 1] ) );
+        }
+    }
+
+    @Benchmark
+    public void ray ( Blackhole bh )
+    {
+        float[] hit = new float[4];
+
+        for ( int i = 0; i < BATCH; i++ )
+        {
+            int r = i * 6;
+            bh.consume ( query.intersectRay ( rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5], hit ) );
+        }
+    }
+
+    private static final int BATCH = 1024;
+}
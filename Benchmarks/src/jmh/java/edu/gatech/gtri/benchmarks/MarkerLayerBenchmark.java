@@ -0,0 +1,132 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.gatech.gtri.common.ESGeodesy;
+import edu.gatech.gtri.common.ESMarkerClusterer;
+import edu.gatech.gtri.common.ESMarkerLayer;
+import edu.gatech.gtri.common.ESRingBuffer;
+import edu.gatech.gtri.common.ESVectorLayer;
+
+//
+/// \brief Update, index and clustering throughput of a marker layer with
+///    millions of markers, without a GL context
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+public class MarkerLayerBenchmark
+{
+    @Param ( { "2000000" } )
+    public int count;
+
+    private ESMarkerLayer layer;
+    private ESMarkerLayer.Clusters clusters;
+    private ESMarkerClusterer clusterer;
+    private int[] moveIds;
+    private double[] moveLonLat;
+    private int frame;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random ( 1 );
+
+        layer = new ESMarkerLayer ( count );
+        clusters = new ESMarkerLayer.Clusters();
+
+        // Denser over the continents than over the oceans, as real data
+        for ( int i = 0; i < count; i++ )
+        {
+            double lon = ( i % 4 == 0 ) ? -180.0 + 360.0 * random.nextDouble() : -20.0 + 60.0 * random.nextGaussian();
+            double lat = ( i % 4 == 0 ) ? -90.0 + 180.0 * random.nextDouble() : 45.0 + 10.0 * random.nextGaussian();
+
+            layer.add ( Math.max ( -180.0, Math.min ( 180.0, lon ) ), Math.max ( -90.0, Math.min ( 90.0, lat ) ) );
+        }
+
+        layer.rebuildIndex();
+
+        // 5% of the markers move each update
+        moveIds = new int[count / 20];
+        moveLonLat = new double[moveIds.length * 2];
+
+        for ( int i = 0; i < moveIds.length; i++ )
+        {
+            moveIds[i] = random.nextInt ( count );
+            moveLonLat[i * 2] = -180.0 + 360.0 * random.nextDouble();
+            moveLonLat[i * 2 + 1] = -90.0 + 180.0 * random.nextDouble();
+        }
+
+        // Cluster on the calling thread to time the job itself
+        Executor direct = new Executor()
+        {
+            public void execute ( Runnable r )
+            {
+                r.run();
+            }
+        };
+
+        clusterer = new ESMarkerClusterer ( layer, ESVectorLayer.globeProjection ( ESGeodesy.WGS84_KM, 0.0 ), direct );
+    }
+
+    @Benchmark
+    public ESMarkerLayer rebuildIndex()
+    {
+        layer.set ( 0, layer.getLon ( 0 ), layer.getLat ( 0 ) );
+        layer.rebuildIndex();
+        return layer;
+    }
+
+    @Benchmark
+    public ESMarkerLayer.Clusters clusterWorld()
+    {
+        layer.cluster ( 3, -180.0, -90.0, 180.0, 90.0, clusters );
+        return clusters;
+    }
+
+    @Benchmark
+    public ESMarkerLayer.Clusters clusterRegion()
+    {
+        layer.cluster ( 10, -30.0, 35.0, -10.0, 55.0, clusters );
+        return clusters;
+    }
+
+    // A full update: queue the moves, apply them, rebuild the index,
+    // cluster the view and project the clusters to vertices
+    @Benchmark
+    public ESMarkerClusterer.Result updateAndCluster()
+    {
+        clusterer.update ( moveIds, moveLonLat, moveIds.length );
+        clusterer.request ( 6, -60.0, 20.0, 20.0, 70.0 );
+
+        ESMarkerClusterer.Result result = clusterer.poll();
+        clusterer.recycle ( result );
+        return result;
+    }
+
+    @Benchmark
+    public long ringBufferFrames()
+    {
+        ESRingBuffer ring = new ESRingBuffer ( 1 << 20, 3 );
+
+        for ( int i = 0; i < 10000; i++ )
+        {
+            ring.allocate ( 1000 + ( ( i + frame ) & 4095 ) );
+            ring.endFrame();
+        }
+
+        frame++;
+        return ring.getAllocations();
+    }
+}
@@ -0,0 +1,159 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.gatech.gtri.common.ESNoise3D;
+
+//
+/// \brief Noise volume of the Noise3D sample, 64^3 to 256^3: the loop the
+///    sample had, a float[3] per voxel, a second pass to normalize and a
+///    ShortBuffer positioned per voxel, against ESNoise3D on 1 and more
+///    threads, and the scalar noise against a row
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+@Fork ( value = 1, jvmArgs = { "-Xmx2g" } )
+public class NoiseBenchmark
+{
+    @Param ( { "64", "128", "256" } )
+    public int size;
+
+    @Param ( { "1", "4" } )
+    public int threads;
+
+    private ForkJoinPool pool;
+    private ESNoise3D noise;
+    private ByteBuffer volume;
+    private float[] row;
+
+    @Setup ( Level.Trial )
+    public void setup()
+    {
+        ESNoise3D tables = new ESNoise3D ( 1 );
+        short[] perm = new short[ESNoise3D.TABLE_SIZE];
+
+        for ( int i = 0; i < perm.length; i++ )
+        {
+            perm[i] = ( short ) tables.getPermTable()[i];
+        }
+
+        pool = new ForkJoinPool ( threads );
+        noise = new ESNoise3D ( perm, tables.getGradientTable(), threads > 1 ? pool : null );
+        volume = ByteBuffer.allocateDirect ( size * size * size ).order ( ByteOrder.nativeOrder() );
+        row = new float[size];
+    }
+
+    @TearDown ( Level.Trial )
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ShortBuffer sample()
+    {
+        return sampleVolume ( noise, size, FREQUENCY );
+    }
+
+    @Benchmark
+    public ByteBuffer volume()
+    {
+        volume.clear();
+        noise.createVolume ( volume, size, FREQUENCY, false );
+        return volume;
+    }
+
+    @Benchmark
+    public ByteBuffer tileableVolume()
+    {
+        volume.clear();
+        noise.createVolume ( volume, size, FREQUENCY, true );
+        return volume;
+    }
+
+    // A slice, one point at a time
+    @Benchmark
+    public float[] points()
+    {
+        for ( int y = 0; y < size; y++ )
+        {
+            for ( int x = 0; x < size; x++ )
+            {
+                row[x] = noise.noise3D ( x * FREQUENCY / size, y * FREQUENCY / size, 0.5f );
+            }
+        }
+
+        return row;
+    }
+
+    // A slice, one row at a time
+    @Benchmark
+    public float[] rows()
+    {
+        for ( int y = 0; y < size; y++ )
+        {
+            noise.noise3D ( row, 0, size, 0.0f, FREQUENCY / size, y * FREQUENCY / size, 0.5f, 0 );
+        }
+
+        return row;
+    }
+
+    // Create3DNoiseTexture as the sample had it
+    private static ShortBuffer sampleVolume ( ESNoise3D noise, int textureSize, float frequency )
+    {
+        float [] texBuf = new float [ 4 * textureSize * textureSize * textureSize ];
+        ShortBuffer texBufUbyte = ByteBuffer.allocateDirect ( 2 * textureSize * textureSize * textureSize ).order ( ByteOrder.nativeOrder() ).asShortBuffer();
+        int index = 0;
+        float min = 1000;
+        float max = -1000;
+
+        for ( int z = 0; z < textureSize; z++ )
+        {
+            for ( int y = 0; y < textureSize; y++ )
+            {
+                for ( int x = 0; x < textureSize; x++ )
+                {
+                    float [] pos = new float [] { ( float ) x / ( float ) textureSize, ( float ) y / ( float ) textureSize, ( float ) z  / ( float ) textureSize };
+                    pos[0] *= frequency;
+                    pos[1] *= frequency;
+                    pos[2] *= frequency;
+
+                    float noiseVal = noise.noise3D ( pos[0], pos[1], pos[2] );
+
+                    min = Math.min ( min, noiseVal );
+                    max = Math.max ( max, noiseVal );
+                    texBuf[ index++ ] = noiseVal;
+                }
+            }
+        }
+
+        float range = ( max - min );
+
+        for ( index = 0; index < textureSize * textureSize * textureSize; )
+        {
+            float noiseVal = ( texBuf[index] - min ) / range;
+            texBufUbyte.put ( (short) (noiseVal * 255.0f) ).position ( index++ );
+        }
+
+        return texBufUbyte;
+    }
+
+    private static final float FREQUENCY = 5.0f;
+}
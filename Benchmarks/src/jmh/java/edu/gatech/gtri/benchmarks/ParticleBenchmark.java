@@ -0,0 +1,147 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.gatech.gtri.common.ESParticlePool;
+import edu.gatech.gtri.common.ESParticleSimulation;
+
+//
+/// \brief CPU particle step of the ParticleSystem sample, 250k particles:
+///    the interleaved pool of ESParticleSimulation (AoS) against the packed
+///    arrays of ESParticlePool (SoA), on 1 and more threads, and their copy
+///    into a vertex buffer
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Fork ( 1 )
+public class ParticleBenchmark
+{
+    @Param ( { "1", "4" } )
+    public int threads;
+
+    private ForkJoinPool pool;
+    private ESParticleSimulation aos;
+    private float[] aosParticles;
+    private final List<Callable<Void>> aosChunks = new ArrayList<>();
+    private ESParticlePool soa;
+    private FloatBuffer vertices;
+
+    @Setup ( Level.Trial )
+    public void setup()
+    {
+        pool = new ForkJoinPool ( threads );
+        aos = fountain();
+        aosParticles = new float[NUM_PARTICLES * ESParticleSimulation.STRIDE];
+        soa = new ESParticlePool ( fountain(), threads > 1 ? pool : null );
+        vertices = ByteBuffer.allocateDirect ( NUM_PARTICLES * ESParticleSimulation.STRIDE * 4 )
+                             .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+
+        // The pool split as ESParticlePool splits it
+        for ( int first = 0; first < NUM_PARTICLES; first += ESParticlePool.CHUNK )
+        {
+            final int chunkFirst = first;
+            final int chunkCount = Math.min ( ESParticlePool.CHUNK, NUM_PARTICLES - first );
+
+            aosChunks.add ( new Callable<Void>()
+            {
+                public Void call()
+                {
+                    aos.stepParticles ( aosParticles, chunkFirst, chunkCount );
+                    return null;
+                }
+            } );
+        }
+
+        // Steady state, the pools full
+        for ( int frame = 0; frame < 120; frame++ )
+        {
+            stepAos();
+            stepSoa();
+        }
+    }
+
+    @TearDown ( Level.Trial )
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public float[] stepAos()
+    {
+        aos.beginStep ( DT );
+
+        if ( threads > 1 )
+        {
+            pool.invokeAll ( aosChunks );
+        }
+        else
+        {
+            aos.stepParticles ( aosParticles, 0, NUM_PARTICLES );
+        }
+
+        return aosParticles;
+    }
+
+    @Benchmark
+    public ESParticlePool stepSoa()
+    {
+        soa.step ( DT );
+        return soa;
+    }
+
+    // The AoS pool is copied whole, dead particles included
+    @Benchmark
+    public FloatBuffer copyAos()
+    {
+        vertices.position ( 0 );
+        vertices.put ( aosParticles );
+        return vertices;
+    }
+
+    @Benchmark
+    public FloatBuffer copySoa()
+    {
+        vertices.position ( 0 );
+        soa.copyTo ( vertices );
+        return vertices;
+    }
+
+    // The particles of the sample
+    private static ESParticleSimulation fountain()
+    {
+        ESParticleSimulation simulation = new ESParticleSimulation ( NUM_PARTICLES, 1 );
+
+        simulation.setEmitter ( 0.0f, 0.0f, 0.0f, 0.125f );
+        simulation.setEmitVelocity ( 0.0f, 0.0f, 0.0f, 1.0f );
+        simulation.setLifetime ( 0.5f, 1.0f );
+        simulation.setEmitRate ( NUM_PARTICLES / 1.0f );
+        simulation.setGravity ( 0.0f, -0.5f, 0.0f );
+        simulation.setDrag ( 0.5f );
+        simulation.setNoise ( 1.0f );
+        return simulation;
+    }
+
+    private static final int NUM_PARTICLES = 250000;
+    private static final float DT = 1.0f / 60.0f;
+}
@@ -0,0 +1,81 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import edu.gatech.gtri.common.ESParticleEffect;
+
+//
+/// \brief The particle effects of the ParticleSystem sample, and the
+///    writer of their assets.
+///
+/// The effects are defined here in code and written with
+/// ESParticleEffect.write() to the sample's assets/effects, so the binary
+/// assets always come from a definition in the tree.  Regenerate them
+/// after changing an effect or the format with: ./gradlew particleEffects
+///
+/// Usage: ParticleEffectAssets [directory]
+//
+public class ParticleEffectAssets
+{
+    public static void main ( String[] args ) throws IOException
+    {
+        File directory = new File ( args.length > 0 ? args[0] : "." );
+
+        write ( fireworks(), new File ( directory, "fireworks.effect" ) );
+    }
+
+    //
+    ///
+    /// \brief Bursts of sparks with a slower cloud of smoke
+    //
+    public static ESParticleEffect fireworks()
+    {
+        ESParticleEffect effect = new ESParticleEffect();
+        ESParticleEffect.Emitter burst = effect.addEmitter ( "textures/smoke.png", 4000 );
+        ESParticleEffect.Emitter smoke = effect.addEmitter ( "textures/smoke.png", 1000 );
+
+        // Additive sparks, white to orange
+        burst.setEmission ( 16000.0f, 0.2f );
+        burst.setLifetime ( 0.6f, 1.0f );
+        burst.setShape ( 0.0f, 0.0f, 0.0f, 0.02f );
+        burst.setVelocity ( 0.0f, 0.1f, 0.0f, 0.6f );
+        burst.setForces ( 0.0f, -0.8f, 0.0f, 1.5f, 0.3f );
+        burst.setCurve ( ESParticleEffect.SIZE, new float[] { 0.0f, 0.2f, 1.0f }, new float[] { 4.0f, 12.0f, 2.0f } );
+        burst.setCurve ( ESParticleEffect.GREEN, new float[] { 0.0f, 0.5f, 1.0f }, new float[] { 1.0f, 0.6f, 0.2f } );
+        burst.setCurve ( ESParticleEffect.BLUE, new float[] { 0.0f, 0.3f }, new float[] { 0.9f, 0.1f } );
+        burst.setCurve ( ESParticleEffect.ALPHA, new float[] { 0.0f, 0.7f, 1.0f }, new float[] { 1.0f, 0.8f, 0.0f } );
+
+        // Gray, rising slowly and fading in and out
+        smoke.setEmission ( 800.0f, 0.6f );
+        smoke.setLifetime ( 1.0f, 1.5f );
+        smoke.setShape ( 0.0f, 0.0f, 0.0f, 0.05f );
+        smoke.setVelocity ( 0.0f, 0.15f, 0.0f, 0.1f );
+        smoke.setForces ( 0.0f, 0.05f, 0.0f, 0.5f, 0.2f );
+        smoke.setAdditive ( false );
+        smoke.setCurve ( ESParticleEffect.SIZE, new float[] { 0.0f, 1.0f }, new float[] { 8.0f, 32.0f } );
+        smoke.setCurve ( ESParticleEffect.RED, new float[] { 0.0f }, new float[] { 0.4f } );
+        smoke.setCurve ( ESParticleEffect.GREEN, new float[] { 0.0f }, new float[] { 0.4f } );
+        smoke.setCurve ( ESParticleEffect.BLUE, new float[] { 0.0f }, new float[] { 0.45f } );
+        smoke.setCurve ( ESParticleEffect.ALPHA, new float[] { 0.0f, 0.2f, 1.0f }, new float[] { 0.0f, 0.3f, 0.0f } );
+        return effect;
+    }
+
+    private static void write ( ESParticleEffect effect, File file ) throws IOException
+    {
+        OutputStream os = new FileOutputStream ( file );
+
+        try
+        {
+            effect.write ( os );
+        }
+        finally
+        {
+            os.close();
+        }
+
+        System.out.println ( "Written to " + file );
+    }
+}
@@ -0,0 +1,99 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.gatech.gtri.common.ESParticleEffect;
+import edu.gatech.gtri.common.ESParticleEffectPool;
+
+//
+/// \brief Load and curve sampling cost of ESParticleEffect, and the step
+///    of many concurrent effects of an ESParticleEffectPool.  Run with
+///    -prof gc to check that spawning and stepping do not allocate.
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Fork ( 1 )
+public class ParticleEffectBenchmark
+{
+    private byte[] serialized;
+    private ESParticleEffect effect;
+    private ESParticleEffectPool pool;
+    private final float[] ages = new float[SAMPLES];
+    private int next;
+
+    @Setup ( Level.Trial )
+    public void setup() throws IOException
+    {
+        effect = ParticleEffectAssets.fireworks();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        effect.write ( bytes );
+        serialized = bytes.toByteArray();
+
+        for ( int i = 0; i < SAMPLES; i++ )
+        {
+            ages[i] = ( i * 0.618034f ) % 1.0f;
+        }
+
+        pool = new ESParticleEffectPool ( effect, INSTANCES, 1 );
+
+        for ( int i = 0; i < INSTANCES; i++ )
+        {
+            pool.spawn ( i * 0.01f, 0.0f, 0.0f );
+        }
+    }
+
+    @Benchmark
+    public ESParticleEffect read() throws IOException
+    {
+        return ESParticleEffect.read ( new ByteArrayInputStream ( serialized ) );
+    }
+
+    // The size and alpha of a particle per age
+    @Benchmark
+    public float sampleCurves()
+    {
+        float[] size = effect.getEmitter ( 0 ).getTable ( ESParticleEffect.SIZE );
+        float[] alpha = effect.getEmitter ( 0 ).getTable ( ESParticleEffect.ALPHA );
+        float sum = 0.0f;
+
+        for ( int i = 0; i < SAMPLES; i++ )
+        {
+            sum += ESParticleEffect.sample ( size, ages[i] ) * ESParticleEffect.sample ( alpha, ages[i] );
+        }
+
+        return sum;
+    }
+
+    // A frame of the pool, an instance respawned as the oldest is freed
+    @Benchmark
+    public ESParticleEffectPool update()
+    {
+        pool.update ( 1.0f / 60.0f );
+
+        if ( pool.getNumActive() < INSTANCES )
+        {
+            pool.spawn ( ( next++ % 100 ) * 0.01f, 0.0f, 0.0f );
+        }
+
+        return pool;
+    }
+
+    private static final int SAMPLES = 4096;
+    private static final int INSTANCES = 16;
+}
@@ -0,0 +1,176 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.gatech.gtri.common.ESRandom;
+
+//
+/// \brief Random floats: java.util.Random, Math.random() and
+///    ThreadLocalRandom against the generators of ESRandom, one at a time
+///    and 256k at a time into an array and a direct buffer, and a
+///    parallel fill with a split generator per task
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Fork ( 1 )
+public class RandomBenchmark
+{
+    private Random random;
+    private ESRandom splitMix;
+    private ESRandom xoroshiro;
+    private ESRandom pcg;
+    private float[] values;
+    private FloatBuffer buffer;
+    private ForkJoinPool pool;
+    private final List<Callable<Void>> chunks = new ArrayList<>();
+
+    @Setup ( Level.Trial )
+    public void setup()
+    {
+        random = new Random ( 1 );
+        splitMix = new ESRandom.SplitMix64 ( 1 );
+        xoroshiro = new ESRandom.Xoroshiro128 ( 1 );
+        pcg = new ESRandom.Pcg32 ( 1, 0 );
+        values = new float[COUNT];
+        buffer = ByteBuffer.allocateDirect ( COUNT * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+        pool = new ForkJoinPool ( 4 );
+
+        // A split per task, the same numbers whatever order they run in
+        ESRandom root = ESRandom.create ( 1 );
+
+        for ( int first = 0; first < COUNT; first += CHUNK )
+        {
+            final int chunkFirst = first;
+            final ESRandom chunkRandom = root.split();
+
+            chunks.add ( new Callable<Void>()
+            {
+                public Void call()
+                {
+                    chunkRandom.fillUniform ( values, chunkFirst, CHUNK, -1.0f, 1.0f );
+                    return null;
+                }
+            } );
+        }
+    }
+
+    @TearDown ( Level.Trial )
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public float random()
+    {
+        return random.nextFloat();
+    }
+
+    @Benchmark
+    public double mathRandom()
+    {
+        return Math.random();
+    }
+
+    @Benchmark
+    public float threadLocalRandom()
+    {
+        return ThreadLocalRandom.current().nextFloat();
+    }
+
+    @Benchmark
+    public float splitMix()
+    {
+        return splitMix.nextFloat();
+    }
+
+    @Benchmark
+    public float xoroshiro()
+    {
+        return xoroshiro.nextFloat();
+    }
+
+    @Benchmark
+    public float pcg()
+    {
+        return pcg.nextFloat();
+    }
+
+    @Benchmark
+    public float[] fillRandom()
+    {
+        for ( int i = 0; i < COUNT; i++ )
+        {
+            values[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+
+        return values;
+    }
+
+    @Benchmark
+    public float[] fillXoroshiro()
+    {
+        xoroshiro.fillUniform ( values, 0, COUNT, -1.0f, 1.0f );
+        return values;
+    }
+
+    @Benchmark
+    public float[] fillParallel()
+    {
+        pool.invokeAll ( chunks );
+        return values;
+    }
+
+    @Benchmark
+    public FloatBuffer fillBufferRandom()
+    {
+        buffer.clear();
+
+        for ( int i = 0; i < COUNT; i++ )
+        {
+            buffer.put ( random.nextFloat() * 2.0f - 1.0f );
+        }
+
+        return buffer;
+    }
+
+    @Benchmark
+    public FloatBuffer fillBufferXoroshiro()
+    {
+        buffer.clear();
+        xoroshiro.fillUniform ( buffer, COUNT, -1.0f, 1.0f );
+        return buffer;
+    }
+
+    @Benchmark
+    public FloatBuffer fillSphere()
+    {
+        buffer.clear();
+        xoroshiro.fillSphere ( buffer, COUNT / 3, 1.0f );
+        return buffer;
+    }
+
+    private static final int COUNT = 1 << 18;
+    private static final int CHUNK = 1 << 14;
+}
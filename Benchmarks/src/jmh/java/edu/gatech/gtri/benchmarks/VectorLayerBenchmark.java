@@ -0,0 +1,107 @@
+package edu.gatech.gtri.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.gatech.gtri.common.ESEarcut;
+import edu.gatech.gtri.common.ESGeodesy;
+import edu.gatech.gtri.common.ESVectorLayer;
+
+//
+/// \brief Tessellation time of a vector layer with about 1M input vertices:
+///    10k polygons and 10k polylines of 50 points each, projected on the
+///    globe, plus a single 100k point polygon for ESEarcut alone
+//
+@State ( Scope.Benchmark )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+@Fork ( value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" } )
+public class VectorLayerBenchmark
+{
+    @Param ( { "10000" } )
+    public int featuresPerType;
+
+    private ESVectorLayer layer;
+    private ESVectorLayer.Projection projection;
+    private double[] bigPolygon;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random ( 1 );
+
+        layer = new ESVectorLayer();
+        projection = ESVectorLayer.globeProjection ( ESGeodesy.WGS84_KM, 0.5 );
+
+        for ( int f = 0; f < featuresPerType * 2; f++ )
+        {
+            double lon = -180.0 + 360.0 * random.nextDouble();
+            double lat = -70.0 + 140.0 * random.nextDouble();
+            double[] lonLat = star ( random, POINTS_PER_FEATURE, lon, lat, 0.5, 1.0 );
+
+            if ( ( f & 1 ) == 0 )
+            {
+                layer.addPolygon ( lonLat, null, POINTS_PER_FEATURE );
+            }
+            else
+            {
+                layer.addPolyline ( lonLat, POINTS_PER_FEATURE );
+            }
+        }
+
+        // A coastline like outline, only slightly jagged
+        bigPolygon = star ( random, 100000, 0.0, 0.0, 20.0, 0.02 );
+    }
+
+    // Star shaped ring around a center, radius in degrees varying by up to
+    // the jitter fraction
+    private static double[] star ( Random random, int n, double cx, double cy, double radius, double jitter )
+    {
+        double[] lonLat = new double[n * 2];
+
+        for ( int i = 0; i < n; i++ )
+        {
+            double angle = 2.0 * Math.PI * i / n;
+            double r = radius * ( 1.0 + jitter * ( random.nextDouble() - 0.5 ) );
+
+            lonLat[i * 2] = cx + r * Math.cos ( angle );
+            lonLat[i * 2 + 1] = cy + r * Math.sin ( angle );
+        }
+
+        return lonLat;
+    }
+
+    @Benchmark
+    public ESVectorLayer build()
+    {
+        layer.build ( projection, null );
+        return layer;
+    }
+
+    @Benchmark
+    public ESVectorLayer buildParallel()
+    {
+        layer.build ( projection, ForkJoinPool.commonPool() );
+        return layer;
+    }
+
+    @Benchmark
+    public int[] earcutLargePolygon()
+    {
+        return ESEarcut.triangulate ( bigPolygon, null, 100000 );
+    }
+
+    // Some constants
+    private static final int POINTS_PER_FEATURE = 50;
+}
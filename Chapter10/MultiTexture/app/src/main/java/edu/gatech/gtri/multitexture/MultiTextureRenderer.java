@@ -1,14 +1,9 @@
 package edu.gatech.gtri.multitexture;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
@@ -18,6 +13,7 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import edu.gatech.gtri.common.ESShader;
+import edu.gatech.gtri.common.ESTextureLoader;
 
 public class MultiTextureRenderer implements GLSurfaceView.Renderer
 {
@@ -35,44 +31,6 @@ public class MultiTextureRenderer implements GLSurfaceView.Renderer
       mIndices.put ( mIndicesData ).position ( 0 );
    }
 
-   ///
-   //  Load texture from asset
-   //
-   private int loadTextureFromAsset ( String fileName )
-   {
-      int[] textureId = new int[1];
-      Bitmap bitmap = null;
-      InputStream is = null;
-
-      try
-      {
-         is = mContext.getAssets().open ( fileName );
-      }
-      catch ( IOException ioe )
-      {
-         is = null;
-      }
-
-      if ( is == null )
-      {
-         return 0;
-      }
-
-      bitmap = BitmapFactory.decodeStream ( is );
-
-      GLES30.glGenTextures ( 1, textureId, 0 );
-      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
-
-      GLUtils.texImage2D ( GLES30.GL_TEXTURE_2D, 0, bitmap, 0 );
-
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_CLAMP_TO_EDGE );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_CLAMP_TO_EDGE );
-
-      return textureId[0];
-   }
-
    ///
    // Initialize the shader and program object
    //
@@ -88,8 +46,8 @@ public class MultiTextureRenderer implements GLSurfaceView.Renderer
       mLightMapLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_lightMap" );
 
       // Load the texture images from 'assets'
-      mBaseMapTexId = loadTextureFromAsset ( "textures/basemap.png" );
-      mLightMapTexId = loadTextureFromAsset ( "textures/lightmap.png" );
+      mBaseMapTexId = ESTextureLoader.loadTextureFromAsset ( mContext, "textures/basemap.png" );
+      mLightMapTexId = ESTextureLoader.loadTextureFromAsset ( mContext, "textures/lightmap.png" );
 
       GLES30.glClearColor ( 1.0f, 1.0f, 1.0f, 0.0f );
    }
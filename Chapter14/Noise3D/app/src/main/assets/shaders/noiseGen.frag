@@ -0,0 +1,93 @@
+#version 300 es
+  // The noise of ESNoise3D for one layer of the volume, step for step, so
+  // that the bytes match its createVolume() over the same range
+  precision highp float;
+  precision highp int;
+  uniform highp sampler2D s_tableTex; // gradient in xyz, permutation in w
+  uniform int   u_size;
+  uniform int   u_layer;
+  uniform float u_frequency;
+  uniform int   u_period;             // 0 for no repeat
+  uniform float u_min;
+  uniform float u_scale;              // 1 / ( max - min )
+  layout(location = 0) out vec4 outColor;
+
+  vec4 table( int i )
+  {
+    return texelFetch( s_tableTex, ivec2( i & 255, 0 ), 0 );
+  }
+
+  int perm( int i )
+  {
+    return int( table( i ).w );
+  }
+
+  // Gradient dotted with an offset, z and y first
+  float dotGradient( int hash, float fx, float fy, float fz )
+  {
+    vec3 g = table( hash ).xyz;
+    return g.z * fz + g.y * fy + g.x * fx;
+  }
+
+  float fade( float t )
+  {
+    return t * t * t * ( t * ( t * 6.0 - 15.0 ) + 10.0 );
+  }
+
+  // Not mix(), whose a * ( 1 - t ) + b * t rounds differently
+  float lerp( float t, float a, float b )
+  {
+    return a + t * ( b - a );
+  }
+
+  // Lattice cells of voxel coordinate i and the offset in the first
+  void lattice( int i, out int cell0, out int cell1, out float fraction )
+  {
+    float position = float( i ) / float( u_size ) * u_frequency;
+    int cell = int( floor( position ) );
+
+    fraction = position - float( cell );
+
+    if ( u_period == 0 )
+    {
+      cell0 = cell;
+      cell1 = cell + 1;
+    }
+    else
+    {
+      // Coordinates are not negative, so % is the floor modulo
+      cell0 = cell % u_period;
+      cell1 = cell0 + 1 == u_period ? 0 : cell0 + 1;
+    }
+  }
+
+  void main( void )
+  {
+    int x0, x1, y0, y1, z0, z1;
+    float fx0, fy0, fz0;
+
+    lattice( int( gl_FragCoord.x ), x0, x1, fx0 );
+    lattice( int( gl_FragCoord.y ), y0, y1, fy0 );
+    lattice( u_layer, z0, z1, fz0 );
+
+    int hz0 = perm( z0 );
+    int hz1 = perm( z1 );
+    int h00 = perm( y0 + hz0 );
+    int h10 = perm( y1 + hz0 );
+    int h01 = perm( y0 + hz1 );
+    int h11 = perm( y1 + hz1 );
+    float fx1 = fx0 - 1.0, fy1 = fy0 - 1.0, fz1 = fz0 - 1.0;
+    float wx = fade( fx0 ), wy = fade( fy0 ), wz = fade( fz0 );
+    float vy0, vy1, vz0, vz1;
+
+    vy0 = lerp( wx, dotGradient( x0 + h00, fx0, fy0, fz0 ), dotGradient( x1 + h00, fx1, fy0, fz0 ) );
+    vy1 = lerp( wx, dotGradient( x0 + h10, fx0, fy1, fz0 ), dotGradient( x1 + h10, fx1, fy1, fz0 ) );
+    vz0 = lerp( wy, vy0, vy1 );
+
+    vy0 = lerp( wx, dotGradient( x0 + h01, fx0, fy0, fz1 ), dotGradient( x1 + h01, fx1, fy0, fz1 ) );
+    vy1 = lerp( wx, dotGradient( x0 + h11, fx0, fy1, fz1 ), dotGradient( x1 + h11, fx1, fy1, fz1 ) );
+    vz1 = lerp( wy, vy0, vy1 );
+
+    // Written to GL_R8, which rounds to nearest
+    outColor = vec4( clamp( ( lerp( wz, vz0, vz1 ) - u_min ) * u_scale, 0.0, 1.0 ) );
+  }
@@ -0,0 +1,82 @@
+#version 300 es
+  precision highp float;
+  uniform mediump sampler3D s_volumeTex;
+  uniform mediump sampler3D s_brickTex;
+  uniform vec3  u_eye;        // eye in volume coordinates
+  uniform vec3  u_brickSize;  // size of a brick in volume coordinates
+  uniform vec3  u_brickCount;
+  uniform vec3  u_lightDir;
+  uniform float u_coverage;   // densities up to this are empty
+  uniform float u_extinction;
+  uniform float u_step;
+  in vec3 v_volumeCoord;
+  layout(location = 0) out vec4 outColor;
+
+  // Bounded number of samples, so that the cost per pixel is fixed
+  const int MAX_STEPS = 128;
+
+  // Distances along the ray to where it enters and leaves a box
+  vec2 intersectBox( vec3 origin, vec3 invDir, vec3 boxMin, vec3 boxMax )
+  {
+    vec3 t0 = ( boxMin - origin ) * invDir;
+    vec3 t1 = ( boxMax - origin ) * invDir;
+    vec3 tMin = min( t0, t1 );
+    vec3 tMax = max( t0, t1 );
+    return vec2( max( max( tMin.x, tMin.y ), tMin.z ), min( min( tMax.x, tMax.y ), tMax.z ) );
+  }
+
+  float density( vec3 p )
+  {
+    return max( texture( s_volumeTex, p ).r - u_coverage, 0.0 ) * u_extinction;
+  }
+
+  void main( void )
+  {
+    vec3 dir = normalize( v_volumeCoord - u_eye );
+    vec3 invDir = 1.0 / mix( vec3( 1e-6 ), dir, greaterThan( abs( dir ), vec3( 1e-6 ) ) );
+    // Back faces are drawn, so the ray also starts at the eye inside the cube
+    vec2 range = intersectBox( u_eye, invDir, vec3( 0.0 ), vec3( 1.0 ) );
+    float t = max( range.x, 0.0 );
+    float transmittance = 1.0;
+    vec3 color = vec3( 0.0 );
+
+    for ( int i = 0; i < MAX_STEPS && t < range.y; i++ )
+    {
+      vec3 p = u_eye + dir * t;
+      vec3 brick = clamp( floor( p / u_brickSize ), vec3( 0.0 ), u_brickCount - 1.0 );
+
+      // Empty space skipping: no sample of the brick is above the
+      // coverage, go to where the ray leaves it
+      if ( texelFetch( s_brickTex, ivec3( brick ), 0 ).g <= u_coverage )
+      {
+        t = intersectBox( u_eye, invDir, brick * u_brickSize, ( brick + 1.0 ) * u_brickSize ).y + 1e-4;
+        continue;
+      }
+
+      // Adaptive step: twice as long through clear air inside a brick
+      float sigma = density( p );
+      float dt = sigma > 0.0 ? u_step : 2.0 * u_step;
+
+      if ( sigma > 0.0 )
+      {
+        // One sample towards the light for self shadowing
+        float lit = exp( -density( p + u_lightDir * 0.04 ) * 0.04 );
+        vec3 sampleColor = mix( vec3( 0.45, 0.5, 0.6 ), vec3( 1.0 ), lit );
+        float alpha = 1.0 - exp( -sigma * dt );
+
+        color += transmittance * alpha * sampleColor;
+        transmittance *= 1.0 - alpha;
+
+        // Early ray termination: what is behind no longer shows
+        if ( transmittance < 0.01 )
+        {
+          break;
+        }
+      }
+
+      t += dt;
+    }
+
+    // Premultiplied alpha
+    outColor = vec4( color, 1.0 - transmittance );
+  }
@@ -0,0 +1,11 @@
+#version 300 es
+  uniform mat4 u_mvpMatrix;
+  uniform float u_cubeSize;
+  layout(location = 0) in vec4 a_position;
+  out vec3 v_volumeCoord;
+  void main()
+    {
+      // Cube corners at 0 and 1 in volume coordinates
+      v_volumeCoord = a_position.xyz / u_cubeSize + 0.5;
+      gl_Position = u_mvpMatrix * a_position;
+    }
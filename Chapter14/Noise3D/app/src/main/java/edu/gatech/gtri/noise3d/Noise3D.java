@@ -9,6 +9,8 @@ import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.util.Log;
 
+import edu.gatech.gtri.common.ESBenchmark;
+
 public class Noise3D extends AppCompatActivity
 {
    @Override
@@ -23,7 +25,27 @@ public class Noise3D extends AppCompatActivity
          // context, and set an OpenGL ES 3.0-compatible renderer.
          int CONTEXT_CLIENT_VERSION = 3;
          mGLSurfaceView.setEGLContextClientVersion (CONTEXT_CLIENT_VERSION);
-         mGLSurfaceView.setRenderer ( new Noise3DRenderer ( this ) );
+         Noise3DRenderer renderer = new Noise3DRenderer ( this );
+
+         // Benchmark mode, e.g. am start --ei benchmark 600: the frames run
+         // at scripted times and the phase times go to ESBenchmark.OUTPUT_FILE
+         renderer.startBenchmark ( getIntent().getIntExtra ( ESBenchmark.EXTRA_FRAMES, 0 ), getExternalFilesDir ( null ) );
+
+         // Volume mode, --ez volume true: ray marched clouds in place of
+         // the fogged cube
+         if ( getIntent().getBooleanExtra ( "volume", false ) )
+         {
+            renderer.useVolumeRendering();
+         }
+
+         // GPU noise, --ez gpuNoise true, and --ez verifyNoise true to
+         // compare it with the CPU reference in the log
+         if ( getIntent().getBooleanExtra ( "gpuNoise", false ) )
+         {
+            renderer.useGpuNoise ( getIntent().getBooleanExtra ( "verifyNoise", false ) );
+         }
+
+         mGLSurfaceView.setRenderer ( renderer );
       }
       else
       {
@@ -4,18 +4,26 @@ import android.content.Context;
 import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
 import android.os.SystemClock;
+import android.util.Log;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESBenchmark;
+import edu.gatech.gtri.common.ESBrickGrid;
+import edu.gatech.gtri.common.ESFractalNoise;
+import edu.gatech.gtri.common.ESGeneratedCache;
+import edu.gatech.gtri.common.ESNoise3D;
+import edu.gatech.gtri.common.ESRandom;
 import edu.gatech.gtri.common.ESShader;
 import edu.gatech.gtri.common.ESShapes;
+import edu.gatech.gtri.common.ESTextureLoader;
 import edu.gatech.gtri.common.ESTransform;
 
 public class Noise3DRenderer implements GLSurfaceView.Renderer
@@ -26,36 +34,38 @@ public class Noise3DRenderer implements GLSurfaceView.Renderer
    public Noise3DRenderer ( Context context )
    {
       mContext = context;
+      mCache = ESTextureLoader.generatedCache ( context );
+   }
+
+   ///
+   //  Ray march clouds through a 3D texture instead of fogging the cube.
+   //  Called before the surface is created.
+   //
+   public void useVolumeRendering()
+   {
+      mVolumeRendering = true;
+   }
+
+   ///
+   //  Render the noise volume on the GPU, and with verify compare it with
+   //  the CPU reference.  Called before the surface is created.
+   //
+   public void useGpuNoise ( boolean verify )
+   {
+      mGpuNoise = true;
+      mVerifyGpuNoise = verify;
    }
 
    void initNoiseTable()
    {
       int            i;
-      float          a;
-      float          x, y, z, r;
       float []       gradients = new float[256 * 3];
 
-      Random rand = new Random();
+      // build gradient table for 3D noise, unit vectors uniform over the
+      // sphere, the same each run
+      ESRandom rand = ESRandom.create ( NOISE_SEED );
 
-      // build gradient table for 3D noise
-      for ( i = 0; i < 256; i++ )
-      {
-         /*
-          * calculate 1 - 2 * random number
-          */
-         a = ( rand.nextFloat() % 32768 ) / 32768.0f;
-         z = ( 1.0f - 2.0f * a );
-
-         r = (float) (Math.sqrt ( 1.0f - z * z )); // r is radius of circle
-
-         a = ( rand.nextFloat() % 32768 ) / 32768.0f;
-         x = ( r * (float) (Math.cos ( a )) );
-         y = ( r * (float) (Math.sin ( a )) );
-
-         gradients[i * 3] = x;
-         gradients[i * 3 + 1] = y;
-         gradients[i * 3 + 2] = z;
-      }
+      rand.fillSphere ( gradients, 0, 256, 1.0f );
 
       // use the index in the permutation table to load the
       // gradient values from gradients to gradientTable
@@ -68,192 +78,359 @@ public class Noise3DRenderer implements GLSurfaceView.Renderer
       }
    }
 
-   int FLOOR (float x)
+   ///
+   //  Generate the noise volume, tileable so that the scrolling texture
+   //  coordinates repeat it without seams, on all cores and straight into
+   //  the GL_R8 buffer.  It is quantized over the fixed range of
+   //  ESNoise3D, as createGpuNoiseTexture() renders it, so both give the
+   //  fog the same texture.  The volume is cached on disk by its
+   //  parameters, so the next start and a lost context map it instead.
+   //
+   void Create3DNoiseTexture ( )
    {
-      return     (int) Math.floor(x);
-   }
+      ESGeneratedCache.Key key = new ESGeneratedCache.Key ( "noise3d" )
+         .put ( NOISE_SEED ).put ( NOISE_TEXTURE_SIZE ).put ( NOISE_FREQUENCY ).put ( true )
+         .put ( -ESNoise3D.RANGE ).put ( ESNoise3D.RANGE );
+      int misses = mCache.getMisses();
+      long start = SystemClock.elapsedRealtime();
 
-   float smoothstep(float t)
-   {
-      return ( t * t * t * (t * (t * 6.0f - 15.0f) + 10.0f ) );
-   }
+      ByteBuffer texBufUbyte = mCache.get ( key, NOISE_TEXTURE_SIZE * NOISE_TEXTURE_SIZE * NOISE_TEXTURE_SIZE, false, new ESGeneratedCache.Generator()
+      {
+         @Override
+         public void generate ( ByteBuffer out )
+         {
+            initNoiseTable();
 
-   //
-   // generate the value of gradient noise for a given lattice point
-   //
-   // (ix, iy, iz) specifies the 3D lattice position
-   // (fx, fy, fz) specifies the fractional part
-   //
-   float glattice3D ( int ix, int iy, int iz, float fx, float fy, float fz )
-   {
-      int   indx, y, z;
+            ESNoise3D noise = new ESNoise3D ( permTable, gradientTable, ForkJoinPool.commonPool() );
 
-      z = permTable[iz & NOISE_TABLE_MASK];
-      y = permTable[ ( iy + z ) & NOISE_TABLE_MASK];
-      indx = ( ix + y ) & NOISE_TABLE_MASK;
+            noise.createVolume ( out, NOISE_TEXTURE_SIZE, NOISE_FREQUENCY, true, -ESNoise3D.RANGE, ESNoise3D.RANGE );
+         }
+      } );
 
-      return ( gradientTable[indx * 3    ] * fx +
-               gradientTable[indx * 3 + 1] * fy +
-               gradientTable[indx * 3 + 2] * fz );
-   }
+      Log.i ( "Noise3D", "Noise volume " + ( mCache.getMisses() > misses ? "generated" : "mapped" ) + " in "
+              + ( SystemClock.elapsedRealtime() - start ) + " ms" );
 
-   float lerp(float t, float a, float b)
-   {
-      return ( a + t * (b - a) );
+      uploadNoiseTexture ( texBufUbyte );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, 0 );
    }
 
+   ///
+   //  Create the noise texture from a volume, or without data for the GPU
+   //  to render into, and leave it bound
    //
-   // generate the 3D noise value
-   // f describes the input (x, y, z) position for which the noise value needs to be computed
-   // noise3D returns the scalar noise value
-   //
-   float noise3D ( float [] f )
+   private void uploadNoiseTexture ( ByteBuffer volume )
    {
-      int   ix, iy, iz;
-      float fx0, fx1, fy0, fy1, fz0, fz1;
-      float wx, wy, wz;
-      float vx0, vx1, vy0, vy1, vz0, vz1;
-
-      ix = FLOOR ( f[0] );
-      fx0 = f[0] - ix;
-      fx1 = fx0 - 1;
-      wx = smoothstep ( fx0 );
-
-      iy = FLOOR ( f[1] );
-      fy0 = f[1] - iy;
-      fy1 = fy0 - 1;
-      wy = smoothstep ( fy0 );
-
-      iz = FLOOR ( f[2] );
-      fz0 = f[2] - iz;
-      fz1 = fz0 - 1;
-      wz = smoothstep ( fz0 );
-
-      vx0 = glattice3D ( ix, iy, iz, fx0, fy0, fz0 );
-      vx1 = glattice3D ( ix + 1, iy, iz, fx1, fy0, fz0 );
-      vy0 = lerp ( wx, vx0, vx1 );
-      vx0 = glattice3D ( ix, iy + 1, iz, fx0, fy1, fz0 );
-      vx1 = glattice3D ( ix + 1, iy + 1, iz, fx1, fy1, fz0 );
-      vy1 = lerp ( wx, vx0, vx1 );
-      vz0 = lerp ( wy, vy0, vy1 );
-
-      vx0 = glattice3D ( ix, iy, iz + 1, fx0, fy0, fz1 );
-      vx1 = glattice3D ( ix + 1, iy, iz + 1, fx1, fy0, fz1 );
-      vy0 = lerp ( wx, vx0, vx1 );
-      vx0 = glattice3D ( ix, iy + 1, iz + 1, fx0, fy1, fz1 );
-      vx1 = glattice3D ( ix + 1, iy + 1, iz + 1, fx1, fy1, fz1 );
-      vy1 = lerp ( wx, vx0, vx1 );
-      vz1 = lerp ( wy, vy0, vy1 );
-
-      return lerp ( wz, vz0, vz1 );
+      GLES30.glGenTextures ( 1, textureId, 0 );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, textureId[0] );
+      GLES30.glTexImage3D ( GLES30.GL_TEXTURE_3D, 0, GLES30.GL_R8, NOISE_TEXTURE_SIZE, NOISE_TEXTURE_SIZE, NOISE_TEXTURE_SIZE, 0, GLES30.GL_RED, GLES30.GL_UNSIGNED_BYTE, volume );
+
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_REPEAT );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_REPEAT );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_R, GLES30.GL_REPEAT );
    }
 
-   void Create3DNoiseTexture ( )
+   ///
+   //  Render the noise volume on the GPU instead, a layer at a time into
+   //  the 3D texture through a framebuffer, from the same tables uploaded
+   //  as a 256x1 texture.  The shader quantizes over the fixed range of
+   //  ESNoise3D, like Create3DNoiseTexture(), whose volume is the
+   //  reference: with verify the layers are read back and compared with
+   //  it.  Returns false, with nothing created, if the GPU cannot render
+   //  the volume.
+   //
+   private boolean createGpuNoiseTexture ( boolean verify )
    {
-      int textureSize = 64; // Size of the 3D nosie texture
-      float frequency = 5.0f; // Frequency of the noise.
-      float [] texBuf = new float [ 4 * textureSize * textureSize * textureSize ];
-      ShortBuffer texBufUbyte = ByteBuffer.allocateDirect ( 2 * textureSize * textureSize * textureSize ).order ( ByteOrder.nativeOrder() ).asShortBuffer();
-      int x, y, z;
-      int index = 0;
-      float min = 1000;
-      float max = -1000;
-      float range;
+      int voxels = NOISE_TEXTURE_SIZE * NOISE_TEXTURE_SIZE * NOISE_TEXTURE_SIZE;
+      int [] tableTexture = new int[1];
+      int [] framebuffer = new int[1];
+      ByteBuffer rgba = null, layers = null;
+      boolean complete = true;
+      long start = SystemClock.elapsedRealtime();
 
       initNoiseTable();
 
-      for ( z = 0; z < textureSize; z++ )
+      ESNoise3D noise = new ESNoise3D ( permTable, gradientTable, ForkJoinPool.commonPool() );
+      int program = ESShader.loadProgramFromAsset ( mContext,
+         "shaders/noiseGen.vert",
+         "shaders/noiseGen.frag" );
+
+      if ( program == 0 )
       {
-         for ( y = 0; y < textureSize; y++ )
-         {
-            for ( x = 0; x < textureSize; x++ )
-            {
-               float noiseVal;
+         return false;
+      }
 
-               float [] pos = new float [] { ( float ) x / ( float ) textureSize, ( float ) y / ( float ) textureSize, ( float ) z  / ( float ) textureSize };
-               pos[0] *= frequency;
-               pos[1] *= frequency;
-               pos[2] *= frequency;
-               noiseVal = noise3D ( pos );
+      // Gradient in xyz and permutation in w of each texel, not filterable
+      FloatBuffer texels = ByteBuffer.allocateDirect ( ESNoise3D.TABLE_SIZE * 4 * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+
+      noise.getTableTexels ( texels );
+      texels.position ( 0 );
+
+      GLES30.glGenTextures ( 1, tableTexture, 0 );
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE0 );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, tableTexture[0] );
+      GLES30.glTexImage2D ( GLES30.GL_TEXTURE_2D, 0, GLES30.GL_RGBA32F, ESNoise3D.TABLE_SIZE, 1, 0, GLES30.GL_RGBA, GLES30.GL_FLOAT, texels );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_NEAREST );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_NEAREST );
+
+      uploadNoiseTexture ( null );
+
+      GLES30.glUseProgram ( program );
+      GLES30.glUniform1i ( GLES30.glGetUniformLocation ( program, "s_tableTex" ), 0 );
+      GLES30.glUniform1i ( GLES30.glGetUniformLocation ( program, "u_size" ), NOISE_TEXTURE_SIZE );
+      // Tileable, so the frequency is the whole number of cells of a period,
+      // as in ESNoise3D
+      GLES30.glUniform1f ( GLES30.glGetUniformLocation ( program, "u_frequency" ), ( float ) Math.round ( NOISE_FREQUENCY ) );
+      GLES30.glUniform1i ( GLES30.glGetUniformLocation ( program, "u_period" ), Math.round ( NOISE_FREQUENCY ) );
+      GLES30.glUniform1f ( GLES30.glGetUniformLocation ( program, "u_min" ), -ESNoise3D.RANGE );
+      GLES30.glUniform1f ( GLES30.glGetUniformLocation ( program, "u_scale" ), 1.0f / ( 2.0f * ESNoise3D.RANGE ) );
+      int layerLoc = GLES30.glGetUniformLocation ( program, "u_layer" );
+
+      if ( verify )
+      {
+         rgba = ByteBuffer.allocateDirect ( NOISE_TEXTURE_SIZE * NOISE_TEXTURE_SIZE * 4 );
+         layers = ByteBuffer.allocateDirect ( voxels );
+      }
 
-               if ( noiseVal < min )
-               {
-                  min = noiseVal;
-               }
+      GLES30.glGenFramebuffers ( 1, framebuffer, 0 );
+      GLES30.glBindFramebuffer ( GLES30.GL_FRAMEBUFFER, framebuffer[0] );
+      GLES30.glViewport ( 0, 0, NOISE_TEXTURE_SIZE, NOISE_TEXTURE_SIZE );
 
-               if ( noiseVal > max )
-               {
-                  max = noiseVal;
-               }
+      for ( int layer = 0; layer < NOISE_TEXTURE_SIZE; layer++ )
+      {
+         GLES30.glFramebufferTextureLayer ( GLES30.GL_FRAMEBUFFER, GLES30.GL_COLOR_ATTACHMENT0, textureId[0], 0, layer );
 
-               texBuf[ index++ ] = noiseVal;
+         if ( layer == 0 && GLES30.glCheckFramebufferStatus ( GLES30.GL_FRAMEBUFFER ) != GLES30.GL_FRAMEBUFFER_COMPLETE )
+         {
+            complete = false;
+            break;
+         }
+
+         GLES30.glUniform1i ( layerLoc, layer );
+         GLES30.glDrawArrays ( GLES30.GL_TRIANGLES, 0, 3 );
+
+         if ( verify )
+         {
+            // RGBA is the read format every implementation supports
+            GLES30.glReadPixels ( 0, 0, NOISE_TEXTURE_SIZE, NOISE_TEXTURE_SIZE, GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, rgba );
+
+            for ( int i = 0; i < NOISE_TEXTURE_SIZE * NOISE_TEXTURE_SIZE; i++ )
+            {
+               layers.put ( layer * NOISE_TEXTURE_SIZE * NOISE_TEXTURE_SIZE + i, rgba.get ( i * 4 ) );
             }
          }
       }
 
-      // Normalize to the [0, 1] range
-      range = ( max - min );
-      index = 0;
+      GLES30.glBindFramebuffer ( GLES30.GL_FRAMEBUFFER, 0 );
+      GLES30.glDeleteFramebuffers ( 1, framebuffer, 0 );
+      GLES30.glDeleteTextures ( 1, tableTexture, 0 );
+      GLES30.glDeleteProgram ( program );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, 0 );
+
+      if ( !complete )
+      {
+         GLES30.glDeleteTextures ( 1, textureId, 0 );
+         return false;
+      }
+
+      GLES30.glFinish();
+      Log.i ( "Noise3D", "Noise volume rendered on the GPU in " + ( SystemClock.elapsedRealtime() - start ) + " ms" );
 
-      for ( z = 0; z < textureSize; z++ )
+      if ( verify )
       {
-         for ( y = 0; y < textureSize; y++ )
+         ByteBuffer reference = ByteBuffer.allocateDirect ( voxels );
+
+         noise.createVolume ( reference, NOISE_TEXTURE_SIZE, NOISE_FREQUENCY, true, -ESNoise3D.RANGE, ESNoise3D.RANGE );
+         Log.i ( "Noise3D", "GPU noise differs from the CPU reference by at most "
+                 + ESNoise3D.maxDifference ( layers, reference, voxels ) + " in 255" );
+      }
+
+      return true;
+   }
+
+   ///
+   //  Generate the cloud volume: fractal noise shaped into a layer that
+   //  thins out towards the top, the bottom and the sides, so that most
+   //  of the cube is clear air
+   //
+   private void genCloudVolume ( ByteBuffer out )
+   {
+      ESFractalNoise noise = new ESFractalNoise ( NOISE_SEED );
+      float[] values = new float[CLOUD_SIZE * CLOUD_SIZE * CLOUD_SIZE];
+
+      noise.setOctaves ( CLOUD_OCTAVES );
+      noise.createVolume ( values, CLOUD_SIZE, CLOUD_FREQUENCY );
+
+      float min = noise.getMin();
+      float scale = 255.0f / ( noise.getMax() - min );
+
+      for ( int z = 0; z < CLOUD_SIZE; z++ )
+      {
+         for ( int y = 0; y < CLOUD_SIZE; y++ )
          {
-            for ( x = 0; x < textureSize; x++ )
+            for ( int x = 0; x < CLOUD_SIZE; x++ )
             {
-               float noiseVal = texBuf[index];
-               noiseVal = ( noiseVal - min ) / range;
-               texBufUbyte.put ( (short) (noiseVal * 255.0f) ).position ( index++ );
+               int i = ( z * CLOUD_SIZE + y ) * CLOUD_SIZE + x;
+               float fx = ( x + 0.5f ) / CLOUD_SIZE - 0.5f;
+               float fy = ( y + 0.5f ) / CLOUD_SIZE;
+               float fz = ( z + 0.5f ) / CLOUD_SIZE - 0.5f;
+               float shape = smoothstep ( 0.1f, 0.35f, fy ) * smoothstep ( 0.95f, 0.6f, fy )
+                  * smoothstep ( 0.5f, 0.3f, ( float ) Math.sqrt ( fx * fx + fz * fz ) );
+
+               out.put ( i, ( byte ) ( ( values[i] - min ) * scale * shape ) );
             }
          }
       }
+   }
 
-      GLES30.glGenTextures ( 1, textureId, 0 );
-      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, textureId[0] );
-      GLES30.glTexImage3D ( GLES30.GL_TEXTURE_3D, 0, GLES30.GL_R8, textureSize, textureSize, textureSize, 0, GLES30.GL_RED, GLES30.GL_UNSIGNED_BYTE, texBufUbyte );
+   private static float smoothstep ( float edge0, float edge1, float x )
+   {
+      float t = Math.max ( 0.0f, Math.min ( 1.0f, ( x - edge0 ) / ( edge1 - edge0 ) ) );
 
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_MIRRORED_REPEAT );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_MIRRORED_REPEAT );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_R, GLES30.GL_MIRRORED_REPEAT );
+      return t * t * ( 3.0f - 2.0f * t );
+   }
+
+   ///
+   //  Load the cloud volume, cached on disk, and build the min/max bricks
+   //  the ray marcher skips empty space with.  The bricks are rebuilt from
+   //  the volume on all cores, which takes a few milliseconds.
+   //
+   private void createCloudTextures()
+   {
+      int voxels = CLOUD_SIZE * CLOUD_SIZE * CLOUD_SIZE;
+      ESGeneratedCache.Key key = new ESGeneratedCache.Key ( "clouds" ).put ( NOISE_SEED ).put ( CLOUD_SIZE )
+         .put ( CLOUD_FREQUENCY ).put ( CLOUD_OCTAVES );
+      long start = SystemClock.elapsedRealtime();
+
+      ByteBuffer volume = mCache.get ( key, voxels, false, new ESGeneratedCache.Generator()
+      {
+         @Override
+         public void generate ( ByteBuffer out )
+         {
+            genCloudVolume ( out );
+         }
+      } );
+
+      ESBrickGrid grid = new ESBrickGrid ( CLOUD_SIZE, CLOUD_SIZE, CLOUD_SIZE, BRICK_SIZE, ForkJoinPool.commonPool() );
+      int bricks = grid.getBricksX() * grid.getBricksY() * grid.getBricksZ();
+      ByteBuffer brickBuf = ByteBuffer.allocateDirect ( 2 * bricks );
+
+      grid.build ( volume );
+      grid.write ( brickBuf );
+      brickBuf.position ( 0 );
+
+      Log.i ( "Noise3D", "Clouds ready in " + ( SystemClock.elapsedRealtime() - start ) + " ms, "
+              + grid.countEmpty ( CLOUD_COVERAGE ) + " of " + bricks + " bricks empty" );
+
+      GLES30.glGenTextures ( 2, cloudTextureIds, 0 );
+
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, cloudTextureIds[0] );
+      GLES30.glTexImage3D ( GLES30.GL_TEXTURE_3D, 0, GLES30.GL_R8, CLOUD_SIZE, CLOUD_SIZE, CLOUD_SIZE, 0, GLES30.GL_RED, GLES30.GL_UNSIGNED_BYTE, volume );
+      setTexture3DParameters ( GLES30.GL_LINEAR );
+
+      // One RG8 texel per brick, min and max, fetched without filtering
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, cloudTextureIds[1] );
+      GLES30.glTexImage3D ( GLES30.GL_TEXTURE_3D, 0, GLES30.GL_RG8, grid.getBricksX(), grid.getBricksY(), grid.getBricksZ(), 0, GLES30.GL_RG, GLES30.GL_UNSIGNED_BYTE, brickBuf );
+      setTexture3DParameters ( GLES30.GL_NEAREST );
 
       GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, 0 );
    }
 
+   private void setTexture3DParameters ( int filter )
+   {
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_MIN_FILTER, filter );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_MAG_FILTER, filter );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_CLAMP_TO_EDGE );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_CLAMP_TO_EDGE );
+      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_3D, GLES30.GL_TEXTURE_WRAP_R, GLES30.GL_CLAMP_TO_EDGE );
+   }
+
+   ///
+   //  Textures, program and state of the ray marcher.  The back faces of
+   //  the cube are drawn, so that rays start at the eye once it is inside,
+   //  and blended with premultiplied alpha over the sky.
+   //
+   private void initVolumeRendering()
+   {
+      createCloudTextures();
+
+      mVolumeProgram = ESShader.loadProgramFromAsset ( mContext,
+         "shaders/volume.vert",
+         "shaders/volume.frag" );
+
+      volumeMvpLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_mvpMatrix" );
+      cubeSizeLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_cubeSize" );
+      volumeTexLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "s_volumeTex" );
+      brickTexLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "s_brickTex" );
+      eyeLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_eye" );
+      brickSizeLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_brickSize" );
+      brickCountLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_brickCount" );
+      lightDirLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_lightDir" );
+      coverageLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_coverage" );
+      extinctionLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_extinction" );
+      stepLoc = GLES30.glGetUniformLocation ( mVolumeProgram, "u_step" );
+
+      GLES30.glEnable ( GLES30.GL_CULL_FACE );
+      GLES30.glCullFace ( GLES30.GL_FRONT );
+      GLES30.glEnable ( GLES30.GL_BLEND );
+      GLES30.glBlendFunc ( GLES30.GL_ONE, GLES30.GL_ONE_MINUS_SRC_ALPHA );
+   }
+
    ///
    // Initialize the shader and program object
    //
    public void onSurfaceCreated (GL10 glUnused, EGLConfig config )
    {
-      // Create the 3D texture
-      Create3DNoiseTexture ( );
-
-      // Load shaders from 'assets' and get a linked program object
-      mProgramObject = ESShader.loadProgramFromAsset ( mContext,
-         "shaders/vertexShader.vert",
-         "shaders/fragmentShader.frag" );
-
-      // Get the uniform locations
-      mvpLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_mvpMatrix" );
-      mvLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_mvMatrix" );
-      noiseTexLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_noiseTex" );
-      fogMinDistLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_fogMinDist" );
-      fogMaxDistLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_fogMaxDist" );
-      fogColorLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_fogColor" );
-      timeLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_time" );
+      if ( mVolumeRendering )
+      {
+         initVolumeRendering();
+      }
+      else
+      {
+         // Create the 3D texture, on the GPU if asked and possible
+         if ( !mGpuNoise )
+         {
+            Create3DNoiseTexture ( );
+         }
+         else if ( !createGpuNoiseTexture ( mVerifyGpuNoise ) )
+         {
+            Log.w ( "Noise3D", "Cannot render noise on the GPU, generating it on the CPU" );
+            Create3DNoiseTexture ( );
+         }
+
+         // Load shaders from 'assets' and get a linked program object
+         mProgramObject = ESShader.loadProgramFromAsset ( mContext,
+            "shaders/vertexShader.vert",
+            "shaders/fragmentShader.frag" );
+
+         // Get the uniform locations
+         mvpLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_mvpMatrix" );
+         mvLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_mvMatrix" );
+         noiseTexLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_noiseTex" );
+         fogMinDistLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_fogMinDist" );
+         fogMaxDistLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_fogMaxDist" );
+         fogColorLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_fogColor" );
+         timeLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_time" );
+      }
 
       // Generate the position and indices of a cube
-      mCube.genCube ( 3.0f );
+      mCube.genCube ( CUBE_SIZE );
 
       // Starting rotation angle for the cube
       mAngle = 0.0f;
       curTime = 0.0f;
 
-      GLES30.glEnable( GLES30.GL_DEPTH_TEST );
-
-      // Clear color
-      GLES30.glClearColor( 1.0f, 1.0f, 1.0f, 0.0f );
+      // Clear color, the sky behind the clouds
+      if ( mVolumeRendering )
+      {
+         GLES30.glClearColor ( 0.45f, 0.65f, 0.9f, 0.0f );
+      }
+      else
+      {
+         GLES30.glEnable( GLES30.GL_DEPTH_TEST );
+         GLES30.glClearColor( 1.0f, 1.0f, 1.0f, 0.0f );
+      }
    }
 
    private void update()
@@ -263,10 +440,10 @@ public class Noise3DRenderer implements GLSurfaceView.Renderer
 
       if ( mLastTime == 0 )
       {
-         mLastTime = SystemClock.uptimeMillis();
+         mLastTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       }
 
-      long curTime = SystemClock.uptimeMillis();
+      long curTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       long elapsedTime = curTime - mLastTime;
       float deltaTime = elapsedTime / 2000.0f;
       mLastTime = curTime;
@@ -300,12 +477,27 @@ public class Noise3DRenderer implements GLSurfaceView.Renderer
       mvpMatrix.matrixMultiply ( mvMatrix.get(), perspective.get() );
    }
 
+   ///
+   //  Run the next frames as a benchmark if frames > 0, see
+   //  ESBenchmark.Session.  Called before the surface is created.
+   //
+   public void startBenchmark ( int frames, File directory )
+   {
+      mBenchmark.start ( frames, directory );
+   }
+
    ///
    // Draw a cube
    //
    public void onDrawFrame ( GL10 glUnused )
    {
+      mBenchmark.beginFrame();
+
+      mBenchmark.begin ( ESBenchmark.UPDATE );
       update();
+      mBenchmark.end ( ESBenchmark.UPDATE );
+
+      mBenchmark.begin ( ESBenchmark.SUBMIT );
 
       // Set the view-port
       GLES30.glViewport ( 0, 0, mWidth, mHeight );
@@ -313,43 +505,95 @@ public class Noise3DRenderer implements GLSurfaceView.Renderer
       // Clear the color buffer
       GLES30.glClear ( GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT );
 
-      // Use the program object
-      GLES30.glUseProgram ( mProgramObject );
+      if ( mVolumeRendering )
+      {
+         drawClouds();
+      }
+      else
+      {
+         // Use the program object
+         GLES30.glUseProgram ( mProgramObject );
 
-      // Load the vertex position
-      GLES30.glVertexAttribPointer ( ATTRIB_LOCATION_POS, 3, GLES30.GL_FLOAT, false, 0, mCube.getVertices() );
-      GLES30.glEnableVertexAttribArray ( ATTRIB_LOCATION_POS );
+         // Load the vertex position
+         GLES30.glVertexAttribPointer ( ATTRIB_LOCATION_POS, 3, GLES30.GL_FLOAT, false, 0, mCube.getVertices() );
+         GLES30.glEnableVertexAttribArray ( ATTRIB_LOCATION_POS );
+
+         // Set the vertex color to red
+         GLES30.glVertexAttrib4f ( ATTRIB_LOCATION_COLOR, 1.0f, 0.0f, 0.0f, 1.0f );
+
+         // Load the texture coordinate
+         GLES30.glVertexAttribPointer ( ATTRIB_LOCATION_TEXCOORD, 2, GLES30.GL_FLOAT, false, 0, mCube.getTexCoords() );
+         GLES30.glEnableVertexAttribArray ( ATTRIB_LOCATION_TEXCOORD );
+
+         // Load the matrices
+         GLES30.glUniformMatrix4fv ( mvpLoc, 1, false, mvpMatrix.getAsFloatBuffer() );
+         GLES30.glUniformMatrix4fv ( mvLoc, 1, false, mvMatrix.getAsFloatBuffer() );
+
+         // Load other uniforms
+         {
+            float [] fogColor = new float[] { 1.0f, 1.0f, 1.0f, 1.0f };
+            FloatBuffer fogColorBuffer = ByteBuffer.allocateDirect ( 4 * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+            fogColorBuffer.put ( fogColor ).position ( 0 );
+            float fogMinDist = 2.75f;
+            float fogMaxDist = 5.5f;
+            GLES30.glUniform1f ( fogMinDistLoc, fogMinDist );
+            GLES30.glUniform1f ( fogMaxDistLoc, fogMaxDist );
+
+            GLES30.glUniform4fv ( fogColorLoc, 1, fogColorBuffer );
+            GLES30.glUniform1f ( timeLoc, mLastTime * 0.1f );
+         }
 
-      // Set the vertex color to red
-      GLES30.glVertexAttrib4f ( ATTRIB_LOCATION_COLOR, 1.0f, 0.0f, 0.0f, 1.0f );
+         // Bind the 3D texture
+         GLES30.glUniform1i ( noiseTexLoc, 0 );
+         GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, textureId[0] );
 
-      // Load the texture coordinate
-      GLES30.glVertexAttribPointer ( ATTRIB_LOCATION_TEXCOORD, 2, GLES30.GL_FLOAT, false, 0, mCube.getTexCoords() );
-      GLES30.glEnableVertexAttribArray ( ATTRIB_LOCATION_TEXCOORD );
+         // Draw the cube
+         GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mCube.getNumIndices(), GLES30.GL_UNSIGNED_SHORT, mCube.getIndices() );
+      }
+
+      mBenchmark.end ( ESBenchmark.SUBMIT );
 
-      // Load the matrices
-      GLES30.glUniformMatrix4fv ( mvpLoc, 1, false, mvpMatrix.getAsFloatBuffer() );
-      GLES30.glUniformMatrix4fv ( mvLoc, 1, false, mvMatrix.getAsFloatBuffer() );
+      mBenchmark.finishIfDone();
+   }
+
+   ///
+   //  Ray march the clouds through the back faces of the cube
+   //
+   private void drawClouds()
+   {
+      float [] mv = mvMatrix.get();
+      float [] eye = new float[3];
 
-      // Load other uniforms
+      // Eye in model space, -R^T t of the rigid model-view, then in volume
+      // coordinates
+      for ( int i = 0; i < 3; i++ )
       {
-         float [] fogColor = new float[] { 1.0f, 1.0f, 1.0f, 1.0f };
-         FloatBuffer fogColorBuffer = ByteBuffer.allocateDirect ( 4 * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
-         fogColorBuffer.put ( fogColor ).position ( 0 );
-         float fogMinDist = 2.75f;
-         float fogMaxDist = 5.5f;
-         GLES30.glUniform1f ( fogMinDistLoc, fogMinDist );
-         GLES30.glUniform1f ( fogMaxDistLoc, fogMaxDist );
-
-         GLES30.glUniform4fv ( fogColorLoc, 1, fogColorBuffer );
-         GLES30.glUniform1f ( timeLoc, mLastTime * 0.1f );
+         eye[i] = -( mv[i * 4] * mv[12] + mv[i * 4 + 1] * mv[13] + mv[i * 4 + 2] * mv[14] ) / CUBE_SIZE + 0.5f;
       }
 
-      // Bind the 3D texture
-      GLES30.glUniform1i ( noiseTexLoc, 0 );
-      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, textureId[0] );
+      GLES30.glUseProgram ( mVolumeProgram );
+
+      GLES30.glVertexAttribPointer ( ATTRIB_LOCATION_POS, 3, GLES30.GL_FLOAT, false, 0, mCube.getVertices() );
+      GLES30.glEnableVertexAttribArray ( ATTRIB_LOCATION_POS );
+
+      GLES30.glUniformMatrix4fv ( volumeMvpLoc, 1, false, mvpMatrix.getAsFloatBuffer() );
+      GLES30.glUniform1f ( cubeSizeLoc, CUBE_SIZE );
+      GLES30.glUniform3f ( eyeLoc, eye[0], eye[1], eye[2] );
+      GLES30.glUniform3f ( brickSizeLoc, ( float ) BRICK_SIZE / CLOUD_SIZE, ( float ) BRICK_SIZE / CLOUD_SIZE, ( float ) BRICK_SIZE / CLOUD_SIZE );
+      GLES30.glUniform3f ( brickCountLoc, CLOUD_SIZE / BRICK_SIZE, CLOUD_SIZE / BRICK_SIZE, CLOUD_SIZE / BRICK_SIZE );
+      GLES30.glUniform3f ( lightDirLoc, 0.33f, 0.88f, 0.33f );
+      GLES30.glUniform1f ( coverageLoc, CLOUD_COVERAGE / 255.0f );
+      GLES30.glUniform1f ( extinctionLoc, CLOUD_EXTINCTION );
+      GLES30.glUniform1f ( stepLoc, CLOUD_STEP );
+
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE0 );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, cloudTextureIds[0] );
+      GLES30.glUniform1i ( volumeTexLoc, 0 );
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE1 );
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_3D, cloudTextureIds[1] );
+      GLES30.glUniform1i ( brickTexLoc, 1 );
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE0 );
 
-      // Draw the cube
       GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mCube.getNumIndices(), GLES30.GL_UNSIGNED_SHORT, mCube.getIndices() );
    }
 
@@ -377,6 +621,27 @@ public class Noise3DRenderer implements GLSurfaceView.Renderer
    // Texture handle
    private final int [] textureId = new int[1];
 
+   // Noise volume rendered on the GPU, and compared with the CPU
+   private boolean mGpuNoise;
+   private boolean mVerifyGpuNoise;
+
+   // Ray marcher: program, uniform locations, the cloud volume and its
+   // bricks
+   private boolean mVolumeRendering;
+   private int mVolumeProgram;
+   private int volumeMvpLoc;
+   private int cubeSizeLoc;
+   private int volumeTexLoc;
+   private int brickTexLoc;
+   private int eyeLoc;
+   private int brickSizeLoc;
+   private int brickCountLoc;
+   private int lightDirLoc;
+   private int coverageLoc;
+   private int extinctionLoc;
+   private int stepLoc;
+   private final int [] cloudTextureIds = new int[2];
+
    // Vertex data
    private final ESShapes mCube = new ESShapes();
 
@@ -422,7 +687,32 @@ public class Noise3DRenderer implements GLSurfaceView.Renderer
    final int ATTRIB_LOCATION_POS = 0;
    final int ATTRIB_LOCATION_COLOR = 1;
    final int ATTRIB_LOCATION_TEXCOORD = 2;
-   final int NOISE_TABLE_MASK = 255;
 
    private final Context mContext;
+
+   // Generated textures on disk
+   private final ESGeneratedCache mCache;
+
+   // Benchmark run, if any
+   private final ESBenchmark.Session mBenchmark = new ESBenchmark.Session ( "Noise3D" );
+
+   // Some constants
+   private static final long NOISE_SEED = 1;
+   private static final int NOISE_TEXTURE_SIZE = 64;
+   private static final float NOISE_FREQUENCY = 5.0f;
+   private static final float CUBE_SIZE = 3.0f;
+
+   // Cloud volume, and the bricks of empty space skipping
+   private static final int CLOUD_SIZE = 128;
+   private static final float CLOUD_FREQUENCY = 3.0f;
+   private static final int CLOUD_OCTAVES = 5;
+   private static final int BRICK_SIZE = 8;
+
+   // Voxels up to this are clear air, about 70% of the bricks
+   private static final int CLOUD_COVERAGE = 102;
+
+   // Extinction per unit of volume coordinates, and the ray step: the
+   // diagonal of the volume takes 111 steps, within the 128 of the shader
+   private static final float CLOUD_EXTINCTION = 60.0f;
+   private static final float CLOUD_STEP = 1.0f / 64.0f;
 }
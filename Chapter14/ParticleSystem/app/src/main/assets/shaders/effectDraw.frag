@@ -0,0 +1,10 @@
+#version 300 es
+
+precision mediump float;
+uniform sampler2D s_texture;
+in vec4 v_color;
+layout(location = 0) out vec4 fragColor;
+void main()
+{
+  fragColor = v_color * texture ( s_texture, gl_PointCoord );
+}
@@ -0,0 +1,22 @@
+#version 300 es
+
+// Curves over the life of a particle, ESParticleEffect.CURVE_SAMPLES
+// samples of point size and color
+const int CURVE_SAMPLES = 64;
+uniform float u_size[CURVE_SAMPLES];
+uniform vec4 u_color[CURVE_SAMPLES];
+layout(location = 0) in vec3 a_position;
+layout(location = 2) in float a_age;
+layout(location = 3) in float a_lifetime;
+out vec4 v_color;
+void main()
+{
+  // Sample the curves as ESParticleEffect.sample()
+  float x = clamp ( a_age / a_lifetime, 0.0, 1.0 ) * float ( CURVE_SAMPLES - 1 );
+  int i = min ( int ( x ), CURVE_SAMPLES - 2 );
+  float f = x - float ( i );
+
+  v_color = mix ( u_color[i], u_color[i + 1], f );
+  gl_Position = vec4 ( a_position, 1.0 );
+  gl_PointSize = mix ( u_size[i], u_size[i + 1], f );
+}
@@ -0,0 +1,13 @@
+#version 300 es
+
+precision mediump float;
+uniform vec4 u_color;
+uniform sampler2D s_texture;
+in float v_lifetime;
+layout(location = 0) out vec4 fragColor;
+void main()
+{
+  vec4 texColor = texture ( s_texture, gl_PointCoord );
+  fragColor = u_color * texColor;
+  fragColor.a *= v_lifetime;
+}
@@ -0,0 +1,23 @@
+#version 300 es
+
+uniform float u_pointSize;
+layout(location = 0) in vec3 a_position;
+layout(location = 2) in float a_age;
+layout(location = 3) in float a_lifetime;
+out float v_lifetime;
+void main()
+{
+  if ( a_age < a_lifetime )
+  {
+    // Shrink and fade over the life of the particle
+    v_lifetime = 1.0 - a_age / a_lifetime;
+    gl_Position = vec4 ( a_position, 1.0 );
+    gl_PointSize = v_lifetime * v_lifetime * u_pointSize;
+  }
+  else
+  {
+    v_lifetime = 0.0;
+    gl_Position = vec4 ( -1000.0, -1000.0, 0.0, 1.0 );
+    gl_PointSize = 0.0;
+  }
+}
@@ -0,0 +1,9 @@
+#version 300 es
+
+// Never run, the update draws with the rasterizer discarded
+precision mediump float;
+layout(location = 0) out vec4 fragColor;
+void main()
+{
+  fragColor = vec4 ( 0.0 );
+}
@@ -0,0 +1,79 @@
+#version 300 es
+
+// One step of the particles, captured by transform feedback.  Mirrors
+// ESParticleSimulation.stepParticles() operation for operation, keep both
+// in step.
+precision highp float;
+precision highp int;
+
+uniform float u_dt;
+uniform uint u_frameKey;
+uniform int u_capacity;
+uniform int u_spawnFirst;
+uniform int u_spawnCount;
+uniform vec4 u_emitter;
+uniform vec4 u_emitVelocity;
+uniform vec2 u_lifetime;
+uniform vec3 u_gravity;
+uniform float u_drag;
+uniform float u_noise;
+
+layout(location = 0) in vec3 a_position;
+layout(location = 1) in vec3 a_velocity;
+layout(location = 2) in float a_age;
+layout(location = 3) in float a_lifetime;
+
+out vec3 v_position;
+out vec3 v_velocity;
+out float v_age;
+out float v_lifetime;
+
+// lowbias32 by Chris Wellons
+uint hash ( uint x )
+{
+  x ^= x >> 16u;
+  x *= 0x7feb352du;
+  x ^= x >> 15u;
+  x *= 0x846ca68bu;
+  x ^= x >> 16u;
+  return x;
+}
+
+// Random number in [0, 1) of this particle and step, 24 bits exactly
+float random ( uint channel )
+{
+  uint h = hash ( ( uint ( gl_VertexID ) * 16u + channel ) ^ u_frameKey );
+  return float ( h >> 8u ) * ( 1.0 / 16777216.0 );
+}
+
+void main()
+{
+  v_position = a_position;
+  v_velocity = a_velocity;
+  v_age = a_age;
+  v_lifetime = a_lifetime;
+
+  if ( a_age >= a_lifetime )
+  {
+    // Dead: spawn if within the slots from the spawn cursor
+    int slot = ( gl_VertexID + u_capacity - u_spawnFirst ) % u_capacity;
+
+    if ( slot < u_spawnCount )
+    {
+      v_position = u_emitter.xyz + ( vec3 ( random ( 0u ), random ( 1u ), random ( 2u ) ) * 2.0 - 1.0 ) * u_emitter.w;
+      v_velocity = u_emitVelocity.xyz + ( vec3 ( random ( 3u ), random ( 4u ), random ( 5u ) ) * 2.0 - 1.0 ) * u_emitVelocity.w;
+      v_age = 0.0;
+      v_lifetime = u_lifetime.x + u_lifetime.y * random ( 6u );
+    }
+  }
+  else
+  {
+    vec3 n = vec3 ( random ( 7u ), random ( 8u ), random ( 9u ) ) * 2.0 - 1.0;
+    vec3 v = a_velocity + ( u_gravity + n * u_noise ) * u_dt;
+
+    v *= max ( 0.0, 1.0 - u_drag * u_dt );
+    v_position = a_position + v * u_dt;
+    v_velocity = v;
+    v_age = a_age + u_dt;
+  }
+}
@@ -0,0 +1,189 @@
+package edu.gatech.gtri.particlesystem;
+
+import android.content.Context;
+import android.opengl.GLES30;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.gatech.gtri.common.ESParticleEffect;
+import edu.gatech.gtri.common.ESParticleEffectPool;
+import edu.gatech.gtri.common.ESParticlePool;
+import edu.gatech.gtri.common.ESParticleSimulation;
+import edu.gatech.gtri.common.ESShader;
+import edu.gatech.gtri.common.ESTextureLoader;
+
+///
+//  Instances of a particle effect loaded from an asset, stepped on the CPU
+//  by an ESParticleEffectPool.  All instances share one program, one
+//  texture per texture name and one vertex buffer, refilled each frame;
+//  draws go emitter by emitter so the curves and texture are set once.
+//
+public class ParticleEffects
+{
+   ///
+   //  Load the effect and allocate all of its instances
+   //
+   public ParticleEffects ( Context context, String asset, int maxInstances ) throws IOException
+   {
+      try ( InputStream is = new BufferedInputStream ( context.getAssets().open ( asset ) ) )
+      {
+         mEffect = ESParticleEffect.read ( is );
+      }
+
+      int particles = 0;
+
+      for ( int e = 0; e < mEffect.getNumEmitters(); e++ )
+      {
+         particles += mEffect.getEmitter ( e ).getMaxParticles();
+      }
+
+      mContext = context;
+      mPool = new ESParticleEffectPool ( mEffect, maxInstances, 1 );
+      mCapacity = particles * maxInstances;
+      mParticleData = ByteBuffer.allocateDirect ( mCapacity * PARTICLE_BYTES )
+                                .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+      mFirst = new int[maxInstances * mEffect.getNumEmitters()];
+      mTextureIds = new int[mEffect.getNumEmitters()];
+   }
+
+   public ESParticleEffectPool getPool() { return mPool; }
+
+   ///
+   //  Create the program, the buffer and the textures, each once
+   //
+   public void onSurfaceCreated()
+   {
+      Map<String, Integer> textures = new HashMap<>();
+
+      mProgramObject = ESShader.loadProgramFromAsset ( mContext,
+         "shaders/effectDraw.vert",
+         "shaders/effectDraw.frag" );
+      mSizeLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_size" );
+      mColorLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_color" );
+      mSamplerLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_texture" );
+
+      GLES30.glGenBuffers ( 1, mVBO, 0 );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mVBO[0] );
+      GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, mCapacity * PARTICLE_BYTES, null, GLES30.GL_STREAM_DRAW );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
+
+      for ( String texture : mEffect.getTextures() )
+      {
+         textures.put ( texture, ESTextureLoader.loadTextureFromAsset ( mContext, texture ) );
+      }
+
+      for ( int e = 0; e < mEffect.getNumEmitters(); e++ )
+      {
+         mTextureIds[e] = textures.get ( mEffect.getEmitter ( e ).getTexture() );
+      }
+   }
+
+   ///
+   //  Copy the particles of the active instances into the buffer, the
+   //  buffer orphaned first
+   //
+   public void upload()
+   {
+      int emitters = mEffect.getNumEmitters();
+
+      mParticleData.position ( 0 );
+
+      for ( int a = 0; a < mPool.getNumActive(); a++ )
+      {
+         int instance = mPool.getActive ( a );
+
+         for ( int e = 0; e < emitters; e++ )
+         {
+            mFirst[instance * emitters + e] = mParticleData.position() / ESParticleSimulation.STRIDE;
+            mPool.getParticles ( instance, e ).copyTo ( mParticleData );
+         }
+      }
+
+      int bytes = mParticleData.position() * 4;
+
+      mParticleData.position ( 0 );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mVBO[0] );
+      GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, mCapacity * PARTICLE_BYTES, null, GLES30.GL_STREAM_DRAW );
+      GLES30.glBufferSubData ( GLES30.GL_ARRAY_BUFFER, 0, bytes, mParticleData );
+   }
+
+   ///
+   //  Draw the particles uploaded, emitter by emitter
+   //
+   public void draw()
+   {
+      int emitters = mEffect.getNumEmitters();
+
+      GLES30.glUseProgram ( mProgramObject );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mVBO[0] );
+      GLES30.glVertexAttribPointer ( ATTRIBUTE_POSITION_LOCATION, 3, GLES30.GL_FLOAT, false, PARTICLE_BYTES,
+                                     ESParticleSimulation.POSITION * 4 );
+      GLES30.glVertexAttribPointer ( ATTRIBUTE_AGE_LOCATION, 1, GLES30.GL_FLOAT, false, PARTICLE_BYTES,
+                                     ESParticleSimulation.AGE * 4 );
+      GLES30.glVertexAttribPointer ( ATTRIBUTE_LIFETIME_LOCATION, 1, GLES30.GL_FLOAT, false, PARTICLE_BYTES,
+                                     ESParticleSimulation.LIFETIME * 4 );
+      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_POSITION_LOCATION );
+      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_AGE_LOCATION );
+      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_LIFETIME_LOCATION );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
+
+      GLES30.glEnable ( GLES30.GL_BLEND );
+      GLES30.glActiveTexture ( GLES30.GL_TEXTURE0 );
+      GLES30.glUniform1i ( mSamplerLoc, 0 );
+
+      for ( int e = 0; e < emitters; e++ )
+      {
+         ESParticleEffect.Emitter emitter = mEffect.getEmitter ( e );
+
+         GLES30.glUniform1fv ( mSizeLoc, ESParticleEffect.CURVE_SAMPLES, emitter.getTable ( ESParticleEffect.SIZE ), 0 );
+         GLES30.glUniform4fv ( mColorLoc, ESParticleEffect.CURVE_SAMPLES, emitter.getColorTable(), 0 );
+         GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, mTextureIds[e] );
+         GLES30.glBlendFunc ( GLES30.GL_SRC_ALPHA, emitter.isAdditive() ? GLES30.GL_ONE : GLES30.GL_ONE_MINUS_SRC_ALPHA );
+
+         for ( int a = 0; a < mPool.getNumActive(); a++ )
+         {
+            int instance = mPool.getActive ( a );
+            ESParticlePool particles = mPool.getParticles ( instance, e );
+
+            if ( particles.getCount() > 0 )
+            {
+               GLES30.glDrawArrays ( GLES30.GL_POINTS, mFirst[instance * emitters + e], particles.getCount() );
+            }
+         }
+      }
+   }
+
+   // Effect and its instances
+   private final ESParticleEffect mEffect;
+   private final ESParticleEffectPool mPool;
+   private final Context mContext;
+
+   // Program and its uniform locations
+   private int mProgramObject;
+   private int mSizeLoc;
+   private int mColorLoc;
+   private int mSamplerLoc;
+
+   // Texture of each emitter, shared by name
+   private final int [] mTextureIds;
+
+   // Particles of all instances and the first of each emitter of each
+   // instance in the buffer
+   private final int [] mVBO = new int[1];
+   private final FloatBuffer mParticleData;
+   private final int [] mFirst;
+   private final int mCapacity;
+
+   // Some constants
+   private static final int PARTICLE_BYTES = ESParticleSimulation.STRIDE * 4;
+   private static final int ATTRIBUTE_POSITION_LOCATION = 0;
+   private static final int ATTRIBUTE_AGE_LOCATION = 2;
+   private static final int ATTRIBUTE_LIFETIME_LOCATION = 3;
+}
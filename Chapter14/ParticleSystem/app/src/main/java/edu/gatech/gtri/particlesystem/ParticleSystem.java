@@ -9,6 +9,10 @@ import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.util.Log;
 
+import java.io.IOException;
+
+import edu.gatech.gtri.common.ESBenchmark;
+
 public class ParticleSystem extends AppCompatActivity
 {
    private final int CONTEXT_CLIENT_VERSION = 3;
@@ -24,7 +28,44 @@ public class ParticleSystem extends AppCompatActivity
          // Tell the surface view we want to create an OpenGL ES 3.0-compatible
          // context, and set an OpenGL ES 3.0-compatible renderer.
          mGLSurfaceView.setEGLContextClientVersion ( CONTEXT_CLIENT_VERSION );
-         mGLSurfaceView.setRenderer ( new ParticleSystemRenderer ( this ) );
+         ParticleSystemRenderer renderer = new ParticleSystemRenderer ( this );
+
+         // CPU mode, --ez cpu true: the particles step on the CPU and are
+         // copied to the GPU each frame.  --ez sort true also sorts them
+         // for alpha blending.
+         boolean sort = getIntent().getBooleanExtra ( "sort", false );
+
+         if ( sort || getIntent().getBooleanExtra ( "cpu", false ) )
+         {
+            renderer.useCpuSimulation();
+         }
+
+         if ( sort )
+         {
+            renderer.useSorting();
+         }
+
+         // Effect mode, --es effect fireworks: instances of an effect from
+         // assets/effects, written by the particleEffects task of Benchmarks
+         String effect = getIntent().getStringExtra ( "effect" );
+
+         if ( effect != null )
+         {
+            try
+            {
+               renderer.useEffect ( "effects/" + effect + ".effect" );
+            }
+            catch ( IOException ioe )
+            {
+               Log.e ( "ParticleSystem", "Cannot load effect " + effect, ioe );
+            }
+         }
+
+         // Benchmark mode, e.g. am start --ei benchmark 600: the frames run
+         // at scripted times and the phase times go to ESBenchmark.OUTPUT_FILE
+         renderer.startBenchmark ( getIntent().getIntExtra ( ESBenchmark.EXTRA_FRAMES, 0 ), getExternalFilesDir ( null ) );
+
+         mGLSurfaceView.setRenderer ( renderer );
       }
       else
       {
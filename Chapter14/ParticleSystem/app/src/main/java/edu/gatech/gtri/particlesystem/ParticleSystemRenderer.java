@@ -1,23 +1,27 @@
 package edu.gatech.gtri.particlesystem;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.os.SystemClock;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESBenchmark;
+import edu.gatech.gtri.common.ESParticlePool;
+import edu.gatech.gtri.common.ESParticleSimulation;
+import edu.gatech.gtri.common.ESParticleSort;
+import edu.gatech.gtri.common.ESRandom;
 import edu.gatech.gtri.common.ESShader;
+import edu.gatech.gtri.common.ESTextureLoader;
 
 public class ParticleSystemRenderer implements GLSurfaceView.Renderer
 {
@@ -27,65 +31,57 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
    public ParticleSystemRenderer ( Context context )
    {
       mContext = context;
-
-      // Fill in particle data array
-      for ( int i = 0; i < ( NUM_PARTICLES * PARTICLE_SIZE ); i += PARTICLE_SIZE )
-      {
-         // Lifetime of particle
-         mParticleData[i + 0] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 10000.0f );;
-
-         // End position of particle
-         mParticleData[i + 1] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 5000.0f ) - 1.0f;
-         mParticleData[i + 2] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 5000.0f ) - 1.0f;
-         mParticleData[i + 3] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 5000.0f ) - 1.0f;
-
-         // Start position of particle
-         mParticleData[i + 4] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 40000.0f ) - 0.125f;
-         mParticleData[i + 5] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 40000.0f ) - 0.125f;
-         mParticleData[i + 6] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 40000.0f ) - 0.125f;
-      }
-
-      mParticles = ByteBuffer.allocateDirect ( mParticleData.length * 4 )
-         .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
-      mParticles.put ( mParticleData ).position ( 0 );
+      mSimulation = createSimulation ( NUM_PARTICLES );
    }
 
    ///
-   //  Load texture from asset
+   //  Step the particles on the CPU instead of by transform feedback, a
+   //  quarter of them.  Called before the surface is created.
    //
-   private int loadTextureFromAsset ( String fileName )
+   public void useCpuSimulation()
    {
-      int[] textureId = new int[1];
-      Bitmap bitmap = null;
-      InputStream is = null;
-
-      try
-      {
-         is = mContext.getAssets().open ( fileName );
-      }
-      catch ( IOException ioe )
-      {
-         is = null;
-      }
-
-      if ( is == null )
-      {
-         return 0;
-      }
-
-      bitmap = BitmapFactory.decodeStream ( is );
-
-      GLES30.glGenTextures ( 1, textureId, 0 );
-      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
+      mSimulation = createSimulation ( CPU_PARTICLES );
+      mCpuParticles = new ESParticlePool ( mSimulation );
+      mParticleData = ByteBuffer.allocateDirect ( CPU_PARTICLES * PARTICLE_BYTES )
+                                .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+   }
 
-      GLUtils.texImage2D ( GLES30.GL_TEXTURE_2D, 0, bitmap, 0 );
+   ///
+   //  Sort the particles stepped on the CPU from back to front each frame
+   //  and blend them over each other instead of adding them up.  Called
+   //  after useCpuSimulation(), before the surface is created.
+   //
+   public void useSorting()
+   {
+      mSort = new ESParticleSort ( CPU_PARTICLES );
+      mIndexData = ByteBuffer.allocateDirect ( CPU_PARTICLES * 4 )
+                             .order ( ByteOrder.nativeOrder() ).asIntBuffer();
+   }
 
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_CLAMP_TO_EDGE );
-      GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_CLAMP_TO_EDGE );
+   ///
+   //  Draw instances of an effect asset instead, one spawned at a random
+   //  spot each second.  Called before the surface is created.
+   //
+   public void useEffect ( String asset ) throws IOException
+   {
+      mEffects = new ParticleEffects ( mContext, asset, MAX_EFFECTS );
+   }
 
-      return textureId[0];
+   ///
+   //  Particles burst from a point with random velocities, fall, slow
+   //  down and wander.  Spawning one pool per lifetime keeps it full.
+   //
+   private ESParticleSimulation createSimulation ( int numParticles )
+   {
+      ESParticleSimulation simulation = new ESParticleSimulation ( numParticles, 1 );
+
+      simulation.setEmitVelocity ( 0.0f, 0.0f, 0.0f, 1.0f );
+      simulation.setLifetime ( LIFETIME_MIN, LIFETIME_MAX );
+      simulation.setEmitRate ( numParticles / LIFETIME_MAX );
+      simulation.setGravity ( 0.0f, -0.5f, 0.0f );
+      simulation.setDrag ( 0.5f );
+      simulation.setNoise ( 1.0f );
+      return simulation;
    }
 
    ///
@@ -93,112 +89,293 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
    //
    public void onSurfaceCreated ( GL10 glUnused, EGLConfig config )
    {
-      String vShaderStr =
-         "#version 300 es                                      \n" +
-            "uniform float u_time;                                \n" +
-            "uniform vec3 u_centerPosition;                       \n" +
-            "layout(location = 0) in float a_lifetime;            \n" +
-            "layout(location = 1) in vec3 a_startPosition;        \n" +
-            "layout(location = 2) in vec3 a_endPosition;          \n" +
-            "out float v_lifetime;                                \n" +
-            "void main()                                          \n" +
-            "{                                                    \n" +
-            "  if ( u_time <= a_lifetime )                        \n" +
-            "  {                                                  \n" +
-            "    gl_Position.xyz = a_startPosition +              \n" +
-            "                      (u_time * a_endPosition);      \n" +
-            "    gl_Position.xyz += u_centerPosition;             \n" +
-            "    gl_Position.w = 1.0;                             \n" +
-            "  }                                                  \n" +
-            "  else                                               \n" +
-            "     gl_Position = vec4( -1000, -1000, 0, 0 );       \n" +
-            "  v_lifetime = 1.0 - ( u_time / a_lifetime );        \n" +
-            "  v_lifetime = clamp ( v_lifetime, 0.0, 1.0 );       \n" +
-            "  gl_PointSize = ( v_lifetime * v_lifetime ) * 40.0; \n" +
-            "}                                                    \n";
-
-      String fShaderStr =
-         "#version 300 es                                      \n" +
-            "precision mediump float;                             \n" +
-            "uniform vec4 u_color;                                \n" +
-            "in float v_lifetime;                                 \n" +
-            "layout(location = 0) out vec4 fragColor;             \n" +
-            "uniform sampler2D s_texture;                         \n" +
-            "void main()                                          \n" +
-            "{                                                    \n" +
-            "  vec4 texColor;                                     \n" +
-            "  texColor = texture( s_texture, gl_PointCoord );    \n" +
-            "  fragColor = vec4( u_color ) * texColor;            \n" +
-            "  fragColor.a *= v_lifetime;                         \n" +
-            "}                                                    \n";
-
-      // Load the shaders and get a linked program object
-      mProgramObject = ESShader.loadProgram ( vShaderStr, fShaderStr );
-
-      // Get the uniform locations
-      mTimeLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_time" );
-      mCenterPositionLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_centerPosition" );
+      // Initialize time to cause reset on first update
+      mTime = 1.0f;
+
+      GLES30.glClearColor ( 0.0f, 0.0f, 0.0f, 0.0f );
+
+      if ( mEffects != null )
+      {
+         mEffects.onSurfaceCreated();
+         return;
+      }
+
+      // The update program writes the particles by transform feedback,
+      // the draw program reads them as point sprites
+      if ( mCpuParticles == null )
+      {
+         mUpdateProgram = ESShader.loadProgramFromAsset ( mContext,
+            "shaders/particleUpdate.vert",
+            "shaders/particleUpdate.frag",
+            new String [] { "v_position", "v_velocity", "v_age", "v_lifetime" } );
+
+         // Get the uniform locations, there is no update program to query
+         // when the CPU simulates the particles
+         mDtLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_dt" );
+         mFrameKeyLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_frameKey" );
+         mCapacityLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_capacity" );
+         mSpawnFirstLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_spawnFirst" );
+         mSpawnCountLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_spawnCount" );
+         mEmitterLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_emitter" );
+         mEmitVelocityLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_emitVelocity" );
+         mLifetimeLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_lifetime" );
+         mGravityLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_gravity" );
+         mDragLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_drag" );
+         mNoiseLoc = GLES30.glGetUniformLocation ( mUpdateProgram, "u_noise" );
+      }
+
+      mProgramObject = ESShader.loadProgramFromAsset ( mContext,
+         "shaders/particleDraw.vert",
+         "shaders/particleDraw.frag" );
+
+      mPointSizeLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_pointSize" );
       mColorLoc = GLES30.glGetUniformLocation ( mProgramObject, "u_color" );
       mSamplerLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_texture" );
 
-      GLES30.glClearColor ( 0.0f, 0.0f, 0.0f, 0.0f );
+      GLES30.glGenBuffers ( 2, mParticleVBOs, 0 );
 
-      // Load the texture images from 'assets'
-      mTextureId = loadTextureFromAsset ( "textures/smoke.png" );
+      if ( mCpuParticles != null )
+      {
+         // One buffer, refilled each frame by upload()
+         GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mParticleVBOs[0] );
+         GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, CPU_PARTICLES * PARTICLE_BYTES, null, GLES30.GL_STREAM_DRAW );
+
+         // and the back to front indices
+         if ( mSort != null )
+         {
+            GLES30.glGenBuffers ( 1, mIndexVBO, 0 );
+            GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mIndexVBO[0] );
+            GLES30.glBufferData ( GLES30.GL_ELEMENT_ARRAY_BUFFER, CPU_PARTICLES * 4, null, GLES30.GL_STREAM_DRAW );
+            GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, 0 );
+         }
+      }
+      else
+      {
+         // Two particle buffers, read one and write the other each step.
+         // All zeros is all particles dead.
+         ByteBuffer zeros = ByteBuffer.allocateDirect ( NUM_PARTICLES * PARTICLE_BYTES ).order ( ByteOrder.nativeOrder() );
+
+         for ( int i = 0; i < 2; i++ )
+         {
+            GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mParticleVBOs[i] );
+            GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, NUM_PARTICLES * PARTICLE_BYTES, zeros, GLES30.GL_DYNAMIC_COPY );
+         }
+      }
 
-      // Initialize time to cause reset on first update
-      mTime = 1.0f;
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
+      mCurrentVBO = 0;
+
+      // Load the texture images from 'assets'
+      mTextureId = ESTextureLoader.loadTextureFromAsset ( mContext, "textures/smoke.png" );
    }
 
    private void update()
    {
       if ( mLastTime == 0 )
       {
-         mLastTime = SystemClock.uptimeMillis();
+         mLastTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       }
 
-      long curTime = SystemClock.uptimeMillis();
+      long curTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       long elapsedTime = curTime - mLastTime;
-      float deltaTime = elapsedTime / 1000.0f;
+      float deltaTime = Math.min ( MAX_STEP, elapsedTime / 1000.0f );
       mLastTime = curTime;
 
       mTime += deltaTime;
 
-      GLES30.glUseProgram ( mProgramObject );
+      if ( mEffects != null )
+      {
+         // A new effect each second, while there is a free one
+         if ( mTime >= 1.0f )
+         {
+            mTime = 0.0f;
+            mEffects.getPool().spawn ( mRandom.nextFloat() - 0.5f, mRandom.nextFloat() - 0.5f,
+                                       mRandom.nextFloat() - 0.5f );
+         }
+
+         mEffects.getPool().update ( deltaTime );
+         return;
+      }
 
       if ( mTime >= 1.0f )
       {
-         float [] centerPos = new float[3];
-         float [] color = new float[4];
-
          mTime = 0.0f;
 
-         // Pick a new start location and color
-         centerPos[0] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 10000.0f ) - 0.5f;
-         centerPos[1] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 10000.0f ) - 0.5f;
-         centerPos[2] = ( ( float ) ( ( int ) ( Math.random() * 10000 ) % 10000 ) / 10000.0f ) - 0.5f;
+         // Pick a new emitter location and color
+         mSimulation.setEmitter ( mRandom.nextFloat() - 0.5f, mRandom.nextFloat() - 0.5f,
+                                  mRandom.nextFloat() - 0.5f, 0.125f );
 
-         GLES30.glUniform3f ( mCenterPositionLoc, centerPos[0], centerPos[1], centerPos[2] );
+         mColor[0] = mRandom.nextFloat() * 0.5f + 0.5f;
+         mColor[1] = mRandom.nextFloat() * 0.5f + 0.5f;
+         mColor[2] = mRandom.nextFloat() * 0.5f + 0.5f;
+         mColor[3] = 0.5f;
+      }
 
-         // Random color
-         color[0] = ( ( float ) ( ( int ) ( Math.random() * 1000 ) % 10000 ) / 20000.0f ) + 0.5f;
-         color[1] = ( ( float ) ( ( int ) ( Math.random() * 1000 ) % 10000 ) / 20000.0f ) + 0.5f;
-         color[2] = ( ( float ) ( ( int ) ( Math.random() * 1000 ) % 10000 ) / 20000.0f ) + 0.5f;
-         color[3] = 0.5f;
+      // The emitter is all the CPU computes, the particles step on the GPU,
+      // unless they step on the CPU in parallel
+      if ( mCpuParticles != null )
+      {
+         mCpuParticles.step ( deltaTime );
+
+         if ( mSort != null )
+         {
+            // Removed particles move others, the previous order follows
+            if ( mCpuParticles.hasMoved() )
+            {
+               mSort.remap ( mCpuParticles.getMoves() );
+            }
+
+            mSort.sort ( mCpuParticles.getX(), mCpuParticles.getY(), mCpuParticles.getZ(),
+                         mCpuParticles.getCount(), SORT_VIEW );
+         }
+      }
+      else
+      {
+         mSimulation.beginStep ( deltaTime );
+      }
+   }
+
+   ///
+   //  Copy the particles stepped on the CPU into the buffer.  The buffer is
+   //  orphaned first, so the driver hands a fresh one rather than wait for
+   //  the draws of the previous frame.
+   //
+   private void upload()
+   {
+      mParticleData.position ( 0 );
+      mCpuParticles.copyTo ( mParticleData );
+      mParticleData.position ( 0 );
+
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mParticleVBOs[0] );
+      GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, CPU_PARTICLES * PARTICLE_BYTES, null, GLES30.GL_STREAM_DRAW );
+      GLES30.glBufferSubData ( GLES30.GL_ARRAY_BUFFER, 0, mCpuParticles.getCount() * PARTICLE_BYTES, mParticleData );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
 
-         GLES30.glUniform4f ( mColorLoc, color[0], color[1], color[2], color[3] );
+      if ( mSort != null )
+      {
+         mIndexData.position ( 0 );
+         mSort.copyTo ( mIndexData );
+         mIndexData.position ( 0 );
+
+         GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mIndexVBO[0] );
+         GLES30.glBufferData ( GLES30.GL_ELEMENT_ARRAY_BUFFER, CPU_PARTICLES * 4, null, GLES30.GL_STREAM_DRAW );
+         GLES30.glBufferSubData ( GLES30.GL_ELEMENT_ARRAY_BUFFER, 0, mSort.getCount() * 4, mIndexData );
+         GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, 0 );
       }
+   }
+
+   ///
+   //  Step the particles from the current buffer into the other one by
+   //  transform feedback, nothing rasterized
+   //
+   private void simulate()
+   {
+      float [] emitter = mSimulation.getEmitter();
+      float [] emitVelocity = mSimulation.getEmitVelocity();
+      float [] lifetime = mSimulation.getLifetime();
+      float [] gravity = mSimulation.getGravity();
+      int next = 1 - mCurrentVBO;
+
+      GLES30.glUseProgram ( mUpdateProgram );
+      GLES30.glUniform1f ( mDtLoc, mSimulation.getDeltaTime() );
+      GLES30.glUniform1ui ( mFrameKeyLoc, mSimulation.getFrameKey() );
+      GLES30.glUniform1i ( mCapacityLoc, NUM_PARTICLES );
+      GLES30.glUniform1i ( mSpawnFirstLoc, mSimulation.getSpawnFirst() );
+      GLES30.glUniform1i ( mSpawnCountLoc, mSimulation.getSpawnCount() );
+      GLES30.glUniform4f ( mEmitterLoc, emitter[0], emitter[1], emitter[2], emitter[3] );
+      GLES30.glUniform4f ( mEmitVelocityLoc, emitVelocity[0], emitVelocity[1], emitVelocity[2], emitVelocity[3] );
+      GLES30.glUniform2f ( mLifetimeLoc, lifetime[0], lifetime[1] );
+      GLES30.glUniform3f ( mGravityLoc, gravity[0], gravity[1], gravity[2] );
+      GLES30.glUniform1f ( mDragLoc, mSimulation.getDrag() );
+      GLES30.glUniform1f ( mNoiseLoc, mSimulation.getNoise() );
+
+      setParticleAttributes ( mParticleVBOs[mCurrentVBO] );
+      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_VELOCITY_LOCATION );
+
+      GLES30.glBindBufferBase ( GLES30.GL_TRANSFORM_FEEDBACK_BUFFER, 0, mParticleVBOs[next] );
+      GLES30.glEnable ( GLES30.GL_RASTERIZER_DISCARD );
+      GLES30.glBeginTransformFeedback ( GLES30.GL_POINTS );
+      GLES30.glDrawArrays ( GLES30.GL_POINTS, 0, NUM_PARTICLES );
+      GLES30.glEndTransformFeedback();
+      GLES30.glDisable ( GLES30.GL_RASTERIZER_DISCARD );
+      GLES30.glBindBufferBase ( GLES30.GL_TRANSFORM_FEEDBACK_BUFFER, 0, 0 );
 
-      // Load uniform time variable
-      GLES30.glUniform1f ( mTimeLoc, mTime );
+      GLES30.glDisableVertexAttribArray ( ATTRIBUTE_VELOCITY_LOCATION );
+      mCurrentVBO = next;
    }
 
    ///
-   // Draw a triangle using the shader pair created in onSurfaceCreated()
+   //  Point the attributes at the interleaved particles of a buffer
+   //
+   private void setParticleAttributes ( int vbo )
+   {
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, vbo );
+      GLES30.glVertexAttribPointer ( ATTRIBUTE_POSITION_LOCATION, 3, GLES30.GL_FLOAT, false, PARTICLE_BYTES,
+                                     ESParticleSimulation.POSITION * 4 );
+      GLES30.glVertexAttribPointer ( ATTRIBUTE_VELOCITY_LOCATION, 3, GLES30.GL_FLOAT, false, PARTICLE_BYTES,
+                                     ESParticleSimulation.VELOCITY * 4 );
+      GLES30.glVertexAttribPointer ( ATTRIBUTE_AGE_LOCATION, 1, GLES30.GL_FLOAT, false, PARTICLE_BYTES,
+                                     ESParticleSimulation.AGE * 4 );
+      GLES30.glVertexAttribPointer ( ATTRIBUTE_LIFETIME_LOCATION, 1, GLES30.GL_FLOAT, false, PARTICLE_BYTES,
+                                     ESParticleSimulation.LIFETIME * 4 );
+      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_POSITION_LOCATION );
+      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_AGE_LOCATION );
+      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_LIFETIME_LOCATION );
+      GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, 0 );
+   }
+
+   ///
+   //  Run the next frames as a benchmark if frames > 0, see
+   //  ESBenchmark.Session.  Called before the surface is created.
+   //
+   public void startBenchmark ( int frames, File directory )
+   {
+      mBenchmark.start ( frames, directory );
+   }
+
+   ///
+   // Step the particles and draw them as point sprites
    //
    public void onDrawFrame ( GL10 glUnused )
    {
+      mBenchmark.beginFrame();
+
+      mBenchmark.begin ( ESBenchmark.UPDATE );
       update();
+      mBenchmark.end ( ESBenchmark.UPDATE );
+
+      if ( mEffects != null )
+      {
+         mBenchmark.begin ( ESBenchmark.UPLOAD );
+         mEffects.upload();
+         mBenchmark.end ( ESBenchmark.UPLOAD );
+
+         mBenchmark.begin ( ESBenchmark.SUBMIT );
+         GLES30.glViewport ( 0, 0, mWidth, mHeight );
+         GLES30.glClear ( GLES30.GL_COLOR_BUFFER_BIT );
+         mEffects.draw();
+         mBenchmark.end ( ESBenchmark.SUBMIT );
+
+         mBenchmark.finishIfDone();
+         return;
+      }
+
+      int numParticles = NUM_PARTICLES;
+
+      if ( mCpuParticles != null )
+      {
+         mBenchmark.begin ( ESBenchmark.UPLOAD );
+         upload();
+         mBenchmark.end ( ESBenchmark.UPLOAD );
+         numParticles = mCpuParticles.getCount();
+      }
+
+      mBenchmark.begin ( ESBenchmark.SUBMIT );
+
+      if ( mCpuParticles == null )
+      {
+         simulate();
+      }
 
       // Set the viewport
       GLES30.glViewport ( 0, 0, mWidth, mHeight );
@@ -208,34 +385,16 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
 
       // Use the program object
       GLES30.glUseProgram ( mProgramObject );
+      GLES30.glUniform1f ( mPointSizeLoc, POINT_SIZE );
+      GLES30.glUniform4fv ( mColorLoc, 1, mColor, 0 );
 
-      // Load the vertex attributes
-      //[0]
-      mParticles.position ( 0 );
-      GLES30.glVertexAttribPointer ( ATTRIBUTE_LIFETIME_LOCATION, 1, GLES30.GL_FLOAT,
-         false, PARTICLE_SIZE * ( 4 ),
-         mParticles );
-
-      //[1]
-      mParticles.position ( 1 );
-      GLES30.glVertexAttribPointer ( ATTRIBUTE_ENDPOSITION_LOCATION, 3, GLES30.GL_FLOAT,
-         false, PARTICLE_SIZE * ( 4 ),
-         mParticles );
-
-      //[4]
-      mParticles.position ( 4 );
-      GLES30.glVertexAttribPointer ( ATTRIBUTE_STARTPOSITION_LOCATION, 3, GLES30.GL_FLOAT,
-         false, PARTICLE_SIZE * ( 4 ),
-         mParticles );
-
-
-      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_LIFETIME_LOCATION );
-      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_ENDPOSITION_LOCATION );
-      GLES30.glEnableVertexAttribArray ( ATTRIBUTE_STARTPOSITION_LOCATION );
+      // Load the vertex attributes from the buffer just written
+      setParticleAttributes ( mParticleVBOs[mCurrentVBO] );
 
-      // Blend particles
+      // Blend particles: add them up in any order, or blend them over
+      // each other from back to front
       GLES30.glEnable ( GLES30.GL_BLEND );
-      GLES30.glBlendFunc ( GLES30.GL_SRC_ALPHA, GLES30.GL_ONE );
+      GLES30.glBlendFunc ( GLES30.GL_SRC_ALPHA, mSort != null ? GLES30.GL_ONE_MINUS_SRC_ALPHA : GLES30.GL_ONE );
 
       // Bind the texture
       GLES30.glActiveTexture ( GLES30.GL_TEXTURE0 );
@@ -244,7 +403,20 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
       // Set the sampler texture unit to 0
       GLES30.glUniform1i ( mSamplerLoc, 0 );
 
-      GLES30.glDrawArrays ( GLES30.GL_POINTS, 0, NUM_PARTICLES );
+      if ( mSort != null )
+      {
+         GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, mIndexVBO[0] );
+         GLES30.glDrawElements ( GLES30.GL_POINTS, mSort.getCount(), GLES30.GL_UNSIGNED_INT, 0 );
+         GLES30.glBindBuffer ( GLES30.GL_ELEMENT_ARRAY_BUFFER, 0 );
+      }
+      else
+      {
+         GLES30.glDrawArrays ( GLES30.GL_POINTS, 0, numParticles );
+      }
+
+      mBenchmark.end ( ESBenchmark.SUBMIT );
+
+      mBenchmark.finishIfDone();
    }
 
    ///
@@ -256,38 +428,87 @@ public class ParticleSystemRenderer implements GLSurfaceView.Renderer
       mHeight = height;
    }
 
-   // Handle to a program object
+   // Handle to the draw and update program objects
    private int mProgramObject;
+   private int mUpdateProgram;
 
-   // Uniform location
-   private int mTimeLoc;
+   // Uniform locations of the draw program
+   private int mPointSizeLoc;
    private int mColorLoc;
-   private int mCenterPositionLoc;
    private int mSamplerLoc;
 
+   // Uniform locations of the update program
+   private int mDtLoc;
+   private int mFrameKeyLoc;
+   private int mCapacityLoc;
+   private int mSpawnFirstLoc;
+   private int mSpawnCountLoc;
+   private int mEmitterLoc;
+   private int mEmitVelocityLoc;
+   private int mLifetimeLoc;
+   private int mGravityLoc;
+   private int mDragLoc;
+   private int mNoiseLoc;
+
    // Texture handle
    private int mTextureId;
 
-   // Current time
-   float time;
-
    // Additional Member variables
    private int mWidth;
    private int mHeight;
    private long mLastTime = 0;
 
-   private final int NUM_PARTICLES = 1000;
-   private final int PARTICLE_SIZE = 7;
+   private final int NUM_PARTICLES = 1 << 20;
+   private final int CPU_PARTICLES = 1 << 18;
+   private final int PARTICLE_BYTES = ESParticleSimulation.STRIDE * 4;
+
+   private final int ATTRIBUTE_POSITION_LOCATION = 0;
+   private final int ATTRIBUTE_VELOCITY_LOCATION = 1;
+   private final int ATTRIBUTE_AGE_LOCATION      = 2;
+   private final int ATTRIBUTE_LIFETIME_LOCATION = 3;
 
-   private final int ATTRIBUTE_LIFETIME_LOCATION      = 0;
-   private final int ATTRIBUTE_STARTPOSITION_LOCATION = 1;
-   private final int ATTRIBUTE_ENDPOSITION_LOCATION   = 2;
+   // Particle buffers, written in turn, and the one holding the current
+   // particles
+   private final int [] mParticleVBOs = new int[2];
+   private int mCurrentVBO;
 
-   // Particle vertex data
-   private float [] mParticleData = new float[ NUM_PARTICLES * PARTICLE_SIZE ];
+   // Emitter and forces, stepped on the CPU for the spawns
+   private ESParticleSimulation mSimulation;
 
-   private FloatBuffer mParticles;
+   // Particles stepped on the CPU and their interleaved copy, null when
+   // they step on the GPU
+   private ESParticlePool mCpuParticles;
+   private FloatBuffer mParticleData;
 
+   // Back to front order of the CPU particles and its index buffer, null
+   // when not sorting
+   private ESParticleSort mSort;
+   private IntBuffer mIndexData;
+   private final int [] mIndexVBO = new int[1];
+
+   // Effect instances, null when drawing the particles above
+   private ParticleEffects mEffects;
+
+   // Time since the emitter moved, and the color of the particles
    private float mTime;
+   private final float [] mColor = new float[4];
+   private final ESRandom mRandom = ESRandom.create ( 1 );
    private Context mContext;
+
+   // Benchmark run, if any
+   private final ESBenchmark.Session mBenchmark = new ESBenchmark.Session ( "ParticleSystem" );
+
+   // Some constants
+   private static final float LIFETIME_MIN = 0.5f;
+   private static final float LIFETIME_MAX = 1.0f;
+   private static final float POINT_SIZE = 8.0f;
+   private static final float MAX_STEP = 0.1f;
+   private static final int MAX_EFFECTS = 8;
+
+   // Positions are clip coordinates, farther with a greater z: flip z to
+   // sort them as view space
+   private static final float [] SORT_VIEW = { 1.0f, 0.0f, 0.0f, 0.0f,
+                                               0.0f, 1.0f, 0.0f, 0.0f,
+                                               0.0f, 0.0f, -1.0f, 0.0f,
+                                               0.0f, 0.0f, 0.0f, 1.0f };
 }
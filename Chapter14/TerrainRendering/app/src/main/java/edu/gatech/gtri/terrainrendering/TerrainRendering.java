@@ -8,6 +8,10 @@ import android.content.pm.ConfigurationInfo;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+import edu.gatech.gtri.common.ESTerrainEditor;
 
 public class TerrainRendering extends AppCompatActivity
 {
@@ -24,7 +28,42 @@ public class TerrainRendering extends AppCompatActivity
          // Tell the surface view we want to create an OpenGL ES 3.0-compatible
          // context, and set an OpenGL ES 3.0-compatible renderer.
          mGLSurfaceView.setEGLContextClientVersion ( CONTEXT_CLIENT_VERSION );
-         mGLSurfaceView.setRenderer ( new TerrainRenderingRenderer ( this ) );
+         mRenderer = new TerrainRenderingRenderer ( this );
+
+         // Procedural mode, --el seed 7: the terrain is generated from the
+         // seed instead of loaded from the heightmap asset
+         if ( getIntent().hasExtra ( "seed" ) )
+         {
+            mRenderer.useProceduralTerrain ( getIntent().getLongExtra ( "seed", 0 ) );
+         }
+
+         mGLSurfaceView.setRenderer ( mRenderer );
+
+         // Drag with one finger to raise the terrain, with two to lower it
+         mGLSurfaceView.setOnTouchListener ( new View.OnTouchListener()
+         {
+            @Override
+            public boolean onTouch ( View v, MotionEvent e )
+            {
+               final float x = e.getX();
+               final float y = e.getY();
+               final int brush = e.getPointerCount() > 1 ? ESTerrainEditor.BRUSH_LOWER : ESTerrainEditor.BRUSH_RAISE;
+
+               if ( e.getActionMasked() == MotionEvent.ACTION_DOWN || e.getActionMasked() == MotionEvent.ACTION_MOVE )
+               {
+                  // Edits run on the GL thread, which owns the heightmap
+                  mGLSurfaceView.queueEvent ( new Runnable()
+                  {
+                     public void run()
+                     {
+                        mRenderer.applyBrush ( x, y, brush );
+                     }
+                  } );
+               }
+
+               return true;
+            }
+         } );
       }
       else
       {
@@ -62,4 +101,5 @@ public class TerrainRendering extends AppCompatActivity
    }
 
    private GLSurfaceView mGLSurfaceView;
+   private TerrainRenderingRenderer mRenderer;
 }
\ No newline at end of file
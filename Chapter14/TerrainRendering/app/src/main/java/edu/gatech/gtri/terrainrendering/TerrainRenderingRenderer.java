@@ -5,26 +5,37 @@ import static javax.microedition.khronos.opengles.GL11.GL_STATIC_DRAW;
 import static javax.microedition.khronos.opengles.GL11.GL_ARRAY_BUFFER;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.pm.PackageManager;
 import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
-
+import android.opengl.Matrix;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.IntBuffer;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESFractalNoise;
+import edu.gatech.gtri.common.ESHeightPyramid;
+import edu.gatech.gtri.common.ESHeightQuery;
+import edu.gatech.gtri.common.ESHeightmap;
+import edu.gatech.gtri.common.ESHorizonCuller;
 import edu.gatech.gtri.common.ESShader;
 import edu.gatech.gtri.common.ESShapes;
+import edu.gatech.gtri.common.ESTerrainEditor;
 import edu.gatech.gtri.common.ESTransform;
 
-public class TerrainRenderingRenderer implements GLSurfaceView.Renderer
+public class TerrainRenderingRenderer implements GLSurfaceView.Renderer, ESTerrainEditor.Uploader
 {
    ///
    // Constructor
@@ -35,35 +46,70 @@ public class TerrainRenderingRenderer implements GLSurfaceView.Renderer
    }
 
    ///
-   //  Load texture from asset
+   //  Generate the terrain from a seed instead of loading the heightmap
+   //  asset.  Called before the surface is created.
    //
-   private void loadTextureFromAsset ( String fileName )
+   public void useProceduralTerrain ( long seed )
+   {
+      mProcedural = true;
+      mSeed = seed;
+   }
+
+   ///
+   //  Load the heightmap from asset at full precision
+   //
+   private void loadHeightmapFromAsset ( String fileName )
    {
-      textureId[0] = 0;
-      Bitmap bitmap;
       InputStream is;
 
       try
       {
          is = mContext.getAssets().open ( fileName );
+         mHeightmap = ESHeightmap.loadFloat ( is );
+         initHeightQuery ( "heightmap.pyramid" );
       }
       catch ( IOException ioe )
       {
-         is = null;
-      }
-
-      if ( is == null )
-      {
+         Log.e ( "TerrainRendering", "Failed to load heightmap " + fileName + ": " + ioe.getMessage() );
+         mHeightmap = null;
          return;
       }
 
-      bitmap = BitmapFactory.decodeStream ( is );
+      createHeightmapTexture();
+   }
 
-      IntBuffer textureIBO = ByteBuffer.allocateDirect ( 4 ).order ( ByteOrder.nativeOrder() ).asIntBuffer();
-      GLES30.glGenTextures ( 1, textureIBO );
+   ///
+   //  Generate the heightmap: warped ridged multifractal, sharp crests
+   //  over smooth valleys, on all cores
+   //
+   private void generateHeightmap ( long seed )
+   {
+      ESFractalNoise noise = new ESFractalNoise ( seed );
+      float [] heights = new float[PROCEDURAL_SIZE * PROCEDURAL_SIZE];
+      long start = SystemClock.uptimeMillis();
+
+      noise.setType ( ESFractalNoise.RIDGED );
+      noise.setOctaves ( PROCEDURAL_OCTAVES );
+      noise.setWarp ( PROCEDURAL_WARP );
+      noise.createHeightfield ( heights, PROCEDURAL_SIZE, PROCEDURAL_SIZE, PROCEDURAL_FREQUENCY );
+      Log.i ( "TerrainRendering", "Generated terrain " + seed + " in " + ( SystemClock.uptimeMillis() - start ) + " ms" );
+
+      mHeightmap = ESHeightmap.fromFloats ( heights, PROCEDURAL_SIZE, PROCEDURAL_SIZE );
+      initHeightQuery ( "heightmap-" + seed + ".pyramid" );
+      createHeightmapTexture();
+   }
+
+   private void createHeightmapTexture()
+   {
+      GLES30.glGenTextures ( 1, textureId, 0 );
       GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
 
-      GLUtils.texImage2D ( GLES30.GL_TEXTURE_2D, 0, bitmap, 0 );
+      // A single 16-bit float channel keeps the precision of the source
+      // at a quarter of the memory of an RGBA8 bitmap.  R16F is filterable.
+      GLES30.glPixelStorei ( GLES30.GL_UNPACK_ALIGNMENT, 4 );
+      GLES30.glTexImage2D ( GLES30.GL_TEXTURE_2D, 0, GLES30.GL_R16F,
+                            mHeightmap.getWidth(), mHeightmap.getHeight(), 0,
+                            GLES30.GL_RED, GLES30.GL_FLOAT, mHeightmap.getFloats() );
 
       GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR );
       GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
@@ -71,6 +117,175 @@ public class TerrainRenderingRenderer implements GLSurfaceView.Renderer
       GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_CLAMP_TO_EDGE );
    }
 
+   ///
+   //  Set up CPU height queries over the heightmap.  Texel centers sit at
+   //  (i + 0.5) / size in texture space, so the query grid is offset by half
+   //  a texel; outside of it the query clamps, like GL_CLAMP_TO_EDGE.
+   //
+   private void initHeightQuery ( String pyramidName )
+   {
+      int width = mHeightmap.getWidth();
+      int height = mHeightmap.getHeight();
+      float [] heights = new float[width * height];
+
+      mHeightmap.getFloats().get ( heights ).position ( 0 );
+
+      ESHeightPyramid pyramid = loadHeightPyramid ( heights, width, height, pyramidName );
+      float sizeX = ( width - 1 ) / ( float ) width;
+      float sizeY = ( height - 1 ) / ( float ) height;
+
+      mHeightQuery = new ESHeightQuery ( heights, width, height, sizeX, sizeY, 1.0f, pyramid );
+      mEditor = new ESTerrainEditor ( heights, width, height, sizeX, sizeY, HEIGHT_SCALE, pyramid );
+   }
+
+   ///
+   //  Read the min/max pyramid of the heightmap from the cache directory,
+   //  or build it and cache it for the next start.  The cache is stale once
+   //  the app (and with it the heightmap asset) has been updated.
+   //
+   private ESHeightPyramid loadHeightPyramid ( float [] heights, int width, int height, String name )
+   {
+      File file = new File ( mContext.getCacheDir(), name );
+      long installed;
+
+      try
+      {
+         installed = mContext.getPackageManager().getPackageInfo ( mContext.getPackageName(), 0 ).lastUpdateTime;
+      }
+      catch ( PackageManager.NameNotFoundException e )
+      {
+         installed = Long.MAX_VALUE;
+      }
+
+      if ( file.lastModified() > installed )
+      {
+         try ( InputStream is = new BufferedInputStream ( new FileInputStream ( file ) ) )
+         {
+            return ESHeightPyramid.read ( is, heights, width, height );
+         }
+         catch ( IOException ioe )
+         {
+            Log.w ( "TerrainRendering", "Rebuilding height pyramid: " + ioe.getMessage() );
+         }
+      }
+
+      ESHeightPyramid pyramid = new ESHeightPyramid ( heights, width, height );
+
+      try ( OutputStream os = new BufferedOutputStream ( new FileOutputStream ( file ) ) )
+      {
+         pyramid.write ( os );
+      }
+      catch ( IOException ioe )
+      {
+         Log.w ( "TerrainRendering", "Failed to cache height pyramid: " + ioe.getMessage() );
+         file.delete();
+      }
+
+      return pyramid;
+   }
+
+   ///
+   //  Height in [0, 1] at texture coordinate (u, v), filtered the same way
+   //  the vertex shader samples the heightmap
+   //
+   private float sampleHeightmap ( float u, float v )
+   {
+      return mHeightQuery.getHeight ( u - 0.5f / mHeightQuery.getWidth(), v - 0.5f / mHeightQuery.getHeight() );
+   }
+
+   ///
+   //  Build the horizon culler over the grid vertices
+   //
+   private void initCuller ( short gridSize )
+   {
+      mGridSize = gridSize;
+      mGridHeights = new float[gridSize * gridSize];
+      sampleGridHeights ( 0, 0, gridSize - 1, gridSize - 1 );
+
+      mCuller = new ESHorizonCuller ( mGridHeights, gridSize, gridSize, PATCH_SIZE,
+                                      1.0f, 1.0f, HEIGHT_SCALE, HORIZON_RESOLUTION );
+   }
+
+   ///
+   //  Sample the heightmap at the grid vertices [i0, i1] x [j0, j1].  Grid
+   //  vertex (i, j) sits at (i, j) / (gridSize - 1), which is also its
+   //  heightmap texture coordinate.
+   //
+   private void sampleGridHeights ( int i0, int j0, int i1, int j1 )
+   {
+      float stepSize = ( float ) mGridSize - 1;
+
+      for ( int j = j0; j <= j1; j++ )
+      {
+         for ( int i = i0; i <= i1; i++ )
+         {
+            mGridHeights[j * mGridSize + i] = mHeightQuery == null ? 0.0f : sampleHeightmap ( i / stepSize, j / stepSize );
+         }
+      }
+   }
+
+   ///
+   //  Apply a brush under a touch point.  Must run on the GL thread.
+   //
+   public void applyBrush ( float x, float y, int brush )
+   {
+      if ( mEditor == null || mWidth == 0 || mHeight == 0 )
+      {
+         return;
+      }
+
+      // Unproject the touch point to a ray in terrain space
+      float ndcX = 2.0f * x / mWidth - 1.0f;
+      float ndcY = 1.0f - 2.0f * y / mHeight;
+      float [] near = { ndcX, ndcY, -1.0f, 1.0f };
+      float [] far = { ndcX, ndcY, 1.0f, 1.0f };
+
+      Matrix.invertM ( mInvMvp, 0, mvpMatrix.get(), 0 );
+      Matrix.multiplyMV ( mRayNear, 0, mInvMvp, 0, near, 0 );
+      Matrix.multiplyMV ( mRayFar, 0, mInvMvp, 0, far, 0 );
+
+      float ox = mRayNear[0] / mRayNear[3];
+      float oy = mRayNear[1] / mRayNear[3];
+      float oz = mRayNear[2] / mRayNear[3];
+      float dx = mRayFar[0] / mRayFar[3] - ox;
+      float dy = mRayFar[1] / mRayFar[3] - oy;
+      float dz = mRayFar[2] / mRayFar[3] - oz;
+      int width = mEditor.getWidth();
+      int height = mEditor.getHeight();
+
+      // The height query grid is offset by half a texel and unscaled in z
+      if ( !mHeightQuery.intersectRay ( ox - 0.5f / width, oy - 0.5f / height, oz / HEIGHT_SCALE,
+                                        dx, dy, dz / HEIGHT_SCALE, mHit ) )
+      {
+         return;
+      }
+
+      mEditor.applyBrush ( brush, mHit[0] * width, mHit[1] * height, BRUSH_RADIUS, BRUSH_STRENGTH );
+   }
+
+   ///
+   //  Upload the heights changed by the brushes since the last frame
+   //
+   public void uploadRegion ( int col, int row, int width, int height, FloatBuffer heights )
+   {
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
+      GLES30.glPixelStorei ( GLES30.GL_UNPACK_ALIGNMENT, 4 );
+      GLES30.glTexSubImage2D ( GLES30.GL_TEXTURE_2D, 0, col, row, width, height,
+                               GLES30.GL_RED, GLES30.GL_FLOAT, heights );
+
+      // Texel (col, row) is sampled by grid vertices within one texel of
+      // its center; refresh their heights and the bounds of their patches
+      float scaleX = ( mGridSize - 1 ) / ( float ) mEditor.getWidth();
+      float scaleY = ( mGridSize - 1 ) / ( float ) mEditor.getHeight();
+      int i0 = Math.max ( 0, ( int ) Math.floor ( ( col - 0.5f ) * scaleX ) );
+      int j0 = Math.max ( 0, ( int ) Math.floor ( ( row - 0.5f ) * scaleY ) );
+      int i1 = Math.min ( mGridSize - 1, ( int ) Math.ceil ( ( col + width + 0.5f ) * scaleX ) );
+      int j1 = Math.min ( mGridSize - 1, ( int ) Math.ceil ( ( row + height + 0.5f ) * scaleY ) );
+
+      sampleGridHeights ( i0, j0, i1, j1 );
+      mCuller.updatePatches ( mGridHeights, i0, j0, i1, j1 );
+   }
+
    ///
    // Initialize the shader and program object
    //
@@ -88,27 +303,31 @@ public class TerrainRenderingRenderer implements GLSurfaceView.Renderer
       // Get the sampler location
       samplerLoc = GLES30.glGetUniformLocation ( mProgramObject, "s_texture" );
 
-      // Load the heightmap texture images from 'assets'
-      loadTextureFromAsset ( "textures/heightmap.png" );
+      // Load the heightmap texture images from 'assets', or generate one
+      if ( mProcedural )
+      {
+         generateHeightmap ( mSeed );
+      }
+      else
+      {
+         loadHeightmapFromAsset ( "textures/heightmap.tga" );
+      }
 
       // Generate the position and indices of a square grid for the base terrain
+      // with the indices grouped into patches for culling
       short gridSize = 200;
-      mSquareGrid.genSquareGrid (gridSize);
+      mSquareGrid.genSquareGrid ( gridSize, PATCH_SIZE );
+      initCuller ( gridSize );
 
-      // Initialize the VBO Ids
-      mVBOIds[0] = 0;
-      mVBOIds[1] = 1;
+      // Generate the VBO Ids
+      GLES30.glGenBuffers ( 2, mVBOIds, 0 );
 
       // Index buffer for base terrain
-      IntBuffer indicesIBO = ByteBuffer.allocateDirect ( 4 ).order ( ByteOrder.nativeOrder() ).asIntBuffer();
-      GLES30.glGenBuffers ( 1, indicesIBO );
       GLES30.glBindBuffer ( GL_ELEMENT_ARRAY_BUFFER, mVBOIds[0] );
       GLES30.glBufferData ( GL_ELEMENT_ARRAY_BUFFER, mSquareGrid.getNumIndices() * 2, mSquareGrid.getIndices(), GL_STATIC_DRAW );
       GLES30.glBindBuffer ( GL_ELEMENT_ARRAY_BUFFER, 0 );
 
       // Position VBO for base terrain
-      IntBuffer positionVBO = ByteBuffer.allocateDirect ( 4 ).order ( ByteOrder.nativeOrder() ).asIntBuffer();
-      GLES30.glGenBuffers ( 1, positionVBO );
       GLES30.glBindBuffer ( GL_ARRAY_BUFFER, mVBOIds[1] );
       GLES30.glBufferData ( GL_ARRAY_BUFFER, gridSize * gridSize * 4 * 3, mSquareGrid.getVertices(), GL_STATIC_DRAW );
 
@@ -141,6 +360,11 @@ public class TerrainRenderingRenderer implements GLSurfaceView.Renderer
       // Compute the final MVP by multiplying the
       // modelview and perspective matrices together
       mvpMatrix.matrixMultiply ( modelview.get(), perspective.get() );
+
+      // The eye position in terrain space is the translation of the
+      // inverse modelview matrix
+      Matrix.invertM ( mInvModelview, 0, modelview.get(), 0 );
+      mCuller.cull ( mvpMatrix.get(), mInvModelview[12], mInvModelview[13], mInvModelview[14] );
    }
 
    ///
@@ -148,6 +372,12 @@ public class TerrainRenderingRenderer implements GLSurfaceView.Renderer
    //
    public void onDrawFrame ( GL10 glUnused )
    {
+      // Upload only the part of the heightmap edited since the last frame
+      if ( mEditor != null )
+      {
+         mEditor.flush ( this );
+      }
+
       update();
 
       // Set the view-port
@@ -180,8 +410,20 @@ public class TerrainRenderingRenderer implements GLSurfaceView.Renderer
       // Set the height map sampler to texture unit to 0
       GLES30.glUniform1i ( samplerLoc, 0 );
 
-      // Draw the grid
-      GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mSquareGrid.getNumIndices(), GLES30.GL_UNSIGNED_SHORT, mSquareGrid.getIndices() );
+      // Draw the patches that survived culling, front to back
+      int [] visible = mCuller.getVisiblePatches();
+      int [] patchOffsets = mSquareGrid.getPatchIndexOffsets();
+
+      for ( int i = 0; i < mCuller.getNumVisible(); i++ )
+      {
+         int patch = visible[i];
+         int first = patchOffsets[patch];
+         int count = patchOffsets[patch + 1] - first;
+         GLES30.glDrawElements ( GLES30.GL_TRIANGLES, count, GLES30.GL_UNSIGNED_SHORT, first * 2 );
+      }
+
+      GLES30.glBindBuffer ( GL_ELEMENT_ARRAY_BUFFER, 0 );
+      GLES30.glBindBuffer ( GL_ARRAY_BUFFER, 0 );
    }
 
    ///
@@ -214,11 +456,45 @@ public class TerrainRenderingRenderer implements GLSurfaceView.Renderer
 
    // MVP matrix
    private final ESTransform mvpMatrix = new ESTransform();
+   private final float [] mInvModelview = new float[16];
+
+   // Decoded or generated heightmap, shared by the texture and the culler
+   private ESHeightmap mHeightmap;
+   private boolean mProcedural;
+   private long mSeed;
+   private ESHeightQuery mHeightQuery;
+
+   // Horizon culling of terrain patches
+   private ESHorizonCuller mCuller;
+   private short mGridSize;
+   private float [] mGridHeights;
+
+   // Terrain editing
+   private ESTerrainEditor mEditor;
+   private final float [] mInvMvp = new float[16];
+   private final float [] mRayNear = new float[4];
+   private final float [] mRayFar = new float[4];
+   private final float [] mHit = new float[4];
 
    // Additional member variables
    private int mWidth;
    private int mHeight;
 
    final int POSITION_LOC = 0;
+   final short PATCH_SIZE = 25;
+   final int HORIZON_RESOLUTION = 1024;
+
+   // Must match the height scale in vertexShader.vert (h / 2.5)
+   final float HEIGHT_SCALE = 0.4f;
+
+   // Brush radius in heightmap texels and height change per dab
+   final float BRUSH_RADIUS = 24.0f;
+   final float BRUSH_STRENGTH = 0.01f;
+
+   // Size and fractal of the generated heightmap
+   final int PROCEDURAL_SIZE = 512;
+   final int PROCEDURAL_OCTAVES = 8;
+   final float PROCEDURAL_FREQUENCY = 4.0f;
+   final float PROCEDURAL_WARP = 0.25f;
    private final Context mContext;
 }
@@ -12,16 +12,18 @@ import android.os.SystemClock;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.File;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
-import java.util.Random;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESBenchmark;
+import edu.gatech.gtri.common.ESRandom;
 import edu.gatech.gtri.common.ESShader;
 import edu.gatech.gtri.common.ESShapes;
 import edu.gatech.gtri.common.ESTransform;
@@ -86,7 +88,7 @@ public class InstancingRenderer implements GLSurfaceView.Renderer
       GLES30.glBufferData ( GLES30.GL_ARRAY_BUFFER, 24 * Float.BYTES * 3, mCube.getVertices(), GLES30.GL_STATIC_DRAW );
 
       // Random color for each instance
-      Random rand = new Random ( 0 );
+      ESRandom rand = ESRandom.create ( 0 );
       {
          int instance;
          float [] colors = new float[NUM_INSTANCES * Float.BYTES];
@@ -94,9 +96,9 @@ public class InstancingRenderer implements GLSurfaceView.Renderer
 
          for ( instance = 0; instance < NUM_INSTANCES; instance++ )
          {
-            colors[instance * Float.BYTES + 0] = rand.nextFloat() % 255;
-            colors[instance * Float.BYTES + 1] = rand.nextFloat() % 255;
-            colors[instance * Float.BYTES + 2] = rand.nextFloat() % 255;
+            colors[instance * Float.BYTES + 0] = rand.nextFloat();
+            colors[instance * Float.BYTES + 1] = rand.nextFloat();
+            colors[instance * Float.BYTES + 2] = rand.nextFloat();
             colors[instance * Float.BYTES + 3] = 0;
          }
          mColors.put ( colors ).position ( 0 );
@@ -108,15 +110,11 @@ public class InstancingRenderer implements GLSurfaceView.Renderer
 
       // Allocate storage to store MVP per instance
       {
-         int instance;
          int numElements = new ESTransform().get().length;
          int vtxStride = 4 * ( VERTEX_POS_SIZE );
 
          // Random angle for each instance, compute the MVP later
-         for ( instance = 0; instance < NUM_INSTANCES; instance++ )
-         {
-            mAngle[instance] = rand.nextFloat() * 360.0f;
-         }
+         rand.fillUniform ( mAngle, 0, NUM_INSTANCES, 0.0f, 360.0f );
 
          GLES30.glGenBuffers ( 1, mvpVBO, 0 );
          GLES30.glBindBuffer ( GLES30.GL_ARRAY_BUFFER, mvpVBO[0] );
@@ -141,10 +139,10 @@ public class InstancingRenderer implements GLSurfaceView.Renderer
 
       if ( mLastTime == 0 )
       {
-         mLastTime = SystemClock.uptimeMillis();
+         mLastTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       }
 
-      long curTime = SystemClock.uptimeMillis();
+      long curTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       long elapsedTime = curTime - mLastTime;
       float deltaTime = elapsedTime / 2000.0f;
       mLastTime = curTime;
@@ -206,12 +204,27 @@ public class InstancingRenderer implements GLSurfaceView.Renderer
       GLES30.glUnmapBuffer ( GLES30.GL_ARRAY_BUFFER );
    }
 
+   ///
+   //  Run the next frames as a benchmark if frames > 0, see
+   //  ESBenchmark.Session.  Called before the surface is created.
+   //
+   public void startBenchmark ( int frames, File directory )
+   {
+      mBenchmark.start ( frames, directory );
+   }
+
    ///
    // Draw
    //
    public void onDrawFrame ( GL10 glUnused )
    {
+      mBenchmark.beginFrame();
+
+      mBenchmark.begin ( ESBenchmark.UPDATE );
       update();
+      mBenchmark.end ( ESBenchmark.UPDATE );
+
+      mBenchmark.begin ( ESBenchmark.SUBMIT );
 
       // Set the view-port
       GLES30.glViewport ( 0, 0, mWidth, mHeight );
@@ -257,6 +270,10 @@ public class InstancingRenderer implements GLSurfaceView.Renderer
 
       // Draw the cubes
       GLES30.glDrawElementsInstanced ( GLES30.GL_TRIANGLES, mCube.getNumIndices(), GLES30.GL_UNSIGNED_SHORT, 0, NUM_INSTANCES );
+
+      mBenchmark.end ( ESBenchmark.SUBMIT );
+
+      mBenchmark.finishIfDone();
    }
 
    ///
@@ -298,4 +315,9 @@ public class InstancingRenderer implements GLSurfaceView.Renderer
 
    // Additional member variables
    private long mLastTime = 0;
+
+   // Benchmark run, if any
+   private final ESBenchmark.Session mBenchmark = new ESBenchmark.Session ( "Instancing" );
+
+   // Some constants
 }
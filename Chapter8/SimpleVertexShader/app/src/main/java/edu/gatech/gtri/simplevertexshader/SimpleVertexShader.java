@@ -9,6 +9,8 @@ import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.util.Log;
 
+import edu.gatech.gtri.common.ESBenchmark;
+
 public class SimpleVertexShader extends AppCompatActivity
 {
    private final int CONTEXT_CLIENT_VERSION = 3;
@@ -24,7 +26,13 @@ public class SimpleVertexShader extends AppCompatActivity
          // Tell the surface view we want to create an OpenGL ES 3.0-compatible
          // context, and set an OpenGL ES 3.0-compatible renderer.
          mGLSurfaceView.setEGLContextClientVersion ( CONTEXT_CLIENT_VERSION );
-         mGLSurfaceView.setRenderer ( new SimpleVertexShaderRenderer ( this ) );
+         SimpleVertexShaderRenderer renderer = new SimpleVertexShaderRenderer ( this );
+
+         // Benchmark mode, e.g. am start --ei benchmark 600: the frames run
+         // at scripted times and the phase times go to ESBenchmark.OUTPUT_FILE
+         renderer.startBenchmark ( getIntent().getIntExtra ( ESBenchmark.EXTRA_FRAMES, 0 ), getExternalFilesDir ( null ) );
+
+         mGLSurfaceView.setRenderer ( renderer );
       }
       else
       {
@@ -5,9 +5,12 @@ import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
 import android.os.SystemClock;
 
+import java.io.File;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESBenchmark;
 import edu.gatech.gtri.common.ESShader;
 import edu.gatech.gtri.common.ESShapes;
 import edu.gatech.gtri.common.ESTransform;
@@ -68,10 +71,10 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
    {
       if ( mLastTime == 0 )
       {
-         mLastTime = SystemClock.uptimeMillis();
+         mLastTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       }
 
-      long curTime = SystemClock.uptimeMillis();
+      long curTime = mBenchmark.timeMillis ( SystemClock.uptimeMillis() );
       long elapsedTime = curTime - mLastTime;
       float deltaTime = elapsedTime / 1000.0f;
       mLastTime = curTime;
@@ -109,12 +112,27 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
       mMVPMatrix.matrixMultiply ( modelview.get(), perspective.get() );
    }
 
+   ///
+   //  Run the next frames as a benchmark if frames > 0, see
+   //  ESBenchmark.Session.  Called before the surface is created.
+   //
+   public void startBenchmark ( int frames, File directory )
+   {
+      mBenchmark.start ( frames, directory );
+   }
+
    ///
    // Draw a triangle using the shader pair created in onSurfaceCreated()
    //
    public void onDrawFrame ( GL10 glUnused )
    {
+      mBenchmark.beginFrame();
+
+      mBenchmark.begin ( ESBenchmark.UPDATE );
       update();
+      mBenchmark.end ( ESBenchmark.UPDATE );
+
+      mBenchmark.begin ( ESBenchmark.SUBMIT );
 
       // Set the viewport
       GLES30.glViewport ( 0, 0, mWidth, mHeight );
@@ -137,6 +155,10 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
 
       // Draw the cube
       GLES30.glDrawElements ( GLES30.GL_TRIANGLES, mCube.getNumIndices(), GLES30.GL_UNSIGNED_SHORT, mCube.getIndices() );
+
+      mBenchmark.end ( ESBenchmark.SUBMIT );
+
+      mBenchmark.finishIfDone();
    }
 
    ///
@@ -167,4 +189,9 @@ public class SimpleVertexShaderRenderer implements GLSurfaceView.Renderer
    private int mWidth;
    private int mHeight;
    private long mLastTime = 0;
+
+   // Benchmark run, if any
+   private final ESBenchmark.Session mBenchmark = new ESBenchmark.Session ( "SimpleVertexShader" );
+
+   // Some constants
 }
@@ -13,7 +13,9 @@ import java.nio.ShortBuffer;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESGeneratedCache;
 import edu.gatech.gtri.common.ESShader;
+import edu.gatech.gtri.common.ESTextureLoader;
 
 public class MipMap2DRenderer implements GLSurfaceView.Renderer
 {
@@ -23,6 +25,7 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
    public MipMap2DRenderer ( Context context )
    {
       mContext = context;
+      mCache = ESTextureLoader.generatedCache ( context );
 
       mVertices = ByteBuffer.allocateDirect ( mVerticesData.length * 4 )
          .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
@@ -124,76 +127,98 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
 
 
    ///
-   // Create a mipmapped 2D texture image
+   //  Size of an RGB8 mipmap chain, down to 1x1
    //
-   private int createMipMappedTexture2D( )
+   private int mipChainSize ( int width, int height )
    {
-      // Texture object handle
-      int[]  textureId = new int[1];
-      int    width = 256,
-         height = 256;
-      int    level;
-      byte[] pixels;
-      byte[] prevImage;
-      byte[] newImage;
-
-      pixels = genCheckImage ( width, height, 8 );
+      int size = 0;
 
-      // Generate a texture object
-      GLES30.glGenTextures ( 1, textureId, 0 );
+      while ( true )
+      {
+         size += width * height * 3;
 
-      // Bind the texture object
-      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
+         if ( width == 1 || height == 1 )
+         {
+            return size;
+         }
 
-      // Load mipmap level 0
-      ByteBuffer pixelBuffer = ByteBuffer.allocateDirect ( width * height * 3 );
-      pixelBuffer.put ( pixels ).position ( 0 );
+         width = Math.max ( width / 2, 1 );
+         height = Math.max ( height / 2, 1 );
+      }
+   }
 
-      GLES30.glTexImage2D ( GLES30.GL_TEXTURE_2D, 0, GLES30.GL_RGB, width, height,
-         0, GLES30.GL_RGB, GLES30.GL_UNSIGNED_BYTE, pixelBuffer );
+   ///
+   //  Generate the checkerboard and its mipmap levels, one after the other
+   //
+   private void genMipChain ( ByteBuffer out, int width, int height, int checkSize )
+   {
+      byte[] prevImage = genCheckImage ( width, height, checkSize );
 
-      level = 1;
-      prevImage = pixels;
+      out.put ( prevImage );
 
       while ( width > 1 && height > 1 )
       {
-         int newWidth,
-            newHeight;
+         int newWidth = Math.max ( width / 2, 1 );
+         int newHeight = Math.max ( height / 2, 1 );
 
-         newWidth = width / 2;
+         // Generate the next mipmap level
+         prevImage = genMipMap2D ( prevImage, width, height, newWidth, newHeight );
+         out.put ( prevImage );
 
-         if ( newWidth <= 0 )
-         {
-            newWidth = 1;
-         }
+         // Half the width and height
+         width = newWidth;
+         height = newHeight;
+      }
+   }
 
-         newHeight = height / 2;
+   ///
+   // Create a mipmapped 2D texture image.  The mipmap chain is cached on
+   // disk, deflated since the checkerboard compresses to almost nothing.
+   //
+   private int createMipMappedTexture2D( )
+   {
+      // Texture object handle
+      int[]  textureId = new int[1];
+      final int width = 256,
+         height = 256;
+      final int checkSize = 8;
+      int    level;
+      int    levelWidth = width,
+         levelHeight = height;
+      ESGeneratedCache.Key key = new ESGeneratedCache.Key ( "mipmap2d" ).put ( width ).put ( height ).put ( checkSize );
 
-         if ( newHeight <= 0 )
+      ByteBuffer pixels = mCache.get ( key, mipChainSize ( width, height ), true, new ESGeneratedCache.Generator()
+      {
+         @Override
+         public void generate ( ByteBuffer out )
          {
-            newHeight = 1;
+            genMipChain ( out, width, height, checkSize );
          }
+      } );
 
-         // Generate the next mipmap level
-         newImage = genMipMap2D ( prevImage, width, height, newWidth, newHeight );
+      // Generate a texture object
+      GLES30.glGenTextures ( 1, textureId, 0 );
+
+      // Bind the texture object
+      GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
 
-         // Load the mipmap level
-         pixelBuffer = ByteBuffer.allocateDirect ( newWidth * newHeight * 3 );
-         pixelBuffer.put ( newImage ).position ( 0 );
+      // Load each level from its offset in the chain
+      for ( level = 0; ; level++ )
+      {
          GLES30.glTexImage2D ( GLES30.GL_TEXTURE_2D, level, GLES30.GL_RGB,
-            newWidth, newHeight, 0, GLES30.GL_RGB,
-            GLES30.GL_UNSIGNED_BYTE, pixelBuffer );
+            levelWidth, levelHeight, 0, GLES30.GL_RGB,
+            GLES30.GL_UNSIGNED_BYTE, pixels );
 
-         // Set the previous image for the next iteration
-         prevImage = newImage;
-         level++;
+         if ( levelWidth == 1 || levelHeight == 1 )
+         {
+            break;
+         }
 
-         // Half the width and height
-         width = newWidth;
-         height = newHeight;
+         pixels.position ( pixels.position() + levelWidth * levelHeight * 3 );
+         levelWidth = Math.max ( levelWidth / 2, 1 );
+         levelHeight = Math.max ( levelHeight / 2, 1 );
       }
 
-
       // Set the filtering mode
       GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_NEAREST_MIPMAP_NEAREST );
       GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
@@ -323,4 +348,7 @@ public class MipMap2DRenderer implements GLSurfaceView.Renderer
       };
 
    private Context mContext;
+
+   // Generated textures on disk
+   private final ESGeneratedCache mCache;
 }
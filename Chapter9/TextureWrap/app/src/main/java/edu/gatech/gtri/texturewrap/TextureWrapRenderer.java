@@ -12,7 +12,9 @@ import java.nio.ShortBuffer;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import edu.gatech.gtri.common.ESGeneratedCache;
 import edu.gatech.gtri.common.ESShader;
+import edu.gatech.gtri.common.ESTextureLoader;
 
 public class TextureWrapRenderer implements GLSurfaceView.Renderer
 {
@@ -22,6 +24,7 @@ public class TextureWrapRenderer implements GLSurfaceView.Renderer
    //
    public TextureWrapRenderer ( Context context )
    {
+      mCache = ESTextureLoader.generatedCache ( context );
 
       mVertices = ByteBuffer.allocateDirect ( mVerticesData.length * 4 )
          .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
@@ -34,7 +37,7 @@ public class TextureWrapRenderer implements GLSurfaceView.Renderer
    ///
    //  Generate an RGB8 checkerboard image
    //
-   private ByteBuffer genCheckImage ( int width, int height, int checkSize )
+   private void genCheckImage ( ByteBuffer out, int width, int height, int checkSize )
    {
       int x,
          y;
@@ -63,23 +66,30 @@ public class TextureWrapRenderer implements GLSurfaceView.Renderer
             pixels[ ( y * width + x ) * 3 + 2] = bColor;
          }
 
-      ByteBuffer result = ByteBuffer.allocateDirect ( width * height * 3 );
-      result.put ( pixels ).position ( 0 );
-      return result;
+      out.put ( pixels );
    }
 
    ///
-   // Create a 2D texture image
+   // Create a 2D texture image, cached on disk
    //
    private int createTexture2D( )
    {
       // Texture object handle
       int[] textureId = new int[1];
-      int    width = 256,
+      final int width = 256,
          height = 256;
+      final int checkSize = 64;
+      ESGeneratedCache.Key key = new ESGeneratedCache.Key ( "checkerboard" ).put ( width ).put ( height ).put ( checkSize );
       ByteBuffer pixels;
 
-      pixels = genCheckImage ( width, height, 64 );
+      pixels = mCache.get ( key, width * height * 3, true, new ESGeneratedCache.Generator()
+      {
+         @Override
+         public void generate ( ByteBuffer out )
+         {
+            genCheckImage ( out, width, height, checkSize );
+         }
+      } );
 
       // Generate a texture object
       GLES30.glGenTextures ( 1, textureId, 0 );
@@ -225,6 +235,9 @@ public class TextureWrapRenderer implements GLSurfaceView.Renderer
    private FloatBuffer mVertices;
    private ShortBuffer mIndices;
 
+   // Generated textures on disk
+   private final ESGeneratedCache mCache;
+
    private final float[] mVerticesData =
       {
          -0.3f,  0.3f, 0.0f, 1.0f,  // Position 0
@@ -0,0 +1,534 @@
+package edu.gatech.gtri.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.Math;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief Precomputed atmospheric scattering tables of a spherical planet.
+///
+/// Two tables replace the ray marching of a scattering shader:
+///
+/// - Transmittance, 2D: the fraction of light left along a ray from
+///   radius r in direction mu (cosine of the zenith angle) to the end of
+///   the ray, the ground or the top of the atmosphere.  Since both points
+///   of a segment see the same ray end, the transmittance between them is
+///   the ratio of their two lookups.
+/// - In-scatter, 3D: the light scattered once towards the start of the
+///   same ray, as a function of r, mu and the sun zenith cosine mu_s.
+///   RGB holds Rayleigh, alpha the red Mie channel; the phase functions
+///   are left to the shader.  The table drops the view-sun azimuth of the
+///   full 4D parameterization and is computed at 90 degrees, like Elek's
+///   3D tables.
+///
+/// Coordinates map linearly to the texel centers: u_r = sqrt ( ( r^2 -
+/// bottom^2 ) / ( top^2 - bottom^2 ) ), u_mu = ( mu + 1 ) / 2 and u_mu_s =
+/// ( mu_s + 0.2 ) / 1.2, each scaled to ( u * ( size - 1 ) + 0.5 ) / size.
+/// Shaders must use the same mapping.
+///
+/// Generating the tables takes about a second on one core and splits into
+/// one task per radius on a ForkJoinPool; the tables can be written to a
+/// stream and read back instead, or stored in an ESGeneratedCache under
+/// getCacheKey(), which holds every parameter they depend on.  Lengths
+/// are in km.
+///
+/// This class has no Android dependencies.
+//
+public class ESAtmosphere
+{
+    // Transmittance table size, mu along x and r along y
+    public static final int TRANSMITTANCE_MU = 256;
+    public static final int TRANSMITTANCE_R = 64;
+
+    // In-scatter table size, mu along x, mu_s along y and r along z
+    public static final int SCATTER_MU = 128;
+    public static final int SCATTER_MU_S = 32;
+    public static final int SCATTER_R = 32;
+
+    // Earth's scattering coefficients per km and scale heights in km, from
+    // Bruneton and Neyret's precomputed atmospheric scattering
+    public static final double[] RAYLEIGH_SCATTERING = { 5.8e-3, 13.5e-3, 33.1e-3 };
+    public static final double RAYLEIGH_HEIGHT = 8.0;
+    public static final double MIE_SCATTERING = 4.0e-3;
+    public static final double MIE_EXTINCTION = MIE_SCATTERING / 0.9;
+    public static final double MIE_HEIGHT = 1.2;
+    public static final double MIE_G = 0.8;
+
+    // Size of both tables as floats, see writeTables()
+    public static final int TABLES_SIZE = ( TRANSMITTANCE_MU * TRANSMITTANCE_R * 3
+                                            + SCATTER_MU * SCATTER_MU_S * SCATTER_R * 4 ) * 4;
+
+    //
+    ///
+    /// \brief Create an atmosphere whose tables are not generated yet
+    /// \param bottomRadius Radius of the ground
+    /// \param topRadius Radius of the top of the atmosphere
+    //
+    public ESAtmosphere ( double bottomRadius, double topRadius )
+    {
+        if ( bottomRadius <= 0.0 || topRadius <= bottomRadius )
+        {
+            throw new IllegalArgumentException ( "Invalid atmosphere radii" );
+        }
+
+        mBottom = bottomRadius;
+        mTop = topRadius;
+        mTransmittance = new float[TRANSMITTANCE_MU * TRANSMITTANCE_R * 3];
+        mInScatter = new float[SCATTER_MU * SCATTER_MU_S * SCATTER_R * 4];
+    }
+
+    //
+    ///
+    /// \brief Compute both tables
+    /// \param pool Pool to compute on, or null to compute on the calling
+    ///    thread
+    //
+    public void generate ( ForkJoinPool pool )
+    {
+        run ( pool, new TableTask ( false, 0, TRANSMITTANCE_R ) );
+
+        // In-scatter looks up the sun's transmittance
+        run ( pool, new TableTask ( true, 0, SCATTER_R ) );
+        mGenerated = true;
+    }
+
+    public boolean isGenerated() { return mGenerated; }
+    public double getBottomRadius() { return mBottom; }
+    public double getTopRadius() { return mTop; }
+
+    //
+    ///
+    /// \brief Transmittance table as RGB floats, for a GL_RGB16F texture
+    //
+    public FloatBuffer getTransmittance()
+    {
+        return toBuffer ( mTransmittance );
+    }
+
+    //
+    ///
+    /// \brief In-scatter table as RGBA floats, for a GL_RGBA16F 3D texture
+    //
+    public FloatBuffer getInScatter()
+    {
+        return toBuffer ( mInScatter );
+    }
+
+    //
+    ///
+    /// \brief Integrate the transmittance of a ray
+    /// \param out Receives the RGB transmittance
+    //
+    public void computeTransmittance ( double r, double mu, double[] out )
+    {
+        double length = rayLength ( r, mu );
+        double dt = length / TRANSMITTANCE_STEPS;
+        double rayleigh = 0.0;
+        double mie = 0.0;
+
+        // Simpson's rule over the densities
+        for ( int i = 0; i <= TRANSMITTANCE_STEPS; i++ )
+        {
+            double h = radiusAt ( r, mu, i * dt ) - mBottom;
+            double w = simpsonWeight ( i, TRANSMITTANCE_STEPS );
+
+            rayleigh += w * Math.exp ( -h / RAYLEIGH_HEIGHT );
+            mie += w * Math.exp ( -h / MIE_HEIGHT );
+        }
+
+        for ( int c = 0; c < 3; c++ )
+        {
+            out[c] = Math.exp ( -( RAYLEIGH_SCATTERING[c] * rayleigh + MIE_EXTINCTION * mie ) * dt / 3.0 );
+        }
+    }
+
+    //
+    ///
+    /// \brief Integrate the single scattering along a ray.  The sun's
+    ///    transmittance is looked up, so the transmittance table must be
+    ///    computed first.
+    /// \param out Receives Rayleigh RGB and Mie red, without phase functions
+    //
+    public void computeInScatter ( double r, double mu, double muS, double[] out )
+    {
+        double length = rayLength ( r, mu );
+        double dt = length / SCATTER_STEPS;
+        double nu = mu * muS;
+        double[] sun = new double[3];
+        double depthRayleigh = 0.0, depthMie = 0.0;
+        double prevRayleigh = 0.0, prevMie = 0.0;
+        double sumR = 0.0, sumG = 0.0, sumB = 0.0, sumMie = 0.0;
+
+        for ( int i = 0; i <= SCATTER_STEPS; i++ )
+        {
+            double t = i * dt;
+            double ri = radiusAt ( r, mu, t );
+            double h = ri - mBottom;
+            double rayleigh = Math.exp ( -h / RAYLEIGH_HEIGHT );
+            double mie = Math.exp ( -h / MIE_HEIGHT );
+
+            // Optical depth from the start of the ray, by the trapezoidal
+            // rule as it accumulates
+            if ( i > 0 )
+            {
+                depthRayleigh += 0.5 * ( rayleigh + prevRayleigh ) * dt;
+                depthMie += 0.5 * ( mie + prevMie ) * dt;
+            }
+
+            prevRayleigh = rayleigh;
+            prevMie = mie;
+
+            // The sun is lit unless the ground is in the way
+            double muSi = Math.max ( -1.0, Math.min ( 1.0, ( r * muS + t * nu ) / ri ) );
+
+            if ( muSi < -Math.sqrt ( Math.max ( 0.0, 1.0 - mBottom * mBottom / ( ri * ri ) ) ) )
+            {
+                continue;
+            }
+
+            lookupTransmittance ( ri, muSi, sun );
+
+            // Simpson's rule keeps the thin Mie layer accurate with few steps
+            double w = simpsonWeight ( i, SCATTER_STEPS );
+            double mieDepth = MIE_EXTINCTION * depthMie;
+            double red = w * sun[0] * Math.exp ( -RAYLEIGH_SCATTERING[0] * depthRayleigh - mieDepth );
+
+            sumR += rayleigh * red;
+            sumG += w * rayleigh * sun[1] * Math.exp ( -RAYLEIGH_SCATTERING[1] * depthRayleigh - mieDepth );
+            sumB += w * rayleigh * sun[2] * Math.exp ( -RAYLEIGH_SCATTERING[2] * depthRayleigh - mieDepth );
+            sumMie += mie * red;
+        }
+
+        out[0] = RAYLEIGH_SCATTERING[0] * sumR * dt / 3.0;
+        out[1] = RAYLEIGH_SCATTERING[1] * sumG * dt / 3.0;
+        out[2] = RAYLEIGH_SCATTERING[2] * sumB * dt / 3.0;
+        out[3] = MIE_SCATTERING * sumMie * dt / 3.0;
+    }
+
+    //
+    ///
+    /// \brief Bilinear lookup in the transmittance table, as a shader does
+    //
+    public void lookupTransmittance ( double r, double mu, double[] out )
+    {
+        double x = coordinate ( ( mu + 1.0 ) * 0.5, TRANSMITTANCE_MU );
+        double y = coordinate ( radiusCoordinate ( r ), TRANSMITTANCE_R );
+        int x0 = ( int ) x, y0 = ( int ) y;
+        int x1 = Math.min ( x0 + 1, TRANSMITTANCE_MU - 1 ), y1 = Math.min ( y0 + 1, TRANSMITTANCE_R - 1 );
+        double fx = x - x0, fy = y - y0;
+
+        for ( int c = 0; c < 3; c++ )
+        {
+            double a = mTransmittance[( y0 * TRANSMITTANCE_MU + x0 ) * 3 + c];
+            double b = mTransmittance[( y0 * TRANSMITTANCE_MU + x1 ) * 3 + c];
+            double d = mTransmittance[( y1 * TRANSMITTANCE_MU + x0 ) * 3 + c];
+            double e = mTransmittance[( y1 * TRANSMITTANCE_MU + x1 ) * 3 + c];
+
+            out[c] = ( a + ( b - a ) * fx ) * ( 1.0 - fy ) + ( d + ( e - d ) * fx ) * fy;
+        }
+    }
+
+    //
+    ///
+    /// \brief Trilinear lookup in the in-scatter table, as a shader does
+    //
+    public void lookupInScatter ( double r, double mu, double muS, double[] out )
+    {
+        double x = coordinate ( ( mu + 1.0 ) * 0.5, SCATTER_MU );
+        double y = coordinate ( ( muS + 0.2 ) / 1.2, SCATTER_MU_S );
+        double z = coordinate ( radiusCoordinate ( r ), SCATTER_R );
+        int x0 = ( int ) x, y0 = ( int ) y, z0 = ( int ) z;
+        double fx = x - x0, fy = y - y0, fz = z - z0;
+
+        for ( int c = 0; c < 4; c++ )
+        {
+            double value = 0.0;
+
+            for ( int k = 0; k < 8; k++ )
+            {
+                int xi = Math.min ( x0 + ( k & 1 ), SCATTER_MU - 1 );
+                int yi = Math.min ( y0 + ( ( k >> 1 ) & 1 ), SCATTER_MU_S - 1 );
+                int zi = Math.min ( z0 + ( k >> 2 ), SCATTER_R - 1 );
+                double w = ( ( k & 1 ) != 0 ? fx : 1.0 - fx ) * ( ( k & 2 ) != 0 ? fy : 1.0 - fy ) *
+                           ( ( k & 4 ) != 0 ? fz : 1.0 - fz );
+
+                value += w * mInScatter[( ( zi * SCATTER_MU_S + yi ) * SCATTER_MU + xi ) * 4 + c];
+            }
+
+            out[c] = value;
+        }
+    }
+
+    //
+    ///
+    /// \brief Write the tables to a stream, e.g. a cache file
+    //
+    public void write ( OutputStream os ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream ( os );
+        ByteBuffer chunk = ByteBuffer.allocate ( IO_CHUNK * 4 );
+        FloatBuffer floats = chunk.asFloatBuffer();
+
+        out.writeInt ( MAGIC );
+        out.writeInt ( VERSION );
+        out.writeDouble ( mBottom );
+        out.writeDouble ( mTop );
+
+        for ( float[] values : new float[][] { mTransmittance, mInScatter } )
+        {
+            for ( int i = 0; i < values.length; i += IO_CHUNK )
+            {
+                int count = Math.min ( IO_CHUNK, values.length - i );
+
+                floats.clear();
+                floats.put ( values, i, count );
+                out.write ( chunk.array(), 0, count * 4 );
+            }
+        }
+
+        out.flush();
+    }
+
+    //
+    ///
+    /// \brief Read tables written by write()
+    /// \throws IOException if the stream does not hold the tables of an
+    ///    atmosphere with these radii
+    //
+    public static ESAtmosphere read ( InputStream is, double bottomRadius, double topRadius ) throws IOException
+    {
+        DataInputStream in = new DataInputStream ( is );
+
+        if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+        {
+            throw new IOException ( "Not atmosphere tables" );
+        }
+
+        if ( in.readDouble() != bottomRadius || in.readDouble() != topRadius )
+        {
+            throw new IOException ( "Atmosphere tables were computed for other radii" );
+        }
+
+        ESAtmosphere atmosphere = new ESAtmosphere ( bottomRadius, topRadius );
+        ByteBuffer chunk = ByteBuffer.allocate ( IO_CHUNK * 4 );
+        FloatBuffer floats = chunk.asFloatBuffer();
+
+        for ( float[] values : new float[][] { atmosphere.mTransmittance, atmosphere.mInScatter } )
+        {
+            for ( int i = 0; i < values.length; i += IO_CHUNK )
+            {
+                int count = Math.min ( IO_CHUNK, values.length - i );
+
+                in.readFully ( chunk.array(), 0, count * 4 );
+                floats.clear();
+                floats.get ( values, i, count );
+            }
+        }
+
+        atmosphere.mGenerated = true;
+        return atmosphere;
+    }
+
+    //
+    ///
+    /// \brief Key of the tables in an ESGeneratedCache: the radii, the
+    ///    scattering coefficients, the table sizes and the integration
+    ///    steps, so tables computed with any other value are not read
+    //
+    public ESGeneratedCache.Key getCacheKey()
+    {
+        ESGeneratedCache.Key key = new ESGeneratedCache.Key ( "atmosphere" ).put ( VERSION )
+                                   .put ( mBottom ).put ( mTop );
+
+        for ( double scattering : RAYLEIGH_SCATTERING )
+        {
+            key.put ( scattering );
+        }
+
+        return key.put ( RAYLEIGH_HEIGHT ).put ( MIE_SCATTERING ).put ( MIE_EXTINCTION ).put ( MIE_HEIGHT ).put ( MIE_G )
+                  .put ( TRANSMITTANCE_MU ).put ( TRANSMITTANCE_R )
+                  .put ( SCATTER_MU ).put ( SCATTER_MU_S ).put ( SCATTER_R )
+                  .put ( TRANSMITTANCE_STEPS ).put ( SCATTER_STEPS );
+    }
+
+    //
+    ///
+    /// \brief Write the tables as floats in the order of the buffer, e.g.
+    ///    an ESGeneratedCache blob
+    /// \param out Receives TABLES_SIZE bytes at its current position,
+    ///    which is advanced
+    //
+    public void writeTables ( ByteBuffer out )
+    {
+        out.asFloatBuffer().put ( mTransmittance ).put ( mInScatter );
+        out.position ( out.position() + TABLES_SIZE );
+    }
+
+    //
+    ///
+    /// \brief Read tables written by writeTables()
+    /// \param in Holds TABLES_SIZE bytes at its current position, which is
+    ///    advanced
+    //
+    public void readTables ( ByteBuffer in )
+    {
+        in.asFloatBuffer().get ( mTransmittance ).get ( mInScatter );
+        in.position ( in.position() + TABLES_SIZE );
+        mGenerated = true;
+    }
+
+    // Distance along a ray to the ground, or to the top of the atmosphere
+    // if it misses the ground
+    private double rayLength ( double r, double mu )
+    {
+        double groundDisc = r * r * ( mu * mu - 1.0 ) + mBottom * mBottom;
+
+        if ( mu < 0.0 && groundDisc >= 0.0 )
+        {
+            return Math.max ( 0.0, -r * mu - Math.sqrt ( groundDisc ) );
+        }
+
+        return Math.max ( 0.0, -r * mu + Math.sqrt ( Math.max ( 0.0, r * r * ( mu * mu - 1.0 ) + mTop * mTop ) ) );
+    }
+
+    // Weight of sample i of n, n even, in Simpson's rule without the 1/3
+    private static double simpsonWeight ( int i, int n )
+    {
+        return ( i == 0 || i == n ) ? 1.0 : ( ( i & 1 ) != 0 ? 4.0 : 2.0 );
+    }
+
+    private static double radiusAt ( double r, double mu, double t )
+    {
+        return Math.sqrt ( r * r + t * t + 2.0 * r * mu * t );
+    }
+
+    private double radiusCoordinate ( double r )
+    {
+        double u = ( r * r - mBottom * mBottom ) / ( mTop * mTop - mBottom * mBottom );
+        return Math.sqrt ( Math.max ( 0.0, Math.min ( 1.0, u ) ) );
+    }
+
+    // Texel position of a coordinate in [0, 1], clamped to the texel centers
+    private static double coordinate ( double u, int size )
+    {
+        return Math.max ( 0.0, Math.min ( 1.0, u ) ) * ( size - 1 );
+    }
+
+    // Parameters of a table row
+    private double radiusOfRow ( int row, int size )
+    {
+        double u = ( double ) row / ( size - 1 );
+        return Math.sqrt ( mBottom * mBottom + u * u * ( mTop * mTop - mBottom * mBottom ) );
+    }
+
+    private void computeRow ( boolean inScatter, int row )
+    {
+        double[] value = new double[4];
+
+        if ( !inScatter )
+        {
+            double r = radiusOfRow ( row, TRANSMITTANCE_R );
+
+            for ( int i = 0; i < TRANSMITTANCE_MU; i++ )
+            {
+                computeTransmittance ( r, 2.0 * i / ( TRANSMITTANCE_MU - 1 ) - 1.0, value );
+
+                for ( int c = 0; c < 3; c++ )
+                {
+                    mTransmittance[( row * TRANSMITTANCE_MU + i ) * 3 + c] = ( float ) value[c];
+                }
+            }
+
+            return;
+        }
+
+        double r = radiusOfRow ( row, SCATTER_R );
+
+        for ( int j = 0; j < SCATTER_MU_S; j++ )
+        {
+            double muS = 1.2 * j / ( SCATTER_MU_S - 1 ) - 0.2;
+
+            for ( int i = 0; i < SCATTER_MU; i++ )
+            {
+                computeInScatter ( r, 2.0 * i / ( SCATTER_MU - 1 ) - 1.0, muS, value );
+
+                for ( int c = 0; c < 4; c++ )
+                {
+                    mInScatter[( ( row * SCATTER_MU_S + j ) * SCATTER_MU + i ) * 4 + c] = ( float ) value[c];
+                }
+            }
+        }
+    }
+
+    private static void run ( ForkJoinPool pool, RecursiveAction task )
+    {
+        if ( pool != null )
+        {
+            pool.invoke ( task );
+        }
+        else
+        {
+            task.invoke();
+        }
+    }
+
+    private static FloatBuffer toBuffer ( float[] values )
+    {
+        FloatBuffer buffer = ByteBuffer.allocateDirect ( values.length * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+
+        buffer.put ( values ).position ( 0 );
+        return buffer;
+    }
+
+    ///
+    // Compute rows of a table, split in halves
+    //
+    private final class TableTask extends RecursiveAction
+    {
+        TableTask ( boolean inScatter, int row0, int row1 )
+        {
+            mInScatterTable = inScatter;
+            mRow0 = row0;
+            mRow1 = row1;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mRow1 - mRow0 > 1 )
+            {
+                int mid = ( mRow0 + mRow1 ) >>> 1;
+                invokeAll ( new TableTask ( mInScatterTable, mRow0, mid ), new TableTask ( mInScatterTable, mid, mRow1 ) );
+                return;
+            }
+
+            computeRow ( mInScatterTable, mRow0 );
+        }
+
+        private final boolean mInScatterTable;
+        private final int mRow0;
+        private final int mRow1;
+    }
+
+    // Member variables
+    private final double mBottom;
+    private final double mTop;
+    private final float[] mTransmittance;
+    private final float[] mInScatter;
+    private boolean mGenerated;
+
+    // Some constants
+    private static final int TRANSMITTANCE_STEPS = 256;
+    private static final int SCATTER_STEPS = 64;
+    private static final int IO_CHUNK = 16384;
+    private static final int MAGIC = 0x45534154; // "ESAT"
+    private static final int VERSION = 1;
+}
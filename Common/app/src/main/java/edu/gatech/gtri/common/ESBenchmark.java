@@ -0,0 +1,509 @@
+package edu.gatech.gtri.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//
+/// \brief Deterministic benchmark run of a renderer.
+///
+/// A run has a fixed number of frames, the first warmupFrames of them not
+/// measured.  Frames are shown at scripted times, frame i at ( i + 1 ) *
+/// frameInterval, which the renderer uses instead of its clock: the
+/// animation, the camera path and thus the work of every frame are the
+/// same from run to run, whatever the frame rate.
+///
+/// Within a frame the renderer brackets its phases, e.g. update, culling,
+/// upload and submit, with begin() and end().  The time of each phase is
+/// summed over the frame and recorded in its ESHistogram at endFrame(),
+/// along with the whole frame; a phase not entered in a frame records
+/// nothing.  Times come from the Clock given, System.nanoTime() by
+/// default, so tests can inject their own.
+///
+/// The results are written as JSON: per phase the count, minimum, mean,
+/// percentiles and maximum in nanoseconds.
+///
+/// The samples drive their optional run through a Session, which does
+/// nothing while no run was started.
+///
+/// This class has no Android dependencies.
+//
+public class ESBenchmark
+{
+    //
+    ///
+    /// \brief Time source of the measurements
+    //
+    public interface Clock
+    {
+        long nanoTime();
+    }
+
+    //
+    ///
+    /// \brief Work of one frame, for run()
+    //
+    public interface Scene
+    {
+        void frame ( ESBenchmark benchmark );
+    }
+
+    //
+    ///
+    /// \brief Optional benchmark run of a renderer.  Every call is a no-op
+    ///    or falls back to the clock while no run is going on, so the
+    ///    renderer brackets its frame and phases unconditionally.  After a
+    ///    run the clock continues from the last scripted time, so the
+    ///    animation does not jump.
+    //
+    public static class Session
+    {
+        //
+        ///
+        /// \brief Create a session without a run
+        /// \param name Name of the runs, also the tag of the log messages
+        //
+        public Session ( String name )
+        {
+            mName = name;
+        }
+
+        //
+        ///
+        /// \brief Run the next frames as a benchmark, with scripted times
+        /// \param frames Frames measured, 0 or less for no run
+        /// \param directory Where OUTPUT_FILE is written at the end
+        /// \return Whether a run started
+        //
+        public boolean start ( int frames, File directory )
+        {
+            if ( frames <= 0 )
+            {
+                return false;
+            }
+
+            mBenchmark = new ESBenchmark ( mName, RENDERER_PHASES, RENDERER_WARMUP_FRAMES, frames,
+                                           RENDERER_FRAME_INTERVAL );
+            mOutput = new File ( directory, OUTPUT_FILE );
+            return true;
+        }
+
+        public boolean isRunning() { return mBenchmark != null; }
+
+        // The run, null when none
+        public ESBenchmark get() { return mBenchmark; }
+
+        //
+        ///
+        /// \brief Scripted time of the frame during a run, clockMillis
+        ///    otherwise, offset to continue from the end of the last run
+        //
+        public long timeMillis ( long clockMillis )
+        {
+            if ( mBenchmark != null )
+            {
+                return mBenchmark.getTimeMillis();
+            }
+
+            if ( mResume )
+            {
+                mOffset = mEndMillis - clockMillis;
+                mResume = false;
+            }
+
+            return clockMillis + mOffset;
+        }
+
+        public void beginFrame()
+        {
+            if ( mBenchmark != null )
+            {
+                mBenchmark.beginFrame();
+            }
+        }
+
+        public void begin ( int phase )
+        {
+            if ( mBenchmark != null )
+            {
+                mBenchmark.begin ( phase );
+            }
+        }
+
+        public void end ( int phase )
+        {
+            if ( mBenchmark != null )
+            {
+                mBenchmark.end ( phase );
+            }
+        }
+
+        //
+        ///
+        /// \brief End the frame, and after the last one write the results
+        ///    and end the run.  The log goes through java.util.logging,
+        ///    which Android sends to logcat with the name as the tag.
+        /// \return true if the run ended with this frame
+        //
+        public boolean finishIfDone()
+        {
+            if ( mBenchmark == null )
+            {
+                return false;
+            }
+
+            mBenchmark.endFrame();
+
+            if ( !mBenchmark.isFinished() )
+            {
+                return false;
+            }
+
+            try
+            {
+                mBenchmark.writeJson ( mOutput );
+                Logger.getLogger ( mName ).info ( "Benchmark written to " + mOutput );
+            }
+            catch ( IOException ioe )
+            {
+                Logger.getLogger ( mName ).log ( Level.SEVERE, "Cannot write " + mOutput, ioe );
+            }
+
+            mEndMillis = mBenchmark.getTimeMillis();
+            mResume = true;
+            mBenchmark = null;
+            return true;
+        }
+
+        private final String mName;
+        private ESBenchmark mBenchmark;
+        private File mOutput;
+
+        // Scripted time at the end of the last run, which the clock
+        // continues from, and the offset of the clock
+        private long mEndMillis;
+        private boolean mResume;
+        private long mOffset;
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock()
+    {
+        public long nanoTime()
+        {
+            return System.nanoTime();
+        }
+    };
+
+    // Phases of a renderer frame, for the samples
+    public static final int UPDATE = 0;
+    public static final int CULLING = 1;
+    public static final int UPLOAD = 2;
+    public static final int SUBMIT = 3;
+    public static final String[] RENDERER_PHASES = { "update", "culling", "upload", "submit" };
+
+    // Intent extra with the number of frames to run, e.g.
+    // am start --ei benchmark 600, and the file the results go to
+    public static final String EXTRA_FRAMES = "benchmark";
+    public static final String OUTPUT_FILE = "benchmark.json";
+
+    // Warm-up and scripted frame interval of the renderer runs
+    public static final int RENDERER_WARMUP_FRAMES = 60;
+    public static final double RENDERER_FRAME_INTERVAL = 1.0 / 60.0;
+
+    // Percentiles written by writeJson()
+    public static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+    //
+    ///
+    /// \brief Create a run measured with System.nanoTime()
+    //
+    public ESBenchmark ( String name, String[] phases, int warmupFrames, int frames, double frameInterval )
+    {
+        this ( name, phases, warmupFrames, frames, frameInterval, SYSTEM_CLOCK );
+    }
+
+    //
+    ///
+    /// \brief Create a run
+    /// \param name Name of the run, e.g. the sample
+    /// \param phases Names of the phases of a frame
+    /// \param warmupFrames Frames run before measuring
+    /// \param frames Frames measured
+    /// \param frameInterval Scripted time between frames, in seconds
+    //
+    public ESBenchmark ( String name, String[] phases, int warmupFrames, int frames, double frameInterval,
+                         Clock clock )
+    {
+        if ( warmupFrames < 0 || frames <= 0 || !( frameInterval > 0.0 ) )
+        {
+            throw new IllegalArgumentException ( "Invalid benchmark frames or interval" );
+        }
+
+        mName = name;
+        mPhases = phases.clone();
+        mWarmupFrames = warmupFrames;
+        mFrames = frames;
+        mFrameInterval = frameInterval;
+        mClock = clock;
+        mHistograms = new ESHistogram[phases.length];
+        mPhaseStarts = new long[phases.length];
+        mPhaseTimes = new long[phases.length];
+        mPhaseEntered = new boolean[phases.length];
+        mFrameHistogram = new ESHistogram ( HIGHEST_NANOS, SIGNIFICANT_DIGITS );
+        mFrame = -1;
+
+        for ( int i = 0; i < phases.length; i++ )
+        {
+            mHistograms[i] = new ESHistogram ( HIGHEST_NANOS, SIGNIFICANT_DIGITS );
+        }
+    }
+
+    public String getName() { return mName; }
+    public int getNumPhases() { return mPhases.length; }
+    public String getPhaseName ( int phase ) { return mPhases[phase]; }
+    public ESHistogram getHistogram ( int phase ) { return mHistograms[phase]; }
+    public ESHistogram getFrameHistogram() { return mFrameHistogram; }
+    public int getWarmupFrames() { return mWarmupFrames; }
+    public int getFrames() { return mFrames; }
+    public double getFrameInterval() { return mFrameInterval; }
+
+    //
+    ///
+    /// \brief Index of the current frame, warm-up frames included
+    //
+    public int getFrame() { return mFrame; }
+
+    public boolean isMeasuring()
+    {
+        return mFrame >= mWarmupFrames;
+    }
+
+    public boolean isFinished()
+    {
+        return mFrame >= mWarmupFrames + mFrames - 1 && !mInFrame;
+    }
+
+    //
+    ///
+    /// \brief Scripted time of the current frame, in seconds
+    //
+    public double getTime()
+    {
+        return ( mFrame + 1 ) * mFrameInterval;
+    }
+
+    //
+    ///
+    /// \brief Scripted time of the current frame, in milliseconds, for
+    ///    renderers that read SystemClock.uptimeMillis()
+    //
+    public long getTimeMillis()
+    {
+        return Math.round ( getTime() * 1000.0 );
+    }
+
+    //
+    ///
+    /// \brief Start the next frame
+    /// \return false if all frames ran
+    //
+    public boolean beginFrame()
+    {
+        if ( mInFrame )
+        {
+            throw new IllegalStateException ( "Frame " + mFrame + " was not ended" );
+        }
+
+        if ( isFinished() )
+        {
+            return false;
+        }
+
+        mFrame++;
+        mInFrame = true;
+
+        for ( int i = 0; i < mPhases.length; i++ )
+        {
+            mPhaseTimes[i] = 0;
+            mPhaseEntered[i] = false;
+        }
+
+        mFrameStart = mClock.nanoTime();
+        return true;
+    }
+
+    public void begin ( int phase )
+    {
+        mPhaseStarts[phase] = mClock.nanoTime();
+    }
+
+    public void end ( int phase )
+    {
+        mPhaseTimes[phase] += mClock.nanoTime() - mPhaseStarts[phase];
+        mPhaseEntered[phase] = true;
+    }
+
+    //
+    ///
+    /// \brief End the current frame and record its times
+    //
+    public void endFrame()
+    {
+        long frameTime = mClock.nanoTime() - mFrameStart;
+
+        if ( !mInFrame )
+        {
+            throw new IllegalStateException ( "No frame was begun" );
+        }
+
+        mInFrame = false;
+
+        if ( !isMeasuring() )
+        {
+            return;
+        }
+
+        for ( int i = 0; i < mPhases.length; i++ )
+        {
+            if ( mPhaseEntered[i] )
+            {
+                mHistograms[i].record ( mPhaseTimes[i] );
+            }
+        }
+
+        mFrameHistogram.record ( frameTime );
+    }
+
+    //
+    ///
+    /// \brief Run every remaining frame of a scene without a display
+    //
+    public void run ( Scene scene )
+    {
+        while ( beginFrame() )
+        {
+            scene.frame ( this );
+            endFrame();
+        }
+    }
+
+    //
+    ///
+    /// \brief Write the results as JSON
+    //
+    public void writeJson ( Writer writer ) throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+
+        json.append ( "{\n" );
+        json.append ( "  \"name\": " ).append ( quote ( mName ) ).append ( ",\n" );
+        json.append ( "  \"warmupFrames\": " ).append ( mWarmupFrames ).append ( ",\n" );
+        json.append ( "  \"frames\": " ).append ( mFrames ).append ( ",\n" );
+        json.append ( "  \"frameInterval\": " ).append ( formatDouble ( mFrameInterval ) ).append ( ",\n" );
+        json.append ( "  \"unit\": \"ns\",\n" );
+        json.append ( "  \"frame\": " );
+        appendHistogram ( json, mFrameHistogram );
+        json.append ( ",\n  \"phases\": {" );
+
+        for ( int i = 0; i < mPhases.length; i++ )
+        {
+            json.append ( i == 0 ? "\n    " : ",\n    " ).append ( quote ( mPhases[i] ) ).append ( ": " );
+            appendHistogram ( json, mHistograms[i] );
+        }
+
+        json.append ( mPhases.length > 0 ? "\n  }\n}\n" : "}\n}\n" );
+        writer.write ( json.toString() );
+        writer.flush();
+    }
+
+    //
+    ///
+    /// \brief Write the results as JSON to a file
+    //
+    public void writeJson ( File file ) throws IOException
+    {
+        Writer writer = new OutputStreamWriter ( new FileOutputStream ( file ), "UTF-8" );
+
+        try
+        {
+            writeJson ( writer );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static void appendHistogram ( StringBuilder json, ESHistogram histogram )
+    {
+        json.append ( "{ \"count\": " ).append ( histogram.getTotalCount() );
+        json.append ( ", \"min\": " ).append ( histogram.getMin() );
+        json.append ( ", \"mean\": " ).append ( formatDouble ( histogram.getMean() ) );
+
+        for ( double p : PERCENTILES )
+        {
+            String name = ( p == Math.rint ( p ) ) ? String.valueOf ( ( int ) p ) : String.valueOf ( p ).replace ( '.', '_' );
+
+            json.append ( ", \"p" ).append ( name ).append ( "\": " ).append ( histogram.getValueAtPercentile ( p ) );
+        }
+
+        json.append ( ", \"max\": " ).append ( histogram.getMax() ).append ( " }" );
+    }
+
+    private static String formatDouble ( double value )
+    {
+        return String.format ( Locale.ROOT, "%.6g", value );
+    }
+
+    private static String quote ( String s )
+    {
+        StringBuilder quoted = new StringBuilder ( "\"" );
+
+        for ( int i = 0; i < s.length(); i++ )
+        {
+            char c = s.charAt ( i );
+
+            if ( c == '"' || c == '\\' )
+            {
+                quoted.append ( '\\' ).append ( c );
+            }
+            else if ( c < 0x20 )
+            {
+                quoted.append ( String.format ( Locale.ROOT, "\\u%04x", ( int ) c ) );
+            }
+            else
+            {
+                quoted.append ( c );
+            }
+        }
+
+        return quoted.append ( '"' ).toString();
+    }
+
+    // Member variables
+    private final String mName;
+    private final String[] mPhases;
+    private final int mWarmupFrames;
+    private final int mFrames;
+    private final double mFrameInterval;
+    private final Clock mClock;
+    private final ESHistogram[] mHistograms;
+    private final ESHistogram mFrameHistogram;
+
+    // Current frame and the times of its phases
+    private int mFrame;
+    private boolean mInFrame;
+    private long mFrameStart;
+    private final long[] mPhaseStarts;
+    private final long[] mPhaseTimes;
+    private final boolean[] mPhaseEntered;
+
+    // Some constants
+    private static final long HIGHEST_NANOS = 60L * 1000000000L;
+    private static final int SIGNIFICANT_DIGITS = 3;
+}
@@ -0,0 +1,216 @@
+package edu.gatech.gtri.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief Min and max of each brick of a GL_R8 volume, for empty space
+///    skipping when ray marching it.
+///
+/// The volume is cut into bricks of getBrickSize() voxels along each
+/// axis; the last bricks of an axis are partial when the volume is not a
+/// multiple of the brick size.  The range of a brick covers its voxels
+/// and a one voxel apron around them, clamped at the edges of the volume,
+/// since linear filtering anywhere in the brick reads those neighbors too.
+/// A ray marcher can then skip a brick whose max is below the density
+/// threshold without ever missing a filtered sample above it.
+///
+/// The bricks are built in parallel on a ForkJoinPool, each task a range
+/// of bricks written at their own index, so the result does not depend on
+/// the number of threads.  write() puts the grid as GL_RG8 texels, min
+/// then max, x fastest then y then z, for a low resolution 3D texture
+/// sampled with texelFetch().
+///
+/// This class has no Android dependencies.
+//
+public class ESBrickGrid
+{
+    // Voxels read per task of a parallel build, at least one brick
+    public static final int CHUNK = 16384;
+
+    //
+    ///
+    /// \brief Create the grid of a volume
+    /// \param width, height, depth Size of the volume in voxels
+    /// \param brickSize Voxels of a brick along each axis
+    /// \param pool Pool to build on, or null to build on the calling
+    ///    thread
+    //
+    public ESBrickGrid ( int width, int height, int depth, int brickSize, ForkJoinPool pool )
+    {
+        if ( width <= 0 || height <= 0 || depth <= 0 || brickSize <= 0 )
+        {
+            throw new IllegalArgumentException ( "Volume and brick sizes must be positive" );
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mDepth = depth;
+        mBrickSize = brickSize;
+        mPool = pool;
+        mBricksX = ( width + brickSize - 1 ) / brickSize;
+        mBricksY = ( height + brickSize - 1 ) / brickSize;
+        mBricksZ = ( depth + brickSize - 1 ) / brickSize;
+        mMin = new byte[mBricksX * mBricksY * mBricksZ];
+        mMax = new byte[mBricksX * mBricksY * mBricksZ];
+    }
+
+    //
+    ///
+    /// \brief Build the grid of a volume
+    /// \param volume Unsigned bytes from index 0, x fastest then y then z,
+    ///    e.g. from ESNoise3D.createVolume() or a mapped ESGeneratedCache
+    ///    blob.  Its position is left as it is.
+    //
+    public void build ( ByteBuffer volume )
+    {
+        if ( volume.limit() < mWidth * mHeight * mDepth )
+        {
+            throw new IllegalArgumentException ( "Volume smaller than " + mWidth + "x" + mHeight + "x" + mDepth );
+        }
+
+        int apron = mBrickSize + 2;
+        BrickTask task = new BrickTask ( volume, 0, mMin.length, Math.max ( 1, CHUNK / ( apron * apron * apron ) ) );
+
+        if ( mPool != null )
+        {
+            mPool.invoke ( task );
+        }
+        else
+        {
+            task.compute();
+        }
+    }
+
+    public int getBrickSize() { return mBrickSize; }
+    public int getBricksX() { return mBricksX; }
+    public int getBricksY() { return mBricksY; }
+    public int getBricksZ() { return mBricksZ; }
+
+    // Range of a brick, 0 to 255
+    public int getMin ( int bx, int by, int bz ) { return mMin[brickIndex ( bx, by, bz )] & 0xFF; }
+    public int getMax ( int bx, int by, int bz ) { return mMax[brickIndex ( bx, by, bz )] & 0xFF; }
+
+    //
+    ///
+    /// \brief Whether no filtered sample of a brick is above a threshold
+    //
+    public boolean isEmpty ( int bx, int by, int bz, int threshold )
+    {
+        return getMax ( bx, by, bz ) <= threshold;
+    }
+
+    //
+    ///
+    /// \brief Number of bricks a ray marcher skips at a threshold
+    //
+    public int countEmpty ( int threshold )
+    {
+        int count = 0;
+
+        for ( byte max : mMax )
+        {
+            count += ( max & 0xFF ) <= threshold ? 1 : 0;
+        }
+
+        return count;
+    }
+
+    //
+    ///
+    /// \brief Put the grid as GL_RG8 texels, min then max, at the position
+    ///    of the buffer, and advance it
+    //
+    public void write ( ByteBuffer out )
+    {
+        for ( int i = 0; i < mMin.length; i++ )
+        {
+            out.put ( mMin[i] ).put ( mMax[i] );
+        }
+    }
+
+    private int brickIndex ( int bx, int by, int bz )
+    {
+        if ( bx < 0 || by < 0 || bz < 0 || bx >= mBricksX || by >= mBricksY || bz >= mBricksZ )
+        {
+            throw new IndexOutOfBoundsException ( "No brick " + bx + "," + by + "," + bz );
+        }
+
+        return ( bz * mBricksY + by ) * mBricksX + bx;
+    }
+
+    // Range of the bricks first to last - 1, with their aprons
+    private void buildBricks ( ByteBuffer volume, int first, int last )
+    {
+        for ( int brick = first; brick < last; brick++ )
+        {
+            int bx = brick % mBricksX;
+            int by = brick / mBricksX % mBricksY;
+            int bz = brick / ( mBricksX * mBricksY );
+            int x0 = Math.max ( bx * mBrickSize - 1, 0 ), x1 = Math.min ( ( bx + 1 ) * mBrickSize + 1, mWidth );
+            int y0 = Math.max ( by * mBrickSize - 1, 0 ), y1 = Math.min ( ( by + 1 ) * mBrickSize + 1, mHeight );
+            int z0 = Math.max ( bz * mBrickSize - 1, 0 ), z1 = Math.min ( ( bz + 1 ) * mBrickSize + 1, mDepth );
+            int min = 255, max = 0;
+
+            for ( int z = z0; z < z1; z++ )
+            {
+                for ( int y = y0; y < y1; y++ )
+                {
+                    int row = ( z * mHeight + y ) * mWidth;
+
+                    for ( int x = x0; x < x1; x++ )
+                    {
+                        int v = volume.get ( row + x ) & 0xFF;
+
+                        min = Math.min ( min, v );
+                        max = Math.max ( max, v );
+                    }
+                }
+            }
+
+            mMin[brick] = ( byte ) min;
+            mMax[brick] = ( byte ) max;
+        }
+    }
+
+    // Splits bricks in halves down to a few, each written at its index
+    private final class BrickTask extends RecursiveAction
+    {
+        BrickTask ( ByteBuffer volume, int first, int last, int bricks )
+        {
+            mVolume = volume;
+            mFirst = first;
+            mLast = last;
+            mBricks = bricks;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mLast - mFirst > mBricks )
+            {
+                int middle = ( mFirst + mLast ) >>> 1;
+                invokeAll ( new BrickTask ( mVolume, mFirst, middle, mBricks ),
+                            new BrickTask ( mVolume, middle, mLast, mBricks ) );
+            }
+            else
+            {
+                buildBricks ( mVolume, mFirst, mLast );
+            }
+        }
+
+        private final ByteBuffer mVolume;
+        private final int mFirst, mLast, mBricks;
+    }
+
+    // Member variables
+    private final int mWidth, mHeight, mDepth;
+    private final int mBrickSize;
+    private final int mBricksX, mBricksY, mBricksZ;
+    private final ForkJoinPool mPool;
+
+    // Range of each brick, x fastest then y then z
+    private final byte[] mMin;
+    private final byte[] mMax;
+}
@@ -0,0 +1,274 @@
+package edu.gatech.gtri.common;
+
+//
+/// \brief Keyframed camera path sampled at constant speed.
+///
+/// Each key holds getStride() values, the first three the position of the
+/// eye; the others, e.g. a look-at point or a field of view, are carried
+/// along by the same spline.  Keys are joined by
+///
+/// - CATMULL_ROM: a uniform Catmull-Rom spline through every key, the end
+///   keys repeated for the end tangents,
+/// - CATMULL_ROM_CLOSED: the same spline closed into a loop,
+/// - BEZIER: cubic Bezier segments, keys 3i the end points and keys 3i + 1
+///   and 3i + 2 the control points.
+///
+/// A spline parameter does not move at constant speed, so the path keeps
+/// a table of the arc length of the eye at SAMPLES_PER_SEGMENT points of
+/// each segment, and sample() maps a distance to the parameter through
+/// it.  The table is built once; sampling writes into the caller's array
+/// and allocates nothing.
+///
+/// Sampling starts its search of the table at the segment of the previous
+/// call, which makes the usual distances increasing frame after frame
+/// O(1).  The result never depends on that hint: a path sampled in any
+/// order, or by several threads, gives the same values bit for bit.
+///
+/// This class has no Android dependencies.
+//
+public class ESCameraPath
+{
+    public static final int CATMULL_ROM = 0;
+    public static final int CATMULL_ROM_CLOSED = 1;
+    public static final int BEZIER = 2;
+
+    // Arc length table entries per segment
+    public static final int SAMPLES_PER_SEGMENT = 64;
+
+    //
+    ///
+    /// \brief Create a path and build its arc length table
+    /// \param keys Key values, stride per key, copied
+    /// \param stride Values per key, at least 3
+    /// \param type CATMULL_ROM, CATMULL_ROM_CLOSED or BEZIER
+    //
+    public ESCameraPath ( double[] keys, int stride, int type )
+    {
+        if ( stride < 3 || keys.length % stride != 0 )
+        {
+            throw new IllegalArgumentException ( "Keys must hold a multiple of a stride of at least 3" );
+        }
+
+        int numKeys = keys.length / stride;
+
+        switch ( type )
+        {
+            case CATMULL_ROM:
+                mNumSegments = numKeys - 1;
+                break;
+            case CATMULL_ROM_CLOSED:
+                mNumSegments = numKeys < 2 ? 0 : numKeys;
+                break;
+            case BEZIER:
+                mNumSegments = ( numKeys - 1 ) % 3 == 0 ? ( numKeys - 1 ) / 3 : 0;
+                break;
+            default:
+                throw new IllegalArgumentException ( "Unknown path type " + type );
+        }
+
+        if ( mNumSegments < 1 )
+        {
+            throw new IllegalArgumentException ( "Not enough keys for the path type" );
+        }
+
+        mKeys = keys.clone();
+        mStride = stride;
+        mNumKeys = numKeys;
+        mType = type;
+        mLengths = new double[mNumSegments * SAMPLES_PER_SEGMENT + 1];
+
+        double[] point = new double[stride];
+        double px, py, pz;
+
+        evaluate ( 0, 0.0, point, 0 );
+        px = point[0];
+        py = point[1];
+        pz = point[2];
+
+        for ( int i = 1; i < mLengths.length; i++ )
+        {
+            evaluate ( ( i - 1 ) / SAMPLES_PER_SEGMENT, ( double ) ( ( i - 1 ) % SAMPLES_PER_SEGMENT + 1 ) / SAMPLES_PER_SEGMENT,
+                       point, 0 );
+
+            double dx = point[0] - px, dy = point[1] - py, dz = point[2] - pz;
+
+            mLengths[i] = mLengths[i - 1] + Math.sqrt ( dx * dx + dy * dy + dz * dz );
+            px = point[0];
+            py = point[1];
+            pz = point[2];
+        }
+    }
+
+    public int getStride() { return mStride; }
+    public int getNumKeys() { return mNumKeys; }
+    public int getNumSegments() { return mNumSegments; }
+    public int getType() { return mType; }
+
+    //
+    ///
+    /// \brief Length of the path of the eye
+    //
+    public double getLength()
+    {
+        return mLengths[mLengths.length - 1];
+    }
+
+    //
+    ///
+    /// \brief Values of the path at a distance along it
+    /// \param distance Distance from the start, clamped to the path; a
+    ///    closed path wraps around instead
+    /// \param out Receives getStride() values at offset
+    //
+    public void sample ( double distance, double[] out, int offset )
+    {
+        double length = getLength();
+
+        if ( mType == CATMULL_ROM_CLOSED && length > 0.0 )
+        {
+            distance %= length;
+            distance = distance < 0.0 ? distance + length : distance;
+        }
+
+        distance = Math.max ( 0.0, Math.min ( length, distance ) );
+
+        int entry = findEntry ( distance );
+        double span = mLengths[entry + 1] - mLengths[entry];
+        double f = span > 0.0 ? ( distance - mLengths[entry] ) / span : 0.0;
+
+        evaluate ( entry / SAMPLES_PER_SEGMENT, ( entry % SAMPLES_PER_SEGMENT + Math.min ( 1.0, f ) ) / SAMPLES_PER_SEGMENT,
+                   out, offset );
+    }
+
+    //
+    ///
+    /// \brief Values of the path at a fraction of its length, 0 to 1.  A
+    ///    path whose eye does not move, e.g. one turning the camera in
+    ///    place, is sampled by spline parameter instead.
+    //
+    public void sampleFraction ( double fraction, double[] out, int offset )
+    {
+        if ( getLength() > 0.0 )
+        {
+            sample ( fraction * getLength(), out, offset );
+            return;
+        }
+
+        double t = Math.max ( 0.0, Math.min ( 1.0, fraction ) ) * mNumSegments;
+        int segment = Math.min ( ( int ) t, mNumSegments - 1 );
+
+        evaluate ( segment, t - segment, out, offset );
+    }
+
+    //
+    ///
+    /// \brief Values of the path by spline parameter
+    /// \param segment Segment, 0 to getNumSegments() - 1
+    /// \param u Parameter in the segment, 0 to 1
+    //
+    public void evaluate ( int segment, double u, double[] out, int offset )
+    {
+        double u2 = u * u;
+        double u3 = u2 * u;
+        int k0, k1, k2, k3;
+        double w0, w1, w2, w3;
+
+        if ( mType == BEZIER )
+        {
+            double v = 1.0 - u;
+
+            k0 = segment * 3;
+            k1 = k0 + 1;
+            k2 = k0 + 2;
+            k3 = k0 + 3;
+            w0 = v * v * v;
+            w1 = 3.0 * v * v * u;
+            w2 = 3.0 * v * u2;
+            w3 = u3;
+        }
+        else
+        {
+            if ( mType == CATMULL_ROM_CLOSED )
+            {
+                k0 = ( segment + mNumKeys - 1 ) % mNumKeys;
+                k1 = segment;
+                k2 = ( segment + 1 ) % mNumKeys;
+                k3 = ( segment + 2 ) % mNumKeys;
+            }
+            else
+            {
+                k0 = Math.max ( segment - 1, 0 );
+                k1 = segment;
+                k2 = segment + 1;
+                k3 = Math.min ( segment + 2, mNumKeys - 1 );
+            }
+
+            // 0.5 * [ -u^3 + 2u^2 - u, 3u^3 - 5u^2 + 2, -3u^3 + 4u^2 + u, u^3 - u^2 ]
+            w0 = 0.5 * ( -u3 + 2.0 * u2 - u );
+            w1 = 0.5 * ( 3.0 * u3 - 5.0 * u2 + 2.0 );
+            w2 = 0.5 * ( -3.0 * u3 + 4.0 * u2 + u );
+            w3 = 0.5 * ( u3 - u2 );
+        }
+
+        k0 *= mStride;
+        k1 *= mStride;
+        k2 *= mStride;
+        k3 *= mStride;
+
+        for ( int c = 0; c < mStride; c++ )
+        {
+            out[offset + c] = w0 * mKeys[k0 + c] + w1 * mKeys[k1 + c] + w2 * mKeys[k2 + c] + w3 * mKeys[k3 + c];
+        }
+    }
+
+    // Last table entry whose length is not past the distance, clamped to
+    // the last interval
+    private int findEntry ( double distance )
+    {
+        int last = mLengths.length - 2;
+        int hint = mHint;
+
+        // Same interval as the previous call, or the next one
+        for ( int i = hint; i <= hint + 1 && i <= last; i++ )
+        {
+            if ( mLengths[i] <= distance && ( i == last || distance < mLengths[i + 1] ) )
+            {
+                mHint = i;
+                return i;
+            }
+        }
+
+        int lo = 0;
+        int hi = last;
+
+        while ( lo < hi )
+        {
+            int mid = ( lo + hi + 1 ) >>> 1;
+
+            if ( mLengths[mid] <= distance )
+            {
+                lo = mid;
+            }
+            else
+            {
+                hi = mid - 1;
+            }
+        }
+
+        mHint = lo;
+        return lo;
+    }
+
+    // Member variables
+    private final double[] mKeys;
+    private final int mStride;
+    private final int mNumKeys;
+    private final int mNumSegments;
+    private final int mType;
+
+    // Length of the eye path at each table entry
+    private final double[] mLengths;
+
+    // Table interval of the last search, only a starting point
+    private int mHint;
+}
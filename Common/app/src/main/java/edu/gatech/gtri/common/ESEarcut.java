@@ -0,0 +1,885 @@
+package edu.gatech.gtri.common;
+
+import java.lang.Math;
+import java.util.Arrays;
+import java.util.Comparator;
+
+//
+/// \brief Polygon triangulation by ear clipping.
+///
+/// Triangulates a polygon given as an outer ring and optional holes.  Holes
+/// are joined to the outer ring by bridge edges, then ears are clipped from
+/// the resulting single ring.  For large polygons the candidate points of
+/// each ear test are looked up along a z-order curve, which keeps the cost
+/// close to linear for typical GIS outlines.  Rings that are not simple
+/// (self-touching, duplicate or collinear points) are cured locally or
+/// split, so the result is always a valid triangulation of a simple
+/// polygon and a best effort otherwise.
+///
+/// This follows the algorithm of the mapbox earcut library.  It is
+/// stateless and thread safe.
+///
+/// This class has no Android dependencies.
+//
+public class ESEarcut
+{
+    //
+    ///
+    /// \brief Triangulate a polygon
+    /// \param coords x, y pairs of the outer ring followed by the holes.
+    ///    Rings may have either orientation and are not closed (the last
+    ///    point is not a copy of the first).
+    /// \param holeIndices Index of the first point of each hole, or null
+    /// \param numPoints Number of points in coords
+    /// \return Triangle vertex indices, counter-clockwise with y up
+    //
+    public static int[] triangulate ( double[] coords, int[] holeIndices, int numPoints )
+    {
+        boolean hasHoles = holeIndices != null && holeIndices.length > 0;
+        int outerLength = hasHoles ? holeIndices[0] : numPoints;
+        Node outerNode = linkedList ( coords, 0, outerLength, true );
+        IndexList triangles = new IndexList ( Math.max ( 3, ( numPoints - 2 ) * 3 ) );
+
+        if ( outerNode == null || outerNode.next == outerNode.prev )
+        {
+            return triangles.toArray();
+        }
+
+        if ( hasHoles )
+        {
+            outerNode = eliminateHoles ( coords, holeIndices, numPoints, outerNode );
+        }
+
+        double minX = 0.0, minY = 0.0, invSize = 0.0;
+
+        // Hash the points along a z-order curve for larger polygons
+        if ( numPoints > HASH_THRESHOLD )
+        {
+            double maxX, maxY;
+
+            minX = maxX = coords[0];
+            minY = maxY = coords[1];
+
+            for ( int i = 1; i < outerLength; i++ )
+            {
+                double x = coords[i * 2];
+                double y = coords[i * 2 + 1];
+
+                minX = Math.min ( minX, x );
+                minY = Math.min ( minY, y );
+                maxX = Math.max ( maxX, x );
+                maxY = Math.max ( maxY, y );
+            }
+
+            invSize = Math.max ( maxX - minX, maxY - minY );
+            invSize = invSize != 0.0 ? 32767.0 / invSize : 0.0;
+        }
+
+        earcutLinked ( outerNode, triangles, minX, minY, invSize, 0 );
+
+        return triangles.toArray();
+    }
+
+    //
+    ///
+    /// \brief Signed area of a ring, positive when counter-clockwise with y up
+    //
+    public static double signedArea ( double[] coords, int start, int end )
+    {
+        double sum = 0.0;
+
+        for ( int i = start, j = end - 1; i < end; j = i++ )
+        {
+            sum += ( coords[i * 2] - coords[j * 2] ) * ( coords[i * 2 + 1] + coords[j * 2 + 1] );
+        }
+
+        return -0.5 * sum;
+    }
+
+    // Vertex of a ring in a circular doubly linked list
+    private static class Node
+    {
+        Node ( int i, double x, double y )
+        {
+            this.i = i;
+            this.x = x;
+            this.y = y;
+        }
+
+        final int i;
+        final double x;
+        final double y;
+        Node prev, next;
+
+        // z-order curve value and the links of the sorted z-order list
+        int z = -1;
+        Node prevZ, nextZ;
+
+        // Hole made of a single point
+        boolean steiner;
+    }
+
+    // Growable list of triangle indices
+    private static class IndexList
+    {
+        IndexList ( int capacity )
+        {
+            mData = new int[capacity];
+        }
+
+        void add ( int a, int b, int c )
+        {
+            if ( mSize + 3 > mData.length )
+            {
+                mData = Arrays.copyOf ( mData, Math.max ( mData.length * 2, mSize + 3 ) );
+            }
+
+            mData[mSize++] = a;
+            mData[mSize++] = b;
+            mData[mSize++] = c;
+        }
+
+        int[] toArray()
+        {
+            return Arrays.copyOf ( mData, mSize );
+        }
+
+        private int[] mData;
+        private int mSize;
+    }
+
+    // Create a circular list from points [start, end), counter-clockwise with
+    // y up if counterClockwise is set, clockwise otherwise
+    private static Node linkedList ( double[] coords, int start, int end, boolean counterClockwise )
+    {
+        Node last = null;
+
+        if ( counterClockwise == ( signedArea ( coords, start, end ) > 0.0 ) )
+        {
+            for ( int i = start; i < end; i++ )
+            {
+                last = insertNode ( i, coords[i * 2], coords[i * 2 + 1], last );
+            }
+        }
+        else
+        {
+            for ( int i = end - 1; i >= start; i-- )
+            {
+                last = insertNode ( i, coords[i * 2], coords[i * 2 + 1], last );
+            }
+        }
+
+        if ( last != null && equals ( last, last.next ) )
+        {
+            removeNode ( last );
+            last = last.next;
+        }
+
+        return last;
+    }
+
+    // Remove duplicate and collinear points
+    private static Node filterPoints ( Node start, Node end )
+    {
+        if ( start == null )
+        {
+            return null;
+        }
+
+        if ( end == null )
+        {
+            end = start;
+        }
+
+        Node p = start;
+        boolean again;
+
+        do
+        {
+            again = false;
+
+            if ( !p.steiner && ( equals ( p, p.next ) || area ( p.prev, p, p.next ) == 0.0 ) )
+            {
+                removeNode ( p );
+                p = end = p.prev;
+
+                if ( p == p.next )
+                {
+                    break;
+                }
+
+                again = true;
+            }
+            else
+            {
+                p = p.next;
+            }
+        }
+        while ( again || p != end );
+
+        return end;
+    }
+
+    // Main ear slicing loop.  Pass 0 clips ears, pass 1 first cures local
+    // self-intersections, pass 2 splits the remaining ring in two.
+    private static void earcutLinked ( Node ear, IndexList triangles, double minX, double minY, double invSize, int pass )
+    {
+        if ( ear == null )
+        {
+            return;
+        }
+
+        if ( pass == 0 && invSize != 0.0 )
+        {
+            indexCurve ( ear, minX, minY, invSize );
+        }
+
+        Node stop = ear;
+
+        while ( ear.prev != ear.next )
+        {
+            Node prev = ear.prev;
+            Node next = ear.next;
+
+            if ( invSize != 0.0 ? isEarHashed ( ear, minX, minY, invSize ) : isEar ( ear ) )
+            {
+                triangles.add ( prev.i, ear.i, next.i );
+
+                removeNode ( ear );
+
+                // Skipping the next vertex leads to less sliver triangles
+                ear = next.next;
+                stop = next.next;
+                continue;
+            }
+
+            ear = next;
+
+            // A full loop without finding an ear
+            if ( ear == stop )
+            {
+                if ( pass == 0 )
+                {
+                    earcutLinked ( filterPoints ( ear, null ), triangles, minX, minY, invSize, 1 );
+                }
+                else if ( pass == 1 )
+                {
+                    ear = cureLocalIntersections ( filterPoints ( ear, null ), triangles );
+                    earcutLinked ( ear, triangles, minX, minY, invSize, 2 );
+                }
+                else
+                {
+                    splitEarcut ( ear, triangles, minX, minY, invSize );
+                }
+
+                break;
+            }
+        }
+    }
+
+    // Check whether a polygon node forms a valid ear with its neighbours
+    private static boolean isEar ( Node ear )
+    {
+        Node a = ear.prev;
+        Node b = ear;
+        Node c = ear.next;
+
+        // Reflex, can't be an ear
+        if ( area ( a, b, c ) >= 0.0 )
+        {
+            return false;
+        }
+
+        // No other point may lie inside the ear
+        Node p = ear.next.next;
+
+        while ( p != ear.prev )
+        {
+            if ( pointInTriangle ( a.x, a.y, b.x, b.y, c.x, c.y, p.x, p.y ) && area ( p.prev, p, p.next ) >= 0.0 )
+            {
+                return false;
+            }
+
+            p = p.next;
+        }
+
+        return true;
+    }
+
+    private static boolean isEarHashed ( Node ear, double minX, double minY, double invSize )
+    {
+        Node a = ear.prev;
+        Node b = ear;
+        Node c = ear.next;
+
+        if ( area ( a, b, c ) >= 0.0 )
+        {
+            return false;
+        }
+
+        // z-order range of the triangle bounding box
+        double minTX = Math.min ( a.x, Math.min ( b.x, c.x ) );
+        double minTY = Math.min ( a.y, Math.min ( b.y, c.y ) );
+        double maxTX = Math.max ( a.x, Math.max ( b.x, c.x ) );
+        double maxTY = Math.max ( a.y, Math.max ( b.y, c.y ) );
+        int minZ = zOrder ( minTX, minTY, minX, minY, invSize );
+        int maxZ = zOrder ( maxTX, maxTY, minX, minY, invSize );
+
+        Node p = ear.prevZ;
+        Node n = ear.nextZ;
+
+        // Look for points inside the triangle in both directions
+        while ( p != null && p.z >= minZ && n != null && n.z <= maxZ )
+        {
+            if ( p != ear.prev && p != ear.next && pointInTriangle ( a.x, a.y, b.x, b.y, c.x, c.y, p.x, p.y )
+                 && area ( p.prev, p, p.next ) >= 0.0 )
+            {
+                return false;
+            }
+
+            p = p.prevZ;
+
+            if ( n != ear.prev && n != ear.next && pointInTriangle ( a.x, a.y, b.x, b.y, c.x, c.y, n.x, n.y )
+                 && area ( n.prev, n, n.next ) >= 0.0 )
+            {
+                return false;
+            }
+
+            n = n.nextZ;
+        }
+
+        while ( p != null && p.z >= minZ )
+        {
+            if ( p != ear.prev && p != ear.next && pointInTriangle ( a.x, a.y, b.x, b.y, c.x, c.y, p.x, p.y )
+                 && area ( p.prev, p, p.next ) >= 0.0 )
+            {
+                return false;
+            }
+
+            p = p.prevZ;
+        }
+
+        while ( n != null && n.z <= maxZ )
+        {
+            if ( n != ear.prev && n != ear.next && pointInTriangle ( a.x, a.y, b.x, b.y, c.x, c.y, n.x, n.y )
+                 && area ( n.prev, n, n.next ) >= 0.0 )
+            {
+                return false;
+            }
+
+            n = n.nextZ;
+        }
+
+        return true;
+    }
+
+    // Go through all polygon nodes and cure small local self-intersections
+    private static Node cureLocalIntersections ( Node start, IndexList triangles )
+    {
+        Node p = start;
+
+        do
+        {
+            Node a = p.prev;
+            Node b = p.next.next;
+
+            if ( !equals ( a, b ) && intersects ( a, p, p.next, b ) && locallyInside ( a, b ) && locallyInside ( b, a ) )
+            {
+                triangles.add ( a.i, p.i, b.i );
+
+                // Remove the two nodes involved
+                removeNode ( p );
+                removeNode ( p.next );
+
+                p = start = b;
+            }
+
+            p = p.next;
+        }
+        while ( p != start );
+
+        return filterPoints ( p, null );
+    }
+
+    // Try splitting the polygon into two along a diagonal and triangulate
+    // both halves
+    private static void splitEarcut ( Node start, IndexList triangles, double minX, double minY, double invSize )
+    {
+        Node a = start;
+
+        do
+        {
+            Node b = a.next.next;
+
+            while ( b != a.prev )
+            {
+                if ( a.i != b.i && isValidDiagonal ( a, b ) )
+                {
+                    Node c = splitPolygon ( a, b );
+
+                    a = filterPoints ( a, a.next );
+                    c = filterPoints ( c, c.next );
+
+                    earcutLinked ( a, triangles, minX, minY, invSize, 0 );
+                    earcutLinked ( c, triangles, minX, minY, invSize, 0 );
+                    return;
+                }
+
+                b = b.next;
+            }
+
+            a = a.next;
+        }
+        while ( a != start );
+    }
+
+    // Link every hole into the outer ring, producing a single ring
+    private static Node eliminateHoles ( double[] coords, int[] holeIndices, int numPoints, Node outerNode )
+    {
+        Node[] queue = new Node[holeIndices.length];
+        int count = 0;
+
+        for ( int h = 0; h < holeIndices.length; h++ )
+        {
+            int start = holeIndices[h];
+            int end = h < holeIndices.length - 1 ? holeIndices[h + 1] : numPoints;
+            Node list = linkedList ( coords, start, end, false );
+
+            if ( list == null )
+            {
+                continue;
+            }
+
+            if ( list == list.next )
+            {
+                list.steiner = true;
+            }
+
+            queue[count++] = getLeftmost ( list );
+        }
+
+        // Process holes from left to right
+        Arrays.sort ( queue, 0, count, new Comparator<Node>()
+        {
+            public int compare ( Node a, Node b )
+            {
+                return Double.compare ( a.x, b.x );
+            }
+        } );
+
+        for ( int h = 0; h < count; h++ )
+        {
+            outerNode = eliminateHole ( queue[h], outerNode );
+        }
+
+        return outerNode;
+    }
+
+    // Find a bridge between the hole and the outer ring and link it
+    private static Node eliminateHole ( Node hole, Node outerNode )
+    {
+        Node bridge = findHoleBridge ( hole, outerNode );
+
+        if ( bridge == null )
+        {
+            return outerNode;
+        }
+
+        Node bridgeReverse = splitPolygon ( bridge, hole );
+
+        // Filter collinear points around the cuts
+        filterPoints ( bridgeReverse, bridgeReverse.next );
+        return filterPoints ( bridge, bridge.next );
+    }
+
+    // David Eberly's algorithm for finding a bridge between a hole and the
+    // outer ring
+    private static Node findHoleBridge ( Node hole, Node outerNode )
+    {
+        Node p = outerNode;
+        double hx = hole.x;
+        double hy = hole.y;
+        double qx = Double.NEGATIVE_INFINITY;
+        Node m = null;
+
+        // Find a segment intersected by a ray from the hole's leftmost point
+        // to the left; the segment's endpoint with the lesser x will be a
+        // potential connection point
+        do
+        {
+            if ( hy <= p.y && hy >= p.next.y && p.next.y != p.y )
+            {
+                double x = p.x + ( hy - p.y ) * ( p.next.x - p.x ) / ( p.next.y - p.y );
+
+                if ( x <= hx && x > qx )
+                {
+                    qx = x;
+                    m = p.x < p.next.x ? p : p.next;
+
+                    // The hole touches the outer segment
+                    if ( x == hx )
+                    {
+                        return m;
+                    }
+                }
+            }
+
+            p = p.next;
+        }
+        while ( p != outerNode );
+
+        if ( m == null )
+        {
+            return null;
+        }
+
+        // Look for points inside the triangle of the hole point, the
+        // segment intersection and the endpoint; if there are none, the
+        // endpoint is a valid connection, otherwise take the point of the
+        // minimum angle with the ray
+        Node stop = m;
+        double mx = m.x;
+        double my = m.y;
+        double tanMin = Double.POSITIVE_INFINITY;
+
+        p = m;
+
+        do
+        {
+            if ( hx >= p.x && p.x >= mx && hx != p.x
+                 && pointInTriangle ( hy < my ? hx : qx, hy, mx, my, hy < my ? qx : hx, hy, p.x, p.y ) )
+            {
+                double tan = Math.abs ( hy - p.y ) / ( hx - p.x );
+
+                if ( locallyInside ( p, hole )
+                     && ( tan < tanMin || ( tan == tanMin && ( p.x > m.x || ( p.x == m.x && sectorContainsSector ( m, p ) ) ) ) ) )
+                {
+                    m = p;
+                    tanMin = tan;
+                }
+            }
+
+            p = p.next;
+        }
+        while ( p != stop );
+
+        return m;
+    }
+
+    // Whether sector in vertex m contains sector in vertex p in the same
+    // coordinates
+    private static boolean sectorContainsSector ( Node m, Node p )
+    {
+        return area ( m.prev, m, p.prev ) < 0.0 && area ( p.next, m, m.next ) < 0.0;
+    }
+
+    // Interlink polygon nodes in z-order
+    private static void indexCurve ( Node start, double minX, double minY, double invSize )
+    {
+        Node p = start;
+
+        do
+        {
+            if ( p.z < 0 )
+            {
+                p.z = zOrder ( p.x, p.y, minX, minY, invSize );
+            }
+
+            p.prevZ = p.prev;
+            p.nextZ = p.next;
+            p = p.next;
+        }
+        while ( p != start );
+
+        p.prevZ.nextZ = null;
+        p.prevZ = null;
+
+        sortLinked ( p );
+    }
+
+    // Simon Tatham's linked list merge sort on the z-order links
+    private static Node sortLinked ( Node list )
+    {
+        int inSize = 1;
+        int numMerges;
+
+        do
+        {
+            Node p = list;
+            Node tail = null;
+
+            list = null;
+            numMerges = 0;
+
+            while ( p != null )
+            {
+                Node q = p;
+                int pSize = 0;
+
+                numMerges++;
+
+                for ( int i = 0; i < inSize; i++ )
+                {
+                    pSize++;
+                    q = q.nextZ;
+
+                    if ( q == null )
+                    {
+                        break;
+                    }
+                }
+
+                int qSize = inSize;
+
+                while ( pSize > 0 || ( qSize > 0 && q != null ) )
+                {
+                    Node e;
+
+                    if ( pSize != 0 && ( qSize == 0 || q == null || p.z <= q.z ) )
+                    {
+                        e = p;
+                        p = p.nextZ;
+                        pSize--;
+                    }
+                    else
+                    {
+                        e = q;
+                        q = q.nextZ;
+                        qSize--;
+                    }
+
+                    if ( tail != null )
+                    {
+                        tail.nextZ = e;
+                    }
+                    else
+                    {
+                        list = e;
+                    }
+
+                    e.prevZ = tail;
+                    tail = e;
+                }
+
+                p = q;
+            }
+
+            tail.nextZ = null;
+            inSize *= 2;
+        }
+        while ( numMerges > 1 );
+
+        return list;
+    }
+
+    // z-order of a point given coords and the inverse of the longer side of
+    // the data bounding box
+    private static int zOrder ( double px, double py, double minX, double minY, double invSize )
+    {
+        int x = ( int ) ( ( px - minX ) * invSize );
+        int y = ( int ) ( ( py - minY ) * invSize );
+
+        x = ( x | ( x << 8 ) ) & 0x00FF00FF;
+        x = ( x | ( x << 4 ) ) & 0x0F0F0F0F;
+        x = ( x | ( x << 2 ) ) & 0x33333333;
+        x = ( x | ( x << 1 ) ) & 0x55555555;
+
+        y = ( y | ( y << 8 ) ) & 0x00FF00FF;
+        y = ( y | ( y << 4 ) ) & 0x0F0F0F0F;
+        y = ( y | ( y << 2 ) ) & 0x33333333;
+        y = ( y | ( y << 1 ) ) & 0x55555555;
+
+        return x | ( y << 1 );
+    }
+
+    private static Node getLeftmost ( Node start )
+    {
+        Node p = start;
+        Node leftmost = start;
+
+        do
+        {
+            if ( p.x < leftmost.x || ( p.x == leftmost.x && p.y < leftmost.y ) )
+            {
+                leftmost = p;
+            }
+
+            p = p.next;
+        }
+        while ( p != start );
+
+        return leftmost;
+    }
+
+    private static boolean pointInTriangle ( double ax, double ay, double bx, double by, double cx, double cy,
+                                             double px, double py )
+    {
+        return ( cx - px ) * ( ay - py ) >= ( ax - px ) * ( cy - py )
+               && ( ax - px ) * ( by - py ) >= ( bx - px ) * ( ay - py )
+               && ( bx - px ) * ( cy - py ) >= ( cx - px ) * ( by - py );
+    }
+
+    // Whether a diagonal between two nodes is valid, i.e. it lies in the
+    // polygon interior
+    private static boolean isValidDiagonal ( Node a, Node b )
+    {
+        return a.next.i != b.i && a.prev.i != b.i && !intersectsPolygon ( a, b )
+               && ( locallyInside ( a, b ) && locallyInside ( b, a ) && middleInside ( a, b )
+                    && ( area ( a.prev, a, b.prev ) != 0.0 || area ( a, b.prev, b ) != 0.0 )
+                    || equals ( a, b ) && area ( a.prev, a, a.next ) > 0.0 && area ( b.prev, b, b.next ) > 0.0 );
+    }
+
+    // Twice the signed area of a triangle, negative when counter-clockwise
+    private static double area ( Node p, Node q, Node r )
+    {
+        return ( q.y - p.y ) * ( r.x - q.x ) - ( q.x - p.x ) * ( r.y - q.y );
+    }
+
+    private static boolean equals ( Node p1, Node p2 )
+    {
+        return p1.x == p2.x && p1.y == p2.y;
+    }
+
+    // Whether segments p1-q1 and p2-q2 intersect
+    private static boolean intersects ( Node p1, Node q1, Node p2, Node q2 )
+    {
+        int o1 = sign ( area ( p1, q1, p2 ) );
+        int o2 = sign ( area ( p1, q1, q2 ) );
+        int o3 = sign ( area ( p2, q2, p1 ) );
+        int o4 = sign ( area ( p2, q2, q1 ) );
+
+        if ( o1 != o2 && o3 != o4 )
+        {
+            return true;
+        }
+
+        // Collinear cases
+        return ( o1 == 0 && onSegment ( p1, p2, q1 ) ) || ( o2 == 0 && onSegment ( p1, q2, q1 ) )
+               || ( o3 == 0 && onSegment ( p2, p1, q2 ) ) || ( o4 == 0 && onSegment ( p2, q1, q2 ) );
+    }
+
+    // For collinear points p, q, r, whether q lies on segment pr
+    private static boolean onSegment ( Node p, Node q, Node r )
+    {
+        return q.x <= Math.max ( p.x, r.x ) && q.x >= Math.min ( p.x, r.x )
+               && q.y <= Math.max ( p.y, r.y ) && q.y >= Math.min ( p.y, r.y );
+    }
+
+    private static int sign ( double value )
+    {
+        return value > 0.0 ? 1 : ( value < 0.0 ? -1 : 0 );
+    }
+
+    // Whether a polygon diagonal intersects any polygon segment
+    private static boolean intersectsPolygon ( Node a, Node b )
+    {
+        Node p = a;
+
+        do
+        {
+            if ( p.i != a.i && p.next.i != a.i && p.i != b.i && p.next.i != b.i && intersects ( p, p.next, a, b ) )
+            {
+                return true;
+            }
+
+            p = p.next;
+        }
+        while ( p != a );
+
+        return false;
+    }
+
+    // Whether a polygon diagonal is locally inside the polygon
+    private static boolean locallyInside ( Node a, Node b )
+    {
+        return area ( a.prev, a, a.next ) < 0.0
+               ? area ( a, b, a.next ) >= 0.0 && area ( a, a.prev, b ) >= 0.0
+               : area ( a, b, a.prev ) < 0.0 || area ( a, a.next, b ) < 0.0;
+    }
+
+    // Whether the middle point of a polygon diagonal is inside the polygon
+    private static boolean middleInside ( Node a, Node b )
+    {
+        Node p = a;
+        boolean inside = false;
+        double px = ( a.x + b.x ) / 2.0;
+        double py = ( a.y + b.y ) / 2.0;
+
+        do
+        {
+            if ( ( ( p.y > py ) != ( p.next.y > py ) ) && p.next.y != p.y
+                 && ( px < ( p.next.x - p.x ) * ( py - p.y ) / ( p.next.y - p.y ) + p.x ) )
+            {
+                inside = !inside;
+            }
+
+            p = p.next;
+        }
+        while ( p != a );
+
+        return inside;
+    }
+
+    // Link two polygon vertices with a bridge; if the vertices belong to the
+    // same ring, the polygon is split in two, otherwise the rings are merged
+    private static Node splitPolygon ( Node a, Node b )
+    {
+        Node a2 = new Node ( a.i, a.x, a.y );
+        Node b2 = new Node ( b.i, b.x, b.y );
+        Node an = a.next;
+        Node bp = b.prev;
+
+        a.next = b;
+        b.prev = a;
+
+        a2.next = an;
+        an.prev = a2;
+
+        b2.next = a2;
+        a2.prev = b2;
+
+        bp.next = b2;
+        b2.prev = bp;
+
+        return b2;
+    }
+
+    private static Node insertNode ( int i, double x, double y, Node last )
+    {
+        Node p = new Node ( i, x, y );
+
+        if ( last == null )
+        {
+            p.prev = p;
+            p.next = p;
+        }
+        else
+        {
+            p.next = last.next;
+            p.prev = last;
+            last.next.prev = p;
+            last.next = p;
+        }
+
+        return p;
+    }
+
+    private static void removeNode ( Node p )
+    {
+        p.next.prev = p.prev;
+        p.prev.next = p.next;
+
+        if ( p.prevZ != null )
+        {
+            p.prevZ.nextZ = p.nextZ;
+        }
+
+        if ( p.nextZ != null )
+        {
+            p.nextZ.prevZ = p.prevZ;
+        }
+    }
+
+    // Some constants
+    private static final int HASH_THRESHOLD = 80;
+}
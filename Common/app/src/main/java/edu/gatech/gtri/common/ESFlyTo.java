@@ -0,0 +1,156 @@
+package edu.gatech.gtri.common;
+
+//
+/// \brief Camera flight between two points of a globe.
+///
+/// The eye follows the great circle of the surface normals of both ends,
+/// which stays within the flattening of the ellipsoid geodesic and maps
+/// back to geodetic latitude exactly, since a normal is what geodetic
+/// latitude measures.  Progress along the arc eases in and out with a
+/// smoothstep of the time.
+///
+/// On the way the eye rises so both ends fit in the view: the height is
+/// the blend of the end heights plus getRise() * sin ( pi * s ), where s is
+/// the progress and the rise is the rise ratio times the ground distance,
+/// less the higher end height.
+///
+/// A flight holds no state between samples: sample() depends on the time
+/// alone and allocates nothing.
+///
+/// This class has no Android dependencies.
+//
+public class ESFlyTo
+{
+    //
+    ///
+    /// \brief Plan a flight
+    /// \param lon0, lat0, height0 Start, degrees and length units
+    /// \param lon1, lat1, height1 End
+    /// \param radius Radius of the globe, for the ground distance
+    /// \param duration Time of the flight
+    //
+    public ESFlyTo ( double lon0, double lat0, double height0, double lon1, double lat1, double height1,
+                     double radius, double duration )
+    {
+        if ( !( duration > 0.0 ) )
+        {
+            throw new IllegalArgumentException ( "Flight duration must be positive" );
+        }
+
+        double cosLat0 = Math.cos ( Math.toRadians ( lat0 ) );
+        double cosLat1 = Math.cos ( Math.toRadians ( lat1 ) );
+        double n0x = cosLat0 * Math.cos ( Math.toRadians ( lon0 ) );
+        double n0y = cosLat0 * Math.sin ( Math.toRadians ( lon0 ) );
+        double n0z = Math.sin ( Math.toRadians ( lat0 ) );
+        double n1x = cosLat1 * Math.cos ( Math.toRadians ( lon1 ) );
+        double n1y = cosLat1 * Math.sin ( Math.toRadians ( lon1 ) );
+        double n1z = Math.sin ( Math.toRadians ( lat1 ) );
+        double dot = Math.max ( -1.0, Math.min ( 1.0, n0x * n1x + n0y * n1y + n0z * n1z ) );
+
+        // Direction of travel at the start, the part of n1 normal to n0
+        double wx = n1x - n0x * dot;
+        double wy = n1y - n0y * dot;
+        double wz = n1z - n0z * dot;
+        double w = Math.sqrt ( wx * wx + wy * wy + wz * wz );
+
+        if ( w < 1e-12 )
+        {
+            // Same or antipodal point: any great circle does, take the
+            // meridian of the start, heading north
+            wx = -n0z * Math.cos ( Math.toRadians ( lon0 ) );
+            wy = -n0z * Math.sin ( Math.toRadians ( lon0 ) );
+            wz = cosLat0;
+            w = 1.0;
+        }
+
+        mStart[0] = n0x;
+        mStart[1] = n0y;
+        mStart[2] = n0z;
+        mDirection[0] = wx / w;
+        mDirection[1] = wy / w;
+        mDirection[2] = wz / w;
+        mAngle = Math.acos ( dot );
+        mHeight0 = height0;
+        mHeight1 = height1;
+        mRadius = radius;
+        mDuration = duration;
+
+        // The end point itself, not one rounded through the arc
+        mLon1 = lon1;
+        mLat1 = lat1;
+
+        setRiseRatio ( DEFAULT_RISE_RATIO );
+    }
+
+    //
+    ///
+    /// \brief Set the peak height gained per ground distance, 0 for a
+    ///    flight at the end heights
+    //
+    public void setRiseRatio ( double ratio )
+    {
+        mRise = Math.max ( 0.0, ratio * getDistance() - Math.max ( mHeight0, mHeight1 ) );
+    }
+
+    public double getDuration() { return mDuration; }
+    public double getRise() { return mRise; }
+
+    //
+    ///
+    /// \brief Ground distance of the flight along the great circle
+    //
+    public double getDistance()
+    {
+        return mAngle * mRadius;
+    }
+
+    public boolean isFinished ( double time )
+    {
+        return time >= mDuration;
+    }
+
+    //
+    ///
+    /// \brief Position of the eye at a time of the flight
+    /// \param time Time since the start, clamped to the flight
+    /// \param out Receives longitude, latitude and height at offset
+    //
+    public void sample ( double time, double[] out, int offset )
+    {
+        double t = Math.max ( 0.0, Math.min ( 1.0, time / mDuration ) );
+        double s = t * t * ( 3.0 - 2.0 * t );
+
+        if ( t >= 1.0 )
+        {
+            out[offset] = mLon1;
+            out[offset + 1] = mLat1;
+            out[offset + 2] = mHeight1;
+            return;
+        }
+
+        double c = Math.cos ( s * mAngle );
+        double d = Math.sin ( s * mAngle );
+        double x = mStart[0] * c + mDirection[0] * d;
+        double y = mStart[1] * c + mDirection[1] * d;
+        double z = mStart[2] * c + mDirection[2] * d;
+
+        out[offset] = Math.toDegrees ( Math.atan2 ( y, x ) );
+        out[offset + 1] = Math.toDegrees ( Math.asin ( Math.max ( -1.0, Math.min ( 1.0, z ) ) ) );
+        out[offset + 2] = mHeight0 + ( mHeight1 - mHeight0 ) * s + mRise * Math.sin ( Math.PI * s );
+    }
+
+    // Member variables
+    private final double[] mStart = new double[3];
+    private final double[] mDirection = new double[3];
+    private final double mAngle;
+    private final double mHeight0;
+    private final double mHeight1;
+    private final double mLon1;
+    private final double mLat1;
+    private final double mRadius;
+    private final double mDuration;
+    private double mRise;
+
+    // Some constants
+    private static final double DEFAULT_RISE_RATIO = 0.5;
+}
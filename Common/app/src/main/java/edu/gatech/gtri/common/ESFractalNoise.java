@@ -0,0 +1,556 @@
+package edu.gatech.gtri.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief Fractal sums of ESSimplexNoise octaves: fBm, turbulence and
+///    ridged multifractal, with optional domain warping, at points, over
+///    coordinate arrays, and over heightfields and volumes.
+///
+/// Each octave multiplies the frequency by the lacunarity and the
+/// amplitude by the gain, and the sum is divided by the sum of the
+/// amplitudes:
+///
+/// - FBM sums the noise, in [-1, 1].
+/// - TURBULENCE sums its absolute value, billows in [0, 1].
+/// - RIDGED sums ( 1 - |noise| )^2, each octave weighted by the one
+///   before so that the detail gathers on the ridges, as Musgrave's
+///   ridged multifractal, in [0, 1].
+///
+/// With a warp, the point is first moved by fBm of the same octaves at
+/// offset points, one per axis, scaled by the warp: a cheap erosion look
+/// for terrain and swirls for clouds.
+///
+/// The batches go octave by octave over all the points, in runs of
+/// BATCH, so that each inner loop is one simple loop over arrays; the
+/// arithmetic of each point is that of the scalar call, so both agree to
+/// the bit.  Heightfields and volumes are split in rows evaluated on a
+/// ForkJoinPool, each row keeping its min and max for the normalization.
+///
+/// The batch calls on an instance use its scratch arrays and are not to
+/// be made from several threads at once; the scalar calls may.
+///
+/// This class has no Android dependencies.
+//
+public class ESFractalNoise
+{
+    // Fractal types
+    public static final int FBM = 0;
+    public static final int TURBULENCE = 1;
+    public static final int RIDGED = 2;
+
+    // Points per run of a batch
+    public static final int BATCH = 1024;
+
+    // Points per task of a parallel heightfield or volume, at least a row
+    public static final int CHUNK = 16384;
+
+    //
+    ///
+    /// \brief Create fBm of the simplex noise of a seed, 6 octaves of
+    ///    lacunarity 2 and gain 0.5, on the common ForkJoinPool
+    //
+    public ESFractalNoise ( long seed )
+    {
+        this ( new ESSimplexNoise ( seed ), ForkJoinPool.commonPool() );
+    }
+
+    //
+    ///
+    /// \brief Create fBm of a noise
+    /// \param pool Pool to generate heightfields and volumes on, or null
+    ///    to generate them on the calling thread
+    //
+    public ESFractalNoise ( ESSimplexNoise noise, ForkJoinPool pool )
+    {
+        mNoise = noise;
+        mPool = pool;
+    }
+
+    public ESSimplexNoise getNoise() { return mNoise; }
+
+    public void setType ( int type )
+    {
+        if ( type < FBM || type > RIDGED )
+        {
+            throw new IllegalArgumentException ( "Invalid fractal type " + type );
+        }
+
+        mType = type;
+    }
+
+    public void setOctaves ( int octaves )
+    {
+        if ( octaves < 1 || octaves > MAX_OCTAVES )
+        {
+            throw new IllegalArgumentException ( "Invalid number of octaves " + octaves );
+        }
+
+        mOctaves = octaves;
+    }
+
+    public void setLacunarity ( float lacunarity ) { mLacunarity = lacunarity; }
+    public void setGain ( float gain ) { mGain = gain; }
+
+    //
+    ///
+    /// \brief Move the points by fBm scaled by strength, 0 for no warp
+    //
+    public void setWarp ( float strength ) { mWarp = strength; }
+
+    public int getType() { return mType; }
+    public int getOctaves() { return mOctaves; }
+    public float getLacunarity() { return mLacunarity; }
+    public float getGain() { return mGain; }
+    public float getWarp() { return mWarp; }
+
+    //
+    ///
+    /// \brief Fractal noise at a point in 2D
+    //
+    public float get ( float x, float y )
+    {
+        if ( mWarp != 0.0f )
+        {
+            float wx = fractal ( FBM, x + WARP_X[0], y + WARP_Y[0], 0.0f, 2 );
+            float wy = fractal ( FBM, x + WARP_X[1], y + WARP_Y[1], 0.0f, 2 );
+
+            x += mWarp * wx;
+            y += mWarp * wy;
+        }
+
+        return fractal ( mType, x, y, 0.0f, 2 );
+    }
+
+    //
+    ///
+    /// \brief Fractal noise at a point in 3D
+    //
+    public float get ( float x, float y, float z )
+    {
+        if ( mWarp != 0.0f )
+        {
+            float wx = fractal ( FBM, x + WARP_X[0], y + WARP_Y[0], z + WARP_Z[0], 3 );
+            float wy = fractal ( FBM, x + WARP_X[1], y + WARP_Y[1], z + WARP_Z[1], 3 );
+            float wz = fractal ( FBM, x + WARP_X[2], y + WARP_Y[2], z + WARP_Z[2], 3 );
+
+            x += mWarp * wx;
+            y += mWarp * wy;
+            z += mWarp * wz;
+        }
+
+        return fractal ( mType, x, y, z, 3 );
+    }
+
+    //
+    ///
+    /// \brief Fractal noise at count points in 2D, out[i] = get ( x[i],
+    ///    y[i] ) for i from offset
+    //
+    public void get ( float[] x, float[] y, float[] out, int offset, int count )
+    {
+        batch ( mScratch, x, y, null, out, offset, count );
+    }
+
+    //
+    ///
+    /// \brief Fractal noise at count points in 3D
+    //
+    public void get ( float[] x, float[] y, float[] z, float[] out, int offset, int count )
+    {
+        batch ( mScratch, x, y, z, out, offset, count );
+    }
+
+    //
+    ///
+    /// \brief Generate a heightfield in [0, 1], the fractal noise at ( i /
+    ///    width * frequency, j / height * frequency ) of texel ( i, j )
+    ///    stretched from its min to its max
+    /// \param out Heights, width x height or more, rows first
+    //
+    public void createHeightfield ( float[] out, int width, int height, float frequency )
+    {
+        if ( width <= 0 || height <= 0 || out.length < ( long ) width * height )
+        {
+            throw new IllegalArgumentException ( "Invalid heightfield size " + width + "x" + height );
+        }
+
+        grid ( out, width, height, 1, frequency );
+
+        float scale = mMax > mMin ? 1.0f / ( mMax - mMin ) : 0.0f;
+
+        for ( int i = 0; i < width * height; i++ )
+        {
+            out[i] = ( out[i] - mMin ) * scale;
+        }
+    }
+
+    //
+    ///
+    /// \brief Generate a volume of the fractal noise at ( x / size *
+    ///    frequency, ... ) of voxel ( x, y, z ), x fastest
+    //
+    public void createVolume ( float[] out, int size, float frequency )
+    {
+        if ( size <= 0 || out.length < ( long ) size * size * size )
+        {
+            throw new IllegalArgumentException ( "Invalid volume size " + size );
+        }
+
+        grid ( out, size, size, size, frequency );
+    }
+
+    //
+    ///
+    /// \brief Generate a volume as GL_R8 bytes, from 0 at its minimum to
+    ///    255 at its maximum, put at the position of the buffer, which is
+    ///    advanced
+    //
+    public void createVolume ( ByteBuffer out, int size, float frequency )
+    {
+        int voxels = size * size * size;
+
+        if ( out.remaining() < voxels )
+        {
+            throw new IllegalArgumentException ( "Buffer too small for a volume of " + size );
+        }
+
+        float[] values = new float[voxels];
+        int base = out.position();
+
+        createVolume ( values, size, frequency );
+
+        float scale = mMax > mMin ? 255.0f / ( mMax - mMin ) : 0.0f;
+
+        for ( int i = 0; i < voxels; i++ )
+        {
+            out.put ( base + i, ( byte ) ( ( values[i] - mMin ) * scale ) );
+        }
+
+        out.position ( base + voxels );
+    }
+
+    //
+    ///
+    /// \brief Least and greatest value of the last heightfield or volume,
+    ///    before normalization
+    //
+    public float getMin() { return mMin; }
+    public float getMax() { return mMax; }
+
+    // Octaves of a fractal type at a point, 2 or 3 dimensions
+    private float fractal ( int type, float x, float y, float z, int dimensions )
+    {
+        float sum = 0.0f, amplitude = 1.0f, frequency = 1.0f, norm = 0.0f, weight = 1.0f;
+
+        for ( int octave = 0; octave < mOctaves; octave++ )
+        {
+            float n = dimensions == 2 ? mNoise.noise2D ( x * frequency, y * frequency )
+                                      : mNoise.noise3D ( x * frequency, y * frequency, z * frequency );
+
+            if ( type == TURBULENCE )
+            {
+                n = Math.abs ( n );
+            }
+            else if ( type == RIDGED )
+            {
+                n = 1.0f - Math.abs ( n );
+                n *= n * weight;
+                weight = Math.min ( 1.0f, n * RIDGE_GAIN );
+            }
+
+            sum += n * amplitude;
+            norm += amplitude;
+            amplitude *= mGain;
+            frequency *= mLacunarity;
+        }
+
+        return sum / norm;
+    }
+
+    // Points offset to offset + count - 1, z null in 2D, in runs of BATCH
+    private void batch ( Scratch s, float[] x, float[] y, float[] z, float[] out, int offset, int count )
+    {
+        for ( int first = offset; first < offset + count; first += BATCH )
+        {
+            int n = Math.min ( BATCH, offset + count - first );
+
+            System.arraycopy ( x, first, s.mX, 0, n );
+            System.arraycopy ( y, first, s.mY, 0, n );
+
+            if ( z != null )
+            {
+                System.arraycopy ( z, first, s.mZ, 0, n );
+            }
+
+            run ( s, z != null ? 3 : 2, n );
+            System.arraycopy ( s.mOut, 0, out, first, n );
+        }
+    }
+
+    // The points of the scratch: warped, then summed into its output
+    private void run ( Scratch s, int dimensions, int n )
+    {
+        if ( mWarp != 0.0f )
+        {
+            octaves ( s, FBM, dimensions, n, 0, s.mWarpX );
+            octaves ( s, FBM, dimensions, n, 1, s.mWarpY );
+
+            if ( dimensions == 3 )
+            {
+                octaves ( s, FBM, dimensions, n, 2, s.mWarpZ );
+            }
+
+            for ( int i = 0; i < n; i++ )
+            {
+                s.mX[i] += mWarp * s.mWarpX[i];
+                s.mY[i] += mWarp * s.mWarpY[i];
+            }
+
+            if ( dimensions == 3 )
+            {
+                for ( int i = 0; i < n; i++ )
+                {
+                    s.mZ[i] += mWarp * s.mWarpZ[i];
+                }
+            }
+        }
+
+        octaves ( s, mType, dimensions, n, -1, s.mOut );
+    }
+
+    // fractal() over the points of the scratch, octave by octave, at the
+    // warp offsets of an axis, or -1 for none
+    private void octaves ( Scratch s, int type, int dimensions, int n, int warpAxis, float[] out )
+    {
+        float[] px = s.mX, py = s.mY, pz = s.mZ;
+        float[] noise = s.mNoise, weight = s.mWeight;
+        float amplitude = 1.0f, frequency = 1.0f, norm = 0.0f;
+
+        if ( warpAxis >= 0 )
+        {
+            px = s.mOffsetX;
+            py = s.mOffsetY;
+            pz = s.mOffsetZ;
+
+            for ( int i = 0; i < n; i++ )
+            {
+                px[i] = s.mX[i] + WARP_X[warpAxis];
+                py[i] = s.mY[i] + WARP_Y[warpAxis];
+            }
+
+            if ( dimensions == 3 )
+            {
+                for ( int i = 0; i < n; i++ )
+                {
+                    pz[i] = s.mZ[i] + WARP_Z[warpAxis];
+                }
+            }
+        }
+
+        for ( int i = 0; i < n; i++ )
+        {
+            out[i] = 0.0f;
+            weight[i] = 1.0f;
+        }
+
+        for ( int octave = 0; octave < mOctaves; octave++ )
+        {
+            if ( dimensions == 2 )
+            {
+                for ( int i = 0; i < n; i++ )
+                {
+                    noise[i] = mNoise.noise2D ( px[i] * frequency, py[i] * frequency );
+                }
+            }
+            else
+            {
+                for ( int i = 0; i < n; i++ )
+                {
+                    noise[i] = mNoise.noise3D ( px[i] * frequency, py[i] * frequency, pz[i] * frequency );
+                }
+            }
+
+            if ( type == FBM )
+            {
+                for ( int i = 0; i < n; i++ )
+                {
+                    out[i] += noise[i] * amplitude;
+                }
+            }
+            else if ( type == TURBULENCE )
+            {
+                for ( int i = 0; i < n; i++ )
+                {
+                    out[i] += Math.abs ( noise[i] ) * amplitude;
+                }
+            }
+            else
+            {
+                for ( int i = 0; i < n; i++ )
+                {
+                    float r = 1.0f - Math.abs ( noise[i] );
+
+                    r *= r * weight[i];
+                    weight[i] = Math.min ( 1.0f, r * RIDGE_GAIN );
+                    out[i] += r * amplitude;
+                }
+            }
+
+            norm += amplitude;
+            amplitude *= mGain;
+            frequency *= mLacunarity;
+        }
+
+        for ( int i = 0; i < n; i++ )
+        {
+            out[i] /= norm;
+        }
+    }
+
+    // Grid of nx x ny x nz points at ( i / nx * frequency, ... ), in 2D
+    // when nz is 1, and its min and max
+    private void grid ( float[] out, int nx, int ny, int nz, float frequency )
+    {
+        int rows = ny * nz;
+
+        if ( mRowMin == null || mRowMin.length < rows )
+        {
+            mRowMin = new float[rows];
+            mRowMax = new float[rows];
+        }
+
+        RowTask task = new RowTask ( out, nx, ny, nz, frequency, 0, rows, Math.max ( 1, CHUNK / nx ) );
+
+        if ( mPool != null )
+        {
+            mPool.invoke ( task );
+        }
+        else
+        {
+            task.compute();
+        }
+
+        mMin = Float.MAX_VALUE;
+        mMax = -Float.MAX_VALUE;
+
+        for ( int r = 0; r < rows; r++ )
+        {
+            mMin = Math.min ( mMin, mRowMin[r] );
+            mMax = Math.max ( mMax, mRowMax[r] );
+        }
+    }
+
+    // Rows first to last - 1 of a grid, a row of BATCH points at a time
+    private void createRows ( Scratch s, float[] out, int nx, int ny, int nz, float frequency, int first, int last )
+    {
+        int dimensions = nz == 1 ? 2 : 3;
+
+        for ( int r = first; r < last; r++ )
+        {
+            float y = ( float ) ( r % ny ) / ( float ) ny * frequency;
+            float z = ( float ) ( r / ny ) / ( float ) nz * frequency;
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+
+            for ( int x0 = 0; x0 < nx; x0 += BATCH )
+            {
+                int n = Math.min ( BATCH, nx - x0 );
+
+                for ( int i = 0; i < n; i++ )
+                {
+                    s.mX[i] = ( float ) ( x0 + i ) / ( float ) nx * frequency;
+                    s.mY[i] = y;
+                    s.mZ[i] = z;
+                }
+
+                run ( s, dimensions, n );
+
+                for ( int i = 0; i < n; i++ )
+                {
+                    min = Math.min ( min, s.mOut[i] );
+                    max = Math.max ( max, s.mOut[i] );
+                }
+
+                System.arraycopy ( s.mOut, 0, out, r * nx + x0, n );
+            }
+
+            mRowMin[r] = min;
+            mRowMax[r] = max;
+        }
+    }
+
+    // Splits rows in halves down to a few, evaluated in parallel, each
+    // leaf with its own scratch
+    private final class RowTask extends RecursiveAction
+    {
+        RowTask ( float[] out, int nx, int ny, int nz, float frequency, int first, int last, int rows )
+        {
+            mOut = out;
+            mNx = nx;
+            mNy = ny;
+            mNz = nz;
+            mFrequency = frequency;
+            mFirst = first;
+            mLast = last;
+            mRows = rows;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mLast - mFirst > mRows )
+            {
+                int middle = ( mFirst + mLast ) >>> 1;
+                invokeAll ( new RowTask ( mOut, mNx, mNy, mNz, mFrequency, mFirst, middle, mRows ),
+                            new RowTask ( mOut, mNx, mNy, mNz, mFrequency, middle, mLast, mRows ) );
+            }
+            else
+            {
+                createRows ( new Scratch(), mOut, mNx, mNy, mNz, mFrequency, mFirst, mLast );
+            }
+        }
+
+        private final float[] mOut;
+        private final int mNx, mNy, mNz;
+        private final float mFrequency;
+        private final int mFirst, mLast, mRows;
+    }
+
+    // Arrays of a run of points
+    private static final class Scratch
+    {
+        final float[] mX = new float[BATCH], mY = new float[BATCH], mZ = new float[BATCH];
+        final float[] mOffsetX = new float[BATCH], mOffsetY = new float[BATCH], mOffsetZ = new float[BATCH];
+        final float[] mWarpX = new float[BATCH], mWarpY = new float[BATCH], mWarpZ = new float[BATCH];
+        final float[] mNoise = new float[BATCH], mWeight = new float[BATCH], mOut = new float[BATCH];
+    }
+
+    // Member variables
+    private final ESSimplexNoise mNoise;
+    private final ForkJoinPool mPool;
+    private int mType = FBM;
+    private int mOctaves = 6;
+    private float mLacunarity = 2.0f;
+    private float mGain = 0.5f;
+    private float mWarp;
+
+    // Scratch of the batch calls
+    private final Scratch mScratch = new Scratch();
+
+    // Min and max of each row, and of the last grid
+    private float[] mRowMin, mRowMax;
+    private float mMin, mMax;
+
+    // Some constants
+    private static final int MAX_OCTAVES = 16;
+    private static final float RIDGE_GAIN = 2.0f;
+
+    // Offsets of the fBm warping each axis, away from the point and each
+    // other so that the three do not correlate
+    private static final float[] WARP_X = { 17.3f, 3.9f, 8.1f };
+    private static final float[] WARP_Y = { 5.1f, 11.8f, 2.7f };
+    private static final float[] WARP_Z = { 9.7f, 6.2f, 13.4f };
+}
@@ -0,0 +1,531 @@
+package edu.gatech.gtri.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+//
+/// \brief Disk cache of procedurally generated texture and volume data.
+///
+/// A blob is addressed by a Key built from the name of its generator and
+/// every parameter the output depends on, including the seed, so a change
+/// of any parameter addresses another blob.  The file of a blob is named
+/// after the SHA-1 of its key and holds a header with the digest, the
+/// version of the cache, the size and the storage mode, followed by the
+/// data.
+///
+/// get() returns the data of a key, generating and writing it on a miss.
+/// Raw blobs are memory mapped on a hit, so the returned direct buffer can
+/// be handed to glTexImage*() without a copy; compressed blobs are inflated
+/// into a direct buffer, which suits data that compresses well and is
+/// cheap to inflate, such as flat colored images.
+///
+/// A blob of another cache version, e.g. written before an app update that
+/// may have changed a generator, or one that is truncated or corrupt is
+/// generated again.  A blob that cannot be written is simply not cached.
+/// Files are written to a temporary file and renamed, so a crash never
+/// leaves a partial blob under the name of a key.
+///
+/// This class has no Android dependencies.
+//
+public class ESGeneratedCache
+{
+    //
+    ///
+    /// \brief Writes the data of a blob
+    //
+    public interface Generator
+    {
+        //
+        ///
+        /// \brief Fill the buffer, whose capacity is the size of the blob
+        //
+        void generate ( ByteBuffer out );
+    }
+
+    //
+    ///
+    /// \brief Generator name and parameters addressing a blob
+    //
+    public static class Key
+    {
+        //
+        ///
+        /// \brief Start a key
+        /// \param generator Name of the generator, also the prefix of the
+        ///    file name
+        //
+        public Key ( String generator )
+        {
+            mGenerator = generator;
+            put ( generator );
+        }
+
+        public Key put ( int value )
+        {
+            try
+            {
+                mParams.writeInt ( value );
+            }
+            catch ( IOException ioe )
+            {
+                throw new AssertionError ( ioe );
+            }
+
+            return this;
+        }
+
+        public Key put ( long value )
+        {
+            try
+            {
+                mParams.writeLong ( value );
+            }
+            catch ( IOException ioe )
+            {
+                throw new AssertionError ( ioe );
+            }
+
+            return this;
+        }
+
+        // Bits, so that -0 and NaNs address their own blobs
+        public Key put ( float value )
+        {
+            return put ( Float.floatToRawIntBits ( value ) );
+        }
+
+        public Key put ( double value )
+        {
+            return put ( Double.doubleToRawLongBits ( value ) );
+        }
+
+        public Key put ( boolean value )
+        {
+            return put ( value ? 1 : 0 );
+        }
+
+        public Key put ( String value )
+        {
+            try
+            {
+                mParams.writeUTF ( value );
+            }
+            catch ( IOException ioe )
+            {
+                throw new AssertionError ( ioe );
+            }
+
+            return this;
+        }
+
+        public String getGenerator() { return mGenerator; }
+
+        //
+        ///
+        /// \brief SHA-1 of the generator name and parameters
+        //
+        public byte[] getDigest()
+        {
+            try
+            {
+                return MessageDigest.getInstance ( "SHA-1" ).digest ( mBytes.toByteArray() );
+            }
+            catch ( NoSuchAlgorithmException e )
+            {
+                throw new AssertionError ( e );
+            }
+        }
+
+        //
+        ///
+        /// \brief File name of the blob, the generator and the digest in hex
+        //
+        public String getFileName()
+        {
+            StringBuilder name = new StringBuilder ( mGenerator ).append ( '-' );
+
+            for ( byte b : getDigest() )
+            {
+                name.append ( Character.forDigit ( ( b >> 4 ) & 0xF, 16 ) ).append ( Character.forDigit ( b & 0xF, 16 ) );
+            }
+
+            return name.append ( SUFFIX ).toString();
+        }
+
+        // Member variables
+        private final String mGenerator;
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mParams = new DataOutputStream ( mBytes );
+    }
+
+    //
+    ///
+    /// \brief Open a cache directory, creating it if needed
+    /// \param directory Directory of the blobs, e.g. under the cache
+    ///    directory of the app
+    /// \param version Version of the generators: blobs written with
+    ///    another version are generated again.  Apps pass their update
+    ///    time, see ESTextureLoader.generatedCache().
+    //
+    public ESGeneratedCache ( File directory, long version )
+    {
+        mDirectory = directory;
+        mVersion = version;
+        directory.mkdirs();
+    }
+
+    //
+    ///
+    /// \brief Data of a key, read from the cache or generated
+    /// \param size Size of the data in bytes
+    /// \param compress Whether a generated blob is stored deflated rather
+    ///    than raw
+    /// \return A direct buffer of the data, with position 0 and limit size,
+    ///    read-only if memory mapped
+    //
+    public ByteBuffer get ( Key key, int size, boolean compress, Generator generator )
+    {
+        File file = new File ( mDirectory, key.getFileName() );
+        byte[] digest = key.getDigest();
+
+        if ( file.exists() )
+        {
+            try
+            {
+                ByteBuffer data = read ( file, digest, size );
+
+                // Last use, for trim()
+                file.setLastModified ( System.currentTimeMillis() );
+                mHits++;
+                return data;
+            }
+            catch ( IOException ioe )
+            {
+                // Stale or corrupt: generate it again
+            }
+        }
+
+        ByteBuffer data = ByteBuffer.allocateDirect ( size ).order ( ByteOrder.nativeOrder() );
+
+        generator.generate ( data );
+        data.clear();
+        mMisses++;
+
+        try
+        {
+            write ( file, digest, data, compress );
+        }
+        catch ( IOException ioe )
+        {
+            // Not cached
+        }
+
+        data.clear();
+        return data;
+    }
+
+    //
+    ///
+    /// \brief Whether the blob of a key is on disk; it may still be stale
+    //
+    public boolean contains ( Key key )
+    {
+        return new File ( mDirectory, key.getFileName() ).exists();
+    }
+
+    //
+    ///
+    /// \brief Delete the blob of a key, e.g. after a generator changed
+    //
+    public void invalidate ( Key key )
+    {
+        new File ( mDirectory, key.getFileName() ).delete();
+    }
+
+    //
+    ///
+    /// \brief Delete every blob
+    //
+    public void clear()
+    {
+        for ( File file : listBlobs() )
+        {
+            file.delete();
+        }
+    }
+
+    //
+    ///
+    /// \brief Delete the least recently used blobs until the blobs take at
+    ///    most maxBytes
+    //
+    public void trim ( long maxBytes )
+    {
+        File[] files = listBlobs();
+        final long[] used = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        long total = 0;
+
+        for ( int i = 0; i < files.length; i++ )
+        {
+            used[i] = files[i].lastModified();
+            order[i] = i;
+            total += files[i].length();
+        }
+
+        Arrays.sort ( order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare ( Integer a, Integer b )
+            {
+                return Long.compare ( used[a], used[b] );
+            }
+        } );
+
+        for ( int i = 0; i < order.length && total > maxBytes; i++ )
+        {
+            File file = files[order[i]];
+            long length = file.length();
+
+            if ( file.delete() )
+            {
+                total -= length;
+            }
+        }
+    }
+
+    //
+    ///
+    /// \brief Size of the blobs on disk in bytes
+    //
+    public long getSizeInBytes()
+    {
+        long total = 0;
+
+        for ( File file : listBlobs() )
+        {
+            total += file.length();
+        }
+
+        return total;
+    }
+
+    public File getDirectory() { return mDirectory; }
+    public long getVersion() { return mVersion; }
+    public int getHits() { return mHits; }
+    public int getMisses() { return mMisses; }
+
+    private File[] listBlobs()
+    {
+        File[] files = mDirectory.listFiles();
+        int count = 0;
+
+        if ( files == null )
+        {
+            return new File[0];
+        }
+
+        for ( File file : files )
+        {
+            if ( file.getName().endsWith ( SUFFIX ) )
+            {
+                files[count++] = file;
+            }
+        }
+
+        return Arrays.copyOf ( files, count );
+    }
+
+    private ByteBuffer read ( File file, byte[] digest, int size ) throws IOException
+    {
+        try ( RandomAccessFile raf = new RandomAccessFile ( file, "r" ) )
+        {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate ( HEADER_SIZE );
+            byte[] stored = new byte[digest.length];
+
+            readFully ( channel, header, 0 );
+            header.flip();
+
+            if ( header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != mVersion )
+            {
+                throw new IOException ( "Stale blob" );
+            }
+
+            int mode = header.getInt();
+            int blobSize = header.getInt();
+            int length = header.getInt();
+
+            header.get ( stored );
+
+            if ( !Arrays.equals ( stored, digest ) || blobSize != size || channel.size() != HEADER_SIZE + ( long ) length )
+            {
+                throw new IOException ( "Blob of another key or truncated" );
+            }
+
+            if ( mode == RAW && length == size )
+            {
+                // The mapping stays valid after the file is closed
+                return channel.map ( FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size ).order ( ByteOrder.nativeOrder() );
+            }
+            else if ( mode == DEFLATED )
+            {
+                ByteBuffer compressed = ByteBuffer.allocate ( length );
+
+                readFully ( channel, compressed, HEADER_SIZE );
+                return inflate ( compressed.array(), size );
+            }
+
+            throw new IOException ( "Unknown blob mode" );
+        }
+    }
+
+    private void write ( File file, byte[] digest, ByteBuffer data, boolean compress ) throws IOException
+    {
+        ByteBuffer payload = compress ? deflate ( data ) : data;
+        ByteBuffer header = ByteBuffer.allocate ( HEADER_SIZE );
+        File temp = File.createTempFile ( file.getName(), ".tmp", mDirectory );
+
+        header.putInt ( MAGIC ).putInt ( VERSION ).putLong ( mVersion );
+        header.putInt ( compress ? DEFLATED : RAW ).putInt ( data.remaining() ).putInt ( payload.remaining() );
+        header.put ( digest );
+        header.clear();
+
+        try
+        {
+            try ( RandomAccessFile raf = new RandomAccessFile ( temp, "rw" ) )
+            {
+                FileChannel channel = raf.getChannel();
+
+                writeFully ( channel, header, 0 );
+                writeFully ( channel, payload, HEADER_SIZE );
+            }
+
+            if ( !temp.renameTo ( file ) )
+            {
+                throw new IOException ( "Cannot rename " + temp );
+            }
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+
+    private static ByteBuffer deflate ( ByteBuffer data )
+    {
+        byte[] bytes = new byte[data.remaining()];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater ( Deflater.BEST_SPEED );
+        byte[] chunk = new byte[IO_CHUNK];
+
+        data.duplicate().get ( bytes );
+        deflater.setInput ( bytes );
+        deflater.finish();
+
+        while ( !deflater.finished() )
+        {
+            out.write ( chunk, 0, deflater.deflate ( chunk ) );
+        }
+
+        deflater.end();
+        return ByteBuffer.wrap ( out.toByteArray() );
+    }
+
+    private static ByteBuffer inflate ( byte[] compressed, int size ) throws IOException
+    {
+        Inflater inflater = new Inflater();
+        byte[] bytes = new byte[size];
+        int count = 0;
+
+        try
+        {
+            inflater.setInput ( compressed );
+
+            while ( count < size && !inflater.finished() )
+            {
+                int n = inflater.inflate ( bytes, count, size - count );
+
+                if ( n == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+                {
+                    break;
+                }
+
+                count += n;
+            }
+
+            if ( count != size || !inflater.finished() || inflater.getRemaining() != 0 )
+            {
+                throw new IOException ( "Corrupt compressed blob" );
+            }
+        }
+        catch ( DataFormatException e )
+        {
+            throw new IOException ( "Corrupt compressed blob", e );
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        ByteBuffer data = ByteBuffer.allocateDirect ( size ).order ( ByteOrder.nativeOrder() );
+
+        data.put ( bytes ).clear();
+        return data;
+    }
+
+    private static void readFully ( FileChannel channel, ByteBuffer buffer, long position ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            int n = channel.read ( buffer, position );
+
+            if ( n < 0 )
+            {
+                throw new EOFException ( "Truncated blob" );
+            }
+
+            position += n;
+        }
+    }
+
+    private static void writeFully ( FileChannel channel, ByteBuffer buffer, long position ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            position += channel.write ( buffer, position );
+        }
+    }
+
+    // Member variables
+    private final File mDirectory;
+    private final long mVersion;
+    private int mHits;
+    private int mMisses;
+
+    // Some constants
+    private static final int MAGIC = 0x45534743; // "ESGC"
+    private static final int VERSION = 1;
+    private static final int RAW = 0;
+    private static final int DEFLATED = 1;
+    private static final String SUFFIX = ".blob";
+    private static final int IO_CHUNK = 65536;
+
+    // Magic, versions, mode, sizes and the SHA-1, padded so that mapped
+    // data is aligned for float and int views
+    private static final int HEADER_SIZE = 64;
+}
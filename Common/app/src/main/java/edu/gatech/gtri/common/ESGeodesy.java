@@ -0,0 +1,424 @@
+package edu.gatech.gtri.common;
+
+import java.lang.Math;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief Geodetic coordinate conversions.
+///
+/// An ESGeodesy instance describes an ellipsoid and converts between
+/// geodetic coordinates (longitude, latitude in degrees and height above
+/// the ellipsoid) and Earth-centered Earth-fixed (ECEF) coordinates with z
+/// towards the north pole, in the unit of the radii.  WGS84 is provided in
+/// meters and in kilometers.  Local east-north-up frames, great-circle
+/// distances and the web-mercator tile index are static helpers.
+///
+/// None of the methods allocate: results are written to caller arrays at an
+/// offset, and the batch versions convert whole coordinate arrays into
+/// arrays or direct buffers.  Instances are immutable and can be shared
+/// between threads.
+///
+/// ECEF to geodetic uses the closed form of Heikkinen, which is accurate to
+/// well below a millimeter from deep underground to beyond geostationary
+/// orbit; it is not defined within a few tens of kilometers of the center.
+///
+/// This class has no Android dependencies.
+//
+public class ESGeodesy
+{
+    // WGS84 ellipsoid in meters
+    public static final double WGS84_A = 6378137.0;
+    public static final double WGS84_B = 6356752.314245;
+
+    // Mean radius of WGS84 in meters, for great-circle distances
+    public static final double MEAN_RADIUS = 6371008.8;
+
+    // Latitude where the web-mercator square ends
+    public static final double WEB_MERCATOR_MAX_LATITUDE = 85.0511287798066;
+
+    public static final ESGeodesy WGS84 = new ESGeodesy ( WGS84_A, WGS84_B );
+    public static final ESGeodesy WGS84_KM = new ESGeodesy ( WGS84_A / 1000.0, WGS84_B / 1000.0 );
+
+    //
+    ///
+    /// \brief Create an ellipsoid
+    /// \param radiusA Equatorial radius
+    /// \param radiusB Polar radius
+    //
+    public ESGeodesy ( double radiusA, double radiusB )
+    {
+        mRadiusA = radiusA;
+        mRadiusB = radiusB;
+        mE2 = 1.0 - ( radiusB * radiusB ) / ( radiusA * radiusA );
+        mEp2 = ( radiusA * radiusA ) / ( radiusB * radiusB ) - 1.0;
+    }
+
+    //
+    ///
+    /// \brief Convert geodetic coordinates to ECEF
+    /// \param lon, lat Longitude and latitude in degrees
+    /// \param height Height above the ellipsoid
+    /// \param out Receives x, y, z at offset
+    //
+    public void geodeticToEcef ( double lon, double lat, double height, double[] out, int offset )
+    {
+        double lambda = Math.toRadians ( lon );
+        double phi = Math.toRadians ( lat );
+        double sinPhi = Math.sin ( phi );
+        double cosPhi = Math.cos ( phi );
+        double n = mRadiusA / Math.sqrt ( 1.0 - mE2 * sinPhi * sinPhi );
+
+        out[offset] = ( n + height ) * cosPhi * Math.cos ( lambda );
+        out[offset + 1] = ( n + height ) * cosPhi * Math.sin ( lambda );
+        out[offset + 2] = ( n * ( 1.0 - mE2 ) + height ) * sinPhi;
+    }
+
+    //
+    ///
+    /// \brief Convert ECEF coordinates to geodetic
+    /// \param out Receives longitude and latitude in degrees and the height
+    ///    at offset
+    //
+    public void ecefToGeodetic ( double x, double y, double z, double[] out, int offset )
+    {
+        double a = mRadiusA;
+        double b = mRadiusB;
+        double e2 = mE2;
+        double p2 = x * x + y * y;
+        double p = Math.sqrt ( p2 );
+        double z2 = z * z;
+
+        // Heikkinen (1982)
+        double f = 54.0 * b * b * z2;
+        double g = p2 + ( 1.0 - e2 ) * z2 - e2 * ( a * a - b * b );
+        double c = e2 * e2 * f * p2 / ( g * g * g );
+        double s = Math.cbrt ( 1.0 + c + Math.sqrt ( c * c + 2.0 * c ) );
+        double k = s + 1.0 + 1.0 / s;
+        double pp = f / ( 3.0 * k * k * g * g );
+        double q = Math.sqrt ( 1.0 + 2.0 * e2 * e2 * pp );
+        double r0 = -( pp * e2 * p ) / ( 1.0 + q )
+                    + Math.sqrt ( Math.max ( 0.0, 0.5 * a * a * ( 1.0 + 1.0 / q )
+                                                  - pp * ( 1.0 - e2 ) * z2 / ( q * ( 1.0 + q ) )
+                                                  - 0.5 * pp * p2 ) );
+        double t = p - e2 * r0;
+        double u = Math.sqrt ( t * t + z2 );
+        double v = Math.sqrt ( t * t + ( 1.0 - e2 ) * z2 );
+        double z0 = b * b * z / ( a * v );
+
+        out[offset] = Math.toDegrees ( Math.atan2 ( y, x ) );
+        out[offset + 1] = Math.toDegrees ( Math.atan2 ( z + mEp2 * z0, p ) );
+        out[offset + 2] = u * ( 1.0 - b * b / ( a * v ) );
+    }
+
+    //
+    ///
+    /// \brief Convert an array of geodetic coordinates to ECEF
+    /// \param lonLatHeight count longitude, latitude, height triples
+    /// \param out Receives count x, y, z triples
+    //
+    public void geodeticToEcef ( double[] lonLatHeight, int count, double[] out )
+    {
+        for ( int i = 0; i < count * 3; i += 3 )
+        {
+            geodeticToEcef ( lonLatHeight[i], lonLatHeight[i + 1], lonLatHeight[i + 2], out, i );
+        }
+    }
+
+    //
+    ///
+    /// \brief Convert an array of ECEF coordinates to geodetic
+    /// \param xyz count x, y, z triples
+    /// \param out Receives count longitude, latitude, height triples
+    //
+    public void ecefToGeodetic ( double[] xyz, int count, double[] out )
+    {
+        for ( int i = 0; i < count * 3; i += 3 )
+        {
+            ecefToGeodetic ( xyz[i], xyz[i + 1], xyz[i + 2], out, i );
+        }
+    }
+
+    //
+    ///
+    /// \brief Convert an array of geodetic coordinates to float ECEF offsets
+    ///    from a center, ready for a vertex buffer (see ESRelativeToEye)
+    /// \param lonLatHeight count longitude, latitude, height triples
+    /// \param centerX, centerY, centerZ ECEF center subtracted in double
+    /// \param out Receives count x, y, z triples at its current position,
+    ///    which is advanced
+    //
+    public void geodeticToEcef ( double[] lonLatHeight, int count,
+                                 double centerX, double centerY, double centerZ, FloatBuffer out )
+    {
+        convertRange ( lonLatHeight, 0, count, centerX, centerY, centerZ, out, out.position() );
+        out.position ( out.position() + count * 3 );
+    }
+
+    //
+    ///
+    /// \brief Parallel version of the float conversion, for large arrays
+    /// \param pool Pool to run on, or null to convert on the calling thread
+    //
+    public void geodeticToEcef ( double[] lonLatHeight, int count,
+                                 double centerX, double centerY, double centerZ, FloatBuffer out, ForkJoinPool pool )
+    {
+        if ( pool == null || count <= GRAIN )
+        {
+            geodeticToEcef ( lonLatHeight, count, centerX, centerY, centerZ, out );
+            return;
+        }
+
+        pool.invoke ( new ConvertTask ( lonLatHeight, 0, count, centerX, centerY, centerZ, out, out.position() ) );
+        out.position ( out.position() + count * 3 );
+    }
+
+    // Convert points [first, last) with absolute puts, so that disjoint
+    // ranges can be written concurrently
+    private void convertRange ( double[] lonLatHeight, int first, int last,
+                                double centerX, double centerY, double centerZ, FloatBuffer out, int base )
+    {
+        for ( int i = first; i < last; i++ )
+        {
+            double lambda = Math.toRadians ( lonLatHeight[i * 3] );
+            double phi = Math.toRadians ( lonLatHeight[i * 3 + 1] );
+            double height = lonLatHeight[i * 3 + 2];
+            double sinPhi = Math.sin ( phi );
+            double cosPhi = Math.cos ( phi );
+            double n = mRadiusA / Math.sqrt ( 1.0 - mE2 * sinPhi * sinPhi );
+            double r = ( n + height ) * cosPhi;
+            int index = base + i * 3;
+
+            out.put ( index, ( float ) ( r * Math.cos ( lambda ) - centerX ) );
+            out.put ( index + 1, ( float ) ( r * Math.sin ( lambda ) - centerY ) );
+            out.put ( index + 2, ( float ) ( ( n * ( 1.0 - mE2 ) + height ) * sinPhi - centerZ ) );
+        }
+    }
+
+    private class ConvertTask extends RecursiveAction
+    {
+        ConvertTask ( double[] lonLatHeight, int first, int last,
+                      double centerX, double centerY, double centerZ, FloatBuffer out, int base )
+        {
+            mLonLatHeight = lonLatHeight;
+            mFirst = first;
+            mLast = last;
+            mCenterX = centerX;
+            mCenterY = centerY;
+            mCenterZ = centerZ;
+            mOut = out;
+            mBase = base;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mLast - mFirst <= GRAIN )
+            {
+                convertRange ( mLonLatHeight, mFirst, mLast, mCenterX, mCenterY, mCenterZ, mOut, mBase );
+                return;
+            }
+
+            int middle = ( mFirst + mLast ) >>> 1;
+            invokeAll ( new ConvertTask ( mLonLatHeight, mFirst, middle, mCenterX, mCenterY, mCenterZ, mOut, mBase ),
+                        new ConvertTask ( mLonLatHeight, middle, mLast, mCenterX, mCenterY, mCenterZ, mOut, mBase ) );
+        }
+
+        private final double[] mLonLatHeight;
+        private final int mFirst, mLast;
+        private final double mCenterX, mCenterY, mCenterZ;
+        private final FloatBuffer mOut;
+        private final int mBase;
+    }
+
+    //
+    ///
+    /// \brief Compute the local east-north-up frame at a point
+    /// \param lon, lat, height Origin of the frame
+    /// \param frame Receives the column-major 4x4 matrix from ENU to ECEF:
+    ///    the east, north and up axes followed by the origin
+    //
+    public void computeEnuFrame ( double lon, double lat, double height, double[] frame )
+    {
+        double lambda = Math.toRadians ( lon );
+        double phi = Math.toRadians ( lat );
+        double sinLambda = Math.sin ( lambda );
+        double cosLambda = Math.cos ( lambda );
+        double sinPhi = Math.sin ( phi );
+        double cosPhi = Math.cos ( phi );
+
+        // East
+        frame[0] = -sinLambda;
+        frame[1] = cosLambda;
+        frame[2] = 0.0;
+        frame[3] = 0.0;
+
+        // North
+        frame[4] = -sinPhi * cosLambda;
+        frame[5] = -sinPhi * sinLambda;
+        frame[6] = cosPhi;
+        frame[7] = 0.0;
+
+        // Up, the ellipsoid normal
+        frame[8] = cosPhi * cosLambda;
+        frame[9] = cosPhi * sinLambda;
+        frame[10] = sinPhi;
+        frame[11] = 0.0;
+
+        geodeticToEcef ( lon, lat, height, frame, 12 );
+        frame[15] = 1.0;
+    }
+
+    //
+    ///
+    /// \brief Express an ECEF point in an east-north-up frame
+    /// \param frame Frame from computeEnuFrame()
+    /// \param out Receives east, north, up at offset
+    //
+    public static void ecefToEnu ( double[] frame, double x, double y, double z, double[] out, int offset )
+    {
+        double dx = x - frame[12];
+        double dy = y - frame[13];
+        double dz = z - frame[14];
+
+        // The axes are orthonormal, the inverse rotation is the transpose
+        out[offset] = frame[0] * dx + frame[1] * dy + frame[2] * dz;
+        out[offset + 1] = frame[4] * dx + frame[5] * dy + frame[6] * dz;
+        out[offset + 2] = frame[8] * dx + frame[9] * dy + frame[10] * dz;
+    }
+
+    //
+    ///
+    /// \brief Convert east-north-up coordinates of a frame to ECEF
+    /// \param frame Frame from computeEnuFrame()
+    /// \param out Receives x, y, z at offset
+    //
+    public static void enuToEcef ( double[] frame, double east, double north, double up, double[] out, int offset )
+    {
+        out[offset] = frame[0] * east + frame[4] * north + frame[8] * up + frame[12];
+        out[offset + 1] = frame[1] * east + frame[5] * north + frame[9] * up + frame[13];
+        out[offset + 2] = frame[2] * east + frame[6] * north + frame[10] * up + frame[14];
+    }
+
+    //
+    ///
+    /// \brief Angle between two points on a sphere, in radians (haversine)
+    //
+    public static double centralAngle ( double lon1, double lat1, double lon2, double lat2 )
+    {
+        double phi1 = Math.toRadians ( lat1 );
+        double phi2 = Math.toRadians ( lat2 );
+        double sinDPhi = Math.sin ( 0.5 * ( phi2 - phi1 ) );
+        double sinDLambda = Math.sin ( 0.5 * Math.toRadians ( lon2 - lon1 ) );
+        double h = sinDPhi * sinDPhi + Math.cos ( phi1 ) * Math.cos ( phi2 ) * sinDLambda * sinDLambda;
+
+        return 2.0 * Math.asin ( Math.min ( 1.0, Math.sqrt ( h ) ) );
+    }
+
+    //
+    ///
+    /// \brief Great-circle distance between two points on a sphere
+    /// \param radius Sphere radius, e.g. MEAN_RADIUS
+    //
+    public static double greatCircleDistance ( double lon1, double lat1, double lon2, double lat2, double radius )
+    {
+        return centralAngle ( lon1, lat1, lon2, lat2 ) * radius;
+    }
+
+    //
+    ///
+    /// \brief Initial bearing of the great circle from the first point to
+    ///    the second, in degrees clockwise from north in [0, 360)
+    //
+    public static double initialBearing ( double lon1, double lat1, double lon2, double lat2 )
+    {
+        double phi1 = Math.toRadians ( lat1 );
+        double phi2 = Math.toRadians ( lat2 );
+        double dLambda = Math.toRadians ( lon2 - lon1 );
+        double y = Math.sin ( dLambda ) * Math.cos ( phi2 );
+        double x = Math.cos ( phi1 ) * Math.sin ( phi2 ) - Math.sin ( phi1 ) * Math.cos ( phi2 ) * Math.cos ( dLambda );
+        double bearing = Math.toDegrees ( Math.atan2 ( y, x ) );
+
+        return bearing < 0.0 ? bearing + 360.0 : bearing;
+    }
+
+    //
+    ///
+    /// \brief Project to spherical web-mercator (EPSG:3857)
+    /// \param out Receives x, y in meters at offset
+    //
+    public static void lonLatToWebMercator ( double lon, double lat, double[] out, int offset )
+    {
+        double phi = Math.toRadians ( clampLatitude ( lat ) );
+
+        out[offset] = WGS84_A * Math.toRadians ( lon );
+        out[offset + 1] = WGS84_A * Math.log ( Math.tan ( 0.25 * Math.PI + 0.5 * phi ) );
+    }
+
+    //
+    ///
+    /// \brief Column of the web-mercator tile containing a longitude, with
+    ///    the usual XYZ layout: x eastwards from -180, y southwards from the
+    ///    top of the map
+    //
+    public static int webMercatorTileX ( double lon, int zoom )
+    {
+        int tiles = 1 << zoom;
+        int x = ( int ) Math.floor ( ( lon + 180.0 ) / 360.0 * tiles );
+
+        return Math.max ( 0, Math.min ( tiles - 1, x ) );
+    }
+
+    //
+    ///
+    /// \brief Row of the web-mercator tile containing a latitude
+    //
+    public static int webMercatorTileY ( double lat, int zoom )
+    {
+        int tiles = 1 << zoom;
+        double phi = Math.toRadians ( clampLatitude ( lat ) );
+        double y = ( 1.0 - Math.log ( Math.tan ( phi ) + 1.0 / Math.cos ( phi ) ) / Math.PI ) * 0.5;
+
+        return Math.max ( 0, Math.min ( tiles - 1, ( int ) Math.floor ( y * tiles ) ) );
+    }
+
+    //
+    ///
+    /// \brief Geographic extent of a web-mercator tile
+    /// \param extent Receives west, south, east, north in degrees
+    //
+    public static void webMercatorTileExtent ( int zoom, int x, int y, double[] extent )
+    {
+        double tiles = 1 << zoom;
+
+        extent[0] = x / tiles * 360.0 - 180.0;
+        extent[1] = webMercatorLatitude ( ( y + 1 ) / tiles );
+        extent[2] = ( x + 1 ) / tiles * 360.0 - 180.0;
+        extent[3] = webMercatorLatitude ( y / tiles );
+    }
+
+    // Latitude of a normalized web-mercator row, 0 at the top
+    private static double webMercatorLatitude ( double y )
+    {
+        return Math.toDegrees ( Math.atan ( Math.sinh ( Math.PI * ( 1.0 - 2.0 * y ) ) ) );
+    }
+
+    private static double clampLatitude ( double lat )
+    {
+        return Math.max ( -WEB_MERCATOR_MAX_LATITUDE, Math.min ( WEB_MERCATOR_MAX_LATITUDE, lat ) );
+    }
+
+    public double getRadiusA() { return mRadiusA; }
+    public double getRadiusB() { return mRadiusB; }
+    public double getEccentricitySquared() { return mE2; }
+
+    // Member variables
+    private final double mRadiusA;
+    private final double mRadiusB;
+    private final double mE2;
+    private final double mEp2;
+
+    // Some constants
+    private static final int GRAIN = 16384;
+}
@@ -0,0 +1,362 @@
+package edu.gatech.gtri.common;
+
+import java.lang.Math;
+
+//
+/// \brief Quadtree level-of-detail selection for a tiled ellipsoid.
+///
+/// The globe is covered by geodetic (equirectangular) tiles: level 0 has
+/// two 180 x 180 degree tiles, west and east of the prime meridian, and
+/// each level splits every tile into four.  Tile (level, x, y) spans
+/// 180 / 2^level degrees in both directions, x counts eastwards from
+/// -180 degrees and y southwards from the north pole, the usual layout of
+/// a geographic tile pyramid.
+///
+/// Every frame the tree is walked from the roots.  A tile is dropped when
+/// its bounding sphere is outside the view frustum or when it is hidden
+/// behind the horizon, and split while one of its texels would cover more
+/// than the allowed screen-space error.  The number of selected tiles
+/// therefore depends on the screen resolution, not on the depth of the
+/// dataset.
+///
+/// Horizon culling uses a single occludee point per tile in the space where
+/// the ellipsoid is a unit sphere.  The point is placed so that it is
+/// visible whenever any part of the tile is.
+///
+/// Positions are Earth-centered Earth-fixed with z towards the north pole,
+/// in the unit of the ellipsoid radii.  Frustum tests use a view-projection
+/// matrix relative to the eye, so the large eye coordinates never pass
+/// through single precision.
+//
+public class ESGlobeQuadtree
+{
+    //
+    ///
+    /// \brief Create a quadtree over an ellipsoid
+    /// \param radiusA Equatorial radius
+    /// \param radiusB Polar radius
+    /// \param tileSize Texture size of a tile in texels
+    /// \param maxLevel Deepest level that may be selected
+    //
+    public ESGlobeQuadtree ( double radiusA, double radiusB, int tileSize, int maxLevel )
+    {
+        if ( radiusA <= 0.0 || radiusB <= 0.0 || radiusB > radiusA || tileSize < 1 || maxLevel < 0 || maxLevel > 30 )
+        {
+            throw new IllegalArgumentException ( "Invalid globe quadtree parameters" );
+        }
+
+        mRadiusA = radiusA;
+        mRadiusB = radiusB;
+        mGeodesy = new ESGeodesy ( radiusA, radiusB );
+        mTileSize = tileSize;
+        mMaxLevel = maxLevel;
+        mSelected = new int[64 * 3];
+    }
+
+    //
+    ///
+    /// \brief Select the tiles to draw
+    /// \param eyeX, eyeY, eyeZ Eye position
+    /// \param viewProj Projection times view matrix (column-major) with the
+    ///    eye at the origin, i.e. applied to (position - eye)
+    /// \param viewportHeight Viewport height in pixels
+    /// \param fovy Vertical field of view in degrees
+    /// \return Number of selected tiles, see getSelectedLevel(), getSelectedX()
+    ///    and getSelectedY()
+    //
+    public int select ( double eyeX, double eyeY, double eyeZ, float[] viewProj, int viewportHeight, float fovy )
+    {
+        mEyeX = eyeX;
+        mEyeY = eyeY;
+        mEyeZ = eyeZ;
+        mPixelsPerRadian = viewportHeight / ( 2.0 * Math.tan ( Math.toRadians ( fovy ) * 0.5 ) );
+        mNumSelected = 0;
+        mNumVisited = 0;
+        mNumFrustumCulled = 0;
+        mNumHorizonCulled = 0;
+
+        extractPlanes ( viewProj );
+
+        // Eye in the space where the ellipsoid is a unit sphere
+        mScaledEyeX = eyeX / mRadiusA;
+        mScaledEyeY = eyeY / mRadiusA;
+        mScaledEyeZ = eyeZ / mRadiusB;
+        mHorizonDist2 = mScaledEyeX * mScaledEyeX + mScaledEyeY * mScaledEyeY + mScaledEyeZ * mScaledEyeZ - 1.0;
+
+        visit ( 0, 0, 0 );
+        visit ( 0, 1, 0 );
+        return mNumSelected;
+    }
+
+    private void visit ( int level, int x, int y )
+    {
+        mNumVisited++;
+        computeBoundingSphere ( level, x, y, mSphere );
+
+        double cx = mSphere[0] - mEyeX;
+        double cy = mSphere[1] - mEyeY;
+        double cz = mSphere[2] - mEyeZ;
+        double radius = mSphere[3];
+
+        for ( int p = 0; p < 6; p++ )
+        {
+            int i = p * 4;
+
+            if ( mPlanes[i] * cx + mPlanes[i + 1] * cy + mPlanes[i + 2] * cz + mPlanes[i + 3] < -radius )
+            {
+                mNumFrustumCulled++;
+                return;
+            }
+        }
+
+        if ( isBehindHorizon() )
+        {
+            mNumHorizonCulled++;
+            return;
+        }
+
+        // Ground size of a texel along the equator, an upper bound elsewhere
+        double texelSize = mRadiusA * Math.toRadians ( 180.0 / ( 1 << level ) ) / mTileSize;
+        double distance = Math.max ( Math.sqrt ( cx * cx + cy * cy + cz * cz ) - radius, 1e-6 * mRadiusA );
+        double error = texelSize / distance * mPixelsPerRadian;
+
+        if ( error > mMaxScreenSpaceError && level < mMaxLevel )
+        {
+            for ( int j = 0; j < 2; j++ )
+            {
+                for ( int i = 0; i < 2; i++ )
+                {
+                    visit ( level + 1, x * 2 + i, y * 2 + j );
+                }
+            }
+
+            return;
+        }
+
+        if ( ( mNumSelected + 1 ) * 3 > mSelected.length )
+        {
+            int[] selected = new int[mSelected.length * 2];
+            System.arraycopy ( mSelected, 0, selected, 0, mSelected.length );
+            mSelected = selected;
+        }
+
+        mSelected[mNumSelected * 3] = level;
+        mSelected[mNumSelected * 3 + 1] = x;
+        mSelected[mNumSelected * 3 + 2] = y;
+        mNumSelected++;
+    }
+
+    // Test the tile's occludee point, computed by computeBoundingSphere(),
+    // against the horizon of the unit sphere seen from the scaled eye
+    private boolean isBehindHorizon()
+    {
+        if ( mHorizonDist2 <= 0.0 || Double.isInfinite ( mOccludee[0] ) )
+        {
+            return false;
+        }
+
+        double tx = mOccludee[0] - mScaledEyeX;
+        double ty = mOccludee[1] - mScaledEyeY;
+        double tz = mOccludee[2] - mScaledEyeZ;
+        double tDotEye = -( tx * mScaledEyeX + ty * mScaledEyeY + tz * mScaledEyeZ );
+
+        // Beyond the plane of the horizon circle and inside the tangent cone
+        return tDotEye > mHorizonDist2
+               && tDotEye * tDotEye / ( tx * tx + ty * ty + tz * tz ) > mHorizonDist2;
+    }
+
+    //
+    ///
+    /// \brief Bounding sphere of a tile's surface.  Also computes the tile's
+    ///    occludee point for the horizon test.
+    /// \param sphere Receives center x, y, z and radius
+    //
+    public void computeBoundingSphere ( int level, int x, int y, double[] sphere )
+    {
+        double span = 180.0 / ( 1 << level );
+        double west = -180.0 + x * span;
+        double north = 90.0 - y * span;
+        double sx = 0.0, sy = 0.0, sz = 0.0;
+        int n = SPHERE_SAMPLES;
+
+        for ( int j = 0; j <= n; j++ )
+        {
+            for ( int i = 0; i <= n; i++ )
+            {
+                int k = ( j * ( n + 1 ) + i ) * 3;
+                mGeodesy.geodeticToEcef ( west + span * i / n, north - span * j / n, 0.0, mSamples, k );
+                sx += mSamples[k];
+                sy += mSamples[k + 1];
+                sz += mSamples[k + 2];
+            }
+        }
+
+        int count = ( n + 1 ) * ( n + 1 );
+        sx /= count;
+        sy /= count;
+        sz /= count;
+
+        double radius2 = 0.0;
+
+        for ( int k = 0; k < count * 3; k += 3 )
+        {
+            double dx = mSamples[k] - sx;
+            double dy = mSamples[k + 1] - sy;
+            double dz = mSamples[k + 2] - sz;
+            radius2 = Math.max ( radius2, dx * dx + dy * dy + dz * dz );
+        }
+
+        // The surface between samples bulges out of their convex hull by at
+        // most the sagitta of the sample spacing
+        double spacing = Math.toRadians ( span / n );
+        double sagitta = mRadiusA * ( mRadiusA / mRadiusB ) * ( 1.0 - Math.cos ( spacing * 0.5 ) );
+
+        sphere[0] = sx;
+        sphere[1] = sy;
+        sphere[2] = sz;
+        sphere[3] = Math.sqrt ( radius2 ) + sagitta;
+
+        computeOccludee ( count, spacing * mRadiusA / mRadiusB );
+    }
+
+    // A point on the unit sphere at angle alpha from direction d is below the
+    // horizon of any eye that cannot see d * 1 / cos(alpha).  Every surface
+    // point lies within half a sample diagonal of a sample, so padding the
+    // angle of the samples by that much bounds the whole tile.
+    private void computeOccludee ( int count, double spacing )
+    {
+        double cx = 0.0, cy = 0.0, cz = 0.0;
+
+        for ( int k = 0; k < count * 3; k += 3 )
+        {
+            cx += mSamples[k] / mRadiusA;
+            cy += mSamples[k + 1] / mRadiusA;
+            cz += mSamples[k + 2] / mRadiusB;
+        }
+
+        double length = Math.sqrt ( cx * cx + cy * cy + cz * cz );
+        double pad = spacing * Math.sqrt ( 0.5 );
+        double magnitude = 1.0;
+
+        if ( length < 1e-9 )
+        {
+            mOccludee[0] = Double.POSITIVE_INFINITY;
+            return;
+        }
+
+        cx /= length;
+        cy /= length;
+        cz /= length;
+
+        for ( int k = 0; k < count * 3; k += 3 )
+        {
+            double px = mSamples[k] / mRadiusA;
+            double py = mSamples[k + 1] / mRadiusA;
+            double pz = mSamples[k + 2] / mRadiusB;
+            double cosAlpha = ( px * cx + py * cy + pz * cz ) / Math.sqrt ( px * px + py * py + pz * pz );
+            double alpha = Math.acos ( Math.max ( -1.0, Math.min ( 1.0, cosAlpha ) ) ) + pad;
+
+            if ( alpha >= 0.5 * Math.PI - 1e-6 )
+            {
+                mOccludee[0] = Double.POSITIVE_INFINITY;
+                return;
+            }
+
+            magnitude = Math.max ( magnitude, 1.0 / Math.cos ( alpha ) );
+        }
+
+        mOccludee[0] = cx * magnitude;
+        mOccludee[1] = cy * magnitude;
+        mOccludee[2] = cz * magnitude;
+    }
+
+    //
+    ///
+    /// \brief Geodetic extent of a tile in degrees
+    /// \param extent Receives west, south, east and north
+    //
+    public static void getTileExtent ( int level, int x, int y, double[] extent )
+    {
+        double span = 180.0 / ( 1 << level );
+
+        extent[0] = -180.0 + x * span;
+        extent[1] = 90.0 - ( y + 1 ) * span;
+        extent[2] = extent[0] + span;
+        extent[3] = 90.0 - y * span;
+    }
+
+    // Gribb / Hartmann plane extraction, planes point into the frustum
+    private void extractPlanes ( float[] m )
+    {
+        for ( int p = 0; p < 6; p++ )
+        {
+            int row = p / 2;
+            double sign = ( p % 2 == 0 ) ? 1.0 : -1.0;
+            double a = m[3] + sign * m[row];
+            double b = m[7] + sign * m[4 + row];
+            double c = m[11] + sign * m[8 + row];
+            double d = m[15] + sign * m[12 + row];
+            double length = Math.sqrt ( a * a + b * b + c * c );
+
+            mPlanes[p * 4] = a / length;
+            mPlanes[p * 4 + 1] = b / length;
+            mPlanes[p * 4 + 2] = c / length;
+            mPlanes[p * 4 + 3] = d / length;
+        }
+    }
+
+    //
+    ///
+    /// \brief Set the largest allowed size of a texel on screen, in pixels
+    //
+    public void setMaxScreenSpaceError ( float pixels )
+    {
+        mMaxScreenSpaceError = pixels;
+    }
+
+    public int getNumSelected() { return mNumSelected; }
+    public int getSelectedLevel ( int i ) { return mSelected[i * 3]; }
+    public int getSelectedX ( int i ) { return mSelected[i * 3 + 1]; }
+    public int getSelectedY ( int i ) { return mSelected[i * 3 + 2]; }
+
+    // Statistics of the last select()
+    public int getNumVisited() { return mNumVisited; }
+    public int getNumFrustumCulled() { return mNumFrustumCulled; }
+    public int getNumHorizonCulled() { return mNumHorizonCulled; }
+
+    public double getRadiusA() { return mRadiusA; }
+    public double getRadiusB() { return mRadiusB; }
+    public int getTileSize() { return mTileSize; }
+    public int getMaxLevel() { return mMaxLevel; }
+
+    // Member variables
+    private final double mRadiusA;
+    private final double mRadiusB;
+    private final ESGeodesy mGeodesy;
+    private final int mTileSize;
+    private final int mMaxLevel;
+    private float mMaxScreenSpaceError = 1.5f;
+
+    private int[] mSelected;
+    private int mNumSelected;
+    private int mNumVisited;
+    private int mNumFrustumCulled;
+    private int mNumHorizonCulled;
+
+    // Per-frame state
+    private double mEyeX;
+    private double mEyeY;
+    private double mEyeZ;
+    private double mScaledEyeX;
+    private double mScaledEyeY;
+    private double mScaledEyeZ;
+    private double mHorizonDist2;
+    private double mPixelsPerRadian;
+    private final double[] mPlanes = new double[24];
+    private final double[] mSphere = new double[4];
+    private final double[] mOccludee = new double[3];
+    private final double[] mSamples = new double[( SPHERE_SAMPLES + 1 ) * ( SPHERE_SAMPLES + 1 ) * 3];
+
+    // Some constants
+    private static final int SPHERE_SAMPLES = 4;
+}
@@ -0,0 +1,443 @@
+package edu.gatech.gtri.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.Math;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief Min/max mip pyramid (quadtree) over the cells of a height grid.
+///
+/// Level 0 holds, for every grid cell, the lowest and highest of its four
+/// corner samples.  Each following level halves the resolution (rounding
+/// up) and stores the range of its up to four children, until a single node
+/// covers the whole grid.  Heights are stored unscaled.
+///
+/// Level 0 is not stored: it is read straight from the referenced height
+/// array, so the pyramid takes two thirds of the memory of the grid.
+/// Levels are built in parallel on a ForkJoinPool, edited regions can be
+/// updated in place and the stored levels can be written to a stream and
+/// read back instead of being rebuilt.
+//
+public class ESHeightPyramid
+{
+    //
+    ///
+    /// \brief Build the pyramid in parallel on the common ForkJoinPool
+    /// \param heights Grid heights, row-major, width x height samples.  The
+    ///    array is referenced, not copied.
+    /// \param width Number of samples along x
+    /// \param height Number of samples along y
+    //
+    public ESHeightPyramid ( float[] heights, int width, int height )
+    {
+        this ( heights, width, height, ForkJoinPool.commonPool() );
+    }
+
+    //
+    ///
+    /// \brief Build the pyramid
+    /// \param pool Pool to build on, or null to build on the calling thread
+    //
+    public ESHeightPyramid ( float[] heights, int width, int height, ForkJoinPool pool )
+    {
+        this ( heights, width, height, pool, true );
+    }
+
+    private ESHeightPyramid ( float[] heights, int width, int height, ForkJoinPool pool, boolean build )
+    {
+        if ( width < 2 || height < 2 || heights.length < width * height )
+        {
+            throw new IllegalArgumentException ( "Invalid height grid dimensions" );
+        }
+
+        int levels = 1;
+        int w = width - 1;
+        int h = height - 1;
+
+        while ( w > 1 || h > 1 )
+        {
+            w = ( w + 1 ) / 2;
+            h = ( h + 1 ) / 2;
+            levels++;
+        }
+
+        mHeights = heights;
+        mWidth = width;
+        mHeight = height;
+        mLevelWidth = new int[levels];
+        mLevelHeight = new int[levels];
+        mMin = new float[levels][];
+        mMax = new float[levels][];
+
+        w = width - 1;
+        h = height - 1;
+
+        for ( int level = 0; level < levels; level++ )
+        {
+            mLevelWidth[level] = w;
+            mLevelHeight[level] = h;
+
+            if ( level > 0 )
+            {
+                mMin[level] = new float[w * h];
+                mMax[level] = new float[w * h];
+            }
+
+            w = ( w + 1 ) / 2;
+            h = ( h + 1 ) / 2;
+        }
+
+        mPool = pool;
+
+        if ( build )
+        {
+            update ( 0, 0, width - 1, height - 1 );
+        }
+    }
+
+    //
+    ///
+    /// \brief Update the pyramid after the heights of a region were edited
+    ///
+    /// Only the nodes above the region are recomputed, on the pool the
+    /// pyramid was built with.
+    /// \param col0, row0 First edited sample
+    /// \param col1, row1 Last edited sample (inclusive)
+    //
+    public void update ( int col0, int row0, int col1, int row1 )
+    {
+        // A sample is a corner of up to four cells
+        int c0 = Math.max ( 0, col0 - 1 );
+        int r0 = Math.max ( 0, row0 - 1 );
+        int c1 = Math.min ( mLevelWidth[0] - 1, col1 );
+        int r1 = Math.min ( mLevelHeight[0] - 1, row1 );
+
+        if ( c0 > c1 || r0 > r1 )
+        {
+            return;
+        }
+
+        // Each level depends on the one below, so levels are built in turn
+        for ( int level = 1; level < mLevelWidth.length; level++ )
+        {
+            BuildTask task = new BuildTask ( level, c0 >> level, r0 >> level,
+                                             ( c1 >> level ) + 1, ( r1 >> level ) + 1 );
+
+            if ( mPool == null )
+            {
+                task.compute();
+            }
+            else
+            {
+                mPool.invoke ( task );
+            }
+        }
+    }
+
+    // Builds the nodes [col0, col1) x [row0, row1) of a level, splitting
+    // along the longer side until a task holds at most GRAIN nodes
+    private final class BuildTask extends RecursiveAction
+    {
+        BuildTask ( int level, int col0, int row0, int col1, int row1 )
+        {
+            mLevel = level;
+            mCol0 = col0;
+            mRow0 = row0;
+            mCol1 = col1;
+            mRow1 = row1;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int cols = mCol1 - mCol0;
+            int rows = mRow1 - mRow0;
+
+            if ( mPool == null || ( long ) cols * rows <= GRAIN )
+            {
+                buildNodes ( mLevel, mCol0, mRow0, mCol1, mRow1 );
+            }
+            else if ( rows >= cols )
+            {
+                int mid = mRow0 + rows / 2;
+                invokeAll ( new BuildTask ( mLevel, mCol0, mRow0, mCol1, mid ),
+                            new BuildTask ( mLevel, mCol0, mid, mCol1, mRow1 ) );
+            }
+            else
+            {
+                int mid = mCol0 + cols / 2;
+                invokeAll ( new BuildTask ( mLevel, mCol0, mRow0, mid, mRow1 ),
+                            new BuildTask ( mLevel, mid, mRow0, mCol1, mRow1 ) );
+            }
+        }
+
+        private final int mLevel;
+        private final int mCol0;
+        private final int mRow0;
+        private final int mCol1;
+        private final int mRow1;
+    }
+
+    private void buildNodes ( int level, int col0, int row0, int col1, int row1 )
+    {
+        if ( level == 1 )
+        {
+            buildFromSamples ( col0, row0, col1, row1 );
+            return;
+        }
+
+        int w = mLevelWidth[level];
+        int childW = mLevelWidth[level - 1];
+        int childH = mLevelHeight[level - 1];
+        float[] childMin = mMin[level - 1];
+        float[] childMax = mMax[level - 1];
+        float[] min = mMin[level];
+        float[] max = mMax[level];
+
+        for ( int row = row0; row < row1; row++ )
+        {
+            int r0 = row * 2;
+            int r1 = Math.min ( r0 + 1, childH - 1 );
+
+            for ( int col = col0; col < col1; col++ )
+            {
+                int c0 = col * 2;
+                int c1 = Math.min ( c0 + 1, childW - 1 );
+
+                min[row * w + col] = Math.min ( Math.min ( childMin[r0 * childW + c0], childMin[r0 * childW + c1] ),
+                                                Math.min ( childMin[r1 * childW + c0], childMin[r1 * childW + c1] ) );
+                max[row * w + col] = Math.max ( Math.max ( childMax[r0 * childW + c0], childMax[r0 * childW + c1] ),
+                                                Math.max ( childMax[r1 * childW + c0], childMax[r1 * childW + c1] ) );
+            }
+        }
+    }
+
+    // Level 1 nodes cover up to 2 x 2 cells, i.e. 3 x 3 samples
+    private void buildFromSamples ( int col0, int row0, int col1, int row1 )
+    {
+        int w = mLevelWidth[1];
+        float[] min = mMin[1];
+        float[] max = mMax[1];
+
+        for ( int row = row0; row < row1; row++ )
+        {
+            int r0 = row * 2;
+            int r1 = Math.min ( r0 + 2, mHeight - 1 );
+
+            for ( int col = col0; col < col1; col++ )
+            {
+                int c0 = col * 2;
+                int c1 = Math.min ( c0 + 2, mWidth - 1 );
+                float lo = Float.MAX_VALUE;
+                float hi = -Float.MAX_VALUE;
+
+                for ( int r = r0; r <= r1; r++ )
+                {
+                    int i = r * mWidth;
+
+                    for ( int c = c0; c <= c1; c++ )
+                    {
+                        float h = mHeights[i + c];
+                        lo = Math.min ( lo, h );
+                        hi = Math.max ( hi, h );
+                    }
+                }
+
+                min[row * w + col] = lo;
+                max[row * w + col] = hi;
+            }
+        }
+    }
+
+    //
+    ///
+    /// \brief Height range of a rectangle of cells, e.g. the bounding box
+    ///    of a terrain patch
+    ///
+    /// The pyramid is walked top-down so only O(perimeter) nodes are read.
+    /// \param col0, row0 First cell
+    /// \param col1, row1 Last cell (inclusive)
+    /// \param range Receives the lowest and highest height
+    //
+    public void getRange ( int col0, int row0, int col1, int row1, float[] range )
+    {
+        range[0] = Float.MAX_VALUE;
+        range[1] = -Float.MAX_VALUE;
+        rangeNode ( mLevelWidth.length - 1, 0, 0,
+                    Math.max ( 0, col0 ), Math.max ( 0, row0 ),
+                    Math.min ( mLevelWidth[0] - 1, col1 ), Math.min ( mLevelHeight[0] - 1, row1 ), range );
+    }
+
+    private void rangeNode ( int level, int col, int row, int col0, int row0, int col1, int row1, float[] range )
+    {
+        int c0 = col << level;
+        int r0 = row << level;
+        int c1 = ( ( col + 1 ) << level ) - 1;
+        int r1 = ( ( row + 1 ) << level ) - 1;
+
+        if ( c0 > col1 || r0 > row1 || c1 < col0 || r1 < row0 )
+        {
+            return;
+        }
+
+        if ( level == 0 || ( c0 >= col0 && r0 >= row0 && c1 <= col1 && r1 <= row1 ) )
+        {
+            range[0] = Math.min ( range[0], getMin ( level, col, row ) );
+            range[1] = Math.max ( range[1], getMax ( level, col, row ) );
+            return;
+        }
+
+        int childW = mLevelWidth[level - 1];
+        int childH = mLevelHeight[level - 1];
+
+        for ( int j = row * 2; j < Math.min ( row * 2 + 2, childH ); j++ )
+        {
+            for ( int i = col * 2; i < Math.min ( col * 2 + 2, childW ); i++ )
+            {
+                rangeNode ( level - 1, i, j, col0, row0, col1, row1, range );
+            }
+        }
+    }
+
+    //
+    ///
+    /// \brief Write the stored levels to a stream, e.g. a cache file next to
+    ///    the heightmap
+    //
+    public void write ( OutputStream os ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream ( os );
+        ByteBuffer chunk = ByteBuffer.allocate ( IO_CHUNK * 4 );
+        FloatBuffer floats = chunk.asFloatBuffer();
+
+        out.writeInt ( MAGIC );
+        out.writeInt ( VERSION );
+        out.writeInt ( mWidth );
+        out.writeInt ( mHeight );
+
+        for ( int level = 1; level < mLevelWidth.length; level++ )
+        {
+            for ( float[] values : new float[][] { mMin[level], mMax[level] } )
+            {
+                for ( int i = 0; i < values.length; i += IO_CHUNK )
+                {
+                    int count = Math.min ( IO_CHUNK, values.length - i );
+
+                    floats.clear();
+                    floats.put ( values, i, count );
+                    out.write ( chunk.array(), 0, count * 4 );
+                }
+            }
+        }
+
+        out.flush();
+    }
+
+    //
+    ///
+    /// \brief Read a pyramid written by write()
+    /// \param is Stream positioned at the start of the pyramid
+    /// \param heights The height grid the pyramid was built from
+    /// \param width Number of samples along x
+    /// \param height Number of samples along y
+    /// \throws IOException if the stream is not a pyramid of the same grid size
+    //
+    public static ESHeightPyramid read ( InputStream is, float[] heights, int width, int height ) throws IOException
+    {
+        DataInputStream in = new DataInputStream ( is );
+
+        if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+        {
+            throw new IOException ( "Not a height pyramid" );
+        }
+
+        if ( in.readInt() != width || in.readInt() != height )
+        {
+            throw new IOException ( "Height pyramid does not match the height grid" );
+        }
+
+        ESHeightPyramid pyramid = new ESHeightPyramid ( heights, width, height, ForkJoinPool.commonPool(), false );
+        ByteBuffer chunk = ByteBuffer.allocate ( IO_CHUNK * 4 );
+        FloatBuffer floats = chunk.asFloatBuffer();
+
+        for ( int level = 1; level < pyramid.mLevelWidth.length; level++ )
+        {
+            for ( float[] values : new float[][] { pyramid.mMin[level], pyramid.mMax[level] } )
+            {
+                for ( int i = 0; i < values.length; i += IO_CHUNK )
+                {
+                    int count = Math.min ( IO_CHUNK, values.length - i );
+
+                    in.readFully ( chunk.array(), 0, count * 4 );
+                    floats.clear();
+                    floats.get ( values, i, count );
+                }
+            }
+        }
+
+        return pyramid;
+    }
+
+    public int getGridWidth() { return mWidth; }
+    public int getGridHeight() { return mHeight; }
+    public int getNumLevels() { return mLevelWidth.length; }
+    public int getLevelWidth ( int level ) { return mLevelWidth[level]; }
+    public int getLevelHeight ( int level ) { return mLevelHeight[level]; }
+
+    public float getMin ( int level, int col, int row )
+    {
+        if ( level == 0 )
+        {
+            int i = row * mWidth + col;
+            return Math.min ( Math.min ( mHeights[i], mHeights[i + 1] ),
+                              Math.min ( mHeights[i + mWidth], mHeights[i + mWidth + 1] ) );
+        }
+
+        return mMin[level][row * mLevelWidth[level] + col];
+    }
+
+    public float getMax ( int level, int col, int row )
+    {
+        if ( level == 0 )
+        {
+            int i = row * mWidth + col;
+            return Math.max ( Math.max ( mHeights[i], mHeights[i + 1] ),
+                              Math.max ( mHeights[i + mWidth], mHeights[i + mWidth + 1] ) );
+        }
+
+        return mMax[level][row * mLevelWidth[level] + col];
+    }
+
+    //
+    ///
+    /// \brief Upper bound on the vertical error of drawing a node with a
+    ///    single flat or planar patch spanning its range, for LOD selection
+    //
+    public float getError ( int level, int col, int row )
+    {
+        return getMax ( level, col, row ) - getMin ( level, col, row );
+    }
+
+    // Member variables
+    private final float[] mHeights;
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mLevelWidth;
+    private final int[] mLevelHeight;
+    private final float[][] mMin;
+    private final float[][] mMax;
+    private final ForkJoinPool mPool;
+
+    // Some constants
+    private static final int GRAIN = 16384;
+    private static final int IO_CHUNK = 16384;
+    private static final int MAGIC = 0x45534850; // "ESHP"
+    private static final int VERSION = 1;
+}
@@ -0,0 +1,386 @@
+package edu.gatech.gtri.common;
+
+import java.lang.Math;
+
+//
+/// \brief CPU height, normal and ray queries over a height grid.
+///
+/// The grid uses the same layout as ESHorizonCuller: sample (col, row) sits
+/// at world (col * sizeX / (width - 1), row * sizeY / (height - 1)) with a
+/// world height of heights[row * width + col] * heightScale.  Queries outside
+/// the grid are clamped to its border.
+///
+/// The query never modifies its state, so any number of threads may read
+/// from it concurrently without locking.  None of the query methods
+/// allocate.
+//
+public class ESHeightQuery
+{
+    //
+    ///
+    /// \brief Create a query service and build its min/max pyramid
+    /// \param heights Grid heights, row-major, width x height samples.  The
+    ///    array is referenced, not copied.
+    /// \param width Number of samples along x
+    /// \param height Number of samples along y
+    /// \param sizeX World extent of the grid along x
+    /// \param sizeY World extent of the grid along y
+    /// \param heightScale Scale applied to the grid heights to get world z
+    //
+    public ESHeightQuery ( float[] heights, int width, int height,
+                           float sizeX, float sizeY, float heightScale )
+    {
+        this ( heights, width, height, sizeX, sizeY, heightScale,
+               new ESHeightPyramid ( heights, width, height ) );
+    }
+
+    //
+    ///
+    /// \brief Create a query service over an existing min/max pyramid
+    //
+    public ESHeightQuery ( float[] heights, int width, int height,
+                           float sizeX, float sizeY, float heightScale, ESHeightPyramid pyramid )
+    {
+        if ( pyramid.getGridWidth() != width || pyramid.getGridHeight() != height )
+        {
+            throw new IllegalArgumentException ( "Pyramid does not match the height grid" );
+        }
+
+        mHeights = heights;
+        mWidth = width;
+        mHeight = height;
+        mStepX = sizeX / ( float ) ( width - 1 );
+        mStepY = sizeY / ( float ) ( height - 1 );
+        mInvStepX = 1.0f / mStepX;
+        mInvStepY = 1.0f / mStepY;
+        mHeightScale = heightScale;
+        mPyramid = pyramid;
+    }
+
+    //
+    ///
+    /// \brief Bilinearly interpolated world height at (x, y)
+    //
+    public float getHeight ( float x, float y )
+    {
+        float gx = clamp ( x * mInvStepX, mWidth - 1 );
+        float gy = clamp ( y * mInvStepY, mHeight - 1 );
+        int col = Math.min ( ( int ) gx, mWidth - 2 );
+        int row = Math.min ( ( int ) gy, mHeight - 2 );
+        float fx = gx - col;
+        float fy = gy - row;
+        int i = row * mWidth + col;
+
+        float h0 = mHeights[i] + ( mHeights[i + 1] - mHeights[i] ) * fx;
+        float h1 = mHeights[i + mWidth] + ( mHeights[i + mWidth + 1] - mHeights[i + mWidth] ) * fx;
+
+        return ( h0 + ( h1 - h0 ) * fy ) * mHeightScale;
+    }
+
+    //
+    ///
+    /// \brief Bicubic (Catmull-Rom) interpolated world height at (x, y)
+    //
+    public float getHeightBicubic ( float x, float y )
+    {
+        float gx = clamp ( x * mInvStepX, mWidth - 1 );
+        float gy = clamp ( y * mInvStepY, mHeight - 1 );
+        int col = Math.min ( ( int ) gx, mWidth - 2 );
+        int row = Math.min ( ( int ) gy, mHeight - 2 );
+        float fx = gx - col;
+        float fy = gy - row;
+
+        float r0 = cubicRow ( row - 1, col, fx );
+        float r1 = cubicRow ( row, col, fx );
+        float r2 = cubicRow ( row + 1, col, fx );
+        float r3 = cubicRow ( row + 2, col, fx );
+
+        return catmullRom ( r0, r1, r2, r3, fy ) * mHeightScale;
+    }
+
+    //
+    ///
+    /// \brief Unit surface normal of the bilinear surface at (x, y)
+    /// \param normal Receives x, y, z at normal[offset]
+    //
+    public void getNormal ( float x, float y, float[] normal, int offset )
+    {
+        float gx = clamp ( x * mInvStepX, mWidth - 1 );
+        float gy = clamp ( y * mInvStepY, mHeight - 1 );
+        int col = Math.min ( ( int ) gx, mWidth - 2 );
+        int row = Math.min ( ( int ) gy, mHeight - 2 );
+        float fx = gx - col;
+        float fy = gy - row;
+        int i = row * mWidth + col;
+
+        float h00 = mHeights[i];
+        float h10 = mHeights[i + 1];
+        float h01 = mHeights[i + mWidth];
+        float h11 = mHeights[i + mWidth + 1];
+
+        // Partial derivatives of the bilinear patch in world units
+        float dzdx = ( ( h10 - h00 ) * ( 1.0f - fy ) + ( h11 - h01 ) * fy ) * mHeightScale * mInvStepX;
+        float dzdy = ( ( h01 - h00 ) * ( 1.0f - fx ) + ( h11 - h10 ) * fx ) * mHeightScale * mInvStepY;
+        float invLength = 1.0f / ( float ) Math.sqrt ( dzdx * dzdx + dzdy * dzdy + 1.0f );
+
+        normal[offset + 0] = -dzdx * invLength;
+        normal[offset + 1] = -dzdy * invLength;
+        normal[offset + 2] = invLength;
+    }
+
+    //
+    ///
+    /// \brief Batched bilinear heights
+    /// \param xy Interleaved x, y positions starting at xyOffset
+    /// \param heights Receives count heights starting at offset
+    //
+    public void getHeights ( float[] xy, int xyOffset, float[] heights, int offset, int count )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            heights[offset + i] = getHeight ( xy[xyOffset + i * 2], xy[xyOffset + i * 2 + 1] );
+        }
+    }
+
+    //
+    ///
+    /// \brief Batched bicubic heights, same layout as getHeights()
+    //
+    public void getHeightsBicubic ( float[] xy, int xyOffset, float[] heights, int offset, int count )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            heights[offset + i] = getHeightBicubic ( xy[xyOffset + i * 2], xy[xyOffset + i * 2 + 1] );
+        }
+    }
+
+    //
+    ///
+    /// \brief Batched normals
+    /// \param normals Receives count x, y, z triples starting at offset
+    //
+    public void getNormals ( float[] xy, int xyOffset, float[] normals, int offset, int count )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            getNormal ( xy[xyOffset + i * 2], xy[xyOffset + i * 2 + 1], normals, offset + i * 3 );
+        }
+    }
+
+    //
+    ///
+    /// \brief Intersect a ray with the triangulated terrain surface (the same
+    ///    two triangles per cell as ESShapes.genSquareGrid)
+    ///
+    /// The min/max pyramid is walked top-down, only descending into nodes
+    /// whose bounding box the ray enters before the closest hit found so far.
+    /// \param ox, oy, oz Ray origin in world space
+    /// \param dx, dy, dz Ray direction, need not be normalized
+    /// \param hit Receives the hit position and ray parameter (x, y, z, t)
+    /// \return true if the ray hits the terrain
+    //
+    public boolean intersectRay ( float ox, float oy, float oz, float dx, float dy, float dz, float[] hit )
+    {
+        hit[3] = Float.POSITIVE_INFINITY;
+
+        int top = mPyramid.getNumLevels() - 1;
+        traverse ( top, 0, 0, ox, oy, oz, dx, dy, dz, hit );
+
+        if ( hit[3] == Float.POSITIVE_INFINITY )
+        {
+            return false;
+        }
+
+        hit[0] = ox + dx * hit[3];
+        hit[1] = oy + dy * hit[3];
+        hit[2] = oz + dz * hit[3];
+        return true;
+    }
+
+    private void traverse ( int level, int col, int row, float ox, float oy, float oz,
+                            float dx, float dy, float dz, float[] hit )
+    {
+        int cellsX = mWidth - 1;
+        int cellsY = mHeight - 1;
+        int c0 = col << level;
+        int r0 = row << level;
+        int c1 = Math.min ( ( col + 1 ) << level, cellsX );
+        int r1 = Math.min ( ( row + 1 ) << level, cellsY );
+        float z0 = mPyramid.getMin ( level, col, row ) * mHeightScale;
+        float z1 = mPyramid.getMax ( level, col, row ) * mHeightScale;
+
+        // Slab test against the node's bounding box
+        float tNear = 0.0f;
+        float tFar = hit[3];
+
+        tNear = Math.max ( tNear, slabNear ( ox, dx, c0 * mStepX, c1 * mStepX ) );
+        tFar = Math.min ( tFar, slabFar ( ox, dx, c0 * mStepX, c1 * mStepX ) );
+        tNear = Math.max ( tNear, slabNear ( oy, dy, r0 * mStepY, r1 * mStepY ) );
+        tFar = Math.min ( tFar, slabFar ( oy, dy, r0 * mStepY, r1 * mStepY ) );
+        tNear = Math.max ( tNear, slabNear ( oz, dz, Math.min ( z0, z1 ), Math.max ( z0, z1 ) ) );
+        tFar = Math.min ( tFar, slabFar ( oz, dz, Math.min ( z0, z1 ), Math.max ( z0, z1 ) ) );
+
+        if ( !( tNear <= tFar ) )
+        {
+            return;
+        }
+
+        if ( level == 0 )
+        {
+            intersectCell ( col, row, ox, oy, oz, dx, dy, dz, hit );
+            return;
+        }
+
+        // Visit the children nearest to the ray origin first so that later
+        // ones are usually rejected by the closest hit
+        int childLevel = level - 1;
+        int childW = mPyramid.getLevelWidth ( childLevel );
+        int childH = mPyramid.getLevelHeight ( childLevel );
+        int firstX = dx < 0.0f ? 1 : 0;
+        int firstY = dy < 0.0f ? 1 : 0;
+
+        for ( int j = 0; j < 2; j++ )
+        {
+            int childRow = row * 2 + ( j ^ firstY );
+
+            if ( childRow >= childH )
+            {
+                continue;
+            }
+
+            for ( int i = 0; i < 2; i++ )
+            {
+                int childCol = col * 2 + ( i ^ firstX );
+
+                if ( childCol < childW )
+                {
+                    traverse ( childLevel, childCol, childRow, ox, oy, oz, dx, dy, dz, hit );
+                }
+            }
+        }
+    }
+
+    private void intersectCell ( int col, int row, float ox, float oy, float oz,
+                                 float dx, float dy, float dz, float[] hit )
+    {
+        int i = row * mWidth + col;
+        float x0 = col * mStepX;
+        float x1 = ( col + 1 ) * mStepX;
+        float y0 = row * mStepY;
+        float y1 = ( row + 1 ) * mStepY;
+        float h00 = mHeights[i] * mHeightScale;
+        float h10 = mHeights[i + 1] * mHeightScale;
+        float h01 = mHeights[i + mWidth] * mHeightScale;
+        float h11 = mHeights[i + mWidth + 1] * mHeightScale;
+
+        // Both triangles share the (x0, y0) - (x1, y1) diagonal
+        intersectTriangle ( x0, y0, h00, x1, y1, h11, x1, y0, h10, ox, oy, oz, dx, dy, dz, hit );
+        intersectTriangle ( x0, y0, h00, x1, y1, h11, x0, y1, h01, ox, oy, oz, dx, dy, dz, hit );
+    }
+
+    // Moller-Trumbore, keeps the smallest non-negative t in hit[3]
+    private static void intersectTriangle ( float ax, float ay, float az, float bx, float by, float bz,
+                                            float cx, float cy, float cz, float ox, float oy, float oz,
+                                            float dx, float dy, float dz, float[] hit )
+    {
+        float e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        float e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        float px = dy * e2z - dz * e2y;
+        float py = dz * e2x - dx * e2z;
+        float pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+
+        if ( Math.abs ( det ) < 1.0e-12f )
+        {
+            return;
+        }
+
+        float invDet = 1.0f / det;
+        float tx = ox - ax, ty = oy - ay, tz = oz - az;
+        float u = ( tx * px + ty * py + tz * pz ) * invDet;
+
+        if ( u < -TRIANGLE_EPSILON || u > 1.0f + TRIANGLE_EPSILON )
+        {
+            return;
+        }
+
+        float qx = ty * e1z - tz * e1y;
+        float qy = tz * e1x - tx * e1z;
+        float qz = tx * e1y - ty * e1x;
+        float v = ( dx * qx + dy * qy + dz * qz ) * invDet;
+
+        if ( v < -TRIANGLE_EPSILON || u + v > 1.0f + TRIANGLE_EPSILON )
+        {
+            return;
+        }
+
+        float t = ( e2x * qx + e2y * qy + e2z * qz ) * invDet;
+
+        if ( t >= 0.0f && t < hit[3] )
+        {
+            hit[3] = t;
+        }
+    }
+
+    private static float slabNear ( float o, float d, float min, float max )
+    {
+        if ( d == 0.0f )
+        {
+            return ( o < min || o > max ) ? Float.POSITIVE_INFINITY : Float.NEGATIVE_INFINITY;
+        }
+
+        return d > 0.0f ? ( min - o ) / d : ( max - o ) / d;
+    }
+
+    private static float slabFar ( float o, float d, float min, float max )
+    {
+        if ( d == 0.0f )
+        {
+            return ( o < min || o > max ) ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        }
+
+        return d > 0.0f ? ( max - o ) / d : ( min - o ) / d;
+    }
+
+    private float cubicRow ( int row, int col, float fx )
+    {
+        int base = Math.max ( 0, Math.min ( mHeight - 1, row ) ) * mWidth;
+
+        float p0 = mHeights[base + Math.max ( col - 1, 0 )];
+        float p1 = mHeights[base + col];
+        float p2 = mHeights[base + col + 1];
+        float p3 = mHeights[base + Math.min ( col + 2, mWidth - 1 )];
+
+        return catmullRom ( p0, p1, p2, p3, fx );
+    }
+
+    private static float catmullRom ( float p0, float p1, float p2, float p3, float t )
+    {
+        return p1 + 0.5f * t * ( p2 - p0 + t * ( 2.0f * p0 - 5.0f * p1 + 4.0f * p2 - p3
+                + t * ( 3.0f * ( p1 - p2 ) + p3 - p0 ) ) );
+    }
+
+    private static float clamp ( float v, float max )
+    {
+        return v < 0.0f ? 0.0f : ( v > max ? max : v );
+    }
+
+    public int getWidth() { return mWidth; }
+    public int getHeight() { return mHeight; }
+    public float getHeightScale() { return mHeightScale; }
+    public ESHeightPyramid getPyramid() { return mPyramid; }
+
+    // Member variables
+    private final float[] mHeights;
+    private final int mWidth;
+    private final int mHeight;
+    private final float mStepX;
+    private final float mStepY;
+    private final float mInvStepX;
+    private final float mInvStepY;
+    private final float mHeightScale;
+    private final ESHeightPyramid mPyramid;
+
+    // Some constants
+    private static final float TRIANGLE_EPSILON = 1.0e-6f;
+}
@@ -0,0 +1,297 @@
+package edu.gatech.gtri.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+//
+/// \brief Heightmap decoded from a TGA or PNG file at full precision.
+///
+/// Heights come from the first channel of the image, normalized to [0, 1].
+/// 16-bit gray images keep all 16 bits instead of being truncated to 8 bits
+/// like a Bitmap would.  The first row of the buffers is the top row of the
+/// image, matching GLUtils.texImage2D.
+///
+/// This class has no Android dependencies.
+//
+public class ESHeightmap
+{
+    //
+    ///
+    /// \brief Receives a decoded heightmap in chunks of rows
+    //
+    public interface RowListener
+    {
+        //
+        ///
+        /// \brief Called for each chunk of rows
+        /// \param firstRow Top-down index of the first row in the chunk
+        /// \param numRows Number of rows in the chunk
+        /// \param heights Normalized heights, numRows x width, top row first.
+        ///    The array is reused for the next chunk.
+        //
+        void onRows ( int firstRow, int numRows, float[] heights );
+    }
+
+    //
+    ///
+    /// \brief Decode a heightmap into a direct FloatBuffer (GL_R32F, or
+    ///    GL_R16F with type GL_FLOAT)
+    //
+    public static ESHeightmap loadFloat ( InputStream is ) throws IOException
+    {
+        return load ( is, false );
+    }
+
+    //
+    ///
+    /// \brief Decode a heightmap into a direct ShortBuffer of half floats
+    ///    (GL_R16F with type GL_HALF_FLOAT)
+    //
+    public static ESHeightmap loadHalfFloat ( InputStream is ) throws IOException
+    {
+        return load ( is, true );
+    }
+
+    //
+    ///
+    /// \brief Wrap generated heights, e.g. of ESFractalNoise, in a direct
+    ///    FloatBuffer
+    /// \param heights Heights in [0, 1], width x height, top row first
+    //
+    public static ESHeightmap fromFloats ( float[] heights, int width, int height )
+    {
+        if ( width <= 0 || height <= 0 || heights.length < width * height )
+        {
+            throw new IllegalArgumentException ( "Invalid heightmap size " + width + "x" + height );
+        }
+
+        ESHeightmap heightmap = new ESHeightmap ( width, height );
+
+        heightmap.mFloats = ByteBuffer.allocateDirect ( width * height * 4 ).order ( ByteOrder.nativeOrder() )
+                                      .asFloatBuffer();
+        heightmap.mFloats.put ( heights, 0, width * height ).position ( 0 );
+        return heightmap;
+    }
+
+    //
+    ///
+    /// \brief Stream a heightmap in chunks of rows without holding the whole
+    ///    image in memory
+    /// \param is TGA or PNG stream
+    /// \param rowsPerChunk Maximum number of rows handed to the listener at a time
+    /// \param listener Receives the chunks.  Bottom-up images are delivered
+    ///    last chunk first.
+    /// \return Image width and height
+    //
+    public static int[] decode ( InputStream is, int rowsPerChunk, RowListener listener ) throws IOException
+    {
+        if ( rowsPerChunk <= 0 )
+        {
+            throw new IllegalArgumentException ( "rowsPerChunk must be positive" );
+        }
+
+        ESImageReader reader = new ESImageReader ( is );
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        byte[] row = new byte[reader.getRowBytes()];
+        float[] chunk = new float[Math.min ( rowsPerChunk, height ) * width];
+
+        try
+        {
+            int rowsInChunk = 0;
+            int chunkFirst = 0;
+            int chunkRows = 0;
+            int index;
+
+            while ( ( index = reader.readRow ( row ) ) >= 0 )
+            {
+                if ( rowsInChunk == 0 )
+                {
+                    // Chunks are aligned to the top of the image for both orientations
+                    chunkFirst = ( index / rowsPerChunk ) * rowsPerChunk;
+                    chunkRows = Math.min ( rowsPerChunk, height - chunkFirst );
+                }
+
+                int offset = ( index - chunkFirst ) * width;
+
+                for ( int x = 0; x < width; x++ )
+                {
+                    chunk[offset + x] = reader.getSample ( row, x, 0 ) * NORMALIZE;
+                }
+
+                if ( ++rowsInChunk == chunkRows )
+                {
+                    listener.onRows ( chunkFirst, chunkRows, chunk );
+                    rowsInChunk = 0;
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return new int[] { width, height };
+    }
+
+    private static ESHeightmap load ( InputStream is, boolean halfFloat ) throws IOException
+    {
+        ESImageReader reader = new ESImageReader ( is );
+        ESHeightmap heightmap = new ESHeightmap ( reader.getWidth(), reader.getHeight() );
+        int width = heightmap.mWidth;
+        byte[] row = new byte[reader.getRowBytes()];
+        ByteBuffer data = ByteBuffer.allocateDirect ( width * heightmap.mHeight * ( halfFloat ? 2 : 4 ) )
+                .order ( ByteOrder.nativeOrder() );
+
+        if ( halfFloat )
+        {
+            heightmap.mHalfFloats = data.asShortBuffer();
+        }
+        else
+        {
+            heightmap.mFloats = data.asFloatBuffer();
+        }
+
+        try
+        {
+            int index;
+
+            // Write each row straight into its final place in the buffer
+            while ( ( index = reader.readRow ( row ) ) >= 0 )
+            {
+                int offset = index * width;
+
+                for ( int x = 0; x < width; x++ )
+                {
+                    float h = reader.getSample ( row, x, 0 ) * NORMALIZE;
+
+                    if ( halfFloat )
+                    {
+                        heightmap.mHalfFloats.put ( offset + x, toHalfFloat ( h ) );
+                    }
+                    else
+                    {
+                        heightmap.mFloats.put ( offset + x, h );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return heightmap;
+    }
+
+    //
+    ///
+    /// \brief Convert a float to IEEE 754 half precision bits (round to nearest even)
+    //
+    public static short toHalfFloat ( float value )
+    {
+        int bits = Float.floatToIntBits ( value );
+        int sign = ( bits >>> 16 ) & 0x8000;
+        int exponent = ( bits >>> 23 ) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if ( exponent == 0xFF )
+        {
+            // Inf or NaN
+            return ( short ) ( sign | 0x7C00 | ( mantissa != 0 ? 0x200 : 0 ) );
+        }
+
+        int e = exponent - 127 + 15;
+
+        if ( e >= 0x1F )
+        {
+            return ( short ) ( sign | 0x7C00 );
+        }
+
+        if ( e <= 0 )
+        {
+            if ( e < -10 )
+            {
+                return ( short ) sign;
+            }
+
+            // Subnormal half
+            mantissa |= 0x800000;
+            int shift = 14 - e;
+            int half = mantissa >> shift;
+            int rest = mantissa & ( ( 1 << shift ) - 1 );
+            int halfway = 1 << ( shift - 1 );
+
+            if ( rest > halfway || ( rest == halfway && ( half & 1 ) != 0 ) )
+            {
+                half++;
+            }
+
+            return ( short ) ( sign | half );
+        }
+
+        int half = ( e << 10 ) | ( mantissa >> 13 );
+        int rest = mantissa & 0x1FFF;
+
+        // A carry out of the mantissa correctly bumps the exponent
+        if ( rest > 0x1000 || ( rest == 0x1000 && ( half & 1 ) != 0 ) )
+        {
+            half++;
+        }
+
+        return ( short ) ( sign | half );
+    }
+
+    //
+    ///
+    /// \brief Convert IEEE 754 half precision bits to a float
+    //
+    public static float fromHalfFloat ( short half )
+    {
+        int h = half & 0xFFFF;
+        int sign = ( h & 0x8000 ) << 16;
+        int exponent = ( h >>> 10 ) & 0x1F;
+        int mantissa = h & 0x3FF;
+
+        if ( exponent == 0 )
+        {
+            float value = mantissa * ( 1.0f / ( 1 << 24 ) );
+            return sign != 0 ? -value : value;
+        }
+
+        if ( exponent == 0x1F )
+        {
+            return Float.intBitsToFloat ( sign | 0x7F800000 | ( mantissa << 13 ) );
+        }
+
+        return Float.intBitsToFloat ( sign | ( ( exponent - 15 + 127 ) << 23 ) | ( mantissa << 13 ) );
+    }
+
+    private ESHeightmap ( int width, int height )
+    {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    public int getWidth() { return mWidth; }
+    public int getHeight() { return mHeight; }
+
+    // Heights as floats, null when loaded with loadHalfFloat()
+    public FloatBuffer getFloats() { return mFloats; }
+
+    // Heights as half float bits, null when loaded with loadFloat()
+    public ShortBuffer getHalfFloats() { return mHalfFloats; }
+
+    // Member variables
+    private final int mWidth;
+    private final int mHeight;
+    private FloatBuffer mFloats;
+    private ShortBuffer mHalfFloats;
+
+    // Some constants
+    private static final float NORMALIZE = 1.0f / 65535.0f;
+}
@@ -0,0 +1,234 @@
+package edu.gatech.gtri.common;
+
+import java.util.Arrays;
+
+//
+/// \brief High dynamic range histogram of non-negative values, e.g. times
+///    in nanoseconds.
+///
+/// Values are counted in buckets of constant relative width, as in
+/// HdrHistogram: values below 2^k, k chosen for the significant digits,
+/// have a bucket each, and every following power of two is split into
+/// 2^(k-1) buckets.  Any value up to getHighestTrackableValue() is thus
+/// kept to within 10^-significantDigits of its value, with a fixed table
+/// of counts and without allocating on record().  Values above the range
+/// are counted at its top.
+///
+/// Minimum, maximum and mean are exact; percentiles are the highest value
+/// of their bucket, never above the maximum.
+///
+/// This class has no Android dependencies.
+//
+public class ESHistogram
+{
+    //
+    ///
+    /// \brief Create an empty histogram
+    /// \param highestTrackableValue Largest value kept exactly, at least 2
+    /// \param significantDigits Decimal digits kept, 1 to 5
+    //
+    public ESHistogram ( long highestTrackableValue, int significantDigits )
+    {
+        if ( highestTrackableValue < 2 || significantDigits < 1 || significantDigits > 5 )
+        {
+            throw new IllegalArgumentException ( "Invalid histogram range or precision" );
+        }
+
+        long largestSingleUnit = 2 * ( long ) Math.pow ( 10, significantDigits );
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros ( largestSingleUnit - 1 );
+
+        mHighestTrackableValue = highestTrackableValue;
+        mSignificantDigits = significantDigits;
+        mSubBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        mSubBucketHalfCount = 1 << mSubBucketHalfCountMagnitude;
+        mSubBucketMask = ( 1L << subBucketCountMagnitude ) - 1;
+        mLeadingZeroCountBase = 64 - mSubBucketHalfCountMagnitude - 1;
+
+        // Buckets until the top value is covered
+        long smallestUntrackable = 1L << subBucketCountMagnitude;
+        int bucketCount = 1;
+
+        while ( smallestUntrackable <= highestTrackableValue )
+        {
+            if ( smallestUntrackable > Long.MAX_VALUE / 2 )
+            {
+                bucketCount++;
+                break;
+            }
+
+            smallestUntrackable <<= 1;
+            bucketCount++;
+        }
+
+        mCounts = new long[( bucketCount + 1 ) * mSubBucketHalfCount];
+        reset();
+    }
+
+    public long getHighestTrackableValue() { return mHighestTrackableValue; }
+    public int getSignificantDigits() { return mSignificantDigits; }
+    public long getTotalCount() { return mTotalCount; }
+
+    public long getMin()
+    {
+        return mTotalCount == 0 ? 0 : mMin;
+    }
+
+    public long getMax()
+    {
+        return mTotalCount == 0 ? 0 : mMax;
+    }
+
+    public double getMean()
+    {
+        return mTotalCount == 0 ? 0.0 : mSum / mTotalCount;
+    }
+
+    //
+    ///
+    /// \brief Count a value
+    /// \param value Value, negative values count as 0
+    //
+    public void record ( long value )
+    {
+        recordCount ( value, 1 );
+    }
+
+    //
+    ///
+    /// \brief Count a value several times
+    //
+    public void recordCount ( long value, long count )
+    {
+        long clamped = Math.max ( 0L, Math.min ( mHighestTrackableValue, value ) );
+
+        mCounts[countsIndex ( clamped )] += count;
+        mTotalCount += count;
+        mSum += ( double ) clamped * count;
+        mMin = Math.min ( mMin, clamped );
+        mMax = Math.max ( mMax, clamped );
+    }
+
+    //
+    ///
+    /// \brief Add the counts of a histogram of the same range and precision
+    //
+    public void add ( ESHistogram other )
+    {
+        if ( other.mCounts.length != mCounts.length || other.mSubBucketHalfCount != mSubBucketHalfCount )
+        {
+            throw new IllegalArgumentException ( "Histograms differ in range or precision" );
+        }
+
+        for ( int i = 0; i < mCounts.length; i++ )
+        {
+            mCounts[i] += other.mCounts[i];
+        }
+
+        mTotalCount += other.mTotalCount;
+        mSum += other.mSum;
+        mMin = Math.min ( mMin, other.mMin );
+        mMax = Math.max ( mMax, other.mMax );
+    }
+
+    public void reset()
+    {
+        Arrays.fill ( mCounts, 0L );
+        mTotalCount = 0;
+        mSum = 0.0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    //
+    ///
+    /// \brief Value under which a percentage of the counts fall
+    /// \param percentile 0 to 100
+    //
+    public long getValueAtPercentile ( double percentile )
+    {
+        if ( mTotalCount == 0 )
+        {
+            return 0;
+        }
+
+        double fraction = Math.max ( 0.0, Math.min ( 100.0, percentile ) ) / 100.0;
+        long target = Math.max ( 1L, ( long ) Math.ceil ( fraction * mTotalCount ) );
+        long seen = 0;
+
+        for ( int i = 0; i < mCounts.length; i++ )
+        {
+            seen += mCounts[i];
+
+            if ( seen >= target )
+            {
+                return Math.min ( mMax, highestEquivalentValue ( valueFromIndex ( i ) ) );
+            }
+        }
+
+        return mMax;
+    }
+
+    //
+    ///
+    /// \brief Largest value counted in the same bucket as a value
+    //
+    public long highestEquivalentValue ( long value )
+    {
+        long clamped = Math.max ( 0L, value );
+
+        return lowestEquivalentValue ( clamped ) + ( 1L << bucketIndex ( clamped ) ) - 1;
+    }
+
+    //
+    ///
+    /// \brief Smallest value counted in the same bucket as a value
+    //
+    public long lowestEquivalentValue ( long value )
+    {
+        long clamped = Math.max ( 0L, value );
+        int bucket = bucketIndex ( clamped );
+
+        return ( clamped >>> bucket ) << bucket;
+    }
+
+    private int bucketIndex ( long value )
+    {
+        return mLeadingZeroCountBase - Long.numberOfLeadingZeros ( value | mSubBucketMask );
+    }
+
+    private int countsIndex ( long value )
+    {
+        int bucket = bucketIndex ( value );
+        int subBucket = ( int ) ( value >>> bucket );
+
+        return ( ( bucket + 1 ) << mSubBucketHalfCountMagnitude ) + ( subBucket - mSubBucketHalfCount );
+    }
+
+    private long valueFromIndex ( int index )
+    {
+        int bucket = ( index >> mSubBucketHalfCountMagnitude ) - 1;
+        int subBucket = ( index & ( mSubBucketHalfCount - 1 ) ) + mSubBucketHalfCount;
+
+        // The first half of the first bucket
+        if ( bucket < 0 )
+        {
+            subBucket -= mSubBucketHalfCount;
+            bucket = 0;
+        }
+
+        return ( long ) subBucket << bucket;
+    }
+
+    // Member variables
+    private final long mHighestTrackableValue;
+    private final int mSignificantDigits;
+    private final int mSubBucketHalfCountMagnitude;
+    private final int mSubBucketHalfCount;
+    private final long mSubBucketMask;
+    private final int mLeadingZeroCountBase;
+    private final long[] mCounts;
+    private long mTotalCount;
+    private double mSum;
+    private long mMin;
+    private long mMax;
+}
@@ -0,0 +1,444 @@
+package edu.gatech.gtri.common;
+
+import java.lang.Math;
+
+//
+/// \brief CPU horizon culler for square heightfield patches.
+///
+/// The height grid is split into patches of patchSize x patchSize quads.
+/// Every frame the patches are walked front to back, by their distance
+/// from the eye in the ground plane, while a horizon is grown from the
+/// patches already accepted.  The horizon holds, for each column of
+/// azimuth around the eye, the steepest slope from the eye that is known
+/// to hit terrain.  A patch whose top is below the horizon over all the
+/// azimuths it covers is hidden behind nearer terrain and is rejected
+/// before it is submitted to GL.
+///
+/// Each patch contributes two occluders to the horizon: the grid row and the
+/// grid column whose lowest sample is highest.  The terrain along such a
+/// grid line never dips below that sample, so the solid wall under the line
+/// is a conservative occluder.  A vertical wall stays within its columns of
+/// azimuth whatever the orientation of the camera, so unlike a horizon in
+/// screen space this one holds for a pitched or rolled view.
+//
+public class ESHorizonCuller
+{
+    //
+    ///
+    /// \brief Build the per-patch bounds of a heightfield
+    /// \param heights Grid heights, row-major, width x height samples
+    /// \param width Number of samples along x
+    /// \param height Number of samples along y
+    /// \param patchSize Number of quads along each side of a patch
+    /// \param sizeX World extent of the grid along x
+    /// \param sizeY World extent of the grid along y
+    /// \param heightScale Scale applied to the grid heights to get world z
+    /// \param horizonResolution Number of columns of the horizon over a full
+    ///    turn around the eye
+    //
+    public ESHorizonCuller ( float[] heights, int width, int height, int patchSize,
+                             float sizeX, float sizeY, float heightScale, int horizonResolution )
+    {
+        if ( width < 2 || height < 2 || patchSize < 1 || horizonResolution < 1
+                || heights.length < width * height )
+        {
+            throw new IllegalArgumentException ( "Invalid heightfield dimensions" );
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mPatchSize = patchSize;
+        mPatchesX = ( width - 2 ) / patchSize + 1;
+        mPatchesY = ( height - 2 ) / patchSize + 1;
+        mStepX = sizeX / ( float ) ( width - 1 );
+        mStepY = sizeY / ( float ) ( height - 1 );
+        mHeightScale = heightScale;
+
+        int numPatches = mPatchesX * mPatchesY;
+
+        mBounds = new float[numPatches * 6];
+        mOccluders = new float[numPatches * 4];
+        mOrder = new int[numPatches];
+        mDistances = new float[numPatches];
+        mVisible = new int[numPatches];
+        mHorizon = new float[horizonResolution];
+
+        for ( int i = 0; i < numPatches; i++ )
+        {
+            mOrder[i] = i;
+        }
+
+        updatePatches ( heights, 0, 0, width - 1, height - 1 );
+    }
+
+    //
+    ///
+    /// \brief Recompute the bounds and occluders of every patch touching a
+    ///    region of the grid, e.g. after the heightfield has been edited
+    /// \param heights Grid heights, same layout as given to the constructor
+    /// \param col0, row0 First sample of the region
+    /// \param col1, row1 Last sample of the region (inclusive)
+    //
+    public void updatePatches ( float[] heights, int col0, int row0, int col1, int row1 )
+    {
+        // Border samples are shared, so a sample may belong to two patches
+        int px0 = Math.max ( 0, ( col0 - 1 ) / mPatchSize );
+        int py0 = Math.max ( 0, ( row0 - 1 ) / mPatchSize );
+        int px1 = Math.min ( mPatchesX - 1, col1 / mPatchSize );
+        int py1 = Math.min ( mPatchesY - 1, row1 / mPatchSize );
+
+        for ( int py = py0; py <= py1; py++ )
+        {
+            for ( int px = px0; px <= px1; px++ )
+            {
+                computePatch ( heights, px, py );
+            }
+        }
+    }
+
+    private void computePatch ( float[] heights, int px, int py )
+    {
+        int col0 = px * mPatchSize;
+        int row0 = py * mPatchSize;
+        int col1 = Math.min ( col0 + mPatchSize, mWidth - 1 );
+        int row1 = Math.min ( row0 + mPatchSize, mHeight - 1 );
+        int patch = py * mPatchesX + px;
+        float minH = Float.MAX_VALUE;
+        float maxH = -Float.MAX_VALUE;
+        float bestRowH = -Float.MAX_VALUE;
+        int bestRow = row0;
+        int row, col;
+
+        for ( row = row0; row <= row1; row++ )
+        {
+            float rowMin = Float.MAX_VALUE;
+
+            for ( col = col0; col <= col1; col++ )
+            {
+                float h = heights[row * mWidth + col];
+                rowMin = Math.min ( rowMin, h );
+                maxH = Math.max ( maxH, h );
+            }
+
+            minH = Math.min ( minH, rowMin );
+
+            if ( rowMin > bestRowH )
+            {
+                bestRowH = rowMin;
+                bestRow = row;
+            }
+        }
+
+        float bestColH = -Float.MAX_VALUE;
+        int bestCol = col0;
+
+        for ( col = col0; col <= col1; col++ )
+        {
+            float colMin = Float.MAX_VALUE;
+
+            for ( row = row0; row <= row1; row++ )
+            {
+                colMin = Math.min ( colMin, heights[row * mWidth + col] );
+            }
+
+            if ( colMin > bestColH )
+            {
+                bestColH = colMin;
+                bestCol = col;
+            }
+        }
+
+        int base = patch * 6;
+        float z0 = minH * mHeightScale;
+        float z1 = maxH * mHeightScale;
+
+        // Keep inverted boxes (heightScale < 0) well formed
+        mBounds[base + 0] = col0 * mStepX;
+        mBounds[base + 1] = row0 * mStepY;
+        mBounds[base + 2] = Math.min ( z0, z1 );
+        mBounds[base + 3] = col1 * mStepX;
+        mBounds[base + 4] = row1 * mStepY;
+        mBounds[base + 5] = Math.max ( z0, z1 );
+
+        // Only the slab below an occluder is solid, so with a negative
+        // scale the occluders collapse to the bottom of the box
+        base = patch * 4;
+        mOccluders[base + 0] = bestRow * mStepY;
+        mOccluders[base + 1] = mHeightScale >= 0.0f ? bestRowH * mHeightScale : mBounds[patch * 6 + 2];
+        mOccluders[base + 2] = bestCol * mStepX;
+        mOccluders[base + 3] = mHeightScale >= 0.0f ? bestColH * mHeightScale : mBounds[patch * 6 + 2];
+    }
+
+    //
+    ///
+    /// \brief Determine which patches are visible
+    /// \param mvp Model-view-projection matrix (column-major, as ESTransform)
+    /// \param eyeX, eyeY, eyeZ Eye position in the heightfield's world space
+    /// \return Number of visible patches, see getVisiblePatches()
+    //
+    public int cull ( float[] mvp, float eyeX, float eyeY, float eyeZ )
+    {
+        int numPatches = mOrder.length;
+        int numVisible = 0;
+        int i;
+
+        // Sort patches front to back by the distance in the ground plane
+        // from the eye to the center of their cell.  A ground ray leaving
+        // the eye crosses equal cells in increasing order of that distance,
+        // so every patch comes after all those in front of it.  The height
+        // must not count: a tall patch behind a low one would come first
+        // and its occluders would hide the low one.  The last patches of a
+        // row or column may be cut short, so the cells are the full ones.
+        // The order from the previous frame is nearly sorted, so an
+        // insertion sort is cheap and keeps ties stable.
+        float cellX = mPatchSize * mStepX;
+        float cellY = mPatchSize * mStepY;
+
+        for ( i = 0; i < numPatches; i++ )
+        {
+            float dx = ( i % mPatchesX + 0.5f ) * cellX - eyeX;
+            float dy = ( i / mPatchesX + 0.5f ) * cellY - eyeY;
+            mDistances[i] = dx * dx + dy * dy;
+        }
+
+        for ( i = 1; i < numPatches; i++ )
+        {
+            int patch = mOrder[i];
+            float dist = mDistances[patch];
+            int j = i - 1;
+
+            while ( j >= 0 && ( mDistances[mOrder[j]] > dist
+                    || ( mDistances[mOrder[j]] == dist && mOrder[j] > patch ) ) )
+            {
+                mOrder[j + 1] = mOrder[j];
+                j--;
+            }
+
+            mOrder[j + 1] = patch;
+        }
+
+        for ( i = 0; i < mHorizon.length; i++ )
+        {
+            mHorizon[i] = -Float.MAX_VALUE;
+        }
+
+        mNumFrustumCulled = 0;
+        mNumOcclusionCulled = 0;
+
+        for ( i = 0; i < numPatches; i++ )
+        {
+            int patch = mOrder[i];
+            int base = patch * 6;
+
+            if ( isOutsideFrustum ( mvp, mBounds[base + 0], mBounds[base + 1], mBounds[base + 2],
+                                    mBounds[base + 3], mBounds[base + 4], mBounds[base + 5] ) )
+            {
+                mNumFrustumCulled++;
+                continue;
+            }
+
+            if ( isBelowHorizon ( eyeX, eyeY, eyeZ, mBounds[base + 0], mBounds[base + 1],
+                                  mBounds[base + 3], mBounds[base + 4], mBounds[base + 5] ) )
+            {
+                mNumOcclusionCulled++;
+                continue;
+            }
+
+            mVisible[numVisible++] = patch;
+
+            // Grow the horizon with the patch's occluding row and column
+            int occluder = patch * 4;
+
+            raiseHorizon ( eyeX, eyeY, eyeZ, mBounds[base + 0], mOccluders[occluder + 0],
+                           mBounds[base + 3], mOccluders[occluder + 0], mOccluders[occluder + 1] );
+            raiseHorizon ( eyeX, eyeY, eyeZ, mOccluders[occluder + 2], mBounds[base + 1],
+                           mOccluders[occluder + 2], mBounds[base + 4], mOccluders[occluder + 3] );
+        }
+
+        mNumVisible = numVisible;
+        return numVisible;
+    }
+
+    //
+    // True when the eight corners of a box are all outside the same clip
+    // plane
+    //
+    private static boolean isOutsideFrustum ( float[] m, float minX, float minY, float minZ,
+                                              float maxX, float maxY, float maxZ )
+    {
+        int outsideMask = 0x3F;
+
+        for ( int c = 0; c < 8; c++ )
+        {
+            float x = ( c & 1 ) == 0 ? minX : maxX;
+            float y = ( c & 2 ) == 0 ? minY : maxY;
+            float z = ( c & 4 ) == 0 ? minZ : maxZ;
+
+            float cx = m[0] * x + m[4] * y + m[8]  * z + m[12];
+            float cy = m[1] * x + m[5] * y + m[9]  * z + m[13];
+            float cz = m[2] * x + m[6] * y + m[10] * z + m[14];
+            float cw = m[3] * x + m[7] * y + m[11] * z + m[15];
+
+            int mask = 0;
+            if ( cx < -cw ) mask |= 0x01;
+            if ( cx >  cw ) mask |= 0x02;
+            if ( cy < -cw ) mask |= 0x04;
+            if ( cy >  cw ) mask |= 0x08;
+            if ( cz < -cw ) mask |= 0x10;
+            if ( cz >  cw ) mask |= 0x20;
+            outsideMask &= mask;
+        }
+
+        return outsideMask != 0;
+    }
+
+    //
+    // Leave in mRange the azimuth range around the eye of the ground
+    // rectangle minX..maxX x minY..maxY, in horizon columns, and return the
+    // distances from the eye to its nearest and farthest points in
+    // mDistance.  The rectangle must not contain the eye, so the range is
+    // less than half a turn; it may wrap past column 0.
+    //
+    private void azimuthRange ( float eyeX, float eyeY, float minX, float minY, float maxX, float maxY )
+    {
+        double center = Math.atan2 ( 0.5f * ( minY + maxY ) - eyeY, 0.5f * ( minX + maxX ) - eyeX );
+        double low = 0.0, high = 0.0;
+        float far = 0.0f;
+
+        for ( int c = 0; c < 4; c++ )
+        {
+            float dx = ( ( c & 1 ) == 0 ? minX : maxX ) - eyeX;
+            float dy = ( ( c & 2 ) == 0 ? minY : maxY ) - eyeY;
+            double delta = Math.atan2 ( dy, dx ) - center;
+
+            // Corners are within a quarter turn of the center
+            if ( delta > Math.PI ) delta -= 2.0 * Math.PI;
+            if ( delta < -Math.PI ) delta += 2.0 * Math.PI;
+
+            low = Math.min ( low, delta );
+            high = Math.max ( high, delta );
+            far = Math.max ( far, dx * dx + dy * dy );
+        }
+
+        float nearX = Math.max ( 0.0f, Math.max ( minX - eyeX, eyeX - maxX ) );
+        float nearY = Math.max ( 0.0f, Math.max ( minY - eyeY, eyeY - maxY ) );
+        double scale = mHorizon.length / ( 2.0 * Math.PI );
+
+        mRange[0] = ( center + low + Math.PI ) * scale;
+        mRange[1] = ( center + high + Math.PI ) * scale;
+        mDistance[0] = ( float ) Math.sqrt ( nearX * nearX + nearY * nearY );
+        mDistance[1] = ( float ) Math.sqrt ( far );
+    }
+
+    private int wrapColumn ( int col )
+    {
+        col %= mHorizon.length;
+        return col < 0 ? col + mHorizon.length : col;
+    }
+
+    //
+    // True when the top of a box is below the horizon over every column it
+    // covers, i.e. every ray from the eye to the box first goes through
+    // terrain in front of it
+    //
+    private boolean isBelowHorizon ( float eyeX, float eyeY, float eyeZ,
+                                     float minX, float minY, float maxX, float maxY, float maxZ )
+    {
+        float rise = maxZ - eyeZ;
+
+        // Nothing hides a patch the eye stands over
+        if ( eyeX >= minX && eyeX <= maxX && eyeY >= minY && eyeY <= maxY )
+        {
+            return false;
+        }
+
+        azimuthRange ( eyeX, eyeY, minX, minY, maxX, maxY );
+
+        // Steepest slope from the eye up to the top of the box
+        float slope = rise / ( rise >= 0.0f ? mDistance[0] : mDistance[1] );
+        int col0 = ( int ) Math.floor ( mRange[0] );
+        int col1 = ( int ) Math.floor ( mRange[1] );
+
+        for ( int col = col0; col <= col1; col++ )
+        {
+            if ( slope >= mHorizon[wrapColumn ( col )] )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //
+    // Raise the horizon with the solid wall under a horizontal occluding
+    // edge, only over the columns that the edge fully spans.  Beyond the
+    // edge, a ray whose slope is below the edge's goes through the wall.
+    //
+    private void raiseHorizon ( float eyeX, float eyeY, float eyeZ,
+                                float x0, float y0, float x1, float y1, float z )
+    {
+        float rise = z - eyeZ;
+
+        azimuthRange ( eyeX, eyeY, x0, y0, x1, y1 );
+
+        // The edge runs through the eye
+        if ( mDistance[0] <= 0.0f )
+        {
+            return;
+        }
+
+        // Shallowest slope from the eye to a point of the edge
+        float slope = rise / ( rise >= 0.0f ? mDistance[1] : mDistance[0] );
+        int col0 = ( int ) Math.ceil ( mRange[0] );
+        int col1 = ( int ) Math.floor ( mRange[1] ) - 1;
+
+        for ( int col = col0; col <= col1; col++ )
+        {
+            int wrapped = wrapColumn ( col );
+
+            if ( slope > mHorizon[wrapped] )
+            {
+                mHorizon[wrapped] = slope;
+            }
+        }
+    }
+
+    public int getNumPatches() { return mOrder.length; }
+    public int getPatchesX() { return mPatchesX; }
+    public int getPatchesY() { return mPatchesY; }
+    public int getPatchSize() { return mPatchSize; }
+
+    // Visible patch indices in front to back order, valid up to getNumVisible()
+    public int[] getVisiblePatches() { return mVisible; }
+    public int getNumVisible() { return mNumVisible; }
+    public int getNumFrustumCulled() { return mNumFrustumCulled; }
+    public int getNumOcclusionCulled() { return mNumOcclusionCulled; }
+
+    public void getPatchBounds ( int patch, float[] bounds )
+    {
+        System.arraycopy ( mBounds, patch * 6, bounds, 0, 6 );
+    }
+
+    // Member variables
+    private final int mWidth;
+    private final int mHeight;
+    private final int mPatchSize;
+    private final int mPatchesX;
+    private final int mPatchesY;
+    private final float mStepX;
+    private final float mStepY;
+    private final float mHeightScale;
+    private final float[] mBounds;
+    private final float[] mOccluders;
+    private final int[] mOrder;
+    private final float[] mDistances;
+    private final int[] mVisible;
+    private final float[] mHorizon;
+    private final double[] mRange = new double[2];
+    private final float[] mDistance = new float[2];
+    private int mNumVisible;
+    private int mNumFrustumCulled;
+    private int mNumOcclusionCulled;
+
+}
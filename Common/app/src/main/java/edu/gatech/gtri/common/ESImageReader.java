@@ -0,0 +1,511 @@
+package edu.gatech.gtri.common;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+//
+/// \brief Streaming scanline reader for TGA and PNG images.
+///
+/// Only one or two rows are held in memory at a time, so arbitrarily large
+/// images can be decoded with bounded memory.  Rows are returned in the
+/// order they are stored in the file; readRow() reports the top-down index
+/// of each row so callers can place it (bottom-up TGA files arrive last row
+/// first).
+///
+/// Supported: TGA types 2, 3, 10 and 11 (8/16-bit gray, 24/32-bit color,
+/// optionally RLE compressed) and non-interlaced PNG with 8 or 16 bits per
+/// sample (gray, gray + alpha, RGB, RGBA).  Samples are returned in gray or
+/// RGB(A) order, 16-bit samples as big-endian byte pairs.
+///
+/// This class has no Android dependencies.
+//
+public class ESImageReader
+{
+    //
+    ///
+    /// \brief Read the image header
+    /// \param is Stream positioned at the start of a TGA or PNG file
+    //
+    public ESImageReader ( InputStream is ) throws IOException
+    {
+        mIn = new DataInputStream ( is );
+
+        byte[] header = new byte[PNG_SIGNATURE.length];
+        mIn.readFully ( header );
+
+        boolean png = true;
+
+        for ( int i = 0; i < PNG_SIGNATURE.length; i++ )
+        {
+            png &= ( header[i] == PNG_SIGNATURE[i] );
+        }
+
+        if ( png )
+        {
+            readPNGHeader();
+        }
+        else
+        {
+            readTGAHeader ( header );
+        }
+
+        mRowBytes = mWidth * mChannels * mBytesPerSample;
+    }
+
+    //
+    ///
+    /// \brief Decode the next row
+    /// \param row Destination, at least getRowBytes() long
+    /// \return Top-down index of the row, -1 when all rows were read
+    //
+    public int readRow ( byte[] row ) throws IOException
+    {
+        if ( mRowsRead == mHeight )
+        {
+            return -1;
+        }
+
+        if ( mIsPNG )
+        {
+            readPNGRow ( row );
+        }
+        else
+        {
+            readTGARow ( row );
+        }
+
+        int index = mBottomUp ? mHeight - 1 - mRowsRead : mRowsRead;
+        mRowsRead++;
+        return index;
+    }
+
+    //
+    ///
+    /// \brief Read one sample of a decoded row, scaled to [0, 65535]
+    //
+    public int getSample ( byte[] row, int x, int channel )
+    {
+        if ( mBytesPerSample == 1 )
+        {
+            return ( row[x * mChannels + channel] & 0xFF ) * 257;
+        }
+
+        int offset = ( x * mChannels + channel ) * 2;
+        return ( ( row[offset] & 0xFF ) << 8 ) | ( row[offset + 1] & 0xFF );
+    }
+
+    //
+    ///
+    /// \brief Release the inflater and close the underlying stream
+    //
+    public void close() throws IOException
+    {
+        if ( mInflater != null )
+        {
+            mInflater.end();
+        }
+
+        mIn.close();
+    }
+
+    public int getWidth() { return mWidth; }
+    public int getHeight() { return mHeight; }
+    public int getChannels() { return mChannels; }
+    public int getBytesPerSample() { return mBytesPerSample; }
+    public int getRowBytes() { return mRowBytes; }
+    public boolean isBottomUp() { return mBottomUp; }
+
+    ///
+    // TGA
+    //
+    private void readTGAHeader ( byte[] start ) throws IOException
+    {
+        byte[] header = new byte[TGA_HEADER_SIZE];
+        System.arraycopy ( start, 0, header, 0, start.length );
+        mIn.readFully ( header, start.length, TGA_HEADER_SIZE - start.length );
+
+        int idLength = header[0] & 0xFF;
+        int colorMapType = header[1] & 0xFF;
+        int imageType = header[2] & 0xFF;
+        int colorMapLength = readLE16 ( header, 5 );
+        int colorMapDepth = header[7] & 0xFF;
+        int pixelDepth = header[16] & 0xFF;
+        int descriptor = header[17] & 0xFF;
+
+        mWidth = readLE16 ( header, 12 );
+        mHeight = readLE16 ( header, 14 );
+        mRLE = ( imageType == 10 || imageType == 11 );
+        mBottomUp = ( descriptor & 0x20 ) == 0;
+
+        if ( imageType == 3 || imageType == 11 )
+        {
+            if ( pixelDepth != 8 && pixelDepth != 16 )
+            {
+                throw new IOException ( "Unsupported TGA gray depth " + pixelDepth );
+            }
+
+            mChannels = 1;
+            mBytesPerSample = pixelDepth / 8;
+        }
+        else if ( imageType == 2 || imageType == 10 )
+        {
+            if ( pixelDepth != 24 && pixelDepth != 32 )
+            {
+                throw new IOException ( "Unsupported TGA color depth " + pixelDepth );
+            }
+
+            mChannels = pixelDepth / 8;
+            mBytesPerSample = 1;
+        }
+        else
+        {
+            throw new IOException ( "Unsupported TGA image type " + imageType );
+        }
+
+        if ( ( descriptor & 0x10 ) != 0 )
+        {
+            throw new IOException ( "Right-to-left TGA images are not supported" );
+        }
+
+        if ( mWidth == 0 || mHeight == 0 )
+        {
+            throw new IOException ( "Empty TGA image" );
+        }
+
+        // Skip the image ID and any (unused) color map
+        skipFully ( idLength );
+
+        if ( colorMapType != 0 )
+        {
+            skipFully ( colorMapLength * ( ( colorMapDepth + 7 ) / 8 ) );
+        }
+
+        mPixel = new byte[pixelDepth / 8];
+    }
+
+    private void readTGARow ( byte[] row ) throws IOException
+    {
+        int pixelBytes = mPixel.length;
+
+        if ( !mRLE )
+        {
+            mIn.readFully ( row, 0, mRowBytes );
+        }
+        else
+        {
+            // RLE packets may run across row boundaries
+            int offset = 0;
+
+            while ( offset < mRowBytes )
+            {
+                if ( mPacketRemaining == 0 )
+                {
+                    int packet = mIn.readUnsignedByte();
+                    mPacketRemaining = ( packet & 0x7F ) + 1;
+                    mPacketRepeat = ( packet & 0x80 ) != 0;
+
+                    if ( mPacketRepeat )
+                    {
+                        mIn.readFully ( mPixel );
+                    }
+                }
+
+                int count = Math.min ( mPacketRemaining, ( mRowBytes - offset ) / pixelBytes );
+
+                if ( mPacketRepeat )
+                {
+                    for ( int i = 0; i < count; i++ )
+                    {
+                        System.arraycopy ( mPixel, 0, row, offset + i * pixelBytes, pixelBytes );
+                    }
+                }
+                else
+                {
+                    mIn.readFully ( row, offset, count * pixelBytes );
+                }
+
+                offset += count * pixelBytes;
+                mPacketRemaining -= count;
+            }
+        }
+
+        // TGA stores BGR(A) and little-endian 16-bit samples
+        if ( mChannels >= 3 )
+        {
+            for ( int i = 0; i < mRowBytes; i += mChannels )
+            {
+                byte b = row[i];
+                row[i] = row[i + 2];
+                row[i + 2] = b;
+            }
+        }
+        else if ( mBytesPerSample == 2 )
+        {
+            for ( int i = 0; i < mRowBytes; i += 2 )
+            {
+                byte lo = row[i];
+                row[i] = row[i + 1];
+                row[i + 1] = lo;
+            }
+        }
+    }
+
+    ///
+    // PNG
+    //
+    private void readPNGHeader() throws IOException
+    {
+        int length = mIn.readInt();
+        int type = mIn.readInt();
+
+        if ( type != CHUNK_IHDR || length != 13 )
+        {
+            throw new IOException ( "Missing PNG IHDR chunk" );
+        }
+
+        mWidth = mIn.readInt();
+        mHeight = mIn.readInt();
+        int bitDepth = mIn.readUnsignedByte();
+        int colorType = mIn.readUnsignedByte();
+        int compression = mIn.readUnsignedByte();
+        int filter = mIn.readUnsignedByte();
+        int interlace = mIn.readUnsignedByte();
+        mIn.readInt(); // CRC
+
+        switch ( colorType )
+        {
+            case 0: mChannels = 1; break;
+            case 2: mChannels = 3; break;
+            case 4: mChannels = 2; break;
+            case 6: mChannels = 4; break;
+            default: throw new IOException ( "Unsupported PNG color type " + colorType );
+        }
+
+        if ( bitDepth != 8 && bitDepth != 16 )
+        {
+            throw new IOException ( "Unsupported PNG bit depth " + bitDepth );
+        }
+
+        if ( compression != 0 || filter != 0 || interlace != 0 )
+        {
+            throw new IOException ( "Unsupported PNG compression, filter or interlace method" );
+        }
+
+        if ( mWidth <= 0 || mHeight <= 0 )
+        {
+            throw new IOException ( "Empty PNG image" );
+        }
+
+        mIsPNG = true;
+        mBottomUp = false;
+        mBytesPerSample = bitDepth / 8;
+        mInflater = new Inflater();
+        mCompressed = new byte[COMPRESSED_BUFFER_SIZE];
+        mPrevRow = new byte[mWidth * mChannels * mBytesPerSample];
+    }
+
+    private void readPNGRow ( byte[] row ) throws IOException
+    {
+        if ( inflate ( mFilterByte, 0, 1 ) != 1 || inflate ( row, 0, mRowBytes ) != mRowBytes )
+        {
+            throw new EOFException ( "Truncated PNG image data" );
+        }
+
+        int filter = mFilterByte[0] & 0xFF;
+        int bpp = mChannels * mBytesPerSample;
+        byte[] prev = mPrevRow;
+        int i;
+
+        switch ( filter )
+        {
+            case 0:
+                break;
+
+            case 1: // Sub
+                for ( i = bpp; i < mRowBytes; i++ )
+                {
+                    row[i] += row[i - bpp];
+                }
+                break;
+
+            case 2: // Up
+                for ( i = 0; i < mRowBytes; i++ )
+                {
+                    row[i] += prev[i];
+                }
+                break;
+
+            case 3: // Average
+                for ( i = 0; i < bpp; i++ )
+                {
+                    row[i] += ( prev[i] & 0xFF ) >> 1;
+                }
+                for ( ; i < mRowBytes; i++ )
+                {
+                    row[i] += ( ( row[i - bpp] & 0xFF ) + ( prev[i] & 0xFF ) ) >> 1;
+                }
+                break;
+
+            case 4: // Paeth
+                for ( i = 0; i < bpp; i++ )
+                {
+                    row[i] += prev[i];
+                }
+                for ( ; i < mRowBytes; i++ )
+                {
+                    int a = row[i - bpp] & 0xFF;
+                    int b = prev[i] & 0xFF;
+                    int c = prev[i - bpp] & 0xFF;
+                    int pa = Math.abs ( b - c );
+                    int pb = Math.abs ( a - c );
+                    int pc = Math.abs ( a + b - 2 * c );
+                    row[i] += ( pa <= pb && pa <= pc ) ? a : ( pb <= pc ? b : c );
+                }
+                break;
+
+            default:
+                throw new IOException ( "Invalid PNG filter type " + filter );
+        }
+
+        System.arraycopy ( row, 0, prev, 0, mRowBytes );
+    }
+
+    // Inflate image data, pulling further IDAT chunks from the stream as needed
+    private int inflate ( byte[] dst, int offset, int length ) throws IOException
+    {
+        int total = 0;
+
+        try
+        {
+            while ( total < length )
+            {
+                int n = mInflater.inflate ( dst, offset + total, length - total );
+                total += n;
+
+                if ( n == 0 )
+                {
+                    if ( mInflater.finished() || mInflater.needsDictionary() )
+                    {
+                        break;
+                    }
+
+                    if ( mInflater.needsInput() && !fillInflater() )
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+        catch ( DataFormatException dfe )
+        {
+            throw new IOException ( "Corrupt PNG image data", dfe );
+        }
+
+        return total;
+    }
+
+    private boolean fillInflater() throws IOException
+    {
+        while ( mIDATRemaining == 0 )
+        {
+            if ( mIDATDone )
+            {
+                return false;
+            }
+
+            if ( mInIDAT )
+            {
+                mIn.readInt(); // CRC of the previous IDAT
+            }
+
+            int length = mIn.readInt();
+            int type = mIn.readInt();
+
+            if ( type == CHUNK_IDAT )
+            {
+                mInIDAT = true;
+                mIDATRemaining = length;
+            }
+            else if ( mInIDAT || type == CHUNK_IEND )
+            {
+                // IDAT chunks are consecutive, the image data is complete
+                mIDATDone = true;
+                return false;
+            }
+            else
+            {
+                skipFully ( length + 4 );
+            }
+        }
+
+        int n = mIn.read ( mCompressed, 0, Math.min ( mCompressed.length, mIDATRemaining ) );
+
+        if ( n < 0 )
+        {
+            throw new EOFException ( "Truncated PNG chunk" );
+        }
+
+        mIDATRemaining -= n;
+        mInflater.setInput ( mCompressed, 0, n );
+        return true;
+    }
+
+    private void skipFully ( int count ) throws IOException
+    {
+        while ( count > 0 )
+        {
+            int skipped = mIn.skipBytes ( count );
+
+            if ( skipped <= 0 )
+            {
+                mIn.readByte();
+                skipped = 1;
+            }
+
+            count -= skipped;
+        }
+    }
+
+    private static int readLE16 ( byte[] b, int offset )
+    {
+        return ( b[offset] & 0xFF ) | ( ( b[offset + 1] & 0xFF ) << 8 );
+    }
+
+    // Member variables
+    private final DataInputStream mIn;
+    private int mWidth;
+    private int mHeight;
+    private int mChannels;
+    private int mBytesPerSample;
+    private int mRowBytes;
+    private int mRowsRead;
+    private boolean mBottomUp;
+    private boolean mIsPNG;
+
+    // TGA state
+    private boolean mRLE;
+    private byte[] mPixel;
+    private int mPacketRemaining;
+    private boolean mPacketRepeat;
+
+    // PNG state
+    private Inflater mInflater;
+    private byte[] mCompressed;
+    private byte[] mPrevRow;
+    private final byte[] mFilterByte = new byte[1];
+    private int mIDATRemaining;
+    private boolean mInIDAT;
+    private boolean mIDATDone;
+
+    // Some constants
+    private static final byte[] PNG_SIGNATURE = { ( byte ) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int CHUNK_IHDR = 0x49484452;
+    private static final int CHUNK_IDAT = 0x49444154;
+    private static final int CHUNK_IEND = 0x49454E44;
+    private static final int TGA_HEADER_SIZE = 18;
+    private static final int COMPRESSED_BUFFER_SIZE = 16384;
+}
@@ -0,0 +1,203 @@
+package edu.gatech.gtri.common;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+//
+/// \brief PNG encoder for images held in memory, the counterpart of
+///    ESImageReader.
+///
+/// Samples are given in gray, gray + alpha, RGB or RGBA order, 16-bit
+/// samples as big-endian byte pairs, exactly as ESImageReader returns
+/// them.  Each row is filtered with the PNG filter that gives the smallest
+/// sum of absolute differences, the usual heuristic, and the filtered rows
+/// are deflated into a single IDAT chunk.
+///
+/// This class has no Android dependencies.
+//
+public class ESImageWriter
+{
+    //
+    ///
+    /// \brief Encode an image as PNG
+    /// \param pixels Rows of samples, top row first, width * channels *
+    ///    bytesPerSample bytes each
+    /// \param width, height Size of the image in pixels
+    /// \param channels 1 gray, 2 gray + alpha, 3 RGB or 4 RGBA
+    /// \param bytesPerSample 1 or 2
+    /// \param level Deflate level, 0 to 9 or Deflater.DEFAULT_COMPRESSION
+    /// \return The PNG file
+    //
+    public static byte[] encodePNG ( byte[] pixels, int width, int height, int channels, int bytesPerSample, int level )
+    {
+        if ( width <= 0 || height <= 0 || channels < 1 || channels > 4 ||
+             ( bytesPerSample != 1 && bytesPerSample != 2 ) )
+        {
+            throw new IllegalArgumentException ( "Unsupported PNG image layout" );
+        }
+
+        int bpp = channels * bytesPerSample;
+        int rowBytes = width * bpp;
+
+        if ( pixels.length < ( long ) rowBytes * height )
+        {
+            throw new IllegalArgumentException ( "Pixel array is too small for the image" );
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream ( rowBytes * height / 2 + 1024 );
+        byte[] header = new byte[13];
+
+        writeInt ( header, 0, width );
+        writeInt ( header, 4, height );
+        header[8] = ( byte ) ( bytesPerSample * 8 );
+        header[9] = ( byte ) COLOR_TYPES[channels - 1];
+
+        out.write ( PNG_SIGNATURE, 0, PNG_SIGNATURE.length );
+        writeChunk ( out, CHUNK_IHDR, header, header.length );
+
+        Deflater deflater = new Deflater ( level );
+        byte[] zeros = new byte[rowBytes];
+        byte[] filtered = new byte[( rowBytes + 1 ) * FILTER_TYPES];
+        byte[] compressed = new byte[COMPRESSED_BUFFER_SIZE];
+        ByteArrayOutputStream idat = new ByteArrayOutputStream ( rowBytes * height / 2 + 1024 );
+
+        try
+        {
+            for ( int y = 0; y < height; y++ )
+            {
+                int row = y * rowBytes;
+                int prev = row - rowBytes;
+                byte[] prevPixels = pixels;
+
+                if ( y == 0 )
+                {
+                    prevPixels = zeros;
+                    prev = 0;
+                }
+
+                int best = filterRow ( pixels, row, prevPixels, prev, rowBytes, bpp, filtered );
+
+                deflater.setInput ( filtered, best * ( rowBytes + 1 ), rowBytes + 1 );
+
+                while ( !deflater.needsInput() )
+                {
+                    int n = deflater.deflate ( compressed );
+                    idat.write ( compressed, 0, n );
+                }
+            }
+
+            deflater.finish();
+
+            while ( !deflater.finished() )
+            {
+                int n = deflater.deflate ( compressed );
+                idat.write ( compressed, 0, n );
+            }
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        writeChunk ( out, CHUNK_IDAT, idat.toByteArray(), idat.size() );
+        writeChunk ( out, CHUNK_IEND, header, 0 );
+        return out.toByteArray();
+    }
+
+    // Apply every filter type to a row, each into its own slot of filtered
+    // preceded by the filter type byte, and return the type of the best one
+    private static int filterRow ( byte[] pixels, int row, byte[] prevPixels, int prev, int rowBytes, int bpp,
+                                   byte[] filtered )
+    {
+        int stride = rowBytes + 1;
+        int best = 0;
+        long bestSum = Long.MAX_VALUE;
+
+        for ( int type = 0; type < FILTER_TYPES; type++ )
+        {
+            int base = type * stride;
+            long sum = 0;
+
+            filtered[base] = ( byte ) type;
+
+            for ( int i = 0; i < rowBytes; i++ )
+            {
+                int x = pixels[row + i] & 0xFF;
+                int a = ( i >= bpp ) ? pixels[row + i - bpp] & 0xFF : 0;
+                int b = prevPixels[prev + i] & 0xFF;
+                int c = ( i >= bpp ) ? prevPixels[prev + i - bpp] & 0xFF : 0;
+                int predictor;
+
+                switch ( type )
+                {
+                    case 0:  predictor = 0; break;
+                    case 1:  predictor = a; break;
+                    case 2:  predictor = b; break;
+                    case 3:  predictor = ( a + b ) >> 1; break;
+                    default: predictor = paeth ( a, b, c ); break;
+                }
+
+                byte value = ( byte ) ( x - predictor );
+
+                filtered[base + 1 + i] = value;
+
+                // Small signed residuals compress best
+                sum += Math.abs ( ( int ) value );
+            }
+
+            if ( sum < bestSum )
+            {
+                bestSum = sum;
+                best = type;
+            }
+        }
+
+        return best;
+    }
+
+    private static int paeth ( int a, int b, int c )
+    {
+        int pa = Math.abs ( b - c );
+        int pb = Math.abs ( a - c );
+        int pc = Math.abs ( a + b - 2 * c );
+
+        return ( pa <= pb && pa <= pc ) ? a : ( pb <= pc ? b : c );
+    }
+
+    private static void writeChunk ( ByteArrayOutputStream out, int type, byte[] data, int length )
+    {
+        byte[] word = new byte[4];
+        CRC32 crc = new CRC32();
+
+        writeInt ( word, 0, length );
+        out.write ( word, 0, 4 );
+
+        writeInt ( word, 0, type );
+        out.write ( word, 0, 4 );
+        crc.update ( word, 0, 4 );
+
+        out.write ( data, 0, length );
+        crc.update ( data, 0, length );
+
+        writeInt ( word, 0, ( int ) crc.getValue() );
+        out.write ( word, 0, 4 );
+    }
+
+    private static void writeInt ( byte[] b, int offset, int value )
+    {
+        b[offset] = ( byte ) ( value >>> 24 );
+        b[offset + 1] = ( byte ) ( value >>> 16 );
+        b[offset + 2] = ( byte ) ( value >>> 8 );
+        b[offset + 3] = ( byte ) value;
+    }
+
+    // Some constants
+    private static final byte[] PNG_SIGNATURE = { ( byte ) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int[] COLOR_TYPES = { 0, 4, 2, 6 };
+    private static final int CHUNK_IHDR = 0x49484452;
+    private static final int CHUNK_IDAT = 0x49444154;
+    private static final int CHUNK_IEND = 0x49454E44;
+    private static final int FILTER_TYPES = 5;
+    private static final int COMPRESSED_BUFFER_SIZE = 16384;
+}
@@ -0,0 +1,204 @@
+package edu.gatech.gtri.common;
+
+//
+/// \brief Inertia and damping of touch gestures.
+///
+/// While a finger drags, the caller applies the deltas itself and passes
+/// them to drag(), which estimates the velocity of each axis as an
+/// exponential average over about VELOCITY_TIME seconds, so a single
+/// jittery event does not decide the throw.  After release() the axes
+/// keep moving with that velocity decaying as exp ( -t / timeConstant ),
+/// and step() returns the motion of a frame.  The motion is the exact
+/// integral of the decay over the frame, so a glide covers the same
+/// distance at any frame rate; it ends once the speed of every axis drops
+/// under the stop speed.
+///
+/// Times are passed in, in seconds, and never read from a clock, so a
+/// recorded or scripted sequence of calls replays exactly.  Nothing is
+/// allocated after construction.
+///
+/// This class has no Android dependencies.
+//
+public class ESInertia
+{
+    // Time over which the drag velocity is averaged, in seconds
+    public static final double VELOCITY_TIME = 0.05;
+
+    //
+    ///
+    /// \brief Create a gesture with every axis at rest
+    /// \param axes Number of axes, e.g. 2 for a drag
+    /// \param timeConstant Time for the speed to fall to 1/e, in seconds
+    /// \param stopSpeed Speed under which a glide stops, units per second
+    //
+    public ESInertia ( int axes, double timeConstant, double stopSpeed )
+    {
+        if ( axes <= 0 || !( timeConstant > 0.0 ) || stopSpeed < 0.0 )
+        {
+            throw new IllegalArgumentException ( "Invalid inertia parameters" );
+        }
+
+        mVelocity = new double[axes];
+        mPending = new double[axes];
+        mTimeConstant = timeConstant;
+        mStopSpeed = stopSpeed;
+    }
+
+    public boolean isDragging() { return mDragging; }
+    public boolean isGliding() { return mGliding; }
+
+    public double getVelocity ( int axis )
+    {
+        return mVelocity[axis];
+    }
+
+    //
+    ///
+    /// \brief Record a drag event.  The first event of a drag stops any
+    ///    glide.
+    /// \param delta Motion of each axis since the previous event
+    //
+    public void drag ( double time, double[] delta )
+    {
+        if ( !mDragging )
+        {
+            // The motion of the first event has no known duration
+            stop();
+            mDragging = true;
+            mLastTime = time;
+            return;
+        }
+
+        double dt = time - mLastTime;
+
+        // Events with the same time stamp count together
+        if ( dt <= 0.0 )
+        {
+            for ( int i = 0; i < mVelocity.length; i++ )
+            {
+                mPending[i] += delta[i];
+            }
+
+            return;
+        }
+
+        double weight = 1.0 - Math.exp ( -dt / VELOCITY_TIME );
+
+        for ( int i = 0; i < mVelocity.length; i++ )
+        {
+            double speed = ( delta[i] + mPending[i] ) / dt;
+
+            mVelocity[i] += weight * ( speed - mVelocity[i] );
+            mPending[i] = 0.0;
+        }
+
+        mLastTime = time;
+    }
+
+    //
+    ///
+    /// \brief End a drag and start gliding.  A finger held still before
+    ///    lifting has lost its speed the same way as while moving.
+    //
+    public void release ( double time )
+    {
+        if ( !mDragging )
+        {
+            return;
+        }
+
+        double decay = Math.exp ( -Math.max ( 0.0, time - mLastTime ) / VELOCITY_TIME );
+
+        for ( int i = 0; i < mVelocity.length; i++ )
+        {
+            mVelocity[i] *= decay;
+            mPending[i] = 0.0;
+        }
+
+        mDragging = false;
+        mLastTime = time;
+        mGliding = !belowStopSpeed();
+
+        if ( !mGliding )
+        {
+            stop();
+        }
+    }
+
+    //
+    ///
+    /// \brief Stop dragging and gliding, e.g. when a finger touches down
+    //
+    public void stop()
+    {
+        for ( int i = 0; i < mVelocity.length; i++ )
+        {
+            mVelocity[i] = 0.0;
+            mPending[i] = 0.0;
+        }
+
+        mDragging = false;
+        mGliding = false;
+    }
+
+    //
+    ///
+    /// \brief Advance a glide to a time
+    /// \param out Receives the motion of each axis since the previous step
+    ///    or release()
+    /// \return Whether anything moved
+    //
+    public boolean step ( double time, double[] out )
+    {
+        if ( !mGliding )
+        {
+            for ( int i = 0; i < mVelocity.length; i++ )
+            {
+                out[i] = 0.0;
+            }
+
+            return false;
+        }
+
+        double dt = Math.max ( 0.0, time - mLastTime );
+        double decay = Math.exp ( -dt / mTimeConstant );
+
+        // Integral of v * exp ( -t / tau ) from 0 to dt
+        for ( int i = 0; i < mVelocity.length; i++ )
+        {
+            out[i] = mVelocity[i] * mTimeConstant * ( 1.0 - decay );
+            mVelocity[i] *= decay;
+        }
+
+        mLastTime = time;
+
+        if ( belowStopSpeed() )
+        {
+            stop();
+        }
+
+        return true;
+    }
+
+    private boolean belowStopSpeed()
+    {
+        for ( int i = 0; i < mVelocity.length; i++ )
+        {
+            if ( Math.abs ( mVelocity[i] ) >= mStopSpeed )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Member variables
+    private final double[] mVelocity;
+    private final double[] mPending;
+    private final double mTimeConstant;
+    private final double mStopSpeed;
+    private double mLastTime;
+    private boolean mDragging;
+    private boolean mGliding;
+}
@@ -0,0 +1,273 @@
+package edu.gatech.gtri.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+//
+/// \brief Moves and clusters the markers of an ESMarkerLayer off the GL
+///    thread.
+///
+/// The GL thread queues marker moves with update() and asks for the
+/// clusters of a view with request().  A single job on the executor
+/// applies the queued moves, rebuilds the grid index only if the moves
+/// overflowed it, and clusters the markers into a Result holding one
+/// vertex per cluster, ready to be copied to a VBO.  The GL thread picks up the newest Result with poll()
+/// and hands it back with recycle() once copied, so the results are reused
+/// instead of allocated each time.
+///
+/// Requests are coalesced: while a job runs, only the latest request is
+/// kept and served next, so a slow clustering pass drops intermediate
+/// views instead of falling behind.
+///
+/// After the clusterer is created, the layer must only be accessed through
+/// it.
+//
+public class ESMarkerClusterer
+{
+    // Floats per marker vertex: position relative to the center, count
+    public static final int VERTEX_FLOATS = 4;
+
+    //
+    ///
+    /// \brief Clusters of one request, as vertices
+    //
+    public static class Result
+    {
+        //
+        ///
+        /// \brief x, y, z relative to getCenter() and the number of
+        ///    markers, per cluster
+        //
+        public FloatBuffer getVertices() { return mVertices; }
+        public int getNumClusters() { return mNumClusters; }
+        public int getNumMarkers() { return mNumMarkers; }
+        public double[] getCenter() { return mCenter; }
+        public int getZoom() { return mZoom; }
+
+        private FloatBuffer mVertices = newFloatBuffer ( 1024 * VERTEX_FLOATS );
+        private int mNumClusters;
+        private int mNumMarkers;
+        private final double[] mCenter = new double[3];
+        private int mZoom;
+    }
+
+    //
+    ///
+    /// \brief Create a clusterer
+    /// \param layer Markers to cluster, with the index built or not
+    /// \param projection Maps the cluster centroids to world coordinates
+    /// \param executor Runs the clustering jobs, one at a time
+    //
+    public ESMarkerClusterer ( ESMarkerLayer layer, ESVectorLayer.Projection projection, Executor executor )
+    {
+        mLayer = layer;
+        mProjection = projection;
+        mExecutor = executor;
+    }
+
+    //
+    ///
+    /// \brief Queue marker moves, applied before the next clustering
+    /// \param ids Ids of the markers, copied
+    /// \param lonLat New longitude, latitude of each marker, copied
+    /// \param count Number of markers
+    //
+    public void update ( int[] ids, double[] lonLat, int count )
+    {
+        mUpdates.add ( new Update ( Arrays.copyOf ( ids, count ), Arrays.copyOf ( lonLat, count * 2 ) ) );
+    }
+
+    //
+    ///
+    /// \brief Request the clusters of a view box
+    /// \param zoom Cluster zoom level, see ESMarkerLayer.cluster()
+    /// \param west, south, east, north View box in degrees
+    //
+    public void request ( int zoom, double west, double south, double east, double north )
+    {
+        mRequest.set ( new double[] { zoom, west, south, east, north } );
+        schedule();
+    }
+
+    //
+    ///
+    /// \brief Newest finished result, or null if there is none since the
+    ///    last call
+    //
+    public Result poll()
+    {
+        return mReady.getAndSet ( null );
+    }
+
+    //
+    ///
+    /// \brief Give back a result from poll() for reuse
+    //
+    public void recycle ( Result result )
+    {
+        mSpare.add ( result );
+    }
+
+    //
+    ///
+    /// \brief Run a job on the calling thread if one is pending, for
+    ///    callers without an executor and for tests
+    //
+    public void runPending()
+    {
+        if ( mRunning.compareAndSet ( false, true ) )
+        {
+            runJobs();
+        }
+    }
+
+    public long getUpdatesApplied() { return mUpdatesApplied; }
+    public long getResultsProduced() { return mResultsProduced; }
+
+    private void schedule()
+    {
+        if ( mRunning.compareAndSet ( false, true ) )
+        {
+            mExecutor.execute ( new Runnable()
+            {
+                public void run()
+                {
+                    runJobs();
+                }
+            } );
+        }
+    }
+
+    // Serve requests until there are none, mRunning is held
+    private void runJobs()
+    {
+        do
+        {
+            double[] request;
+
+            while ( ( request = mRequest.getAndSet ( null ) ) != null )
+            {
+                Result result = mSpare.poll();
+
+                applyUpdates();
+
+                if ( mLayer.isIndexDirty() )
+                {
+                    mLayer.rebuildIndex();
+                }
+
+                if ( result == null )
+                {
+                    result = new Result();
+                }
+
+                cluster ( ( int ) request[0], request[1], request[2], request[3], request[4], result );
+                mResultsProduced++;
+
+                // A result the GL thread did not pick up is replaced
+                Result stale = mReady.getAndSet ( result );
+
+                if ( stale != null )
+                {
+                    mSpare.add ( stale );
+                }
+            }
+
+            mRunning.set ( false );
+        }
+        while ( mRequest.get() != null && mRunning.compareAndSet ( false, true ) );
+    }
+
+    private void applyUpdates()
+    {
+        Update update;
+
+        while ( ( update = mUpdates.poll() ) != null )
+        {
+            for ( int i = 0; i < update.mIds.length; i++ )
+            {
+                mLayer.set ( update.mIds[i], update.mLonLat[i * 2], update.mLonLat[i * 2 + 1] );
+            }
+
+            mUpdatesApplied += update.mIds.length;
+        }
+    }
+
+    private void cluster ( int zoom, double west, double south, double east, double north, Result result )
+    {
+        double centerLon = ( west <= east ) ? ( west + east ) * 0.5 : ( west + east + 360.0 ) * 0.5;
+        double[] p = mPoint;
+
+        mLayer.cluster ( zoom, west, south, east, north, mClusters );
+
+        int numClusters = mClusters.getNumClusters();
+
+        if ( result.mVertices.capacity() < numClusters * VERTEX_FLOATS )
+        {
+            result.mVertices = newFloatBuffer ( numClusters * VERTEX_FLOATS * 3 / 2 );
+        }
+
+        result.mVertices.clear();
+        mProjection.project ( centerLon, ( south + north ) * 0.5, result.mCenter, 0 );
+        result.mNumMarkers = 0;
+
+        for ( int c = 0; c < numClusters; c++ )
+        {
+            int base = c * VERTEX_FLOATS;
+
+            mProjection.project ( mClusters.getLon ( c ), mClusters.getLat ( c ), p, 0 );
+
+            result.mVertices.put ( base, ( float ) ( p[0] - result.mCenter[0] ) );
+            result.mVertices.put ( base + 1, ( float ) ( p[1] - result.mCenter[1] ) );
+            result.mVertices.put ( base + 2, ( float ) ( p[2] - result.mCenter[2] ) );
+            result.mVertices.put ( base + 3, mClusters.getCount ( c ) );
+            result.mNumMarkers += mClusters.getCount ( c );
+        }
+
+        result.mVertices.limit ( numClusters * VERTEX_FLOATS );
+        result.mNumClusters = numClusters;
+        result.mZoom = zoom;
+    }
+
+    private static FloatBuffer newFloatBuffer ( int count )
+    {
+        return ByteBuffer.allocateDirect ( count * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+    }
+
+    // Batch of moves queued by update()
+    private static class Update
+    {
+        Update ( int[] ids, double[] lonLat )
+        {
+            mIds = ids;
+            mLonLat = lonLat;
+        }
+
+        final int[] mIds;
+        final double[] mLonLat;
+    }
+
+    // Member variables
+    private final ESMarkerLayer mLayer;
+    private final ESVectorLayer.Projection mProjection;
+    private final Executor mExecutor;
+
+    // Hand-off between the GL thread and the job
+    private final ConcurrentLinkedQueue<Update> mUpdates = new ConcurrentLinkedQueue<Update>();
+    private final AtomicReference<double[]> mRequest = new AtomicReference<double[]>();
+    private final AtomicReference<Result> mReady = new AtomicReference<Result>();
+    private final ConcurrentLinkedQueue<Result> mSpare = new ConcurrentLinkedQueue<Result>();
+    private final AtomicBoolean mRunning = new AtomicBoolean();
+
+    // Used by the job only
+    private final ESMarkerLayer.Clusters mClusters = new ESMarkerLayer.Clusters();
+    private final double[] mPoint = new double[3];
+    private volatile long mUpdatesApplied;
+    private volatile long mResultsProduced;
+}
@@ -0,0 +1,464 @@
+package edu.gatech.gtri.common;
+
+import java.lang.Math;
+import java.util.Arrays;
+
+//
+/// \brief Geo-referenced point markers with a grid index and clustering.
+///
+/// Markers are longitude, latitude points identified by the index returned
+/// from add().  A uniform longitude, latitude grid indexes them: after
+/// rebuildIndex() the markers of each grid cell are contiguous, so the
+/// markers inside a view box are found by visiting only the cells that
+/// overlap it.  The index is built with a counting sort in O(markers +
+/// cells).  Moves update it in place: a marker that stays in its cell only
+/// changes the cell sums, one that changes cells leaves its cell for a small
+/// overlay of moved markers visited one by one.  Only when the overlay is
+/// full does the index have to be rebuilt.
+///
+/// cluster() merges the visible markers that fall in the same cell of a
+/// zoom-dependent grid into one marker at their centroid, with the number
+/// of merged markers as its weight.  Zoom 0 uses cells of 360 /
+/// CLUSTER_GRID degrees, each zoom level halves them.  Down to the size of
+/// the index cells, cluster cells are made of whole index cells, and the
+/// index keeps the coordinate sums of each cell, so clustering a view
+/// costs one step per index cell instead of one per marker.
+///
+/// The layer is not thread safe; see ESMarkerClusterer to move and
+/// cluster markers off the GL thread.
+///
+/// This class has no Android dependencies.
+//
+public class ESMarkerLayer
+{
+    // Cells of the zoom 0 cluster grid around the globe
+    public static final int CLUSTER_GRID = 8;
+
+    //
+    ///
+    /// \brief Clusters of markers, reused by cluster() to avoid allocation
+    //
+    public static class Clusters
+    {
+        public int getNumClusters() { return mNumClusters; }
+        public double getLon ( int cluster ) { return mSumLon[cluster] / mCount[cluster]; }
+        public double getLat ( int cluster ) { return mSumLat[cluster] / mCount[cluster]; }
+        public int getCount ( int cluster ) { return mCount[cluster]; }
+
+        // Slot of a cluster cell, adding it if needed
+        int slot ( long key )
+        {
+            if ( mNumClusters * 2 >= mKeys.length )
+            {
+                grow();
+            }
+
+            int mask = mKeys.length - 1;
+            int h = ( int ) ( ( key * 0x9E3779B97F4A7C15L ) >>> 40 ) & mask;
+
+            while ( mSlots[h] >= 0 )
+            {
+                if ( mKeys[h] == key )
+                {
+                    return mSlots[h];
+                }
+
+                h = ( h + 1 ) & mask;
+            }
+
+            if ( mNumClusters == mCount.length )
+            {
+                mSumLon = Arrays.copyOf ( mSumLon, mNumClusters * 2 );
+                mSumLat = Arrays.copyOf ( mSumLat, mNumClusters * 2 );
+                mCount = Arrays.copyOf ( mCount, mNumClusters * 2 );
+            }
+
+            mKeys[h] = key;
+            mSlots[h] = mNumClusters;
+            mSumLon[mNumClusters] = 0.0;
+            mSumLat[mNumClusters] = 0.0;
+            mCount[mNumClusters] = 0;
+            return mNumClusters++;
+        }
+
+        void clear()
+        {
+            Arrays.fill ( mSlots, -1 );
+            mNumClusters = 0;
+        }
+
+        // Double the hash table and reinsert the clusters
+        private void grow()
+        {
+            long[] keys = mKeys;
+            int[] slots = mSlots;
+            int mask = keys.length * 2 - 1;
+
+            mKeys = new long[keys.length * 2];
+            mSlots = new int[keys.length * 2];
+            Arrays.fill ( mSlots, -1 );
+
+            for ( int i = 0; i < keys.length; i++ )
+            {
+                if ( slots[i] >= 0 )
+                {
+                    int h = ( int ) ( ( keys[i] * 0x9E3779B97F4A7C15L ) >>> 40 ) & mask;
+
+                    while ( mSlots[h] >= 0 )
+                    {
+                        h = ( h + 1 ) & mask;
+                    }
+
+                    mKeys[h] = keys[i];
+                    mSlots[h] = slots[i];
+                }
+            }
+        }
+
+        private long[] mKeys = new long[256];
+        private int[] mSlots = filled ( 256 );
+        private double[] mSumLon = new double[128];
+        private double[] mSumLat = new double[128];
+        private int[] mCount = new int[128];
+        private int mNumClusters;
+
+        private static int[] filled ( int size )
+        {
+            int[] slots = new int[size];
+            Arrays.fill ( slots, -1 );
+            return slots;
+        }
+    }
+
+    //
+    ///
+    /// \brief Create an empty layer
+    /// \param capacity Maximum number of markers
+    //
+    public ESMarkerLayer ( int capacity )
+    {
+        mLon = new double[capacity];
+        mLat = new double[capacity];
+        mCellOf = new int[capacity];
+        mCellMarkers = new int[capacity];
+        mCellStart = new int[INDEX_X * INDEX_Y + 1];
+        mCellCount = new int[INDEX_X * INDEX_Y];
+        mCellSumLon = new double[INDEX_X * INDEX_Y];
+        mCellSumLat = new double[INDEX_X * INDEX_Y];
+        mMoved = new int[capacity / OVERLAY_FRACTION + 1];
+    }
+
+    //
+    ///
+    /// \brief Add a marker
+    /// \return The id of the marker
+    //
+    public int add ( double lon, double lat )
+    {
+        if ( mNumMarkers == mLon.length )
+        {
+            throw new IllegalStateException ( "Marker layer is full" );
+        }
+
+        mLon[mNumMarkers] = lon;
+        mLat[mNumMarkers] = lat;
+        mIndexDirty = true;
+        return mNumMarkers++;
+    }
+
+    //
+    ///
+    /// \brief Move a marker.  Queries see the move at once, unless the
+    ///    overlay of moved markers fills up and isIndexDirty() turns true.
+    //
+    public void set ( int id, double lon, double lat )
+    {
+        if ( id < 0 || id >= mNumMarkers )
+        {
+            throw new IndexOutOfBoundsException ( "No marker " + id );
+        }
+
+        if ( !mIndexDirty && mCellOf[id] != MOVED )
+        {
+            int cell = mCellOf[id];
+
+            // Take the marker out of its cell, its entry is skipped from now on
+            mCellSumLon[cell] -= mLon[id];
+            mCellSumLat[cell] -= mLat[id];
+
+            if ( cell == indexRow ( lat ) * INDEX_X + indexColumn ( lon ) )
+            {
+                mCellSumLon[cell] += lon;
+                mCellSumLat[cell] += lat;
+            }
+            else if ( mNumMoved < mMoved.length )
+            {
+                mCellCount[cell]--;
+                mCellOf[id] = MOVED;
+                mMoved[mNumMoved++] = id;
+            }
+            else
+            {
+                mIndexDirty = true;
+            }
+        }
+
+        mLon[id] = lon;
+        mLat[id] = lat;
+    }
+
+    public int getNumMarkers() { return mNumMarkers; }
+    public int getCapacity() { return mLon.length; }
+    public double getLon ( int id ) { return mLon[id]; }
+    public double getLat ( int id ) { return mLat[id]; }
+    public boolean isIndexDirty() { return mIndexDirty; }
+
+    // Markers moved out of their cell since the index was built
+    public int getNumMoved() { return mNumMoved; }
+
+    //
+    ///
+    /// \brief Sort the markers into the grid index
+    //
+    public void rebuildIndex()
+    {
+        int numCells = INDEX_X * INDEX_Y;
+
+        Arrays.fill ( mCellStart, 0 );
+        Arrays.fill ( mCellCount, 0 );
+        Arrays.fill ( mCellSumLon, 0.0 );
+        Arrays.fill ( mCellSumLat, 0.0 );
+
+        // Count the markers of each cell, shifted by one for the prefix sum
+        for ( int i = 0; i < mNumMarkers; i++ )
+        {
+            int cell = indexRow ( mLat[i] ) * INDEX_X + indexColumn ( mLon[i] );
+
+            mCellOf[i] = cell;
+            mCellStart[cell + 1]++;
+            mCellCount[cell]++;
+            mCellSumLon[cell] += mLon[i];
+            mCellSumLat[cell] += mLat[i];
+        }
+
+        for ( int cell = 0; cell < numCells; cell++ )
+        {
+            mCellStart[cell + 1] += mCellStart[cell];
+        }
+
+        // Scatter, using the start of the next cell as the fill pointer and
+        // walking backwards so the ids stay ascending within a cell
+        for ( int i = mNumMarkers - 1; i >= 0; i-- )
+        {
+            mCellMarkers[--mCellStart[mCellOf[i] + 1]] = i;
+        }
+
+        // The fill pointers ended at the start of each cell, one entry late
+        System.arraycopy ( mCellStart, 1, mCellStart, 0, numCells );
+        mCellStart[numCells] = mNumMarkers;
+        mNumMoved = 0;
+        mIndexDirty = false;
+    }
+
+    //
+    ///
+    /// \brief Find the markers inside a view box
+    /// \param west, south, east, north Box in degrees; west > east crosses
+    ///    the antimeridian
+    /// \param ids Receives the ids of the markers, at most ids.length
+    /// \return Number of markers found, which may exceed ids.length
+    //
+    public int query ( double west, double south, double east, double north, int[] ids )
+    {
+        mQueryIds = ids;
+        mQueryCount = 0;
+        visit ( west, south, east, north, null, 0 );
+        mQueryIds = null;
+        return mQueryCount;
+    }
+
+    //
+    ///
+    /// \brief Cluster the markers inside a view box
+    /// \param zoom Cluster grid level, 0 for cells of 360 / CLUSTER_GRID
+    ///    degrees
+    /// \param west, south, east, north Box in degrees, see query()
+    /// \param clusters Receives the clusters
+    //
+    public void cluster ( int zoom, double west, double south, double east, double north, Clusters clusters )
+    {
+        clusters.clear();
+        visit ( west, south, east, north, clusters, zoom );
+    }
+
+    //
+    ///
+    /// \brief Size in degrees of the cluster cells of a zoom level
+    //
+    public static double getClusterCellSize ( int zoom )
+    {
+        return 360.0 / ( ( long ) CLUSTER_GRID << zoom );
+    }
+
+    // Visit the markers in a box, either collecting their ids or adding them
+    // to the clusters of a zoom level
+    private void visit ( double west, double south, double east, double north, Clusters clusters, int zoom )
+    {
+        if ( mIndexDirty )
+        {
+            throw new IllegalStateException ( "Marker index is out of date" );
+        }
+
+        if ( west > east )
+        {
+            visitRange ( west, south, 180.0, north, clusters, zoom );
+            visitRange ( -180.0, south, east, north, clusters, zoom );
+        }
+        else
+        {
+            visitRange ( west, south, east, north, clusters, zoom );
+        }
+    }
+
+    private void visitRange ( double west, double south, double east, double north, Clusters clusters, int zoom )
+    {
+        int col0 = indexColumn ( west ), col1 = indexColumn ( east );
+        int row0 = indexRow ( south ), row1 = indexRow ( north );
+        double invCellSize = 1.0 / getClusterCellSize ( zoom );
+
+        // Index cells per cluster cell along each axis, 0 if the cluster
+        // cells are smaller
+        int shift = INDEX_SHIFT - zoom;
+
+        for ( int row = row0; row <= row1; row++ )
+        {
+            for ( int col = col0; col <= col1; col++ )
+            {
+                int cell = row * INDEX_X + col;
+
+                // Border cells need a test per marker
+                boolean inside = row > row0 && row < row1 && col > col0 && col < col1;
+
+                if ( clusters != null && inside && shift >= 0 )
+                {
+                    int count = mCellCount[cell];
+
+                    if ( count > 0 )
+                    {
+                        int slot = clusters.slot ( ( ( long ) ( col >> shift ) << 32 ) | ( row >> shift ) );
+
+                        clusters.mSumLon[slot] += mCellSumLon[cell];
+                        clusters.mSumLat[slot] += mCellSumLat[cell];
+                        clusters.mCount[slot] += count;
+                    }
+
+                    continue;
+                }
+
+                for ( int m = mCellStart[cell]; m < mCellStart[cell + 1]; m++ )
+                {
+                    int id = mCellMarkers[m];
+
+                    // Moved markers are visited from the overlay
+                    if ( mCellOf[id] != MOVED )
+                    {
+                        visitMarker ( id, col, row, inside, west, south, east, north, clusters, shift, invCellSize );
+                    }
+                }
+            }
+        }
+
+        // The moved markers as if they were in the cells they moved to
+        for ( int i = 0; i < mNumMoved; i++ )
+        {
+            int id = mMoved[i];
+            int col = indexColumn ( mLon[id] );
+            int row = indexRow ( mLat[id] );
+
+            if ( col >= col0 && col <= col1 && row >= row0 && row <= row1 )
+            {
+                boolean inside = row > row0 && row < row1 && col > col0 && col < col1;
+
+                visitMarker ( id, col, row, inside, west, south, east, north, clusters, shift, invCellSize );
+            }
+        }
+    }
+
+    // Collect or cluster one marker of index cell ( col, row )
+    private void visitMarker ( int id, int col, int row, boolean inside, double west, double south, double east,
+                               double north, Clusters clusters, int shift, double invCellSize )
+    {
+        double lon = mLon[id];
+        double lat = mLat[id];
+
+        if ( !inside && ( lon < west || lon > east || lat < south || lat > north ) )
+        {
+            return;
+        }
+
+        if ( clusters == null )
+        {
+            if ( mQueryCount < mQueryIds.length )
+            {
+                mQueryIds[mQueryCount] = id;
+            }
+
+            mQueryCount++;
+            return;
+        }
+
+        // Same cells as the whole index cells in visitRange()
+        long cx = ( shift >= 0 ) ? col >> shift : ( long ) ( ( lon + 180.0 ) * invCellSize );
+        long cy = ( shift >= 0 ) ? row >> shift : ( long ) ( ( lat + 90.0 ) * invCellSize );
+        int slot = clusters.slot ( ( cx << 32 ) | cy );
+
+        clusters.mSumLon[slot] += lon;
+        clusters.mSumLat[slot] += lat;
+        clusters.mCount[slot]++;
+    }
+
+    private static int indexColumn ( double lon )
+    {
+        return Math.max ( 0, Math.min ( INDEX_X - 1, ( int ) ( ( lon + 180.0 ) * ( INDEX_X / 360.0 ) ) ) );
+    }
+
+    private static int indexRow ( double lat )
+    {
+        return Math.max ( 0, Math.min ( INDEX_Y - 1, ( int ) ( ( lat + 90.0 ) * ( INDEX_Y / 180.0 ) ) ) );
+    }
+
+    // Member variables
+    private final double[] mLon;
+    private final double[] mLat;
+    private int mNumMarkers;
+
+    // Grid index: the markers of cell c are mCellMarkers[mCellStart[c] ..
+    // mCellStart[c + 1]), less those whose mCellOf is MOVED.  mCellCount
+    // and the sums only cover the markers still in the cell.
+    private final int[] mCellStart;
+    private final int[] mCellCount;
+    private final int[] mCellMarkers;
+    private final int[] mCellOf;
+    private final double[] mCellSumLon;
+    private final double[] mCellSumLat;
+    private boolean mIndexDirty;
+
+    // Overlay of the markers moved out of their index cell
+    private final int[] mMoved;
+    private int mNumMoved;
+
+    // Output of query()
+    private int[] mQueryIds;
+    private int mQueryCount;
+
+    // Some constants
+    private static final int INDEX_X = 1024;
+    private static final int INDEX_Y = 512;
+
+    // The overlay holds up to 1 / OVERLAY_FRACTION of the markers
+    private static final int OVERLAY_FRACTION = 64;
+    private static final int MOVED = -1;
+
+    // Zoom level whose cluster cells are the index cells, INDEX_X = CLUSTER_GRID << INDEX_SHIFT
+    private static final int INDEX_SHIFT = 7;
+}
@@ -0,0 +1,653 @@
+package edu.gatech.gtri.common;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief 3D gradient noise, as the noise3D() of the Noise3D sample, and
+///    noise volumes generated in parallel.
+///
+/// The noise is that of the book: a 256-entry permutation hashes the
+/// lattice points into a table of 256 gradients, blended with the quintic
+/// fade 6t^5 - 15t^4 + 10t^3.  It is evaluated at a point, optionally
+/// periodic, or along a row of points in x, none of which allocate.
+///
+/// A volume is generated slice by slice in z on a ForkJoinPool.  The
+/// lattice cells and fade weights of the voxel coordinates, the same on
+/// all three axes, are computed once per volume, the hashes once per row,
+/// and the gradients with their y and z terms once per lattice cell of a
+/// row, leaving an x term per corner and the blends per voxel.  Each
+/// slice keeps its own min and max while it is evaluated, so normalizing
+/// needs no separate search; the volume is then written as bytes, x
+/// fastest then y then z, as GL_R8 wants it.  A tileable volume has an
+/// integer number of lattice cells along each axis, wrapped, so that it
+/// repeats without seams.
+///
+/// The dot products sum z, y then x, so that the voxel values are those
+/// of noise3D() at the same points, to the bit, whatever the number of
+/// threads.
+///
+/// A shader can evaluate the same noise from the tables packed by
+/// getTableTexels() and write a volume into a GL_R8 3D texture, as the
+/// Noise3D sample does.  Such a volume is quantized over the fixed range
+/// [-RANGE, RANGE] rather than over its min and max, which a shader does
+/// not know; createVolume() with a range produces the reference bytes on
+/// the CPU, to compare the GPU volume with or to stand in for it.
+///
+/// This class has no Android dependencies.
+//
+public class ESNoise3D
+{
+    // Entries of the permutation and gradient tables
+    public static final int TABLE_SIZE = 256;
+
+    // Voxels per task of a parallel volume, at least one slice
+    public static final int CHUNK = 16384;
+
+    // Bound of the noise, sqrt ( 3 ) / 2 for unit gradients
+    public static final float RANGE = 0.8660254f;
+
+    //
+    ///
+    /// \brief Create noise from a seed, a random permutation and gradients
+    ///    uniform over the sphere, on the common ForkJoinPool
+    //
+    public ESNoise3D ( long seed )
+    {
+        this ( randomPermutation ( seed ), randomGradients ( seed ), ForkJoinPool.commonPool() );
+    }
+
+    //
+    ///
+    /// \brief Create noise from given tables
+    /// \param permTable Permutation of 0 to 255
+    /// \param gradientTable Gradient of each hash, x, y, z each
+    /// \param pool Pool to generate volumes on, or null to generate them
+    ///    on the calling thread
+    //
+    public ESNoise3D ( short[] permTable, float[] gradientTable, ForkJoinPool pool )
+    {
+        if ( permTable.length != TABLE_SIZE || gradientTable.length != TABLE_SIZE * 3 )
+        {
+            throw new IllegalArgumentException ( "Noise tables must have " + TABLE_SIZE + " entries" );
+        }
+
+        mPerm = new int[TABLE_SIZE];
+        mGradients = gradientTable.clone();
+        mPool = pool;
+
+        for ( int i = 0; i < TABLE_SIZE; i++ )
+        {
+            mPerm[i] = permTable[i] & MASK;
+        }
+    }
+
+    // The tables, not to be modified
+    public int[] getPermTable() { return mPerm; }
+    public float[] getGradientTable() { return mGradients; }
+
+    //
+    ///
+    /// \brief Noise at a point, in about [-1, 1]
+    //
+    public float noise3D ( float x, float y, float z )
+    {
+        int ix = ( int ) Math.floor ( x );
+        int iy = ( int ) Math.floor ( y );
+        int iz = ( int ) Math.floor ( z );
+
+        return noise ( ix, ix + 1, x - ix, iy, iy + 1, y - iy, iz, iz + 1, z - iz );
+    }
+
+    //
+    ///
+    /// \brief Noise at a point, repeating every period along each axis
+    /// \param period Lattice cells per repeat, 1 to TABLE_SIZE
+    //
+    public float noise3D ( float x, float y, float z, int period )
+    {
+        checkPeriod ( period );
+
+        int ix = ( int ) Math.floor ( x );
+        int iy = ( int ) Math.floor ( y );
+        int iz = ( int ) Math.floor ( z );
+        int px = Math.floorMod ( ix, period );
+        int py = Math.floorMod ( iy, period );
+        int pz = Math.floorMod ( iz, period );
+
+        return noise ( px, next ( px, period ), x - ix,
+                       py, next ( py, period ), y - iy,
+                       pz, next ( pz, period ), z - iz );
+    }
+
+    //
+    ///
+    /// \brief Noise along a row in x, noise3D ( x + i * dx, y, z ) for i
+    ///    from 0 to count - 1, the row in y and z hashed once
+    /// \param period Lattice cells per repeat, or 0 for no repeat
+    //
+    public void noise3D ( float[] out, int offset, int count, float x, float dx, float y, float z, int period )
+    {
+        if ( period != 0 )
+        {
+            checkPeriod ( period );
+        }
+
+        int iy = ( int ) Math.floor ( y );
+        int iz = ( int ) Math.floor ( z );
+        int y0 = period == 0 ? iy : Math.floorMod ( iy, period );
+        int z0 = period == 0 ? iz : Math.floorMod ( iz, period );
+        int y1 = period == 0 ? y0 + 1 : next ( y0, period );
+        int z1 = period == 0 ? z0 + 1 : next ( z0, period );
+        float fy0 = y - iy, fz0 = z - iz;
+        float wy = fade ( fy0 ), wz = fade ( fz0 );
+        int hz0 = mPerm[z0 & MASK];
+        int hz1 = mPerm[z1 & MASK];
+        int h00 = mPerm[( y0 + hz0 ) & MASK];
+        int h10 = mPerm[( y1 + hz0 ) & MASK];
+        int h01 = mPerm[( y0 + hz1 ) & MASK];
+        int h11 = mPerm[( y1 + hz1 ) & MASK];
+
+        for ( int i = 0; i < count; i++ )
+        {
+            float px = x + i * dx;
+            int ix = ( int ) Math.floor ( px );
+            int x0 = period == 0 ? ix : Math.floorMod ( ix, period );
+            int x1 = period == 0 ? x0 + 1 : next ( x0, period );
+            float fx0 = px - ix;
+
+            out[offset + i] = blend ( x0, x1, fx0, fade ( fx0 ), h00, h10, h01, h11, fy0, wy, fz0, wz );
+        }
+    }
+
+    //
+    ///
+    /// \brief Generate a noise volume of floats, voxel ( x, y, z ) at
+    ///    noise3D ( x / size * frequency, ... )
+    /// \param out Voxels, size^3 or more, x fastest
+    /// \param size Voxels along each axis
+    /// \param frequency Lattice cells along each axis, rounded to an
+    ///    integer when tileable
+    /// \param tileable Whether the volume repeats without seams
+    //
+    public void createVolume ( float[] out, int size, float frequency, boolean tileable )
+    {
+        if ( size <= 0 || out.length < ( long ) size * size * size )
+        {
+            throw new IllegalArgumentException ( "Invalid volume size " + size );
+        }
+
+        int period = tileable ? Math.min ( TABLE_SIZE, Math.max ( 1, Math.round ( frequency ) ) ) : 0;
+
+        prepare ( size, tileable ? period : frequency, period );
+
+        SliceTask task = new SliceTask ( out, size, 0, size, Math.max ( 1, CHUNK / ( size * size ) ) );
+
+        if ( mPool != null )
+        {
+            mPool.invoke ( task );
+        }
+        else
+        {
+            task.compute();
+        }
+
+        mMin = Float.MAX_VALUE;
+        mMax = -Float.MAX_VALUE;
+
+        for ( int z = 0; z < size; z++ )
+        {
+            mMin = Math.min ( mMin, mSliceMin[z] );
+            mMax = Math.max ( mMax, mSliceMax[z] );
+        }
+    }
+
+    //
+    ///
+    /// \brief Generate a noise volume as GL_R8 bytes, from 0 at the
+    ///    minimum to 255 at the maximum, put at the position of the
+    ///    buffer, which is advanced
+    //
+    public void createVolume ( ByteBuffer out, int size, float frequency, boolean tileable )
+    {
+        int voxels = size * size * size;
+
+        if ( out.remaining() < voxels )
+        {
+            throw new IllegalArgumentException ( "Buffer too small for a volume of " + size );
+        }
+
+        if ( mValues == null || mValues.length < voxels )
+        {
+            mValues = new float[voxels];
+        }
+
+        createVolume ( mValues, size, frequency, tileable );
+
+        float scale = mMax > mMin ? 255.0f / ( mMax - mMin ) : 0.0f;
+
+        quantize ( out, size, mMin, scale, false );
+    }
+
+    //
+    ///
+    /// \brief Generate a noise volume as GL_R8 bytes over a fixed range,
+    ///    the bytes of a shader that writes clamp ( ( v - min ) / ( max -
+    ///    min ), 0, 1 ) to a GL_R8 target, rounded to nearest.  Put at the
+    ///    position of the buffer, which is advanced.
+    /// \param min, max Noise at 0 and 255, e.g. -RANGE and RANGE
+    //
+    public void createVolume ( ByteBuffer out, int size, float frequency, boolean tileable, float min, float max )
+    {
+        int voxels = size * size * size;
+
+        if ( out.remaining() < voxels )
+        {
+            throw new IllegalArgumentException ( "Buffer too small for a volume of " + size );
+        }
+
+        if ( !( max > min ) )
+        {
+            throw new IllegalArgumentException ( "Empty noise range" );
+        }
+
+        if ( mValues == null || mValues.length < voxels )
+        {
+            mValues = new float[voxels];
+        }
+
+        createVolume ( mValues, size, frequency, tileable );
+        quantize ( out, size, min, 1.0f / ( max - min ), true );
+    }
+
+    //
+    ///
+    /// \brief Put the tables as TABLE_SIZE x 1 GL_RGBA32F texels at the
+    ///    position of the buffer, and advance it: texel i holds gradient i
+    ///    in x, y, z and entry i of the permutation in w
+    //
+    public void getTableTexels ( FloatBuffer out )
+    {
+        for ( int i = 0; i < TABLE_SIZE; i++ )
+        {
+            out.put ( mGradients[i * 3] ).put ( mGradients[i * 3 + 1] ).put ( mGradients[i * 3 + 2] ).put ( mPerm[i] );
+        }
+    }
+
+    //
+    ///
+    /// \brief Greatest difference between two byte volumes, e.g. one read
+    ///    back from the GPU and its reference, from index 0 of each
+    //
+    public static int maxDifference ( ByteBuffer a, ByteBuffer b, int count )
+    {
+        int max = 0;
+
+        for ( int i = 0; i < count; i++ )
+        {
+            max = Math.max ( max, Math.abs ( ( a.get ( i ) & 0xFF ) - ( b.get ( i ) & 0xFF ) ) );
+        }
+
+        return max;
+    }
+
+    //
+    ///
+    /// \brief Least and greatest noise of the last volume generated
+    //
+    public float getMin() { return mMin; }
+    public float getMax() { return mMax; }
+
+    //
+    ///
+    /// \brief Forget the float volume kept between byte volumes
+    //
+    public void releaseVolume()
+    {
+        mValues = null;
+    }
+
+    // Bytes of the float volume at the position of the buffer, scaled from
+    // offset and truncated, or rounded to nearest and clamped
+    private void quantize ( ByteBuffer out, int size, float offset, float scale, boolean round )
+    {
+        QuantizeTask task = new QuantizeTask ( out, out.position(), size, 0, size,
+                                               Math.max ( 1, CHUNK / ( size * size ) ), offset, scale, round );
+
+        if ( mPool != null )
+        {
+            mPool.invoke ( task );
+        }
+        else
+        {
+            task.compute();
+        }
+
+        out.position ( out.position() + size * size * size );
+    }
+
+    // Noise in the cell of lattice points ( x0 or x1, y0 or y1, z0 or z1 )
+    // at offset ( fx, fy, fz ) from the first
+    private float noise ( int x0, int x1, float fx0, int y0, int y1, float fy0, int z0, int z1, float fz0 )
+    {
+        int hz0 = mPerm[z0 & MASK];
+        int hz1 = mPerm[z1 & MASK];
+        int h00 = mPerm[( y0 + hz0 ) & MASK];
+        int h10 = mPerm[( y1 + hz0 ) & MASK];
+        int h01 = mPerm[( y0 + hz1 ) & MASK];
+        int h11 = mPerm[( y1 + hz1 ) & MASK];
+
+        return blend ( x0, x1, fx0, fade ( fx0 ), h00, h10, h01, h11, fy0, fade ( fy0 ), fz0, fade ( fz0 ) );
+    }
+
+    // The gradients of the eight corners, hashed from x and the row hashes
+    // h<y><z>, dotted with the offsets and blended; all paths take the
+    // same steps, so that they agree to the bit
+    private float blend ( int x0, int x1, float fx0, float wx, int h00, int h10, int h01, int h11,
+                          float fy0, float wy, float fz0, float wz )
+    {
+        float fx1 = fx0 - 1, fy1 = fy0 - 1, fz1 = fz0 - 1;
+        float vy0, vy1, vz0, vz1;
+
+        vy0 = lerp ( wx, dot ( x0 + h00, fx0, fy0, fz0 ), dot ( x1 + h00, fx1, fy0, fz0 ) );
+        vy1 = lerp ( wx, dot ( x0 + h10, fx0, fy1, fz0 ), dot ( x1 + h10, fx1, fy1, fz0 ) );
+        vz0 = lerp ( wy, vy0, vy1 );
+
+        vy0 = lerp ( wx, dot ( x0 + h01, fx0, fy0, fz1 ), dot ( x1 + h01, fx1, fy0, fz1 ) );
+        vy1 = lerp ( wx, dot ( x0 + h11, fx0, fy1, fz1 ), dot ( x1 + h11, fx1, fy1, fz1 ) );
+        vz1 = lerp ( wy, vy0, vy1 );
+
+        return lerp ( wz, vz0, vz1 );
+    }
+
+    // Gradient dotted with an offset, z and y first, as the volume does
+    private float dot ( int hash, float fx, float fy, float fz )
+    {
+        int g = ( hash & MASK ) * 3;
+
+        return mGradients[g + 2] * fz + mGradients[g + 1] * fy + mGradients[g] * fx;
+    }
+
+    private static float fade ( float t )
+    {
+        return t * t * t * ( t * ( t * 6.0f - 15.0f ) + 10.0f );
+    }
+
+    private static float lerp ( float t, float a, float b )
+    {
+        return a + t * ( b - a );
+    }
+
+    private static int next ( int cell, int period )
+    {
+        return cell + 1 == period ? 0 : cell + 1;
+    }
+
+    private static void checkPeriod ( int period )
+    {
+        if ( period < 1 || period > TABLE_SIZE )
+        {
+            throw new IllegalArgumentException ( "Invalid noise period " + period );
+        }
+    }
+
+    // Lattice cells, offsets and weights of the voxel coordinates, and the
+    // room for the slice min and max
+    private void prepare ( int size, float frequency, int period )
+    {
+        if ( mCell0 == null || mCell0.length != size )
+        {
+            mCell0 = new int[size];
+            mCell1 = new int[size];
+            mFraction = new float[size];
+            mFade = new float[size];
+            mSliceMin = new float[size];
+            mSliceMax = new float[size];
+        }
+
+        for ( int i = 0; i < size; i++ )
+        {
+            float position = ( float ) i / ( float ) size * frequency;
+            int cell = ( int ) Math.floor ( position );
+
+            mFraction[i] = position - cell;
+            mFade[i] = fade ( mFraction[i] );
+
+            if ( period == 0 )
+            {
+                mCell0[i] = cell;
+                mCell1[i] = cell + 1;
+            }
+            else
+            {
+                mCell0[i] = Math.floorMod ( cell, period );
+                mCell1[i] = next ( mCell0[i], period );
+            }
+        }
+    }
+
+    // Voxels of slices first to last - 1, and their min and max.  Along a
+    // row the corner gradients and their y and z terms only change with
+    // the lattice cell in x, leaving an x term per corner and the blends
+    // per voxel.
+    private void createSlices ( float[] out, int size, int first, int last )
+    {
+        int[] cell0 = mCell0, cell1 = mCell1;
+        float[] fraction = mFraction, weight = mFade, gradients = mGradients;
+
+        for ( int z = first; z < last; z++ )
+        {
+            float fz0 = fraction[z], fz1 = fz0 - 1, wz = weight[z];
+            int hz0 = mPerm[cell0[z] & MASK];
+            int hz1 = mPerm[cell1[z] & MASK];
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+
+            for ( int y = 0; y < size; y++ )
+            {
+                float fy0 = fraction[y], fy1 = fy0 - 1, wy = weight[y];
+                int h00 = mPerm[( cell0[y] + hz0 ) & MASK];
+                int h10 = mPerm[( cell1[y] + hz0 ) & MASK];
+                int h01 = mPerm[( cell0[y] + hz1 ) & MASK];
+                int h11 = mPerm[( cell1[y] + hz1 ) & MASK];
+                int index = ( z * size + y ) * size;
+                int cell = -1;
+
+                // Per corner: x of the gradient, and its y and z terms
+                float gx0 = 0, gx1 = 0, gx2 = 0, gx3 = 0, gx4 = 0, gx5 = 0, gx6 = 0, gx7 = 0;
+                float c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0, c6 = 0, c7 = 0;
+
+                for ( int x = 0; x < size; x++ )
+                {
+                    if ( cell0[x] != cell )
+                    {
+                        int x0 = cell = cell0[x], x1 = cell1[x], g;
+
+                        g = ( ( x0 + h00 ) & MASK ) * 3;
+                        gx0 = gradients[g];
+                        c0 = gradients[g + 2] * fz0 + gradients[g + 1] * fy0;
+                        g = ( ( x1 + h00 ) & MASK ) * 3;
+                        gx1 = gradients[g];
+                        c1 = gradients[g + 2] * fz0 + gradients[g + 1] * fy0;
+                        g = ( ( x0 + h10 ) & MASK ) * 3;
+                        gx2 = gradients[g];
+                        c2 = gradients[g + 2] * fz0 + gradients[g + 1] * fy1;
+                        g = ( ( x1 + h10 ) & MASK ) * 3;
+                        gx3 = gradients[g];
+                        c3 = gradients[g + 2] * fz0 + gradients[g + 1] * fy1;
+                        g = ( ( x0 + h01 ) & MASK ) * 3;
+                        gx4 = gradients[g];
+                        c4 = gradients[g + 2] * fz1 + gradients[g + 1] * fy0;
+                        g = ( ( x1 + h01 ) & MASK ) * 3;
+                        gx5 = gradients[g];
+                        c5 = gradients[g + 2] * fz1 + gradients[g + 1] * fy0;
+                        g = ( ( x0 + h11 ) & MASK ) * 3;
+                        gx6 = gradients[g];
+                        c6 = gradients[g + 2] * fz1 + gradients[g + 1] * fy1;
+                        g = ( ( x1 + h11 ) & MASK ) * 3;
+                        gx7 = gradients[g];
+                        c7 = gradients[g + 2] * fz1 + gradients[g + 1] * fy1;
+                    }
+
+                    float fx0 = fraction[x], fx1 = fx0 - 1, wx = weight[x];
+                    float vy0 = lerp ( wx, c0 + gx0 * fx0, c1 + gx1 * fx1 );
+                    float vy1 = lerp ( wx, c2 + gx2 * fx0, c3 + gx3 * fx1 );
+                    float vz0 = lerp ( wy, vy0, vy1 );
+
+                    vy0 = lerp ( wx, c4 + gx4 * fx0, c5 + gx5 * fx1 );
+                    vy1 = lerp ( wx, c6 + gx6 * fx0, c7 + gx7 * fx1 );
+
+                    float value = lerp ( wz, vz0, lerp ( wy, vy0, vy1 ) );
+
+                    min = Math.min ( min, value );
+                    max = Math.max ( max, value );
+                    out[index + x] = value;
+                }
+            }
+
+            mSliceMin[z] = min;
+            mSliceMax[z] = max;
+        }
+    }
+
+    // Splits slices in halves down to a few, evaluated in parallel
+    private final class SliceTask extends RecursiveAction
+    {
+        SliceTask ( float[] out, int size, int first, int last, int slices )
+        {
+            mOut = out;
+            mSize = size;
+            mFirst = first;
+            mLast = last;
+            mSlices = slices;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mLast - mFirst > mSlices )
+            {
+                int middle = ( mFirst + mLast ) >>> 1;
+                invokeAll ( new SliceTask ( mOut, mSize, mFirst, middle, mSlices ),
+                            new SliceTask ( mOut, mSize, middle, mLast, mSlices ) );
+            }
+            else
+            {
+                createSlices ( mOut, mSize, mFirst, mLast );
+            }
+        }
+
+        private final float[] mOut;
+        private final int mSize, mFirst, mLast, mSlices;
+    }
+
+    // Splits slices in halves down to a few, written as bytes in parallel
+    // at absolute indices
+    private final class QuantizeTask extends RecursiveAction
+    {
+        QuantizeTask ( ByteBuffer out, int base, int size, int first, int last, int slices,
+                       float offset, float scale, boolean round )
+        {
+            mOut = out;
+            mBase = base;
+            mSize = size;
+            mFirst = first;
+            mLast = last;
+            mSlices = slices;
+            mOffset = offset;
+            mScale = scale;
+            mRound = round;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mLast - mFirst > mSlices )
+            {
+                int middle = ( mFirst + mLast ) >>> 1;
+                invokeAll ( new QuantizeTask ( mOut, mBase, mSize, mFirst, middle, mSlices, mOffset, mScale, mRound ),
+                            new QuantizeTask ( mOut, mBase, mSize, middle, mLast, mSlices, mOffset, mScale, mRound ) );
+                return;
+            }
+
+            float[] values = mValues;
+            float offset = mOffset;
+            int first = mFirst * mSize * mSize;
+            int last = mLast * mSize * mSize;
+
+            if ( mRound )
+            {
+                for ( int i = first; i < last; i++ )
+                {
+                    float unit = Math.max ( 0.0f, Math.min ( 1.0f, ( values[i] - offset ) * mScale ) );
+
+                    mOut.put ( mBase + i, ( byte ) ( unit * 255.0f + 0.5f ) );
+                }
+            }
+            else
+            {
+                for ( int i = first; i < last; i++ )
+                {
+                    mOut.put ( mBase + i, ( byte ) ( ( values[i] - offset ) * mScale ) );
+                }
+            }
+        }
+
+        private final ByteBuffer mOut;
+        private final int mBase, mSize, mFirst, mLast, mSlices;
+        private final float mOffset, mScale;
+        private final boolean mRound;
+    }
+
+    private static short[] randomPermutation ( long seed )
+    {
+        ESRandom random = ESRandom.create ( seed );
+        short[] perm = new short[TABLE_SIZE];
+
+        for ( int i = 0; i < TABLE_SIZE; i++ )
+        {
+            perm[i] = ( short ) i;
+        }
+
+        // Fisher-Yates
+        for ( int i = TABLE_SIZE - 1; i > 0; i-- )
+        {
+            int j = random.nextInt ( i + 1 );
+            short swap = perm[i];
+
+            perm[i] = perm[j];
+            perm[j] = swap;
+        }
+
+        return perm;
+    }
+
+    private static float[] randomGradients ( long seed )
+    {
+        float[] gradients = new float[TABLE_SIZE * 3];
+
+        ESRandom.create ( seed ).split().fillSphere ( gradients, 0, TABLE_SIZE, 1.0f );
+        return gradients;
+    }
+
+    // Member variables
+    private final int[] mPerm;
+    private final float[] mGradients;
+    private final ForkJoinPool mPool;
+
+    // Per voxel coordinate: lattice cells, offset in the first and its fade
+    private int[] mCell0, mCell1;
+    private float[] mFraction, mFade;
+
+    // Min and max of each slice, and of the last volume
+    private float[] mSliceMin, mSliceMax;
+    private float mMin, mMax;
+
+    // Float volume behind the last byte volume
+    private float[] mValues;
+
+    // Some constants
+    private static final int MASK = TABLE_SIZE - 1;
+}
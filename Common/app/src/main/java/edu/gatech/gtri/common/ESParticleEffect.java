@@ -0,0 +1,448 @@
+package edu.gatech.gtri.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+//
+/// \brief Description of a particle effect: emitters, their rates and
+///    forces, textures and curves over the life of the particles.
+///
+/// Each emitter drives one ESParticleSimulation: particles spawn around
+/// an offset from the effect position for a duration, or for ever, with
+/// the lifetime, velocity and forces of the simulation.  Curves give the
+/// point size and the color of a particle as functions of its age over
+/// its lifetime, t in [0, 1].  A curve is set by keys, linear in between
+/// and constant past the ends, and baked into a table of CURVE_SAMPLES
+/// samples at once: sampling a table costs a lerp, and tables go to a
+/// shader as uniform arrays as they are.
+///
+/// Effects are stored in a compact binary format by write() and loaded
+/// by read(), which bakes the curves, so the samples ship them as assets.
+/// Emitters name their texture, shared by all those naming it.
+///
+/// This class has no Android dependencies.
+//
+public class ESParticleEffect
+{
+    // Curves of an emitter: point size in pixels, and color
+    public static final int SIZE = 0;
+    public static final int RED = 1;
+    public static final int GREEN = 2;
+    public static final int BLUE = 3;
+    public static final int ALPHA = 4;
+    public static final int NUM_CURVES = 5;
+
+    // Samples of a baked curve, the size of the uniform arrays of shaders
+    public static final int CURVE_SAMPLES = 64;
+
+    //
+    ///
+    /// \brief One emitter of an effect.  Curves default to a constant 1.
+    //
+    public static class Emitter
+    {
+        public Emitter ( String texture, int maxParticles )
+        {
+            if ( maxParticles <= 0 )
+            {
+                throw new IllegalArgumentException ( "Invalid emitter capacity " + maxParticles );
+            }
+
+            mTexture = texture;
+            mMaxParticles = maxParticles;
+
+            for ( int curve = 0; curve < NUM_CURVES; curve++ )
+            {
+                setCurve ( curve, new float[] { 0.0f }, new float[] { 1.0f } );
+            }
+        }
+
+        //
+        ///
+        /// \brief Set the particles spawned per second, for a duration
+        /// \param duration Seconds of emission, 0 for ever
+        //
+        public void setEmission ( float rate, float duration )
+        {
+            mEmitRate = Math.max ( 0.0f, rate );
+            mDuration = Math.max ( 0.0f, duration );
+        }
+
+        public void setLifetime ( float min, float max )
+        {
+            mLifetimeMin = min;
+            mLifetimeMax = Math.max ( min, max );
+        }
+
+        //
+        ///
+        /// \brief Set where particles spawn: a cube of a half size around an
+        ///    offset from the effect position
+        //
+        public void setShape ( float x, float y, float z, float radius )
+        {
+            mOffset[0] = x;
+            mOffset[1] = y;
+            mOffset[2] = z;
+            mRadius = radius;
+        }
+
+        public void setVelocity ( float vx, float vy, float vz, float spread )
+        {
+            mVelocity[0] = vx;
+            mVelocity[1] = vy;
+            mVelocity[2] = vz;
+            mVelocity[3] = spread;
+        }
+
+        public void setForces ( float gx, float gy, float gz, float drag, float noise )
+        {
+            mGravity[0] = gx;
+            mGravity[1] = gy;
+            mGravity[2] = gz;
+            mDrag = drag;
+            mNoise = noise;
+        }
+
+        //
+        ///
+        /// \brief Blend the particles additively, or over each other
+        //
+        public void setAdditive ( boolean additive )
+        {
+            mAdditive = additive;
+        }
+
+        //
+        ///
+        /// \brief Set a curve by keys and bake it
+        /// \param curve SIZE, RED, GREEN, BLUE or ALPHA
+        /// \param times Increasing times of the keys in [0, 1]
+        /// \param values Values at the keys
+        //
+        public void setCurve ( int curve, float[] times, float[] values )
+        {
+            if ( times.length == 0 || times.length != values.length )
+            {
+                throw new IllegalArgumentException ( "Invalid curve keys" );
+            }
+
+            for ( int i = 1; i < times.length; i++ )
+            {
+                if ( times[i] < times[i - 1] )
+                {
+                    throw new IllegalArgumentException ( "Curve keys out of order" );
+                }
+            }
+
+            mKeyTimes[curve] = times.clone();
+            mKeyValues[curve] = values.clone();
+            bake ( mKeyTimes[curve], mKeyValues[curve], mTables[curve] );
+
+            if ( curve != SIZE )
+            {
+                for ( int i = 0; i < CURVE_SAMPLES; i++ )
+                {
+                    mColorTable[i * 4 + curve - RED] = mTables[curve][i];
+                }
+            }
+        }
+
+        //
+        ///
+        /// \brief Configure a simulation of a pool of getMaxParticles() as the
+        ///    emitter, the effect at a position, emitting or not
+        //
+        public void apply ( ESParticleSimulation simulation, float x, float y, float z, boolean emitting )
+        {
+            simulation.setEmitter ( x + mOffset[0], y + mOffset[1], z + mOffset[2], mRadius );
+            simulation.setEmitVelocity ( mVelocity[0], mVelocity[1], mVelocity[2], mVelocity[3] );
+            simulation.setEmitRate ( emitting ? mEmitRate : 0.0f );
+            simulation.setLifetime ( mLifetimeMin, mLifetimeMax );
+            simulation.setGravity ( mGravity[0], mGravity[1], mGravity[2] );
+            simulation.setDrag ( mDrag );
+            simulation.setNoise ( mNoise );
+        }
+
+        public String getTexture() { return mTexture; }
+        public int getMaxParticles() { return mMaxParticles; }
+        public float getEmitRate() { return mEmitRate; }
+        public float getDuration() { return mDuration; }
+        public boolean isAdditive() { return mAdditive; }
+
+        //
+        ///
+        /// \brief Baked curve, CURVE_SAMPLES values from t = 0 to t = 1
+        //
+        public float[] getTable ( int curve ) { return mTables[curve]; }
+
+        //
+        ///
+        /// \brief Baked color curves interleaved, RGBA per sample, for a vec4
+        ///    uniform array
+        //
+        public float[] getColorTable() { return mColorTable; }
+
+        private void write ( DataOutputStream out ) throws IOException
+        {
+            out.writeUTF ( mTexture );
+            out.writeInt ( mMaxParticles );
+            out.writeFloat ( mEmitRate );
+            out.writeFloat ( mDuration );
+            out.writeFloat ( mLifetimeMin );
+            out.writeFloat ( mLifetimeMax );
+
+            for ( float value : mOffset )
+            {
+                out.writeFloat ( value );
+            }
+
+            out.writeFloat ( mRadius );
+
+            for ( float value : mVelocity )
+            {
+                out.writeFloat ( value );
+            }
+
+            for ( float value : mGravity )
+            {
+                out.writeFloat ( value );
+            }
+
+            out.writeFloat ( mDrag );
+            out.writeFloat ( mNoise );
+            out.writeBoolean ( mAdditive );
+
+            for ( int curve = 0; curve < NUM_CURVES; curve++ )
+            {
+                out.writeInt ( mKeyTimes[curve].length );
+
+                for ( int i = 0; i < mKeyTimes[curve].length; i++ )
+                {
+                    out.writeFloat ( mKeyTimes[curve][i] );
+                    out.writeFloat ( mKeyValues[curve][i] );
+                }
+            }
+        }
+
+        private static Emitter read ( DataInputStream in ) throws IOException
+        {
+            String texture = in.readUTF();
+            int maxParticles = in.readInt();
+
+            if ( maxParticles <= 0 || maxParticles > ESParticleSimulation.MAX_CAPACITY )
+            {
+                throw new IOException ( "Invalid emitter capacity " + maxParticles );
+            }
+
+            Emitter emitter = new Emitter ( texture, maxParticles );
+            float rate = in.readFloat();
+
+            emitter.setEmission ( rate, in.readFloat() );
+
+            float lifetimeMin = in.readFloat();
+
+            emitter.setLifetime ( lifetimeMin, in.readFloat() );
+            emitter.setShape ( in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat() );
+            emitter.setVelocity ( in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat() );
+            emitter.setForces ( in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat() );
+            emitter.setAdditive ( in.readBoolean() );
+
+            for ( int curve = 0; curve < NUM_CURVES; curve++ )
+            {
+                int keys = in.readInt();
+
+                if ( keys <= 0 || keys > MAX_KEYS )
+                {
+                    throw new IOException ( "Invalid curve of " + keys + " keys" );
+                }
+
+                float[] times = new float[keys];
+                float[] values = new float[keys];
+
+                for ( int i = 0; i < keys; i++ )
+                {
+                    times[i] = in.readFloat();
+                    values[i] = in.readFloat();
+                }
+
+                try
+                {
+                    emitter.setCurve ( curve, times, values );
+                }
+                catch ( IllegalArgumentException iae )
+                {
+                    throw new IOException ( iae.getMessage() );
+                }
+            }
+
+            return emitter;
+        }
+
+        private final String mTexture;
+        private final int mMaxParticles;
+        private float mEmitRate;
+        private float mDuration;
+        private float mLifetimeMin = 1.0f;
+        private float mLifetimeMax = 1.0f;
+        private final float[] mOffset = new float[3];
+        private float mRadius;
+        private final float[] mVelocity = new float[4];
+        private final float[] mGravity = new float[3];
+        private float mDrag;
+        private float mNoise;
+        private boolean mAdditive = true;
+
+        // Keys of the curves, and the curves baked
+        private final float[][] mKeyTimes = new float[NUM_CURVES][];
+        private final float[][] mKeyValues = new float[NUM_CURVES][];
+        private final float[][] mTables = new float[NUM_CURVES][CURVE_SAMPLES];
+        private final float[] mColorTable = new float[CURVE_SAMPLES * 4];
+    }
+
+    //
+    ///
+    /// \brief Add an emitter
+    /// \param texture Name of its texture, e.g. an asset path
+    /// \param maxParticles Most particles alive at once
+    //
+    public Emitter addEmitter ( String texture, int maxParticles )
+    {
+        Emitter emitter = new Emitter ( texture, maxParticles );
+
+        mEmitters.add ( emitter );
+        return emitter;
+    }
+
+    public int getNumEmitters() { return mEmitters.size(); }
+    public Emitter getEmitter ( int i ) { return mEmitters.get ( i ); }
+
+    //
+    ///
+    /// \brief Distinct textures of the emitters, each to load once
+    //
+    public List<String> getTextures()
+    {
+        List<String> textures = new ArrayList<>();
+
+        for ( Emitter emitter : mEmitters )
+        {
+            if ( !textures.contains ( emitter.getTexture() ) )
+            {
+                textures.add ( emitter.getTexture() );
+            }
+        }
+
+        return textures;
+    }
+
+    //
+    ///
+    /// \brief Sample a baked curve by linear interpolation
+    /// \param t Age over lifetime, clamped to [0, 1]
+    //
+    public static float sample ( float[] table, float t )
+    {
+        float x = Math.max ( 0.0f, Math.min ( 1.0f, t ) ) * ( CURVE_SAMPLES - 1 );
+        int i = Math.min ( ( int ) x, CURVE_SAMPLES - 2 );
+        float f = x - i;
+
+        return table[i] + ( table[i + 1] - table[i] ) * f;
+    }
+
+    //
+    ///
+    /// \brief Write the effect to a stream, e.g. an asset file
+    //
+    public void write ( OutputStream os ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream ( os );
+
+        out.writeInt ( MAGIC );
+        out.writeInt ( VERSION );
+        out.writeInt ( mEmitters.size() );
+
+        for ( Emitter emitter : mEmitters )
+        {
+            emitter.write ( out );
+        }
+
+        out.flush();
+    }
+
+    //
+    ///
+    /// \brief Read an effect written by write(), baking its curves
+    /// \throws IOException if the stream is not a valid effect
+    //
+    public static ESParticleEffect read ( InputStream is ) throws IOException
+    {
+        DataInputStream in = new DataInputStream ( is );
+
+        if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+        {
+            throw new IOException ( "Not a particle effect" );
+        }
+
+        int emitters = in.readInt();
+
+        if ( emitters < 0 || emitters > MAX_EMITTERS )
+        {
+            throw new IOException ( "Invalid particle effect of " + emitters + " emitters" );
+        }
+
+        ESParticleEffect effect = new ESParticleEffect();
+
+        for ( int i = 0; i < emitters; i++ )
+        {
+            effect.mEmitters.add ( Emitter.read ( in ) );
+        }
+
+        return effect;
+    }
+
+    // Sample piecewise linear keys at CURVE_SAMPLES times
+    private static void bake ( float[] times, float[] values, float[] table )
+    {
+        int key = 0;
+
+        for ( int i = 0; i < CURVE_SAMPLES; i++ )
+        {
+            float t = i / ( float ) ( CURVE_SAMPLES - 1 );
+
+            while ( key < times.length && times[key] <= t )
+            {
+                key++;
+            }
+
+            if ( key == 0 )
+            {
+                table[i] = values[0];
+            }
+            else if ( key == times.length )
+            {
+                table[i] = values[times.length - 1];
+            }
+            else
+            {
+                float t0 = times[key - 1], t1 = times[key];
+
+                table[i] = values[key - 1] + ( values[key] - values[key - 1] ) * ( t - t0 ) / ( t1 - t0 );
+            }
+        }
+    }
+
+    // Member variables
+    private final List<Emitter> mEmitters = new ArrayList<>();
+
+    // Some constants
+    private static final int MAGIC = 0x45535045; // "ESPE"
+    private static final int VERSION = 1;
+    private static final int MAX_EMITTERS = 256;
+    private static final int MAX_KEYS = 1024;
+}
@@ -0,0 +1,196 @@
+package edu.gatech.gtri.common;
+
+//
+/// \brief Pool of instances of a particle effect, all allocated up front
+///    so that spawning an effect never allocates.
+///
+/// Each instance holds one ESParticlePool per emitter of the effect, of
+/// the emitter capacity.  spawn() takes a free instance, if any, and
+/// places it; update() steps the active instances, their emitters
+/// emitting until their duration, and frees those done: stopped or past
+/// all durations, with no particle left.  The active instances are kept
+/// packed, getActive() listing them for drawing.
+///
+/// Instances step on the calling thread, effects being many and small.
+///
+/// This class has no Android dependencies.
+//
+public class ESParticleEffectPool
+{
+    //
+    ///
+    /// \brief Create a pool of instances
+    /// \param effect Effect of the instances
+    /// \param maxInstances Most instances alive at once
+    /// \param seed Seed of the random numbers, instance i seeded with
+    ///    seed + i
+    //
+    public ESParticleEffectPool ( ESParticleEffect effect, int maxInstances, int seed )
+    {
+        if ( maxInstances <= 0 )
+        {
+            throw new IllegalArgumentException ( "Invalid number of effect instances " + maxInstances );
+        }
+
+        int emitters = effect.getNumEmitters();
+
+        mEffect = effect;
+        mParticles = new ESParticlePool[maxInstances * emitters];
+        mPosition = new float[maxInstances * 3];
+        mAge = new float[maxInstances];
+        mStopped = new boolean[maxInstances];
+        mActive = new int[maxInstances];
+        mFree = new int[maxInstances];
+
+        for ( int i = 0; i < maxInstances; i++ )
+        {
+            for ( int e = 0; e < emitters; e++ )
+            {
+                ESParticleSimulation simulation = new ESParticleSimulation ( effect.getEmitter ( e ).getMaxParticles(),
+                                                                             seed + i );
+
+                mParticles[i * emitters + e] = new ESParticlePool ( simulation, null );
+            }
+
+            // Lowest instances first
+            mFree[i] = maxInstances - 1 - i;
+        }
+
+        mNumFree = maxInstances;
+    }
+
+    public ESParticleEffect getEffect() { return mEffect; }
+    public int getMaxInstances() { return mAge.length; }
+
+    //
+    ///
+    /// \brief Start an instance at a position
+    /// \return The instance, or -1 when all are active
+    //
+    public int spawn ( float x, float y, float z )
+    {
+        if ( mNumFree == 0 )
+        {
+            return -1;
+        }
+
+        int instance = mFree[--mNumFree];
+        int emitters = mEffect.getNumEmitters();
+
+        for ( int e = 0; e < emitters; e++ )
+        {
+            mParticles[instance * emitters + e].clear();
+        }
+
+        mPosition[instance * 3] = x;
+        mPosition[instance * 3 + 1] = y;
+        mPosition[instance * 3 + 2] = z;
+        mAge[instance] = 0.0f;
+        mStopped[instance] = false;
+        mActive[mNumActive++] = instance;
+        return instance;
+    }
+
+    //
+    ///
+    /// \brief Move an active instance, its emitters with it
+    //
+    public void setPosition ( int instance, float x, float y, float z )
+    {
+        mPosition[instance * 3] = x;
+        mPosition[instance * 3 + 1] = y;
+        mPosition[instance * 3 + 2] = z;
+    }
+
+    //
+    ///
+    /// \brief Stop the emitters of an instance; it is freed once its
+    ///    particles are gone
+    //
+    public void stop ( int instance )
+    {
+        mStopped[instance] = true;
+    }
+
+    //
+    ///
+    /// \brief Step the particles of the active instances and free those
+    ///    done
+    //
+    public void update ( float dt )
+    {
+        int emitters = mEffect.getNumEmitters();
+
+        // Backwards, so that freed instances swap in stepped ones
+        for ( int a = mNumActive - 1; a >= 0; a-- )
+        {
+            int instance = mActive[a];
+            float x = mPosition[instance * 3];
+            float y = mPosition[instance * 3 + 1];
+            float z = mPosition[instance * 3 + 2];
+            boolean done = true;
+
+            for ( int e = 0; e < emitters; e++ )
+            {
+                ESParticleEffect.Emitter emitter = mEffect.getEmitter ( e );
+                ESParticlePool particles = mParticles[instance * emitters + e];
+                boolean emitting = !mStopped[instance]
+                                   && ( emitter.getDuration() == 0.0f || mAge[instance] < emitter.getDuration() );
+
+                emitter.apply ( particles.getSimulation(), x, y, z, emitting );
+                particles.step ( dt );
+                done &= !emitting && particles.getCount() == 0;
+            }
+
+            mAge[instance] += dt;
+
+            if ( done )
+            {
+                mActive[a] = mActive[--mNumActive];
+                mFree[mNumFree++] = instance;
+            }
+        }
+    }
+
+    //
+    ///
+    /// \brief Number of active instances
+    //
+    public int getNumActive() { return mNumActive; }
+
+    //
+    ///
+    /// \brief Active instance, i < getNumActive()
+    //
+    public int getActive ( int i ) { return mActive[i]; }
+
+    //
+    ///
+    /// \brief Particles of an emitter of an instance
+    //
+    public ESParticlePool getParticles ( int instance, int emitter )
+    {
+        return mParticles[instance * mEffect.getNumEmitters() + emitter];
+    }
+
+    //
+    ///
+    /// \brief Seconds since an instance spawned
+    //
+    public float getAge ( int instance ) { return mAge[instance]; }
+
+    // Member variables
+    private final ESParticleEffect mEffect;
+
+    // Per instance: particles of each emitter, position, age, stopped
+    private final ESParticlePool[] mParticles;
+    private final float[] mPosition;
+    private final float[] mAge;
+    private final boolean[] mStopped;
+
+    // Active instances, and the stack of free ones
+    private final int[] mActive;
+    private int mNumActive;
+    private final int[] mFree;
+    private int mNumFree;
+}
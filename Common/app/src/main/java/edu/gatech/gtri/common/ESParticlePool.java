@@ -0,0 +1,401 @@
+package edu.gatech.gtri.common;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief Particles of an ESParticleSimulation stepped on the CPU, the
+///    fallback of the transform feedback update.
+///
+/// The particles are stored as a structure of arrays, one float array per
+/// component, and packed: the live particles are the first getCount()
+/// ones, so only they are stepped, copied and drawn.  A particle dies by
+/// swap-remove, the last live one taking its place, and spawns by being
+/// appended, both O(1).
+///
+/// A step splits the particles into chunks of CHUNK, stepped on a
+/// ForkJoinPool.  Each chunk removes its dead particles within itself, so
+/// chunks are independent; the holes left at the chunk ends are then
+/// filled with the live particles past the new count.  The chunks do not
+/// depend on the number of threads, so neither does the result.
+///
+/// The equations and random numbers are those of the simulation, by index
+/// in the packed arrays rather than by pool slot.  Spawns are limited by
+/// the free room instead of by the slots of the spawn cursor.
+///
+/// Removing particles moves others to new indices, see hasMoved().  Each
+/// step records where the particles went, getMoves(), so an order of the
+/// particles kept from a previous step, e.g. by ESParticleSort, can follow
+/// them.
+///
+/// This class has no Android dependencies.
+//
+public class ESParticlePool
+{
+    // Particles per chunk of a parallel step
+    public static final int CHUNK = 16384;
+
+    //
+    ///
+    /// \brief Create an empty pool stepped on the common ForkJoinPool
+    /// \param simulation Emitter and forces; the pool holds up to its
+    ///    capacity of particles
+    //
+    public ESParticlePool ( ESParticleSimulation simulation )
+    {
+        this ( simulation, ForkJoinPool.commonPool() );
+    }
+
+    //
+    ///
+    /// \brief Create an empty pool
+    /// \param pool Pool to step on, or null to step on the calling thread
+    //
+    public ESParticlePool ( ESParticleSimulation simulation, ForkJoinPool pool )
+    {
+        int capacity = simulation.getCapacity();
+        int chunks = ( capacity + CHUNK - 1 ) / CHUNK;
+
+        mSimulation = simulation;
+        mPool = pool;
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mZ = new float[capacity];
+        mVx = new float[capacity];
+        mVy = new float[capacity];
+        mVz = new float[capacity];
+        mAge = new float[capacity];
+        mLifetime = new float[capacity];
+        mOrigin = new int[capacity];
+        mMoves = new int[capacity];
+        mChunkLive = new int[chunks];
+    }
+
+    public ESParticleSimulation getSimulation() { return mSimulation; }
+    public int getCapacity() { return mX.length; }
+
+    //
+    ///
+    /// \brief Number of live particles, the first ones of the arrays
+    //
+    public int getCount() { return mCount; }
+
+    // Components of the particles, getCapacity() long
+    public float[] getX() { return mX; }
+    public float[] getY() { return mY; }
+    public float[] getZ() { return mZ; }
+    public float[] getVelocityX() { return mVx; }
+    public float[] getVelocityY() { return mVy; }
+    public float[] getVelocityZ() { return mVz; }
+    public float[] getAge() { return mAge; }
+    public float[] getLifetime() { return mLifetime; }
+
+    //
+    ///
+    /// \brief Whether the last step() removed particles, moving live ones
+    ///    to other indices.  Spawns only append and move nothing.
+    //
+    public boolean hasMoved() { return mMoved; }
+
+    //
+    ///
+    /// \brief New index of each particle by its index before the last
+    ///    step, -1 for those it removed.  Only the first getCount() before
+    ///    the step are set; spawned particles are past all the new indices.
+    //
+    public int[] getMoves() { return mMoves; }
+
+    //
+    ///
+    /// \brief Step the live particles, remove those past their lifetime and
+    ///    spawn those due over the time step
+    //
+    public void step ( float dt )
+    {
+        mSimulation.beginStep ( dt );
+
+        int chunks = ( mCount + CHUNK - 1 ) / CHUNK;
+        int before = mCount;
+
+        if ( mPool == null || chunks <= 1 )
+        {
+            stepChunks ( 0, chunks );
+        }
+        else
+        {
+            mPool.invoke ( new ChunkTask ( 0, chunks, null ) );
+        }
+
+        compact ( chunks );
+        mMoved = mCount < before;
+        spawn();
+    }
+
+    //
+    ///
+    /// \brief Interleave the live particles into a buffer, STRIDE floats
+    ///    each in the layout of ESParticleSimulation, for a vertex buffer
+    /// \param out Receives getCount() * STRIDE floats at its current
+    ///    position, which is advanced
+    //
+    public void copyTo ( FloatBuffer out )
+    {
+        int floats = mCount * ESParticleSimulation.STRIDE;
+        int chunks = ( mCount + CHUNK - 1 ) / CHUNK;
+
+        if ( mStaging.length < floats )
+        {
+            mStaging = new float[mX.length * ESParticleSimulation.STRIDE];
+        }
+
+        if ( mPool == null || chunks <= 1 )
+        {
+            interleave ( 0, mCount, mStaging );
+        }
+        else
+        {
+            mPool.invoke ( new ChunkTask ( 0, chunks, mStaging ) );
+        }
+
+        // One bulk copy, the direct buffer cannot be written in parallel
+        out.put ( mStaging, 0, floats );
+    }
+
+    //
+    ///
+    /// \brief Remove all the particles
+    //
+    public void clear()
+    {
+        mCount = 0;
+    }
+
+    // Step the particles of chunks [first, last), swap-removing the dead
+    // ones within each chunk, and record how many each keeps
+    private void stepChunks ( int first, int last )
+    {
+        for ( int chunk = first; chunk < last; chunk++ )
+        {
+            int begin = chunk * CHUNK;
+
+            mChunkLive[chunk] = stepRange ( begin, Math.min ( mCount, begin + CHUNK ) ) - begin;
+        }
+    }
+
+    // Step particles [begin, end), return the end of those left alive
+    private int stepRange ( int begin, int end )
+    {
+        ESParticleSimulation simulation = mSimulation;
+        float dt = simulation.getDeltaTime();
+        float damping = Math.max ( 0.0f, 1.0f - simulation.getDrag() * dt );
+        float noise = simulation.getNoise();
+        float[] gravity = simulation.getGravity();
+        float gx = gravity[0], gy = gravity[1], gz = gravity[2];
+        float[] x = mX, y = mY, z = mZ, vx = mVx, vy = mVy, vz = mVz, age = mAge, lifetime = mLifetime;
+        int[] origin = mOrigin, moves = mMoves;
+        int i = begin;
+
+        for ( int j = begin; j < end; j++ )
+        {
+            origin[j] = j;
+        }
+
+        while ( i < end )
+        {
+            float a = age[i] + dt;
+
+            if ( a >= lifetime[i] )
+            {
+                // The last live particle of the chunk, not stepped yet,
+                // takes the place and is stepped next
+                moves[origin[i]] = -1;
+                end--;
+                x[i] = x[end];
+                y[i] = y[end];
+                z[i] = z[end];
+                vx[i] = vx[end];
+                vy[i] = vy[end];
+                vz[i] = vz[end];
+                age[i] = age[end];
+                lifetime[i] = lifetime[end];
+                origin[i] = origin[end];
+                continue;
+            }
+
+            float nx = simulation.random ( i, 7 ) * 2.0f - 1.0f;
+            float ny = simulation.random ( i, 8 ) * 2.0f - 1.0f;
+            float nz = simulation.random ( i, 9 ) * 2.0f - 1.0f;
+            float u = ( vx[i] + ( gx + nx * noise ) * dt ) * damping;
+            float v = ( vy[i] + ( gy + ny * noise ) * dt ) * damping;
+            float w = ( vz[i] + ( gz + nz * noise ) * dt ) * damping;
+
+            x[i] += u * dt;
+            y[i] += v * dt;
+            z[i] += w * dt;
+            vx[i] = u;
+            vy[i] = v;
+            vz[i] = w;
+            age[i] = a;
+            moves[origin[i]] = i;
+            i++;
+        }
+
+        return end;
+    }
+
+    // Fill the holes at the ends of the chunks below the new count with
+    // the live particles at or past it, moving only the dead ones' worth
+    private void compact ( int chunks )
+    {
+        int count = 0;
+
+        for ( int chunk = 0; chunk < chunks; chunk++ )
+        {
+            count += mChunkLive[chunk];
+        }
+
+        int source = chunks - 1;
+
+        for ( int hole = 0; hole < chunks; hole++ )
+        {
+            int holeBegin = hole * CHUNK + mChunkLive[hole];
+            int holeEnd = Math.min ( count, Math.min ( mCount, ( hole + 1 ) * CHUNK ) );
+
+            while ( holeBegin < holeEnd )
+            {
+                int sourceBegin = Math.max ( count, source * CHUNK );
+                int sourceEnd = source * CHUNK + mChunkLive[source];
+
+                if ( sourceEnd <= sourceBegin )
+                {
+                    source--;
+                    continue;
+                }
+
+                // Take from the end of the source so what is left stays
+                // at its start
+                int length = Math.min ( holeEnd - holeBegin, sourceEnd - sourceBegin );
+
+                move ( sourceEnd - length, holeBegin, length );
+                mChunkLive[source] -= length;
+                holeBegin += length;
+            }
+        }
+
+        mCount = count;
+    }
+
+    private void move ( int from, int to, int length )
+    {
+        System.arraycopy ( mX, from, mX, to, length );
+        System.arraycopy ( mY, from, mY, to, length );
+        System.arraycopy ( mZ, from, mZ, to, length );
+        System.arraycopy ( mVx, from, mVx, to, length );
+        System.arraycopy ( mVy, from, mVy, to, length );
+        System.arraycopy ( mVz, from, mVz, to, length );
+        System.arraycopy ( mAge, from, mAge, to, length );
+        System.arraycopy ( mLifetime, from, mLifetime, to, length );
+
+        for ( int i = 0; i < length; i++ )
+        {
+            mMoves[mOrigin[from + i]] = to + i;
+        }
+    }
+
+    // Append the particles due, as many as there is room for
+    private void spawn()
+    {
+        ESParticleSimulation simulation = mSimulation;
+        float[] emitter = simulation.getEmitter();
+        float[] emitVelocity = simulation.getEmitVelocity();
+        float[] lifetime = simulation.getLifetime();
+        int end = Math.min ( mX.length, mCount + simulation.getSpawnCount() );
+
+        for ( int i = mCount; i < end; i++ )
+        {
+            mX[i] = emitter[0] + ( simulation.random ( i, 0 ) * 2.0f - 1.0f ) * emitter[3];
+            mY[i] = emitter[1] + ( simulation.random ( i, 1 ) * 2.0f - 1.0f ) * emitter[3];
+            mZ[i] = emitter[2] + ( simulation.random ( i, 2 ) * 2.0f - 1.0f ) * emitter[3];
+            mVx[i] = emitVelocity[0] + ( simulation.random ( i, 3 ) * 2.0f - 1.0f ) * emitVelocity[3];
+            mVy[i] = emitVelocity[1] + ( simulation.random ( i, 4 ) * 2.0f - 1.0f ) * emitVelocity[3];
+            mVz[i] = emitVelocity[2] + ( simulation.random ( i, 5 ) * 2.0f - 1.0f ) * emitVelocity[3];
+            mAge[i] = 0.0f;
+            mLifetime[i] = lifetime[0] + lifetime[1] * simulation.random ( i, 6 );
+        }
+
+        mCount = end;
+    }
+
+    // Interleave particles [begin, end) into their place of an array
+    private void interleave ( int begin, int end, float[] out )
+    {
+        for ( int i = begin, o = begin * ESParticleSimulation.STRIDE; i < end; i++, o += ESParticleSimulation.STRIDE )
+        {
+            out[o + ESParticleSimulation.POSITION] = mX[i];
+            out[o + ESParticleSimulation.POSITION + 1] = mY[i];
+            out[o + ESParticleSimulation.POSITION + 2] = mZ[i];
+            out[o + ESParticleSimulation.VELOCITY] = mVx[i];
+            out[o + ESParticleSimulation.VELOCITY + 1] = mVy[i];
+            out[o + ESParticleSimulation.VELOCITY + 2] = mVz[i];
+            out[o + ESParticleSimulation.AGE] = mAge[i];
+            out[o + ESParticleSimulation.LIFETIME] = mLifetime[i];
+        }
+    }
+
+    // Split chunks [first, last) in halves down to single chunks, which
+    // are stepped, or interleaved into an array when there is one
+    private final class ChunkTask extends RecursiveAction
+    {
+        ChunkTask ( int first, int last, float[] interleaved )
+        {
+            mFirst = first;
+            mLast = last;
+            mInterleaved = interleaved;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mLast - mFirst > 1 )
+            {
+                int middle = ( mFirst + mLast ) >>> 1;
+                invokeAll ( new ChunkTask ( mFirst, middle, mInterleaved ),
+                            new ChunkTask ( middle, mLast, mInterleaved ) );
+            }
+            else if ( mInterleaved != null )
+            {
+                interleave ( mFirst * CHUNK, Math.min ( mCount, mLast * CHUNK ), mInterleaved );
+            }
+            else
+            {
+                stepChunks ( mFirst, mLast );
+            }
+        }
+
+        private final int mFirst, mLast;
+        private final float[] mInterleaved;
+    }
+
+    // Member variables
+    private final ESParticleSimulation mSimulation;
+    private final ForkJoinPool mPool;
+
+    // Components of the particles, the first mCount live
+    private final float[] mX, mY, mZ;
+    private final float[] mVx, mVy, mVz;
+    private final float[] mAge, mLifetime;
+    private int mCount;
+    private boolean mMoved;
+
+    // Index before the step of the particle at each index, and the new
+    // index of each particle by its index before the step
+    private final int[] mOrigin;
+    private final int[] mMoves;
+
+    // Live particles left at the start of each chunk by a step
+    private final int[] mChunkLive;
+
+    // Interleaved particles of copyTo()
+    private float[] mStaging = new float[0];
+}
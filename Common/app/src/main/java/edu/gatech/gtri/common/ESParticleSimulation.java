@@ -0,0 +1,322 @@
+package edu.gatech.gtri.common;
+
+//
+/// \brief Particle simulation of an emitter with gravity, drag and noise,
+///    the Java reference of the transform feedback update shader.
+///
+/// Particles live in a pool of fixed capacity, interleaved as in the
+/// vertex buffers: position, velocity, age and lifetime, STRIDE floats
+/// each.  A particle is dead once its age reaches its lifetime; the pool
+/// starts all zeros, thus all dead.
+///
+/// Each step the CPU side, beginStep(), only turns the emission rate into
+/// a range of slots: getSpawnCount() slots from getSpawnFirst(), a cursor
+/// going round the pool.  A dead particle in the range is spawned at the
+/// emitter, a live one keeps living and the spawn is lost.  Every other
+/// particle is integrated independently of the others:
+///
+///    v += ( gravity + noise * n ) * dt
+///    v *= max ( 0, 1 - drag * dt )
+///    p += v * dt
+///
+/// where n is a random vector in [-1, 1]^3 per particle and step.  Random
+/// numbers come from an integer hash of the particle index and a key of
+/// the step, getFrameKey(), so they are bit for bit those of the shader.
+/// stepParticles() does in float what the shader does in the same order:
+/// which particles spawn and die is identical, positions match to the
+/// rounding of GPUs that fuse multiply-adds.
+///
+/// This class has no Android dependencies.
+//
+public class ESParticleSimulation
+{
+    // Offsets of the particle fields and floats per particle
+    public static final int POSITION = 0;
+    public static final int VELOCITY = 3;
+    public static final int AGE = 6;
+    public static final int LIFETIME = 7;
+    public static final int STRIDE = 8;
+
+    // Largest pool, so slot arithmetic stays within an int
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    //
+    ///
+    /// \brief Create a simulation with the emitter at the origin, emitting
+    ///    nothing, and no forces
+    /// \param capacity Number of particles of the pool
+    /// \param seed Seed of the random numbers
+    //
+    public ESParticleSimulation ( int capacity, int seed )
+    {
+        if ( capacity <= 0 || capacity > MAX_CAPACITY )
+        {
+            throw new IllegalArgumentException ( "Invalid particle capacity " + capacity );
+        }
+
+        mCapacity = capacity;
+        mSeed = seed;
+        mFrame = -1;
+    }
+
+    //
+    ///
+    /// \brief Set where particles spawn: uniformly in a cube of a half size
+    ///    around a center
+    //
+    public void setEmitter ( float x, float y, float z, float radius )
+    {
+        mEmitter[0] = x;
+        mEmitter[1] = y;
+        mEmitter[2] = z;
+        mEmitter[3] = radius;
+    }
+
+    //
+    ///
+    /// \brief Set the velocity of spawned particles, plus up to spread on
+    ///    each axis
+    //
+    public void setEmitVelocity ( float vx, float vy, float vz, float spread )
+    {
+        mEmitVelocity[0] = vx;
+        mEmitVelocity[1] = vy;
+        mEmitVelocity[2] = vz;
+        mEmitVelocity[3] = spread;
+    }
+
+    //
+    ///
+    /// \brief Set the particles spawned per second
+    //
+    public void setEmitRate ( float rate )
+    {
+        mEmitRate = Math.max ( 0.0f, rate );
+    }
+
+    //
+    ///
+    /// \brief Set the range of the lifetime of spawned particles, seconds
+    //
+    public void setLifetime ( float min, float max )
+    {
+        mLifetime[0] = min;
+        mLifetime[1] = Math.max ( 0.0f, max - min );
+    }
+
+    public void setGravity ( float gx, float gy, float gz )
+    {
+        mGravity[0] = gx;
+        mGravity[1] = gy;
+        mGravity[2] = gz;
+    }
+
+    //
+    ///
+    /// \brief Set the fraction of the velocity lost per second
+    //
+    public void setDrag ( float drag )
+    {
+        mDrag = Math.max ( 0.0f, drag );
+    }
+
+    //
+    ///
+    /// \brief Set the largest random acceleration on each axis
+    //
+    public void setNoise ( float amplitude )
+    {
+        mNoise = amplitude;
+    }
+
+    public int getCapacity() { return mCapacity; }
+    public float getEmitRate() { return mEmitRate; }
+    public float getDrag() { return mDrag; }
+    public float getNoise() { return mNoise; }
+
+    //
+    ///
+    /// \brief Emitter center and radius, for the u_emitter uniform
+    //
+    public float[] getEmitter() { return mEmitter; }
+
+    //
+    ///
+    /// \brief Emit velocity and spread, for the u_emitVelocity uniform
+    //
+    public float[] getEmitVelocity() { return mEmitVelocity; }
+
+    //
+    ///
+    /// \brief Minimum lifetime and its range, for the u_lifetime uniform
+    //
+    public float[] getLifetime() { return mLifetime; }
+
+    public float[] getGravity() { return mGravity; }
+
+    // State of the current step, for the uniforms of the update shader
+    public float getDeltaTime() { return mDt; }
+    public int getFrame() { return mFrame; }
+    public int getFrameKey() { return mFrameKey; }
+    public int getSpawnFirst() { return mSpawnFirst; }
+    public int getSpawnCount() { return mSpawnCount; }
+
+    //
+    ///
+    /// \brief Start a step: advance the spawn cursor by the particles due
+    ///    over the time step
+    //
+    public void beginStep ( float dt )
+    {
+        mDt = Math.max ( 0.0f, dt );
+        mFrame++;
+        mFrameKey = hash ( mSeed + mFrame * 0x9e3779b9 );
+
+        mSpawnFirst = ( mSpawnFirst + mSpawnCount ) % mCapacity;
+
+        // Fractions of a particle carry over to the next steps
+        mSpawnDue += ( double ) mEmitRate * mDt;
+        mSpawnCount = ( int ) Math.min ( mCapacity, Math.floor ( mSpawnDue ) );
+        mSpawnDue = Math.min ( mSpawnDue - mSpawnCount, 1.0 );
+    }
+
+    //
+    ///
+    /// \brief Update particles of a pool as the shader does, after
+    ///    beginStep()
+    /// \param particles Pool of getCapacity() * STRIDE floats
+    /// \param first, count Range of particles to update, so the pool can be
+    ///    updated in parts
+    //
+    public void stepParticles ( float[] particles, int first, int count )
+    {
+        float damping = Math.max ( 0.0f, 1.0f - mDrag * mDt );
+
+        for ( int i = first; i < first + count; i++ )
+        {
+            int o = i * STRIDE;
+
+            if ( particles[o + AGE] >= particles[o + LIFETIME] )
+            {
+                // Slots from the spawn cursor, wrapping round the pool
+                int slot = ( i + mCapacity - mSpawnFirst ) % mCapacity;
+
+                if ( slot < mSpawnCount )
+                {
+                    spawn ( particles, o, i );
+                }
+
+                continue;
+            }
+
+            float nx = random ( i, 7 ) * 2.0f - 1.0f;
+            float ny = random ( i, 8 ) * 2.0f - 1.0f;
+            float nz = random ( i, 9 ) * 2.0f - 1.0f;
+            float vx = particles[o + VELOCITY] + ( mGravity[0] + nx * mNoise ) * mDt;
+            float vy = particles[o + VELOCITY + 1] + ( mGravity[1] + ny * mNoise ) * mDt;
+            float vz = particles[o + VELOCITY + 2] + ( mGravity[2] + nz * mNoise ) * mDt;
+
+            vx *= damping;
+            vy *= damping;
+            vz *= damping;
+
+            particles[o + POSITION] += vx * mDt;
+            particles[o + POSITION + 1] += vy * mDt;
+            particles[o + POSITION + 2] += vz * mDt;
+            particles[o + VELOCITY] = vx;
+            particles[o + VELOCITY + 1] = vy;
+            particles[o + VELOCITY + 2] = vz;
+            particles[o + AGE] += mDt;
+        }
+    }
+
+    //
+    ///
+    /// \brief Step a whole pool
+    //
+    public void step ( float[] particles, float dt )
+    {
+        beginStep ( dt );
+        stepParticles ( particles, 0, mCapacity );
+    }
+
+    //
+    ///
+    /// \brief Number of live particles of a pool
+    //
+    public static int countAlive ( float[] particles )
+    {
+        int alive = 0;
+
+        for ( int o = 0; o + STRIDE <= particles.length; o += STRIDE )
+        {
+            if ( particles[o + AGE] < particles[o + LIFETIME] )
+            {
+                alive++;
+            }
+        }
+
+        return alive;
+    }
+
+    //
+    ///
+    /// \brief Integer hash of the shader, lowbias32 by Chris Wellons
+    //
+    public static int hash ( int x )
+    {
+        x ^= x >>> 16;
+        x *= 0x7feb352d;
+        x ^= x >>> 15;
+        x *= 0x846ca68b;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    //
+    ///
+    /// \brief Random number in [0, 1) of a particle in the current step
+    /// \param channel 0 to 15, one per number used
+    //
+    public float random ( int index, int channel )
+    {
+        // 24 bits convert to float exactly, as in the shader
+        return ( hash ( ( index * 16 + channel ) ^ mFrameKey ) >>> 8 ) * ( 1.0f / 16777216.0f );
+    }
+
+    private void spawn ( float[] particles, int o, int i )
+    {
+        particles[o + POSITION] = mEmitter[0] + ( random ( i, 0 ) * 2.0f - 1.0f ) * mEmitter[3];
+        particles[o + POSITION + 1] = mEmitter[1] + ( random ( i, 1 ) * 2.0f - 1.0f ) * mEmitter[3];
+        particles[o + POSITION + 2] = mEmitter[2] + ( random ( i, 2 ) * 2.0f - 1.0f ) * mEmitter[3];
+        particles[o + VELOCITY] = mEmitVelocity[0] + ( random ( i, 3 ) * 2.0f - 1.0f ) * mEmitVelocity[3];
+        particles[o + VELOCITY + 1] = mEmitVelocity[1] + ( random ( i, 4 ) * 2.0f - 1.0f ) * mEmitVelocity[3];
+        particles[o + VELOCITY + 2] = mEmitVelocity[2] + ( random ( i, 5 ) * 2.0f - 1.0f ) * mEmitVelocity[3];
+        particles[o + AGE] = 0.0f;
+        particles[o + LIFETIME] = mLifetime[0] + mLifetime[1] * random ( i, 6 );
+    }
+
+    // Member variables
+    private final int mCapacity;
+    private final int mSeed;
+
+    // Emitter: center and radius, velocity and spread, rate, lifetime
+    // minimum and range
+    private final float[] mEmitter = new float[4];
+    private final float[] mEmitVelocity = new float[4];
+    private float mEmitRate;
+    private final float[] mLifetime = new float[2];
+
+    // Forces
+    private final float[] mGravity = new float[3];
+    private float mDrag;
+    private float mNoise;
+
+    // Current step
+    private float mDt;
+    private int mFrame;
+    private int mFrameKey;
+    private int mSpawnFirst;
+    private int mSpawnCount;
+    private double mSpawnDue;
+}
@@ -0,0 +1,551 @@
+package edu.gatech.gtri.common;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief Back-to-front order of particles or billboards, for alpha
+///    blending, as an index buffer.
+///
+/// The view space depth of each point is quantized to a KEY_BITS key over
+/// the depth range of the frame, the farthest point key 0.  The indices
+/// are then sorted by key in one of three ways, getMethod() telling which:
+///
+/// - INSERTION: the order of the previous sort, re-keyed, is insertion
+///   sorted, and the points added since sorted apart and merged in.  From
+///   frame to frame points move little, so the order is nearly sorted and
+///   this is close to linear.  It gives up past a number of moves per
+///   point, and one of the two others runs instead.  When the points move
+///   to other indices, e.g. those of ESParticlePool, remap() carries the
+///   order along; after reorder() the next sort starts over instead.
+/// - RADIX: a stable LSD radix sort, RADIX_BITS per pass, in parallel:
+///   histograms and scatters run per chunk of CHUNK points on a
+///   ForkJoinPool, the offsets of the chunks summed in between.
+/// - BUCKET: while the last radix sort took longer than the budget, a
+///   single radix pass on the high bits of the keys only, a partial sort
+///   in buckets of a 256th of the depth range.  Insertion sorts on the
+///   following frames refine it.  Every RADIX_RETRY-th of these sorts is
+///   a radix sort again, timed anew, so one slow sort, e.g. one the JIT
+///   has not compiled yet, does not keep the buckets for good.
+///
+/// Keys and chunks do not depend on the number of threads, so neither
+/// does the order.  Points are read from interleaved arrays or from one
+/// array per coordinate, e.g. those of ESParticleSimulation or of
+/// ESParticlePool.
+///
+/// This class has no Android dependencies.
+//
+public class ESParticleSort
+{
+    // Sort methods, see getMethod()
+    public static final int INSERTION = 0;
+    public static final int RADIX = 1;
+    public static final int BUCKET = 2;
+
+    // Bits of the depth keys and of the digits of a radix pass
+    public static final int KEY_BITS = 16;
+    public static final int RADIX_BITS = 8;
+
+    // Points per chunk of the parallel passes
+    public static final int CHUNK = 16384;
+
+    // Default budget of a sort, nanoseconds
+    public static final long DEFAULT_BUDGET = 2000000;
+
+    // Sorts over the budget per retry of a radix sort
+    public static final int RADIX_RETRY = 30;
+
+    //
+    ///
+    /// \brief Create a sort on the common ForkJoinPool, timed by the system
+    ///    clock
+    /// \param capacity Largest number of points
+    //
+    public ESParticleSort ( int capacity )
+    {
+        this ( capacity, ForkJoinPool.commonPool(), ESBenchmark.SYSTEM_CLOCK );
+    }
+
+    //
+    ///
+    /// \brief Create a sort
+    /// \param pool Pool to sort on, or null to sort on the calling thread
+    /// \param clock Clock timing the radix sorts against the budget
+    //
+    public ESParticleSort ( int capacity, ForkJoinPool pool, ESBenchmark.Clock clock )
+    {
+        if ( capacity <= 0 )
+        {
+            throw new IllegalArgumentException ( "Invalid sort capacity " + capacity );
+        }
+
+        int chunks = ( capacity + CHUNK - 1 ) / CHUNK;
+
+        mPool = pool;
+        mClock = clock;
+        mIndices = new int[capacity];
+        mScratch = new int[capacity];
+        mKeys = new int[capacity];
+        mDepths = new float[capacity];
+        mChunkMin = new float[chunks];
+        mChunkMax = new float[chunks];
+        mHistograms = new int[chunks][1 << RADIX_BITS];
+        mBudget = DEFAULT_BUDGET;
+    }
+
+    //
+    ///
+    /// \brief Set the time a radix sort may take before the following
+    ///    sorts fall back to buckets, up to the next retry, nanoseconds
+    //
+    public void setBudget ( long nanos )
+    {
+        mBudget = nanos;
+    }
+
+    //
+    ///
+    /// \brief Forget the previous order and the time of the last radix
+    ///    sort, e.g. when the points are replaced
+    //
+    public void reset()
+    {
+        mCount = 0;
+        mRadixNanos = 0;
+        mBucketSorts = 0;
+    }
+
+    //
+    ///
+    /// \brief Tell the next sort that the points moved to other indices
+    ///    since this one in a way remap() cannot follow, so the previous
+    ///    order says nothing about them and is not refined
+    //
+    public void reorder()
+    {
+        mReordered = true;
+    }
+
+    //
+    ///
+    /// \brief Carry the order over to the indices the points moved to since
+    ///    this sort, so the next one can refine it
+    /// \param moves New index of each point by its index in this sort, -1
+    ///    for those removed, e.g. ESParticlePool.getMoves().  The points
+    ///    kept take the indices below their number, those added after.
+    //
+    public void remap ( int[] moves )
+    {
+        int kept = 0;
+
+        for ( int i = 0; i < mCount; i++ )
+        {
+            int index = moves[mIndices[i]];
+
+            if ( index >= 0 )
+            {
+                mIndices[kept++] = index;
+            }
+        }
+
+        mCount = kept;
+    }
+
+    //
+    ///
+    /// \brief Sort interleaved points
+    /// \param points x, y, z of point i at offset + i * stride
+    /// \param count Number of points
+    /// \param view Column-major view matrix; the order is by view space z,
+    ///    the most negative first
+    //
+    public void sort ( float[] points, int offset, int stride, int count, float[] view )
+    {
+        sort ( points, offset, points, offset + 1, points, offset + 2, stride, count, view );
+    }
+
+    //
+    ///
+    /// \brief Sort points stored one array per coordinate
+    //
+    public void sort ( float[] x, float[] y, float[] z, int count, float[] view )
+    {
+        sort ( x, 0, y, 0, z, 0, 1, count, view );
+    }
+
+    //
+    ///
+    /// \brief Point indices from back to front, the first getCount()
+    //
+    public int[] getIndices() { return mIndices; }
+    public int getCount() { return mCount; }
+
+    //
+    ///
+    /// \brief Quantized depth key of each point, by point index
+    //
+    public int[] getKeys() { return mKeys; }
+
+    //
+    ///
+    /// \brief Method of the last sort: INSERTION, RADIX or BUCKET
+    //
+    public int getMethod() { return mMethod; }
+
+    //
+    ///
+    /// \brief Time of the last radix sort, nanoseconds
+    //
+    public long getRadixNanos() { return mRadixNanos; }
+
+    //
+    ///
+    /// \brief Copy the sorted indices into an index buffer
+    /// \param out Receives getCount() indices at its current position,
+    ///    which is advanced
+    //
+    public void copyTo ( IntBuffer out )
+    {
+        out.put ( mIndices, 0, mCount );
+    }
+
+    private void sort ( float[] x, int xOffset, float[] y, int yOffset, float[] z, int zOffset,
+                        int stride, int count, float[] view )
+    {
+        if ( count < 0 || count > mIndices.length )
+        {
+            throw new IllegalArgumentException ( "Invalid point count " + count );
+        }
+
+        mX = x;
+        mY = y;
+        mZ = z;
+        mXOffset = xOffset;
+        mYOffset = yOffset;
+        mZOffset = zOffset;
+        mStride = stride;
+        mView = view;
+
+        int previous = mReordered ? 0 : mCount;
+        int chunks = ( count + CHUNK - 1 ) / CHUNK;
+
+        mCount = count;
+        mReordered = false;
+
+        // Depths and their range, then keys, farthest 0
+        run ( DEPTHS, chunks );
+
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+
+        for ( int chunk = 0; chunk < chunks; chunk++ )
+        {
+            min = Math.min ( min, mChunkMin[chunk] );
+            max = Math.max ( max, mChunkMax[chunk] );
+        }
+
+        mMinDepth = min;
+        mKeyScale = max > min ? ( ( 1 << KEY_BITS ) - 1 ) / ( max - min ) : 0.0f;
+        run ( KEYS, chunks );
+
+        if ( previous > 0 && insertionSort ( previous ) )
+        {
+            mMethod = INSERTION;
+            return;
+        }
+
+        for ( int i = 0; i < count; i++ )
+        {
+            mIndices[i] = i;
+        }
+
+        if ( mRadixNanos > mBudget && ++mBucketSorts < RADIX_RETRY )
+        {
+            radixPass ( KEY_BITS - RADIX_BITS, chunks );
+            mMethod = BUCKET;
+            return;
+        }
+
+        long start = mClock.nanoTime();
+
+        for ( int shift = 0; shift < KEY_BITS; shift += RADIX_BITS )
+        {
+            radixPass ( shift, chunks );
+        }
+
+        mRadixNanos = mClock.nanoTime() - start;
+        mBucketSorts = 0;
+        mMethod = RADIX;
+    }
+
+    // Insertion sort the previous order of previous points, the points
+    // past the count dropped.  The new points are sorted on their own and
+    // merged in, rather than each moved through the whole order.  False
+    // when it gives up, the indices still a permutation.
+    private boolean insertionSort ( int previous )
+    {
+        int[] indices = mIndices;
+        int[] keys = mKeys;
+        int kept = 0;
+
+        for ( int i = 0; i < previous; i++ )
+        {
+            if ( indices[i] < mCount )
+            {
+                indices[kept++] = indices[i];
+            }
+        }
+
+        for ( int i = previous; i < mCount; i++ )
+        {
+            indices[kept + i - previous] = i;
+        }
+
+        long moves = ( long ) mCount * MAX_INSERTION_MOVES;
+
+        moves = insertionSort ( 0, kept, moves );
+        moves = insertionSort ( kept, mCount, moves );
+
+        if ( moves < 0 )
+        {
+            return false;
+        }
+
+        if ( kept > 0 && kept < mCount )
+        {
+            int a = 0, b = kept, o = 0;
+
+            while ( a < kept && b < mCount )
+            {
+                mScratch[o++] = keys[indices[b]] < keys[indices[a]] ? indices[b++] : indices[a++];
+            }
+
+            System.arraycopy ( indices, a, mScratch, o, kept - a );
+            System.arraycopy ( indices, b, mScratch, o + kept - a, mCount - b );
+            mIndices = mScratch;
+            mScratch = indices;
+        }
+
+        return true;
+    }
+
+    // Insertion sort indices [begin, end) within a number of moves, return
+    // the moves left, negative when it gives up
+    private long insertionSort ( int begin, int end, long moves )
+    {
+        int[] indices = mIndices;
+        int[] keys = mKeys;
+
+        for ( int i = begin + 1; i < end && moves >= 0; i++ )
+        {
+            int index = indices[i];
+            int key = keys[index];
+            int j = i - 1;
+
+            while ( j >= begin && keys[indices[j]] > key )
+            {
+                indices[j + 1] = indices[j];
+                j--;
+                moves--;
+            }
+
+            indices[j + 1] = index;
+        }
+
+        return moves;
+    }
+
+    // One stable pass on the digit of keys at a shift: per chunk
+    // histograms, their offsets, per chunk scatters, then the buffers swap
+    private void radixPass ( int shift, int chunks )
+    {
+        mShift = shift;
+        run ( HISTOGRAMS, chunks );
+
+        int offset = 0;
+
+        for ( int digit = 0; digit < 1 << RADIX_BITS; digit++ )
+        {
+            for ( int chunk = 0; chunk < chunks; chunk++ )
+            {
+                int n = mHistograms[chunk][digit];
+
+                mHistograms[chunk][digit] = offset;
+                offset += n;
+            }
+        }
+
+        run ( SCATTERS, chunks );
+
+        int[] swap = mIndices;
+        mIndices = mScratch;
+        mScratch = swap;
+    }
+
+    // Run a step on chunks [0, chunks), in parallel when worth it
+    private void run ( int step, int chunks )
+    {
+        if ( mPool == null || chunks <= 1 )
+        {
+            runChunks ( step, 0, chunks );
+        }
+        else
+        {
+            mPool.invoke ( new ChunkTask ( step, 0, chunks ) );
+        }
+    }
+
+    private void runChunks ( int step, int first, int last )
+    {
+        for ( int chunk = first; chunk < last; chunk++ )
+        {
+            int begin = chunk * CHUNK;
+            int end = Math.min ( mCount, begin + CHUNK );
+
+            switch ( step )
+            {
+                case DEPTHS:
+                    computeDepths ( chunk, begin, end );
+                    break;
+                case KEYS:
+                    computeKeys ( begin, end );
+                    break;
+                case HISTOGRAMS:
+                    countDigits ( chunk, begin, end );
+                    break;
+                default:
+                    scatter ( chunk, begin, end );
+                    break;
+            }
+        }
+    }
+
+    // View space z of points [begin, end) and their range
+    private void computeDepths ( int chunk, int begin, int end )
+    {
+        float m2 = mView[2], m6 = mView[6], m10 = mView[10], m14 = mView[14];
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+
+        for ( int i = begin; i < end; i++ )
+        {
+            float depth = m2 * mX[mXOffset + i * mStride] + m6 * mY[mYOffset + i * mStride]
+                          + m10 * mZ[mZOffset + i * mStride] + m14;
+
+            mDepths[i] = depth;
+            min = Math.min ( min, depth );
+            max = Math.max ( max, depth );
+        }
+
+        mChunkMin[chunk] = min;
+        mChunkMax[chunk] = max;
+    }
+
+    private void computeKeys ( int begin, int end )
+    {
+        for ( int i = begin; i < end; i++ )
+        {
+            mKeys[i] = ( int ) ( ( mDepths[i] - mMinDepth ) * mKeyScale );
+        }
+    }
+
+    private void countDigits ( int chunk, int begin, int end )
+    {
+        int[] histogram = mHistograms[chunk];
+        int mask = ( 1 << RADIX_BITS ) - 1;
+
+        Arrays.fill ( histogram, 0 );
+
+        for ( int i = begin; i < end; i++ )
+        {
+            histogram[( mKeys[mIndices[i]] >>> mShift ) & mask]++;
+        }
+    }
+
+    private void scatter ( int chunk, int begin, int end )
+    {
+        int[] offsets = mHistograms[chunk];
+        int mask = ( 1 << RADIX_BITS ) - 1;
+
+        for ( int i = begin; i < end; i++ )
+        {
+            int index = mIndices[i];
+
+            mScratch[offsets[( mKeys[index] >>> mShift ) & mask]++] = index;
+        }
+    }
+
+    // Split chunks [first, last) in halves down to single chunks, which
+    // run a step
+    private final class ChunkTask extends RecursiveAction
+    {
+        ChunkTask ( int step, int first, int last )
+        {
+            mStep = step;
+            mFirst = first;
+            mLast = last;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mLast - mFirst > 1 )
+            {
+                int middle = ( mFirst + mLast ) >>> 1;
+                invokeAll ( new ChunkTask ( mStep, mFirst, middle ),
+                            new ChunkTask ( mStep, middle, mLast ) );
+            }
+            else
+            {
+                runChunks ( mStep, mFirst, mLast );
+            }
+        }
+
+        private final int mStep;
+        private final int mFirst, mLast;
+    }
+
+    // Member variables
+    private final ForkJoinPool mPool;
+    private final ESBenchmark.Clock mClock;
+    private long mBudget;
+
+    // Points of the current sort
+    private float[] mX, mY, mZ;
+    private int mXOffset, mYOffset, mZOffset, mStride;
+    private float[] mView;
+
+    // Sorted indices, the buffer of the radix passes, and the count
+    private int[] mIndices;
+    private int[] mScratch;
+    private int mCount;
+
+    // The points moved since the last sort, see reorder()
+    private boolean mReordered;
+
+    // Depths and keys by point, and the depth to key mapping
+    private final float[] mDepths;
+    private final int[] mKeys;
+    private float mMinDepth;
+    private float mKeyScale;
+
+    // Per chunk depth ranges, and digit counts then offsets
+    private final float[] mChunkMin, mChunkMax;
+    private final int[][] mHistograms;
+    private int mShift;
+
+    // Last sort
+    private int mMethod;
+    private long mRadixNanos;
+
+    // Sorts in buckets since the last radix sort
+    private int mBucketSorts;
+
+    // Some constants: the steps of the chunks, and the moves per point
+    // an insertion sort may take
+    private static final int DEPTHS = 0;
+    private static final int KEYS = 1;
+    private static final int HISTOGRAMS = 2;
+    private static final int SCATTERS = 3;
+    private static final int MAX_INSERTION_MOVES = 4;
+}
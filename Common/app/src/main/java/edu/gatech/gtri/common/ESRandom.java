@@ -0,0 +1,431 @@
+package edu.gatech.gtri.common;
+
+import java.nio.FloatBuffer;
+
+//
+/// \brief Fast seedable random number generators, and bulk fills of float
+///    arrays and buffers with uniform, gaussian, sphere and disk samples.
+///
+/// Three generators, all reproducible from their seed and unsynchronized,
+/// unlike Math.random():
+///
+/// - SplitMix64: 64 bits of state, the fastest, and the seeder of the
+///   others.
+/// - Xoroshiro128: xoroshiro128++, 128 bits of state; split() hands out
+///   the current stream and jumps 2^64 numbers ahead, so splits never
+///   overlap.
+/// - Pcg32: PCG-XSH-RR 64/32, 32 bits per step, with 2^63 streams chosen
+///   at creation.
+///
+/// split() gives an independent generator, e.g. one per task of a
+/// parallel initializer, so that the result does not depend on the order
+/// the tasks run in.  Floats take the high 24 bits of a number and are
+/// exact in [0, 1); doubles take 53 bits.
+///
+/// This class has no Android dependencies.
+//
+public abstract class ESRandom
+{
+    //
+    ///
+    /// \brief Create the default generator, xoroshiro128++
+    //
+    public static ESRandom create ( long seed )
+    {
+        return new Xoroshiro128 ( seed );
+    }
+
+    //
+    ///
+    /// \brief Next 64 random bits
+    //
+    public abstract long nextLong();
+
+    //
+    ///
+    /// \brief Independent generator, for another thread or task
+    //
+    public abstract ESRandom split();
+
+    //
+    ///
+    /// \brief Next 32 random bits
+    //
+    public int nextInt()
+    {
+        return ( int ) ( nextLong() >>> 32 );
+    }
+
+    //
+    ///
+    /// \brief Uniform integer in [0, bound), without modulo bias
+    //
+    public int nextInt ( int bound )
+    {
+        if ( bound <= 0 )
+        {
+            throw new IllegalArgumentException ( "Invalid bound " + bound );
+        }
+
+        // Lemire's multiply and shift, rejecting the few biased products
+        long product = ( nextInt() & 0xffffffffL ) * bound;
+
+        if ( ( product & 0xffffffffL ) < bound )
+        {
+            long threshold = ( 0x100000000L - bound ) % bound;
+
+            while ( ( product & 0xffffffffL ) < threshold )
+            {
+                product = ( nextInt() & 0xffffffffL ) * bound;
+            }
+        }
+
+        return ( int ) ( product >>> 32 );
+    }
+
+    //
+    ///
+    /// \brief Uniform float in [0, 1)
+    //
+    public float nextFloat()
+    {
+        return ( nextInt() >>> 8 ) * FLOAT_UNIT;
+    }
+
+    //
+    ///
+    /// \brief Uniform double in [0, 1)
+    //
+    public double nextDouble()
+    {
+        return ( nextLong() >>> 11 ) * DOUBLE_UNIT;
+    }
+
+    //
+    ///
+    /// \brief Normally distributed double, mean 0 and standard deviation 1
+    //
+    public double nextGaussian()
+    {
+        if ( mHasSpare )
+        {
+            mHasSpare = false;
+            return mSpare;
+        }
+
+        // Marsaglia's polar method, a pair at a time
+        double u, v, s;
+
+        do
+        {
+            u = nextDouble() * 2.0 - 1.0;
+            v = nextDouble() * 2.0 - 1.0;
+            s = u * u + v * v;
+        }
+        while ( s >= 1.0 || s == 0.0 );
+
+        double scale = Math.sqrt ( -2.0 * Math.log ( s ) / s );
+
+        mSpare = v * scale;
+        mHasSpare = true;
+        return u * scale;
+    }
+
+    //
+    ///
+    /// \brief Fill count floats uniform in [min, max)
+    //
+    public void fillUniform ( float[] out, int offset, int count, float min, float max )
+    {
+        float range = max - min;
+
+        for ( int i = offset; i < offset + count; i++ )
+        {
+            out[i] = min + nextFloat() * range;
+        }
+    }
+
+    //
+    ///
+    /// \brief Fill count normally distributed floats
+    //
+    public void fillGaussian ( float[] out, int offset, int count, float mean, float deviation )
+    {
+        for ( int i = offset; i < offset + count; i++ )
+        {
+            out[i] = mean + ( float ) nextGaussian() * deviation;
+        }
+    }
+
+    //
+    ///
+    /// \brief Fill count points uniform on a sphere at the origin, x, y, z
+    ///    each
+    //
+    public void fillSphere ( float[] out, int offset, int count, float radius )
+    {
+        for ( int i = 0, o = offset; i < count; i++, o += 3 )
+        {
+            float z = nextFloat() * 2.0f - 1.0f;
+            double phi = nextFloat() * 2.0 * Math.PI;
+            float r = radius * ( float ) Math.sqrt ( Math.max ( 0.0f, 1.0f - z * z ) );
+
+            out[o] = r * ( float ) Math.cos ( phi );
+            out[o + 1] = r * ( float ) Math.sin ( phi );
+            out[o + 2] = radius * z;
+        }
+    }
+
+    //
+    ///
+    /// \brief Fill count points uniform in a disk at the origin, x, y each
+    //
+    public void fillDisk ( float[] out, int offset, int count, float radius )
+    {
+        for ( int i = 0, o = offset; i < count; i++, o += 2 )
+        {
+            float r = radius * ( float ) Math.sqrt ( nextFloat() );
+            double theta = nextFloat() * 2.0 * Math.PI;
+
+            out[o] = r * ( float ) Math.cos ( theta );
+            out[o + 1] = r * ( float ) Math.sin ( theta );
+        }
+    }
+
+    //
+    ///
+    /// \brief Put count floats uniform in [min, max) into a buffer, e.g. a
+    ///    direct vertex buffer, at its position, which is advanced
+    //
+    public void fillUniform ( FloatBuffer out, int count, float min, float max )
+    {
+        for ( int done = 0; done < count; done += BULK )
+        {
+            int n = Math.min ( BULK, count - done );
+
+            fillUniform ( bulk(), 0, n, min, max );
+            out.put ( mBulk, 0, n );
+        }
+    }
+
+    public void fillGaussian ( FloatBuffer out, int count, float mean, float deviation )
+    {
+        for ( int done = 0; done < count; done += BULK )
+        {
+            int n = Math.min ( BULK, count - done );
+
+            fillGaussian ( bulk(), 0, n, mean, deviation );
+            out.put ( mBulk, 0, n );
+        }
+    }
+
+    public void fillSphere ( FloatBuffer out, int count, float radius )
+    {
+        for ( int done = 0; done < count; done += BULK / 3 )
+        {
+            int n = Math.min ( BULK / 3, count - done );
+
+            fillSphere ( bulk(), 0, n, radius );
+            out.put ( mBulk, 0, n * 3 );
+        }
+    }
+
+    public void fillDisk ( FloatBuffer out, int count, float radius )
+    {
+        for ( int done = 0; done < count; done += BULK / 2 )
+        {
+            int n = Math.min ( BULK / 2, count - done );
+
+            fillDisk ( bulk(), 0, n, radius );
+            out.put ( mBulk, 0, n * 2 );
+        }
+    }
+
+    //
+    ///
+    /// \brief SplitMix64 of Steele, Lea and Flood, as Vigna's reference
+    //
+    public static final class SplitMix64 extends ESRandom
+    {
+        public SplitMix64 ( long seed )
+        {
+            mState = seed;
+        }
+
+        @Override
+        public long nextLong()
+        {
+            long z = ( mState += GOLDEN_GAMMA );
+
+            z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+            z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+            return z ^ ( z >>> 31 );
+        }
+
+        // A generator seeded by the next number, mixed once more
+        @Override
+        public ESRandom split()
+        {
+            return new SplitMix64 ( nextLong() ^ SPLIT_MIX );
+        }
+
+        private long mState;
+    }
+
+    //
+    ///
+    /// \brief xoroshiro128++ of Blackman and Vigna
+    //
+    public static final class Xoroshiro128 extends ESRandom
+    {
+        //
+        ///
+        /// \brief Create a generator, its state the first two SplitMix64
+        ///    numbers of the seed as recommended
+        //
+        public Xoroshiro128 ( long seed )
+        {
+            SplitMix64 seeder = new SplitMix64 ( seed );
+
+            mS0 = seeder.nextLong();
+            mS1 = seeder.nextLong();
+        }
+
+        private Xoroshiro128 ( long s0, long s1 )
+        {
+            mS0 = s0;
+            mS1 = s1;
+        }
+
+        @Override
+        public long nextLong()
+        {
+            long s0 = mS0;
+            long s1 = mS1;
+            long result = Long.rotateLeft ( s0 + s1, 17 ) + s0;
+
+            s1 ^= s0;
+            mS0 = Long.rotateLeft ( s0, 49 ) ^ s1 ^ ( s1 << 21 );
+            mS1 = Long.rotateLeft ( s1, 28 );
+            return result;
+        }
+
+        //
+        ///
+        /// \brief The generator as it is, this one jumped 2^64 numbers ahead
+        //
+        @Override
+        public ESRandom split()
+        {
+            ESRandom split = new Xoroshiro128 ( mS0, mS1 );
+
+            jump();
+            return split;
+        }
+
+        //
+        ///
+        /// \brief Advance 2^64 numbers
+        //
+        public void jump()
+        {
+            long s0 = 0, s1 = 0;
+
+            for ( long jump : JUMP )
+            {
+                for ( int b = 0; b < 64; b++ )
+                {
+                    if ( ( jump & ( 1L << b ) ) != 0 )
+                    {
+                        s0 ^= mS0;
+                        s1 ^= mS1;
+                    }
+
+                    nextLong();
+                }
+            }
+
+            mS0 = s0;
+            mS1 = s1;
+        }
+
+        private long mS0, mS1;
+
+        private static final long[] JUMP = { 0x2bd7a6a6e99c2ddcL, 0x0992ccaf6a6fca05L };
+    }
+
+    //
+    ///
+    /// \brief PCG-XSH-RR 64/32 of O'Neill, as pcg32_random_r
+    //
+    public static final class Pcg32 extends ESRandom
+    {
+        //
+        ///
+        /// \brief Create a generator as pcg32_srandom_r
+        /// \param stream Sequence, generators of distinct streams differ
+        //
+        public Pcg32 ( long seed, long stream )
+        {
+            mIncrement = ( stream << 1 ) | 1;
+            nextInt();
+            mState += seed;
+            nextInt();
+        }
+
+        @Override
+        public int nextInt()
+        {
+            long old = mState;
+
+            mState = old * MULTIPLIER + mIncrement;
+
+            int xorShifted = ( int ) ( ( ( old >>> 18 ) ^ old ) >>> 27 );
+            int rotation = ( int ) ( old >>> 59 );
+
+            return Integer.rotateRight ( xorShifted, rotation );
+        }
+
+        @Override
+        public long nextLong()
+        {
+            return ( ( long ) nextInt() << 32 ) | ( nextInt() & 0xffffffffL );
+        }
+
+        // A generator on another stream
+        @Override
+        public ESRandom split()
+        {
+            return new Pcg32 ( nextLong(), nextLong() );
+        }
+
+        private long mState;
+        private final long mIncrement;
+
+        private static final long MULTIPLIER = 6364136223846793005L;
+    }
+
+    private float[] bulk()
+    {
+        if ( mBulk == null )
+        {
+            mBulk = new float[BULK];
+        }
+
+        return mBulk;
+    }
+
+    // Member variables
+    private double mSpare;
+    private boolean mHasSpare;
+
+    // Floats of a bulk put into a buffer
+    private float[] mBulk;
+
+    // Some constants
+    private static final float FLOAT_UNIT = 1.0f / ( 1 << 24 );
+    private static final double DOUBLE_UNIT = 1.0 / ( 1L << 53 );
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final long SPLIT_MIX = 0x5851f42d4c957f2dL;
+    private static final int BULK = 1536;
+}
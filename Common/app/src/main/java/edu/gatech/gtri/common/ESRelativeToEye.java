@@ -0,0 +1,126 @@
+package edu.gatech.gtri.common;
+
+import java.lang.Math;
+import java.nio.FloatBuffer;
+
+//
+/// \brief Camera-relative transforms for geometry far from the origin.
+///
+/// World positions are kept in double precision on the CPU.  Geometry is
+/// uploaded as float offsets from a local center (a tile or model center),
+/// and every draw gets a model-view-projection matrix that maps those
+/// offsets with the eye at the origin.  The center - eye difference is
+/// formed in double precision and folded into the matrix before the
+/// matrix is rounded to float, so single precision only ever sees the
+/// small offsets and the eye-relative position.  The vertex error is then
+/// proportional to the size of the geometry and its distance to the eye,
+/// not to its distance from the world origin: millimeters for a few
+/// kilometers of terrain seen up close, on a globe with a radius of 6378 km.
+///
+/// The view-projection matrix must not contain the eye translation, e.g.
+/// a look-at matrix from the origin times a projection.
+///
+/// This class has no Android dependencies.
+//
+public class ESRelativeToEye
+{
+    //
+    ///
+    /// \brief Set the eye position in world coordinates
+    //
+    public void setEye ( double x, double y, double z )
+    {
+        mEyeX = x;
+        mEyeY = y;
+        mEyeZ = z;
+    }
+
+    //
+    ///
+    /// \brief Set the view-projection matrix relative to the eye
+    /// \param viewProj Column-major matrix, as returned by ESTransform.get()
+    //
+    public void setViewProjection ( float[] viewProj )
+    {
+        for ( int i = 0; i < 16; i++ )
+        {
+            mViewProj[i] = viewProj[i];
+        }
+    }
+
+    //
+    ///
+    /// \brief Compute the model-view-projection matrix of geometry stored
+    ///    relative to a center
+    /// \param centerX, centerY, centerZ Center in world coordinates
+    /// \param mvp Receives the column-major matrix
+    //
+    public void computeMvp ( double centerX, double centerY, double centerZ, float[] mvp )
+    {
+        double dx = centerX - mEyeX;
+        double dy = centerY - mEyeY;
+        double dz = centerZ - mEyeZ;
+
+        for ( int row = 0; row < 4; row++ )
+        {
+            mvp[0 * 4 + row] = ( float ) mViewProj[0 * 4 + row];
+            mvp[1 * 4 + row] = ( float ) mViewProj[1 * 4 + row];
+            mvp[2 * 4 + row] = ( float ) mViewProj[2 * 4 + row];
+            mvp[3 * 4 + row] = ( float ) ( mViewProj[0 * 4 + row] * dx + mViewProj[1 * 4 + row] * dy
+                                           + mViewProj[2 * 4 + row] * dz + mViewProj[3 * 4 + row] );
+        }
+    }
+
+    //
+    ///
+    /// \brief Convert double-precision world positions to float offsets
+    /// \param positions xyz triples in world coordinates
+    /// \param count Number of positions
+    /// \param centerX, centerY, centerZ Center the offsets are relative to
+    /// \param out Receives count xyz triples at its current position, which
+    ///    is advanced
+    //
+    public static void toRelative ( double[] positions, int count,
+                                    double centerX, double centerY, double centerZ, FloatBuffer out )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            out.put ( ( float ) ( positions[i * 3] - centerX ) );
+            out.put ( ( float ) ( positions[i * 3 + 1] - centerY ) );
+            out.put ( ( float ) ( positions[i * 3 + 2] - centerZ ) );
+        }
+    }
+
+    //
+    ///
+    /// \brief Center of the bounding box of world positions, a good choice
+    ///    of center for toRelative() since it minimizes the largest offset
+    //
+    public static void computeCenter ( double[] positions, int count, double[] center )
+    {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+
+        for ( int i = 0; i < count; i++ )
+        {
+            minX = Math.min ( minX, positions[i * 3] );
+            minY = Math.min ( minY, positions[i * 3 + 1] );
+            minZ = Math.min ( minZ, positions[i * 3 + 2] );
+            maxX = Math.max ( maxX, positions[i * 3] );
+            maxY = Math.max ( maxY, positions[i * 3 + 1] );
+            maxZ = Math.max ( maxZ, positions[i * 3 + 2] );
+        }
+
+        center[0] = ( minX + maxX ) * 0.5;
+        center[1] = ( minY + maxY ) * 0.5;
+        center[2] = ( minZ + maxZ ) * 0.5;
+    }
+
+    public double getEyeX() { return mEyeX; }
+    public double getEyeY() { return mEyeY; }
+    public double getEyeZ() { return mEyeZ; }
+
+    // Member variables
+    private double mEyeX, mEyeY, mEyeZ;
+    private final double[] mViewProj = new double[16];
+}
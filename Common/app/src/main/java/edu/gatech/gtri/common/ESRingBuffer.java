@@ -0,0 +1,194 @@
+package edu.gatech.gtri.common;
+
+import java.util.Arrays;
+
+//
+/// \brief Allocator for streaming data through a ring-buffered VBO.
+///
+/// The buffer object is created once with a fixed capacity.  Each frame
+/// that has new data allocates ranges from the ring and writes them with
+/// glMapBufferRange ( GL_MAP_INVALIDATE_RANGE_BIT |
+/// GL_MAP_UNSYNCHRONIZED_BIT ), so the driver neither reallocates nor
+/// waits for the GPU.  This is safe because the allocator never hands out
+/// a range that a frame still in flight may read:
+///
+/// - The ranges allocated in a frame replace those of the previous frame
+///   that allocated anything; the renderer keeps drawing the latest ranges
+///   until it allocates new ones.
+/// - endFrame() inserts a fence after the draws of each frame.  Replaced
+///   ranges are reused only once the fence of the frame that replaced them
+///   has signaled, waited on framesInFlight frames later, when the GPU has
+///   usually long passed it.
+///
+/// A range never wraps around the end of the ring; the rest of the ring
+/// is skipped instead.  Units are up to the caller, e.g. vertices.
+///
+/// This class has no Android dependencies.
+//
+public class ESRingBuffer
+{
+    //
+    ///
+    /// \brief Fence sync objects, e.g. glFenceSync() and glClientWaitSync()
+    //
+    public interface Fences
+    {
+        // Fence after the commands issued so far
+        long insert();
+
+        // Block until the commands before a fence have completed
+        void clientWait ( long fence );
+
+        void delete ( long fence );
+    }
+
+    //
+    ///
+    /// \brief Create an allocator that trusts the GPU to lag no more than
+    ///    framesInFlight frames behind, e.g. for tests or the CPU side of a
+    ///    replay
+    //
+    public ESRingBuffer ( int capacity, int framesInFlight )
+    {
+        this ( capacity, framesInFlight, null );
+    }
+
+    //
+    ///
+    /// \brief Create an allocator
+    /// \param capacity Size of the ring
+    /// \param framesInFlight Number of frames the GPU may lag behind,
+    ///    usually 2 or 3
+    /// \param fences Fences guarding the reuse of ranges, or null
+    //
+    public ESRingBuffer ( int capacity, int framesInFlight, Fences fences )
+    {
+        if ( capacity <= 0 || framesInFlight <= 0 )
+        {
+            throw new IllegalArgumentException ( "Capacity and frames in flight must be positive" );
+        }
+
+        mCapacity = capacity;
+        mRetire = new int[framesInFlight];
+        mFence = new long[framesInFlight];
+        mFences = fences;
+        Arrays.fill ( mRetire, -1 );
+    }
+
+    //
+    ///
+    /// \brief Allocate a range
+    /// \param count Size of the range, greater than 0
+    /// \return Offset of the range, or -1 if there is no room until more
+    ///    frames have ended
+    //
+    public int allocate ( int count )
+    {
+        if ( count <= 0 || count > mCapacity )
+        {
+            throw new IllegalArgumentException ( "Cannot allocate " + count + " from a ring of " + mCapacity );
+        }
+
+        int padding = ( mHead + count > mCapacity ) ? mCapacity - mHead : 0;
+
+        if ( padding + count > mCapacity - mUsed )
+        {
+            return -1;
+        }
+
+        if ( padding > 0 )
+        {
+            mHead = 0;
+            mUsed += padding;
+        }
+
+        int offset = mHead;
+
+        // Everything before the first range of the frame is replaced, which
+        // includes a skipped end
+        if ( mFrameStart < 0 )
+        {
+            mFrameStart = offset;
+        }
+
+        mHead = ( mHead + count ) % mCapacity;
+        mUsed += count;
+        mAllocations++;
+        return offset;
+    }
+
+    //
+    ///
+    /// \brief End a frame, after its last draw reading the ring.  Data
+    ///    replaced framesInFlight frames ago is freed, once the GPU is done
+    ///    with the frame that replaced it.
+    //
+    public void endFrame()
+    {
+        int slot = ( int ) ( mFrame % mRetire.length );
+
+        // Once that frame has left the GPU, everything before its data is
+        // free
+        if ( mRetire[slot] >= 0 )
+        {
+            if ( mFences != null )
+            {
+                mFences.clientWait ( mFence[slot] );
+            }
+
+            retire ( mRetire[slot] );
+        }
+
+        if ( mFences != null )
+        {
+            if ( mFence[slot] != 0 )
+            {
+                mFences.delete ( mFence[slot] );
+            }
+
+            mFence[slot] = mFences.insert();
+        }
+
+        mRetire[slot] = mFrameStart;
+        mFrameStart = -1;
+        mFrame++;
+    }
+
+    public int getCapacity() { return mCapacity; }
+
+    //
+    ///
+    /// \brief Size of the ring that may still be read by the GPU, including
+    ///    skipped ends
+    //
+    public int getUsed() { return mUsed; }
+    public long getFrame() { return mFrame; }
+    public long getAllocations() { return mAllocations; }
+
+    // Free the ring from the tail up to an offset.  The data at the offset
+    // is the oldest still needed, so an offset at the tail frees nothing.
+    private void retire ( int offset )
+    {
+        mUsed -= ( offset - mTail + mCapacity ) % mCapacity;
+        mTail = offset;
+    }
+
+    // Member variables
+    private final int mCapacity;
+    private int mHead;
+    private int mTail;
+    private int mUsed;
+
+    // Start of the first range of the current frame, or -1
+    private int mFrameStart = -1;
+
+    // Start of the data of each frame in flight, indexed by frame modulo
+    // the number of frames in flight
+    private final int[] mRetire;
+    private long mFrame;
+
+    // Fence of each frame in flight, 0 for none
+    private final long[] mFence;
+    private final Fences mFences;
+    private long mAllocations;
+}
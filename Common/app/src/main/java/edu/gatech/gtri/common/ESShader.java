@@ -180,6 +180,24 @@ public class ESShader
     ///    pair, 0 on failure
     //
     public static int loadProgramFromAsset ( Context context, String vertexShaderFileName, String fragShaderFileName )
+    {
+        return loadProgramFromAsset ( context, vertexShaderFileName, fragShaderFileName, null );
+    }
+
+    //
+    ///
+    /// \brief Load a vertex and fragment shader from "assets", create a program object
+    ///    capturing vertex shader outputs by transform feedback, link program.
+    /// Errors output to log.
+    /// \param vertShaderFileName Vertex shader source file name
+    /// \param fragShaderFileName Fragment shader source file name
+    /// \param feedbackVaryings Outputs captured, interleaved in this order, or
+    ///    null for none
+    /// \return A new program object linked with the vertex/fragment shader
+    ///    pair, 0 on failure
+    //
+    public static int loadProgramFromAsset ( Context context, String vertexShaderFileName, String fragShaderFileName,
+                                             String[] feedbackVaryings )
     {
         int vertexShader;
         int fragmentShader;
@@ -233,6 +251,12 @@ public class ESShader
         GLES30.glAttachShader ( programObject, vertexShader );
         GLES30.glAttachShader ( programObject, fragmentShader );
 
+        // Outputs to capture must be known before linking
+        if ( feedbackVaryings != null )
+        {
+            GLES30.glTransformFeedbackVaryings ( programObject, feedbackVaryings, GLES30.GL_INTERLEAVED_ATTRIBS );
+        }
+
         // Link the program
         GLES30.glLinkProgram ( programObject );
 
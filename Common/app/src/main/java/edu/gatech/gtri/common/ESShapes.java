@@ -171,11 +171,171 @@ public class ESShapes
         return numIndices;
     }
 
+    public int genSquareGrid ( short size, short patchSize )
+    {
+        int numIndices = genSquareGrid ( size );
+        int numQuads = size - 1;
+        int patchesPerSide = ( numQuads - 1 ) / patchSize + 1;
+        int index = 0;
+
+        // Same vertices as genSquareGrid(), but the quads of each patch are
+        // stored contiguously so a patch can be drawn with a single call.
+        // Patches are numbered with the first grid axis varying fastest.
+        mPatchIndexOffsets = new int[patchesPerSide * patchesPerSide + 1];
+
+        for ( int pj = 0; pj < patchesPerSide; pj++ )
+        {
+            for ( int pi = 0; pi < patchesPerSide; pi++ )
+            {
+                mPatchIndexOffsets[pj * patchesPerSide + pi] = index;
+
+                for ( int i = pi * patchSize; i < Math.min ( ( pi + 1 ) * patchSize, numQuads ); ++i )
+                {
+                    for ( int j = pj * patchSize; j < Math.min ( ( pj + 1 ) * patchSize, numQuads ); ++j )
+                    {
+                        // Two triangles per quad
+                        mIndices.put ( index++, (short) (j + (i) * (size)));
+                        mIndices.put ( index++, (short) (j + (i) * (size) + 1));
+                        mIndices.put ( index++, (short) (j + (i + 1) * (size) + 1));
+
+                        mIndices.put ( index++, (short) (j + (i) * (size)));
+                        mIndices.put ( index++, (short) (j + (i + 1) * (size) + 1));
+                        mIndices.put ( index++, (short) (j + (i + 1) * (size)));
+                    }
+                }
+            }
+        }
+
+        mPatchIndexOffsets[patchesPerSide * patchesPerSide] = index;
+        return numIndices;
+    }
+
+    //
+    ///
+    /// \brief Generate a size x size grid covering a geodetic tile of an
+    ///    ellipsoid (see ESGlobeQuadtree), with a skirt along its border
+    ///
+    /// Vertices are relative to the tile center, which is returned in
+    /// double precision so that the tile can be drawn relative to the eye.
+    /// Texture coordinates run from (0, 0) at the north-west corner to
+    /// (1, 1) at the south-east corner.  The skirt hangs skirtDepth below
+    /// the border to hide cracks between tiles of different levels.
+    /// Triangles are counter-clockwise seen from outside the ellipsoid.
+    //
+    public int genGeodeticTile ( int size, ESGeodesy geodesy,
+                                 double west, double south, double east, double north,
+                                 float skirtDepth, double[] center )
+    {
+        int numVertices = size * size + 4 * size;
+        int numQuads = size - 1;
+        int numIndices = numQuads * numQuads * 6 + 4 * numQuads * 6;
+        double[] position = new double[3];
+        int i, j;
+
+        mVertices = ByteBuffer.allocateDirect ( numVertices * NUM_VERTICES_TRIANGLE * Float.BYTES ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+        mNormals = ByteBuffer.allocateDirect ( numVertices * NUM_NORMALS_TRIANGLE * Float.BYTES ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+        mTexCoords = ByteBuffer.allocateDirect ( numVertices * NUM_COORDS_TEX_2D * Float.BYTES ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+        mIndices = ByteBuffer.allocateDirect ( numIndices * Short.BYTES ).order ( ByteOrder.nativeOrder() ).asShortBuffer();
+
+        // Center of the tile on the surface
+        geodesy.geodeticToEcef ( 0.5 * ( west + east ), 0.5 * ( south + north ), 0.0, center, 0 );
+
+        for ( int v = 0; v < numVertices; v++ )
+        {
+            double height = 0.0;
+
+            if ( v < size * size )
+            {
+                i = v % size;
+                j = v / size;
+            }
+            else
+            {
+                // Skirt vertices follow the north, south, west and east edges
+                int edge = ( v - size * size ) / size;
+                int k = ( v - size * size ) % size;
+
+                i = edge < 2 ? k : ( edge == 2 ? 0 : numQuads );
+                j = edge < 2 ? ( edge == 0 ? 0 : numQuads ) : k;
+                height = -skirtDepth;
+            }
+
+            double lon = west + ( east - west ) * i / numQuads;
+            double lat = north - ( north - south ) * j / numQuads;
+            double cosLat = Math.cos ( Math.toRadians ( lat ) );
+
+            geodesy.geodeticToEcef ( lon, lat, height, position, 0 );
+
+            mVertices.put ( v * 3 + 0, ( float ) ( position[0] - center[0] ) );
+            mVertices.put ( v * 3 + 1, ( float ) ( position[1] - center[1] ) );
+            mVertices.put ( v * 3 + 2, ( float ) ( position[2] - center[2] ) );
+
+            mNormals.put ( v * 3 + 0, ( float ) ( cosLat * Math.cos ( Math.toRadians ( lon ) ) ) );
+            mNormals.put ( v * 3 + 1, ( float ) ( cosLat * Math.sin ( Math.toRadians ( lon ) ) ) );
+            mNormals.put ( v * 3 + 2, ( float ) Math.sin ( Math.toRadians ( lat ) ) );
+
+            mTexCoords.put ( v * 2 + 0, ( float ) i / numQuads );
+            mTexCoords.put ( v * 2 + 1, ( float ) j / numQuads );
+        }
+
+        int index = 0;
+
+        for ( j = 0; j < numQuads; j++ )
+        {
+            for ( i = 0; i < numQuads; i++ )
+            {
+                mIndices.put ( index++, ( short ) (   j       * size + i ) );
+                mIndices.put ( index++, ( short ) ( ( j + 1 ) * size + i ) );
+                mIndices.put ( index++, ( short ) ( ( j + 1 ) * size + i + 1 ) );
+
+                mIndices.put ( index++, ( short ) (   j       * size + i ) );
+                mIndices.put ( index++, ( short ) ( ( j + 1 ) * size + i + 1 ) );
+                mIndices.put ( index++, ( short ) (   j       * size + i + 1 ) );
+            }
+        }
+
+        // Skirt walls, walking the border counter-clockwise so they face outwards
+        int skirt = size * size;
+
+        for ( int k = 0; k < numQuads; k++ )
+        {
+            // West edge, north to south
+            index = putSkirtQuad ( index, k * size, ( k + 1 ) * size, skirt + 2 * size + k, skirt + 2 * size + k + 1 );
+
+            // South edge, west to east
+            index = putSkirtQuad ( index, numQuads * size + k, numQuads * size + k + 1, skirt + size + k, skirt + size + k + 1 );
+
+            // East edge, south to north
+            index = putSkirtQuad ( index, ( k + 1 ) * size + numQuads, k * size + numQuads,
+                                   skirt + 3 * size + k + 1, skirt + 3 * size + k );
+
+            // North edge, east to west
+            index = putSkirtQuad ( index, k + 1, k, skirt + k + 1, skirt + k );
+        }
+
+        mNumIndices = numIndices;
+        return numIndices;
+    }
+
+    // Wall below the border edge a -> b, whose skirt copies are a2 and b2
+    private int putSkirtQuad ( int index, int a, int b, int a2, int b2 )
+    {
+        mIndices.put ( index++, ( short ) a );
+        mIndices.put ( index++, ( short ) a2 );
+        mIndices.put ( index++, ( short ) b2 );
+
+        mIndices.put ( index++, ( short ) a );
+        mIndices.put ( index++, ( short ) b2 );
+        mIndices.put ( index++, ( short ) b );
+        return index;
+    }
+
     public FloatBuffer getVertices() { return mVertices; }
     public FloatBuffer getNormals() { return mNormals; }
     public FloatBuffer getTexCoords() { return mTexCoords; }
     public ShortBuffer getIndices() { return mIndices; }
     public int getNumIndices() { return mNumIndices; }
+    public int[] getPatchIndexOffsets() { return mPatchIndexOffsets; }
 
     // Member variables
     private FloatBuffer mVertices;
@@ -183,6 +343,7 @@ public class ESShapes
     private FloatBuffer mTexCoords;
     private ShortBuffer mIndices;
     private int mNumIndices;
+    private int[] mPatchIndexOffsets;
 
     // Some constants
     private final int NUM_VERTICES_TRIANGLE = 3;
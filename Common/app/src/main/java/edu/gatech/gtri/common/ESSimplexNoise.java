@@ -0,0 +1,311 @@
+package edu.gatech.gtri.common;
+
+//
+/// \brief Simplex noise in 2D, 3D and 4D, seeded.
+///
+/// Ken Perlin's simplex noise as laid out by Stefan Gustavson: the point
+/// is skewed onto a lattice of simplices (triangles, tetrahedra,
+/// pentachora), and the radial kernels of the N + 1 corners, each a
+/// hashed gradient dotted with the offset, are summed.  Against the
+/// gradient noise of ESNoise3D it visits N + 1 corners instead of 2^N,
+/// has no axis-aligned artifacts, and extends to 4D, e.g. 3D animated in
+/// time.  Values are in [-1, 1].
+///
+/// The permutation is shuffled from the seed, so noise of the same seed
+/// is the same everywhere, and the arithmetic is float throughout with no
+/// state, so the batches over coordinate arrays give the values of the
+/// points to the bit and any thread may evaluate.
+///
+/// This class has no Android dependencies.
+//
+public class ESSimplexNoise
+{
+    //
+    ///
+    /// \brief Create noise from a seed
+    //
+    public ESSimplexNoise ( long seed )
+    {
+        ESRandom random = ESRandom.create ( seed );
+        int[] perm = new int[256];
+
+        for ( int i = 0; i < 256; i++ )
+        {
+            perm[i] = i;
+        }
+
+        // Fisher-Yates
+        for ( int i = 255; i > 0; i-- )
+        {
+            int j = random.nextInt ( i + 1 );
+            int swap = perm[i];
+
+            perm[i] = perm[j];
+            perm[j] = swap;
+        }
+
+        // Doubled so that sums of indices need no wrap
+        for ( int i = 0; i < 512; i++ )
+        {
+            mPerm[i] = perm[i & 255];
+            mPermMod12[i] = mPerm[i] % 12;
+        }
+
+        mSeed = seed;
+    }
+
+    public long getSeed() { return mSeed; }
+
+    //
+    ///
+    /// \brief Noise at a point in 2D
+    //
+    public float noise2D ( float x, float y )
+    {
+        // Skew onto the lattice of triangles and find the cell
+        float s = ( x + y ) * F2;
+        int i = floor ( x + s );
+        int j = floor ( y + s );
+        float t = ( i + j ) * G2;
+        float x0 = x - ( i - t );
+        float y0 = y - ( j - t );
+
+        // Lower or upper triangle of the cell
+        int i1 = x0 > y0 ? 1 : 0;
+        int j1 = 1 - i1;
+
+        float x1 = x0 - i1 + G2;
+        float y1 = y0 - j1 + G2;
+        float x2 = x0 - 1.0f + 2.0f * G2;
+        float y2 = y0 - 1.0f + 2.0f * G2;
+        int ii = i & 255;
+        int jj = j & 255;
+
+        return 70.0f * ( corner2D ( mPermMod12[ii + mPerm[jj]], x0, y0 )
+                         + corner2D ( mPermMod12[ii + i1 + mPerm[jj + j1]], x1, y1 )
+                         + corner2D ( mPermMod12[ii + 1 + mPerm[jj + 1]], x2, y2 ) );
+    }
+
+    //
+    ///
+    /// \brief Noise at a point in 3D
+    //
+    public float noise3D ( float x, float y, float z )
+    {
+        float s = ( x + y + z ) * F3;
+        int i = floor ( x + s );
+        int j = floor ( y + s );
+        int k = floor ( z + s );
+        float t = ( i + j + k ) * G3;
+        float x0 = x - ( i - t );
+        float y0 = y - ( j - t );
+        float z0 = z - ( k - t );
+        int i1, j1, k1, i2, j2, k2;
+
+        // The tetrahedron of the cube, by the order of the offsets
+        if ( x0 >= y0 )
+        {
+            if ( y0 >= z0 )
+            {
+                i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+            }
+            else if ( x0 >= z0 )
+            {
+                i1 = 1; j1 = 0; k1 = 0; i2 = 1; j2 = 0; k2 = 1;
+            }
+            else
+            {
+                i1 = 0; j1 = 0; k1 = 1; i2 = 1; j2 = 0; k2 = 1;
+            }
+        }
+        else
+        {
+            if ( y0 < z0 )
+            {
+                i1 = 0; j1 = 0; k1 = 1; i2 = 0; j2 = 1; k2 = 1;
+            }
+            else if ( x0 < z0 )
+            {
+                i1 = 0; j1 = 1; k1 = 0; i2 = 0; j2 = 1; k2 = 1;
+            }
+            else
+            {
+                i1 = 0; j1 = 1; k1 = 0; i2 = 1; j2 = 1; k2 = 0;
+            }
+        }
+
+        float x1 = x0 - i1 + G3, y1 = y0 - j1 + G3, z1 = z0 - k1 + G3;
+        float x2 = x0 - i2 + 2.0f * G3, y2 = y0 - j2 + 2.0f * G3, z2 = z0 - k2 + 2.0f * G3;
+        float x3 = x0 - 1.0f + 3.0f * G3, y3 = y0 - 1.0f + 3.0f * G3, z3 = z0 - 1.0f + 3.0f * G3;
+        int ii = i & 255, jj = j & 255, kk = k & 255;
+        int[] p = mPerm;
+
+        return 32.0f * ( corner3D ( mPermMod12[ii + p[jj + p[kk]]], x0, y0, z0 )
+                         + corner3D ( mPermMod12[ii + i1 + p[jj + j1 + p[kk + k1]]], x1, y1, z1 )
+                         + corner3D ( mPermMod12[ii + i2 + p[jj + j2 + p[kk + k2]]], x2, y2, z2 )
+                         + corner3D ( mPermMod12[ii + 1 + p[jj + 1 + p[kk + 1]]], x3, y3, z3 ) );
+    }
+
+    //
+    ///
+    /// \brief Noise at a point in 4D
+    //
+    public float noise4D ( float x, float y, float z, float w )
+    {
+        float s = ( x + y + z + w ) * F4;
+        int i = floor ( x + s );
+        int j = floor ( y + s );
+        int k = floor ( z + s );
+        int l = floor ( w + s );
+        float t = ( i + j + k + l ) * G4;
+        float x0 = x - ( i - t );
+        float y0 = y - ( j - t );
+        float z0 = z - ( k - t );
+        float w0 = w - ( l - t );
+
+        // Rank the offsets: the largest gets to step first
+        int rankX = 0, rankY = 0, rankZ = 0, rankW = 0;
+
+        if ( x0 > y0 ) rankX++; else rankY++;
+        if ( x0 > z0 ) rankX++; else rankZ++;
+        if ( x0 > w0 ) rankX++; else rankW++;
+        if ( y0 > z0 ) rankY++; else rankZ++;
+        if ( y0 > w0 ) rankY++; else rankW++;
+        if ( z0 > w0 ) rankZ++; else rankW++;
+
+        int i1 = rankX >= 3 ? 1 : 0, j1 = rankY >= 3 ? 1 : 0, k1 = rankZ >= 3 ? 1 : 0, l1 = rankW >= 3 ? 1 : 0;
+        int i2 = rankX >= 2 ? 1 : 0, j2 = rankY >= 2 ? 1 : 0, k2 = rankZ >= 2 ? 1 : 0, l2 = rankW >= 2 ? 1 : 0;
+        int i3 = rankX >= 1 ? 1 : 0, j3 = rankY >= 1 ? 1 : 0, k3 = rankZ >= 1 ? 1 : 0, l3 = rankW >= 1 ? 1 : 0;
+
+        float x1 = x0 - i1 + G4, y1 = y0 - j1 + G4, z1 = z0 - k1 + G4, w1 = w0 - l1 + G4;
+        float x2 = x0 - i2 + 2.0f * G4, y2 = y0 - j2 + 2.0f * G4, z2 = z0 - k2 + 2.0f * G4, w2 = w0 - l2 + 2.0f * G4;
+        float x3 = x0 - i3 + 3.0f * G4, y3 = y0 - j3 + 3.0f * G4, z3 = z0 - k3 + 3.0f * G4, w3 = w0 - l3 + 3.0f * G4;
+        float x4 = x0 - 1.0f + 4.0f * G4, y4 = y0 - 1.0f + 4.0f * G4, z4 = z0 - 1.0f + 4.0f * G4, w4 = w0 - 1.0f + 4.0f * G4;
+        int ii = i & 255, jj = j & 255, kk = k & 255, ll = l & 255;
+        int[] p = mPerm;
+
+        return 27.0f * ( corner4D ( p[ii + p[jj + p[kk + p[ll]]]] & 31, x0, y0, z0, w0 )
+                         + corner4D ( p[ii + i1 + p[jj + j1 + p[kk + k1 + p[ll + l1]]]] & 31, x1, y1, z1, w1 )
+                         + corner4D ( p[ii + i2 + p[jj + j2 + p[kk + k2 + p[ll + l2]]]] & 31, x2, y2, z2, w2 )
+                         + corner4D ( p[ii + i3 + p[jj + j3 + p[kk + k3 + p[ll + l3]]]] & 31, x3, y3, z3, w3 )
+                         + corner4D ( p[ii + 1 + p[jj + 1 + p[kk + 1 + p[ll + 1]]]] & 31, x4, y4, z4, w4 ) );
+    }
+
+    //
+    ///
+    /// \brief Noise at count points in 2D, out[i] = noise2D ( x[i], y[i] )
+    ///    for i from offset
+    //
+    public void noise2D ( float[] x, float[] y, float[] out, int offset, int count )
+    {
+        for ( int i = offset; i < offset + count; i++ )
+        {
+            out[i] = noise2D ( x[i], y[i] );
+        }
+    }
+
+    //
+    ///
+    /// \brief Noise at count points in 3D
+    //
+    public void noise3D ( float[] x, float[] y, float[] z, float[] out, int offset, int count )
+    {
+        for ( int i = offset; i < offset + count; i++ )
+        {
+            out[i] = noise3D ( x[i], y[i], z[i] );
+        }
+    }
+
+    //
+    ///
+    /// \brief Noise at count points in 4D
+    //
+    public void noise4D ( float[] x, float[] y, float[] z, float[] w, float[] out, int offset, int count )
+    {
+        for ( int i = offset; i < offset + count; i++ )
+        {
+            out[i] = noise4D ( x[i], y[i], z[i], w[i] );
+        }
+    }
+
+    // Kernel of a corner: ( r^2 - d^2 )^4 times the gradient dot offset
+    private static float corner2D ( int gradient, float x, float y )
+    {
+        float t = 0.5f - x * x - y * y;
+
+        if ( t < 0.0f )
+        {
+            return 0.0f;
+        }
+
+        t *= t;
+        return t * t * ( GRAD3[gradient * 3] * x + GRAD3[gradient * 3 + 1] * y );
+    }
+
+    private static float corner3D ( int gradient, float x, float y, float z )
+    {
+        float t = 0.6f - x * x - y * y - z * z;
+
+        if ( t < 0.0f )
+        {
+            return 0.0f;
+        }
+
+        t *= t;
+        return t * t * ( GRAD3[gradient * 3] * x + GRAD3[gradient * 3 + 1] * y + GRAD3[gradient * 3 + 2] * z );
+    }
+
+    private static float corner4D ( int gradient, float x, float y, float z, float w )
+    {
+        float t = 0.6f - x * x - y * y - z * z - w * w;
+
+        if ( t < 0.0f )
+        {
+            return 0.0f;
+        }
+
+        t *= t;
+        return t * t * ( GRAD4[gradient * 4] * x + GRAD4[gradient * 4 + 1] * y
+                         + GRAD4[gradient * 4 + 2] * z + GRAD4[gradient * 4 + 3] * w );
+    }
+
+    private static int floor ( float x )
+    {
+        int i = ( int ) x;
+
+        return x < i ? i - 1 : i;
+    }
+
+    // Member variables
+    private final int[] mPerm = new int[512];
+    private final int[] mPermMod12 = new int[512];
+    private final long mSeed;
+
+    // Some constants
+    private static final float F2 = ( float ) ( 0.5 * ( Math.sqrt ( 3.0 ) - 1.0 ) );
+    private static final float G2 = ( float ) ( ( 3.0 - Math.sqrt ( 3.0 ) ) / 6.0 );
+    private static final float F3 = 1.0f / 3.0f;
+    private static final float G3 = 1.0f / 6.0f;
+    private static final float F4 = ( float ) ( ( Math.sqrt ( 5.0 ) - 1.0 ) / 4.0 );
+    private static final float G4 = ( float ) ( ( 5.0 - Math.sqrt ( 5.0 ) ) / 20.0 );
+
+    // Midpoints of the edges of a cube, and of the cubes of a tesseract
+    private static final float[] GRAD3 =
+    {
+        1, 1, 0,  -1, 1, 0,  1, -1, 0,  -1, -1, 0,
+        1, 0, 1,  -1, 0, 1,  1, 0, -1,  -1, 0, -1,
+        0, 1, 1,  0, -1, 1,  0, 1, -1,  0, -1, -1
+    };
+
+    private static final float[] GRAD4 =
+    {
+        0, 1, 1, 1,  0, 1, 1, -1,  0, 1, -1, 1,  0, 1, -1, -1,
+        0, -1, 1, 1,  0, -1, 1, -1,  0, -1, -1, 1,  0, -1, -1, -1,
+        1, 0, 1, 1,  1, 0, 1, -1,  1, 0, -1, 1,  1, 0, -1, -1,
+        -1, 0, 1, 1,  -1, 0, 1, -1,  -1, 0, -1, 1,  -1, 0, -1, -1,
+        1, 1, 0, 1,  1, 1, 0, -1,  1, -1, 0, 1,  1, -1, 0, -1,
+        -1, 1, 0, 1,  -1, 1, 0, -1,  -1, -1, 0, 1,  -1, -1, 0, -1,
+        1, 1, 1, 0,  1, 1, -1, 0,  1, -1, 1, 0,  1, -1, -1, 0,
+        -1, 1, 1, 0,  -1, 1, -1, 0,  -1, -1, 1, 0,  -1, -1, -1, 0
+    };
+}
@@ -0,0 +1,394 @@
+package edu.gatech.gtri.common;
+
+import java.lang.Math;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+//
+/// \brief Brush editing of a height grid with dirty-rectangle tracking.
+///
+/// Brushes modify the CPU height grid in place.  The union of all samples
+/// changed since the last flush() is tracked as a dirty rectangle, and the
+/// derived data (the optional per-sample normals and min/max pyramid) is
+/// recomputed only inside it.  flush() packs the dirty rectangle into a
+/// staging buffer and hands it to an Uploader, which typically calls
+/// glTexSubImage2D for a heightmap texture or glBufferSubData for a vertex
+/// buffer with one vertex per sample, so a stroke never re-uploads the
+/// whole grid.
+///
+/// Heights are kept in [0, 1], the range of a normalized heightmap.  The
+/// grid layout is the one used by ESHeightQuery.  The editor is not thread
+/// safe; queries over the same grid must not run while a brush is applied.
+///
+/// This class has no Android dependencies.
+//
+public class ESTerrainEditor
+{
+    //
+    ///
+    /// \brief Receives the dirty region of the grid on flush()
+    //
+    public interface Uploader
+    {
+        //
+        ///
+        /// \brief Called once per flush with the changed rectangle
+        /// \param col, row First sample of the rectangle
+        /// \param width, height Size of the rectangle in samples
+        /// \param heights Heights of the rectangle, row-major and tightly
+        ///    packed, top row first.  Only valid during the call.
+        //
+        void uploadRegion ( int col, int row, int width, int height, FloatBuffer heights );
+    }
+
+    // Brush types
+    public static final int BRUSH_RAISE = 0;
+    public static final int BRUSH_LOWER = 1;
+    public static final int BRUSH_FLATTEN = 2;
+    public static final int BRUSH_SMOOTH = 3;
+
+    //
+    ///
+    /// \brief Create an editor over a height grid
+    /// \param heights Grid heights, row-major, width x height samples.  The
+    ///    array is referenced and edited in place.
+    /// \param width Number of samples along x
+    /// \param height Number of samples along y
+    /// \param sizeX World extent of the grid along x
+    /// \param sizeY World extent of the grid along y
+    /// \param heightScale Scale applied to the grid heights to get world z
+    /// \param pyramid Min/max pyramid over the same array to keep up to date,
+    ///    or null
+    //
+    public ESTerrainEditor ( float[] heights, int width, int height,
+                             float sizeX, float sizeY, float heightScale, ESHeightPyramid pyramid )
+    {
+        this ( heights, width, height, sizeX, sizeY, heightScale, pyramid, false );
+    }
+
+    //
+    ///
+    /// \brief Create an editor that also keeps per-sample normals
+    /// \param keepNormals Whether to keep three floats of normal per sample
+    ///    up to date, see getNormals()
+    //
+    public ESTerrainEditor ( float[] heights, int width, int height,
+                             float sizeX, float sizeY, float heightScale, ESHeightPyramid pyramid,
+                             boolean keepNormals )
+    {
+        if ( width < 2 || height < 2 || heights.length < width * height )
+        {
+            throw new IllegalArgumentException ( "Invalid height grid dimensions" );
+        }
+
+        if ( pyramid != null && ( pyramid.getGridWidth() != width || pyramid.getGridHeight() != height ) )
+        {
+            throw new IllegalArgumentException ( "Pyramid does not match the height grid" );
+        }
+
+        mHeights = heights;
+        mWidth = width;
+        mHeight = height;
+        mStepX = sizeX / ( float ) ( width - 1 );
+        mStepY = sizeY / ( float ) ( height - 1 );
+        mHeightScale = heightScale;
+        mPyramid = pyramid;
+        mNormals = keepNormals ? new float[width * height * 3] : null;
+
+        updateNormals ( 0, 0, width - 1, height - 1 );
+        clearDirty();
+    }
+
+    //
+    ///
+    /// \brief Apply one dab of a brush
+    ///
+    /// The brush weight falls off smoothly from strength at the center to
+    /// zero at the radius.  Raise and lower add or subtract the weight,
+    /// flatten pulls heights towards the height under the center and smooth
+    /// pulls them towards the average of their 3 x 3 neighborhood.
+    /// \param brush One of the BRUSH_ constants
+    /// \param col, row Brush center in (fractional) sample coordinates
+    /// \param radius Brush radius in samples
+    /// \param strength Height change at the center for raise and lower, blend
+    ///    factor in [0, 1] for flatten and smooth
+    /// \return false if the brush does not touch the grid
+    //
+    public boolean applyBrush ( int brush, float col, float row, float radius, float strength )
+    {
+        int col0 = Math.max ( 0, ( int ) Math.ceil ( col - radius ) );
+        int row0 = Math.max ( 0, ( int ) Math.ceil ( row - radius ) );
+        int col1 = Math.min ( mWidth - 1, ( int ) Math.floor ( col + radius ) );
+        int row1 = Math.min ( mHeight - 1, ( int ) Math.floor ( row + radius ) );
+
+        if ( col0 > col1 || row0 > row1 || radius <= 0.0f )
+        {
+            return false;
+        }
+
+        float target = 0.0f;
+
+        if ( brush == BRUSH_FLATTEN )
+        {
+            int c = Math.min ( Math.max ( Math.round ( col ), 0 ), mWidth - 1 );
+            int r = Math.min ( Math.max ( Math.round ( row ), 0 ), mHeight - 1 );
+            target = mHeights[r * mWidth + c];
+        }
+        else if ( brush == BRUSH_SMOOTH )
+        {
+            // Smoothing reads the neighbors, so work from a copy of the region
+            snapshot ( col0 - 1, row0 - 1, col1 + 1, row1 + 1 );
+        }
+        else if ( brush != BRUSH_RAISE && brush != BRUSH_LOWER )
+        {
+            throw new IllegalArgumentException ( "Unknown brush " + brush );
+        }
+
+        float invRadius2 = 1.0f / ( radius * radius );
+
+        for ( int r = row0; r <= row1; r++ )
+        {
+            float dy = r - row;
+
+            for ( int c = col0; c <= col1; c++ )
+            {
+                float dx = c - col;
+                float d2 = ( dx * dx + dy * dy ) * invRadius2;
+
+                if ( d2 >= 1.0f )
+                {
+                    continue;
+                }
+
+                // Smoothstep-like falloff with zero slope at the rim
+                float falloff = ( 1.0f - d2 ) * ( 1.0f - d2 );
+                float weight = strength * falloff;
+                int i = r * mWidth + c;
+                float h = mHeights[i];
+
+                switch ( brush )
+                {
+                    case BRUSH_RAISE:
+                        h += weight;
+                        break;
+                    case BRUSH_LOWER:
+                        h -= weight;
+                        break;
+                    case BRUSH_FLATTEN:
+                        h += ( target - h ) * Math.min ( weight, 1.0f );
+                        break;
+                    default:
+                        h += ( neighborhoodAverage ( c, r ) - h ) * Math.min ( weight, 1.0f );
+                        break;
+                }
+
+                mHeights[i] = Math.min ( Math.max ( h, 0.0f ), 1.0f );
+            }
+        }
+
+        markDirty ( col0, row0, col1, row1 );
+        return true;
+    }
+
+    //
+    ///
+    /// \brief Mark a region as changed after editing the heights directly
+    /// \param col0, row0 First changed sample
+    /// \param col1, row1 Last changed sample (inclusive)
+    //
+    public void markDirty ( int col0, int row0, int col1, int row1 )
+    {
+        col0 = Math.max ( 0, col0 );
+        row0 = Math.max ( 0, row0 );
+        col1 = Math.min ( mWidth - 1, col1 );
+        row1 = Math.min ( mHeight - 1, row1 );
+
+        if ( col0 > col1 || row0 > row1 )
+        {
+            return;
+        }
+
+        // Normals use central differences, so the ring around the region changes too
+        updateNormals ( col0 - 1, row0 - 1, col1 + 1, row1 + 1 );
+
+        if ( mPyramid != null )
+        {
+            mPyramid.update ( col0, row0, col1, row1 );
+        }
+
+        mDirtyCol0 = Math.min ( mDirtyCol0, col0 );
+        mDirtyRow0 = Math.min ( mDirtyRow0, row0 );
+        mDirtyCol1 = Math.max ( mDirtyCol1, col1 );
+        mDirtyRow1 = Math.max ( mDirtyRow1, row1 );
+    }
+
+    //
+    ///
+    /// \brief Hand the dirty rectangle to an uploader and clear it
+    /// \return false if nothing changed since the last flush
+    //
+    public boolean flush ( Uploader uploader )
+    {
+        if ( !isDirty() )
+        {
+            return false;
+        }
+
+        int width = mDirtyCol1 - mDirtyCol0 + 1;
+        int height = mDirtyRow1 - mDirtyRow0 + 1;
+
+        if ( mStaging == null || mStaging.capacity() < width * height )
+        {
+            mStaging = ByteBuffer.allocateDirect ( width * height * 4 )
+                    .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+        }
+
+        mStaging.clear();
+
+        for ( int row = mDirtyRow0; row <= mDirtyRow1; row++ )
+        {
+            mStaging.put ( mHeights, row * mWidth + mDirtyCol0, width );
+        }
+
+        mStaging.flip();
+        uploader.uploadRegion ( mDirtyCol0, mDirtyRow0, width, height, mStaging );
+        clearDirty();
+        return true;
+    }
+
+    //
+    ///
+    /// \brief Get the dirty rectangle
+    /// \param rect Receives the first and last (inclusive) dirty sample as
+    ///    col0, row0, col1, row1
+    /// \return false if nothing changed since the last flush
+    //
+    public boolean getDirtyRect ( int[] rect )
+    {
+        rect[0] = mDirtyCol0;
+        rect[1] = mDirtyRow0;
+        rect[2] = mDirtyCol1;
+        rect[3] = mDirtyRow1;
+        return isDirty();
+    }
+
+    public boolean isDirty()
+    {
+        return mDirtyCol0 <= mDirtyCol1;
+    }
+
+    public void clearDirty()
+    {
+        mDirtyCol0 = Integer.MAX_VALUE;
+        mDirtyRow0 = Integer.MAX_VALUE;
+        mDirtyCol1 = Integer.MIN_VALUE;
+        mDirtyRow1 = Integer.MIN_VALUE;
+    }
+
+    // Unit world-space normals from central differences, clamped at the border
+    private void updateNormals ( int col0, int row0, int col1, int row1 )
+    {
+        if ( mNormals == null )
+        {
+            return;
+        }
+
+        col0 = Math.max ( 0, col0 );
+        row0 = Math.max ( 0, row0 );
+        col1 = Math.min ( mWidth - 1, col1 );
+        row1 = Math.min ( mHeight - 1, row1 );
+
+        for ( int row = row0; row <= row1; row++ )
+        {
+            int up = Math.max ( row - 1, 0 );
+            int down = Math.min ( row + 1, mHeight - 1 );
+
+            for ( int col = col0; col <= col1; col++ )
+            {
+                int left = Math.max ( col - 1, 0 );
+                int right = Math.min ( col + 1, mWidth - 1 );
+                float dzdx = ( mHeights[row * mWidth + right] - mHeights[row * mWidth + left] ) * mHeightScale
+                             / ( ( right - left ) * mStepX );
+                float dzdy = ( mHeights[down * mWidth + col] - mHeights[up * mWidth + col] ) * mHeightScale
+                             / ( ( down - up ) * mStepY );
+                float invLength = 1.0f / ( float ) Math.sqrt ( dzdx * dzdx + dzdy * dzdy + 1.0f );
+                int n = ( row * mWidth + col ) * 3;
+
+                mNormals[n] = -dzdx * invLength;
+                mNormals[n + 1] = -dzdy * invLength;
+                mNormals[n + 2] = invLength;
+            }
+        }
+    }
+
+    // Copy the heights of a region (clamped to the grid) into the scratch buffer
+    private void snapshot ( int col0, int row0, int col1, int row1 )
+    {
+        mSnapCol0 = Math.max ( 0, col0 );
+        mSnapRow0 = Math.max ( 0, row0 );
+        mSnapWidth = Math.min ( mWidth - 1, col1 ) - mSnapCol0 + 1;
+
+        int rows = Math.min ( mHeight - 1, row1 ) - mSnapRow0 + 1;
+
+        if ( mScratch == null || mScratch.length < mSnapWidth * rows )
+        {
+            mScratch = new float[mSnapWidth * rows];
+        }
+
+        for ( int row = 0; row < rows; row++ )
+        {
+            System.arraycopy ( mHeights, ( mSnapRow0 + row ) * mWidth + mSnapCol0, mScratch, row * mSnapWidth, mSnapWidth );
+        }
+
+        mSnapHeight = rows;
+    }
+
+    // Average of the 3 x 3 samples around (col, row) before the current dab
+    private float neighborhoodAverage ( int col, int row )
+    {
+        float sum = 0.0f;
+        int count = 0;
+
+        for ( int r = Math.max ( row - 1, mSnapRow0 ); r <= Math.min ( row + 1, mSnapRow0 + mSnapHeight - 1 ); r++ )
+        {
+            for ( int c = Math.max ( col - 1, mSnapCol0 ); c <= Math.min ( col + 1, mSnapCol0 + mSnapWidth - 1 ); c++ )
+            {
+                sum += mScratch[( r - mSnapRow0 ) * mSnapWidth + ( c - mSnapCol0 )];
+                count++;
+            }
+        }
+
+        return sum / count;
+    }
+
+    public int getWidth() { return mWidth; }
+    public int getHeight() { return mHeight; }
+    public float[] getHeights() { return mHeights; }
+
+    // Unit normals, three floats per sample, or null unless kept
+    public float[] getNormals() { return mNormals; }
+
+    // Member variables
+    private final float[] mHeights;
+    private final int mWidth;
+    private final int mHeight;
+    private final float mStepX;
+    private final float mStepY;
+    private final float mHeightScale;
+    private final ESHeightPyramid mPyramid;
+    private final float[] mNormals;
+
+    private int mDirtyCol0;
+    private int mDirtyRow0;
+    private int mDirtyCol1;
+    private int mDirtyRow1;
+    private FloatBuffer mStaging;
+
+    // Copy of the region under a smoothing brush
+    private float[] mScratch;
+    private int mSnapCol0;
+    private int mSnapRow0;
+    private int mSnapWidth;
+    private int mSnapHeight;
+}
@@ -0,0 +1,515 @@
+package edu.gatech.gtri.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+//
+/// \brief Keyed texture cache with reference counting and an LRU byte budget.
+///
+/// Textures are requested by key with acquire() and given back with
+/// release().  A missing texture is decoded on a worker executor and
+/// uploaded on the GL thread by processUploads(), which the renderer calls
+/// once per frame with a time slice so that a burst of new textures is
+/// spread over several frames.  Until then the entry reports texture 0.
+///
+/// Released textures stay resident and are reused by the next acquire() of
+/// the same key.  When the resident size exceeds the byte budget, the least
+/// recently used textures with no references are deleted.  Referenced
+/// textures are never evicted, so the budget can be exceeded while they
+/// are in use.
+///
+/// Decoding and the GL calls go through the Decoder and Backend interfaces,
+/// so the cache itself has no Android dependencies (see ESTextureLoader for
+/// the Android implementations).  Except for Decoder.decode(), all methods
+/// must be called on the GL thread.
+//
+public class ESTextureCache
+{
+    //
+    ///
+    /// \brief Decoded image waiting for upload
+    //
+    public static class Image
+    {
+        public Image ( Object pixels, int width, int height, int bytesPerTexel )
+        {
+            mPixels = pixels;
+            mWidth = width;
+            mHeight = height;
+            mBytesPerTexel = bytesPerTexel;
+        }
+
+        public Object getPixels() { return mPixels; }
+        public int getWidth() { return mWidth; }
+        public int getHeight() { return mHeight; }
+        public int getBytesPerTexel() { return mBytesPerTexel; }
+
+        private final Object mPixels;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mBytesPerTexel;
+    }
+
+    //
+    ///
+    /// \brief Decodes images, called on the decode executor
+    //
+    public interface Decoder
+    {
+        //
+        ///
+        /// \brief Decode the image of a key
+        /// \return The image, or null if there is none
+        //
+        Image decode ( String key ) throws Exception;
+
+        //
+        ///
+        /// \brief Free the memory of an image after upload, or when it is
+        ///    no longer needed.  Called on the GL thread.
+        //
+        void recycle ( Image image );
+    }
+
+    //
+    ///
+    /// \brief GL operations of the cache, called on the GL thread
+    //
+    public interface Backend
+    {
+        //
+        ///
+        /// \brief Create a texture from an image
+        /// \return The texture name, or 0 on failure
+        //
+        int upload ( Image image );
+
+        //
+        ///
+        /// \brief Delete a texture created by upload()
+        //
+        void delete ( int texture );
+
+        //
+        ///
+        /// \brief GPU memory of an uploaded image, including mipmaps
+        //
+        long getSizeInBytes ( Image image );
+    }
+
+    //
+    ///
+    /// \brief Time source for the upload time slice
+    //
+    public interface Clock
+    {
+        long nanoTime();
+    }
+
+    //
+    ///
+    /// \brief A cached texture, returned by acquire()
+    //
+    public static class Entry
+    {
+        Entry ( String key )
+        {
+            mKey = key;
+        }
+
+        public String getKey() { return mKey; }
+
+        //
+        ///
+        /// \brief Texture name, 0 until the texture is uploaded
+        //
+        public int getTexture() { return mTexture; }
+
+        public boolean isReady() { return mState == STATE_READY; }
+        public boolean isFailed() { return mState == STATE_FAILED; }
+        public int getRefCount() { return mRefCount; }
+        public long getSizeInBytes() { return mSize; }
+
+        private final String mKey;
+        private int mState = STATE_PENDING;
+        private int mTexture;
+        private int mRefCount;
+        private long mSize;
+    }
+
+    //
+    ///
+    /// \brief Create a cache
+    /// \param decoder Decodes images on the executor
+    /// \param backend Uploads and deletes textures on the GL thread
+    /// \param byteBudget Resident size above which unreferenced textures are
+    ///    evicted
+    /// \param executor Runs the decodes, see newDecodePool()
+    //
+    public ESTextureCache ( Decoder decoder, Backend backend, long byteBudget, Executor executor )
+    {
+        this ( decoder, backend, byteBudget, executor, new Clock()
+        {
+            public long nanoTime()
+            {
+                return System.nanoTime();
+            }
+        } );
+    }
+
+    public ESTextureCache ( Decoder decoder, Backend backend, long byteBudget, Executor executor, Clock clock )
+    {
+        mDecoder = decoder;
+        mBackend = backend;
+        mByteBudget = byteBudget;
+        mExecutor = executor;
+        mClock = clock;
+    }
+
+    //
+    ///
+    /// \brief Create a pool of low priority daemon threads for decoding
+    //
+    public static ExecutorService newDecodePool ( int threads )
+    {
+        return Executors.newFixedThreadPool ( threads, new ThreadFactory()
+        {
+            public Thread newThread ( Runnable r )
+            {
+                Thread thread = new Thread ( r, "ESTextureCache decode" );
+                thread.setDaemon ( true );
+                thread.setPriority ( Thread.MIN_PRIORITY );
+                return thread;
+            }
+        } );
+    }
+
+    //
+    ///
+    /// \brief Take a reference to the texture of a key, starting its decode
+    ///    if it is not cached
+    //
+    public Entry acquire ( String key )
+    {
+        return acquire ( key, true );
+    }
+
+    //
+    ///
+    /// \brief Take a reference to the texture of a key, decoding and
+    ///    uploading it on the calling thread if needed.  Meant for the
+    ///    textures a renderer needs before its first frame.
+    //
+    public Entry acquireNow ( String key )
+    {
+        Entry entry = acquire ( key, false );
+
+        if ( entry.mState == STATE_PENDING )
+        {
+            Image image = null;
+
+            try
+            {
+                image = mDecoder.decode ( key );
+            }
+            catch ( Exception e )
+            {
+                image = null;
+            }
+
+            // A decode queued by an earlier acquire() finds the entry ready
+            // and is dropped
+            complete ( entry, image );
+        }
+
+        return entry;
+    }
+
+    // Reference an entry, creating it on a miss and queuing its decode if
+    // asked to
+    private Entry acquire ( String key, boolean decode )
+    {
+        Entry entry = mEntries.get ( key );
+
+        if ( entry != null )
+        {
+            mHits++;
+        }
+        else
+        {
+            mMisses++;
+            entry = new Entry ( key );
+            mEntries.put ( key, entry );
+
+            if ( decode )
+            {
+                scheduleDecode ( entry );
+            }
+        }
+
+        entry.mRefCount++;
+        return entry;
+    }
+
+    //
+    ///
+    /// \brief Give back a reference taken by acquire()
+    //
+    public void release ( Entry entry )
+    {
+        if ( entry.mRefCount <= 0 )
+        {
+            throw new IllegalStateException ( "Texture " + entry.mKey + " released too often" );
+        }
+
+        entry.mRefCount--;
+
+        // Failed entries are retried by the next acquire
+        if ( entry.mRefCount == 0 && entry.mState == STATE_FAILED && mEntries.get ( entry.mKey ) == entry )
+        {
+            mEntries.remove ( entry.mKey );
+        }
+    }
+
+    //
+    ///
+    /// \brief Texture of a key if it is resident, without taking a reference
+    /// \return The texture name, or 0.  The texture may be evicted by the
+    ///    next processUploads() unless a reference is held.
+    //
+    public int peek ( String key )
+    {
+        Entry entry = mEntries.get ( key );
+
+        return ( entry != null && entry.mState == STATE_READY ) ? entry.mTexture : 0;
+    }
+
+    //
+    ///
+    /// \brief Upload decoded images for up to the given time, then evict
+    ///    down to the byte budget.  At least one image is uploaded if any
+    ///    is waiting.
+    /// \return Number of textures uploaded
+    //
+    public int processUploads ( long maxNanos )
+    {
+        long start = mClock.nanoTime();
+        int uploaded = 0;
+        Decoded decoded;
+
+        while ( ( decoded = mDecoded.peek() ) != null )
+        {
+            if ( uploaded > 0 && mClock.nanoTime() - start >= maxNanos )
+            {
+                break;
+            }
+
+            mDecoded.poll();
+            mPendingDecodes--;
+
+            // Decoded before invalidate(), or for an entry that was dropped
+            if ( decoded.mGeneration != mGeneration || decoded.mEntry.mState != STATE_PENDING
+                 || mEntries.get ( decoded.mEntry.mKey ) != decoded.mEntry )
+            {
+                recycle ( decoded.mImage );
+                continue;
+            }
+
+            // Nobody wants the texture anymore
+            if ( decoded.mEntry.mRefCount == 0 && decoded.mImage != null )
+            {
+                recycle ( decoded.mImage );
+                mEntries.remove ( decoded.mEntry.mKey );
+                continue;
+            }
+
+            if ( complete ( decoded.mEntry, decoded.mImage ) )
+            {
+                uploaded++;
+            }
+        }
+
+        trim();
+        return uploaded;
+    }
+
+    //
+    ///
+    /// \brief Evict least recently used unreferenced textures until the
+    ///    resident size is within the byte budget
+    //
+    public void trim()
+    {
+        Iterator<Entry> it = mEntries.values().iterator();
+
+        while ( mBytesResident > mByteBudget && it.hasNext() )
+        {
+            Entry entry = it.next();
+
+            if ( entry.mRefCount == 0 && entry.mState == STATE_READY )
+            {
+                mBackend.delete ( entry.mTexture );
+                mBytesResident -= entry.mSize;
+                entry.mState = STATE_EVICTED;
+                entry.mTexture = 0;
+                it.remove();
+                mEvictions++;
+            }
+        }
+    }
+
+    //
+    ///
+    /// \brief Forget all textures after the GL context was lost.  No texture
+    ///    is deleted; referenced entries are decoded and uploaded again.
+    //
+    public void invalidate()
+    {
+        Iterator<Entry> it = mEntries.values().iterator();
+
+        mGeneration++;
+        mBytesResident = 0;
+
+        while ( it.hasNext() )
+        {
+            Entry entry = it.next();
+
+            entry.mTexture = 0;
+            entry.mSize = 0;
+
+            if ( entry.mRefCount > 0 )
+            {
+                entry.mState = STATE_PENDING;
+                scheduleDecode ( entry );
+            }
+            else
+            {
+                entry.mState = STATE_EVICTED;
+                it.remove();
+            }
+        }
+    }
+
+    public long getHits() { return mHits; }
+    public long getMisses() { return mMisses; }
+    public long getEvictions() { return mEvictions; }
+    public long getUploads() { return mUploads; }
+    public long getDecodeFailures() { return mDecodeFailures; }
+    public long getBytesResident() { return mBytesResident; }
+    public long getByteBudget() { return mByteBudget; }
+    public int getNumEntries() { return mEntries.size(); }
+    public int getPendingDecodes() { return mPendingDecodes; }
+
+    public void setByteBudget ( long byteBudget )
+    {
+        mByteBudget = byteBudget;
+    }
+
+    // Upload an image for a pending entry, returns true if a texture was created
+    private boolean complete ( Entry entry, Image image )
+    {
+        int texture = ( image != null ) ? mBackend.upload ( image ) : 0;
+
+        if ( texture == 0 )
+        {
+            recycle ( image );
+            entry.mState = STATE_FAILED;
+            mDecodeFailures++;
+
+            if ( entry.mRefCount == 0 )
+            {
+                mEntries.remove ( entry.mKey );
+            }
+
+            return false;
+        }
+
+        entry.mTexture = texture;
+        entry.mSize = mBackend.getSizeInBytes ( image );
+        entry.mState = STATE_READY;
+        mBytesResident += entry.mSize;
+        mUploads++;
+        recycle ( image );
+        return true;
+    }
+
+    private void recycle ( Image image )
+    {
+        if ( image != null )
+        {
+            mDecoder.recycle ( image );
+        }
+    }
+
+    private void scheduleDecode ( final Entry entry )
+    {
+        final int generation = mGeneration;
+
+        mPendingDecodes++;
+        mExecutor.execute ( new Runnable()
+        {
+            public void run()
+            {
+                Image image;
+
+                try
+                {
+                    image = mDecoder.decode ( entry.mKey );
+                }
+                catch ( Exception e )
+                {
+                    image = null;
+                }
+
+                mDecoded.add ( new Decoded ( entry, image, generation ) );
+            }
+        } );
+    }
+
+    // Result of a decode, handed from the executor to the GL thread
+    private static class Decoded
+    {
+        Decoded ( Entry entry, Image image, int generation )
+        {
+            mEntry = entry;
+            mImage = image;
+            mGeneration = generation;
+        }
+
+        final Entry mEntry;
+        final Image mImage;
+        final int mGeneration;
+    }
+
+    // Member variables
+    private final Decoder mDecoder;
+    private final Backend mBackend;
+    private final Executor mExecutor;
+    private final Clock mClock;
+    private long mByteBudget;
+
+    // Entries in least recently used order
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry> ( 16, 0.75f, true );
+    private final ConcurrentLinkedQueue<Decoded> mDecoded = new ConcurrentLinkedQueue<Decoded>();
+    private int mGeneration;
+    private int mPendingDecodes;
+    private long mBytesResident;
+
+    // Metrics
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+    private long mUploads;
+    private long mDecodeFailures;
+
+    // Some constants
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_READY = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_EVICTED = 3;
+}
@@ -0,0 +1,214 @@
+package edu.gatech.gtri.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES30;
+import android.opengl.GLUtils;
+
+public class ESTextureLoader
+{
+    //
+    ///
+    /// \brief Load a 2D texture from an asset image, with linear filtering
+    ///    and clamped coordinates
+    /// \param context Application context
+    /// \param fileName Name of the image in assets
+    /// \return The texture name, or 0 if the image could not be read
+    //
+    public static int loadTextureFromAsset ( Context context, String fileName )
+    {
+        Bitmap bitmap = decodeAsset ( context, fileName );
+
+        if ( bitmap == null )
+        {
+            return 0;
+        }
+
+        int texture = uploadBitmap ( bitmap, false );
+        bitmap.recycle();
+        return texture;
+    }
+
+    //
+    ///
+    /// \brief Decoder of ESTextureCache for keys that name asset images
+    //
+    public static ESTextureCache.Decoder assetDecoder ( final Context context )
+    {
+        return new BitmapDecoder()
+        {
+            @Override
+            protected Bitmap decodeBitmap ( String key )
+            {
+                return decodeAsset ( context, key );
+            }
+        };
+    }
+
+    //
+    ///
+    /// \brief Decoder of ESTextureCache for keys that are image file paths
+    //
+    public static ESTextureCache.Decoder fileDecoder()
+    {
+        return new BitmapDecoder()
+        {
+            @Override
+            protected Bitmap decodeBitmap ( String key )
+            {
+                return BitmapFactory.decodeFile ( key );
+            }
+        };
+    }
+
+    //
+    ///
+    /// \brief Decoder of ESTextureCache for the tiles of an ESTileArchive,
+    ///    with keys of the form level/x/y
+    //
+    public static ESTextureCache.Decoder archiveDecoder ( final ESTileArchive archive )
+    {
+        return new BitmapDecoder()
+        {
+            @Override
+            protected Bitmap decodeBitmap ( String key ) throws IOException
+            {
+                String[] tile = key.split ( "/" );
+                byte[] data = archive.readTile ( Integer.parseInt ( tile[0] ), Integer.parseInt ( tile[1] ),
+                                                 Integer.parseInt ( tile[2] ) );
+
+                return ( data != null ) ? BitmapFactory.decodeByteArray ( data, 0, data.length ) : null;
+            }
+        };
+    }
+
+    //
+    ///
+    /// \brief GLES30 backend of ESTextureCache for bitmap images
+    /// \param mipmaps Generate mipmaps and filter trilinearly
+    //
+    public static ESTextureCache.Backend backend ( final boolean mipmaps )
+    {
+        return new ESTextureCache.Backend()
+        {
+            public int upload ( ESTextureCache.Image image )
+            {
+                return uploadBitmap ( ( Bitmap ) image.getPixels(), mipmaps );
+            }
+
+            public void delete ( int texture )
+            {
+                GLES30.glDeleteTextures ( 1, new int [] { texture }, 0 );
+            }
+
+            public long getSizeInBytes ( ESTextureCache.Image image )
+            {
+                long size = ( long ) image.getWidth() * image.getHeight() * image.getBytesPerTexel();
+
+                // A full mipmap chain adds a third
+                return mipmaps ? size * 4 / 3 : size;
+            }
+        };
+    }
+
+    //
+    ///
+    /// \brief Cache of generated textures in the cache directory of the app,
+    ///    invalidated when the app is updated
+    //
+    public static ESGeneratedCache generatedCache ( Context context )
+    {
+        long installed;
+
+        try
+        {
+            installed = context.getPackageManager().getPackageInfo ( context.getPackageName(), 0 ).lastUpdateTime;
+        }
+        catch ( PackageManager.NameNotFoundException e )
+        {
+            installed = 0;
+        }
+
+        return new ESGeneratedCache ( new File ( context.getCacheDir(), "generated" ), installed );
+    }
+
+    private static abstract class BitmapDecoder implements ESTextureCache.Decoder
+    {
+        protected abstract Bitmap decodeBitmap ( String key ) throws IOException;
+
+        public ESTextureCache.Image decode ( String key ) throws IOException
+        {
+            Bitmap bitmap = decodeBitmap ( key );
+
+            if ( bitmap == null )
+            {
+                return null;
+            }
+
+            return new ESTextureCache.Image ( bitmap, bitmap.getWidth(), bitmap.getHeight(),
+                                              bitmap.getByteCount() / ( bitmap.getWidth() * bitmap.getHeight() ) );
+        }
+
+        public void recycle ( ESTextureCache.Image image )
+        {
+            ( ( Bitmap ) image.getPixels() ).recycle();
+        }
+    }
+
+    private static Bitmap decodeAsset ( Context context, String fileName )
+    {
+        InputStream is;
+        Bitmap bitmap;
+
+        try
+        {
+            is = context.getAssets().open ( fileName );
+        }
+        catch ( IOException ioe )
+        {
+            return null;
+        }
+
+        bitmap = BitmapFactory.decodeStream ( is );
+
+        try
+        {
+            is.close();
+        }
+        catch ( IOException ioe )
+        {
+            // Nothing to do, the bitmap is decoded
+        }
+
+        return bitmap;
+    }
+
+    private static int uploadBitmap ( Bitmap bitmap, boolean mipmaps )
+    {
+        int [] textureId = new int[1];
+
+        GLES30.glGenTextures ( 1, textureId, 0 );
+        GLES30.glBindTexture ( GLES30.GL_TEXTURE_2D, textureId[0] );
+
+        GLUtils.texImage2D ( GLES30.GL_TEXTURE_2D, 0, bitmap, 0 );
+
+        if ( mipmaps )
+        {
+            GLES30.glGenerateMipmap ( GLES30.GL_TEXTURE_2D );
+        }
+
+        GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER,
+                                 mipmaps ? GLES30.GL_LINEAR_MIPMAP_LINEAR : GLES30.GL_LINEAR );
+        GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR );
+        GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_CLAMP_TO_EDGE );
+        GLES30.glTexParameteri ( GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_CLAMP_TO_EDGE );
+
+        return textureId[0];
+    }
+}
@@ -0,0 +1,332 @@
+package edu.gatech.gtri.common;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+//
+/// \brief Tile pyramid packed into a single indexed file.
+///
+/// Level 0 is made of getRootTilesX() x getRootTilesY() tiles, e.g. 2 x 1
+/// for an equirectangular globe as in ESGlobeQuadtree or 1 x 1 for a
+/// terrain; every following level doubles both counts.  Each tile is a
+/// square PNG of getTileSize() pixels.
+///
+/// The file starts with a header and an offset table holding the offset
+/// and length of every tile, level by level and row by row, so the entry
+/// of a tile is found by arithmetic and a tile costs a single read.  Tile
+/// data follows the table in any order; a tile of length 0 is missing.
+///
+/// Tiles are read with positional reads, so several threads can read the
+/// same archive, e.g. the decode threads of ESTextureCache.  Archives are
+/// written with the nested Writer, whose writeTile() may also be called
+/// from several threads.
+///
+/// This class has no Android dependencies.
+//
+public class ESTileArchive
+{
+    //
+    ///
+    /// \brief Writes an archive; tiles may be added in any order
+    //
+    public static class Writer
+    {
+        //
+        ///
+        /// \brief Create the file and reserve its offset table
+        /// \param tileSize Width and height of the tiles in pixels
+        /// \param rootTilesX, rootTilesY Tiles of level 0
+        /// \param levels Number of levels
+        /// \param channels, bytesPerSample Pixel layout of the tiles, see
+        ///    ESImageWriter
+        //
+        public Writer ( File file, int tileSize, int rootTilesX, int rootTilesY, int levels,
+                        int channels, int bytesPerSample ) throws IOException
+        {
+            mLayout = new ESTileArchive ( tileSize, rootTilesX, rootTilesY, levels, channels, bytesPerSample );
+            mFile = new RandomAccessFile ( file, "rw" );
+            mChannel = mFile.getChannel();
+
+            mFile.setLength ( 0 );
+            mEnd = HEADER_SIZE + ( long ) mLayout.mOffsets.length * ENTRY_SIZE;
+        }
+
+        //
+        ///
+        /// \brief Append the data of a tile
+        /// \param data Tile file, e.g. from ESImageWriter.encodePNG()
+        //
+        public void writeTile ( int level, int x, int y, byte[] data, int length ) throws IOException
+        {
+            int index = mLayout.tileIndex ( level, x, y );
+            long offset;
+
+            if ( index < 0 )
+            {
+                throw new IllegalArgumentException ( "No tile " + level + "/" + x + "/" + y + " in the pyramid" );
+            }
+
+            // Reserve the range, then write outside the lock
+            synchronized ( this )
+            {
+                if ( mLayout.mLengths[index] != 0 )
+                {
+                    throw new IllegalStateException ( "Tile " + level + "/" + x + "/" + y + " written twice" );
+                }
+
+                offset = mEnd;
+                mEnd += length;
+                mLayout.mOffsets[index] = offset;
+                mLayout.mLengths[index] = length;
+            }
+
+            writeFully ( mChannel, ByteBuffer.wrap ( data, 0, length ), offset );
+        }
+
+        //
+        ///
+        /// \brief Write the header and offset table and close the file
+        //
+        public void close() throws IOException
+        {
+            ByteBuffer chunk = ByteBuffer.allocate ( IO_CHUNK * ENTRY_SIZE );
+            long position = HEADER_SIZE;
+
+            chunk.putInt ( MAGIC ).putInt ( VERSION );
+            chunk.putInt ( mLayout.mTileSize ).putInt ( mLayout.mRootTilesX ).putInt ( mLayout.mRootTilesY );
+            chunk.putInt ( mLayout.mLevels ).putInt ( mLayout.mChannels ).putInt ( mLayout.mBytesPerSample );
+            chunk.flip();
+            writeFully ( mChannel, chunk, 0 );
+
+            for ( int i = 0; i < mLayout.mOffsets.length; i += IO_CHUNK )
+            {
+                int count = Math.min ( IO_CHUNK, mLayout.mOffsets.length - i );
+
+                chunk.clear();
+
+                for ( int j = i; j < i + count; j++ )
+                {
+                    chunk.putLong ( mLayout.mOffsets[j] ).putInt ( mLayout.mLengths[j] );
+                }
+
+                chunk.flip();
+                writeFully ( mChannel, chunk, position );
+                position += count * ENTRY_SIZE;
+            }
+
+            mFile.close();
+        }
+
+        // Member variables
+        private final ESTileArchive mLayout;
+        private final RandomAccessFile mFile;
+        private final FileChannel mChannel;
+        private long mEnd;
+    }
+
+    //
+    ///
+    /// \brief Open an archive and read its offset table
+    //
+    public ESTileArchive ( File file ) throws IOException
+    {
+        mFile = new RandomAccessFile ( file, "r" );
+        mChannel = mFile.getChannel();
+
+        try
+        {
+            ByteBuffer chunk = ByteBuffer.allocate ( IO_CHUNK * ENTRY_SIZE );
+
+            chunk.limit ( HEADER_SIZE );
+            readFully ( mChannel, chunk, 0 );
+            chunk.flip();
+
+            if ( chunk.getInt() != MAGIC || chunk.getInt() != VERSION )
+            {
+                throw new IOException ( "Not a tile archive" );
+            }
+
+            mTileSize = chunk.getInt();
+            mRootTilesX = chunk.getInt();
+            mRootTilesY = chunk.getInt();
+            mLevels = chunk.getInt();
+            mChannels = chunk.getInt();
+            mBytesPerSample = chunk.getInt();
+
+            int numTiles = countTiles ( mRootTilesX, mRootTilesY, mLevels );
+            long position = HEADER_SIZE;
+
+            mOffsets = new long[numTiles];
+            mLengths = new int[numTiles];
+
+            for ( int i = 0; i < numTiles; i += IO_CHUNK )
+            {
+                int count = Math.min ( IO_CHUNK, numTiles - i );
+
+                chunk.clear();
+                chunk.limit ( count * ENTRY_SIZE );
+                readFully ( mChannel, chunk, position );
+                chunk.flip();
+
+                for ( int j = i; j < i + count; j++ )
+                {
+                    mOffsets[j] = chunk.getLong();
+                    mLengths[j] = chunk.getInt();
+                }
+
+                position += count * ENTRY_SIZE;
+            }
+        }
+        catch ( IOException ioe )
+        {
+            mFile.close();
+            throw ioe;
+        }
+        catch ( IllegalArgumentException iae )
+        {
+            mFile.close();
+            throw new IOException ( "Corrupt tile archive header", iae );
+        }
+    }
+
+    // Layout only, for the writer
+    private ESTileArchive ( int tileSize, int rootTilesX, int rootTilesY, int levels, int channels, int bytesPerSample )
+    {
+        int numTiles = countTiles ( rootTilesX, rootTilesY, levels );
+
+        if ( tileSize <= 0 )
+        {
+            throw new IllegalArgumentException ( "Tile size must be positive" );
+        }
+
+        mFile = null;
+        mChannel = null;
+        mTileSize = tileSize;
+        mRootTilesX = rootTilesX;
+        mRootTilesY = rootTilesY;
+        mLevels = levels;
+        mChannels = channels;
+        mBytesPerSample = bytesPerSample;
+        mOffsets = new long[numTiles];
+        mLengths = new int[numTiles];
+    }
+
+    public int getTileSize() { return mTileSize; }
+    public int getRootTilesX() { return mRootTilesX; }
+    public int getRootTilesY() { return mRootTilesY; }
+    public int getNumLevels() { return mLevels; }
+    public int getChannels() { return mChannels; }
+    public int getBytesPerSample() { return mBytesPerSample; }
+    public int getTilesX ( int level ) { return mRootTilesX << level; }
+    public int getTilesY ( int level ) { return mRootTilesY << level; }
+
+    public boolean hasTile ( int level, int x, int y )
+    {
+        int index = tileIndex ( level, x, y );
+        return index >= 0 && mLengths[index] > 0;
+    }
+
+    //
+    ///
+    /// \brief Read the data of a tile
+    /// \return The tile file, or null if the tile is missing
+    //
+    public byte[] readTile ( int level, int x, int y ) throws IOException
+    {
+        if ( !hasTile ( level, x, y ) )
+        {
+            return null;
+        }
+
+        int index = tileIndex ( level, x, y );
+        byte[] data = new byte[mLengths[index]];
+
+        readFully ( mChannel, ByteBuffer.wrap ( data ), mOffsets[index] );
+        return data;
+    }
+
+    public void close() throws IOException
+    {
+        mFile.close();
+    }
+
+    // Position of a tile in the offset table, -1 if outside the pyramid
+    private int tileIndex ( int level, int x, int y )
+    {
+        if ( level < 0 || level >= mLevels || x < 0 || y < 0 || x >= getTilesX ( level ) || y >= getTilesY ( level ) )
+        {
+            return -1;
+        }
+
+        // Levels before this one hold rootTiles * (1 + 4 + ... + 4^(level-1))
+        long before = ( long ) mRootTilesX * mRootTilesY * ( ( 1L << ( 2 * level ) ) - 1 ) / 3;
+
+        return ( int ) ( before + ( long ) y * getTilesX ( level ) + x );
+    }
+
+    private static int countTiles ( int rootTilesX, int rootTilesY, int levels )
+    {
+        if ( rootTilesX <= 0 || rootTilesY <= 0 || levels <= 0 || levels > MAX_LEVELS )
+        {
+            throw new IllegalArgumentException ( "Invalid tile pyramid layout" );
+        }
+
+        long count = ( long ) rootTilesX * rootTilesY * ( ( 1L << ( 2 * levels ) ) - 1 ) / 3;
+
+        if ( count > Integer.MAX_VALUE / ENTRY_SIZE )
+        {
+            throw new IllegalArgumentException ( "Too many tiles in the pyramid" );
+        }
+
+        return ( int ) count;
+    }
+
+    private static void readFully ( FileChannel channel, ByteBuffer buffer, long position ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            int n = channel.read ( buffer, position );
+
+            if ( n < 0 )
+            {
+                throw new EOFException ( "Truncated tile archive" );
+            }
+
+            position += n;
+        }
+    }
+
+    private static void writeFully ( FileChannel channel, ByteBuffer buffer, long position ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            position += channel.write ( buffer, position );
+        }
+    }
+
+    // Member variables
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mTileSize;
+    private final int mRootTilesX;
+    private final int mRootTilesY;
+    private final int mLevels;
+    private final int mChannels;
+    private final int mBytesPerSample;
+
+    // Offset table, indexed by tileIndex()
+    private final long[] mOffsets;
+    private final int[] mLengths;
+
+    // Some constants
+    private static final int MAGIC = 0x45535441; // "ESTA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 12;
+    private static final int IO_CHUNK = 4096;
+    private static final int MAX_LEVELS = 15;
+}
@@ -7,6 +7,10 @@ import java.nio.FloatBuffer;
 
 public class ESTransform
 {
+    // Depth mappings of perspective()
+    public static final int DEPTH_STANDARD = 0;
+    public static final int DEPTH_LOGARITHMIC = 1;
+
     public ESTransform()
     {
         mMatrixFloatBuffer = ByteBuffer.allocateDirect ( 16 * 4 )
@@ -137,6 +141,35 @@ public class ESTransform
         frustum ( -frustumW, frustumW, -frustumH, frustumH, nearZ, farZ );
     }
 
+    //
+    /// \brief Perspective projection with a choice of depth mapping
+    /// \param depthMode DEPTH_STANDARD or DEPTH_LOGARITHMIC.  Logarithmic
+    ///    depth keeps the standard matrix; the vertex shader replaces the
+    ///    depth with
+    ///    gl_Position.z = ( log2 ( max ( 1e-6, 1.0 + w ) ) * factor - 1.0 ) * w
+    ///    where factor is logDepthFactor ( farZ ).  There is no reversed
+    ///    float depth: without clip control the depth range stays [-1, 1]
+    ///    on GLES and reversing it gains no precision.
+    //
+    public void perspective ( float fovy, float aspect, float nearZ, float farZ, int depthMode )
+    {
+        float frustumW, frustumH;
+
+        frustumH = ( float ) Math.tan ( fovy / 360.0 * Math.PI ) * nearZ;
+        frustumW = frustumH * aspect;
+
+        frustum ( -frustumW, frustumW, -frustumH, frustumH, nearZ, farZ );
+    }
+
+    //
+    /// \brief Scale of the logarithmic depth written by the vertex shader,
+    ///    mapping eye distances from 0 to farZ onto [-1, 1]
+    //
+    public static float logDepthFactor ( float farZ )
+    {
+        return ( float ) ( 2.0 / ( Math.log ( farZ + 1.0 ) / Math.log ( 2.0 ) ) );
+    }
+
     public void ortho ( float left, float right, float bottom, float top,
                         float nearZ, float farZ )
     {
@@ -204,6 +237,81 @@ public class ESTransform
         mMatrix[3 * 4 + 3] = 1.0f;
     }
 
+    public void matrixLookAt ( float posX, float posY, float posZ,
+                               float lookAtX, float lookAtY, float lookAtZ,
+                               float upX, float upY, float upZ )
+    {
+        float[] axisX = new float[3];
+        float[] axisY = new float[3];
+        float[] axisZ = new float[3];
+        float length;
+
+        // axisZ = lookAt - pos
+        axisZ[0] = lookAtX - posX;
+        axisZ[1] = lookAtY - posY;
+        axisZ[2] = lookAtZ - posZ;
+
+        // normalize axisZ
+        length = ( float ) Math.sqrt ( axisZ[0] * axisZ[0] + axisZ[1] * axisZ[1] + axisZ[2] * axisZ[2] );
+
+        if ( length != 0.0f )
+        {
+            axisZ[0] /= length;
+            axisZ[1] /= length;
+            axisZ[2] /= length;
+        }
+
+        // axisX = up X axisZ
+        axisX[0] = upY * axisZ[2] - upZ * axisZ[1];
+        axisX[1] = upZ * axisZ[0] - upX * axisZ[2];
+        axisX[2] = upX * axisZ[1] - upY * axisZ[0];
+
+        // normalize axisX
+        length = ( float ) Math.sqrt ( axisX[0] * axisX[0] + axisX[1] * axisX[1] + axisX[2] * axisX[2] );
+
+        if ( length != 0.0f )
+        {
+            axisX[0] /= length;
+            axisX[1] /= length;
+            axisX[2] /= length;
+        }
+
+        // axisY = axisZ x axisX
+        axisY[0] = axisZ[1] * axisX[2] - axisZ[2] * axisX[1];
+        axisY[1] = axisZ[2] * axisX[0] - axisZ[0] * axisX[2];
+        axisY[2] = axisZ[0] * axisX[1] - axisZ[1] * axisX[0];
+
+        // normalize axisY
+        length = ( float ) Math.sqrt ( axisY[0] * axisY[0] + axisY[1] * axisY[1] + axisY[2] * axisY[2] );
+
+        if ( length != 0.0f )
+        {
+            axisY[0] /= length;
+            axisY[1] /= length;
+            axisY[2] /= length;
+        }
+
+        matrixLoadIdentity();
+
+        mMatrix[0 * 4 + 0] = -axisX[0];
+        mMatrix[0 * 4 + 1] = axisY[0];
+        mMatrix[0 * 4 + 2] = -axisZ[0];
+
+        mMatrix[1 * 4 + 0] = -axisX[1];
+        mMatrix[1 * 4 + 1] = axisY[1];
+        mMatrix[1 * 4 + 2] = -axisZ[1];
+
+        mMatrix[2 * 4 + 0] = -axisX[2];
+        mMatrix[2 * 4 + 1] = axisY[2];
+        mMatrix[2 * 4 + 2] = -axisZ[2];
+
+        // translate (-posX, -posY, -posZ)
+        mMatrix[3 * 4 + 0] = axisX[0] * posX + axisX[1] * posY + axisX[2] * posZ;
+        mMatrix[3 * 4 + 1] = -axisY[0] * posX - axisY[1] * posY - axisY[2] * posZ;
+        mMatrix[3 * 4 + 2] = axisZ[0] * posX + axisZ[1] * posY + axisZ[2] * posZ;
+        mMatrix[3 * 4 + 3] = 1.0f;
+    }
+
     private float[] makeIdentityMatrix()
     {
         float[] result = new float[16];
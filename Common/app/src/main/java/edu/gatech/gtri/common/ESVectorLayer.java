@@ -0,0 +1,740 @@
+package edu.gatech.gtri.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.Math;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+/// \brief Geographic polylines and polygons tessellated into vertex buffers.
+///
+/// Features are given in longitude, latitude degrees, either added in code
+/// or read from the binary format written by write().  build() turns the
+/// whole layer into two batches, each a single vertex and index buffer:
+///
+/// - Fill: polygons triangulated with ESEarcut.  Each vertex is x, y, z
+///   relative to getCenter(), see ESRelativeToEye.
+/// - Lines: every polyline segment is a quad to be extruded to a constant
+///   screen-space width in the vertex shader.  Each vertex is the position
+///   of its end of the segment, the position of the other end and a side of
+///   +1 or -1 (LINE_VERTEX_FLOATS floats, both positions relative to
+///   getCenter()).  The shader projects both ends, and moves the vertex
+///   along the screen-space normal of the segment by side times half the
+///   line width.
+///
+/// Indices are 32 bit, a layer is not limited to 65536 vertices.
+///
+/// To drape the layer on a surface, set a maximum segment angle: polyline
+/// segments and polygon triangle edges longer than it are subdivided, so
+/// that the projected geometry follows the curvature of the globe or the
+/// relief of a terrain.  Triangles are split at the midpoint of their
+/// longest edge and midpoints are shared between neighbours, so the
+/// subdivided mesh has no T-junctions.
+///
+/// Features are tessellated in parallel on a ForkJoinPool, each feature
+/// on one thread.
+///
+/// This class has no Android dependencies.
+//
+public class ESVectorLayer
+{
+    public static final int TYPE_POLYLINE = 0;
+    public static final int TYPE_POLYGON = 1;
+
+    // Floats per line vertex: position, other end, side
+    public static final int LINE_VERTEX_FLOATS = 7;
+
+    //
+    ///
+    /// \brief Maps longitude, latitude degrees to world coordinates.  Must be
+    ///    safe to call from several threads.
+    //
+    public interface Projection
+    {
+        void project ( double lon, double lat, double[] out, int offset );
+    }
+
+    //
+    ///
+    /// \brief Projection onto an ellipsoid, in the units of the geodesy
+    /// \param height Height above the ellipsoid, lifts the layer above the
+    ///    surface to avoid z-fighting
+    //
+    public static Projection globeProjection ( final ESGeodesy geodesy, final double height )
+    {
+        return new Projection()
+        {
+            public void project ( double lon, double lat, double[] out, int offset )
+            {
+                geodesy.geodeticToEcef ( lon, lat, height, out, offset );
+            }
+        };
+    }
+
+    //
+    ///
+    /// \brief Projection onto a height grid that covers a longitude, latitude
+    ///    box.  West maps to x = 0 and south to y = 0, see ESHeightQuery.
+    /// \param query Heights of the terrain
+    /// \param west, south, east, north Geographic extent of the grid
+    /// \param sizeX, sizeY World extent of the grid
+    /// \param height Offset above the terrain surface
+    //
+    public static Projection terrainProjection ( final ESHeightQuery query,
+                                                 final double west, final double south,
+                                                 final double east, final double north,
+                                                 final float sizeX, final float sizeY, final float height )
+    {
+        return new Projection()
+        {
+            public void project ( double lon, double lat, double[] out, int offset )
+            {
+                float x = ( float ) ( ( lon - west ) / ( east - west ) * sizeX );
+                float y = ( float ) ( ( lat - south ) / ( north - south ) * sizeY );
+
+                out[offset] = x;
+                out[offset + 1] = y;
+                out[offset + 2] = query.getHeight ( x, y ) + height;
+            }
+        };
+    }
+
+    //
+    ///
+    /// \brief Add a polyline
+    /// \param lonLat numPoints longitude, latitude pairs, copied
+    //
+    public void addPolyline ( double[] lonLat, int numPoints )
+    {
+        if ( numPoints < 2 )
+        {
+            throw new IllegalArgumentException ( "A polyline needs at least 2 points" );
+        }
+
+        mFeatures.add ( new Feature ( TYPE_POLYLINE, Arrays.copyOf ( lonLat, numPoints * 2 ), new int[0] ) );
+    }
+
+    //
+    ///
+    /// \brief Add a polygon
+    /// \param lonLat numPoints longitude, latitude pairs of the outer ring
+    ///    followed by the holes, copied.  Rings are not closed.
+    /// \param holeIndices Index of the first point of each hole, or null
+    //
+    public void addPolygon ( double[] lonLat, int[] holeIndices, int numPoints )
+    {
+        int[] holes = holeIndices != null ? holeIndices.clone() : new int[0];
+
+        if ( numPoints < 3 )
+        {
+            throw new IllegalArgumentException ( "A polygon needs at least 3 points" );
+        }
+
+        for ( int h = 0; h < holes.length; h++ )
+        {
+            if ( holes[h] <= ( h > 0 ? holes[h - 1] : 0 ) || holes[h] >= numPoints )
+            {
+                throw new IllegalArgumentException ( "Hole indices out of order" );
+            }
+        }
+
+        mFeatures.add ( new Feature ( TYPE_POLYGON, Arrays.copyOf ( lonLat, numPoints * 2 ), holes ) );
+    }
+
+    public int getNumFeatures() { return mFeatures.size(); }
+    public int getFeatureType ( int feature ) { return mFeatures.get ( feature ).mType; }
+    public int getFeatureNumPoints ( int feature ) { return mFeatures.get ( feature ).mLonLat.length / 2; }
+
+    //
+    ///
+    /// \brief Set the longest segment, in degrees, that build() leaves
+    ///    undivided.  0 (the default) disables subdivision.
+    //
+    public void setMaxSegmentAngle ( double degrees )
+    {
+        mMaxSegmentAngle = degrees;
+    }
+
+    public double getMaxSegmentAngle() { return mMaxSegmentAngle; }
+
+    //
+    ///
+    /// \brief Write the features to a stream
+    //
+    public void write ( OutputStream os ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream ( os );
+        ByteBuffer chunk = ByteBuffer.allocate ( IO_CHUNK * 8 );
+        DoubleBuffer doubles = chunk.asDoubleBuffer();
+
+        out.writeInt ( MAGIC );
+        out.writeInt ( VERSION );
+        out.writeInt ( mFeatures.size() );
+
+        for ( Feature feature : mFeatures )
+        {
+            double[] lonLat = feature.mLonLat;
+
+            out.writeInt ( feature.mType );
+            out.writeInt ( lonLat.length / 2 );
+            out.writeInt ( feature.mHoles.length );
+
+            for ( int hole : feature.mHoles )
+            {
+                out.writeInt ( hole );
+            }
+
+            for ( int i = 0; i < lonLat.length; i += IO_CHUNK )
+            {
+                int count = Math.min ( IO_CHUNK, lonLat.length - i );
+
+                doubles.clear();
+                doubles.put ( lonLat, i, count );
+                out.write ( chunk.array(), 0, count * 8 );
+            }
+        }
+
+        out.flush();
+    }
+
+    //
+    ///
+    /// \brief Read a layer written by write()
+    /// \throws IOException if the stream is not a vector layer
+    //
+    public static ESVectorLayer read ( InputStream is ) throws IOException
+    {
+        DataInputStream in = new DataInputStream ( is );
+        ESVectorLayer layer = new ESVectorLayer();
+        ByteBuffer chunk = ByteBuffer.allocate ( IO_CHUNK * 8 );
+        DoubleBuffer doubles = chunk.asDoubleBuffer();
+
+        if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+        {
+            throw new IOException ( "Not a vector layer" );
+        }
+
+        int numFeatures = in.readInt();
+
+        for ( int f = 0; f < numFeatures; f++ )
+        {
+            int type = in.readInt();
+            int numPoints = in.readInt();
+            int numHoles = in.readInt();
+
+            if ( ( type != TYPE_POLYLINE && type != TYPE_POLYGON ) || numPoints < 0 || numHoles < 0 )
+            {
+                throw new IOException ( "Corrupt vector layer feature " + f );
+            }
+
+            int[] holes = new int[numHoles];
+            double[] lonLat = new double[numPoints * 2];
+
+            for ( int h = 0; h < numHoles; h++ )
+            {
+                holes[h] = in.readInt();
+            }
+
+            for ( int i = 0; i < lonLat.length; i += IO_CHUNK )
+            {
+                int count = Math.min ( IO_CHUNK, lonLat.length - i );
+
+                in.readFully ( chunk.array(), 0, count * 8 );
+                doubles.clear();
+                doubles.get ( lonLat, i, count );
+            }
+
+            try
+            {
+                if ( type == TYPE_POLYLINE )
+                {
+                    layer.addPolyline ( lonLat, numPoints );
+                }
+                else
+                {
+                    layer.addPolygon ( lonLat, holes, numPoints );
+                }
+            }
+            catch ( IllegalArgumentException e )
+            {
+                throw new IOException ( "Corrupt vector layer feature " + f, e );
+            }
+        }
+
+        return layer;
+    }
+
+    //
+    ///
+    /// \brief Tessellate and project every feature into the fill and line
+    ///    buffers
+    /// \param projection Maps the features to world coordinates
+    /// \param pool Pool to tessellate on, or null for the calling thread
+    //
+    public void build ( Projection projection, ForkJoinPool pool )
+    {
+        int numFeatures = mFeatures.size();
+
+        mMeshes = new Mesh[numFeatures];
+        mProjection = projection;
+
+        // Tessellate and project each feature on its own
+        runTask ( new BuildTask ( 0, numFeatures, PHASE_TESSELLATE ), pool );
+
+        // Place the features in the batches and find the center
+        int fillVertices = 0, fillIndices = 0, lineVertices = 0, lineIndices = 0;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+
+        for ( Mesh mesh : mMeshes )
+        {
+            if ( mesh.mType == TYPE_POLYGON )
+            {
+                mesh.mFirstVertex = fillVertices;
+                mesh.mFirstIndex = fillIndices;
+                fillVertices += mesh.mNumVertices;
+                fillIndices += mesh.mNumIndices;
+            }
+            else
+            {
+                mesh.mFirstVertex = lineVertices;
+                mesh.mFirstIndex = lineIndices;
+                lineVertices += ( mesh.mNumVertices - 1 ) * 4;
+                lineIndices += ( mesh.mNumVertices - 1 ) * 6;
+            }
+
+            for ( int i = 0; i < mesh.mNumVertices * 3; i += 3 )
+            {
+                minX = Math.min ( minX, mesh.mPositions[i] );
+                minY = Math.min ( minY, mesh.mPositions[i + 1] );
+                minZ = Math.min ( minZ, mesh.mPositions[i + 2] );
+                maxX = Math.max ( maxX, mesh.mPositions[i] );
+                maxY = Math.max ( maxY, mesh.mPositions[i + 1] );
+                maxZ = Math.max ( maxZ, mesh.mPositions[i + 2] );
+            }
+        }
+
+        if ( numFeatures > 0 )
+        {
+            mCenter[0] = ( minX + maxX ) * 0.5;
+            mCenter[1] = ( minY + maxY ) * 0.5;
+            mCenter[2] = ( minZ + maxZ ) * 0.5;
+        }
+
+        mFillVertices = newFloatBuffer ( fillVertices * 3 );
+        mFillIndices = newIntBuffer ( fillIndices );
+        mLineVertices = newFloatBuffer ( lineVertices * LINE_VERTEX_FLOATS );
+        mLineIndices = newIntBuffer ( lineIndices );
+        mNumFillVertices = fillVertices;
+        mNumFillIndices = fillIndices;
+        mNumLineVertices = lineVertices;
+        mNumLineIndices = lineIndices;
+
+        // Disjoint ranges of the buffers are written concurrently
+        runTask ( new BuildTask ( 0, numFeatures, PHASE_WRITE ), pool );
+
+        mMeshes = null;
+        mProjection = null;
+    }
+
+    //
+    ///
+    /// \brief Center of the built geometry, subtracted from every vertex
+    //
+    public double[] getCenter() { return mCenter; }
+
+    public FloatBuffer getFillVertices() { return mFillVertices; }
+    public IntBuffer getFillIndices() { return mFillIndices; }
+    public int getNumFillVertices() { return mNumFillVertices; }
+    public int getNumFillIndices() { return mNumFillIndices; }
+
+    public FloatBuffer getLineVertices() { return mLineVertices; }
+    public IntBuffer getLineIndices() { return mLineIndices; }
+    public int getNumLineVertices() { return mNumLineVertices; }
+    public int getNumLineIndices() { return mNumLineIndices; }
+
+    // Feature as given by the user
+    private static class Feature
+    {
+        Feature ( int type, double[] lonLat, int[] holes )
+        {
+            mType = type;
+            mLonLat = lonLat;
+            mHoles = holes;
+        }
+
+        final int mType;
+        final double[] mLonLat;
+        final int[] mHoles;
+    }
+
+    // Tessellated, projected feature waiting to be written to the batches
+    private static class Mesh
+    {
+        int mType;
+        double[] mPositions;
+        int mNumVertices;
+        int[] mIndices;
+        int mNumIndices;
+
+        // Placement in the batch
+        int mFirstVertex;
+        int mFirstIndex;
+    }
+
+    // Tessellate a feature in longitude, latitude and project the vertices
+    private Mesh tessellate ( Feature feature )
+    {
+        Mesh mesh = new Mesh();
+        double[] lonLat;
+        int numPoints;
+
+        mesh.mType = feature.mType;
+
+        if ( feature.mType == TYPE_POLYGON )
+        {
+            numPoints = feature.mLonLat.length / 2;
+            mesh.mIndices = ESEarcut.triangulate ( feature.mLonLat, feature.mHoles, numPoints );
+            mesh.mNumIndices = mesh.mIndices.length;
+            lonLat = feature.mLonLat;
+
+            if ( mMaxSegmentAngle > 0.0 )
+            {
+                PointList points = new PointList ( feature.mLonLat, numPoints );
+
+                subdivide ( points, mesh );
+                lonLat = points.mData;
+                numPoints = points.mSize;
+            }
+        }
+        else
+        {
+            PointList points = densify ( feature.mLonLat );
+
+            lonLat = points.mData;
+            numPoints = points.mSize;
+        }
+
+        mesh.mNumVertices = numPoints;
+        mesh.mPositions = new double[numPoints * 3];
+
+        for ( int i = 0; i < numPoints; i++ )
+        {
+            mProjection.project ( lonLat[i * 2], lonLat[i * 2 + 1], mesh.mPositions, i * 3 );
+        }
+
+        return mesh;
+    }
+
+    // Insert points on polyline segments longer than the maximum angle
+    private PointList densify ( double[] lonLat )
+    {
+        int numPoints = lonLat.length / 2;
+        PointList points = new PointList ( lonLat, 1 );
+
+        for ( int i = 1; i < numPoints; i++ )
+        {
+            double x0 = lonLat[i * 2 - 2], y0 = lonLat[i * 2 - 1];
+            double x1 = lonLat[i * 2], y1 = lonLat[i * 2 + 1];
+            int steps = 1;
+
+            if ( mMaxSegmentAngle > 0.0 )
+            {
+                steps = Math.max ( 1, ( int ) Math.ceil ( Math.hypot ( x1 - x0, y1 - y0 ) / mMaxSegmentAngle ) );
+            }
+
+            for ( int s = 1; s <= steps; s++ )
+            {
+                double t = ( double ) s / steps;
+
+                points.add ( x0 + ( x1 - x0 ) * t, y0 + ( y1 - y0 ) * t );
+            }
+        }
+
+        return points;
+    }
+
+    // Split triangles at the midpoint of their longest edge until no edge is
+    // longer than the maximum angle.  New points are appended to points.
+    private void subdivide ( PointList points, Mesh mesh )
+    {
+        HashMap<Long, Integer> midpoints = new HashMap<Long, Integer>();
+        int[] input = mesh.mIndices;
+        int[] output = new int[Math.max ( 3, input.length )];
+        int[] stack = new int[48];
+        int numOutput = 0;
+        double maxSquared = mMaxSegmentAngle * mMaxSegmentAngle;
+
+        for ( int t = 0; t < input.length; t += 3 )
+        {
+            int top = 0;
+
+            stack[top++] = input[t];
+            stack[top++] = input[t + 1];
+            stack[top++] = input[t + 2];
+
+            while ( top > 0 )
+            {
+                int c = stack[--top];
+                int b = stack[--top];
+                int a = stack[--top];
+                double ab = points.distanceSquared ( a, b );
+                double bc = points.distanceSquared ( b, c );
+                double ca = points.distanceSquared ( c, a );
+
+                if ( ab <= maxSquared && bc <= maxSquared && ca <= maxSquared )
+                {
+                    if ( numOutput + 3 > output.length )
+                    {
+                        output = Arrays.copyOf ( output, output.length * 2 );
+                    }
+
+                    output[numOutput++] = a;
+                    output[numOutput++] = b;
+                    output[numOutput++] = c;
+                    continue;
+                }
+
+                // Rotate so that the longest edge is a-b, keeping the winding
+                if ( bc >= ab && bc >= ca )
+                {
+                    int tmp = a;
+                    a = b;
+                    b = c;
+                    c = tmp;
+                }
+                else if ( ca >= ab && ca >= bc )
+                {
+                    int tmp = c;
+                    c = b;
+                    b = a;
+                    a = tmp;
+                }
+
+                int m = midpoint ( points, midpoints, a, b );
+
+                if ( top + 6 > stack.length )
+                {
+                    stack = Arrays.copyOf ( stack, stack.length * 2 );
+                }
+
+                stack[top++] = a;
+                stack[top++] = m;
+                stack[top++] = c;
+                stack[top++] = m;
+                stack[top++] = b;
+                stack[top++] = c;
+            }
+        }
+
+        mesh.mIndices = output;
+        mesh.mNumIndices = numOutput;
+    }
+
+    // Index of the midpoint of an edge, shared by both triangles of the edge
+    private static int midpoint ( PointList points, HashMap<Long, Integer> midpoints, int a, int b )
+    {
+        Long key = ( ( long ) Math.min ( a, b ) << 32 ) | Math.max ( a, b );
+        Integer m = midpoints.get ( key );
+
+        if ( m == null )
+        {
+            m = points.mSize;
+            points.add ( ( points.mData[a * 2] + points.mData[b * 2] ) * 0.5,
+                         ( points.mData[a * 2 + 1] + points.mData[b * 2 + 1] ) * 0.5 );
+            midpoints.put ( key, m );
+        }
+
+        return m;
+    }
+
+    // Write a mesh to its place in the batches, relative to the center
+    private void write ( Mesh mesh )
+    {
+        double[] p = mesh.mPositions;
+
+        if ( mesh.mType == TYPE_POLYGON )
+        {
+            int base = mesh.mFirstVertex * 3;
+
+            for ( int i = 0; i < mesh.mNumVertices * 3; i += 3 )
+            {
+                mFillVertices.put ( base + i, ( float ) ( p[i] - mCenter[0] ) );
+                mFillVertices.put ( base + i + 1, ( float ) ( p[i + 1] - mCenter[1] ) );
+                mFillVertices.put ( base + i + 2, ( float ) ( p[i + 2] - mCenter[2] ) );
+            }
+
+            for ( int i = 0; i < mesh.mNumIndices; i++ )
+            {
+                mFillIndices.put ( mesh.mFirstIndex + i, mesh.mFirstVertex + mesh.mIndices[i] );
+            }
+
+            return;
+        }
+
+        for ( int s = 0; s < mesh.mNumVertices - 1; s++ )
+        {
+            int v = mesh.mFirstVertex + s * 4;
+            int index = mesh.mFirstIndex + s * 6;
+
+            // Both vertices of an end share the position and face opposite
+            // sides; seen from the other end the normal flips, so v0 and v2
+            // lie on one side of the segment and v1 and v3 on the other
+            putLineVertex ( v, p, s, s + 1, 1.0f );
+            putLineVertex ( v + 1, p, s, s + 1, -1.0f );
+            putLineVertex ( v + 2, p, s + 1, s, -1.0f );
+            putLineVertex ( v + 3, p, s + 1, s, 1.0f );
+
+            mLineIndices.put ( index, v );
+            mLineIndices.put ( index + 1, v + 1 );
+            mLineIndices.put ( index + 2, v + 3 );
+            mLineIndices.put ( index + 3, v );
+            mLineIndices.put ( index + 4, v + 3 );
+            mLineIndices.put ( index + 5, v + 2 );
+        }
+    }
+
+    private void putLineVertex ( int vertex, double[] p, int self, int other, float side )
+    {
+        int base = vertex * LINE_VERTEX_FLOATS;
+
+        mLineVertices.put ( base, ( float ) ( p[self * 3] - mCenter[0] ) );
+        mLineVertices.put ( base + 1, ( float ) ( p[self * 3 + 1] - mCenter[1] ) );
+        mLineVertices.put ( base + 2, ( float ) ( p[self * 3 + 2] - mCenter[2] ) );
+        mLineVertices.put ( base + 3, ( float ) ( p[other * 3] - mCenter[0] ) );
+        mLineVertices.put ( base + 4, ( float ) ( p[other * 3 + 1] - mCenter[1] ) );
+        mLineVertices.put ( base + 5, ( float ) ( p[other * 3 + 2] - mCenter[2] ) );
+        mLineVertices.put ( base + 6, side );
+    }
+
+    private static void runTask ( BuildTask task, ForkJoinPool pool )
+    {
+        if ( pool != null )
+        {
+            pool.invoke ( task );
+        }
+        else
+        {
+            task.compute();
+        }
+    }
+
+    private static FloatBuffer newFloatBuffer ( int count )
+    {
+        return ByteBuffer.allocateDirect ( count * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+    }
+
+    private static IntBuffer newIntBuffer ( int count )
+    {
+        return ByteBuffer.allocateDirect ( count * 4 ).order ( ByteOrder.nativeOrder() ).asIntBuffer();
+    }
+
+    // Growable array of longitude, latitude pairs
+    private static class PointList
+    {
+        PointList ( double[] lonLat, int count )
+        {
+            mData = Arrays.copyOf ( lonLat, Math.max ( count * 2, 16 ) );
+            mSize = count;
+        }
+
+        void add ( double lon, double lat )
+        {
+            if ( mSize * 2 + 2 > mData.length )
+            {
+                mData = Arrays.copyOf ( mData, mData.length * 2 );
+            }
+
+            mData[mSize * 2] = lon;
+            mData[mSize * 2 + 1] = lat;
+            mSize++;
+        }
+
+        double distanceSquared ( int a, int b )
+        {
+            double dx = mData[b * 2] - mData[a * 2];
+            double dy = mData[b * 2 + 1] - mData[a * 2 + 1];
+
+            return dx * dx + dy * dy;
+        }
+
+        double[] mData;
+        int mSize;
+    }
+
+    // Runs one phase of build() over features [first, last)
+    private class BuildTask extends RecursiveAction
+    {
+        BuildTask ( int first, int last, int phase )
+        {
+            mFirst = first;
+            mLast = last;
+            mPhase = phase;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mLast - mFirst > 1 && getPool() != null )
+            {
+                int middle = ( mFirst + mLast ) >>> 1;
+
+                invokeAll ( new BuildTask ( mFirst, middle, mPhase ), new BuildTask ( middle, mLast, mPhase ) );
+                return;
+            }
+
+            for ( int f = mFirst; f < mLast; f++ )
+            {
+                if ( mPhase == PHASE_TESSELLATE )
+                {
+                    mMeshes[f] = tessellate ( mFeatures.get ( f ) );
+                }
+                else
+                {
+                    write ( mMeshes[f] );
+                }
+            }
+        }
+
+        private final int mFirst, mLast;
+        private final int mPhase;
+    }
+
+    // Member variables
+    private final ArrayList<Feature> mFeatures = new ArrayList<Feature>();
+    private double mMaxSegmentAngle;
+
+    // State of build() shared by the tasks
+    private Mesh[] mMeshes;
+    private Projection mProjection;
+
+    // Built geometry
+    private final double[] mCenter = new double[3];
+    private FloatBuffer mFillVertices;
+    private IntBuffer mFillIndices;
+    private FloatBuffer mLineVertices;
+    private IntBuffer mLineIndices;
+    private int mNumFillVertices;
+    private int mNumFillIndices;
+    private int mNumLineVertices;
+    private int mNumLineIndices;
+
+    // Some constants
+    private static final int MAGIC = 0x4553564C; // "ESVL"
+    private static final int VERSION = 1;
+    private static final int IO_CHUNK = 4096;
+    private static final int PHASE_TESSELLATE = 0;
+    private static final int PHASE_WRITE = 1;
+}
@@ -0,0 +1,202 @@
+package edu.gatech.gtri.common;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESAtmosphereTest
+{
+    // Ground and top radii of Bruneton and Neyret's Earth
+    private static final double BOTTOM = 6360.0;
+    private static final double TOP = 6420.0;
+
+    private static ESAtmosphere atmosphere;
+
+    @BeforeClass
+    public static void generate()
+    {
+        atmosphere = new ESAtmosphere ( BOTTOM, TOP );
+        atmosphere.generate ( null );
+    }
+
+    private static void assertRelative ( double[] expected, double[] actual, double tolerance )
+    {
+        for ( int c = 0; c < expected.length; c++ )
+        {
+            assertEquals ( "channel " + c, expected[c], actual[c], Math.abs ( expected[c] ) * tolerance );
+        }
+    }
+
+    // Golden values below come from an independent brute force integration
+    // with 20000 steps per ray, and exact sun transmittance for in-scatter
+
+    @Test
+    public void zenithTransmittanceMatchesClosedForm()
+    {
+        double[] t = new double[3];
+        double[] expected = new double[3];
+
+        // Straight up, the optical depth of an exponential layer is H ( 1 - e^(-top / H) )
+        for ( int c = 0; c < 3; c++ )
+        {
+            double rayleigh = ESAtmosphere.RAYLEIGH_SCATTERING[c] * ESAtmosphere.RAYLEIGH_HEIGHT *
+                              ( 1.0 - Math.exp ( -( TOP - BOTTOM ) / ESAtmosphere.RAYLEIGH_HEIGHT ) );
+            double mie = ESAtmosphere.MIE_EXTINCTION * ESAtmosphere.MIE_HEIGHT *
+                         ( 1.0 - Math.exp ( -( TOP - BOTTOM ) / ESAtmosphere.MIE_HEIGHT ) );
+
+            expected[c] = Math.exp ( -rayleigh - mie );
+        }
+
+        atmosphere.computeTransmittance ( BOTTOM, 1.0, t );
+        assertRelative ( expected, t, 1e-6 );
+        assertRelative ( new double[] { 0.9496064, 0.8929063, 0.7633895 }, t, 1e-6 );
+
+        // The table corner holds the same ray
+        atmosphere.lookupTransmittance ( BOTTOM, 1.0, t );
+        assertRelative ( expected, t, 1e-6 );
+    }
+
+    @Test
+    public void transmittanceGoldenValues()
+    {
+        double[] t = new double[3];
+
+        atmosphere.computeTransmittance ( BOTTOM, 0.0, t );
+        assertRelative ( new double[] { 0.1192007, 0.01350676, 5.287417e-5 }, t, 5e-3 );
+
+        // Down to the ground from 10 km
+        atmosphere.computeTransmittance ( BOTTOM + 10.0, -0.2, t );
+        assertRelative ( new double[] { 0.8211524, 0.6557279, 0.3698558 }, t, 1e-4 );
+
+        // Nothing is absorbed at the top looking up, or on the ground looking down
+        atmosphere.computeTransmittance ( TOP, 0.5, t );
+        assertRelative ( new double[] { 1.0, 1.0, 1.0 }, t, 0.0 );
+        atmosphere.computeTransmittance ( BOTTOM, -0.5, t );
+        assertRelative ( new double[] { 1.0, 1.0, 1.0 }, t, 0.0 );
+    }
+
+    @Test
+    public void inScatterGoldenValues()
+    {
+        double[] s = new double[4];
+
+        // Zenith sky at noon is blue
+        atmosphere.computeInScatter ( BOTTOM, 1.0, 1.0, s );
+        assertRelative ( new double[] { 0.04403734, 0.09638041, 0.2020330, 0.004558327 }, s, 0.01 );
+        assertTrue ( s[2] > s[1] && s[1] > s[0] );
+
+        // Near the horizon at sunset blue has been scattered away
+        atmosphere.computeInScatter ( BOTTOM, 0.1, 0.05, s );
+        assertRelative ( new double[] { 0.2231175, 0.2448250, 0.09307435, 0.02233653 }, s, 0.02 );
+
+        // Looking down from space
+        atmosphere.computeInScatter ( TOP, -0.2, 0.5, s );
+        assertRelative ( new double[] { 0.2456903, 0.4533381, 0.6758060, 0.02248292 }, s, 0.01 );
+
+        // No light when the sun is well below the horizon
+        atmosphere.computeInScatter ( BOTTOM, 0.5, -0.2, s );
+        assertEquals ( 0.0, s[0] + s[1] + s[2] + s[3], 1e-6 );
+    }
+
+    @Test
+    public void lookupsInterpolateTheIntegrals()
+    {
+        double[] exact = new double[4];
+        double[] table = new double[4];
+
+        // Between texels, away from the horizon discontinuity
+        for ( double mu = 0.2; mu <= 1.0; mu += 0.1 )
+        {
+            atmosphere.computeTransmittance ( BOTTOM + 3.3, mu, exact );
+            atmosphere.lookupTransmittance ( BOTTOM + 3.3, mu, table );
+
+            for ( int c = 0; c < 3; c++ )
+            {
+                assertEquals ( exact[c], table[c], 0.01 );
+            }
+
+            atmosphere.computeInScatter ( BOTTOM + 3.3, mu, 0.6, exact );
+            atmosphere.lookupInScatter ( BOTTOM + 3.3, mu, 0.6, table );
+
+            for ( int c = 0; c < 4; c++ )
+            {
+                assertEquals ( exact[c], table[c], 0.01 );
+            }
+        }
+    }
+
+    @Test
+    public void parallelGenerationMatchesSequential()
+    {
+        ESAtmosphere parallel = new ESAtmosphere ( BOTTOM, TOP );
+        ForkJoinPool pool = new ForkJoinPool ( 4 );
+
+        parallel.generate ( pool );
+        pool.shutdown();
+
+        assertTrue ( parallel.isGenerated() );
+        assertEquals ( atmosphere.getTransmittance(), parallel.getTransmittance() );
+        assertEquals ( atmosphere.getInScatter(), parallel.getInScatter() );
+        assertEquals ( ESAtmosphere.TRANSMITTANCE_MU * ESAtmosphere.TRANSMITTANCE_R * 3,
+                       parallel.getTransmittance().remaining() );
+    }
+
+    @Test
+    public void writeAndReadBack() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        atmosphere.write ( bytes );
+
+        ESAtmosphere read = ESAtmosphere.read ( new ByteArrayInputStream ( bytes.toByteArray() ), BOTTOM, TOP );
+
+        assertTrue ( read.isGenerated() );
+        assertEquals ( atmosphere.getTransmittance(), read.getTransmittance() );
+        assertEquals ( atmosphere.getInScatter(), read.getInScatter() );
+
+        try
+        {
+            ESAtmosphere.read ( new ByteArrayInputStream ( bytes.toByteArray() ), BOTTOM, TOP + 1.0 );
+            fail();
+        }
+        catch ( IOException expected )
+        {
+        }
+    }
+
+    @Test
+    public void cachedTablesReadBack()
+    {
+        ByteBuffer blob = ByteBuffer.allocateDirect ( ESAtmosphere.TABLES_SIZE ).order ( ByteOrder.nativeOrder() );
+        ESAtmosphere read = new ESAtmosphere ( BOTTOM, TOP );
+
+        atmosphere.writeTables ( blob );
+        assertFalse ( blob.hasRemaining() );
+
+        blob.clear();
+        read.readTables ( blob );
+
+        assertTrue ( read.isGenerated() );
+        assertEquals ( atmosphere.getTransmittance(), read.getTransmittance() );
+        assertEquals ( atmosphere.getInScatter(), read.getInScatter() );
+
+        // Other radii address other tables
+        assertEquals ( atmosphere.getCacheKey().getFileName(), read.getCacheKey().getFileName() );
+        assertNotEquals ( atmosphere.getCacheKey().getFileName(),
+                          new ESAtmosphere ( BOTTOM, TOP + 1.0 ).getCacheKey().getFileName() );
+    }
+
+    @Test ( expected = IOException.class )
+    public void readRejectsOtherData() throws IOException
+    {
+        ESAtmosphere.read ( new ByteArrayInputStream ( new byte[64] ), BOTTOM, TOP );
+    }
+}
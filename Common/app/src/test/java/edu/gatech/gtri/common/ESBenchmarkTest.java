@@ -0,0 +1,198 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class ESBenchmarkTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Each reading advances by a scripted step
+    private static class FakeClock implements ESBenchmark.Clock
+    {
+        public long nanoTime()
+        {
+            return mNow;
+        }
+
+        void advance ( long nanos )
+        {
+            mNow += nanos;
+        }
+
+        private long mNow = 1000;
+    }
+
+    @Test
+    public void framesHaveScriptedTimes()
+    {
+        ESBenchmark benchmark = new ESBenchmark ( "test", new String[0], 2, 3, 0.02 );
+        int frames = 0;
+
+        while ( benchmark.beginFrame() )
+        {
+            assertEquals ( frames, benchmark.getFrame() );
+            assertEquals ( ( frames + 1 ) * 0.02, benchmark.getTime(), 1e-12 );
+            assertEquals ( ( frames + 1 ) * 20L, benchmark.getTimeMillis() );
+            assertEquals ( frames >= 2, benchmark.isMeasuring() );
+            benchmark.endFrame();
+            frames++;
+        }
+
+        assertEquals ( 5, frames );
+        assertTrue ( benchmark.isFinished() );
+    }
+
+    @Test
+    public void recordsPhaseTimesAfterWarmup()
+    {
+        final FakeClock clock = new FakeClock();
+        final ESBenchmark benchmark = new ESBenchmark ( "test", new String[] { "update", "submit", "upload" },
+                                                        1, 4, 1.0 / 60.0, clock );
+
+        benchmark.run ( new ESBenchmark.Scene()
+        {
+            public void frame ( ESBenchmark b )
+            {
+                int f = b.getFrame();
+
+                b.begin ( 0 );
+                clock.advance ( 100 * ( f + 1 ) );
+                b.end ( 0 );
+
+                // Two submits in a frame add up
+                b.begin ( 1 );
+                clock.advance ( 10 );
+                b.end ( 1 );
+                clock.advance ( 5 );
+                b.begin ( 1 );
+                clock.advance ( 20 );
+                b.end ( 1 );
+
+                // Upload only every other frame
+                if ( f % 2 == 0 )
+                {
+                    b.begin ( 2 );
+                    clock.advance ( 7 );
+                    b.end ( 2 );
+                }
+            }
+        } );
+
+        // Frame 0 was warm-up
+        ESHistogram update = benchmark.getHistogram ( 0 );
+
+        assertEquals ( 4, update.getTotalCount() );
+        assertEquals ( 200, update.getMin() );
+        assertEquals ( 500, update.getMax() );
+        assertEquals ( 350.0, update.getMean(), 0.0 );
+        assertEquals ( 30, benchmark.getHistogram ( 1 ).getMax() );
+        assertEquals ( 2, benchmark.getHistogram ( 2 ).getTotalCount() );
+        assertEquals ( 4, benchmark.getFrameHistogram().getTotalCount() );
+        assertEquals ( 235, benchmark.getFrameHistogram().getMin() );
+    }
+
+    @Test
+    public void writesJson() throws IOException
+    {
+        final FakeClock clock = new FakeClock();
+        ESBenchmark benchmark = new ESBenchmark ( "Globe \"tour\"", new String[] { "update", "cull" }, 0, 2, 0.5, clock );
+        StringWriter out = new StringWriter();
+
+        benchmark.run ( new ESBenchmark.Scene()
+        {
+            public void frame ( ESBenchmark b )
+            {
+                b.begin ( 0 );
+                clock.advance ( 1500 );
+                b.end ( 0 );
+            }
+        } );
+
+        benchmark.writeJson ( out );
+
+        String json = out.toString();
+
+        assertTrue ( json, json.contains ( "\"name\": \"Globe \\\"tour\\\"\"" ) );
+        assertTrue ( json, json.contains ( "\"frames\": 2" ) );
+        assertTrue ( json, json.contains ( "\"update\": { \"count\": 2, \"min\": 1500, \"mean\": 1500.00, " +
+                                           "\"p50\": 1500, \"p90\": 1500, \"p99\": 1500, \"p99_9\": 1500, \"max\": 1500 }" ) );
+        assertTrue ( json, json.contains ( "\"cull\": { \"count\": 0" ) );
+        assertTrue ( json, json.trim().endsWith ( "}" ) );
+    }
+
+    @Test
+    public void sessionWithoutRunFallsBackToTheClock()
+    {
+        ESBenchmark.Session session = new ESBenchmark.Session ( "test" );
+
+        assertFalse ( session.start ( 0, folder.getRoot() ) );
+        session.beginFrame();
+        session.begin ( ESBenchmark.UPDATE );
+        session.end ( ESBenchmark.UPDATE );
+
+        assertFalse ( session.finishIfDone() );
+        assertFalse ( session.isRunning() );
+        assertEquals ( 1234L, session.timeMillis ( 1234L ) );
+    }
+
+    @Test
+    public void sessionWritesResultsAfterTheLastFrame()
+    {
+        ESBenchmark.Session session = new ESBenchmark.Session ( "test" );
+        File output = new File ( folder.getRoot(), ESBenchmark.OUTPUT_FILE );
+        int frames = 0;
+
+        assertTrue ( session.start ( 3, folder.getRoot() ) );
+
+        do
+        {
+            session.beginFrame();
+            assertEquals ( Math.round ( ( frames + 1 ) * ESBenchmark.RENDERER_FRAME_INTERVAL * 1000.0 ),
+                           session.timeMillis ( -1L ) );
+            frames++;
+        }
+        while ( !session.finishIfDone() );
+
+        assertEquals ( ESBenchmark.RENDERER_WARMUP_FRAMES + 3, frames );
+        assertFalse ( session.isRunning() );
+        assertTrue ( output.length() > 0 );
+    }
+
+    @Test
+    public void sessionClockContinuesFromTheRun()
+    {
+        ESBenchmark.Session session = new ESBenchmark.Session ( "test" );
+
+        session.start ( 1, folder.getRoot() );
+
+        do
+        {
+            session.beginFrame();
+        }
+        while ( !session.finishIfDone() );
+
+        long end = Math.round ( ( ESBenchmark.RENDERER_WARMUP_FRAMES + 1 ) * ESBenchmark.RENDERER_FRAME_INTERVAL * 1000.0 );
+
+        // No jump to the clock, which then runs on
+        assertEquals ( end, session.timeMillis ( 500000L ) );
+        assertEquals ( end + 16L, session.timeMillis ( 500016L ) );
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void rejectsUnendedFrames()
+    {
+        ESBenchmark benchmark = new ESBenchmark ( "test", new String[0], 0, 2, 1.0 );
+
+        benchmark.beginFrame();
+        benchmark.beginFrame();
+    }
+}
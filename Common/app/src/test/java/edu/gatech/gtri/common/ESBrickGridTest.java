@@ -0,0 +1,134 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESBrickGridTest
+{
+    private static ByteBuffer randomVolume ( int width, int height, int depth, long seed )
+    {
+        ESRandom random = ESRandom.create ( seed );
+        ByteBuffer volume = ByteBuffer.allocateDirect ( width * height * depth );
+
+        for ( int i = 0; i < width * height * depth; i++ )
+        {
+            volume.put ( i, ( byte ) random.nextInt ( 256 ) );
+        }
+
+        return volume;
+    }
+
+    @Test
+    public void bricksCoverTheirApron()
+    {
+        // Partial bricks on every axis
+        int width = 21, height = 13, depth = 17, size = 4;
+        ByteBuffer volume = randomVolume ( width, height, depth, 1 );
+        ESBrickGrid grid = new ESBrickGrid ( width, height, depth, size, null );
+
+        grid.build ( volume );
+        assertEquals ( 6, grid.getBricksX() );
+        assertEquals ( 4, grid.getBricksY() );
+        assertEquals ( 5, grid.getBricksZ() );
+
+        for ( int bz = 0; bz < grid.getBricksZ(); bz++ )
+        {
+            for ( int by = 0; by < grid.getBricksY(); by++ )
+            {
+                for ( int bx = 0; bx < grid.getBricksX(); bx++ )
+                {
+                    int min = 255, max = 0;
+
+                    for ( int z = bz * size - 1; z <= bz * size + size; z++ )
+                    {
+                        for ( int y = by * size - 1; y <= by * size + size; y++ )
+                        {
+                            for ( int x = bx * size - 1; x <= bx * size + size; x++ )
+                            {
+                                if ( x >= 0 && y >= 0 && z >= 0 && x < width && y < height && z < depth )
+                                {
+                                    int v = volume.get ( ( z * height + y ) * width + x ) & 0xFF;
+
+                                    min = Math.min ( min, v );
+                                    max = Math.max ( max, v );
+                                }
+                            }
+                        }
+                    }
+
+                    assertEquals ( min, grid.getMin ( bx, by, bz ) );
+                    assertEquals ( max, grid.getMax ( bx, by, bz ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void aVoxelOnABorderFillsBothBricks()
+    {
+        ByteBuffer volume = ByteBuffer.allocateDirect ( 32 * 32 * 32 );
+        ESBrickGrid grid = new ESBrickGrid ( 32, 32, 32, 8, null );
+
+        // First voxel of brick 1 in x, inside brick 1 in y, last of brick 1
+        // in z: read by linear filtering in bricks 0 and 1 in x, 1 and 2 in z
+        volume.put ( ( 15 * 32 + 10 ) * 32 + 8, ( byte ) 200 );
+        grid.build ( volume );
+
+        assertEquals ( 64 - 4, grid.countEmpty ( 0 ) );
+        assertFalse ( grid.isEmpty ( 0, 1, 1, 0 ) );
+        assertFalse ( grid.isEmpty ( 1, 1, 1, 0 ) );
+        assertFalse ( grid.isEmpty ( 0, 1, 2, 0 ) );
+        assertFalse ( grid.isEmpty ( 1, 1, 2, 0 ) );
+        assertTrue ( grid.isEmpty ( 2, 1, 1, 0 ) );
+        assertTrue ( grid.isEmpty ( 1, 0, 1, 0 ) );
+        assertTrue ( grid.isEmpty ( 1, 1, 1, 200 ) );
+        assertEquals ( 64, grid.countEmpty ( 200 ) );
+    }
+
+    @Test
+    public void parallelIsSerial()
+    {
+        ByteBuffer volume = randomVolume ( 64, 64, 64, 2 );
+        ESBrickGrid serial = new ESBrickGrid ( 64, 64, 64, 8, null );
+        ESBrickGrid parallel = new ESBrickGrid ( 64, 64, 64, 8, new ForkJoinPool ( 4 ) );
+        ByteBuffer a = ByteBuffer.allocate ( 2 * 512 ), b = ByteBuffer.allocate ( 2 * 512 );
+
+        serial.build ( volume );
+        parallel.build ( volume );
+        serial.write ( a );
+        parallel.write ( b );
+
+        assertEquals ( 2 * 512, a.position() );
+        assertArrayEquals ( a.array(), b.array() );
+    }
+
+    @Test
+    public void writesMinThenMaxXFastest()
+    {
+        ByteBuffer volume = ByteBuffer.allocateDirect ( 8 * 4 * 4 );
+        ESBrickGrid grid = new ESBrickGrid ( 8, 4, 4, 4, null );
+        ByteBuffer out = ByteBuffer.allocate ( 5 );
+
+        // Voxels of the far half in x, out of reach of the near bricks' apron
+        for ( int i = 0; i < 8 * 4 * 4; i++ )
+        {
+            volume.put ( i, ( byte ) ( i % 8 >= 5 ? 100 + i % 8 : 10 ) );
+        }
+
+        grid.build ( volume );
+        out.put ( ( byte ) 7 );
+        grid.write ( out );
+
+        assertArrayEquals ( new byte[] { 7, 10, 10, 10, 107 }, out.array() );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsASmallVolume()
+    {
+        new ESBrickGrid ( 16, 16, 16, 4, null ).build ( ByteBuffer.allocate ( 16 * 16 * 15 ) );
+    }
+}
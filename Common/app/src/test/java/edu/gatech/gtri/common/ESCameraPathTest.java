@@ -0,0 +1,181 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ESCameraPathTest
+{
+    // Eye around a box and a look-at point that drifts, stride 6
+    private static final double[] KEYS = {
+        60.0, 10.0, 0.0,    0.0, 0.0, 0.0,
+        0.0, 30.0, 60.0,    5.0, 0.0, 0.0,
+        -60.0, 10.0, 0.0,   0.0, 5.0, 0.0,
+        0.0, -20.0, -60.0,  0.0, 0.0, 5.0,
+        10.0, 0.0, 0.0,     0.0, 0.0, 0.0 };
+
+    @Test
+    public void catmullRomPassesThroughKeys()
+    {
+        ESCameraPath path = new ESCameraPath ( KEYS, 6, ESCameraPath.CATMULL_ROM );
+        double[] out = new double[6];
+
+        assertEquals ( 4, path.getNumSegments() );
+
+        for ( int k = 0; k < 4; k++ )
+        {
+            path.evaluate ( k, 0.0, out, 0 );
+
+            for ( int c = 0; c < 6; c++ )
+            {
+                assertEquals ( KEYS[k * 6 + c], out[c], 1e-12 );
+            }
+        }
+
+        path.sample ( path.getLength(), out, 0 );
+
+        for ( int c = 0; c < 6; c++ )
+        {
+            assertEquals ( KEYS[24 + c], out[c], 1e-9 );
+        }
+    }
+
+    @Test
+    public void samplesAtConstantSpeed()
+    {
+        ESCameraPath path = new ESCameraPath ( KEYS, 6, ESCameraPath.CATMULL_ROM );
+        double[] a = new double[6];
+        double[] b = new double[6];
+        int steps = 500;
+        double step = path.getLength() / steps;
+
+        path.sample ( 0.0, a, 0 );
+
+        // Each step covers the same chord, whatever the spline speed
+        for ( int i = 1; i <= steps; i++ )
+        {
+            path.sample ( i * step, b, 0 );
+
+            double dx = b[0] - a[0], dy = b[1] - a[1], dz = b[2] - a[2];
+
+            assertEquals ( step, Math.sqrt ( dx * dx + dy * dy + dz * dz ), step * 0.01 );
+            System.arraycopy ( b, 0, a, 0, 6 );
+        }
+    }
+
+    @Test
+    public void bezierStraightLineMapsDistance()
+    {
+        // Control points bunched at the start: the parameter is far from
+        // the distance, the arc length table is not
+        double[] keys = { 0.0, 0.0, 0.0, 0.1, 0.0, 0.0, 0.2, 0.0, 0.0, 10.0, 0.0, 0.0 };
+        ESCameraPath path = new ESCameraPath ( keys, 3, ESCameraPath.BEZIER );
+        double[] out = new double[3];
+
+        assertEquals ( 10.0, path.getLength(), 1e-9 );
+
+        for ( int i = 0; i <= 100; i++ )
+        {
+            // Within 0.02% of the length at 64 table entries per segment
+            path.sample ( i * 0.1, out, 0 );
+            assertEquals ( i * 0.1, out[0], 2e-3 );
+        }
+    }
+
+    @Test
+    public void closedPathWraps()
+    {
+        double[] keys = new double[4 * 6];
+
+        System.arraycopy ( KEYS, 0, keys, 0, keys.length );
+
+        ESCameraPath path = new ESCameraPath ( keys, 6, ESCameraPath.CATMULL_ROM_CLOSED );
+        double[] a = new double[6];
+        double[] b = new double[6];
+
+        assertEquals ( 4, path.getNumSegments() );
+
+        path.sample ( 12.5, a, 0 );
+        path.sample ( 12.5 + 2.0 * path.getLength(), b, 0 );
+        assertArrayEquals ( a, b, 1e-9 );
+
+        path.sample ( -12.5, a, 0 );
+        path.sample ( path.getLength() - 12.5, b, 0 );
+        assertArrayEquals ( a, b, 1e-9 );
+
+        // Continuous across the seam
+        path.sample ( path.getLength() - 1e-6, a, 0 );
+        path.sample ( 0.0, b, 0 );
+        assertArrayEquals ( b, a, 1e-4 );
+    }
+
+    @Test
+    public void sampleOrderDoesNotChangeResults()
+    {
+        ESCameraPath path = new ESCameraPath ( KEYS, 6, ESCameraPath.CATMULL_ROM );
+        ESCameraPath other = new ESCameraPath ( KEYS, 6, ESCameraPath.CATMULL_ROM );
+        int count = 2000;
+        double[] forward = new double[count * 6];
+        double[] shuffled = new double[count * 6];
+        int[] order = new int[count];
+        Random random = new Random ( 7 );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            path.sample ( path.getLength() * i / ( count - 1 ), forward, i * 6 );
+            order[i] = i;
+        }
+
+        for ( int i = count - 1; i > 0; i-- )
+        {
+            int j = random.nextInt ( i + 1 );
+            int t = order[i];
+
+            order[i] = order[j];
+            order[j] = t;
+        }
+
+        for ( int i : order )
+        {
+            other.sample ( other.getLength() * i / ( count - 1 ), shuffled, i * 6 );
+        }
+
+        // Bit for bit, not merely close
+        assertArrayEquals ( forward, shuffled, 0.0 );
+
+        for ( int i = count - 1; i >= 0; i-- )
+        {
+            path.sample ( path.getLength() * i / ( count - 1 ), shuffled, i * 6 );
+        }
+
+        assertArrayEquals ( forward, shuffled, 0.0 );
+    }
+
+    @Test
+    public void stationaryEyeSamplesByParameter()
+    {
+        // Turning in place: the look-at point moves, the eye does not
+        double[] keys = { 0.0, 0.0, 0.0, 1.0, 0.0, 0.0,
+                          0.0, 0.0, 0.0, 0.0, 1.0, 0.0,
+                          0.0, 0.0, 0.0, -1.0, 0.0, 0.0 };
+        ESCameraPath path = new ESCameraPath ( keys, 6, ESCameraPath.CATMULL_ROM );
+        double[] out = new double[6];
+
+        assertEquals ( 0.0, path.getLength(), 0.0 );
+
+        path.sampleFraction ( 0.5, out, 0 );
+        assertEquals ( 0.0, out[3], 1e-12 );
+        assertEquals ( 1.0, out[4], 1e-12 );
+
+        path.sampleFraction ( 1.0, out, 0 );
+        assertEquals ( -1.0, out[3], 1e-12 );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void rejectsIncompleteBezier()
+    {
+        new ESCameraPath ( new double[5 * 3], 3, ESCameraPath.BEZIER );
+    }
+}
@@ -0,0 +1,187 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ESEarcutTest
+{
+    // Twice the signed area of triangle abc, positive when counter-clockwise
+    static double triangleArea ( double[] coords, int a, int b, int c )
+    {
+        return ( coords[b * 2] - coords[a * 2] ) * ( coords[c * 2 + 1] - coords[a * 2 + 1] )
+               - ( coords[c * 2] - coords[a * 2] ) * ( coords[b * 2 + 1] - coords[a * 2 + 1] );
+    }
+
+    // Area of the polygon, the outer ring minus the holes
+    static double polygonArea ( double[] coords, int[] holes, int numPoints )
+    {
+        double area = 0.0;
+        int start = 0;
+
+        for ( int r = 0; r <= ( holes != null ? holes.length : 0 ); r++ )
+        {
+            int end = ( holes != null && r < holes.length ) ? holes[r] : numPoints;
+            double ring = Math.abs ( ESEarcut.signedArea ( coords, start, end ) );
+
+            area += ( r == 0 ) ? ring : -ring;
+            start = end;
+        }
+
+        return area;
+    }
+
+    // Triangles cover exactly the polygon area, all counter-clockwise
+    static void assertTriangulation ( double[] coords, int[] holes, int numPoints, int[] triangles )
+    {
+        double area = 0.0;
+
+        assertEquals ( 0, triangles.length % 3 );
+
+        for ( int t = 0; t < triangles.length; t += 3 )
+        {
+            double a = triangleArea ( coords, triangles[t], triangles[t + 1], triangles[t + 2] );
+
+            assertTrue ( "clockwise triangle " + t / 3, a >= 0.0 );
+            area += a * 0.5;
+        }
+
+        double expected = polygonArea ( coords, holes, numPoints );
+
+        assertEquals ( expected, area, expected * 1e-9 );
+    }
+
+    @Test
+    public void square()
+    {
+        double[] square = { 0, 0, 1, 0, 1, 1, 0, 1 };
+        int[] triangles = ESEarcut.triangulate ( square, null, 4 );
+
+        assertEquals ( 6, triangles.length );
+        assertTriangulation ( square, null, 4, triangles );
+    }
+
+    @Test
+    public void clockwiseInputGivesCounterClockwiseTriangles()
+    {
+        double[] square = { 0, 0, 0, 1, 1, 1, 1, 0 };
+
+        assertTrue ( ESEarcut.signedArea ( square, 0, 4 ) < 0.0 );
+        assertTriangulation ( square, null, 4, ESEarcut.triangulate ( square, null, 4 ) );
+    }
+
+    @Test
+    public void concave()
+    {
+        // A "U" shape, the notch must stay empty
+        double[] u = { 0, 0, 3, 0, 3, 3, 2, 3, 2, 1, 1, 1, 1, 3, 0, 3 };
+        int[] triangles = ESEarcut.triangulate ( u, null, 8 );
+
+        assertEquals ( ( 8 - 2 ) * 3, triangles.length );
+        assertTriangulation ( u, null, 8, triangles );
+    }
+
+    @Test
+    public void holes()
+    {
+        // Square with two square holes; n + 2h - 2 triangles
+        double[] coords = { 0, 0, 10, 0, 10, 10, 0, 10,
+                            1, 1, 1, 4, 4, 4, 4, 1,
+                            6, 6, 8, 6, 8, 8, 6, 8 };
+        int[] holes = { 4, 8 };
+        int[] triangles = ESEarcut.triangulate ( coords, holes, 12 );
+
+        assertEquals ( ( 12 + 2 * 2 - 2 ) * 3, triangles.length );
+        assertTriangulation ( coords, holes, 12, triangles );
+        assertEquals ( 100.0 - 9.0 - 4.0, polygonArea ( coords, holes, 12 ), 0.0 );
+    }
+
+    @Test
+    public void duplicateAndCollinearPoints()
+    {
+        // Repeated corner and points along the edges
+        double[] coords = { 0, 0, 1, 0, 2, 0, 2, 0, 2, 1, 2, 2, 0, 2, 0, 1 };
+        int[] triangles = ESEarcut.triangulate ( coords, null, 8 );
+
+        assertTriangulation ( coords, null, 8, triangles );
+        assertEquals ( 4.0, polygonArea ( coords, null, 8 ), 0.0 );
+    }
+
+    @Test
+    public void degenerateInputGivesNoTriangles()
+    {
+        assertEquals ( 0, ESEarcut.triangulate ( new double[] { 0, 0, 1, 1 }, null, 2 ).length );
+        assertEquals ( 0, ESEarcut.triangulate ( new double[] { 0, 0, 1, 1, 2, 2 }, null, 3 ).length );
+    }
+
+    @Test
+    public void randomStars()
+    {
+        Random random = new Random ( 7 );
+
+        // Large stars take the z-order hashed path
+        for ( int n : new int[] { 5, 17, 79, 81, 500, 5000 } )
+        {
+            double[] coords = new double[n * 2];
+
+            for ( int i = 0; i < n; i++ )
+            {
+                double angle = 2.0 * Math.PI * i / n;
+                double radius = 0.3 + random.nextDouble();
+
+                coords[i * 2] = 100.0 + radius * Math.cos ( angle );
+                coords[i * 2 + 1] = -40.0 + radius * Math.sin ( angle );
+            }
+
+            int[] triangles = ESEarcut.triangulate ( coords, null, n );
+
+            assertEquals ( ( n - 2 ) * 3, triangles.length );
+            assertTriangulation ( coords, null, n, triangles );
+        }
+    }
+
+    @Test
+    public void starWithStarHoles()
+    {
+        Random random = new Random ( 11 );
+        int outer = 400;
+        int hole = 50;
+        double[] coords = new double[( outer + 4 * hole ) * 2];
+        int[] holes = new int[4];
+
+        for ( int i = 0; i < outer; i++ )
+        {
+            double angle = -2.0 * Math.PI * i / outer;
+            double radius = 9.0 + random.nextDouble();
+
+            coords[i * 2] = radius * Math.cos ( angle );
+            coords[i * 2 + 1] = radius * Math.sin ( angle );
+        }
+
+        for ( int h = 0; h < 4; h++ )
+        {
+            double cx = ( h % 2 == 0 ) ? -4.0 : 4.0;
+            double cy = ( h < 2 ) ? -4.0 : 4.0;
+
+            holes[h] = outer + h * hole;
+
+            for ( int i = 0; i < hole; i++ )
+            {
+                int p = holes[h] + i;
+                double angle = 2.0 * Math.PI * i / hole;
+                double radius = 1.0 + random.nextDouble();
+
+                coords[p * 2] = cx + radius * Math.cos ( angle );
+                coords[p * 2 + 1] = cy + radius * Math.sin ( angle );
+            }
+        }
+
+        int numPoints = outer + 4 * hole;
+        int[] triangles = ESEarcut.triangulate ( coords, holes, numPoints );
+
+        assertEquals ( ( numPoints + 2 * 4 - 2 ) * 3, triangles.length );
+        assertTriangulation ( coords, holes, numPoints, triangles );
+    }
+}
@@ -0,0 +1,116 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ESFlyToTest
+{
+    private static final double RADIUS = 6371.0;
+
+    @Test
+    public void startsAndEndsAtTheEnds()
+    {
+        ESFlyTo flight = new ESFlyTo ( -74.0, 40.7, 2.0, 139.7, 35.7, 5.0, RADIUS, 8.0 );
+        double[] out = new double[3];
+
+        flight.sample ( 0.0, out, 0 );
+        assertEquals ( -74.0, out[0], 1e-9 );
+        assertEquals ( 40.7, out[1], 1e-9 );
+        assertEquals ( 2.0, out[2], 1e-9 );
+
+        flight.sample ( 8.0, out, 0 );
+        assertArrayEquals ( new double[] { 139.7, 35.7, 5.0 }, out, 0.0 );
+        assertTrue ( flight.isFinished ( 8.0 ) );
+        assertFalse ( flight.isFinished ( 7.9 ) );
+    }
+
+    @Test
+    public void followsTheGreatCircle()
+    {
+        ESFlyTo flight = new ESFlyTo ( -74.0, 40.7, 0.0, 139.7, 35.7, 0.0, RADIUS, 10.0 );
+        double total = ESGeodesy.centralAngle ( -74.0, 40.7, 139.7, 35.7 );
+        double[] out = new double[3];
+        double previous = 0.0;
+
+        assertEquals ( total * RADIUS, flight.getDistance(), 1e-6 );
+
+        for ( int i = 1; i < 100; i++ )
+        {
+            flight.sample ( i * 0.1, out, 0 );
+
+            double done = ESGeodesy.centralAngle ( -74.0, 40.7, out[0], out[1] );
+            double left = ESGeodesy.centralAngle ( out[0], out[1], 139.7, 35.7 );
+
+            assertEquals ( total, done + left, 1e-9 );
+            assertTrue ( done > previous );
+            previous = done;
+        }
+
+        // This route passes north of the Arctic Circle
+        flight.sample ( 5.0, out, 0 );
+        assertTrue ( out[1] > 66.5 );
+    }
+
+    @Test
+    public void risesWithTheDistance()
+    {
+        ESFlyTo flight = new ESFlyTo ( 0.0, 0.0, 100.0, 90.0, 0.0, 300.0, RADIUS, 4.0 );
+        double[] out = new double[3];
+        double distance = Math.PI / 2.0 * RADIUS;
+
+        assertEquals ( 0.5 * distance - 300.0, flight.getRise(), 1e-9 );
+
+        // Halfway in time is halfway along, at the peak of the rise
+        flight.sample ( 2.0, out, 0 );
+        assertEquals ( 45.0, out[0], 1e-9 );
+        assertEquals ( 200.0 + flight.getRise(), out[2], 1e-9 );
+
+        flight.setRiseRatio ( 0.0 );
+        flight.sample ( 2.0, out, 0 );
+        assertEquals ( 200.0, out[2], 1e-9 );
+    }
+
+    @Test
+    public void crossesTheAntimeridian()
+    {
+        ESFlyTo flight = new ESFlyTo ( 170.0, 0.0, 0.0, -170.0, 0.0, 0.0, RADIUS, 1.0 );
+        double[] out = new double[3];
+
+        flight.sample ( 0.5, out, 0 );
+        assertEquals ( 180.0, Math.abs ( out[0] ), 1e-9 );
+        assertEquals ( 20.0 * Math.PI / 180.0 * RADIUS, flight.getDistance(), 1e-6 );
+    }
+
+    @Test
+    public void antipodesGoOverAPole()
+    {
+        ESFlyTo flight = new ESFlyTo ( 30.0, 0.0, 0.0, -150.0, 0.0, 0.0, RADIUS, 1.0 );
+        double[] out = new double[3];
+
+        flight.sample ( 0.5, out, 0 );
+        assertEquals ( 90.0, out[1], 1e-6 );
+
+        flight.sample ( 0.25, out, 0 );
+        assertEquals ( 30.0, out[0], 1e-9 );
+        assertTrue ( out[1] > 0.0 );
+    }
+
+    @Test
+    public void samplesDependOnTimeOnly()
+    {
+        ESFlyTo flight = new ESFlyTo ( 2.35, 48.85, 1.0, -43.2, -22.9, 1.0, RADIUS, 6.0 );
+        ESFlyTo other = new ESFlyTo ( 2.35, 48.85, 1.0, -43.2, -22.9, 1.0, RADIUS, 6.0 );
+        double[] a = new double[3];
+        double[] b = new double[3];
+
+        for ( int i = 60; i >= 0; i-- )
+        {
+            flight.sample ( i * 0.1, a, 0 );
+        }
+
+        flight.sample ( 3.3, a, 0 );
+        other.sample ( 3.3, b, 0 );
+        assertArrayEquals ( a, b, 0.0 );
+    }
+}
@@ -0,0 +1,185 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESFractalNoiseTest
+{
+    private static ESFractalNoise fractal ( long seed, int type, float warp, ForkJoinPool pool )
+    {
+        ESFractalNoise noise = new ESFractalNoise ( new ESSimplexNoise ( seed ), pool );
+
+        noise.setType ( type );
+        noise.setWarp ( warp );
+        return noise;
+    }
+
+    // Values of seed 42 when this was written, as ESSimplexNoiseTest
+    @Test
+    public void matchesTheRecordedValues()
+    {
+        assertEquals ( 1035448415, Float.floatToIntBits ( fractal ( 42, ESFractalNoise.FBM, 0.0f, null ).get ( 0.3f, 1.7f ) ) );
+        assertEquals ( 1049016058, Float.floatToIntBits ( fractal ( 42, ESFractalNoise.TURBULENCE, 0.0f, null )
+                                                          .get ( 0.3f, 1.7f, -2.2f ) ) );
+        assertEquals ( 1058419235, Float.floatToIntBits ( fractal ( 42, ESFractalNoise.RIDGED, 0.5f, null ).get ( 0.3f, 1.7f ) ) );
+
+        ESFractalNoise terrain = fractal ( 42, ESFractalNoise.RIDGED, 0.3f, null );
+        float[] heights = new float[64 * 64];
+        long hash = 0;
+
+        terrain.createHeightfield ( heights, 64, 64, 4.0f );
+
+        for ( float h : heights )
+        {
+            hash = hash * 31 + Float.floatToIntBits ( h );
+        }
+
+        assertEquals ( -3547597689055464598L, hash );
+    }
+
+    @Test
+    public void typesHaveTheirRanges()
+    {
+        ESRandom random = ESRandom.create ( 1 );
+        float[][] ranges = { { -1.0f, 1.0f }, { 0.0f, 1.0f }, { 0.0f, 1.0f } };
+
+        for ( int type = ESFractalNoise.FBM; type <= ESFractalNoise.RIDGED; type++ )
+        {
+            ESFractalNoise noise = fractal ( 1, type, 0.0f, null );
+
+            for ( int i = 0; i < 10000; i++ )
+            {
+                float v = noise.get ( random.nextFloat() * 10.0f, random.nextFloat() * 10.0f, random.nextFloat() * 10.0f );
+
+                assertTrue ( "type " + type + ": " + v, v >= ranges[type][0] && v <= ranges[type][1] );
+            }
+        }
+    }
+
+    @Test
+    public void octavesAddDetail()
+    {
+        ESFractalNoise noise = fractal ( 2, ESFractalNoise.FBM, 0.0f, null );
+        ESSimplexNoise simplex = noise.getNoise();
+
+        noise.setOctaves ( 1 );
+        assertEquals ( simplex.noise2D ( 1.3f, 2.9f ), noise.get ( 1.3f, 2.9f ), 0.0f );
+
+        // Two octaves: ( n ( p ) + 0.5 n ( 2p ) ) / 1.5
+        noise.setOctaves ( 2 );
+        assertEquals ( ( simplex.noise2D ( 1.3f, 2.9f ) + 0.5f * simplex.noise2D ( 2.6f, 5.8f ) ) / 1.5f,
+                       noise.get ( 1.3f, 2.9f ), 1e-6f );
+    }
+
+    @Test
+    public void warpMovesThePoints()
+    {
+        ESFractalNoise plain = fractal ( 3, ESFractalNoise.FBM, 0.0f, null );
+        ESFractalNoise warped = fractal ( 3, ESFractalNoise.FBM, 1.0f, null );
+        int differ = 0;
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            differ += plain.get ( i * 0.1f, 0.5f ) != warped.get ( i * 0.1f, 0.5f ) ? 1 : 0;
+        }
+
+        assertTrue ( differ > 90 );
+    }
+
+    @Test
+    public void batchesAreThePointsToTheBit()
+    {
+        ESRandom random = ESRandom.create ( 4 );
+        float[] x = new float[3001], y = new float[3001], z = new float[3001], out = new float[3001];
+
+        random.fillUniform ( x, 0, 3001, -5.0f, 5.0f );
+        random.fillUniform ( y, 0, 3001, -5.0f, 5.0f );
+        random.fillUniform ( z, 0, 3001, -5.0f, 5.0f );
+
+        for ( int type = ESFractalNoise.FBM; type <= ESFractalNoise.RIDGED; type++ )
+        {
+            for ( float warp : new float[] { 0.0f, 0.7f } )
+            {
+                ESFractalNoise noise = fractal ( 4, type, warp, null );
+
+                // More than a batch, from an offset
+                noise.get ( x, y, out, 1, 3000 );
+
+                for ( int i = 1; i <= 3000; i++ )
+                {
+                    assertEquals ( noise.get ( x[i], y[i] ), out[i], 0.0f );
+                }
+
+                noise.get ( x, y, z, out, 1, 3000 );
+
+                for ( int i = 1; i <= 3000; i++ )
+                {
+                    assertEquals ( noise.get ( x[i], y[i], z[i] ), out[i], 0.0f );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void heightfieldIsNormalizedPoints()
+    {
+        ESFractalNoise noise = fractal ( 5, ESFractalNoise.RIDGED, 0.3f, null );
+        float[] heights = new float[40 * 30];
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+
+        noise.createHeightfield ( heights, 40, 30, 3.0f );
+
+        for ( int j = 0; j < 30; j++ )
+        {
+            for ( int i = 0; i < 40; i++ )
+            {
+                float v = noise.get ( i / 40.0f * 3.0f, j / 30.0f * 3.0f );
+
+                min = Math.min ( min, v );
+                max = Math.max ( max, v );
+            }
+        }
+
+        assertEquals ( min, noise.getMin(), 0.0f );
+        assertEquals ( max, noise.getMax(), 0.0f );
+
+        for ( int j = 0; j < 30; j++ )
+        {
+            for ( int i = 0; i < 40; i++ )
+            {
+                float v = noise.get ( i / 40.0f * 3.0f, j / 30.0f * 3.0f );
+
+                assertEquals ( ( v - min ) * ( 1.0f / ( max - min ) ), heights[j * 40 + i], 0.0f );
+            }
+        }
+    }
+
+    @Test
+    public void parallelGridsAreTheSerialOnes()
+    {
+        ESFractalNoise serial = fractal ( 6, ESFractalNoise.TURBULENCE, 0.5f, null );
+        ESFractalNoise parallel = fractal ( 6, ESFractalNoise.TURBULENCE, 0.5f, new ForkJoinPool ( 4 ) );
+        float[] a = new float[24 * 24 * 24], b = new float[24 * 24 * 24];
+
+        serial.createVolume ( a, 24, 2.0f );
+        parallel.createVolume ( b, 24, 2.0f );
+
+        assertArrayEquals ( a, b, 0.0f );
+        assertEquals ( serial.get ( 5 / 24.0f * 2.0f, 7 / 24.0f * 2.0f, 11 / 24.0f * 2.0f ), a[( 11 * 24 + 7 ) * 24 + 5], 0.0f );
+
+        ByteBuffer bytes = ByteBuffer.allocateDirect ( 24 * 24 * 24 );
+
+        parallel.createVolume ( bytes, 24, 2.0f );
+        assertEquals ( 24 * 24 * 24, bytes.position() );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsTooManyOctaves()
+    {
+        new ESFractalNoise ( 7 ).setOctaves ( 40 );
+    }
+}
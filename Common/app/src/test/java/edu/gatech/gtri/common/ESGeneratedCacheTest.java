@@ -0,0 +1,200 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ESGeneratedCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Counts its calls; the data depends on the seed
+    private static class Counting implements ESGeneratedCache.Generator
+    {
+        Counting ( int seed )
+        {
+            mSeed = seed;
+        }
+
+        @Override
+        public void generate ( ByteBuffer out )
+        {
+            mCalls++;
+
+            for ( int i = 0; i < out.capacity(); i++ )
+            {
+                out.put ( ( byte ) ( i * 31 + mSeed ) );
+            }
+        }
+
+        int mSeed;
+        int mCalls;
+    }
+
+    private static ESGeneratedCache.Key key ( int seed )
+    {
+        return new ESGeneratedCache.Key ( "test" ).put ( 64 ).put ( 5.0f ).put ( true ).put ( ( long ) seed );
+    }
+
+    private static void assertData ( int seed, int size, ByteBuffer data )
+    {
+        assertEquals ( 0, data.position() );
+        assertEquals ( size, data.remaining() );
+        assertTrue ( data.isDirect() );
+
+        for ( int i = 0; i < size; i++ )
+        {
+            assertEquals ( ( byte ) ( i * 31 + seed ), data.get ( i ) );
+        }
+    }
+
+    @Test
+    public void missGeneratesOnceThenHitsAreMapped() throws Exception
+    {
+        ESGeneratedCache cache = new ESGeneratedCache ( folder.newFolder(), 1 );
+        Counting generator = new Counting ( 7 );
+
+        assertFalse ( cache.contains ( key ( 7 ) ) );
+        assertData ( 7, 10000, cache.get ( key ( 7 ), 10000, false, generator ) );
+        assertTrue ( cache.contains ( key ( 7 ) ) );
+
+        // A new cache over the same directory, as after a restart
+        cache = new ESGeneratedCache ( cache.getDirectory(), 1 );
+        ByteBuffer data = cache.get ( key ( 7 ), 10000, false, generator );
+
+        assertData ( 7, 10000, data );
+        assertTrue ( data instanceof MappedByteBuffer );
+        assertEquals ( 1, generator.mCalls );
+        assertEquals ( 1, cache.getHits() );
+        assertEquals ( 0, cache.getMisses() );
+    }
+
+    @Test
+    public void compressedBlobsInflate() throws Exception
+    {
+        ESGeneratedCache cache = new ESGeneratedCache ( folder.newFolder(), 1 );
+        Counting generator = new Counting ( 3 );
+
+        cache.get ( key ( 3 ), 100000, true, generator );
+
+        // The pattern repeats every 256 bytes
+        assertTrue ( cache.getSizeInBytes() < 10000 );
+        assertData ( 3, 100000, cache.get ( key ( 3 ), 100000, true, generator ) );
+        assertEquals ( 1, generator.mCalls );
+    }
+
+    @Test
+    public void keysAddressTheirParameters()
+    {
+        assertEquals ( key ( 1 ).getFileName(), key ( 1 ).getFileName() );
+        assertNotEquals ( key ( 1 ).getFileName(), key ( 2 ).getFileName() );
+        assertNotEquals ( new ESGeneratedCache.Key ( "a" ).put ( 1 ).put ( 2 ).getFileName(),
+                          new ESGeneratedCache.Key ( "a" ).put ( 2 ).put ( 1 ).getFileName() );
+        assertNotEquals ( new ESGeneratedCache.Key ( "a" ).put ( 0.0f ).getFileName(),
+                          new ESGeneratedCache.Key ( "a" ).put ( -0.0f ).getFileName() );
+        assertTrue ( key ( 1 ).getFileName().startsWith ( "test-" ) );
+    }
+
+    @Test
+    public void anotherSeedIsGenerated() throws Exception
+    {
+        ESGeneratedCache cache = new ESGeneratedCache ( folder.newFolder(), 1 );
+        Counting a = new Counting ( 1 ), b = new Counting ( 2 );
+
+        cache.get ( key ( 1 ), 1000, false, a );
+        assertData ( 2, 1000, cache.get ( key ( 2 ), 1000, false, b ) );
+        assertData ( 1, 1000, cache.get ( key ( 1 ), 1000, false, a ) );
+        assertEquals ( 1, a.mCalls );
+        assertEquals ( 1, b.mCalls );
+    }
+
+    @Test
+    public void anotherVersionOrSizeIsGeneratedAgain() throws Exception
+    {
+        File directory = folder.newFolder();
+        Counting generator = new Counting ( 5 );
+
+        new ESGeneratedCache ( directory, 1 ).get ( key ( 5 ), 1000, false, generator );
+
+        // The app was updated
+        ESGeneratedCache updated = new ESGeneratedCache ( directory, 2 );
+
+        assertData ( 5, 1000, updated.get ( key ( 5 ), 1000, false, generator ) );
+        assertEquals ( 2, generator.mCalls );
+        assertData ( 5, 1000, updated.get ( key ( 5 ), 1000, false, generator ) );
+        assertEquals ( 2, generator.mCalls );
+
+        // A key that does not cover the size
+        assertData ( 5, 500, updated.get ( key ( 5 ), 500, false, generator ) );
+        assertEquals ( 3, generator.mCalls );
+    }
+
+    @Test
+    public void truncatedOrCorruptBlobsAreGeneratedAgain() throws Exception
+    {
+        ESGeneratedCache cache = new ESGeneratedCache ( folder.newFolder(), 1 );
+        Counting generator = new Counting ( 9 );
+        File raw = new File ( cache.getDirectory(), key ( 9 ).getFileName() );
+        File compressed = new File ( cache.getDirectory(), key ( 10 ).getFileName() );
+
+        cache.get ( key ( 9 ), 5000, false, generator );
+
+        try ( RandomAccessFile file = new RandomAccessFile ( raw, "rw" ) )
+        {
+            file.setLength ( file.length() - 1 );
+        }
+
+        assertData ( 9, 5000, cache.get ( key ( 9 ), 5000, false, generator ) );
+        assertEquals ( 2, generator.mCalls );
+
+        generator.mSeed = 10;
+        cache.get ( key ( 10 ), 5000, true, generator );
+
+        try ( RandomAccessFile file = new RandomAccessFile ( compressed, "rw" ) )
+        {
+            // Break the deflate stream just after the header
+            file.seek ( 64 );
+            file.write ( 0xFF );
+            file.write ( 0xFF );
+        }
+
+        assertData ( 10, 5000, cache.get ( key ( 10 ), 5000, true, generator ) );
+        assertEquals ( 4, generator.mCalls );
+        assertEquals ( 0, cache.getHits() );
+    }
+
+    @Test
+    public void invalidateClearAndTrim() throws Exception
+    {
+        ESGeneratedCache cache = new ESGeneratedCache ( folder.newFolder(), 1 );
+        Counting generator = new Counting ( 0 );
+
+        for ( int seed = 0; seed < 4; seed++ )
+        {
+            cache.get ( key ( seed ), 1000, false, generator );
+            new File ( cache.getDirectory(), key ( seed ).getFileName() ).setLastModified ( 1000000L * ( seed + 1 ) );
+        }
+
+        cache.invalidate ( key ( 1 ) );
+        assertFalse ( cache.contains ( key ( 1 ) ) );
+        assertEquals ( 3 * 1064, cache.getSizeInBytes() );
+
+        // Keeps the most recently used
+        cache.trim ( 2200 );
+        assertFalse ( cache.contains ( key ( 0 ) ) );
+        assertTrue ( cache.contains ( key ( 2 ) ) );
+        assertTrue ( cache.contains ( key ( 3 ) ) );
+
+        cache.clear();
+        assertEquals ( 0, cache.getSizeInBytes() );
+        assertFalse ( cache.contains ( key ( 3 ) ) );
+    }
+}
@@ -0,0 +1,229 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESGeodesyTest
+{
+    private static final ESGeodesy WGS84 = ESGeodesy.WGS84;
+    private static final double A = ESGeodesy.WGS84_A;
+    private static final double B = ESGeodesy.WGS84_B;
+
+    // Longitude, latitude, height triples, heights from -100 km to 40000 km
+    private static double[] randomPoints ( int count, long seed )
+    {
+        Random random = new Random ( seed );
+        double[] points = new double[count * 3];
+
+        for ( int i = 0; i < count; i++ )
+        {
+            points[i * 3] = random.nextDouble() * 360.0 - 180.0;
+            points[i * 3 + 1] = Math.toDegrees ( Math.asin ( random.nextDouble() * 2.0 - 1.0 ) );
+            points[i * 3 + 2] = random.nextDouble() * 40100000.0 - 100000.0;
+        }
+
+        return points;
+    }
+
+    @Test
+    public void ecefReferenceValues()
+    {
+        double[] out = new double[3];
+        double e2 = WGS84.getEccentricitySquared();
+
+        // Equator at the prime meridian and at 90E
+        WGS84.geodeticToEcef ( 0.0, 0.0, 0.0, out, 0 );
+        assertArrayEquals ( new double[] { A, 0.0, 0.0 }, out, 1e-9 );
+
+        WGS84.geodeticToEcef ( 90.0, 0.0, 1000.0, out, 0 );
+        assertArrayEquals ( new double[] { 0.0, A + 1000.0, 0.0 }, out, 1e-9 );
+
+        // Poles
+        WGS84.geodeticToEcef ( 0.0, 90.0, 0.0, out, 0 );
+        assertArrayEquals ( new double[] { 0.0, 0.0, B }, out, 1e-6 );
+
+        WGS84.geodeticToEcef ( 0.0, -90.0, 0.0, out, 0 );
+        assertArrayEquals ( new double[] { 0.0, 0.0, -B }, out, 1e-6 );
+
+        // At 45N 45E the prime vertical radius is a / sqrt ( 1 - e2 / 2 )
+        double n = A / Math.sqrt ( 1.0 - e2 * 0.5 );
+        WGS84.geodeticToEcef ( 45.0, 45.0, 0.0, out, 0 );
+        assertArrayEquals ( new double[] { n * 0.5, n * 0.5, n * ( 1.0 - e2 ) * Math.sqrt ( 0.5 ) }, out, 1e-6 );
+
+        // WGS84 flattening is 1 / 298.257223563
+        assertEquals ( 298.257223563, A / ( A - B ), 1e-6 );
+    }
+
+    @Test
+    public void geodeticReferenceValues()
+    {
+        double[] out = new double[3];
+
+        WGS84.ecefToGeodetic ( A + 500.0, 0.0, 0.0, out, 0 );
+        assertArrayEquals ( new double[] { 0.0, 0.0, 500.0 }, out, 1e-9 );
+
+        WGS84.ecefToGeodetic ( 0.0, 0.0, B + 10.0, out, 0 );
+        assertArrayEquals ( new double[] { 0.0, 90.0, 10.0 }, out, 1e-6 );
+
+        WGS84.ecefToGeodetic ( 0.0, -A, 0.0, out, 0 );
+        assertArrayEquals ( new double[] { -90.0, 0.0, 0.0 }, out, 1e-9 );
+    }
+
+    @Test
+    public void roundTripIsBelowAMicrometer()
+    {
+        double[] points = randomPoints ( 100000, 1 );
+        double[] ecef = new double[points.length];
+        double[] geodetic = new double[points.length];
+        double[] back = new double[3];
+
+        WGS84.geodeticToEcef ( points, points.length / 3, ecef );
+        WGS84.ecefToGeodetic ( ecef, points.length / 3, geodetic );
+
+        for ( int i = 0; i < points.length; i += 3 )
+        {
+            assertEquals ( points[i + 2], geodetic[i + 2], 1e-6 );
+
+            // Compare positions, longitude is meaningless at the poles
+            WGS84.geodeticToEcef ( geodetic[i], geodetic[i + 1], geodetic[i + 2], back, 0 );
+            assertEquals ( ecef[i], back[0], 1e-6 );
+            assertEquals ( ecef[i + 1], back[1], 1e-6 );
+            assertEquals ( ecef[i + 2], back[2], 1e-6 );
+        }
+    }
+
+    @Test
+    public void kilometerEllipsoidIsScaled()
+    {
+        double[] expected = new double[3];
+        double[] actual = new double[3];
+
+        WGS84.geodeticToEcef ( -73.0, 41.0, 2500.0, expected, 0 );
+        ESGeodesy.WGS84_KM.geodeticToEcef ( -73.0, 41.0, 2.5, actual, 0 );
+
+        assertArrayEquals ( new double[] { expected[0] / 1000.0, expected[1] / 1000.0, expected[2] / 1000.0 },
+                            actual, 1e-9 );
+    }
+
+    @Test
+    public void enuFrame()
+    {
+        double[] frame = new double[16];
+        double[] out = new double[3];
+        double[] point = new double[3];
+
+        // At 0N 0E east is +y, north is +z and up is +x
+        WGS84.computeEnuFrame ( 0.0, 0.0, 0.0, frame );
+        ESGeodesy.enuToEcef ( frame, 1.0, 2.0, 3.0, out, 0 );
+        assertArrayEquals ( new double[] { A + 3.0, 1.0, 2.0 }, out, 1e-9 );
+
+        // A point straight above the origin is up, one to the east is east
+        WGS84.computeEnuFrame ( 10.0, 45.0, 100.0, frame );
+        WGS84.geodeticToEcef ( 10.0, 45.0, 250.0, point, 0 );
+        ESGeodesy.ecefToEnu ( frame, point[0], point[1], point[2], out, 0 );
+        assertArrayEquals ( new double[] { 0.0, 0.0, 150.0 }, out, 1e-6 );
+
+        WGS84.geodeticToEcef ( 10.001, 45.0, 100.0, point, 0 );
+        ESGeodesy.ecefToEnu ( frame, point[0], point[1], point[2], out, 0 );
+        assertTrue ( out[0] > 78.0 && out[0] < 79.0 );
+        assertEquals ( 0.0, out[1], 1e-3 );
+
+        // ENU to ECEF and back
+        ESGeodesy.enuToEcef ( frame, -1234.5, 678.9, -42.0, point, 0 );
+        ESGeodesy.ecefToEnu ( frame, point[0], point[1], point[2], out, 0 );
+        assertArrayEquals ( new double[] { -1234.5, 678.9, -42.0 }, out, 1e-8 );
+    }
+
+    @Test
+    public void greatCircleReferenceValues()
+    {
+        // One degree of latitude on the mean sphere
+        assertEquals ( Math.PI / 180.0 * ESGeodesy.MEAN_RADIUS,
+                       ESGeodesy.greatCircleDistance ( 5.0, 10.0, 5.0, 11.0, ESGeodesy.MEAN_RADIUS ), 1e-6 );
+
+        // LAX (33 57N, 118 24W) to JFK (40 38N, 73 47W) from the Aviation
+        // Formulary: 0.623585 rad, initial course 66 degrees
+        double laxLon = -( 118.0 + 24.0 / 60.0 ), laxLat = 33.0 + 57.0 / 60.0;
+        double jfkLon = -( 73.0 + 47.0 / 60.0 ), jfkLat = 40.0 + 38.0 / 60.0;
+        assertEquals ( 0.623585, ESGeodesy.centralAngle ( laxLon, laxLat, jfkLon, jfkLat ), 1e-6 );
+        assertEquals ( 66.0, ESGeodesy.initialBearing ( laxLon, laxLat, jfkLon, jfkLat ), 0.5 );
+
+        // Antipodes and identical points
+        assertEquals ( Math.PI, ESGeodesy.centralAngle ( 0.0, 0.0, 180.0, 0.0 ), 1e-12 );
+        assertEquals ( 0.0, ESGeodesy.centralAngle ( 12.0, 34.0, 12.0, 34.0 ), 0.0 );
+
+        assertEquals ( 90.0, ESGeodesy.initialBearing ( 0.0, 0.0, 10.0, 0.0 ), 1e-9 );
+        assertEquals ( 180.0, ESGeodesy.initialBearing ( 0.0, 10.0, 0.0, 0.0 ), 1e-9 );
+    }
+
+    @Test
+    public void webMercatorReferenceValues()
+    {
+        double[] out = new double[2];
+        double[] extent = new double[4];
+
+        ESGeodesy.lonLatToWebMercator ( 180.0, ESGeodesy.WEB_MERCATOR_MAX_LATITUDE, out, 0 );
+        assertEquals ( 20037508.342789244, out[0], 1e-6 );
+        assertEquals ( 20037508.342789244, out[1], 1e-3 );
+
+        assertEquals ( 0, ESGeodesy.webMercatorTileX ( 0.0, 0 ) );
+        assertEquals ( 1, ESGeodesy.webMercatorTileX ( 0.0, 1 ) );
+        assertEquals ( 1, ESGeodesy.webMercatorTileY ( 0.0, 1 ) );
+        assertEquals ( 0, ESGeodesy.webMercatorTileY ( 89.0, 10 ) );
+        assertEquals ( 1023, ESGeodesy.webMercatorTileY ( -89.0, 10 ) );
+        assertEquals ( 1023, ESGeodesy.webMercatorTileX ( 180.0, 10 ) );
+
+        // Berlin, Brandenburg Gate, at zoom 12
+        assertEquals ( 2200, ESGeodesy.webMercatorTileX ( 13.3777, 12 ) );
+        assertEquals ( 1343, ESGeodesy.webMercatorTileY ( 52.5163, 12 ) );
+
+        ESGeodesy.webMercatorTileExtent ( 0, 0, 0, extent );
+        assertArrayEquals ( new double[] { -180.0, -ESGeodesy.WEB_MERCATOR_MAX_LATITUDE,
+                                           180.0, ESGeodesy.WEB_MERCATOR_MAX_LATITUDE }, extent, 1e-9 );
+
+        // A point lies inside the extent of its tile
+        ESGeodesy.webMercatorTileExtent ( 12, 2200, 1343, extent );
+        assertTrue ( extent[0] <= 13.3777 && 13.3777 < extent[2] );
+        assertTrue ( extent[1] < 52.5163 && 52.5163 <= extent[3] );
+    }
+
+    @Test
+    public void batchBufferMatchesSinglePoints()
+    {
+        int count = 50000;
+        double[] points = randomPoints ( count, 2 );
+        double[] ecef = new double[3];
+        double cx = 4000000.0, cy = -3000000.0, cz = 1000000.0;
+        FloatBuffer sequential = ByteBuffer.allocateDirect ( ( count * 3 + 3 ) * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+        FloatBuffer parallel = ByteBuffer.allocateDirect ( ( count * 3 + 3 ) * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+
+        // Start past the first vertex to check the buffer position is honored
+        sequential.position ( 3 );
+        parallel.position ( 3 );
+        WGS84.geodeticToEcef ( points, count, cx, cy, cz, sequential );
+        WGS84.geodeticToEcef ( points, count, cx, cy, cz, parallel, new ForkJoinPool ( 4 ) );
+
+        assertEquals ( count * 3 + 3, sequential.position() );
+        assertEquals ( count * 3 + 3, parallel.position() );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            WGS84.geodeticToEcef ( points[i * 3], points[i * 3 + 1], points[i * 3 + 2], ecef, 0 );
+
+            assertEquals ( ( float ) ( ecef[0] - cx ), sequential.get ( 3 + i * 3 ), 0.0f );
+            assertEquals ( ( float ) ( ecef[1] - cy ), sequential.get ( 4 + i * 3 ), 0.0f );
+            assertEquals ( ( float ) ( ecef[2] - cz ), sequential.get ( 5 + i * 3 ), 0.0f );
+        }
+
+        sequential.position ( 0 );
+        parallel.position ( 0 );
+        assertEquals ( sequential, parallel );
+    }
+}
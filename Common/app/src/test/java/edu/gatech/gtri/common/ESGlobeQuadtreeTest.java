@@ -0,0 +1,358 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ESGlobeQuadtreeTest
+{
+    // WGS84 in kilometers
+    private static final double A = 6378.137;
+    private static final double B = 6356.752314245;
+    private static final ESGeodesy GEODESY = new ESGeodesy ( A, B );
+    private static final float FOVY = 60.0f;
+    private static final int VIEWPORT = 768;
+
+    // Camera basis, set by viewProj()
+    private static double[] sForward = new double[3];
+    private static double[] sRight = new double[3];
+    private static double[] sUp = new double[3];
+
+    // View-projection with the eye at the origin, looking along dir
+    private static float[] viewProj ( double[] dir, double[] up )
+    {
+        ESTransform view = new ESTransform();
+        view.matrixLookAt ( 0.0f, 0.0f, 0.0f, ( float ) dir[0], ( float ) dir[1], ( float ) dir[2],
+                            ( float ) up[0], ( float ) up[1], ( float ) up[2] );
+
+        ESTransform perspective = new ESTransform();
+        perspective.matrixLoadIdentity();
+        perspective.perspective ( FOVY, 1.0f, 0.01f, 100000.0f );
+
+        ESTransform vp = new ESTransform();
+        vp.matrixMultiply ( view.get(), perspective.get() );
+
+        normalize ( dir, sForward );
+        cross ( sForward, up, sRight );
+        normalize ( sRight, sRight );
+        cross ( sRight, sForward, sUp );
+        return vp.get();
+    }
+
+    private static void normalize ( double[] v, double[] out )
+    {
+        double length = Math.sqrt ( v[0] * v[0] + v[1] * v[1] + v[2] * v[2] );
+        out[0] = v[0] / length;
+        out[1] = v[1] / length;
+        out[2] = v[2] / length;
+    }
+
+    private static void cross ( double[] a, double[] b, double[] out )
+    {
+        double x = a[1] * b[2] - a[2] * b[1];
+        double y = a[2] * b[0] - a[0] * b[2];
+        double z = a[0] * b[1] - a[1] * b[0];
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
+    }
+
+    private static long key ( int level, int x, int y )
+    {
+        return ( ( long ) level << 58 ) | ( ( long ) x << 29 ) | y;
+    }
+
+    private static Set<Long> selection ( ESGlobeQuadtree tree )
+    {
+        Set<Long> tiles = new HashSet<Long>();
+
+        for ( int i = 0; i < tree.getNumSelected(); i++ )
+        {
+            assertTrue ( tiles.add ( key ( tree.getSelectedLevel ( i ), tree.getSelectedX ( i ), tree.getSelectedY ( i ) ) ) );
+        }
+
+        return tiles;
+    }
+
+    // Every visible surface point must lie in exactly one selected tile
+    private static void assertCoversView ( ESGlobeQuadtree tree, double[] eye )
+    {
+        Set<Long> tiles = selection ( tree );
+        double tan = Math.tan ( Math.toRadians ( FOVY ) * 0.5 );
+        int hits = 0;
+
+        for ( int py = 0; py <= 32; py++ )
+        {
+            for ( int px = 0; px <= 32; px++ )
+            {
+                double sx = ( px / 16.0 - 1.0 ) * tan * 0.999;
+                double sy = ( py / 16.0 - 1.0 ) * tan * 0.999;
+                double[] dir = new double[3];
+
+                for ( int k = 0; k < 3; k++ )
+                {
+                    dir[k] = sForward[k] + sx * sRight[k] + sy * sUp[k];
+                }
+
+                // Ray / ellipsoid in the space where the ellipsoid is a unit sphere
+                double ox = eye[0] / A, oy = eye[1] / A, oz = eye[2] / B;
+                double dx = dir[0] / A, dy = dir[1] / A, dz = dir[2] / B;
+                double a = dx * dx + dy * dy + dz * dz;
+                double b = 2.0 * ( ox * dx + oy * dy + oz * dz );
+                double c = ox * ox + oy * oy + oz * oz - 1.0;
+                double disc = b * b - 4.0 * a * c;
+
+                if ( disc < 0.0 )
+                {
+                    continue;
+                }
+
+                double t = ( -b - Math.sqrt ( disc ) ) / ( 2.0 * a );
+
+                if ( t < 0.0 )
+                {
+                    continue;
+                }
+                double x = eye[0] + dir[0] * t;
+                double y = eye[1] + dir[1] * t;
+                double z = eye[2] + dir[2] * t;
+                double lon = Math.toDegrees ( Math.atan2 ( y, x ) );
+                double lat = Math.toDegrees ( Math.atan2 ( z * A * A / ( B * B ), Math.sqrt ( x * x + y * y ) ) );
+                int found = 0;
+
+                for ( int level = 0; level <= tree.getMaxLevel(); level++ )
+                {
+                    double span = 180.0 / ( 1 << level );
+                    int tx = Math.min ( ( int ) ( ( lon + 180.0 ) / span ), ( 2 << level ) - 1 );
+                    int ty = Math.min ( ( int ) ( ( 90.0 - lat ) / span ), ( 1 << level ) - 1 );
+
+                    if ( tiles.contains ( key ( level, tx, ty ) ) )
+                    {
+                        found++;
+                    }
+                }
+
+                assertEquals ( "Point " + lon + ", " + lat, 1, found );
+                hits++;
+            }
+        }
+
+        assertTrue ( hits > 0 );
+    }
+
+    @Test
+    public void distantGlobeUsesCoarseTiles()
+    {
+        ESGlobeQuadtree tree = new ESGlobeQuadtree ( A, B, 256, 20 );
+        double[] eye = { 2.0 * A, 0.0, 0.0 };
+
+        tree.select ( eye[0], eye[1], eye[2], viewProj ( new double[] { -1.0, 0.0, 0.0 }, new double[] { 0.0, 0.0, 1.0 } ),
+                      VIEWPORT, FOVY );
+
+        assertTrue ( tree.getNumSelected() > 0 );
+        assertTrue ( tree.getNumHorizonCulled() > 0 );
+
+        double[] extent = new double[4];
+
+        for ( int i = 0; i < tree.getNumSelected(); i++ )
+        {
+            assertTrue ( tree.getSelectedLevel ( i ) <= 3 );
+
+            // Tiles on the far side of the globe are not selected
+            ESGlobeQuadtree.getTileExtent ( tree.getSelectedLevel ( i ), tree.getSelectedX ( i ), tree.getSelectedY ( i ), extent );
+            assertTrue ( extent[2] > -120.0 && extent[0] < 120.0 );
+        }
+
+        assertCoversView ( tree, eye );
+    }
+
+    @Test
+    public void closeCameraRefinesBelowTheEye()
+    {
+        ESGlobeQuadtree tree = new ESGlobeQuadtree ( A, B, 256, 20 );
+        double[] eye = new double[3];
+
+        // 5 km above 45N 10E, looking straight down
+        GEODESY.geodeticToEcef ( 10.0, 45.0, 5.0, eye, 0 );
+        double[] down = { -eye[0], -eye[1], -eye[2] * A * A / ( B * B ) };
+
+        tree.select ( eye[0], eye[1], eye[2], viewProj ( down, new double[] { 0.0, 0.0, 1.0 } ), VIEWPORT, FOVY );
+
+        int deepest = 0;
+
+        for ( int i = 0; i < tree.getNumSelected(); i++ )
+        {
+            deepest = Math.max ( deepest, tree.getSelectedLevel ( i ) );
+        }
+
+        assertTrue ( deepest >= 12 );
+        assertTrue ( tree.getNumSelected() < 200 );
+        assertCoversView ( tree, eye );
+    }
+
+    @Test
+    public void horizonViewIsCoveredAndCulled()
+    {
+        ESGlobeQuadtree tree = new ESGlobeQuadtree ( A, B, 256, 20 );
+        double[] eye = new double[3];
+
+        // 2 km above the equator, looking north along the surface
+        GEODESY.geodeticToEcef ( 30.0, 0.0, 2.0, eye, 0 );
+        double[] north = { 0.0, 0.0, 1.0 };
+        double[] up = { eye[0], eye[1], eye[2] };
+        double[] dir = { north[0] - 0.05 * up[0] / A, north[1] - 0.05 * up[1] / A, north[2] - 0.05 * up[2] / A };
+
+        tree.select ( eye[0], eye[1], eye[2], viewProj ( dir, up ), VIEWPORT, FOVY );
+
+        assertTrue ( tree.getNumHorizonCulled() > 0 );
+        assertTrue ( tree.getNumFrustumCulled() > 0 );
+        assertCoversView ( tree, eye );
+    }
+
+    @Test
+    public void tileCountFollowsScreenResolution()
+    {
+        double[] eye = { 1.5 * A, 0.2 * A, 0.3 * A };
+        float[] vp = viewProj ( new double[] { -eye[0], -eye[1], -eye[2] }, new double[] { 0.0, 0.0, 1.0 } );
+
+        ESGlobeQuadtree shallow = new ESGlobeQuadtree ( A, B, 256, 20 );
+        ESGlobeQuadtree deep = new ESGlobeQuadtree ( A, B, 256, 30 );
+        int small = shallow.select ( eye[0], eye[1], eye[2], vp, VIEWPORT, FOVY );
+        int same = deep.select ( eye[0], eye[1], eye[2], vp, VIEWPORT, FOVY );
+        Set<Long> tiles = selection ( shallow );
+        int large = shallow.select ( eye[0], eye[1], eye[2], vp, VIEWPORT * 4, FOVY );
+
+        // A deeper dataset does not change the selection, a larger screen does
+        assertEquals ( small, same );
+        assertEquals ( tiles, selection ( deep ) );
+        assertTrue ( large > small );
+    }
+
+    @Test
+    public void selectionIsDeterministic()
+    {
+        ESGlobeQuadtree tree = new ESGlobeQuadtree ( A, B, 256, 20 );
+        double[] eye = { 0.3 * A, -1.2 * A, 0.6 * A };
+        float[] vp = viewProj ( new double[] { -eye[0], -eye[1], -eye[2] }, new double[] { 0.0, 0.0, 1.0 } );
+
+        tree.select ( eye[0], eye[1], eye[2], vp, VIEWPORT, FOVY );
+        int[] first = new int[tree.getNumSelected() * 3];
+
+        for ( int i = 0; i < tree.getNumSelected(); i++ )
+        {
+            first[i * 3] = tree.getSelectedLevel ( i );
+            first[i * 3 + 1] = tree.getSelectedX ( i );
+            first[i * 3 + 2] = tree.getSelectedY ( i );
+        }
+
+        tree.select ( eye[0], eye[1], eye[2], vp, VIEWPORT, FOVY );
+        assertEquals ( first.length / 3, tree.getNumSelected() );
+
+        for ( int i = 0; i < tree.getNumSelected(); i++ )
+        {
+            assertEquals ( first[i * 3], tree.getSelectedLevel ( i ) );
+            assertEquals ( first[i * 3 + 1], tree.getSelectedX ( i ) );
+            assertEquals ( first[i * 3 + 2], tree.getSelectedY ( i ) );
+        }
+    }
+
+    @Test
+    public void boundingSphereContainsTheTile()
+    {
+        ESGlobeQuadtree tree = new ESGlobeQuadtree ( A, B, 256, 20 );
+        ESShapes tile = new ESShapes();
+        double[] sphere = new double[4];
+        double[] center = new double[3];
+        double[] extent = new double[4];
+        int[][] tiles = { { 0, 0, 0 }, { 0, 1, 0 }, { 1, 3, 0 }, { 3, 9, 5 }, { 7, 200, 60 } };
+
+        for ( int[] t : tiles )
+        {
+            tree.computeBoundingSphere ( t[0], t[1], t[2], sphere );
+            ESGlobeQuadtree.getTileExtent ( t[0], t[1], t[2], extent );
+            tile.genGeodeticTile ( 65, GEODESY, extent[0], extent[1], extent[2], extent[3], 0.0f, center );
+
+            for ( int v = 0; v < 65 * 65; v++ )
+            {
+                double dx = tile.getVertices().get ( v * 3 ) + center[0] - sphere[0];
+                double dy = tile.getVertices().get ( v * 3 + 1 ) + center[1] - sphere[1];
+                double dz = tile.getVertices().get ( v * 3 + 2 ) + center[2] - sphere[2];
+
+                assertTrue ( Math.sqrt ( dx * dx + dy * dy + dz * dz ) <= sphere[3] );
+            }
+        }
+    }
+
+    @Test
+    public void geodeticTileMesh()
+    {
+        ESShapes tile = new ESShapes();
+        double[] center = new double[3];
+        int size = 9;
+        int numIndices = tile.genGeodeticTile ( size, GEODESY, 0.0, 0.0, 45.0, 45.0, 10.0f, center );
+
+        assertEquals ( 8 * 8 * 6 + 4 * 8 * 6, numIndices );
+
+        // Surface vertices lie on the ellipsoid, skirt vertices below it
+        for ( int v = 0; v < size * size + 4 * size; v++ )
+        {
+            double x = tile.getVertices().get ( v * 3 ) + center[0];
+            double y = tile.getVertices().get ( v * 3 + 1 ) + center[1];
+            double z = tile.getVertices().get ( v * 3 + 2 ) + center[2];
+            double f = ( x * x + y * y ) / ( A * A ) + z * z / ( B * B );
+
+            if ( v < size * size )
+            {
+                assertEquals ( 1.0, f, 1e-5 );
+            }
+            else
+            {
+                assertTrue ( f < 1.0 - 1e-3 );
+            }
+        }
+
+        // North-west and south-east corners
+        assertEquals ( 0.0f, tile.getTexCoords().get ( 0 ), 0.0f );
+        assertEquals ( 0.0f, tile.getTexCoords().get ( 1 ), 0.0f );
+        assertEquals ( 1.0f, tile.getTexCoords().get ( ( size * size - 1 ) * 2 ), 0.0f );
+        assertEquals ( 1.0f, tile.getTexCoords().get ( ( size * size - 1 ) * 2 + 1 ), 0.0f );
+
+        // Every triangle, skirts included, faces away from the tile center
+        double[] axis = { center[0], center[1], center[2] };
+
+        for ( int t = 0; t < numIndices; t += 3 )
+        {
+            float[][] p = new float[3][3];
+
+            for ( int k = 0; k < 3; k++ )
+            {
+                int v = tile.getIndices().get ( t + k );
+                p[k][0] = tile.getVertices().get ( v * 3 );
+                p[k][1] = tile.getVertices().get ( v * 3 + 1 );
+                p[k][2] = tile.getVertices().get ( v * 3 + 2 );
+            }
+
+            double[] e1 = { p[1][0] - p[0][0], p[1][1] - p[0][1], p[1][2] - p[0][2] };
+            double[] e2 = { p[2][0] - p[0][0], p[2][1] - p[0][1], p[2][2] - p[0][2] };
+            double[] n = new double[3];
+            cross ( e1, e2, n );
+
+            if ( t < 8 * 8 * 6 )
+            {
+                // Surface triangles face up
+                assertTrue ( n[0] * axis[0] + n[1] * axis[1] + n[2] * axis[2] > 0.0 );
+            }
+            else
+            {
+                // Skirt walls face away from the middle of the tile
+                double mx = ( p[0][0] + p[1][0] + p[2][0] ) / 3.0;
+                double my = ( p[0][1] + p[1][1] + p[2][1] ) / 3.0;
+                double mz = ( p[0][2] + p[1][2] + p[2][2] ) / 3.0;
+                assertTrue ( n[0] * mx + n[1] * my + n[2] * mz > 0.0 );
+            }
+        }
+    }
+}
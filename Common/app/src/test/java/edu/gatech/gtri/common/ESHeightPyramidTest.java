@@ -0,0 +1,216 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESHeightPyramidTest
+{
+    static float[] randomHeights ( int width, int height, long seed )
+    {
+        Random random = new Random ( seed );
+        float[] heights = new float[width * height];
+
+        for ( int i = 0; i < heights.length; i++ )
+        {
+            heights[i] = random.nextFloat();
+        }
+
+        return heights;
+    }
+
+    // Brute force range over the samples covered by a node
+    static void assertNodeRange ( ESHeightPyramid pyramid, float[] heights, int level, int col, int row )
+    {
+        int width = pyramid.getGridWidth();
+        int c0 = col << level;
+        int r0 = row << level;
+        int c1 = Math.min ( ( col + 1 ) << level, width - 1 );
+        int r1 = Math.min ( ( row + 1 ) << level, pyramid.getGridHeight() - 1 );
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+
+        for ( int r = r0; r <= r1; r++ )
+        {
+            for ( int c = c0; c <= c1; c++ )
+            {
+                min = Math.min ( min, heights[r * width + c] );
+                max = Math.max ( max, heights[r * width + c] );
+            }
+        }
+
+        assertEquals ( min, pyramid.getMin ( level, col, row ), 0.0f );
+        assertEquals ( max, pyramid.getMax ( level, col, row ), 0.0f );
+    }
+
+    @Test
+    public void levelsHalveDownToOneNode()
+    {
+        ESHeightPyramid pyramid = new ESHeightPyramid ( new float[11 * 6], 11, 6 );
+
+        assertEquals ( 5, pyramid.getNumLevels() );
+        assertEquals ( 10, pyramid.getLevelWidth ( 0 ) );
+        assertEquals ( 5, pyramid.getLevelHeight ( 0 ) );
+        assertEquals ( 5, pyramid.getLevelWidth ( 1 ) );
+        assertEquals ( 3, pyramid.getLevelHeight ( 1 ) );
+        assertEquals ( 1, pyramid.getLevelWidth ( 4 ) );
+        assertEquals ( 1, pyramid.getLevelHeight ( 4 ) );
+    }
+
+    @Test
+    public void nodesBoundTheSamplesTheyCover()
+    {
+        int width = 37;
+        int height = 23;
+        float[] heights = randomHeights ( width, height, 7 );
+        ESHeightPyramid pyramid = new ESHeightPyramid ( heights, width, height );
+
+        for ( int level = 0; level < pyramid.getNumLevels(); level++ )
+        {
+            for ( int row = 0; row < pyramid.getLevelHeight ( level ); row++ )
+            {
+                for ( int col = 0; col < pyramid.getLevelWidth ( level ); col++ )
+                {
+                    assertNodeRange ( pyramid, heights, level, col, row );
+                }
+            }
+        }
+    }
+
+    static void assertSamePyramid ( ESHeightPyramid expected, ESHeightPyramid actual )
+    {
+        assertEquals ( expected.getNumLevels(), actual.getNumLevels() );
+
+        for ( int level = 0; level < expected.getNumLevels(); level++ )
+        {
+            for ( int row = 0; row < expected.getLevelHeight ( level ); row++ )
+            {
+                for ( int col = 0; col < expected.getLevelWidth ( level ); col++ )
+                {
+                    assertEquals ( expected.getMin ( level, col, row ), actual.getMin ( level, col, row ), 0.0f );
+                    assertEquals ( expected.getMax ( level, col, row ), actual.getMax ( level, col, row ), 0.0f );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelBuildMatchesSequential()
+    {
+        int width = 513;
+        int height = 301;
+        float[] heights = randomHeights ( width, height, 17 );
+        ForkJoinPool pool = new ForkJoinPool ( 4 );
+
+        try
+        {
+            assertSamePyramid ( new ESHeightPyramid ( heights, width, height, null ),
+                                new ESHeightPyramid ( heights, width, height, pool ) );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void updateMatchesRebuild()
+    {
+        int width = 130;
+        int height = 67;
+        float[] heights = randomHeights ( width, height, 19 );
+        ESHeightPyramid pyramid = new ESHeightPyramid ( heights, width, height );
+
+        // Raise a block, including a spike at the grid border, then lower it again
+        for ( float delta : new float[] { 5.0f, -9.0f } )
+        {
+            for ( int row = 40; row <= 66; row++ )
+            {
+                for ( int col = 100; col <= 129; col++ )
+                {
+                    heights[row * width + col] += delta;
+                }
+            }
+
+            pyramid.update ( 100, 40, 129, 66 );
+            assertSamePyramid ( new ESHeightPyramid ( heights, width, height, null ), pyramid );
+        }
+
+        // A single sample in the middle
+        heights[20 * width + 33] = 100.0f;
+        pyramid.update ( 33, 20, 33, 20 );
+        assertSamePyramid ( new ESHeightPyramid ( heights, width, height, null ), pyramid );
+        assertEquals ( 100.0f, pyramid.getMax ( pyramid.getNumLevels() - 1, 0, 0 ), 0.0f );
+    }
+
+    @Test
+    public void rangeOfCellRectangles()
+    {
+        int width = 45;
+        int height = 29;
+        float[] heights = randomHeights ( width, height, 23 );
+        ESHeightPyramid pyramid = new ESHeightPyramid ( heights, width, height );
+        Random random = new Random ( 29 );
+        float[] range = new float[2];
+
+        for ( int n = 0; n < 200; n++ )
+        {
+            int col0 = random.nextInt ( width - 1 );
+            int row0 = random.nextInt ( height - 1 );
+            int col1 = col0 + random.nextInt ( width - 1 - col0 );
+            int row1 = row0 + random.nextInt ( height - 1 - row0 );
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+
+            for ( int r = row0; r <= row1 + 1; r++ )
+            {
+                for ( int c = col0; c <= col1 + 1; c++ )
+                {
+                    min = Math.min ( min, heights[r * width + c] );
+                    max = Math.max ( max, heights[r * width + c] );
+                }
+            }
+
+            pyramid.getRange ( col0, row0, col1, row1, range );
+            assertEquals ( min, range[0], 0.0f );
+            assertEquals ( max, range[1], 0.0f );
+        }
+    }
+
+    @Test
+    public void serializationRoundTrip() throws IOException
+    {
+        int width = 200;
+        int height = 123;
+        float[] heights = randomHeights ( width, height, 31 );
+        ESHeightPyramid pyramid = new ESHeightPyramid ( heights, width, height );
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        pyramid.write ( bytes );
+        ESHeightPyramid copy = ESHeightPyramid.read ( new ByteArrayInputStream ( bytes.toByteArray() ),
+                                                      heights, width, height );
+
+        assertSamePyramid ( pyramid, copy );
+
+        // The copy can be updated like the original
+        heights[0] = -3.0f;
+        copy.update ( 0, 0, 0, 0 );
+        assertEquals ( -3.0f, copy.getMin ( copy.getNumLevels() - 1, 0, 0 ), 0.0f );
+    }
+
+    @Test ( expected = IOException.class )
+    public void readRejectsOtherGrids() throws IOException
+    {
+        float[] heights = randomHeights ( 20, 20, 37 );
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        new ESHeightPyramid ( heights, 20, 20 ).write ( bytes );
+        ESHeightPyramid.read ( new ByteArrayInputStream ( bytes.toByteArray() ), heights, 19, 21 );
+    }
+}
@@ -0,0 +1,266 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ESHeightQueryTest
+{
+    // Plane z = 0.25 * col + 0.5 * row on a grid spanning 10 x 20 world units
+    private static ESHeightQuery planeQuery()
+    {
+        int width = 11;
+        int height = 21;
+        float[] heights = new float[width * height];
+
+        for ( int row = 0; row < height; row++ )
+        {
+            for ( int col = 0; col < width; col++ )
+            {
+                heights[row * width + col] = 0.25f * col + 0.5f * row;
+            }
+        }
+
+        return new ESHeightQuery ( heights, width, height, 10.0f, 20.0f, 2.0f );
+    }
+
+    @Test
+    public void interpolatesAPlaneExactly()
+    {
+        ESHeightQuery query = planeQuery();
+
+        assertEquals ( 2.0f * ( 0.25f * 3.3f + 0.5f * 7.7f ), query.getHeight ( 3.3f, 7.7f ), 1e-4f );
+        assertEquals ( 2.0f * ( 0.25f * 3.3f + 0.5f * 7.7f ), query.getHeightBicubic ( 3.3f, 7.7f ), 1e-4f );
+
+        // Clamped to the border
+        assertEquals ( 0.0f, query.getHeight ( -5.0f, -5.0f ), 0.0f );
+        assertEquals ( 2.0f * ( 2.5f + 10.0f ), query.getHeight ( 50.0f, 50.0f ), 1e-4f );
+    }
+
+    @Test
+    public void bicubicPassesThroughSamples()
+    {
+        float[] heights = ESHeightPyramidTest.randomHeights ( 9, 9, 3 );
+        ESHeightQuery query = new ESHeightQuery ( heights, 9, 9, 8.0f, 8.0f, 1.0f );
+
+        for ( int row = 0; row < 9; row++ )
+        {
+            for ( int col = 0; col < 9; col++ )
+            {
+                assertEquals ( heights[row * 9 + col], query.getHeightBicubic ( col, row ), 1e-5f );
+                assertEquals ( heights[row * 9 + col], query.getHeight ( col, row ), 1e-5f );
+            }
+        }
+    }
+
+    @Test
+    public void normalOfAPlane()
+    {
+        ESHeightQuery query = planeQuery();
+        float[] normal = new float[3];
+
+        // World slope is 0.5 along x and 1.0 along y
+        query.getNormal ( 4.2f, 9.1f, normal, 0 );
+        float length = ( float ) Math.sqrt ( 0.25f + 1.0f + 1.0f );
+
+        assertEquals ( -0.5f / length, normal[0], 1e-5f );
+        assertEquals ( -1.0f / length, normal[1], 1e-5f );
+        assertEquals ( 1.0f / length, normal[2], 1e-5f );
+    }
+
+    @Test
+    public void batchesMatchSingleQueries()
+    {
+        float[] heights = ESHeightPyramidTest.randomHeights ( 33, 17, 5 );
+        ESHeightQuery query = new ESHeightQuery ( heights, 33, 17, 4.0f, 2.0f, 3.0f );
+        Random random = new Random ( 11 );
+        int count = 100;
+        float[] xy = new float[count * 2 + 2];
+        float[] bilinear = new float[count];
+        float[] bicubic = new float[count];
+        float[] normals = new float[count * 3];
+        float[] normal = new float[3];
+
+        for ( int i = 0; i < xy.length; i++ )
+        {
+            xy[i] = random.nextFloat() * 5.0f - 0.5f;
+        }
+
+        query.getHeights ( xy, 2, bilinear, 0, count );
+        query.getHeightsBicubic ( xy, 2, bicubic, 0, count );
+        query.getNormals ( xy, 2, normals, 0, count );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            float x = xy[2 + i * 2];
+            float y = xy[3 + i * 2];
+            query.getNormal ( x, y, normal, 0 );
+
+            assertEquals ( query.getHeight ( x, y ), bilinear[i], 0.0f );
+            assertEquals ( query.getHeightBicubic ( x, y ), bicubic[i], 0.0f );
+            assertEquals ( normal[2], normals[i * 3 + 2], 0.0f );
+        }
+    }
+
+    @Test
+    public void rayHitsTheClosestTriangle()
+    {
+        int width = 65;
+        int height = 49;
+        float[] heights = ESHeightPyramidTest.randomHeights ( width, height, 9 );
+        ESHeightQuery query = new ESHeightQuery ( heights, width, height, 64.0f, 48.0f, 4.0f );
+        Random random = new Random ( 13 );
+        float[] hit = new float[4];
+        int hits = 0;
+
+        for ( int n = 0; n < 200; n++ )
+        {
+            float ox = random.nextFloat() * 80.0f - 8.0f;
+            float oy = random.nextFloat() * 60.0f - 6.0f;
+            float oz = 6.0f + random.nextFloat() * 10.0f;
+            float dx = random.nextFloat() * 2.0f - 1.0f;
+            float dy = random.nextFloat() * 2.0f - 1.0f;
+            float dz = -random.nextFloat() * 0.5f - 0.05f;
+
+            float expected = bruteForce ( heights, width, height, 1.0f, 1.0f, 4.0f, ox, oy, oz, dx, dy, dz );
+            boolean found = query.intersectRay ( ox, oy, oz, dx, dy, dz, hit );
+
+            assertEquals ( expected != Float.POSITIVE_INFINITY, found );
+
+            if ( found )
+            {
+                hits++;
+                assertEquals ( expected, hit[3], 1e-3f * Math.max ( 1.0f, expected ) );
+
+                // The hit lies on the surface
+                assertEquals ( oz + dz * hit[3], hit[2], 1e-4f );
+            }
+        }
+
+        assertTrue ( hits > 50 );
+    }
+
+    @Test
+    public void rayAboveTheTerrainMisses()
+    {
+        ESHeightQuery query = planeQuery();
+        float[] hit = new float[4];
+
+        assertFalse ( query.intersectRay ( 1.0f, 1.0f, 100.0f, 1.0f, 0.0f, 0.0f, hit ) );
+        assertFalse ( query.intersectRay ( 1.0f, 1.0f, 100.0f, 0.0f, 0.0f, 1.0f, hit ) );
+        assertTrue ( query.intersectRay ( 1.0f, 1.0f, 100.0f, 0.0f, 0.0f, -1.0f, hit ) );
+        assertEquals ( query.getHeight ( 1.0f, 1.0f ), hit[2], 1e-4f );
+    }
+
+    @Test
+    public void concurrentReadsAgree() throws InterruptedException
+    {
+        float[] heights = ESHeightPyramidTest.randomHeights ( 129, 129, 21 );
+        final ESHeightQuery query = new ESHeightQuery ( heights, 129, 129, 1.0f, 1.0f, 1.0f );
+        final AtomicInteger mismatches = new AtomicInteger();
+        final float[] expected = new float[97 * 2];
+        float[] hit = new float[4];
+        Thread[] threads = new Thread[4];
+
+        // Single threaded reference
+        for ( int i = 0; i < 97; i++ )
+        {
+            float x = i / 97.0f;
+            query.intersectRay ( x, x, 2.0f, 0.0f, 0.0f, -1.0f, hit );
+            expected[i * 2] = query.getHeightBicubic ( x, x );
+            expected[i * 2 + 1] = hit[2];
+        }
+
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            threads[t] = new Thread ( new Runnable()
+            {
+                public void run()
+                {
+                    float[] hit = new float[4];
+
+                    for ( int i = 0; i < 2000; i++ )
+                    {
+                        float x = ( i % 97 ) / 97.0f;
+
+                        if ( query.getHeightBicubic ( x, x ) != expected[( i % 97 ) * 2]
+                                || !query.intersectRay ( x, x, 2.0f, 0.0f, 0.0f, -1.0f, hit )
+                                || hit[2] != expected[( i % 97 ) * 2 + 1] )
+                        {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                }
+            } );
+            threads[t].start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertEquals ( 0, mismatches.get() );
+    }
+
+    private static float bruteForce ( float[] heights, int width, int height, float stepX, float stepY, float scale,
+                                      float ox, float oy, float oz, float dx, float dy, float dz )
+    {
+        float best = Float.POSITIVE_INFINITY;
+
+        for ( int row = 0; row < height - 1; row++ )
+        {
+            for ( int col = 0; col < width - 1; col++ )
+            {
+                float x0 = col * stepX, x1 = x0 + stepX, y0 = row * stepY, y1 = y0 + stepY;
+                float h00 = heights[row * width + col] * scale;
+                float h10 = heights[row * width + col + 1] * scale;
+                float h01 = heights[( row + 1 ) * width + col] * scale;
+                float h11 = heights[( row + 1 ) * width + col + 1] * scale;
+
+                best = Math.min ( best, triangle ( x0, y0, h00, x1, y1, h11, x1, y0, h10, ox, oy, oz, dx, dy, dz ) );
+                best = Math.min ( best, triangle ( x0, y0, h00, x1, y1, h11, x0, y1, h01, ox, oy, oz, dx, dy, dz ) );
+            }
+        }
+
+        return best;
+    }
+
+    // Ray / triangle via the plane equation and barycentric coordinates in double precision
+    private static float triangle ( double ax, double ay, double az, double bx, double by, double bz,
+                                    double cx, double cy, double cz, double ox, double oy, double oz,
+                                    double dx, double dy, double dz )
+    {
+        double nx = ( by - ay ) * ( cz - az ) - ( bz - az ) * ( cy - ay );
+        double ny = ( bz - az ) * ( cx - ax ) - ( bx - ax ) * ( cz - az );
+        double nz = ( bx - ax ) * ( cy - ay ) - ( by - ay ) * ( cx - ax );
+        double denom = nx * dx + ny * dy + nz * dz;
+
+        if ( Math.abs ( denom ) < 1e-12 )
+        {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        double t = ( nx * ( ax - ox ) + ny * ( ay - oy ) + nz * ( az - oz ) ) / denom;
+        double px = ox + dx * t, py = oy + dy * t, pz = oz + dz * t;
+
+        double[][] edges = { { ax, ay, az, bx, by, bz }, { bx, by, bz, cx, cy, cz }, { cx, cy, cz, ax, ay, az } };
+
+        for ( double[] e : edges )
+        {
+            double ex = e[3] - e[0], ey = e[4] - e[1], ez = e[5] - e[2];
+            double qx = px - e[0], qy = py - e[1], qz = pz - e[2];
+            double cxp = ey * qz - ez * qy, cyp = ez * qx - ex * qz, czp = ex * qy - ey * qx;
+
+            if ( cxp * nx + cyp * ny + czp * nz < -1e-9 )
+            {
+                return Float.POSITIVE_INFINITY;
+            }
+        }
+
+        return t >= 0.0 ? ( float ) t : Float.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,130 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ESHeightmapTest
+{
+    private static byte[] gradientTGA ( int width, int height )
+    {
+        byte[] pixels = new byte[width * height];
+
+        // Stored bottom row first
+        for ( int y = 0; y < height; y++ )
+        {
+            for ( int x = 0; x < width; x++ )
+            {
+                pixels[( height - 1 - y ) * width + x] = ( byte ) ( y * 16 + x );
+            }
+        }
+
+        return ESImageReaderTest.tga ( 3, width, height, 8, false, pixels );
+    }
+
+    @Test
+    public void loadsTopRowFirst() throws IOException
+    {
+        ESHeightmap heightmap = ESHeightmap.loadFloat ( new ByteArrayInputStream ( gradientTGA ( 4, 3 ) ) );
+
+        assertEquals ( 4, heightmap.getWidth() );
+        assertEquals ( 3, heightmap.getHeight() );
+        assertTrue ( heightmap.getFloats().isDirect() );
+        assertEquals ( 0.0f, heightmap.getFloats().get ( 0 ), 0.0f );
+        assertEquals ( ( 2 * 16 + 3 ) / 255.0f, heightmap.getFloats().get ( 11 ), 1e-6f );
+    }
+
+    @Test
+    public void keepsSixteenBitPrecision() throws IOException
+    {
+        byte[][] rows = { { 0x00, 0x01, ( byte ) 0x80, 0x00 } };
+        byte[] png = ESImageReaderTest.png ( 2, 1, 16, 0, 0, rows );
+        ESHeightmap heightmap = ESHeightmap.loadFloat ( new ByteArrayInputStream ( png ) );
+
+        assertEquals ( 1.0f / 65535.0f, heightmap.getFloats().get ( 0 ), 0.0f );
+        assertEquals ( 32768.0f / 65535.0f, heightmap.getFloats().get ( 1 ), 0.0f );
+    }
+
+    @Test
+    public void halfFloatsMatchFloats() throws IOException
+    {
+        byte[] tga = gradientTGA ( 16, 8 );
+        ESHeightmap floats = ESHeightmap.loadFloat ( new ByteArrayInputStream ( tga ) );
+        ESHeightmap halves = ESHeightmap.loadHalfFloat ( new ByteArrayInputStream ( tga ) );
+
+        for ( int i = 0; i < 16 * 8; i++ )
+        {
+            float expected = floats.getFloats().get ( i );
+            assertEquals ( expected, ESHeightmap.fromHalfFloat ( halves.getHalfFloats().get ( i ) ), expected / 1024.0f );
+        }
+    }
+
+    @Test
+    public void decodesInChunks() throws IOException
+    {
+        final int width = 5;
+        final int height = 7;
+        final float[] assembled = new float[width * height];
+        final int[] chunks = new int[1];
+        ESHeightmap reference = ESHeightmap.loadFloat ( new ByteArrayInputStream ( gradientTGA ( width, height ) ) );
+
+        int[] size = ESHeightmap.decode ( new ByteArrayInputStream ( gradientTGA ( width, height ) ), 3,
+            new ESHeightmap.RowListener()
+            {
+                public void onRows ( int firstRow, int numRows, float[] heights )
+                {
+                    assertEquals ( 0, firstRow % 3 );
+                    System.arraycopy ( heights, 0, assembled, firstRow * width, numRows * width );
+                    chunks[0]++;
+                }
+            } );
+
+        assertArrayEquals ( new int[] { width, height }, size );
+        assertEquals ( 3, chunks[0] );
+
+        for ( int i = 0; i < width * height; i++ )
+        {
+            assertEquals ( reference.getFloats().get ( i ), assembled[i], 0.0f );
+        }
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void decodeRejectsEmptyChunks() throws IOException
+    {
+        ESHeightmap.decode ( new ByteArrayInputStream ( gradientTGA ( 5, 7 ) ), 0, null );
+    }
+
+    @Test
+    public void convertsHalfFloats()
+    {
+        assertEquals ( 0x3C00, ESHeightmap.toHalfFloat ( 1.0f ) );
+        assertEquals ( 0x3800, ESHeightmap.toHalfFloat ( 0.5f ) );
+        assertEquals ( ( short ) 0xC000, ESHeightmap.toHalfFloat ( -2.0f ) );
+        assertEquals ( 0x7BFF, ESHeightmap.toHalfFloat ( 65504.0f ) );
+        assertEquals ( 0x7C00, ESHeightmap.toHalfFloat ( 1.0e6f ) );
+        assertEquals ( 0x0001, ESHeightmap.toHalfFloat ( 5.96e-8f ) );
+        assertEquals ( 0.0f, ESHeightmap.fromHalfFloat ( ESHeightmap.toHalfFloat ( 0.0f ) ), 0.0f );
+
+        for ( int h = 0; h < 0x7C00; h++ )
+        {
+            assertEquals ( ( short ) h, ESHeightmap.toHalfFloat ( ESHeightmap.fromHalfFloat ( ( short ) h ) ) );
+        }
+    }
+
+    @Test
+    public void wrapsGeneratedHeights()
+    {
+        float[] heights = { 0.0f, 0.25f, 0.5f, 0.75f, 1.0f, 0.5f };
+        ESHeightmap heightmap = ESHeightmap.fromFloats ( heights, 3, 2 );
+
+        assertEquals ( 3, heightmap.getWidth() );
+        assertEquals ( 2, heightmap.getHeight() );
+        assertNull ( heightmap.getHalfFloats() );
+        assertEquals ( 0, heightmap.getFloats().position() );
+        assertTrue ( heightmap.getFloats().isDirect() );
+        assertEquals ( 0.75f, heightmap.getFloats().get ( 3 ), 0.0f );
+    }
+}
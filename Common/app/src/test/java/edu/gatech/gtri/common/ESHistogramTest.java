@@ -0,0 +1,109 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ESHistogramTest
+{
+    @Test
+    public void smallValuesAreExact()
+    {
+        ESHistogram histogram = new ESHistogram ( 3600L * 1000000000L, 3 );
+
+        for ( int v = 0; v < 2048; v++ )
+        {
+            assertEquals ( v, histogram.lowestEquivalentValue ( v ) );
+            assertEquals ( v, histogram.highestEquivalentValue ( v ) );
+        }
+    }
+
+    @Test
+    public void keepsTheSignificantDigits()
+    {
+        ESHistogram histogram = new ESHistogram ( 3600L * 1000000000L, 3 );
+        Random random = new Random ( 3 );
+
+        for ( int i = 0; i < 10000; i++ )
+        {
+            long value = ( long ) Math.exp ( random.nextDouble() * Math.log ( 3.6e12 ) );
+            long low = histogram.lowestEquivalentValue ( value );
+            long high = histogram.highestEquivalentValue ( value );
+
+            assertTrue ( low <= value && value <= high );
+            assertTrue ( high - low <= value / 1000 );
+        }
+    }
+
+    @Test
+    public void percentilesMatchSortedValues()
+    {
+        ESHistogram histogram = new ESHistogram ( 1000000000L, 3 );
+        Random random = new Random ( 5 );
+        long[] values = new long[20000];
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            // Frame times around 2 ms with a tail of hitches
+            values[i] = 2000000L + ( long ) ( random.nextGaussian() * 100000.0 ) +
+                        ( i % 100 == 0 ? 30000000L : 0L );
+            histogram.record ( values[i] );
+        }
+
+        Arrays.sort ( values );
+
+        for ( double p : new double[] { 10.0, 50.0, 90.0, 99.0, 99.9 } )
+        {
+            long exact = values[( int ) Math.ceil ( p / 100.0 * values.length ) - 1];
+
+            assertEquals ( exact, histogram.getValueAtPercentile ( p ), exact / 1000.0 + 1.0 );
+        }
+
+        assertEquals ( values[0], histogram.getMin() );
+        assertEquals ( values[values.length - 1], histogram.getMax() );
+        assertEquals ( values[values.length - 1], histogram.getValueAtPercentile ( 100.0 ) );
+        assertEquals ( values.length, histogram.getTotalCount() );
+    }
+
+    @Test
+    public void clampsValuesOutOfRange()
+    {
+        ESHistogram histogram = new ESHistogram ( 1000L, 2 );
+
+        histogram.record ( -5L );
+        histogram.record ( 1000000L );
+
+        assertEquals ( 0L, histogram.getMin() );
+        assertEquals ( 1000L, histogram.getMax() );
+        assertEquals ( 500.0, histogram.getMean(), 0.0 );
+    }
+
+    @Test
+    public void addsAndResets()
+    {
+        ESHistogram a = new ESHistogram ( 1000000L, 3 );
+        ESHistogram b = new ESHistogram ( 1000000L, 3 );
+
+        a.recordCount ( 100L, 3 );
+        b.record ( 5000L );
+        a.add ( b );
+
+        assertEquals ( 4, a.getTotalCount() );
+        assertEquals ( 5000L, a.getMax() );
+        assertEquals ( 100L, a.getValueAtPercentile ( 75.0 ) );
+        assertEquals ( 5000L, a.getValueAtPercentile ( 76.0 ) );
+
+        a.reset();
+        assertEquals ( 0, a.getTotalCount() );
+        assertEquals ( 0L, a.getValueAtPercentile ( 50.0 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void rejectsOtherLayouts()
+    {
+        new ESHistogram ( 1000000L, 3 ).add ( new ESHistogram ( 1000000L, 2 ) );
+    }
+}
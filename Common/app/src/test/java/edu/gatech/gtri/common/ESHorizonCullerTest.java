@@ -0,0 +1,369 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ESHorizonCullerTest
+{
+    private static final int SIZE = 65;
+
+    // Flat ground with a wall of the given height running along x at y = 8..10
+    private static float[] wallHeightfield ( float wallHeight )
+    {
+        float[] heights = new float[SIZE * SIZE];
+
+        for ( int row = 8; row <= 10; row++ )
+        {
+            for ( int col = 0; col < SIZE; col++ )
+            {
+                heights[row * SIZE + col] = wallHeight;
+            }
+        }
+
+        return heights;
+    }
+
+    // Camera at eye looking down +y with +z up
+    private static float[] lookAlongY ( float ex, float ey, float ez )
+    {
+        float[] view = {
+            1.0f, 0.0f,  0.0f, 0.0f,
+            0.0f, 0.0f, -1.0f, 0.0f,
+            0.0f, 1.0f,  0.0f, 0.0f,
+            -ex,  -ez,   ey,   1.0f,
+        };
+
+        ESTransform perspective = new ESTransform();
+        perspective.matrixLoadIdentity();
+        perspective.perspective ( 60.0f, 1.0f, 0.1f, 200.0f );
+
+        ESTransform mvp = new ESTransform();
+        mvp.matrixMultiply ( view, perspective.get() );
+        return mvp.get();
+    }
+
+    // Upright camera at eye looking at a target
+    private static float[] lookAt ( float ex, float ey, float ez, float tx, float ty, float tz )
+    {
+        ESTransform view = new ESTransform();
+        view.matrixLookAt ( ex, ey, ez, tx, ty, tz, 0.0f, 0.0f, 1.0f );
+
+        ESTransform perspective = new ESTransform();
+        perspective.matrixLoadIdentity();
+        perspective.perspective ( 60.0f, 1.0f, 0.1f, 200.0f );
+
+        ESTransform mvp = new ESTransform();
+        mvp.matrixMultiply ( view.get(), perspective.get() );
+        return mvp.get();
+    }
+
+    //
+    // True when grid vertex (col, row) is certainly seen: it is in the view,
+    // no higher than its neighbors and below the eye, so its own cells
+    // cannot hide it, and the segment to the eye passes above the highest
+    // corner of every other cell it crosses.  Unit grid spacing.
+    //
+    private static boolean isVertexSeen ( float[] heights, int size, float[] mvp,
+                                          float ex, float ey, float ez, int col, int row )
+    {
+        float vz = heights[row * size + col];
+        float[] t = new float[4 * size + 2];
+        int count = 0;
+
+        if ( vz >= ez )
+        {
+            return false;
+        }
+
+        for ( int r = Math.max ( row - 1, 0 ); r <= Math.min ( row + 1, size - 1 ); r++ )
+        {
+            for ( int c = Math.max ( col - 1, 0 ); c <= Math.min ( col + 1, size - 1 ); c++ )
+            {
+                if ( heights[r * size + c] > vz )
+                {
+                    return false;
+                }
+            }
+        }
+
+        float cx = mvp[0] * col + mvp[4] * row + mvp[8]  * vz + mvp[12];
+        float cy = mvp[1] * col + mvp[5] * row + mvp[9]  * vz + mvp[13];
+        float cz = mvp[2] * col + mvp[6] * row + mvp[10] * vz + mvp[14];
+        float cw = mvp[3] * col + mvp[7] * row + mvp[11] * vz + mvp[15];
+
+        if ( cw <= 0.0f || Math.abs ( cx ) > 0.99f * cw || Math.abs ( cy ) > 0.99f * cw || Math.abs ( cz ) > cw )
+        {
+            return false;
+        }
+
+        // Split the segment where it crosses grid lines, 0 at the eye
+        float dx = col - ex, dy = row - ey, dz = vz - ez;
+
+        t[count++] = 0.0f;
+        t[count++] = 1.0f;
+
+        for ( int line = 0; line < size; line++ )
+        {
+            float tx = dx != 0.0f ? ( line - ex ) / dx : -1.0f;
+            float ty = dy != 0.0f ? ( line - ey ) / dy : -1.0f;
+
+            if ( tx > 0.0f && tx < 1.0f ) t[count++] = tx;
+            if ( ty > 0.0f && ty < 1.0f ) t[count++] = ty;
+        }
+
+        java.util.Arrays.sort ( t, 0, count );
+
+        for ( int i = 0; i + 1 < count; i++ )
+        {
+            float middle = 0.5f * ( t[i] + t[i + 1] );
+            int c = ( int ) Math.floor ( ex + middle * dx );
+            int r = ( int ) Math.floor ( ey + middle * dy );
+
+            // Outside the grid, or one of the vertex's own cells
+            if ( c < 0 || r < 0 || c >= size - 1 || r >= size - 1
+                    || ( c >= col - 1 && c <= col && r >= row - 1 && r <= row ) )
+            {
+                continue;
+            }
+
+            float top = Math.max ( Math.max ( heights[r * size + c], heights[r * size + c + 1] ),
+                                   Math.max ( heights[( r + 1 ) * size + c], heights[( r + 1 ) * size + c + 1] ) );
+
+            if ( ez + Math.min ( t[i], t[i + 1] ) * dz <= top + 1.0e-3f )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Fails when a patch with a vertex that is certainly seen was culled
+    private static void assertSeenPatchesKept ( float[] heights, int size, int patchSize, float[] mvp,
+                                                float ex, float ey, float ez )
+    {
+        ESHorizonCuller culler = new ESHorizonCuller ( heights, size, size, patchSize,
+                                                       size - 1, size - 1, 1.0f, 256 );
+        boolean[] kept = new boolean[culler.getNumPatches()];
+
+        culler.cull ( mvp, ex, ey, ez );
+
+        for ( int i = 0; i < culler.getNumVisible(); i++ )
+        {
+            kept[culler.getVisiblePatches()[i]] = true;
+        }
+
+        for ( int row = 0; row < size; row++ )
+        {
+            for ( int col = 0; col < size; col++ )
+            {
+                // A vertex on a border belongs to the patches on both sides
+                int px0 = Math.max ( 0, ( col - 1 ) / patchSize ), px1 = Math.min ( culler.getPatchesX() - 1, col / patchSize );
+                int py0 = Math.max ( 0, ( row - 1 ) / patchSize ), py1 = Math.min ( culler.getPatchesY() - 1, row / patchSize );
+                boolean anyKept = false;
+
+                for ( int py = py0; py <= py1; py++ )
+                {
+                    for ( int px = px0; px <= px1; px++ )
+                    {
+                        anyKept |= kept[py * culler.getPatchesX() + px];
+                    }
+                }
+
+                if ( !anyKept && isVertexSeen ( heights, size, mvp, ex, ey, ez, col, row ) )
+                {
+                    fail ( "Vertex " + col + "," + row + " is seen from " + ex + "," + ey + "," + ez
+                           + " but its patches were culled" );
+                }
+            }
+        }
+    }
+
+    private static boolean isVisible ( ESHorizonCuller culler, int patch )
+    {
+        for ( int i = 0; i < culler.getNumVisible(); i++ )
+        {
+            if ( culler.getVisiblePatches()[i] == patch )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Test
+    public void patchBoundsCoverTheirVertices()
+    {
+        ESHorizonCuller culler = new ESHorizonCuller ( wallHeightfield ( 10.0f ), SIZE, SIZE, 8,
+                                                       64.0f, 64.0f, 0.5f, 128 );
+        float[] bounds = new float[6];
+
+        assertEquals ( 8, culler.getPatchesX() );
+        assertEquals ( 64, culler.getNumPatches() );
+
+        // Patch row 1 spans y = 8..16 and contains the wall
+        culler.getPatchBounds ( 8 + 3, bounds );
+        assertArrayEquals ( new float[] { 24.0f, 8.0f, 0.0f, 32.0f, 16.0f, 5.0f }, bounds, 0.0f );
+
+        // Patch row 0 ends on the wall's first row
+        culler.getPatchBounds ( 3, bounds );
+        assertEquals ( 5.0f, bounds[5], 0.0f );
+
+        culler.getPatchBounds ( 8 * 4, bounds );
+        assertEquals ( 0.0f, bounds[5], 0.0f );
+    }
+
+    @Test
+    public void wallHidesTerrainBehindIt()
+    {
+        ESHorizonCuller culler = new ESHorizonCuller ( wallHeightfield ( 20.0f ), SIZE, SIZE, 8,
+                                                       64.0f, 64.0f, 1.0f, 256 );
+
+        int numVisible = culler.cull ( lookAlongY ( 32.0f, -4.0f, 2.0f ), 32.0f, -4.0f, 2.0f );
+
+        assertTrue ( culler.getNumOcclusionCulled() > 0 );
+        assertEquals ( culler.getNumPatches(),
+                       numVisible + culler.getNumOcclusionCulled() + culler.getNumFrustumCulled() );
+
+        // The patches holding the wall are in view and in front
+        assertTrue ( isVisible ( culler, 8 + 4 ) );
+
+        // Nothing behind the wall in the middle of the view survives
+        for ( int py = 3; py < 8; py++ )
+        {
+            assertFalse ( isVisible ( culler, py * 8 + 3 ) );
+            assertFalse ( isVisible ( culler, py * 8 + 4 ) );
+        }
+    }
+
+    @Test
+    public void flatTerrainIsNeverOccluded()
+    {
+        ESHorizonCuller culler = new ESHorizonCuller ( new float[SIZE * SIZE], SIZE, SIZE, 8,
+                                                       64.0f, 64.0f, 1.0f, 256 );
+
+        culler.cull ( lookAlongY ( 32.0f, -4.0f, 2.0f ), 32.0f, -4.0f, 2.0f );
+
+        assertEquals ( 0, culler.getNumOcclusionCulled() );
+        assertTrue ( culler.getNumVisible() > 0 );
+    }
+
+    @Test
+    public void visiblePatchesAreFrontToBack()
+    {
+        ESHorizonCuller culler = new ESHorizonCuller ( wallHeightfield ( 1.0f ), SIZE, SIZE, 8,
+                                                       64.0f, 64.0f, 1.0f, 256 );
+        float[] bounds = new float[6];
+        float lastDistance = -1.0f;
+
+        culler.cull ( lookAlongY ( 32.0f, -4.0f, 8.0f ), 32.0f, -4.0f, 8.0f );
+
+        // Ordered by the distance in the ground plane, whatever the heights
+        for ( int i = 0; i < culler.getNumVisible(); i++ )
+        {
+            culler.getPatchBounds ( culler.getVisiblePatches()[i], bounds );
+            float dx = 0.5f * ( bounds[0] + bounds[3] ) - 32.0f;
+            float dy = 0.5f * ( bounds[1] + bounds[4] ) + 4.0f;
+            float distance = dx * dx + dy * dy;
+
+            assertTrue ( distance >= lastDistance );
+            lastDistance = distance;
+        }
+    }
+
+    @Test
+    public void cullingIsDeterministic()
+    {
+        float[] heights = wallHeightfield ( 12.0f );
+        ESHorizonCuller first = new ESHorizonCuller ( heights, SIZE, SIZE, 4, 64.0f, 64.0f, 1.0f, 200 );
+        ESHorizonCuller second = new ESHorizonCuller ( heights, SIZE, SIZE, 4, 64.0f, 64.0f, 1.0f, 200 );
+        float[] mvp = lookAlongY ( 20.0f, -6.0f, 3.0f );
+
+        // Run the second culler from a different starting order
+        second.cull ( lookAlongY ( 60.0f, 70.0f, 3.0f ), 60.0f, 70.0f, 3.0f );
+
+        int numVisible = first.cull ( mvp, 20.0f, -6.0f, 3.0f );
+        assertEquals ( numVisible, second.cull ( mvp, 20.0f, -6.0f, 3.0f ) );
+
+        for ( int i = 0; i < numVisible; i++ )
+        {
+            assertEquals ( first.getVisiblePatches()[i], second.getVisiblePatches()[i] );
+        }
+    }
+
+    @Test
+    public void valleyInFrontOfAPlateauIsKept()
+    {
+        float[] heights = new float[SIZE * SIZE];
+
+        for ( int i = 24 * SIZE; i < SIZE * SIZE; i++ )
+        {
+            heights[i] = 38.0f;
+        }
+
+        ESHorizonCuller culler = new ESHorizonCuller ( heights, SIZE, SIZE, 8, 64.0f, 64.0f, 1.0f, 256 );
+
+        culler.cull ( lookAt ( 32.0f, 0.0f, 40.0f, 32.0f, 30.0f, 0.0f ), 32.0f, 0.0f, 40.0f );
+
+        assertSeenPatchesKept ( heights, SIZE, 8, lookAt ( 32.0f, 0.0f, 40.0f, 32.0f, 30.0f, 0.0f ),
+                                32.0f, 0.0f, 40.0f );
+
+        // Nothing stands between the eye and the valley rows
+        for ( int py = 0; py < 2; py++ )
+        {
+            for ( int px = 2; px < 6; px++ )
+            {
+                assertTrue ( isVisible ( culler, py * 8 + px ) );
+            }
+        }
+
+    }
+
+    @Test
+    public void seenPatchesAreNeverCulled()
+    {
+        ESRandom random = ESRandom.create ( 26 );
+        int size = 49;
+
+        for ( int trial = 0; trial < 200; trial++ )
+        {
+            float[] heights = new float[size * size];
+            int patchSize = 2 + random.nextInt ( 7 );
+
+            // Random bumps and ridges over noise
+            for ( int bump = 0; bump < 6; bump++ )
+            {
+                float bx = random.nextFloat() * size, by = random.nextFloat() * size;
+                float radius = 2.0f + random.nextFloat() * 10.0f, peak = random.nextFloat() * 30.0f;
+
+                for ( int row = 0; row < size; row++ )
+                {
+                    for ( int col = 0; col < size; col++ )
+                    {
+                        float d = ( ( col - bx ) * ( col - bx ) + ( row - by ) * ( row - by ) ) / ( radius * radius );
+                        heights[row * size + col] += peak * Math.max ( 0.0f, 1.0f - d );
+                    }
+                }
+            }
+
+            for ( int i = 0; i < size * size; i++ )
+            {
+                heights[i] += random.nextFloat() * 2.0f;
+            }
+
+            float ex = random.nextFloat() * 80.0f - 16.0f, ey = random.nextFloat() * 80.0f - 16.0f;
+            float ez = 5.0f + random.nextFloat() * 40.0f;
+            float tx = random.nextFloat() * size, ty = random.nextFloat() * size;
+
+            if ( Math.abs ( tx - ex ) + Math.abs ( ty - ey ) < 1.0f )
+            {
+                continue;
+            }
+
+            assertSeenPatchesKept ( heights, size, patchSize, lookAt ( ex, ey, ez, tx, ty, random.nextFloat() * 10.0f ),
+                                    ex, ey, ez );
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class ESImageReaderTest
+{
+    // Uncompressed or RLE TGA with the given header fields and pixel payload
+    static byte[] tga ( int type, int width, int height, int depth, boolean topDown, byte[] pixels )
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] header = new byte[18];
+        header[2] = ( byte ) type;
+        header[12] = ( byte ) width;
+        header[13] = ( byte ) ( width >> 8 );
+        header[14] = ( byte ) height;
+        header[15] = ( byte ) ( height >> 8 );
+        header[16] = ( byte ) depth;
+        header[17] = ( byte ) ( topDown ? 0x20 : 0x00 );
+        os.write ( header, 0, header.length );
+        os.write ( pixels, 0, pixels.length );
+        return os.toByteArray();
+    }
+
+    // PNG with one filter type used for every row; raw rows exclude the filter byte
+    static byte[] png ( int width, int height, int bitDepth, int colorType, int filter, byte[][] rows ) throws IOException
+    {
+        int channels = colorType == 0 ? 1 : colorType == 2 ? 3 : colorType == 4 ? 2 : 4;
+        int bpp = channels * bitDepth / 8;
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        byte[] prev = new byte[rows[0].length];
+
+        for ( byte[] row : rows )
+        {
+            raw.write ( filter );
+
+            for ( int i = 0; i < row.length; i++ )
+            {
+                int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                int b = prev[i] & 0xFF;
+                int c = i >= bpp ? prev[i - bpp] & 0xFF : 0;
+                int predictor;
+
+                switch ( filter )
+                {
+                    case 1: predictor = a; break;
+                    case 2: predictor = b; break;
+                    case 3: predictor = ( a + b ) >> 1; break;
+                    case 4:
+                        int p = a + b - c;
+                        int pa = Math.abs ( p - a ), pb = Math.abs ( p - b ), pc = Math.abs ( p - c );
+                        predictor = ( pa <= pb && pa <= pc ) ? a : ( pb <= pc ? b : c );
+                        break;
+                    default: predictor = 0;
+                }
+
+                raw.write ( ( row[i] - predictor ) & 0xFF );
+            }
+
+            prev = row;
+        }
+
+        Deflater deflater = new Deflater();
+        deflater.setInput ( raw.toByteArray() );
+        deflater.finish();
+        byte[] compressed = new byte[raw.size() * 2 + 64];
+        int length = deflater.deflate ( compressed );
+        deflater.end();
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream ( os );
+        out.write ( new byte[] { ( byte ) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' } );
+
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream ( ihdr );
+        h.writeInt ( width );
+        h.writeInt ( height );
+        h.write ( new byte[] { ( byte ) bitDepth, ( byte ) colorType, 0, 0, 0 } );
+        chunk ( out, "IHDR", ihdr.toByteArray(), 0, 13 );
+        chunk ( out, "tEXt", "Comment\0test".getBytes ( "ISO-8859-1" ), 0, 12 );
+
+        // Split the image data over several IDAT chunks
+        int half = length / 2;
+        chunk ( out, "IDAT", compressed, 0, half );
+        chunk ( out, "IDAT", compressed, half, length - half );
+        chunk ( out, "IEND", new byte[0], 0, 0 );
+        return os.toByteArray();
+    }
+
+    private static void chunk ( DataOutputStream out, String type, byte[] data, int offset, int length ) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        byte[] typeBytes = type.getBytes ( "ISO-8859-1" );
+        crc.update ( typeBytes );
+        crc.update ( data, offset, length );
+        out.writeInt ( length );
+        out.write ( typeBytes );
+        out.write ( data, offset, length );
+        out.writeInt ( ( int ) crc.getValue() );
+    }
+
+    @Test
+    public void readsBottomUpGrayTGA() throws IOException
+    {
+        byte[] pixels = { 1, 2, 3, 4, 5, 6 };
+        ESImageReader reader = new ESImageReader ( new ByteArrayInputStream ( tga ( 3, 3, 2, 8, false, pixels ) ) );
+        byte[] row = new byte[reader.getRowBytes()];
+
+        assertEquals ( 3, reader.getWidth() );
+        assertEquals ( 1, reader.getChannels() );
+        assertTrue ( reader.isBottomUp() );
+
+        assertEquals ( 1, reader.readRow ( row ) );
+        assertArrayEquals ( new byte[] { 1, 2, 3 }, row );
+        assertEquals ( 0, reader.readRow ( row ) );
+        assertArrayEquals ( new byte[] { 4, 5, 6 }, row );
+        assertEquals ( -1, reader.readRow ( row ) );
+        assertEquals ( 6 * 257, reader.getSample ( row, 2, 0 ) );
+    }
+
+    @Test
+    public void readsRLEColorTGAWithPacketsAcrossRows() throws IOException
+    {
+        // A run of 3 BGR pixels followed by a raw packet of one pixel, on a 2x2 image
+        byte[] pixels = {
+            ( byte ) 0x82, 10, 20, 30,
+            0x00, 40, 50, 60,
+        };
+        ESImageReader reader = new ESImageReader ( new ByteArrayInputStream ( tga ( 10, 2, 2, 24, true, pixels ) ) );
+        byte[] row = new byte[reader.getRowBytes()];
+
+        assertEquals ( 0, reader.readRow ( row ) );
+        assertArrayEquals ( new byte[] { 30, 20, 10, 30, 20, 10 }, row );
+        assertEquals ( 1, reader.readRow ( row ) );
+        assertArrayEquals ( new byte[] { 30, 20, 10, 60, 50, 40 }, row );
+    }
+
+    @Test
+    public void reads16BitGrayTGA() throws IOException
+    {
+        byte[] pixels = { ( byte ) 0x34, ( byte ) 0x12, ( byte ) 0xFF, ( byte ) 0xFF };
+        ESImageReader reader = new ESImageReader ( new ByteArrayInputStream ( tga ( 3, 2, 1, 16, true, pixels ) ) );
+        byte[] row = new byte[reader.getRowBytes()];
+
+        reader.readRow ( row );
+        assertEquals ( 0x1234, reader.getSample ( row, 0, 0 ) );
+        assertEquals ( 0xFFFF, reader.getSample ( row, 1, 0 ) );
+    }
+
+    @Test
+    public void readsPNGWithEveryFilter() throws IOException
+    {
+        int width = 7;
+        byte[][] rows = new byte[5][width * 3];
+
+        for ( int y = 0; y < rows.length; y++ )
+        {
+            for ( int i = 0; i < width * 3; i++ )
+            {
+                rows[y][i] = ( byte ) ( y * 37 + i * 11 + ( i % 3 ) * 101 );
+            }
+        }
+
+        for ( int filter = 0; filter <= 4; filter++ )
+        {
+            ESImageReader reader = new ESImageReader ( new ByteArrayInputStream ( png ( width, rows.length, 8, 2, filter, rows ) ) );
+            byte[] row = new byte[reader.getRowBytes()];
+
+            assertEquals ( 3, reader.getChannels() );
+
+            for ( int y = 0; y < rows.length; y++ )
+            {
+                assertEquals ( y, reader.readRow ( row ) );
+                assertArrayEquals ( "filter " + filter, rows[y], row );
+            }
+
+            assertEquals ( -1, reader.readRow ( row ) );
+        }
+    }
+
+    @Test
+    public void reads16BitGrayPNG() throws IOException
+    {
+        byte[][] rows = { { 0x12, 0x34, ( byte ) 0xAB, ( byte ) 0xCD }, { 0, 1, ( byte ) 0xFF, ( byte ) 0xFE } };
+        ESImageReader reader = new ESImageReader ( new ByteArrayInputStream ( png ( 2, 2, 16, 0, 4, rows ) ) );
+        byte[] row = new byte[reader.getRowBytes()];
+
+        assertEquals ( 2, reader.getBytesPerSample() );
+        reader.readRow ( row );
+        assertEquals ( 0x1234, reader.getSample ( row, 0, 0 ) );
+        assertEquals ( 0xABCD, reader.getSample ( row, 1, 0 ) );
+        reader.readRow ( row );
+        assertEquals ( 0xFFFE, reader.getSample ( row, 1, 0 ) );
+    }
+
+    @Test
+    public void truncatedPNGRowIsEOF() throws IOException
+    {
+        // The image data ends where the second row's filter byte should be
+        byte[][] rows = { { 1, 2, 3 } };
+        ESImageReader reader = new ESImageReader ( new ByteArrayInputStream ( png ( 3, 2, 8, 0, 0, rows ) ) );
+        byte[] row = new byte[reader.getRowBytes()];
+
+        assertEquals ( 0, reader.readRow ( row ) );
+
+        try
+        {
+            reader.readRow ( row );
+            fail();
+        }
+        catch ( EOFException expected )
+        {
+        }
+    }
+
+    @Test ( expected = IOException.class )
+    public void rejectsUnsupportedTGAType() throws IOException
+    {
+        new ESImageReader ( new ByteArrayInputStream ( tga ( 1, 2, 2, 8, false, new byte[4] ) ) );
+    }
+}
@@ -0,0 +1,90 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class ESImageWriterTest
+{
+    // Encode and decode back with ESImageReader
+    private static byte[] roundTrip ( byte[] pixels, int width, int height, int channels, int bytesPerSample )
+        throws IOException
+    {
+        byte[] png = ESImageWriter.encodePNG ( pixels, width, height, channels, bytesPerSample,
+                                               Deflater.DEFAULT_COMPRESSION );
+        ESImageReader reader = new ESImageReader ( new ByteArrayInputStream ( png ) );
+        byte[] decoded = new byte[pixels.length];
+        byte[] row = new byte[reader.getRowBytes()];
+        int y;
+
+        assertEquals ( width, reader.getWidth() );
+        assertEquals ( height, reader.getHeight() );
+        assertEquals ( channels, reader.getChannels() );
+        assertEquals ( bytesPerSample, reader.getBytesPerSample() );
+
+        while ( ( y = reader.readRow ( row ) ) >= 0 )
+        {
+            System.arraycopy ( row, 0, decoded, y * row.length, row.length );
+        }
+
+        reader.close();
+        return decoded;
+    }
+
+    @Test
+    public void randomImagesRoundTrip() throws IOException
+    {
+        Random random = new Random ( 1 );
+
+        for ( int channels = 1; channels <= 4; channels++ )
+        {
+            for ( int bytesPerSample = 1; bytesPerSample <= 2; bytesPerSample++ )
+            {
+                byte[] pixels = new byte[37 * 23 * channels * bytesPerSample];
+
+                random.nextBytes ( pixels );
+                assertArrayEquals ( pixels, roundTrip ( pixels, 37, 23, channels, bytesPerSample ) );
+            }
+        }
+    }
+
+    @Test
+    public void smoothImagesRoundTripAndCompress() throws IOException
+    {
+        int size = 128;
+        byte[] pixels = new byte[size * size * 3];
+
+        for ( int y = 0; y < size; y++ )
+        {
+            for ( int x = 0; x < size; x++ )
+            {
+                pixels[( y * size + x ) * 3] = ( byte ) x;
+                pixels[( y * size + x ) * 3 + 1] = ( byte ) y;
+                pixels[( y * size + x ) * 3 + 2] = ( byte ) ( x + y );
+            }
+        }
+
+        assertArrayEquals ( pixels, roundTrip ( pixels, size, size, 3, 1 ) );
+
+        // Gradients filter to constant residuals
+        byte[] png = ESImageWriter.encodePNG ( pixels, size, size, 3, 1, 9 );
+        assertTrue ( png.length < pixels.length / 20 );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsShortPixelArray()
+    {
+        ESImageWriter.encodePNG ( new byte[10], 4, 4, 1, 1, 6 );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsUnsupportedDepth()
+    {
+        ESImageWriter.encodePNG ( new byte[64], 4, 4, 1, 3, 6 );
+    }
+}
@@ -0,0 +1,141 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ESInertiaTest
+{
+    // Drag the first axis by speed units per second at 60 Hz
+    private static double drag ( ESInertia inertia, double start, double speed, int events )
+    {
+        double[] delta = { speed / 60.0, 0.0 };
+        double time = start;
+
+        for ( int i = 0; i < events; i++ )
+        {
+            inertia.drag ( time, delta );
+            time += 1.0 / 60.0;
+        }
+
+        return time - 1.0 / 60.0;
+    }
+
+    // Total glide motion of the first axis, stepping at a frame rate
+    private static double glide ( ESInertia inertia, double start, double rate, double duration )
+    {
+        double[] out = new double[2];
+        double total = 0.0;
+
+        for ( int i = 1; i <= Math.round ( duration * rate ); i++ )
+        {
+            inertia.step ( start + i / rate, out );
+            total += out[0];
+        }
+
+        return total;
+    }
+
+    @Test
+    public void estimatesTheDragVelocity()
+    {
+        ESInertia inertia = new ESInertia ( 2, 0.3, 1.0 );
+
+        drag ( inertia, 0.0, 600.0, 30 );
+
+        assertTrue ( inertia.isDragging() );
+        assertEquals ( 600.0, inertia.getVelocity ( 0 ), 0.1 );
+        assertEquals ( 0.0, inertia.getVelocity ( 1 ), 0.0 );
+    }
+
+    @Test
+    public void glideDoesNotDependOnFrameRate()
+    {
+        ESInertia fast = new ESInertia ( 2, 0.3, 1.0 );
+        ESInertia slow = new ESInertia ( 2, 0.3, 1.0 );
+        double end = drag ( fast, 0.0, 600.0, 30 );
+
+        drag ( slow, 0.0, 600.0, 30 );
+        fast.release ( end );
+        slow.release ( end );
+
+        double v = fast.getVelocity ( 0 );
+        double a = glide ( fast, end, 120.0, 0.5 );
+        double b = glide ( slow, end, 20.0, 0.5 );
+
+        assertEquals ( v * 0.3 * ( 1.0 - Math.exp ( -0.5 / 0.3 ) ), a, 1e-9 );
+        assertEquals ( a, b, 1e-9 );
+    }
+
+    @Test
+    public void glideStopsUnderTheStopSpeed()
+    {
+        ESInertia inertia = new ESInertia ( 2, 0.3, 1.0 );
+        double end = drag ( inertia, 0.0, 600.0, 30 );
+        double[] out = new double[2];
+
+        inertia.release ( end );
+        assertTrue ( inertia.isGliding() );
+
+        // 600 / e^(t / 0.3) < 1 after 1.92 s
+        assertTrue ( inertia.step ( end + 1.9, out ) );
+        assertTrue ( inertia.isGliding() );
+        assertTrue ( inertia.step ( end + 2.0, out ) );
+        assertFalse ( inertia.isGliding() );
+        assertFalse ( inertia.step ( end + 2.1, out ) );
+        assertEquals ( 0.0, out[0], 0.0 );
+    }
+
+    @Test
+    public void fingerHeldStillDoesNotThrow()
+    {
+        ESInertia inertia = new ESInertia ( 2, 0.3, 1.0 );
+        double end = drag ( inertia, 0.0, 600.0, 30 );
+
+        inertia.release ( end + 0.5 );
+        assertFalse ( inertia.isGliding() );
+    }
+
+    @Test
+    public void touchDownStopsTheGlide()
+    {
+        ESInertia inertia = new ESInertia ( 2, 0.3, 1.0 );
+        double end = drag ( inertia, 0.0, 600.0, 30 );
+
+        inertia.release ( end );
+        inertia.step ( end + 0.1, new double[2] );
+        inertia.stop();
+
+        assertFalse ( inertia.isGliding() );
+        assertEquals ( 0.0, inertia.getVelocity ( 0 ), 0.0 );
+    }
+
+    @Test
+    public void sameEventsReplayExactly()
+    {
+        double[] a = new double[40];
+        double[] b = new double[40];
+
+        for ( double[] result : new double[][] { a, b } )
+        {
+            ESInertia inertia = new ESInertia ( 2, 0.3, 1.0 );
+            double[] out = new double[2];
+            double end = drag ( inertia, 1.5, 450.0, 12 );
+
+            // Two events with one time stamp
+            inertia.drag ( end, new double[] { 3.0, -1.0 } );
+            inertia.drag ( end + 0.02, new double[] { 4.0, -2.0 } );
+            inertia.release ( end + 0.03 );
+
+            for ( int i = 0; i < 20; i++ )
+            {
+                inertia.step ( end + 0.03 + i * 0.016, out );
+                result[i * 2] = out[0];
+                result[i * 2 + 1] = out[1];
+            }
+        }
+
+        assertArrayEquals ( a, b, 0.0 );
+        assertTrue ( a[2] > 0.0 && a[3] < 0.0 );
+    }
+}
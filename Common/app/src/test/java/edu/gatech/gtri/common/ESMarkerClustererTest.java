@@ -0,0 +1,175 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class ESMarkerClustererTest
+{
+    // Maps longitude, latitude straight to x, y
+    private static final ESVectorLayer.Projection PLANE = new ESVectorLayer.Projection()
+    {
+        public void project ( double lon, double lat, double[] out, int offset )
+        {
+            out[offset] = lon;
+            out[offset + 1] = lat;
+            out[offset + 2] = 0.0;
+        }
+    };
+
+    // Runs jobs when the test says so
+    private static class ManualExecutor implements Executor
+    {
+        public void execute ( Runnable r )
+        {
+            queue.add ( r );
+        }
+
+        void runAll()
+        {
+            while ( !queue.isEmpty() )
+            {
+                queue.remove ( 0 ).run();
+            }
+        }
+
+        final List<Runnable> queue = new ArrayList<Runnable>();
+    }
+
+    @Test
+    public void clustersOnTheExecutor()
+    {
+        ESMarkerLayer layer = ESMarkerLayerTest.randomLayer ( 10000, 1 );
+        ManualExecutor executor = new ManualExecutor();
+        ESMarkerClusterer clusterer = new ESMarkerClusterer ( layer, PLANE, executor );
+
+        clusterer.request ( 2, -180.0, -90.0, 180.0, 90.0 );
+        assertNull ( clusterer.poll() );
+        assertEquals ( 1, executor.queue.size() );
+
+        executor.runAll();
+
+        ESMarkerClusterer.Result result = clusterer.poll();
+
+        assertNotNull ( result );
+        assertNull ( clusterer.poll() );
+        assertEquals ( 32 * 16, result.getNumClusters() );
+        assertEquals ( 10000, result.getNumMarkers() );
+        assertEquals ( 32 * 16 * ESMarkerClusterer.VERTEX_FLOATS, result.getVertices().limit() );
+
+        // Vertices are relative to the center of the view
+        float count = 0.0f;
+
+        for ( int c = 0; c < result.getNumClusters(); c++ )
+        {
+            float x = result.getVertices().get ( c * 4 );
+
+            assertTrue ( x >= -180.0f && x <= 180.0f );
+            count += result.getVertices().get ( c * 4 + 3 );
+        }
+
+        assertEquals ( 10000.0f, count, 0.0f );
+    }
+
+    @Test
+    public void requestsAreCoalesced()
+    {
+        ESMarkerLayer layer = ESMarkerLayerTest.randomLayer ( 1000, 2 );
+        ManualExecutor executor = new ManualExecutor();
+        ESMarkerClusterer clusterer = new ESMarkerClusterer ( layer, PLANE, executor );
+
+        clusterer.request ( 0, -180.0, -90.0, 180.0, 90.0 );
+        clusterer.request ( 1, -180.0, -90.0, 180.0, 90.0 );
+        clusterer.request ( 3, 0.0, 0.0, 10.0, 10.0 );
+
+        // One job serves the latest request only
+        assertEquals ( 1, executor.queue.size() );
+        executor.runAll();
+        assertEquals ( 1, clusterer.getResultsProduced() );
+        assertEquals ( 3, clusterer.poll().getZoom() );
+    }
+
+    @Test
+    public void updatesAreAppliedBeforeClustering()
+    {
+        ESMarkerLayer layer = ESMarkerLayerTest.randomLayer ( 1000, 3 );
+        ManualExecutor executor = new ManualExecutor();
+        ESMarkerClusterer clusterer = new ESMarkerClusterer ( layer, PLANE, executor );
+        int[] ids = new int[1000];
+        double[] lonLat = new double[2000];
+
+        // Move everything into one small box
+        for ( int i = 0; i < 1000; i++ )
+        {
+            ids[i] = i;
+            lonLat[i * 2] = 10.0 + i * 1e-4;
+            lonLat[i * 2 + 1] = 20.0;
+        }
+
+        clusterer.update ( ids, lonLat, 1000 );
+        clusterer.request ( 0, 0.0, 0.0, 40.0, 40.0 );
+        executor.runAll();
+
+        ESMarkerClusterer.Result result = clusterer.poll();
+
+        assertEquals ( 1000, clusterer.getUpdatesApplied() );
+        assertEquals ( 1, result.getNumClusters() );
+        assertEquals ( 1000.0f, result.getVertices().get ( 3 ), 0.0f );
+
+        // Recycled results are reused
+        clusterer.recycle ( result );
+        clusterer.request ( 0, 0.0, 0.0, 40.0, 40.0 );
+        executor.runAll();
+        assertSame ( result, clusterer.poll() );
+    }
+
+    @Test
+    public void runsOnWorkerThread() throws Exception
+    {
+        ESMarkerLayer layer = ESMarkerLayerTest.randomLayer ( 100000, 4 );
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        ESMarkerClusterer clusterer = new ESMarkerClusterer ( layer, PLANE, worker );
+        ESMarkerClusterer.Result result = null;
+        long deadline = System.currentTimeMillis() + 10000;
+        int[] ids = { 0 };
+
+        for ( int frame = 0; frame < 100; frame++ )
+        {
+            clusterer.update ( ids, new double[] { frame * 0.1, 0.0 }, 1 );
+            clusterer.request ( frame % 6, -180.0, -90.0, 180.0, 90.0 );
+
+            ESMarkerClusterer.Result polled = clusterer.poll();
+
+            if ( polled != null )
+            {
+                assertEquals ( 100000, polled.getNumMarkers() );
+                clusterer.recycle ( polled );
+            }
+        }
+
+        // The last request is always served, after all updates
+        clusterer.request ( 7, -180.0, -90.0, 180.0, 90.0 );
+
+        while ( result == null && System.currentTimeMillis() < deadline )
+        {
+            result = clusterer.poll();
+
+            if ( result == null || result.getZoom() != 7 )
+            {
+                result = null;
+                Thread.sleep ( 1 );
+            }
+        }
+
+        worker.shutdown();
+        assertNotNull ( result );
+        assertEquals ( 100000, result.getNumMarkers() );
+        assertEquals ( 100, clusterer.getUpdatesApplied() );
+    }
+}
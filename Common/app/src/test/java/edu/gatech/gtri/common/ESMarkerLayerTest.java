@@ -0,0 +1,236 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ESMarkerLayerTest
+{
+    static ESMarkerLayer randomLayer ( int count, long seed )
+    {
+        Random random = new Random ( seed );
+        ESMarkerLayer layer = new ESMarkerLayer ( count );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            layer.add ( -180.0 + 360.0 * random.nextDouble(), -90.0 + 180.0 * random.nextDouble() );
+        }
+
+        layer.rebuildIndex();
+        return layer;
+    }
+
+    // Ids of the markers in a box by testing every marker
+    static int[] bruteForce ( ESMarkerLayer layer, double west, double south, double east, double north )
+    {
+        int[] ids = new int[layer.getNumMarkers()];
+        int count = 0;
+
+        for ( int i = 0; i < layer.getNumMarkers(); i++ )
+        {
+            double lon = layer.getLon ( i );
+            double lat = layer.getLat ( i );
+            boolean inLon = ( west <= east ) ? ( lon >= west && lon <= east ) : ( lon >= west || lon <= east );
+
+            if ( inLon && lat >= south && lat <= north )
+            {
+                ids[count++] = i;
+            }
+        }
+
+        return Arrays.copyOf ( ids, count );
+    }
+
+    static void assertQuery ( ESMarkerLayer layer, double west, double south, double east, double north )
+    {
+        int[] ids = new int[layer.getNumMarkers()];
+        int count = layer.query ( west, south, east, north, ids );
+        int[] found = Arrays.copyOf ( ids, count );
+
+        Arrays.sort ( found );
+        assertArrayEquals ( bruteForce ( layer, west, south, east, north ), found );
+    }
+
+    @Test
+    public void queryMatchesBruteForce()
+    {
+        ESMarkerLayer layer = randomLayer ( 20000, 1 );
+
+        assertQuery ( layer, -10.0, -5.0, 12.5, 7.25 );
+        assertQuery ( layer, 100.0, 60.0, 100.2, 60.1 );
+        assertQuery ( layer, -180.0, -90.0, 180.0, 90.0 );
+
+        // Across the antimeridian
+        assertQuery ( layer, 170.0, -20.0, -170.0, 20.0 );
+    }
+
+    @Test
+    public void queryCountsBeyondOutputSize()
+    {
+        ESMarkerLayer layer = randomLayer ( 1000, 2 );
+        int[] ids = new int[10];
+
+        assertEquals ( 1000, layer.query ( -180.0, -90.0, 180.0, 90.0, ids ) );
+    }
+
+    @Test
+    public void movesAreSeenWithoutRebuild()
+    {
+        ESMarkerLayer layer = randomLayer ( 100, 3 );
+        int[] ids = new int[100];
+
+        layer.set ( 42, 1.5, 2.5 );
+        assertFalse ( layer.isIndexDirty() );
+        assertEquals ( 1, layer.getNumMoved() );
+
+        assertEquals ( 1, layer.query ( 1.4, 2.4, 1.6, 2.6, ids ) );
+        assertEquals ( 42, ids[0] );
+
+        layer.rebuildIndex();
+        assertEquals ( 0, layer.getNumMoved() );
+        assertEquals ( 1, layer.query ( 1.4, 2.4, 1.6, 2.6, ids ) );
+    }
+
+    @Test
+    public void movedMarkersMatchRebuiltIndex()
+    {
+        Random random = new Random ( 36 );
+        ESMarkerLayer layer = randomLayer ( 20000, 7 );
+        ESMarkerLayer.Clusters moved = new ESMarkerLayer.Clusters();
+        ESMarkerLayer.Clusters rebuilt = new ESMarkerLayer.Clusters();
+
+        // Small moves mostly stay in their cell, the others land anywhere
+        for ( int i = 0; i < 600; i++ )
+        {
+            int id = random.nextInt ( 20000 );
+            double lon = layer.getLon ( id ), lat = layer.getLat ( id );
+
+            if ( i % 2 == 0 )
+            {
+                layer.set ( id, lon + 0.001 * random.nextGaussian(), lat + 0.001 * random.nextGaussian() );
+            }
+            else
+            {
+                layer.set ( id, -180.0 + 360.0 * random.nextDouble(), -90.0 + 180.0 * random.nextDouble() );
+            }
+        }
+
+        assertFalse ( layer.isIndexDirty() );
+        assertTrue ( layer.getNumMoved() > 0 );
+        assertQuery ( layer, -10.0, -5.0, 12.5, 7.25 );
+        assertQuery ( layer, 170.0, -20.0, -170.0, 20.0 );
+
+        for ( int zoom = 0; zoom < 10; zoom += 3 )
+        {
+            layer.cluster ( zoom, -60.0, -30.0, 75.0, 45.0, moved );
+            layer.rebuildIndex();
+            layer.cluster ( zoom, -60.0, -30.0, 75.0, 45.0, rebuilt );
+
+            assertEquals ( rebuilt.getNumClusters(), moved.getNumClusters() );
+
+            for ( int c = 0; c < rebuilt.getNumClusters(); c++ )
+            {
+                assertEquals ( rebuilt.getCount ( c ), moved.getCount ( c ) );
+                assertEquals ( rebuilt.getLon ( c ), moved.getLon ( c ), 1e-9 );
+                assertEquals ( rebuilt.getLat ( c ), moved.getLat ( c ), 1e-9 );
+            }
+        }
+    }
+
+    @Test
+    public void fullOverlayDirtiesTheIndex()
+    {
+        ESMarkerLayer layer = randomLayer ( 1000, 8 );
+        int id = 0;
+
+        // Each marker jumps to the other side of the globe
+        while ( !layer.isIndexDirty() )
+        {
+            layer.set ( id, -layer.getLon ( id ), -layer.getLat ( id ) );
+            id++;
+        }
+
+        assertTrue ( id < 1000 );
+        layer.rebuildIndex();
+        assertQuery ( layer, -180.0, -90.0, 180.0, 90.0 );
+        assertQuery ( layer, 20.0, 10.0, 40.0, 30.0 );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void queryWithStaleIndexThrows()
+    {
+        ESMarkerLayer layer = new ESMarkerLayer ( 2 );
+
+        layer.add ( 1.0, 1.0 );
+        layer.rebuildIndex();
+        layer.add ( 0.0, 0.0 );
+        layer.query ( -1.0, -1.0, 1.0, 1.0, new int[10] );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void addBeyondCapacityThrows()
+    {
+        randomLayer ( 10, 5 ).add ( 0.0, 0.0 );
+    }
+
+    @Test
+    public void clustersKeepEveryMarkerOnce()
+    {
+        ESMarkerLayer layer = randomLayer ( 50000, 6 );
+        ESMarkerLayer.Clusters clusters = new ESMarkerLayer.Clusters();
+
+        for ( int zoom = 0; zoom < 8; zoom++ )
+        {
+            double size = ESMarkerLayer.getClusterCellSize ( zoom );
+            int total = 0;
+
+            layer.cluster ( zoom, -180.0, -90.0, 180.0, 90.0, clusters );
+
+            for ( int c = 0; c < clusters.getNumClusters(); c++ )
+            {
+                total += clusters.getCount ( c );
+            }
+
+            assertEquals ( 50000, total );
+
+            // At most one cluster per cell, every cell of zoom 0 to 3 is hit
+            assertTrue ( clusters.getNumClusters() <= ( 360.0 / size ) * ( 180.0 / size ) + 1e-9 );
+
+            if ( zoom <= 3 )
+            {
+                assertEquals ( ( int ) ( ( 360.0 / size ) * ( 180.0 / size ) ), clusters.getNumClusters() );
+            }
+        }
+    }
+
+    @Test
+    public void clusterIsCentroidOfItsMarkers()
+    {
+        ESMarkerLayer layer = new ESMarkerLayer ( 4 );
+        ESMarkerLayer.Clusters clusters = new ESMarkerLayer.Clusters();
+
+        layer.add ( 1.0, 1.0 );
+        layer.add ( 3.0, 2.0 );
+        layer.add ( 2.0, 6.0 );
+        layer.add ( 100.0, 10.0 );
+        layer.rebuildIndex();
+
+        // Zoom 0 cells are 45 degrees, the first three markers merge
+        layer.cluster ( 0, -180.0, -90.0, 180.0, 90.0, clusters );
+        assertEquals ( 2, clusters.getNumClusters() );
+
+        int small = clusters.getCount ( 0 ) == 3 ? 0 : 1;
+
+        assertEquals ( 3, clusters.getCount ( small ) );
+        assertEquals ( 2.0, clusters.getLon ( small ), 1e-12 );
+        assertEquals ( 3.0, clusters.getLat ( small ), 1e-12 );
+        assertEquals ( 100.0, clusters.getLon ( 1 - small ), 1e-12 );
+
+        // Deep zoom separates them, culling drops the far one
+        layer.cluster ( 10, 0.0, 0.0, 10.0, 10.0, clusters );
+        assertEquals ( 3, clusters.getNumClusters() );
+    }
+}
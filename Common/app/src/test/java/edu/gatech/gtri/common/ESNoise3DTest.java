@@ -0,0 +1,330 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESNoise3DTest
+{
+    private static ESNoise3D serial ( long seed )
+    {
+        ESNoise3D noise = new ESNoise3D ( seed );
+
+        return new ESNoise3D ( toShorts ( noise.getPermTable() ), noise.getGradientTable(), null );
+    }
+
+    private static short[] toShorts ( int[] values )
+    {
+        short[] shorts = new short[values.length];
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            shorts[i] = ( short ) values[i];
+        }
+
+        return shorts;
+    }
+
+    @Test
+    public void seedMakesAPermutation()
+    {
+        boolean[] seen = new boolean[ESNoise3D.TABLE_SIZE];
+        float[] gradients = new ESNoise3D ( 1 ).getGradientTable();
+
+        for ( int p : new ESNoise3D ( 1 ).getPermTable() )
+        {
+            assertFalse ( seen[p] );
+            seen[p] = true;
+        }
+
+        for ( int i = 0; i < gradients.length; i += 3 )
+        {
+            float length = ( float ) Math.sqrt ( gradients[i] * gradients[i] + gradients[i + 1] * gradients[i + 1]
+                                                 + gradients[i + 2] * gradients[i + 2] );
+
+            assertEquals ( 1.0f, length, 1e-5f );
+        }
+
+        assertEquals ( new ESNoise3D ( 1 ).noise3D ( 0.3f, 1.7f, 2.2f ), new ESNoise3D ( 1 ).noise3D ( 0.3f, 1.7f, 2.2f ), 0.0f );
+        assertNotEquals ( new ESNoise3D ( 1 ).noise3D ( 0.3f, 1.7f, 2.2f ), new ESNoise3D ( 2 ).noise3D ( 0.3f, 1.7f, 2.2f ), 0.0f );
+    }
+
+    @Test
+    public void zeroAtTheLatticePoints()
+    {
+        ESNoise3D noise = new ESNoise3D ( 3 );
+
+        assertEquals ( 0.0f, noise.noise3D ( 0.0f, 0.0f, 0.0f ), 0.0f );
+        assertEquals ( 0.0f, noise.noise3D ( 5.0f, -2.0f, 7.0f ), 0.0f );
+        assertEquals ( 0.0f, noise.noise3D ( 3.0f, 4.0f, 5.0f, 2 ), 0.0f );
+    }
+
+    @Test
+    public void continuousAcrossCells()
+    {
+        ESNoise3D noise = new ESNoise3D ( 4 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            float y = i * 0.173f, z = i * 0.311f;
+
+            assertEquals ( noise.noise3D ( 2.0f - 1e-4f, y, z ), noise.noise3D ( 2.0f + 1e-4f, y, z ), 1e-3f );
+        }
+    }
+
+    @Test
+    public void periodicNoiseRepeats()
+    {
+        ESNoise3D noise = new ESNoise3D ( 5 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            float x = i * 0.137f, y = i * 0.291f, z = i * 0.053f;
+            float value = noise.noise3D ( x, y, z, 3 );
+
+            assertEquals ( value, noise.noise3D ( x + 3.0f, y, z, 3 ), 1e-5f );
+            assertEquals ( value, noise.noise3D ( x, y - 6.0f, z, 3 ), 1e-5f );
+            assertEquals ( value, noise.noise3D ( x, y, z + 3.0f, 3 ), 1e-5f );
+        }
+
+        // Across the seam
+        assertEquals ( noise.noise3D ( 3.0f - 1e-4f, 0.5f, 0.5f, 3 ), noise.noise3D ( 1e-4f, 0.5f, 0.5f, 3 ), 1e-3f );
+    }
+
+    @Test
+    public void rowsAreThePoints()
+    {
+        ESNoise3D noise = new ESNoise3D ( 6 );
+        float[] row = new float[101];
+
+        noise.noise3D ( row, 1, 100, -3.1f, 0.07f, 1.3f, -0.4f, 0 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals ( noise.noise3D ( -3.1f + i * 0.07f, 1.3f, -0.4f ), row[i + 1], 0.0f );
+        }
+
+        noise.noise3D ( row, 0, 100, -3.1f, 0.07f, 1.3f, -0.4f, 4 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals ( noise.noise3D ( -3.1f + i * 0.07f, 1.3f, -0.4f, 4 ), row[i], 0.0f );
+        }
+    }
+
+    @Test
+    public void volumeIsThePointsToTheBit()
+    {
+        ESNoise3D noise = new ESNoise3D ( 7 );
+        float[] volume = new float[32 * 32 * 32];
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+
+        noise.createVolume ( volume, 32, 5.0f, false );
+
+        for ( int z = 0, i = 0; z < 32; z++ )
+        {
+            for ( int y = 0; y < 32; y++ )
+            {
+                for ( int x = 0; x < 32; x++, i++ )
+                {
+                    float expected = noise.noise3D ( x / 32.0f * 5.0f, y / 32.0f * 5.0f, z / 32.0f * 5.0f );
+
+                    assertEquals ( expected, volume[i], 0.0f );
+                    min = Math.min ( min, expected );
+                    max = Math.max ( max, expected );
+                }
+            }
+        }
+
+        assertEquals ( min, noise.getMin(), 0.0f );
+        assertEquals ( max, noise.getMax(), 0.0f );
+    }
+
+    @Test
+    public void tileableVolumeRepeats()
+    {
+        ESNoise3D noise = new ESNoise3D ( 8 );
+        float[] volume = new float[32 * 32 * 32];
+
+        // Rounded to 5 cells
+        noise.createVolume ( volume, 32, 4.8f, true );
+
+        for ( int i = 0; i < 32; i++ )
+        {
+            assertEquals ( noise.noise3D ( i / 32.0f * 5.0f, 0.0f, 0.0f, 5 ), volume[i], 0.0f );
+        }
+
+        // The voxel past the last is the first
+        for ( int y = 0; y < 32; y++ )
+        {
+            float py = y / 32.0f * 5.0f;
+
+            assertEquals ( noise.noise3D ( 5.0f, py, 1.0f, 5 ), noise.noise3D ( 0.0f, py, 1.0f, 5 ), 1e-6f );
+        }
+    }
+
+    @Test
+    public void parallelVolumeIsTheSerialOne()
+    {
+        ESNoise3D serial = serial ( 9 );
+        ESNoise3D parallel = new ESNoise3D ( toShorts ( serial.getPermTable() ), serial.getGradientTable(),
+                                             new ForkJoinPool ( 4 ) );
+        float[] a = new float[64 * 64 * 64];
+        float[] b = new float[64 * 64 * 64];
+
+        serial.createVolume ( a, 64, 5.0f, true );
+        parallel.createVolume ( b, 64, 5.0f, true );
+
+        assertArrayEquals ( a, b, 0.0f );
+        assertEquals ( serial.getMin(), parallel.getMin(), 0.0f );
+        assertEquals ( serial.getMax(), parallel.getMax(), 0.0f );
+    }
+
+    @Test
+    public void bytesSpanTheRange()
+    {
+        ESNoise3D noise = new ESNoise3D ( 10 );
+        float[] volume = new float[16 * 16 * 16];
+        ByteBuffer bytes = ByteBuffer.allocateDirect ( 16 * 16 * 16 + 1 );
+        int lowest = 255, highest = 0;
+
+        noise.createVolume ( volume, 16, 3.0f, false );
+        bytes.put ( ( byte ) 7 );
+        noise.createVolume ( bytes, 16, 3.0f, false );
+
+        assertEquals ( 16 * 16 * 16 + 1, bytes.position() );
+        assertEquals ( 7, bytes.get ( 0 ) );
+
+        for ( int i = 0; i < volume.length; i++ )
+        {
+            int value = bytes.get ( i + 1 ) & 0xff;
+            int expected = ( int ) ( ( volume[i] - noise.getMin() ) * ( 255.0f / ( noise.getMax() - noise.getMin() ) ) );
+
+            assertEquals ( expected, value );
+            lowest = Math.min ( lowest, value );
+            highest = Math.max ( highest, value );
+        }
+
+        assertEquals ( 0, lowest );
+        assertTrue ( highest >= 254 );
+    }
+
+    @Test
+    public void generatesTwoHundredFiftySixCubedUnderASecond()
+    {
+        ESNoise3D noise = new ESNoise3D ( 11 );
+        ByteBuffer bytes = ByteBuffer.allocateDirect ( 256 * 256 * 256 );
+        long best = Long.MAX_VALUE;
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            long start = System.nanoTime();
+
+            bytes.clear();
+            noise.createVolume ( bytes, 256, 16.0f, true );
+            best = Math.min ( best, System.nanoTime() - start );
+        }
+
+        assertTrue ( "best " + best / 1000000 + " ms", best < 1000000000L );
+    }
+
+    @Test
+    public void staysWithinTheRange()
+    {
+        ESNoise3D noise = new ESNoise3D ( 14 );
+        ESRandom random = ESRandom.create ( 14 );
+        float max = 0.0f;
+
+        for ( int i = 0; i < 200000; i++ )
+        {
+            max = Math.max ( max, Math.abs ( noise.noise3D ( random.nextFloat() * 50.0f, random.nextFloat() * 50.0f,
+                                                             random.nextFloat() * 50.0f ) ) );
+        }
+
+        assertTrue ( max <= ESNoise3D.RANGE );
+        assertTrue ( max > 0.5f );
+    }
+
+    // The bytes the noise shader of the Noise3D sample writes
+    @Test
+    public void fixedRangeBytesAreRoundedAndClamped()
+    {
+        ESNoise3D noise = new ESNoise3D ( 15 );
+        ByteBuffer bytes = ByteBuffer.allocate ( 1 + 20 * 20 * 20 );
+        float[][] ranges = { { -ESNoise3D.RANGE, ESNoise3D.RANGE }, { -0.1f, 0.1f } };
+
+        for ( float[] range : ranges )
+        {
+            int low = 0, high = 0;
+
+            bytes.position ( 1 );
+            noise.createVolume ( bytes, 20, 3.0f, true, range[0], range[1] );
+            assertEquals ( 1 + 20 * 20 * 20, bytes.position() );
+
+            for ( int z = 0; z < 20; z++ )
+            {
+                for ( int y = 0; y < 20; y++ )
+                {
+                    for ( int x = 0; x < 20; x++ )
+                    {
+                        float v = noise.noise3D ( x / 20.0f * 3.0f, y / 20.0f * 3.0f, z / 20.0f * 3.0f, 3 );
+                        float unit = Math.max ( 0.0f, Math.min ( 1.0f, ( v - range[0] ) * ( 1.0f / ( range[1] - range[0] ) ) ) );
+                        int b = bytes.get ( 1 + ( z * 20 + y ) * 20 + x ) & 0xFF;
+
+                        assertEquals ( Math.round ( unit * 255.0f ), b );
+                        low += b == 0 ? 1 : 0;
+                        high += b == 255 ? 1 : 0;
+                    }
+                }
+            }
+
+            // Only the narrow range clamps
+            assertEquals ( range[1] == 0.1f, low > 0 && high > 0 );
+        }
+    }
+
+    @Test
+    public void tableTexelsHoldGradientAndPermutation()
+    {
+        ESNoise3D noise = new ESNoise3D ( 16 );
+        FloatBuffer texels = FloatBuffer.allocate ( ESNoise3D.TABLE_SIZE * 4 );
+
+        noise.getTableTexels ( texels );
+        assertFalse ( texels.hasRemaining() );
+
+        for ( int i = 0; i < ESNoise3D.TABLE_SIZE; i++ )
+        {
+            assertEquals ( noise.getGradientTable()[i * 3], texels.get ( i * 4 ), 0.0f );
+            assertEquals ( noise.getGradientTable()[i * 3 + 1], texels.get ( i * 4 + 1 ), 0.0f );
+            assertEquals ( noise.getGradientTable()[i * 3 + 2], texels.get ( i * 4 + 2 ), 0.0f );
+            assertEquals ( noise.getPermTable()[i], ( int ) texels.get ( i * 4 + 3 ) );
+        }
+    }
+
+    @Test
+    public void maxDifferenceOfVolumes()
+    {
+        ByteBuffer a = ByteBuffer.wrap ( new byte[] { 0, ( byte ) 255, 10, 7 } );
+        ByteBuffer b = ByteBuffer.wrap ( new byte[] { 1, ( byte ) 250, 10, 0 } );
+
+        assertEquals ( 5, ESNoise3D.maxDifference ( a, b, 3 ) );
+        assertEquals ( 7, ESNoise3D.maxDifference ( a, b, 4 ) );
+        assertEquals ( 0, ESNoise3D.maxDifference ( a, a, 4 ) );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsABadPeriod()
+    {
+        new ESNoise3D ( 12 ).noise3D ( 0.5f, 0.5f, 0.5f, 0 );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsASmallBuffer()
+    {
+        new ESNoise3D ( 13 ).createVolume ( ByteBuffer.allocate ( 100 ), 8, 2.0f, false );
+    }
+}
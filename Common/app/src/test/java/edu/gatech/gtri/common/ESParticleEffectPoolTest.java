@@ -0,0 +1,139 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ESParticleEffectPoolTest
+{
+    // A burst of 0.5 s, and a trail for ever
+    private static ESParticleEffect burstAndTrail()
+    {
+        ESParticleEffect effect = new ESParticleEffect();
+        ESParticleEffect.Emitter burst = effect.addEmitter ( "spark", 1000 );
+        ESParticleEffect.Emitter trail = effect.addEmitter ( "smoke", 100 );
+
+        burst.setEmission ( 1000.0f, 0.5f );
+        burst.setLifetime ( 0.25f, 0.5f );
+        trail.setEmission ( 100.0f, 0.0f );
+        trail.setLifetime ( 0.5f, 0.5f );
+        return effect;
+    }
+
+    private static ESParticleEffect burst()
+    {
+        ESParticleEffect effect = new ESParticleEffect();
+
+        effect.addEmitter ( "spark", 1000 ).setEmission ( 1000.0f, 0.5f );
+        return effect;
+    }
+
+    @Test
+    public void spawnsUpToTheMaximum()
+    {
+        ESParticleEffectPool pool = new ESParticleEffectPool ( burst(), 3, 1 );
+
+        assertEquals ( 0, pool.spawn ( 0.0f, 0.0f, 0.0f ) );
+        assertEquals ( 1, pool.spawn ( 1.0f, 0.0f, 0.0f ) );
+        assertEquals ( 2, pool.spawn ( 2.0f, 0.0f, 0.0f ) );
+        assertEquals ( -1, pool.spawn ( 3.0f, 0.0f, 0.0f ) );
+        assertEquals ( 3, pool.getNumActive() );
+    }
+
+    @Test
+    public void emitsAtThePositionForTheDuration()
+    {
+        ESParticleEffectPool pool = new ESParticleEffectPool ( burst(), 2, 1 );
+        int instance = pool.spawn ( 5.0f, 6.0f, 7.0f );
+        ESParticlePool particles = pool.getParticles ( instance, 0 );
+
+        pool.update ( 0.1f );
+
+        assertEquals ( 100, particles.getCount() );
+        assertEquals ( 5.0f, particles.getX()[0], 0.0f );
+        assertEquals ( 6.0f, particles.getY()[0], 0.0f );
+        assertEquals ( 7.0f, particles.getZ()[0], 0.0f );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            pool.update ( 0.1f );
+        }
+
+        // 0.5 s of emission, stepped at 0.0 to 0.4
+        assertEquals ( 0.6f, pool.getAge ( instance ), 1e-5f );
+        assertEquals ( 1, pool.getNumActive() );
+
+        // No more spawns, and none dead before 1 s
+        assertEquals ( 500, particles.getCount() );
+        pool.update ( 0.1f );
+        assertEquals ( 500, particles.getCount() );
+    }
+
+    @Test
+    public void freesInstancesOnceTheirParticlesAreGone()
+    {
+        ESParticleEffectPool pool = new ESParticleEffectPool ( burst(), 2, 1 );
+        int first = pool.spawn ( 0.0f, 0.0f, 0.0f );
+        ESParticlePool particles = pool.getParticles ( first, 0 );
+
+        // 0.5 s of emission, then particles of 1 s
+        for ( int i = 0; i < 14; i++ )
+        {
+            pool.update ( 0.1f );
+        }
+
+        assertEquals ( 1, pool.getNumActive() );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            pool.update ( 0.1f );
+        }
+
+        assertEquals ( 0, pool.getNumActive() );
+
+        // The same instance and particles, emptied
+        assertEquals ( first, pool.spawn ( 1.0f, 1.0f, 1.0f ) );
+        assertSame ( particles, pool.getParticles ( first, 0 ) );
+        assertEquals ( 0, particles.getCount() );
+    }
+
+    @Test
+    public void endlessEmittersRunUntilStopped()
+    {
+        ESParticleEffectPool pool = new ESParticleEffectPool ( burstAndTrail(), 4, 1 );
+        int a = pool.spawn ( 0.0f, 0.0f, 0.0f );
+        int b = pool.spawn ( 0.0f, 0.0f, 0.0f );
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            pool.update ( 0.1f );
+        }
+
+        assertEquals ( 2, pool.getNumActive() );
+        assertEquals ( 0, pool.getParticles ( a, 0 ).getCount() );
+        assertEquals ( 50, pool.getParticles ( a, 1 ).getCount() );
+
+        pool.stop ( a );
+
+        for ( int i = 0; i < 6; i++ )
+        {
+            pool.update ( 0.1f );
+        }
+
+        assertEquals ( 1, pool.getNumActive() );
+        assertEquals ( b, pool.getActive ( 0 ) );
+    }
+
+    @Test
+    public void instancesAreSeededApart()
+    {
+        ESParticleEffectPool pool = new ESParticleEffectPool ( burst(), 2, 1 );
+        int a = pool.spawn ( 0.0f, 0.0f, 0.0f );
+        int b = pool.spawn ( 0.0f, 0.0f, 0.0f );
+
+        pool.getEffect().getEmitter ( 0 ).setShape ( 0.0f, 0.0f, 0.0f, 1.0f );
+        pool.update ( 0.1f );
+
+        assertNotEquals ( pool.getParticles ( a, 0 ).getX()[0], pool.getParticles ( b, 0 ).getX()[0], 0.0f );
+    }
+}
@@ -0,0 +1,163 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ESParticleEffectTest
+{
+    private static ESParticleEffect sparks()
+    {
+        ESParticleEffect effect = new ESParticleEffect();
+        ESParticleEffect.Emitter flash = effect.addEmitter ( "textures/smoke.png", 500 );
+        ESParticleEffect.Emitter sparks = effect.addEmitter ( "textures/spark.png", 2000 );
+        ESParticleEffect.Emitter smoke = effect.addEmitter ( "textures/smoke.png", 1000 );
+
+        flash.setEmission ( 5000.0f, 0.1f );
+        flash.setCurve ( ESParticleEffect.SIZE, new float[] { 0.0f, 1.0f }, new float[] { 32.0f, 0.0f } );
+        sparks.setEmission ( 4000.0f, 0.25f );
+        sparks.setLifetime ( 0.5f, 1.0f );
+        sparks.setShape ( 0.0f, 0.1f, 0.0f, 0.05f );
+        sparks.setVelocity ( 0.0f, 1.0f, 0.0f, 0.5f );
+        sparks.setForces ( 0.0f, -2.0f, 0.0f, 0.2f, 0.5f );
+        sparks.setCurve ( ESParticleEffect.ALPHA, new float[] { 0.0f, 0.1f, 1.0f }, new float[] { 0.0f, 1.0f, 0.0f } );
+        smoke.setEmission ( 200.0f, 0.0f );
+        smoke.setAdditive ( false );
+        return effect;
+    }
+
+    @Test
+    public void bakesCurvesPiecewiseLinear()
+    {
+        ESParticleEffect.Emitter emitter = new ESParticleEffect.Emitter ( "t", 1 );
+
+        emitter.setCurve ( ESParticleEffect.SIZE, new float[] { 0.25f, 0.75f }, new float[] { 2.0f, 4.0f } );
+
+        float[] table = emitter.getTable ( ESParticleEffect.SIZE );
+
+        assertEquals ( ESParticleEffect.CURVE_SAMPLES, table.length );
+
+        // Constant past the ends, linear in between
+        assertEquals ( 2.0f, table[0], 0.0f );
+        assertEquals ( 4.0f, table[ESParticleEffect.CURVE_SAMPLES - 1], 0.0f );
+
+        for ( float t = 0.0f; t <= 1.0f; t += 0.01f )
+        {
+            float expected = t < 0.25f ? 2.0f : ( t > 0.75f ? 4.0f : 2.0f + ( t - 0.25f ) * 4.0f );
+
+            assertEquals ( "t " + t, expected, ESParticleEffect.sample ( table, t ), 0.05f );
+        }
+
+        assertEquals ( 2.0f, ESParticleEffect.sample ( table, -1.0f ), 0.0f );
+        assertEquals ( 4.0f, ESParticleEffect.sample ( table, 2.0f ), 0.0f );
+    }
+
+    @Test
+    public void samplesTheKeysExactly()
+    {
+        ESParticleEffect.Emitter emitter = new ESParticleEffect.Emitter ( "t", 1 );
+        float step = 1.0f / ( ESParticleEffect.CURVE_SAMPLES - 1 );
+
+        emitter.setCurve ( ESParticleEffect.RED, new float[] { 0.0f, 21 * step, 1.0f }, new float[] { 0.0f, 1.0f, 0.5f } );
+
+        float[] table = emitter.getTable ( ESParticleEffect.RED );
+
+        assertEquals ( 1.0f, ESParticleEffect.sample ( table, 21 * step ), 1e-6f );
+        assertEquals ( 0.5f, ESParticleEffect.sample ( table, 1.0f ), 1e-6f );
+        assertEquals ( 0.25f, ESParticleEffect.sample ( table, 1.0f - 0.5f * ( 1.0f - 21 * step ) ), 0.75f );
+    }
+
+    @Test
+    public void interleavesTheColorCurves()
+    {
+        ESParticleEffect.Emitter emitter = new ESParticleEffect.Emitter ( "t", 1 );
+
+        emitter.setCurve ( ESParticleEffect.GREEN, new float[] { 0.0f }, new float[] { 0.5f } );
+        emitter.setCurve ( ESParticleEffect.ALPHA, new float[] { 0.0f, 1.0f }, new float[] { 1.0f, 0.0f } );
+
+        float[] colors = emitter.getColorTable();
+        int last = ESParticleEffect.CURVE_SAMPLES - 1;
+
+        assertEquals ( ESParticleEffect.CURVE_SAMPLES * 4, colors.length );
+        assertArrayEquals ( new float[] { 1.0f, 0.5f, 1.0f, 1.0f }, Arrays.copyOfRange ( colors, 0, 4 ), 0.0f );
+        assertArrayEquals ( new float[] { 1.0f, 0.5f, 1.0f, 0.0f }, Arrays.copyOfRange ( colors, last * 4, last * 4 + 4 ), 0.0f );
+    }
+
+    @Test
+    public void listsTexturesOnce()
+    {
+        assertEquals ( Arrays.asList ( "textures/smoke.png", "textures/spark.png" ), sparks().getTextures() );
+    }
+
+    @Test
+    public void readsWhatIsWritten() throws IOException
+    {
+        ESParticleEffect effect = sparks();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        effect.write ( bytes );
+
+        ESParticleEffect read = ESParticleEffect.read ( new ByteArrayInputStream ( bytes.toByteArray() ) );
+
+        assertEquals ( 3, read.getNumEmitters() );
+
+        for ( int e = 0; e < 3; e++ )
+        {
+            ESParticleEffect.Emitter a = effect.getEmitter ( e );
+            ESParticleEffect.Emitter b = read.getEmitter ( e );
+            ESParticleSimulation sa = new ESParticleSimulation ( 1, 1 );
+            ESParticleSimulation sb = new ESParticleSimulation ( 1, 1 );
+
+            assertEquals ( a.getTexture(), b.getTexture() );
+            assertEquals ( a.getMaxParticles(), b.getMaxParticles() );
+            assertEquals ( a.getEmitRate(), b.getEmitRate(), 0.0f );
+            assertEquals ( a.getDuration(), b.getDuration(), 0.0f );
+            assertEquals ( a.isAdditive(), b.isAdditive() );
+
+            for ( int curve = 0; curve < ESParticleEffect.NUM_CURVES; curve++ )
+            {
+                assertArrayEquals ( a.getTable ( curve ), b.getTable ( curve ), 0.0f );
+            }
+
+            a.apply ( sa, 1.0f, 2.0f, 3.0f, true );
+            b.apply ( sb, 1.0f, 2.0f, 3.0f, true );
+
+            assertArrayEquals ( sa.getEmitter(), sb.getEmitter(), 0.0f );
+            assertArrayEquals ( sa.getEmitVelocity(), sb.getEmitVelocity(), 0.0f );
+            assertArrayEquals ( sa.getLifetime(), sb.getLifetime(), 0.0f );
+            assertArrayEquals ( sa.getGravity(), sb.getGravity(), 0.0f );
+            assertEquals ( sa.getDrag(), sb.getDrag(), 0.0f );
+            assertEquals ( sa.getNoise(), sb.getNoise(), 0.0f );
+        }
+
+        // Small enough to ship many
+        assertTrue ( bytes.size() < 512 );
+    }
+
+    @Test ( expected = IOException.class )
+    public void rejectsOtherStreams() throws IOException
+    {
+        ESParticleEffect.read ( new ByteArrayInputStream ( new byte[64] ) );
+    }
+
+    @Test ( expected = IOException.class )
+    public void rejectsTruncatedEffects() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        sparks().write ( bytes );
+        ESParticleEffect.read ( new ByteArrayInputStream ( Arrays.copyOf ( bytes.toByteArray(), bytes.size() - 5 ) ) );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsKeysOutOfOrder()
+    {
+        new ESParticleEffect.Emitter ( "t", 1 ).setCurve ( ESParticleEffect.SIZE, new float[] { 0.5f, 0.25f },
+                                                           new float[] { 1.0f, 2.0f } );
+    }
+}
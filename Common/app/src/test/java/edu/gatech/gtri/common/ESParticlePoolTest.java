@@ -0,0 +1,258 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESParticlePoolTest
+{
+    private static ESParticleSimulation fountain ( int capacity )
+    {
+        ESParticleSimulation simulation = new ESParticleSimulation ( capacity, 7 );
+
+        simulation.setEmitter ( 1.0f, 2.0f, 3.0f, 0.5f );
+        simulation.setEmitVelocity ( 0.0f, 4.0f, 0.0f, 1.0f );
+        simulation.setLifetime ( 1.0f, 2.0f );
+        simulation.setEmitRate ( 600.0f );
+        simulation.setGravity ( 0.0f, -9.8f, 0.0f );
+        simulation.setDrag ( 0.5f );
+        simulation.setNoise ( 2.0f );
+        return simulation;
+    }
+
+    @Test
+    public void spawnsTheRateUpToTheCapacity()
+    {
+        ESParticlePool pool = new ESParticlePool ( fountain ( 1000 ), null );
+
+        assertEquals ( 0, pool.getCount() );
+
+        for ( int i = 0; i < 30; i++ )
+        {
+            pool.step ( 1.0f / 60.0f );
+        }
+
+        assertEquals ( 300, pool.getCount() );
+
+        pool.getSimulation().setEmitRate ( 100000.0f );
+        pool.step ( 1.0f / 60.0f );
+
+        assertEquals ( 1000, pool.getCount() );
+    }
+
+    @Test
+    public void particlesDieAtTheirLifetime()
+    {
+        ESParticlePool pool = new ESParticlePool ( fountain ( 1000 ), null );
+
+        pool.step ( 0.1f );
+        pool.getSimulation().setEmitRate ( 0.0f );
+
+        int spawned = pool.getCount();
+
+        // All live at least 1 s and at most 2 s
+        for ( int i = 0; i < 9; i++ )
+        {
+            pool.step ( 0.1f );
+        }
+
+        assertEquals ( spawned, pool.getCount() );
+
+        for ( int i = 0; i < 11; i++ )
+        {
+            pool.step ( 0.1f );
+        }
+
+        assertEquals ( 0, pool.getCount() );
+    }
+
+    @Test
+    public void movesOnlyWhenParticlesDie()
+    {
+        ESParticlePool pool = new ESParticlePool ( fountain ( 1000 ), null );
+
+        // All live at least 1 s, spawning appends
+        for ( int i = 0; i < 9; i++ )
+        {
+            pool.step ( 0.1f );
+            assertFalse ( pool.hasMoved() );
+        }
+
+        boolean moved = false;
+
+        for ( int i = 0; i < 11; i++ )
+        {
+            pool.step ( 0.1f );
+            moved |= pool.hasMoved();
+        }
+
+        assertTrue ( moved );
+    }
+
+    @Test
+    public void recordsWhereTheParticlesMoved()
+    {
+        ESParticleSimulation simulation = fountain ( 100000 );
+        ESParticlePool pool = new ESParticlePool ( simulation, new ForkJoinPool ( 4 ) );
+
+        // Many chunks, dying unevenly
+        simulation.setLifetime ( 0.05f, 1.0f );
+        simulation.setEmitRate ( 100000.0f / 0.5f );
+
+        for ( int frame = 0; frame < 30; frame++ )
+        {
+            int before = pool.getCount();
+            float[] age = Arrays.copyOf ( pool.getAge(), before );
+            float[] lifetime = Arrays.copyOf ( pool.getLifetime(), before );
+            int kept = 0;
+
+            for ( int i = 0; i < before; i++ )
+            {
+                kept += age[i] + 1.0f / 60.0f < lifetime[i] ? 1 : 0;
+            }
+
+            pool.step ( 1.0f / 60.0f );
+
+            // The kept particles, at the start of the arrays in any order
+            int[] moves = pool.getMoves();
+            boolean[] taken = new boolean[kept];
+
+            for ( int i = 0; i < before; i++ )
+            {
+                if ( age[i] + 1.0f / 60.0f >= lifetime[i] )
+                {
+                    assertEquals ( "particle " + i, -1, moves[i] );
+                    continue;
+                }
+
+                int to = moves[i];
+
+                assertTrue ( "particle " + i, to >= 0 && to < kept && !taken[to] );
+                taken[to] = true;
+                assertEquals ( lifetime[i], pool.getLifetime()[to], 0.0f );
+                assertEquals ( age[i] + 1.0f / 60.0f, pool.getAge()[to], 0.0f );
+            }
+        }
+    }
+
+    @Test
+    public void keepsTheLiveParticlesPacked()
+    {
+        ESParticleSimulation simulation = fountain ( 200000 );
+        ESParticlePool pool = new ESParticlePool ( simulation, null );
+
+        // Many chunks, dying unevenly
+        simulation.setLifetime ( 0.05f, 1.0f );
+        simulation.setEmitRate ( 200000.0f / 0.5f );
+
+        for ( int frame = 0; frame < 60; frame++ )
+        {
+            int before = pool.getCount();
+            int dying = 0;
+
+            for ( int i = 0; i < before; i++ )
+            {
+                if ( pool.getAge()[i] + 1.0f / 60.0f >= pool.getLifetime()[i] )
+                {
+                    dying++;
+                }
+            }
+
+            pool.step ( 1.0f / 60.0f );
+
+            assertEquals ( Math.min ( 200000, before - dying + simulation.getSpawnCount() ), pool.getCount() );
+
+            for ( int i = 0; i < pool.getCount(); i++ )
+            {
+                assertTrue ( "particle " + i, pool.getAge()[i] < pool.getLifetime()[i] );
+            }
+        }
+    }
+
+    @Test
+    public void stepsTheSameOnAnyNumberOfThreads()
+    {
+        ESParticlePool serial = new ESParticlePool ( fountain ( 100000 ), null );
+        ESParticlePool parallel = new ESParticlePool ( fountain ( 100000 ), new ForkJoinPool ( 4 ) );
+
+        serial.getSimulation().setEmitRate ( 100000.0f );
+        parallel.getSimulation().setEmitRate ( 100000.0f );
+
+        for ( int frame = 0; frame < 120; frame++ )
+        {
+            serial.step ( 1.0f / 60.0f );
+            parallel.step ( 1.0f / 60.0f );
+        }
+
+        int count = serial.getCount();
+
+        assertTrue ( count > 2 * ESParticlePool.CHUNK );
+        assertEquals ( count, parallel.getCount() );
+        assertArrayEquals ( Arrays.copyOf ( serial.getX(), count ), Arrays.copyOf ( parallel.getX(), count ), 0.0f );
+        assertArrayEquals ( Arrays.copyOf ( serial.getVelocityY(), count ),
+                            Arrays.copyOf ( parallel.getVelocityY(), count ), 0.0f );
+        assertArrayEquals ( Arrays.copyOf ( serial.getAge(), count ), Arrays.copyOf ( parallel.getAge(), count ), 0.0f );
+    }
+
+    @Test
+    public void integratesAsTheSimulation()
+    {
+        ESParticleSimulation simulation = new ESParticleSimulation ( 1, 1 );
+        ESParticlePool pool = new ESParticlePool ( simulation, null );
+        float dt = 1.0f / 64.0f;
+
+        simulation.setEmitVelocity ( 0.0f, 10.0f, 0.0f, 0.0f );
+        simulation.setLifetime ( 100.0f, 100.0f );
+        simulation.setEmitRate ( 1.0f / dt );
+        simulation.setGravity ( 0.0f, -2.0f, 0.0f );
+        simulation.setDrag ( 1.0f );
+        pool.step ( dt );
+        simulation.setEmitRate ( 0.0f );
+
+        double v = 10.0, y = 0.0;
+
+        for ( int i = 0; i < 64; i++ )
+        {
+            pool.step ( dt );
+            v = ( v - 2.0 * dt ) * ( 1.0 - dt );
+            y += v * dt;
+        }
+
+        assertEquals ( 1, pool.getCount() );
+        assertEquals ( v, pool.getVelocityY()[0], 1e-4 );
+        assertEquals ( y, pool.getY()[0], 1e-4 );
+        assertEquals ( 0.0f, pool.getX()[0], 0.0f );
+        assertEquals ( 1.0f, pool.getAge()[0], 0.0f );
+    }
+
+    @Test
+    public void copiesInterleaved()
+    {
+        ESParticlePool pool = new ESParticlePool ( fountain ( 50000 ), new ForkJoinPool ( 2 ) );
+        FloatBuffer out = FloatBuffer.allocate ( 50000 * ESParticleSimulation.STRIDE + 1 );
+
+        pool.getSimulation().setEmitRate ( 50000.0f * 60.0f );
+        pool.step ( 1.0f / 60.0f );
+        pool.step ( 1.0f / 60.0f );
+
+        out.put ( -1.0f );
+        pool.copyTo ( out );
+
+        assertEquals ( 1 + pool.getCount() * ESParticleSimulation.STRIDE, out.position() );
+
+        for ( int i = 0; i < pool.getCount(); i += 997 )
+        {
+            int o = 1 + i * ESParticleSimulation.STRIDE;
+
+            assertEquals ( pool.getX()[i], out.get ( o + ESParticleSimulation.POSITION ), 0.0f );
+            assertEquals ( pool.getZ()[i], out.get ( o + ESParticleSimulation.POSITION + 2 ), 0.0f );
+            assertEquals ( pool.getVelocityY()[i], out.get ( o + ESParticleSimulation.VELOCITY + 1 ), 0.0f );
+            assertEquals ( pool.getAge()[i], out.get ( o + ESParticleSimulation.AGE ), 0.0f );
+            assertEquals ( pool.getLifetime()[i], out.get ( o + ESParticleSimulation.LIFETIME ), 0.0f );
+        }
+    }
+}
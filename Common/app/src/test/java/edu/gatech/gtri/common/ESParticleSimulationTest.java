@@ -0,0 +1,236 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ESParticleSimulationTest
+{
+    private static ESParticleSimulation fountain ( int capacity )
+    {
+        ESParticleSimulation simulation = new ESParticleSimulation ( capacity, 7 );
+
+        simulation.setEmitter ( 1.0f, 2.0f, 3.0f, 0.5f );
+        simulation.setEmitVelocity ( 0.0f, 4.0f, 0.0f, 1.0f );
+        simulation.setLifetime ( 1.0f, 2.0f );
+        simulation.setEmitRate ( 600.0f );
+        simulation.setGravity ( 0.0f, -9.8f, 0.0f );
+        simulation.setDrag ( 0.5f );
+        simulation.setNoise ( 2.0f );
+        return simulation;
+    }
+
+    @Test
+    public void spawnsTheRateOverTime()
+    {
+        ESParticleSimulation simulation = fountain ( 10000 );
+        float[] particles = new float[10000 * ESParticleSimulation.STRIDE];
+
+        assertEquals ( 0, ESParticleSimulation.countAlive ( particles ) );
+
+        // 600 per second at 60 Hz, with fractions carried over at 7 Hz
+        for ( int i = 0; i < 30; i++ )
+        {
+            simulation.step ( particles, 1.0f / 60.0f );
+        }
+
+        assertEquals ( 300, ESParticleSimulation.countAlive ( particles ) );
+
+        for ( int i = 0; i < 7; i++ )
+        {
+            simulation.step ( particles, 1.0f / 7.0f );
+        }
+
+        assertEquals ( 900, simulation.getSpawnFirst() + simulation.getSpawnCount(), 1 );
+    }
+
+    @Test
+    public void spawnsWithinTheEmitter()
+    {
+        ESParticleSimulation simulation = fountain ( 1000 );
+        float[] particles = new float[1000 * ESParticleSimulation.STRIDE];
+
+        simulation.step ( particles, 0.5f );
+
+        for ( int i = 0; i < 300; i++ )
+        {
+            int o = i * ESParticleSimulation.STRIDE;
+
+            assertEquals ( 1.0, particles[o + ESParticleSimulation.POSITION], 0.5 );
+            assertEquals ( 2.0, particles[o + ESParticleSimulation.POSITION + 1], 0.5 );
+            assertEquals ( 3.0, particles[o + ESParticleSimulation.POSITION + 2], 0.5 );
+            assertEquals ( 4.0, particles[o + ESParticleSimulation.VELOCITY + 1], 1.0 );
+            assertEquals ( 0.0f, particles[o + ESParticleSimulation.AGE], 0.0f );
+            assertEquals ( 1.5, particles[o + ESParticleSimulation.LIFETIME], 0.5 );
+        }
+
+        assertEquals ( 0.0f, particles[300 * ESParticleSimulation.STRIDE + ESParticleSimulation.LIFETIME], 0.0f );
+    }
+
+    @Test
+    public void particlesDieAtTheirLifetime()
+    {
+        ESParticleSimulation simulation = fountain ( 1000 );
+        float[] particles = new float[1000 * ESParticleSimulation.STRIDE];
+
+        simulation.step ( particles, 0.1f );
+        simulation.setEmitRate ( 0.0f );
+
+        int spawned = ESParticleSimulation.countAlive ( particles );
+
+        // All live at least 1 s and at most 2 s
+        for ( int i = 0; i < 9; i++ )
+        {
+            simulation.step ( particles, 0.1f );
+        }
+
+        assertEquals ( spawned, ESParticleSimulation.countAlive ( particles ) );
+
+        for ( int i = 0; i < 12; i++ )
+        {
+            simulation.step ( particles, 0.1f );
+        }
+
+        assertEquals ( 0, ESParticleSimulation.countAlive ( particles ) );
+    }
+
+    @Test
+    public void integratesGravityAndDrag()
+    {
+        ESParticleSimulation simulation = new ESParticleSimulation ( 1, 1 );
+        float[] particles = new float[ESParticleSimulation.STRIDE];
+        float dt = 1.0f / 64.0f;
+
+        simulation.setEmitVelocity ( 0.0f, 10.0f, 0.0f, 0.0f );
+        simulation.setLifetime ( 100.0f, 100.0f );
+        simulation.setEmitRate ( 1.0f / dt );
+        simulation.setGravity ( 0.0f, -2.0f, 0.0f );
+        simulation.setDrag ( 1.0f );
+        simulation.step ( particles, dt );
+        simulation.setEmitRate ( 0.0f );
+
+        // Semi-implicit Euler with damping, as the shader
+        double v = 10.0, y = 0.0;
+
+        for ( int i = 0; i < 64; i++ )
+        {
+            simulation.step ( particles, dt );
+            v = ( v - 2.0 * dt ) * ( 1.0 - dt );
+            y += v * dt;
+        }
+
+        assertEquals ( v, particles[ESParticleSimulation.VELOCITY + 1], 1e-4 );
+        assertEquals ( y, particles[ESParticleSimulation.POSITION + 1], 1e-4 );
+        assertEquals ( 0.0f, particles[ESParticleSimulation.POSITION], 0.0f );
+        assertEquals ( 1.0f, particles[ESParticleSimulation.AGE], 0.0f );
+    }
+
+    @Test
+    public void spawnCursorWrapsAroundThePool()
+    {
+        ESParticleSimulation simulation = fountain ( 100 );
+        float[] particles = new float[100 * ESParticleSimulation.STRIDE];
+
+        simulation.setLifetime ( 0.01f, 0.01f );
+        simulation.setEmitRate ( 60.0f * 30.0f );
+
+        // 30 spawns per step: the fourth step spawns 90..99 and 0..19
+        for ( int i = 0; i < 4; i++ )
+        {
+            simulation.step ( particles, 1.0f / 60.0f );
+        }
+
+        assertEquals ( 90, simulation.getSpawnFirst() );
+        assertEquals ( 30, ESParticleSimulation.countAlive ( particles ) );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            boolean alive = particles[i * ESParticleSimulation.STRIDE + ESParticleSimulation.AGE] == 0.0f
+                            && particles[i * ESParticleSimulation.STRIDE + ESParticleSimulation.LIFETIME] > 0.0f;
+
+            assertEquals ( "particle " + i, i >= 90 || i < 20, alive );
+        }
+    }
+
+    @Test
+    public void stepsInPartsAsAWhole()
+    {
+        ESParticleSimulation whole = fountain ( 5000 );
+        ESParticleSimulation parts = fountain ( 5000 );
+        float[] a = new float[5000 * ESParticleSimulation.STRIDE];
+        float[] b = new float[5000 * ESParticleSimulation.STRIDE];
+
+        for ( int frame = 0; frame < 120; frame++ )
+        {
+            whole.step ( a, 1.0f / 60.0f );
+
+            parts.beginStep ( 1.0f / 60.0f );
+            parts.stepParticles ( b, 0, 1234 );
+            parts.stepParticles ( b, 1234, 5000 - 1234 );
+        }
+
+        assertArrayEquals ( a, b, 0.0f );
+    }
+
+    @Test
+    public void sameSeedIsDeterministic()
+    {
+        float[] a = new float[2000 * ESParticleSimulation.STRIDE];
+        float[] b = new float[2000 * ESParticleSimulation.STRIDE];
+        ESParticleSimulation first = fountain ( 2000 );
+        ESParticleSimulation second = fountain ( 2000 );
+        ESParticleSimulation other = new ESParticleSimulation ( 2000, 8 );
+
+        for ( int frame = 0; frame < 60; frame++ )
+        {
+            first.step ( a, 1.0f / 60.0f );
+            second.step ( b, 1.0f / 60.0f );
+        }
+
+        assertArrayEquals ( a, b, 0.0f );
+
+        first.beginStep ( 0.0f );
+        other.beginStep ( 0.0f );
+        assertNotEquals ( first.getFrameKey(), other.getFrameKey() );
+    }
+
+    @Test
+    public void randomNumbersAreUniform()
+    {
+        ESParticleSimulation simulation = new ESParticleSimulation ( 1, 3 );
+        int[] histogram = new int[10];
+
+        simulation.beginStep ( 0.0f );
+
+        for ( int i = 0; i < 100000; i++ )
+        {
+            float r = simulation.random ( i, i % 16 );
+
+            assertTrue ( r >= 0.0f && r < 1.0f );
+            histogram[( int ) ( r * 10.0f )]++;
+        }
+
+        for ( int count : histogram )
+        {
+            assertEquals ( Arrays.toString ( histogram ), 10000, count, 400 );
+        }
+    }
+
+    @Test
+    public void hashMatchesLowbias32()
+    {
+        assertEquals ( 0, ESParticleSimulation.hash ( 0 ) );
+        assertNotEquals ( ESParticleSimulation.hash ( 1 ), ESParticleSimulation.hash ( 2 ) );
+
+        // Reference value from the C version with uint32_t
+        assertEquals ( 0x688990c0, ESParticleSimulation.hash ( 1 ) );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsAnEmptyPool()
+    {
+        new ESParticleSimulation ( 0, 1 );
+    }
+}
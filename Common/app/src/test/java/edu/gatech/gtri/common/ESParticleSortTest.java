@@ -0,0 +1,332 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESParticleSortTest
+{
+    private static final float[] IDENTITY = { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1 };
+
+    private static float[] randomPoints ( int count, long seed )
+    {
+        Random random = new Random ( seed );
+        float[] points = new float[count * 3];
+
+        for ( int i = 0; i < points.length; i++ )
+        {
+            points[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+
+        return points;
+    }
+
+    // Sorted indices are a permutation of the points with keys from back
+    // to front, compared on the bits given
+    private static void assertSorted ( ESParticleSort sort, int count, int shift )
+    {
+        boolean[] seen = new boolean[count];
+        int[] indices = sort.getIndices();
+        int[] keys = sort.getKeys();
+
+        assertEquals ( count, sort.getCount() );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            assertFalse ( seen[indices[i]] );
+            seen[indices[i]] = true;
+
+            if ( i > 0 )
+            {
+                assertTrue ( "index " + i, keys[indices[i - 1]] >>> shift <= keys[indices[i]] >>> shift );
+            }
+        }
+    }
+
+    @Test
+    public void sortsFromBackToFront()
+    {
+        float[] points = randomPoints ( 50000, 1 );
+        ESParticleSort sort = new ESParticleSort ( 50000, null, ESBenchmark.SYSTEM_CLOCK );
+
+        sort.sort ( points, 0, 3, 50000, IDENTITY );
+
+        assertEquals ( ESParticleSort.RADIX, sort.getMethod() );
+        assertSorted ( sort, 50000, 0 );
+
+        // Most negative z first, key 0
+        int[] indices = sort.getIndices();
+
+        assertEquals ( 0, sort.getKeys()[indices[0]] );
+        assertEquals ( ( 1 << ESParticleSort.KEY_BITS ) - 1, sort.getKeys()[indices[49999]] );
+        assertTrue ( points[indices[0] * 3 + 2] < points[indices[49999] * 3 + 2] );
+    }
+
+    @Test
+    public void sortsByTheViewDepth()
+    {
+        // Looking down -x from +x: the farthest points have the lowest x
+        ESTransform view = new ESTransform();
+        float[] points = randomPoints ( 1000, 2 );
+        ESParticleSort sort = new ESParticleSort ( 1000 );
+
+        view.matrixLookAt ( 5.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f );
+        sort.sort ( points, 0, 3, 1000, view.get() );
+
+        int[] indices = sort.getIndices();
+
+        for ( int i = 1; i < 1000; i++ )
+        {
+            assertTrue ( points[indices[i - 1] * 3] <= points[indices[i] * 3] + 1e-4f );
+        }
+    }
+
+    @Test
+    public void parallelSortIsTheSerialOne()
+    {
+        float[] points = randomPoints ( 100000, 3 );
+        ESParticleSort serial = new ESParticleSort ( 100000, null, ESBenchmark.SYSTEM_CLOCK );
+        ESParticleSort parallel = new ESParticleSort ( 100000, new ForkJoinPool ( 4 ), ESBenchmark.SYSTEM_CLOCK );
+
+        serial.sort ( points, 0, 3, 100000, IDENTITY );
+        parallel.sort ( points, 0, 3, 100000, IDENTITY );
+
+        assertArrayEquals ( Arrays.copyOf ( serial.getIndices(), 100000 ), Arrays.copyOf ( parallel.getIndices(), 100000 ) );
+    }
+
+    @Test
+    public void readsArraysPerCoordinate()
+    {
+        float[] points = randomPoints ( 20000, 4 );
+        float[] x = new float[20000], y = new float[20000], z = new float[20000];
+        ESParticleSort interleaved = new ESParticleSort ( 20000 );
+        ESParticleSort separate = new ESParticleSort ( 20000 );
+
+        for ( int i = 0; i < 20000; i++ )
+        {
+            x[i] = points[i * 3];
+            y[i] = points[i * 3 + 1];
+            z[i] = points[i * 3 + 2];
+        }
+
+        interleaved.sort ( points, 0, 3, 20000, IDENTITY );
+        separate.sort ( x, y, z, 20000, IDENTITY );
+
+        assertArrayEquals ( Arrays.copyOf ( interleaved.getIndices(), 20000 ), Arrays.copyOf ( separate.getIndices(), 20000 ) );
+    }
+
+    @Test
+    public void coherentFramesInsertionSort()
+    {
+        float[] points = randomPoints ( 10000, 5 );
+        Random random = new Random ( 6 );
+        ESParticleSort sort = new ESParticleSort ( 10000 );
+
+        sort.sort ( points, 0, 3, 10000, IDENTITY );
+        assertEquals ( ESParticleSort.RADIX, sort.getMethod() );
+
+        // Small moves, and particles coming and going
+        for ( int frame = 0; frame < 10; frame++ )
+        {
+            for ( int i = 0; i < points.length; i++ )
+            {
+                points[i] += ( random.nextFloat() - 0.5f ) * 0.001f;
+            }
+
+            int count = 9000 + frame * 100;
+
+            sort.sort ( points, 0, 3, count, IDENTITY );
+
+            assertEquals ( ESParticleSort.INSERTION, sort.getMethod() );
+            assertSorted ( sort, count, 0 );
+        }
+    }
+
+    @Test
+    public void reorderedPointsAreNotInsertionSorted()
+    {
+        float[] points = randomPoints ( 10000, 14 );
+        ESParticleSort sort = new ESParticleSort ( 10000 );
+
+        sort.sort ( points, 0, 3, 10000, IDENTITY );
+
+        // The same points under other indices, as a pool removal leaves them
+        for ( int i = 0; i < 3; i++ )
+        {
+            float swap = points[i];
+
+            points[i] = points[3 * 9999 + i];
+            points[3 * 9999 + i] = swap;
+        }
+
+        sort.reorder();
+        sort.sort ( points, 0, 3, 10000, IDENTITY );
+        assertEquals ( ESParticleSort.RADIX, sort.getMethod() );
+        assertSorted ( sort, 10000, 0 );
+
+        // Only the next sort
+        sort.sort ( points, 0, 3, 10000, IDENTITY );
+        assertEquals ( ESParticleSort.INSERTION, sort.getMethod() );
+    }
+
+    @Test
+    public void remappedPoolParticlesInsertionSort()
+    {
+        ESParticleSimulation simulation = new ESParticleSimulation ( 10000, 15 );
+        ESParticlePool pool = new ESParticlePool ( simulation, null );
+        ESParticleSort sort = new ESParticleSort ( 10000 );
+
+        simulation.setEmitter ( 0.0f, 0.0f, 0.0f, 1.0f );
+        simulation.setEmitVelocity ( 0.0f, 4.0f, 0.0f, 0.1f );
+        simulation.setLifetime ( 0.5f, 1.0f );
+        simulation.setEmitRate ( 6000.0f );
+        simulation.setGravity ( 0.0f, -9.8f, 0.0f );
+
+        for ( int frame = 0; frame < 60; frame++ )
+        {
+            pool.step ( 1.0f / 60.0f );
+        }
+
+        sort.sort ( pool.getX(), pool.getY(), pool.getZ(), pool.getCount(), IDENTITY );
+
+        // Particles die every step, the others moving to their indices
+        for ( int frame = 0; frame < 10; frame++ )
+        {
+            pool.step ( 1.0f / 60.0f );
+            assertTrue ( pool.hasMoved() );
+
+            sort.remap ( pool.getMoves() );
+            sort.sort ( pool.getX(), pool.getY(), pool.getZ(), pool.getCount(), IDENTITY );
+
+            assertEquals ( ESParticleSort.INSERTION, sort.getMethod() );
+            assertSorted ( sort, pool.getCount(), 0 );
+        }
+    }
+
+    @Test
+    public void shuffledFramesRadixSort()
+    {
+        ESParticleSort sort = new ESParticleSort ( 10000 );
+
+        sort.sort ( randomPoints ( 10000, 7 ), 0, 3, 10000, IDENTITY );
+        sort.sort ( randomPoints ( 10000, 8 ), 0, 3, 10000, IDENTITY );
+
+        assertEquals ( ESParticleSort.RADIX, sort.getMethod() );
+        assertSorted ( sort, 10000, 0 );
+    }
+
+    @Test
+    public void overBudgetSortsInBuckets()
+    {
+        // Every radix sort takes 5 ms
+        ESBenchmark.Clock slow = new ESBenchmark.Clock()
+        {
+            public long nanoTime()
+            {
+                return mNow += 2500000;
+            }
+
+            long mNow;
+        };
+        ESParticleSort sort = new ESParticleSort ( 10000, null, slow );
+
+        sort.sort ( randomPoints ( 10000, 9 ), 0, 3, 10000, IDENTITY );
+
+        assertEquals ( ESParticleSort.RADIX, sort.getMethod() );
+        assertEquals ( 2500000, sort.getRadixNanos() );
+
+        sort.sort ( randomPoints ( 10000, 10 ), 0, 3, 10000, IDENTITY );
+
+        assertEquals ( ESParticleSort.BUCKET, sort.getMethod() );
+        assertSorted ( sort, 10000, ESParticleSort.KEY_BITS - ESParticleSort.RADIX_BITS );
+
+        sort.setBudget ( 3000000 );
+        sort.sort ( randomPoints ( 10000, 11 ), 0, 3, 10000, IDENTITY );
+
+        assertEquals ( ESParticleSort.RADIX, sort.getMethod() );
+    }
+
+    @Test
+    public void retriesTheRadixSortAfterASlowOne()
+    {
+        // The first radix sort takes 5 ms, the others 0.5 ms
+        ESBenchmark.Clock warming = new ESBenchmark.Clock()
+        {
+            public long nanoTime()
+            {
+                return mNow += ++mCalls == 2 ? 5000000 : 500000;
+            }
+
+            long mNow;
+            int mCalls;
+        };
+        ESParticleSort sort = new ESParticleSort ( 10000, null, warming );
+
+        sort.sort ( randomPoints ( 10000, 16 ), 0, 3, 10000, IDENTITY );
+        assertEquals ( 5000000, sort.getRadixNanos() );
+
+        for ( int i = 1; i < ESParticleSort.RADIX_RETRY; i++ )
+        {
+            sort.sort ( randomPoints ( 10000, 16 + i ), 0, 3, 10000, IDENTITY );
+            assertEquals ( ESParticleSort.BUCKET, sort.getMethod() );
+        }
+
+        // Fast again, and kept
+        for ( int i = 0; i < 3; i++ )
+        {
+            sort.sort ( randomPoints ( 10000, 100 + i ), 0, 3, 10000, IDENTITY );
+            assertEquals ( ESParticleSort.RADIX, sort.getMethod() );
+            assertEquals ( 500000, sort.getRadixNanos() );
+            assertSorted ( sort, 10000, 0 );
+        }
+    }
+
+    @Test
+    public void sortsOneHundredThousandInTwoMilliseconds()
+    {
+        float[] points = randomPoints ( 100000, 12 );
+        ESParticleSort sort = new ESParticleSort ( 100000 );
+        long best = Long.MAX_VALUE;
+
+        // Worst case, a full radix sort every time, depths and keys
+        // included; the best run once the JIT is done
+        for ( int i = 0; i < 200; i++ )
+        {
+            sort.reset();
+
+            long start = System.nanoTime();
+
+            sort.sort ( points, 0, 3, 100000, IDENTITY );
+            best = Math.min ( best, System.nanoTime() - start );
+        }
+
+        assertEquals ( ESParticleSort.RADIX, sort.getMethod() );
+        assertTrue ( "best " + best + " ns", best < 2000000 );
+    }
+
+    @Test
+    public void copiesTheIndices()
+    {
+        ESParticleSort sort = new ESParticleSort ( 100 );
+        IntBuffer out = IntBuffer.allocate ( 101 );
+
+        sort.sort ( randomPoints ( 100, 13 ), 0, 3, 100, IDENTITY );
+        out.put ( -1 );
+        sort.copyTo ( out );
+
+        assertEquals ( 101, out.position() );
+        assertEquals ( sort.getIndices()[0], out.get ( 1 ) );
+        assertEquals ( sort.getIndices()[99], out.get ( 100 ) );
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsTooManyPoints()
+    {
+        new ESParticleSort ( 10 ).sort ( new float[33], 0, 3, 11, IDENTITY );
+    }
+}
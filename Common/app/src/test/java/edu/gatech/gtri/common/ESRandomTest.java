@@ -0,0 +1,255 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class ESRandomTest
+{
+    // Reference numbers from the C implementations of the authors
+    @Test
+    public void splitMixMatchesTheReference()
+    {
+        ESRandom random = new ESRandom.SplitMix64 ( 1234567 );
+
+        assertEquals ( 6457827717110365317L, random.nextLong() );
+        assertEquals ( 3203168211198807973L, random.nextLong() );
+        assertEquals ( -8629252141511181193L, random.nextLong() );
+    }
+
+    @Test
+    public void xoroshiroMatchesTheReference()
+    {
+        ESRandom.Xoroshiro128 random = new ESRandom.Xoroshiro128 ( 42 );
+
+        assertEquals ( -1690267358668702685L, random.nextLong() );
+        assertEquals ( 6098722386207918385L, random.nextLong() );
+        assertEquals ( -905081495677017275L, random.nextLong() );
+
+        random.jump();
+        assertEquals ( 1690280486132429899L, random.nextLong() );
+    }
+
+    @Test
+    public void pcgMatchesTheReference()
+    {
+        ESRandom random = new ESRandom.Pcg32 ( 42, 54 );
+
+        assertEquals ( 0xa15c02b7, random.nextInt() );
+        assertEquals ( 0x7b47f409, random.nextInt() );
+        assertEquals ( 0xba1d3330, random.nextInt() );
+    }
+
+    @Test
+    public void sameSeedSameNumbers()
+    {
+        ESRandom[] a = { new ESRandom.SplitMix64 ( 7 ), new ESRandom.Xoroshiro128 ( 7 ), new ESRandom.Pcg32 ( 7, 1 ) };
+        ESRandom[] b = { new ESRandom.SplitMix64 ( 7 ), new ESRandom.Xoroshiro128 ( 7 ), new ESRandom.Pcg32 ( 7, 1 ) };
+
+        for ( int g = 0; g < a.length; g++ )
+        {
+            for ( int i = 0; i < 100; i++ )
+            {
+                assertEquals ( a[g].nextLong(), b[g].nextLong() );
+            }
+
+            assertEquals ( a[g].nextGaussian(), b[g].nextGaussian(), 0.0 );
+        }
+
+        assertNotEquals ( new ESRandom.Pcg32 ( 7, 1 ).nextLong(), new ESRandom.Pcg32 ( 7, 2 ).nextLong() );
+    }
+
+    @Test
+    public void xoroshiroSplitTakesTheCurrentStream()
+    {
+        ESRandom.Xoroshiro128 random = new ESRandom.Xoroshiro128 ( 42 );
+        ESRandom.Xoroshiro128 same = new ESRandom.Xoroshiro128 ( 42 );
+
+        random.nextLong();
+        same.nextLong();
+
+        ESRandom split = random.split();
+
+        assertEquals ( same.nextLong(), split.nextLong() );
+
+        // Parent 2^64 ahead: the reference, two numbers after the seed
+        ESRandom.Xoroshiro128 jumped = new ESRandom.Xoroshiro128 ( 42 );
+
+        jumped.nextLong();
+        jumped.jump();
+        assertEquals ( jumped.nextLong(), random.nextLong() );
+    }
+
+    @Test
+    public void splitsDoNotCorrelate()
+    {
+        ESRandom[] roots = { new ESRandom.SplitMix64 ( 3 ), new ESRandom.Xoroshiro128 ( 3 ), new ESRandom.Pcg32 ( 3, 0 ) };
+
+        for ( ESRandom root : roots )
+        {
+            ESRandom a = root.split();
+            ESRandom b = root.split();
+            int matching = 0;
+
+            // Equal bits of independent numbers are binomial, 32 of 64
+            for ( int i = 0; i < 10000; i++ )
+            {
+                matching += 64 - Long.bitCount ( a.nextLong() ^ b.nextLong() );
+            }
+
+            assertEquals ( 0.5, matching / 640000.0, 0.005 );
+        }
+    }
+
+    @Test
+    public void boundedIntsCoverTheRange()
+    {
+        ESRandom random = ESRandom.create ( 5 );
+        int[] counts = new int[10];
+
+        for ( int i = 0; i < 100000; i++ )
+        {
+            counts[random.nextInt ( 10 )]++;
+        }
+
+        for ( int count : counts )
+        {
+            assertEquals ( 10000, count, 500 );
+        }
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void rejectsABoundOfZero()
+    {
+        ESRandom.create ( 5 ).nextInt ( 0 );
+    }
+
+    @Test
+    public void uniformStaysInRange()
+    {
+        ESRandom random = ESRandom.create ( 8 );
+        float[] out = new float[100002];
+        double sum = 0.0;
+
+        out[0] = -1.0f;
+        out[100001] = -1.0f;
+        random.fillUniform ( out, 1, 100000, 2.0f, 4.0f );
+
+        for ( int i = 1; i <= 100000; i++ )
+        {
+            assertTrue ( out[i] >= 2.0f && out[i] < 4.0f );
+            sum += out[i];
+        }
+
+        assertEquals ( 3.0, sum / 100000, 0.01 );
+        assertEquals ( -1.0f, out[0], 0.0f );
+        assertEquals ( -1.0f, out[100001], 0.0f );
+    }
+
+    @Test
+    public void gaussianHasItsMoments()
+    {
+        ESRandom random = ESRandom.create ( 9 );
+        float[] out = new float[100000];
+        double sum = 0.0, squares = 0.0;
+
+        random.fillGaussian ( out, 0, out.length, 1.0f, 2.0f );
+
+        for ( float v : out )
+        {
+            sum += v;
+            squares += v * v;
+        }
+
+        double mean = sum / out.length;
+
+        assertEquals ( 1.0, mean, 0.03 );
+        assertEquals ( 2.0, Math.sqrt ( squares / out.length - mean * mean ), 0.03 );
+    }
+
+    @Test
+    public void spherePointsAreOnTheSphere()
+    {
+        ESRandom random = ESRandom.create ( 10 );
+        float[] out = new float[30000];
+        double x = 0.0, y = 0.0, z = 0.0;
+
+        random.fillSphere ( out, 0, 10000, 2.0f );
+
+        for ( int i = 0; i < out.length; i += 3 )
+        {
+            float length = ( float ) Math.sqrt ( out[i] * out[i] + out[i + 1] * out[i + 1] + out[i + 2] * out[i + 2] );
+
+            assertEquals ( 2.0f, length, 1e-5f );
+            x += out[i];
+            y += out[i + 1];
+            z += out[i + 2];
+        }
+
+        // Centered on the origin
+        assertEquals ( 0.0, x / 10000, 0.05 );
+        assertEquals ( 0.0, y / 10000, 0.05 );
+        assertEquals ( 0.0, z / 10000, 0.05 );
+    }
+
+    @Test
+    public void diskPointsFillTheDisk()
+    {
+        ESRandom random = ESRandom.create ( 11 );
+        float[] out = new float[20000];
+        int inner = 0;
+
+        random.fillDisk ( out, 0, 10000, 3.0f );
+
+        for ( int i = 0; i < out.length; i += 2 )
+        {
+            double r = Math.sqrt ( out[i] * out[i] + out[i + 1] * out[i + 1] );
+
+            assertTrue ( r <= 3.0 + 1e-5 );
+            inner += r < 1.5 ? 1 : 0;
+        }
+
+        // Uniform by area: a quarter within half the radius
+        assertEquals ( 2500, inner, 150 );
+    }
+
+    @Test
+    public void buffersGetTheNumbersOfArrays()
+    {
+        int count = 5000;
+        float[] expected = new float[count * 3];
+        FloatBuffer buffer = ByteBuffer.allocateDirect ( ( count * 3 + 1 ) * 4 )
+                                       .order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+        ESRandom a = new ESRandom.Pcg32 ( 12, 0 );
+        ESRandom b = new ESRandom.Pcg32 ( 12, 0 );
+
+        a.fillSphere ( expected, 0, count, 1.0f );
+        buffer.put ( 0.0f );
+        b.fillSphere ( buffer, count, 1.0f );
+
+        assertEquals ( count * 3 + 1, buffer.position() );
+
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            assertEquals ( expected[i], buffer.get ( i + 1 ), 0.0f );
+        }
+
+        // The rest likewise, and the generators still in step
+        float[] uniform = new float[count];
+
+        a.fillUniform ( uniform, 0, count, 0.0f, 1.0f );
+        buffer.clear();
+        b.fillUniform ( buffer, count, 0.0f, 1.0f );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            assertEquals ( uniform[i], buffer.get ( i ), 0.0f );
+        }
+
+        assertEquals ( a.nextLong(), b.nextLong() );
+    }
+}
@@ -0,0 +1,194 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class ESRelativeToEyeTest
+{
+    // WGS84 in kilometers
+    private static final double A = 6378.137;
+    private static final double B = 6356.752314245;
+    private static final ESGeodesy GEODESY = new ESGeodesy ( A, B );
+    private static final int GRID = 11;
+
+    // Surface points within half a kilometer of 45N 10E
+    private static double[] surfacePatch ( double halfSizeDegrees )
+    {
+        double[] positions = new double[GRID * GRID * 3];
+
+        for ( int j = 0; j < GRID; j++ )
+        {
+            for ( int i = 0; i < GRID; i++ )
+            {
+                double lon = 10.0 + halfSizeDegrees * ( 2.0 * i / ( GRID - 1 ) - 1.0 );
+                double lat = 45.0 + halfSizeDegrees * ( 2.0 * j / ( GRID - 1 ) - 1.0 );
+                GEODESY.geodeticToEcef ( lon, lat, 0.0, positions, ( j * GRID + i ) * 3 );
+            }
+        }
+
+        return positions;
+    }
+
+    // Look down from the eye towards the center of the Earth, without translation
+    private static float[] rotationOnlyView ( double[] eye )
+    {
+        ESTransform view = new ESTransform();
+        view.matrixLookAt ( 0.0f, 0.0f, 0.0f, ( float ) -eye[0], ( float ) -eye[1], ( float ) -eye[2],
+                            0.0f, 0.0f, 1.0f );
+        return view.get();
+    }
+
+    // m * v for a column-major float matrix, in float arithmetic
+    private static void transformFloat ( float[] m, float x, float y, float z, float[] out )
+    {
+        for ( int row = 0; row < 4; row++ )
+        {
+            out[row] = m[row] * x + m[4 + row] * y + m[8 + row] * z + m[12 + row];
+        }
+    }
+
+    // Largest distance between the eye-space positions of the world points,
+    // transformed exactly in double, and the float results
+    private static double maxError ( double[] positions, double[] eye, float[] rotation, float[][] results )
+    {
+        double maxError = 0.0;
+
+        for ( int i = 0; i < positions.length / 3; i++ )
+        {
+            double dx = positions[i * 3] - eye[0];
+            double dy = positions[i * 3 + 1] - eye[1];
+            double dz = positions[i * 3 + 2] - eye[2];
+            double error = 0.0;
+
+            for ( int row = 0; row < 3; row++ )
+            {
+                double exact = rotation[row] * dx + rotation[4 + row] * dy + rotation[8 + row] * dz;
+                error += ( exact - results[i][row] ) * ( exact - results[i][row] );
+            }
+
+            maxError = Math.max ( maxError, Math.sqrt ( error ) );
+        }
+
+        return maxError;
+    }
+
+    private static float[][] transformRelativeToEye ( double[] positions, double[] eye, float[] rotation )
+    {
+        int count = positions.length / 3;
+        double[] center = new double[3];
+        FloatBuffer offsets = ByteBuffer.allocateDirect ( count * 3 * 4 ).order ( ByteOrder.nativeOrder() ).asFloatBuffer();
+        float[] mvp = new float[16];
+        float[][] results = new float[count][4];
+        ESRelativeToEye rte = new ESRelativeToEye();
+
+        ESRelativeToEye.computeCenter ( positions, count, center );
+        ESRelativeToEye.toRelative ( positions, count, center[0], center[1], center[2], offsets );
+        assertEquals ( count * 3, offsets.position() );
+
+        rte.setEye ( eye[0], eye[1], eye[2] );
+        rte.setViewProjection ( rotation );
+        rte.computeMvp ( center[0], center[1], center[2], mvp );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            transformFloat ( mvp, offsets.get ( i * 3 ), offsets.get ( i * 3 + 1 ), offsets.get ( i * 3 + 2 ), results[i] );
+        }
+
+        return results;
+    }
+
+    // The usual approach: float world positions and a view matrix with the
+    // eye translation
+    private static float[][] transformWorldFloat ( double[] positions, double[] eye )
+    {
+        int count = positions.length / 3;
+        float[][] results = new float[count][4];
+        ESTransform view = new ESTransform();
+
+        view.matrixLookAt ( ( float ) eye[0], ( float ) eye[1], ( float ) eye[2], 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            transformFloat ( view.get(), ( float ) positions[i * 3], ( float ) positions[i * 3 + 1],
+                             ( float ) positions[i * 3 + 2], results[i] );
+        }
+
+        return results;
+    }
+
+    @Test
+    public void closeUpErrorIsBelowAMillimeter()
+    {
+        double[] positions = surfacePatch ( 0.005 );
+        double[] eye = new double[3];
+
+        // 100 m above the center of the patch
+        GEODESY.geodeticToEcef ( 10.0, 45.0, 0.1, eye, 0 );
+        float[] rotation = rotationOnlyView ( eye );
+
+        double rteError = maxError ( positions, eye, rotation, transformRelativeToEye ( positions, eye, rotation ) );
+        double floatError = maxError ( positions, eye, rotation, transformWorldFloat ( positions, eye ) );
+
+        assertTrue ( "relative to eye error " + rteError + " km", rteError < 1e-6 );
+
+        // Float world coordinates are off by tens of centimeters at this scale
+        assertTrue ( "float world error " + floatError + " km", floatError > 1e-4 );
+    }
+
+    @Test
+    public void errorStaysMeterLevelAcrossLargeTiles()
+    {
+        // A level 5 tile is over 600 km across
+        double[] positions = surfacePatch ( 2.8 );
+        double[] eye = new double[3];
+
+        GEODESY.geodeticToEcef ( 10.0, 45.0, 50.0, eye, 0 );
+        float[] rotation = rotationOnlyView ( eye );
+
+        double rteError = maxError ( positions, eye, rotation, transformRelativeToEye ( positions, eye, rotation ) );
+
+        assertTrue ( "relative to eye error " + rteError + " km", rteError < 1e-4 );
+    }
+
+    @Test
+    public void mvpMatchesTranslatedViewProjection()
+    {
+        ESTransform perspective = new ESTransform();
+        perspective.matrixLoadIdentity();
+        perspective.perspective ( 60.0f, 1.5f, 0.1f, 100.0f );
+
+        ESTransform viewProj = new ESTransform();
+        viewProj.matrixMultiply ( rotationOnlyView ( new double[] { 1.0, 2.0, 3.0 } ), perspective.get() );
+
+        ESRelativeToEye rte = new ESRelativeToEye();
+        rte.setEye ( 1.0, 2.0, 3.0 );
+        rte.setViewProjection ( viewProj.get() );
+
+        float[] mvp = new float[16];
+        rte.computeMvp ( 4.0, 6.0, 8.0, mvp );
+
+        // Same as translating by center - eye, then applying the view-projection
+        ESTransform expected = new ESTransform();
+        expected.matrixLoadIdentity();
+        expected.translate ( 3.0f, 4.0f, 5.0f );
+        expected.matrixMultiply ( expected.get(), viewProj.get() );
+
+        assertArrayEquals ( expected.get(), mvp, 1e-5f );
+    }
+
+    @Test
+    public void centerIsBoundingBoxCenter()
+    {
+        double[] positions = { 1.0, -2.0, 5.0, 3.0, 4.0, 7.0, 2.0, 0.0, 9.0 };
+        double[] center = new double[3];
+
+        ESRelativeToEye.computeCenter ( positions, 3, center );
+
+        assertArrayEquals ( new double[] { 2.0, 1.0, 7.0 }, center, 0.0 );
+    }
+}
@@ -0,0 +1,180 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ESRingBufferTest
+{
+    @Test
+    public void allocatesContiguously()
+    {
+        ESRingBuffer ring = new ESRingBuffer ( 100, 2 );
+
+        assertEquals ( 0, ring.allocate ( 30 ) );
+        assertEquals ( 30, ring.allocate ( 20 ) );
+        assertEquals ( 50, ring.getUsed() );
+    }
+
+    @Test
+    public void replacedDataIsFreedAfterFramesInFlight()
+    {
+        ESRingBuffer ring = new ESRingBuffer ( 100, 2 );
+
+        assertEquals ( 0, ring.allocate ( 40 ) );
+        ring.endFrame();
+
+        // Frame 1 replaces frame 0's data
+        assertEquals ( 40, ring.allocate ( 40 ) );
+        ring.endFrame();
+
+        // Frames 2 and 3 still draw frame 1's data, frame 0's data is freed
+        // once frame 1 has left the GPU
+        ring.endFrame();
+        assertEquals ( 80, ring.getUsed() );
+        ring.endFrame();
+        assertEquals ( 40, ring.getUsed() );
+
+        // The data that is still drawn is never freed
+        for ( int i = 0; i < 10; i++ )
+        {
+            ring.endFrame();
+        }
+
+        assertEquals ( 40, ring.getUsed() );
+    }
+
+    @Test
+    public void waitsForTheReplacingFrameBeforeFreeing()
+    {
+        final List<Long> waits = new ArrayList<Long>();
+        final List<Long> deletes = new ArrayList<Long>();
+        ESRingBuffer ring = new ESRingBuffer ( 100, 2, new ESRingBuffer.Fences()
+        {
+            public long insert()
+            {
+                return ++inserted;
+            }
+
+            public void clientWait ( long fence )
+            {
+                waits.add ( fence );
+            }
+
+            public void delete ( long fence )
+            {
+                deletes.add ( fence );
+            }
+
+            long inserted;
+        } );
+
+        // Fences 1 and 2 follow frames 0 and 1
+        ring.allocate ( 40 );
+        ring.endFrame();
+        ring.allocate ( 40 );
+        ring.endFrame();
+        assertTrue ( waits.isEmpty() );
+
+        // Frame 0's data is freed after frame 1, which replaced it, is done
+        ring.endFrame();
+        ring.endFrame();
+        assertEquals ( 40, ring.getUsed() );
+        assertEquals ( Arrays.asList ( 1L, 2L ), waits );
+        assertEquals ( Arrays.asList ( 1L, 2L ), deletes );
+
+        // Frames that replace nothing are not waited for
+        ring.endFrame();
+        ring.endFrame();
+        assertEquals ( 2, waits.size() );
+        assertEquals ( Arrays.asList ( 1L, 2L, 3L, 4L ), deletes );
+    }
+
+    @Test
+    public void wrapsWithoutSplittingRanges()
+    {
+        ESRingBuffer ring = new ESRingBuffer ( 100, 1 );
+
+        assertEquals ( 0, ring.allocate ( 40 ) );
+        ring.endFrame();
+        assertEquals ( 40, ring.allocate ( 40 ) );
+        ring.endFrame();
+        ring.endFrame();
+
+        // 20 left at the end: the range starts over at 0, where frame 0's
+        // data is free now
+        assertEquals ( 0, ring.allocate ( 30 ) );
+        assertEquals ( 40 + 20 + 30, ring.getUsed() );
+        ring.endFrame();
+        ring.endFrame();
+        assertEquals ( 30, ring.getUsed() );
+        assertEquals ( 30, ring.allocate ( 70 ) );
+    }
+
+    @Test
+    public void neverOverwritesFramesInFlight()
+    {
+        ESRingBuffer ring = new ESRingBuffer ( 100, 3 );
+
+        assertEquals ( 0, ring.allocate ( 60 ) );
+        ring.endFrame();
+
+        // No room until frame 0's data is replaced and retired
+        assertEquals ( -1, ring.allocate ( 50 ) );
+        assertEquals ( 60, ring.allocate ( 40 ) );
+        ring.endFrame();
+        assertEquals ( -1, ring.allocate ( 10 ) );
+        ring.endFrame();
+        ring.endFrame();
+        assertEquals ( -1, ring.allocate ( 10 ) );
+        ring.endFrame();
+        assertEquals ( 0, ring.allocate ( 10 ) );
+    }
+
+    @Test
+    public void simulatedStreamNeverOverlapsLiveData()
+    {
+        ESRingBuffer ring = new ESRingBuffer ( 1000, 3 );
+        Random random = new Random ( 1 );
+        int[] drawnStart = new int[4];
+        int[] drawnCount = new int[4];
+        int current = -1, currentCount = 0;
+
+        for ( int frame = 0; frame < 10000; frame++ )
+        {
+            if ( random.nextInt ( 3 ) == 0 )
+            {
+                int count = 1 + random.nextInt ( 300 );
+                int offset = ring.allocate ( count );
+
+                if ( offset >= 0 )
+                {
+                    assertTrue ( offset + count <= 1000 );
+
+                    // The new range may not touch what the last frames drew
+                    for ( int f = 0; f < 4; f++ )
+                    {
+                        if ( drawnCount[f] > 0 )
+                        {
+                            assertTrue ( offset + count <= drawnStart[f] || offset >= drawnStart[f] + drawnCount[f] );
+                        }
+                    }
+
+                    current = offset;
+                    currentCount = count;
+                }
+            }
+
+            drawnStart[frame % 4] = current;
+            drawnCount[frame % 4] = current >= 0 ? currentCount : 0;
+            ring.endFrame();
+        }
+
+        assertTrue ( ring.getAllocations() > 2000 );
+    }
+}
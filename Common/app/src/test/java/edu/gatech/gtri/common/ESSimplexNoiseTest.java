@@ -0,0 +1,121 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ESSimplexNoiseTest
+{
+    // Values of seed 42 when this was written: any change to the seeding,
+    // the tables or the arithmetic changes every generated terrain
+    @Test
+    public void matchesTheRecordedValues()
+    {
+        ESSimplexNoise noise = new ESSimplexNoise ( 42 );
+
+        assertEquals ( -1098062406, Float.floatToIntBits ( noise.noise2D ( 0.3f, 1.7f ) ) );
+        assertEquals ( -1104371411, Float.floatToIntBits ( noise.noise3D ( 0.3f, 1.7f, -2.2f ) ) );
+        assertEquals ( 1038760118, Float.floatToIntBits ( noise.noise4D ( 0.3f, 1.7f, -2.2f, 4.1f ) ) );
+    }
+
+    @Test
+    public void sameSeedSameNoise()
+    {
+        ESSimplexNoise a = new ESSimplexNoise ( 1 );
+        ESSimplexNoise b = new ESSimplexNoise ( 1 );
+        ESSimplexNoise c = new ESSimplexNoise ( 2 );
+        int differ = 0;
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            float x = i * 0.37f, y = i * -0.61f, z = i * 0.13f, w = i * 0.29f;
+
+            assertEquals ( a.noise2D ( x, y ), b.noise2D ( x, y ), 0.0f );
+            assertEquals ( a.noise3D ( x, y, z ), b.noise3D ( x, y, z ), 0.0f );
+            assertEquals ( a.noise4D ( x, y, z, w ), b.noise4D ( x, y, z, w ), 0.0f );
+            differ += a.noise3D ( x, y, z ) != c.noise3D ( x, y, z ) ? 1 : 0;
+        }
+
+        assertTrue ( differ > 90 );
+    }
+
+    @Test
+    public void staysInRange()
+    {
+        ESSimplexNoise noise = new ESSimplexNoise ( 3 );
+        ESRandom random = ESRandom.create ( 3 );
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        double sum = 0.0;
+
+        for ( int i = 0; i < 100000; i++ )
+        {
+            float x = random.nextFloat() * 200.0f - 100.0f;
+            float y = random.nextFloat() * 200.0f - 100.0f;
+            float z = random.nextFloat() * 200.0f - 100.0f;
+            float w = random.nextFloat() * 200.0f - 100.0f;
+            float[] values = { noise.noise2D ( x, y ), noise.noise3D ( x, y, z ), noise.noise4D ( x, y, z, w ) };
+
+            for ( float v : values )
+            {
+                min = Math.min ( min, v );
+                max = Math.max ( max, v );
+                sum += v;
+            }
+        }
+
+        assertTrue ( min >= -1.0f && max <= 1.0f );
+        assertTrue ( min < -0.8f && max > 0.8f );
+        assertEquals ( 0.0, sum / 300000, 0.01 );
+    }
+
+    @Test
+    public void continuous()
+    {
+        ESSimplexNoise noise = new ESSimplexNoise ( 4 );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            float x = i * 0.0137f, y = i * 0.0291f, z = -i * 0.0053f, w = i * 0.0071f;
+            float d = 1e-4f;
+
+            assertEquals ( noise.noise2D ( x, y ), noise.noise2D ( x + d, y + d ), 0.01f );
+            assertEquals ( noise.noise3D ( x, y, z ), noise.noise3D ( x + d, y + d, z + d ), 0.01f );
+            assertEquals ( noise.noise4D ( x, y, z, w ), noise.noise4D ( x + d, y + d, z + d, w + d ), 0.01f );
+        }
+    }
+
+    @Test
+    public void batchesAreThePointsToTheBit()
+    {
+        ESSimplexNoise noise = new ESSimplexNoise ( 5 );
+        ESRandom random = ESRandom.create ( 5 );
+        float[] x = new float[1001], y = new float[1001], z = new float[1001], w = new float[1001];
+        float[] out = new float[1001];
+
+        random.fillUniform ( x, 0, 1001, -50.0f, 50.0f );
+        random.fillUniform ( y, 0, 1001, -50.0f, 50.0f );
+        random.fillUniform ( z, 0, 1001, -50.0f, 50.0f );
+        random.fillUniform ( w, 0, 1001, -50.0f, 50.0f );
+
+        noise.noise2D ( x, y, out, 1, 1000 );
+
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            assertEquals ( noise.noise2D ( x[i], y[i] ), out[i], 0.0f );
+        }
+
+        noise.noise3D ( x, y, z, out, 1, 1000 );
+
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            assertEquals ( noise.noise3D ( x[i], y[i], z[i] ), out[i], 0.0f );
+        }
+
+        noise.noise4D ( x, y, z, w, out, 1, 1000 );
+
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            assertEquals ( noise.noise4D ( x[i], y[i], z[i], w[i] ), out[i], 0.0f );
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class ESTerrainEditorTest
+{
+    private static final int SIZE = 64;
+
+    // Records the regions handed to the GPU
+    private static class RecordingUploader implements ESTerrainEditor.Uploader
+    {
+        public void uploadRegion ( int col, int row, int width, int height, FloatBuffer heights )
+        {
+            calls++;
+            rect = new int[] { col, row, width, height };
+            data = new float[heights.remaining()];
+            heights.get ( data );
+        }
+
+        int calls;
+        int[] rect;
+        float[] data;
+    }
+
+    private static float[] slope()
+    {
+        float[] heights = new float[SIZE * SIZE];
+
+        for ( int row = 0; row < SIZE; row++ )
+        {
+            for ( int col = 0; col < SIZE; col++ )
+            {
+                heights[row * SIZE + col] = 0.25f + 0.005f * col + 0.002f * row;
+            }
+        }
+
+        return heights;
+    }
+
+    private static ESTerrainEditor editor ( float[] heights, ESHeightPyramid pyramid )
+    {
+        return new ESTerrainEditor ( heights, SIZE, SIZE, 2.0f, 2.0f, 0.5f, pyramid, true );
+    }
+
+    @Test
+    public void raiseOnlyTouchesTheBrush()
+    {
+        float[] heights = slope();
+        float[] before = heights.clone();
+        ESTerrainEditor editor = editor ( heights, null );
+
+        assertTrue ( editor.applyBrush ( ESTerrainEditor.BRUSH_RAISE, 20.0f, 30.0f, 5.0f, 0.1f ) );
+
+        for ( int row = 0; row < SIZE; row++ )
+        {
+            for ( int col = 0; col < SIZE; col++ )
+            {
+                int i = row * SIZE + col;
+                float d2 = ( col - 20.0f ) * ( col - 20.0f ) + ( row - 30.0f ) * ( row - 30.0f );
+
+                if ( d2 < 25.0f )
+                {
+                    assertTrue ( heights[i] > before[i] );
+                }
+                else
+                {
+                    assertEquals ( before[i], heights[i], 0.0f );
+                }
+            }
+        }
+
+        assertEquals ( before[30 * SIZE + 20] + 0.1f, heights[30 * SIZE + 20], 1e-6f );
+
+        int[] rect = new int[4];
+        assertTrue ( editor.getDirtyRect ( rect ) );
+        assertArrayEquals ( new int[] { 15, 25, 25, 35 }, rect );
+    }
+
+    @Test
+    public void dirtyRectsAreMergedAndClipped()
+    {
+        ESTerrainEditor editor = editor ( slope(), null );
+        int[] rect = new int[4];
+
+        assertFalse ( editor.isDirty() );
+        editor.applyBrush ( ESTerrainEditor.BRUSH_LOWER, 2.0f, 3.0f, 4.0f, 0.01f );
+        editor.applyBrush ( ESTerrainEditor.BRUSH_LOWER, 10.0f, 8.0f, 2.0f, 0.01f );
+        editor.getDirtyRect ( rect );
+        assertArrayEquals ( new int[] { 0, 0, 12, 10 }, rect );
+
+        // Entirely outside the grid
+        editor.clearDirty();
+        assertFalse ( editor.applyBrush ( ESTerrainEditor.BRUSH_RAISE, -20.0f, 5.0f, 4.0f, 0.1f ) );
+        assertFalse ( editor.isDirty() );
+    }
+
+    @Test
+    public void flushUploadsOnlyTheDirtyRegion()
+    {
+        float[] heights = slope();
+        ESTerrainEditor editor = editor ( heights, null );
+        RecordingUploader uploader = new RecordingUploader();
+
+        editor.applyBrush ( ESTerrainEditor.BRUSH_RAISE, 40.0f, 10.0f, 3.0f, 0.2f );
+        assertTrue ( editor.flush ( uploader ) );
+
+        assertEquals ( 1, uploader.calls );
+        assertArrayEquals ( new int[] { 37, 7, 7, 7 }, uploader.rect );
+
+        for ( int row = 0; row < 7; row++ )
+        {
+            for ( int col = 0; col < 7; col++ )
+            {
+                assertEquals ( heights[( 7 + row ) * SIZE + 37 + col], uploader.data[row * 7 + col], 0.0f );
+            }
+        }
+
+        // Nothing left to upload
+        assertFalse ( editor.isDirty() );
+        assertFalse ( editor.flush ( uploader ) );
+        assertEquals ( 1, uploader.calls );
+    }
+
+    @Test
+    public void derivedDataMatchesFullRecompute()
+    {
+        float[] heights = slope();
+        ESHeightPyramid pyramid = new ESHeightPyramid ( heights, SIZE, SIZE );
+        ESTerrainEditor editor = editor ( heights, pyramid );
+
+        editor.applyBrush ( ESTerrainEditor.BRUSH_RAISE, 12.0f, 50.0f, 6.0f, 0.3f );
+        editor.applyBrush ( ESTerrainEditor.BRUSH_SMOOTH, 14.0f, 48.0f, 4.0f, 0.8f );
+        editor.applyBrush ( ESTerrainEditor.BRUSH_FLATTEN, 63.0f, 0.0f, 7.0f, 1.0f );
+
+        ESTerrainEditor fresh = editor ( heights.clone(), null );
+        assertArrayEquals ( fresh.getNormals(), editor.getNormals(), 1e-6f );
+        ESHeightPyramidTest.assertSamePyramid ( new ESHeightPyramid ( heights, SIZE, SIZE, null ), pyramid );
+    }
+
+    @Test
+    public void normalsAreOptIn()
+    {
+        ESTerrainEditor editor = new ESTerrainEditor ( slope(), SIZE, SIZE, 2.0f, 2.0f, 0.5f, null );
+
+        assertNull ( editor.getNormals() );
+        editor.applyBrush ( ESTerrainEditor.BRUSH_RAISE, 12.0f, 50.0f, 6.0f, 0.3f );
+        assertTrue ( editor.isDirty() );
+    }
+
+    @Test
+    public void normalOfASlope()
+    {
+        ESTerrainEditor editor = editor ( slope(), null );
+        float[] n = editor.getNormals();
+        int i = ( 20 * SIZE + 20 ) * 3;
+
+        // dz/dx = 0.005 * 0.5 / (2 / 63), dz/dy = 0.002 * 0.5 / (2 / 63)
+        float dzdx = 0.005f * 0.5f * 31.5f;
+        float dzdy = 0.002f * 0.5f * 31.5f;
+        float length = ( float ) Math.sqrt ( dzdx * dzdx + dzdy * dzdy + 1.0f );
+
+        assertEquals ( -dzdx / length, n[i], 1e-5f );
+        assertEquals ( -dzdy / length, n[i + 1], 1e-5f );
+        assertEquals ( 1.0f / length, n[i + 2], 1e-5f );
+    }
+
+    @Test
+    public void flattenAndSmooth()
+    {
+        float[] heights = slope();
+        ESTerrainEditor editor = editor ( heights, null );
+        float center = heights[32 * SIZE + 32];
+
+        editor.applyBrush ( ESTerrainEditor.BRUSH_FLATTEN, 32.0f, 32.0f, 10.0f, 1.0f );
+
+        // Full weight at the center, partial towards the rim
+        assertEquals ( center, heights[32 * SIZE + 33], 1e-3f );
+        assertTrue ( Math.abs ( heights[32 * SIZE + 40] - center ) < Math.abs ( 0.005f * 8 ) );
+
+        // Smoothing a spike spreads it out
+        float[] spike = new float[SIZE * SIZE];
+        spike[10 * SIZE + 10] = 1.0f;
+        ESTerrainEditor smoother = editor ( spike, null );
+
+        smoother.applyBrush ( ESTerrainEditor.BRUSH_SMOOTH, 10.0f, 10.0f, 3.0f, 1.0f );
+        assertEquals ( 1.0f / 9.0f, spike[10 * SIZE + 10], 1e-6f );
+        assertTrue ( spike[10 * SIZE + 11] > 0.0f );
+    }
+
+    @Test
+    public void heightsStayNormalized()
+    {
+        float[] heights = slope();
+        ESTerrainEditor editor = editor ( heights, null );
+
+        editor.applyBrush ( ESTerrainEditor.BRUSH_RAISE, 5.0f, 5.0f, 4.0f, 5.0f );
+        editor.applyBrush ( ESTerrainEditor.BRUSH_LOWER, 50.0f, 50.0f, 4.0f, 5.0f );
+
+        assertEquals ( 1.0f, heights[5 * SIZE + 5], 0.0f );
+        assertEquals ( 0.0f, heights[50 * SIZE + 50], 0.0f );
+    }
+}
@@ -0,0 +1,365 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class ESTextureCacheTest
+{
+    // Every image is 16 x 16 RGBA, 1 KiB
+    private static final int IMAGE_BYTES = 16 * 16 * 4;
+
+    // Decodes "name" into an image, "missing*" keys fail
+    private static class FakeDecoder implements ESTextureCache.Decoder
+    {
+        public ESTextureCache.Image decode ( String key )
+        {
+            synchronized ( this )
+            {
+                decoded.add ( key );
+            }
+
+            return key.startsWith ( "missing" ) ? null : new ESTextureCache.Image ( key, 16, 16, 4 );
+        }
+
+        public void recycle ( ESTextureCache.Image image )
+        {
+            recycled.add ( ( String ) image.getPixels() );
+        }
+
+        final List<String> decoded = new ArrayList<String>();
+        final List<String> recycled = new ArrayList<String>();
+    }
+
+    // Hands out texture names and advances the clock by 3 ms per upload
+    private class FakeBackend implements ESTextureCache.Backend
+    {
+        public int upload ( ESTextureCache.Image image )
+        {
+            uploaded.add ( ( String ) image.getPixels() );
+            live.add ( nextTexture );
+            now += 3000000L;
+            return nextTexture++;
+        }
+
+        public void delete ( int texture )
+        {
+            assertTrue ( "deleted twice", live.remove ( texture ) );
+            deleted.add ( texture );
+        }
+
+        public long getSizeInBytes ( ESTextureCache.Image image )
+        {
+            return ( long ) image.getWidth() * image.getHeight() * image.getBytesPerTexel();
+        }
+
+        final List<String> uploaded = new ArrayList<String>();
+        final List<Integer> deleted = new ArrayList<Integer>();
+        final Set<Integer> live = new HashSet<Integer>();
+        int nextTexture = 1;
+    }
+
+    // Runs decodes when the test says so
+    private static class ManualExecutor implements Executor
+    {
+        public void execute ( Runnable r )
+        {
+            queue.add ( r );
+        }
+
+        void runAll()
+        {
+            while ( !queue.isEmpty() )
+            {
+                queue.remove ( 0 ).run();
+            }
+        }
+
+        final List<Runnable> queue = new ArrayList<Runnable>();
+    }
+
+    private FakeDecoder decoder;
+    private FakeBackend backend;
+    private ManualExecutor executor;
+    private ESTextureCache cache;
+    private long now;
+
+    @Before
+    public void setUp()
+    {
+        decoder = new FakeDecoder();
+        backend = new FakeBackend();
+        executor = new ManualExecutor();
+        cache = new ESTextureCache ( decoder, backend, 4 * IMAGE_BYTES, executor, new ESTextureCache.Clock()
+        {
+            public long nanoTime()
+            {
+                return now;
+            }
+        } );
+    }
+
+    // Decode and upload everything that is pending
+    private void settle()
+    {
+        executor.runAll();
+        cache.processUploads ( Long.MAX_VALUE );
+    }
+
+    @Test
+    public void missThenHit()
+    {
+        ESTextureCache.Entry a = cache.acquire ( "a" );
+
+        assertEquals ( 1, cache.getMisses() );
+        assertEquals ( 0, a.getTexture() );
+        assertFalse ( a.isReady() );
+        assertEquals ( 1, cache.getPendingDecodes() );
+
+        // Nothing is uploaded before the decode finished
+        assertEquals ( 0, cache.processUploads ( Long.MAX_VALUE ) );
+
+        settle();
+        assertTrue ( a.isReady() );
+        assertNotEquals ( 0, a.getTexture() );
+        assertEquals ( a.getTexture(), cache.peek ( "a" ) );
+        assertEquals ( IMAGE_BYTES, cache.getBytesResident() );
+        assertEquals ( 0, cache.getPendingDecodes() );
+        assertEquals ( 1, cache.getUploads() );
+
+        // The decoded image is freed after upload
+        assertEquals ( 1, decoder.recycled.size() );
+
+        // Released textures stay cached
+        cache.release ( a );
+        ESTextureCache.Entry again = cache.acquire ( "a" );
+        assertSame ( a, again );
+        assertEquals ( 1, cache.getHits() );
+        assertEquals ( 1, decoder.decoded.size() );
+
+        // Each acquire adds a reference
+        cache.acquire ( "a" );
+        assertEquals ( 2, a.getRefCount() );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedUnreferenced()
+    {
+        ESTextureCache.Entry[] entries = new ESTextureCache.Entry[6];
+
+        for ( int i = 0; i < 6; i++ )
+        {
+            entries[i] = cache.acquire ( "t" + i );
+        }
+
+        settle();
+
+        // Over budget but everything is referenced
+        assertEquals ( 6 * IMAGE_BYTES, cache.getBytesResident() );
+        assertEquals ( 0, cache.getEvictions() );
+
+        for ( int i = 0; i < 6; i++ )
+        {
+            cache.release ( entries[i] );
+        }
+
+        int texture1 = entries[1].getTexture();
+        int texture2 = entries[2].getTexture();
+
+        // t0 was used recently, so t1 and t2 are the oldest
+        cache.peek ( "t0" );
+        cache.trim();
+
+        assertEquals ( 2, cache.getEvictions() );
+        assertEquals ( 4 * IMAGE_BYTES, cache.getBytesResident() );
+        assertEquals ( 0, cache.peek ( "t1" ) );
+        assertEquals ( 0, cache.peek ( "t2" ) );
+        assertNotEquals ( 0, cache.peek ( "t0" ) );
+        assertNotEquals ( 0, cache.peek ( "t3" ) );
+        assertEquals ( texture1, ( int ) backend.deleted.get ( 0 ) );
+        assertEquals ( texture2, ( int ) backend.deleted.get ( 1 ) );
+        assertEquals ( 2, backend.deleted.size() );
+        assertEquals ( 0, entries[1].getTexture() );
+
+        // An evicted key is a miss again
+        long misses = cache.getMisses();
+        cache.acquire ( "t1" );
+        assertEquals ( misses + 1, cache.getMisses() );
+    }
+
+    @Test
+    public void referencedTexturesSurviveBudgetChanges()
+    {
+        ESTextureCache.Entry kept = cache.acquire ( "kept" );
+        ESTextureCache.Entry dropped = cache.acquire ( "dropped" );
+
+        settle();
+        cache.release ( dropped );
+        cache.setByteBudget ( 0 );
+        cache.trim();
+
+        assertTrue ( kept.isReady() );
+        assertEquals ( 0, cache.peek ( "dropped" ) );
+        assertEquals ( IMAGE_BYTES, cache.getBytesResident() );
+        assertEquals ( 1, cache.getNumEntries() );
+    }
+
+    @Test
+    public void uploadsAreTimeSliced()
+    {
+        for ( int i = 0; i < 7; i++ )
+        {
+            cache.acquire ( "t" + i );
+        }
+
+        executor.runAll();
+
+        // Each upload takes 3 ms, a 5 ms slice fits two
+        assertEquals ( 2, cache.processUploads ( 5000000L ) );
+        assertEquals ( 2, cache.processUploads ( 5000000L ) );
+
+        // At least one upload per call, so loading always makes progress
+        assertEquals ( 1, cache.processUploads ( 0L ) );
+        assertEquals ( 2, cache.processUploads ( 5000000L ) );
+        assertEquals ( 0, cache.processUploads ( 5000000L ) );
+
+        assertEquals ( 7, cache.getUploads() );
+        assertEquals ( "t0", backend.uploaded.get ( 0 ) );
+        assertEquals ( "t6", backend.uploaded.get ( 6 ) );
+    }
+
+    @Test
+    public void releasedBeforeUploadIsDropped()
+    {
+        ESTextureCache.Entry entry = cache.acquire ( "late" );
+
+        cache.release ( entry );
+        settle();
+
+        assertTrue ( backend.uploaded.isEmpty() );
+        assertEquals ( 1, decoder.recycled.size() );
+        assertEquals ( 0, cache.getNumEntries() );
+        assertEquals ( 0, cache.getBytesResident() );
+    }
+
+    @Test
+    public void failedDecodeIsRetriedAfterRelease()
+    {
+        ESTextureCache.Entry entry = cache.acquire ( "missing" );
+
+        settle();
+        assertTrue ( entry.isFailed() );
+        assertEquals ( 0, entry.getTexture() );
+        assertEquals ( 1, cache.getDecodeFailures() );
+
+        // Further references share the failure
+        assertSame ( entry, cache.acquire ( "missing" ) );
+        assertEquals ( 1, decoder.decoded.size() );
+
+        cache.release ( entry );
+        cache.release ( entry );
+        assertEquals ( 0, cache.getNumEntries() );
+
+        cache.acquire ( "missing" );
+        settle();
+        assertEquals ( 2, decoder.decoded.size() );
+        assertEquals ( 2, cache.getDecodeFailures() );
+    }
+
+    @Test ( expected = IllegalStateException.class )
+    public void releaseWithoutReferenceThrows()
+    {
+        ESTextureCache.Entry entry = cache.acquire ( "a" );
+
+        cache.release ( entry );
+        cache.release ( entry );
+    }
+
+    @Test
+    public void invalidateReloadsReferencedTextures()
+    {
+        ESTextureCache.Entry kept = cache.acquire ( "kept" );
+        ESTextureCache.Entry released = cache.acquire ( "released" );
+        ESTextureCache.Entry inFlight;
+
+        settle();
+        cache.release ( released );
+
+        // A decode started before the context loss must not be uploaded
+        inFlight = cache.acquire ( "inFlight" );
+        executor.runAll();
+
+        cache.invalidate();
+
+        // The old textures died with the context, nothing is deleted
+        assertTrue ( backend.deleted.isEmpty() );
+        assertEquals ( 0, cache.getBytesResident() );
+        assertEquals ( 0, kept.getTexture() );
+        assertEquals ( 2, cache.getNumEntries() );
+
+        settle();
+        assertTrue ( kept.isReady() );
+        assertTrue ( inFlight.isReady() );
+        assertEquals ( 0, cache.peek ( "released" ) );
+        assertEquals ( 2 * IMAGE_BYTES, cache.getBytesResident() );
+
+        // kept, released, then the two reloads; the stale inFlight image is recycled
+        assertEquals ( 4, backend.uploaded.size() );
+        assertEquals ( 5, decoder.recycled.size() );
+    }
+
+    @Test
+    public void acquireNowUploadsImmediately()
+    {
+        ESTextureCache.Entry entry = cache.acquireNow ( "now" );
+
+        assertTrue ( entry.isReady() );
+        assertNotEquals ( 0, entry.getTexture() );
+
+        // Decoded once, on the calling thread, with nothing queued
+        assertTrue ( executor.queue.isEmpty() );
+        settle();
+        assertEquals ( 1, decoder.decoded.size() );
+        assertEquals ( 1, backend.uploaded.size() );
+        assertEquals ( 0, cache.getPendingDecodes() );
+    }
+
+    @Test
+    public void decodesOnWorkerThreads() throws Exception
+    {
+        ExecutorService pool = ESTextureCache.newDecodePool ( 4 );
+        ESTextureCache threaded = new ESTextureCache ( decoder, backend, 1000 * IMAGE_BYTES, pool );
+        List<ESTextureCache.Entry> entries = new ArrayList<ESTextureCache.Entry>();
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            entries.add ( threaded.acquire ( "t" + i ) );
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while ( threaded.getUploads() < 200 && System.currentTimeMillis() < deadline )
+        {
+            threaded.processUploads ( 1000000L );
+            Thread.sleep ( 1 );
+        }
+
+        pool.shutdown();
+
+        for ( ESTextureCache.Entry entry : entries )
+        {
+            assertTrue ( entry.getKey(), entry.isReady() );
+        }
+
+        assertEquals ( 200, new HashSet<Integer> ( backend.live ).size() );
+        assertEquals ( 0, threaded.getPendingDecodes() );
+    }
+}
@@ -0,0 +1,156 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ESTileArchiveTest
+{
+    // Recognizable content of a tile
+    private static byte[] tileData ( int level, int x, int y )
+    {
+        byte[] data = new byte[1 + ( level * 31 + x * 7 + y ) % 50];
+
+        for ( int i = 0; i < data.length; i++ )
+        {
+            data[i] = ( byte ) ( level * 100 + x * 10 + y + i );
+        }
+
+        return data;
+    }
+
+    @Test
+    public void tilesWrittenInAnyOrderFromSeveralThreadsReadBack() throws Exception
+    {
+        File file = File.createTempFile ( "tiles", ".esta" );
+        final ESTileArchive.Writer writer = new ESTileArchive.Writer ( file, 256, 2, 1, 4, 3, 1 );
+        final List<int[]> tiles = new ArrayList<int[]>();
+
+        for ( int level = 0; level < 4; level++ )
+        {
+            for ( int y = 0; y < 1 << level; y++ )
+            {
+                for ( int x = 0; x < 2 << level; x++ )
+                {
+                    // Leave one tile out
+                    if ( level != 2 || x != 3 || y != 1 )
+                    {
+                        tiles.add ( new int[] { level, x, y } );
+                    }
+                }
+            }
+        }
+
+        Collections.shuffle ( tiles, new Random ( 1 ) );
+
+        Thread[] threads = new Thread[4];
+
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int first = t;
+
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for ( int i = first; i < tiles.size(); i += 4 )
+                        {
+                            int[] tile = tiles.get ( i );
+                            byte[] data = tileData ( tile[0], tile[1], tile[2] );
+                            writer.writeTile ( tile[0], tile[1], tile[2], data, data.length );
+                        }
+                    }
+                    catch ( IOException ioe )
+                    {
+                        throw new RuntimeException ( ioe );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        writer.close();
+
+        ESTileArchive archive = new ESTileArchive ( file );
+
+        assertEquals ( 256, archive.getTileSize() );
+        assertEquals ( 4, archive.getNumLevels() );
+        assertEquals ( 3, archive.getChannels() );
+        assertEquals ( 1, archive.getBytesPerSample() );
+        assertEquals ( 16, archive.getTilesX ( 3 ) );
+        assertEquals ( 8, archive.getTilesY ( 3 ) );
+
+        for ( int[] tile : tiles )
+        {
+            assertTrue ( archive.hasTile ( tile[0], tile[1], tile[2] ) );
+            assertArrayEquals ( tileData ( tile[0], tile[1], tile[2] ), archive.readTile ( tile[0], tile[1], tile[2] ) );
+        }
+
+        assertFalse ( archive.hasTile ( 2, 3, 1 ) );
+        assertNull ( archive.readTile ( 2, 3, 1 ) );
+        assertFalse ( archive.hasTile ( 4, 0, 0 ) );
+        assertFalse ( archive.hasTile ( 1, 4, 0 ) );
+        assertFalse ( archive.hasTile ( 1, 0, -1 ) );
+
+        archive.close();
+        file.delete();
+    }
+
+    @Test
+    public void tileIsWrittenOnce() throws IOException
+    {
+        File file = File.createTempFile ( "tiles", ".esta" );
+        ESTileArchive.Writer writer = new ESTileArchive.Writer ( file, 64, 1, 1, 2, 1, 2 );
+
+        writer.writeTile ( 1, 1, 1, new byte[4], 4 );
+
+        try
+        {
+            writer.writeTile ( 1, 1, 1, new byte[4], 4 );
+            fail();
+        }
+        catch ( IllegalStateException expected )
+        {
+        }
+
+        try
+        {
+            writer.writeTile ( 1, 2, 0, new byte[4], 4 );
+            fail();
+        }
+        catch ( IllegalArgumentException expected )
+        {
+        }
+
+        writer.close();
+        file.delete();
+    }
+
+    @Test ( expected = IOException.class )
+    public void rejectsOtherFiles() throws IOException
+    {
+        File file = File.createTempFile ( "tiles", ".esta" );
+        FileOutputStream os = new FileOutputStream ( file );
+
+        file.deleteOnExit();
+        os.write ( new byte[64] );
+        os.close();
+
+        new ESTileArchive ( file );
+    }
+}
@@ -0,0 +1,90 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ESTransformTest
+{
+    private static final float NEAR = 0.001f;
+    private static final float FAR = 20000.0f;
+
+    // Normalized device depth of a point on the view axis at distance d
+    private static double ndcDepth ( float[] m, double d )
+    {
+        double z = -d;
+        double clipZ = m[2 * 4 + 2] * z + m[3 * 4 + 2];
+        double clipW = m[2 * 4 + 3] * z + m[3 * 4 + 3];
+        return clipZ / clipW;
+    }
+
+    // Logarithmic depth as written by the vertex shader, divided by w
+    private static double logNdcDepth ( float factor, double w )
+    {
+        return Math.log ( Math.max ( 1e-6, 1.0 + w ) ) / Math.log ( 2.0 ) * factor - 1.0;
+    }
+
+    // Window depth quantized to a 24-bit fixed point buffer
+    private static long quantize ( double ndc )
+    {
+        return Math.round ( ( ndc * 0.5 + 0.5 ) * ( ( 1 << 24 ) - 1 ) );
+    }
+
+    private static float[] perspective ( int depthMode )
+    {
+        ESTransform transform = new ESTransform();
+        transform.matrixLoadIdentity();
+        transform.perspective ( 60.0f, 1.0f, NEAR, FAR, depthMode );
+        return transform.get();
+    }
+
+    @Test
+    public void standardDepthMatchesPerspective()
+    {
+        ESTransform transform = new ESTransform();
+        transform.matrixLoadIdentity();
+        transform.perspective ( 60.0f, 1.0f, NEAR, FAR );
+
+        assertArrayEquals ( transform.get(), perspective ( ESTransform.DEPTH_STANDARD ), 0.0f );
+        assertEquals ( -1.0, ndcDepth ( transform.get(), NEAR ), 1e-4 );
+        assertEquals ( 1.0, ndcDepth ( transform.get(), FAR ), 1e-4 );
+    }
+
+    @Test
+    public void logarithmicDepthCoversRange()
+    {
+        float factor = ESTransform.logDepthFactor ( FAR );
+
+        assertEquals ( -1.0, logNdcDepth ( factor, 0.0 ), 1e-6 );
+        assertEquals ( 1.0, logNdcDepth ( factor, FAR ), 1e-5 );
+
+        double previous = -2.0;
+
+        for ( double w = 0.001; w < FAR; w *= 1.5 )
+        {
+            double depth = logNdcDepth ( factor, w );
+            assertTrue ( depth > previous );
+            previous = depth;
+        }
+    }
+
+    @Test
+    public void logarithmicDepthResolvesMetersAtAllDistances()
+    {
+        float factor = ESTransform.logDepthFactor ( FAR );
+        float[] standard = perspective ( ESTransform.DEPTH_STANDARD );
+        boolean standardResolves = true;
+
+        // Two surfaces one meter apart, from a meter to a thousand kilometers
+        for ( double d = 0.001; d <= 1000.0; d *= 10.0 )
+        {
+            assertNotEquals ( "at " + d + " km", quantize ( logNdcDepth ( factor, d ) ),
+                              quantize ( logNdcDepth ( factor, d + 0.001 ) ) );
+
+            standardResolves &= quantize ( ndcDepth ( standard, d ) ) != quantize ( ndcDepth ( standard, d + 0.001 ) );
+        }
+
+        // A 1 m near plane with the far plane past the horizon cannot
+        assertFalse ( standardResolves );
+    }
+}
@@ -0,0 +1,275 @@
+package edu.gatech.gtri.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ESVectorLayerTest
+{
+    // Maps longitude, latitude straight to x, y
+    private static final ESVectorLayer.Projection PLANE = new ESVectorLayer.Projection()
+    {
+        public void project ( double lon, double lat, double[] out, int offset )
+        {
+            out[offset] = lon;
+            out[offset + 1] = lat;
+            out[offset + 2] = 0.0;
+        }
+    };
+
+    static ESVectorLayer randomLayer ( int numFeatures, long seed )
+    {
+        Random random = new Random ( seed );
+        ESVectorLayer layer = new ESVectorLayer();
+
+        for ( int f = 0; f < numFeatures; f++ )
+        {
+            int n = 3 + random.nextInt ( 60 );
+            double cx = -180.0 + 360.0 * random.nextDouble();
+            double cy = -60.0 + 120.0 * random.nextDouble();
+            double[] lonLat = new double[n * 2];
+
+            for ( int i = 0; i < n; i++ )
+            {
+                double angle = 2.0 * Math.PI * i / n;
+                double radius = 0.5 + random.nextDouble();
+
+                lonLat[i * 2] = cx + radius * Math.cos ( angle );
+                lonLat[i * 2 + 1] = cy + radius * Math.sin ( angle );
+            }
+
+            if ( random.nextBoolean() )
+            {
+                layer.addPolygon ( lonLat, null, n );
+            }
+            else
+            {
+                layer.addPolyline ( lonLat, n );
+            }
+        }
+
+        return layer;
+    }
+
+    @Test
+    public void writeAndReadBack() throws IOException
+    {
+        ESVectorLayer layer = randomLayer ( 50, 1 );
+        double[] holed = { 0, 0, 10, 0, 10, 10, 0, 10, 2, 2, 2, 8, 8, 8, 8, 2 };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        layer.addPolygon ( holed, new int[] { 4 }, 8 );
+        layer.write ( bytes );
+
+        ESVectorLayer read = ESVectorLayer.read ( new ByteArrayInputStream ( bytes.toByteArray() ) );
+
+        assertEquals ( layer.getNumFeatures(), read.getNumFeatures() );
+
+        for ( int f = 0; f < layer.getNumFeatures(); f++ )
+        {
+            assertEquals ( layer.getFeatureType ( f ), read.getFeatureType ( f ) );
+            assertEquals ( layer.getFeatureNumPoints ( f ), read.getFeatureNumPoints ( f ) );
+        }
+
+        // Same features give the same geometry
+        layer.build ( PLANE, null );
+        read.build ( PLANE, null );
+        assertEquals ( layer.getFillVertices(), read.getFillVertices() );
+        assertEquals ( layer.getFillIndices(), read.getFillIndices() );
+        assertEquals ( layer.getLineVertices(), read.getLineVertices() );
+    }
+
+    @Test ( expected = IOException.class )
+    public void readRejectsOtherData() throws IOException
+    {
+        ESVectorLayer.read ( new ByteArrayInputStream ( new byte[64] ) );
+    }
+
+    @Test
+    public void parallelBuildMatchesSequential()
+    {
+        ESVectorLayer layer = randomLayer ( 500, 2 );
+        ForkJoinPool pool = new ForkJoinPool ( 4 );
+
+        layer.setMaxSegmentAngle ( 0.25 );
+        layer.build ( PLANE, null );
+
+        FloatBuffer fill = layer.getFillVertices();
+        IntBuffer indices = layer.getFillIndices();
+        FloatBuffer lines = layer.getLineVertices();
+        IntBuffer lineIndices = layer.getLineIndices();
+
+        layer.build ( PLANE, pool );
+        pool.shutdown();
+
+        assertEquals ( fill, layer.getFillVertices() );
+        assertEquals ( indices, layer.getFillIndices() );
+        assertEquals ( lines, layer.getLineVertices() );
+        assertEquals ( lineIndices, layer.getLineIndices() );
+    }
+
+    @Test
+    public void polygonFillIsRelativeToCenter()
+    {
+        ESVectorLayer layer = new ESVectorLayer();
+
+        layer.addPolygon ( new double[] { 10, 20, 12, 20, 12, 24, 10, 24 }, null, 4 );
+        layer.build ( PLANE, null );
+
+        assertArrayEquals ( new double[] { 11, 22, 0 }, layer.getCenter(), 0.0 );
+        assertEquals ( 4, layer.getNumFillVertices() );
+        assertEquals ( 6, layer.getNumFillIndices() );
+        assertEquals ( -1.0f, layer.getFillVertices().get ( 0 ), 0.0f );
+        assertEquals ( -2.0f, layer.getFillVertices().get ( 1 ), 0.0f );
+        assertEquals ( 0, layer.getNumLineIndices() );
+    }
+
+    @Test
+    public void linesAreExtrudableQuads()
+    {
+        ESVectorLayer layer = new ESVectorLayer();
+        int floats = ESVectorLayer.LINE_VERTEX_FLOATS;
+
+        layer.addPolyline ( new double[] { 0, 0, 4, 0, 4, 2 }, 3 );
+        layer.build ( PLANE, null );
+
+        // Two segments of four vertices and two triangles each
+        assertEquals ( 8, layer.getNumLineVertices() );
+        assertEquals ( 12, layer.getNumLineIndices() );
+
+        FloatBuffer v = layer.getLineVertices();
+        double[] c = layer.getCenter();
+
+        // First segment: both ends point at each other, sides alternate
+        assertEquals ( 0.0, v.get ( 0 ) + c[0], 1e-6 );
+        assertEquals ( 4.0, v.get ( 3 ) + c[0], 1e-6 );
+        assertEquals ( 1.0f, v.get ( 6 ), 0.0f );
+        assertEquals ( -1.0f, v.get ( floats + 6 ), 0.0f );
+        assertEquals ( 4.0, v.get ( 2 * floats ) + c[0], 1e-6 );
+        assertEquals ( 0.0, v.get ( 2 * floats + 3 ) + c[0], 1e-6 );
+        assertEquals ( -1.0f, v.get ( 2 * floats + 6 ), 0.0f );
+        assertEquals ( 1.0f, v.get ( 3 * floats + 6 ), 0.0f );
+
+        // Second segment starts at the joint
+        assertEquals ( 4.0, v.get ( 4 * floats ) + c[0], 1e-6 );
+        assertEquals ( 2.0, v.get ( 4 * floats + 4 ) + c[1], 1e-6 );
+
+        // Both triangles of a quad cover all four corners
+        IntBuffer indices = layer.getLineIndices();
+        boolean[] used = new boolean[8];
+
+        for ( int i = 0; i < 12; i++ )
+        {
+            used[indices.get ( i )] = true;
+            assertEquals ( i / 6, indices.get ( i ) / 4 );
+        }
+
+        for ( boolean u : used )
+        {
+            assertTrue ( u );
+        }
+    }
+
+    @Test
+    public void subdivisionLimitsEdgesWithoutCracks()
+    {
+        ESVectorLayer layer = new ESVectorLayer();
+        double max = 0.5;
+
+        layer.addPolygon ( new double[] { 0, 0, 10, 0, 10, 10, 0, 10, 4, 4, 4, 6, 6, 6, 6, 4 }, new int[] { 4 }, 8 );
+        layer.addPolyline ( new double[] { 0, 0, 3, 4 }, 2 );
+        layer.setMaxSegmentAngle ( max );
+        layer.build ( PLANE, null );
+
+        FloatBuffer v = layer.getFillVertices();
+        IntBuffer indices = layer.getFillIndices();
+        HashMap<Long, Integer> edges = new HashMap<Long, Integer>();
+        double area = 0.0;
+
+        for ( int t = 0; t < layer.getNumFillIndices(); t += 3 )
+        {
+            int[] tri = { indices.get ( t ), indices.get ( t + 1 ), indices.get ( t + 2 ) };
+
+            double ax = v.get ( tri[0] * 3 ), ay = v.get ( tri[0] * 3 + 1 );
+            double bx = v.get ( tri[1] * 3 ), by = v.get ( tri[1] * 3 + 1 );
+            double cx = v.get ( tri[2] * 3 ), cy = v.get ( tri[2] * 3 + 1 );
+            double a = ( bx - ax ) * ( cy - ay ) - ( cx - ax ) * ( by - ay );
+
+            assertTrue ( a > 0.0 );
+            area += a * 0.5;
+
+            for ( int e = 0; e < 3; e++ )
+            {
+                int i0 = tri[e];
+                int i1 = tri[( e + 1 ) % 3];
+                double dx = v.get ( i1 * 3 ) - v.get ( i0 * 3 );
+                double dy = v.get ( i1 * 3 + 1 ) - v.get ( i0 * 3 + 1 );
+
+                assertTrue ( Math.hypot ( dx, dy ) <= max + 1e-5 );
+
+                // Count each directed edge; an interior edge must be matched
+                // by its reverse in the neighbour
+                long key = ( ( long ) i0 << 32 ) | i1;
+                edges.put ( key, edges.containsKey ( key ) ? edges.get ( key ) + 1 : 1 );
+            }
+        }
+
+        assertEquals ( 100.0 - 4.0, area, 1e-3 );
+
+        // Boundary edges have no reverse; there are as many as the
+        // subdivided rings have segments, 10 / 32 along the outside and
+        // 2 / 4 around the hole
+        int boundary = 0;
+
+        for ( long key : edges.keySet() )
+        {
+            assertEquals ( 1, ( int ) edges.get ( key ) );
+
+            if ( !edges.containsKey ( ( key << 32 ) | ( key >>> 32 ) ) )
+            {
+                boundary++;
+            }
+        }
+
+        assertEquals ( 4 * 32 + 4 * 4, boundary );
+
+        // The 5 degree polyline becomes 10 segments
+        assertEquals ( 40, layer.getNumLineVertices() );
+    }
+
+    @Test
+    public void globeProjectionDrapesOnEllipsoid()
+    {
+        ESVectorLayer layer = new ESVectorLayer();
+        double[] point = new double[3];
+        double[] geodetic = new double[3];
+
+        layer.addPolygon ( new double[] { -100, 30, -80, 30, -80, 45, -100, 45 }, null, 4 );
+        layer.setMaxSegmentAngle ( 1.0 );
+        layer.build ( ESVectorLayer.globeProjection ( ESGeodesy.WGS84_KM, 0.5 ), null );
+
+        FloatBuffer v = layer.getFillVertices();
+        double[] c = layer.getCenter();
+
+        assertTrue ( layer.getNumFillVertices() > 300 );
+
+        for ( int i = 0; i < layer.getNumFillVertices(); i++ )
+        {
+            point[0] = v.get ( i * 3 ) + c[0];
+            point[1] = v.get ( i * 3 + 1 ) + c[1];
+            point[2] = v.get ( i * 3 + 2 ) + c[2];
+
+            ESGeodesy.WGS84_KM.ecefToGeodetic ( point[0], point[1], point[2], geodetic, 0 );
+            assertEquals ( 0.5, geodetic[2], 1e-3 );
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package edu.gatech.gtri.tilebuilder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.gatech.gtri.common.ESImageReader;
+
+//
+/// \brief Command line front end of TilePyramidBuilder.
+///
+/// Usage: TileBuilder [options] <source.png|source.tga> <output.esta>
+///
+///   --tile-size N    Tile width and height in pixels (256)
+///   --root XxY       Tiles of level 0, 2x1 for a globe, 1x1 for a terrain (2x1)
+///   --levels N       Number of levels (fewest covering the source)
+///   --height         Build 16-bit height tiles from the first channel
+///   --threads N      Worker threads (available processors)
+///   --compression N  Deflate level of the tiles, 0 to 9 (6)
+//
+public class TileBuilder
+{
+    public static void main ( String[] args )
+    {
+        int tileSize = 256;
+        int rootX = 2;
+        int rootY = 1;
+        int levels = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int compression = 6;
+        boolean height = false;
+        String input = null;
+        String output = null;
+
+        try
+        {
+            for ( int i = 0; i < args.length; i++ )
+            {
+                String arg = args[i];
+
+                if ( arg.equals ( "--tile-size" ) )
+                {
+                    tileSize = Integer.parseInt ( args[++i] );
+                }
+                else if ( arg.equals ( "--root" ) )
+                {
+                    String[] xy = args[++i].split ( "x" );
+                    rootX = Integer.parseInt ( xy[0] );
+                    rootY = Integer.parseInt ( xy[1] );
+                }
+                else if ( arg.equals ( "--levels" ) )
+                {
+                    levels = Integer.parseInt ( args[++i] );
+                }
+                else if ( arg.equals ( "--height" ) )
+                {
+                    height = true;
+                }
+                else if ( arg.equals ( "--threads" ) )
+                {
+                    threads = Integer.parseInt ( args[++i] );
+                }
+                else if ( arg.equals ( "--compression" ) )
+                {
+                    compression = Integer.parseInt ( args[++i] );
+                }
+                else if ( input == null )
+                {
+                    input = arg;
+                }
+                else if ( output == null )
+                {
+                    output = arg;
+                }
+                else
+                {
+                    usage();
+                }
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            usage();
+        }
+
+        if ( input == null || output == null )
+        {
+            usage();
+        }
+
+        ForkJoinPool pool = ( threads > 1 ) ? new ForkJoinPool ( threads ) : null;
+
+        try
+        {
+            ESImageReader source = new ESImageReader ( new BufferedInputStream ( new FileInputStream ( input ), 1 << 16 ) );
+            TilePyramidBuilder builder = new TilePyramidBuilder ( tileSize, rootX, rootY, height );
+            long start = System.nanoTime();
+
+            builder.setLevels ( levels );
+            builder.setCompressionLevel ( compression );
+
+            System.out.println ( "Source " + source.getWidth() + " x " + source.getHeight() + ", " +
+                                 source.getChannels() + " channels, " + source.getBytesPerSample() * 8 + " bits" );
+
+            try
+            {
+                builder.build ( source, new File ( output ), pool );
+            }
+            finally
+            {
+                source.close();
+            }
+
+            System.out.println ( "Wrote " + builder.getTilesWritten() + " tiles, " + new File ( output ).length() +
+                                 " bytes in " + ( System.nanoTime() - start ) / 1000000 + " ms" );
+        }
+        catch ( IOException | IllegalArgumentException e )
+        {
+            System.err.println ( "TileBuilder: " + e.getMessage() );
+            System.exit ( 1 );
+        }
+        finally
+        {
+            if ( pool != null )
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static void usage()
+    {
+        System.err.println ( "Usage: TileBuilder [options] <source.png|source.tga> <output.esta>" );
+        System.err.println ( "  --tile-size N    Tile width and height in pixels (256)" );
+        System.err.println ( "  --root XxY       Tiles of level 0, 2x1 for a globe, 1x1 for a terrain (2x1)" );
+        System.err.println ( "  --levels N       Number of levels (fewest covering the source)" );
+        System.err.println ( "  --height         Build 16-bit height tiles from the first channel" );
+        System.err.println ( "  --threads N      Worker threads (available processors)" );
+        System.err.println ( "  --compression N  Deflate level of the tiles, 0 to 9 (6)" );
+        System.exit ( 2 );
+    }
+}
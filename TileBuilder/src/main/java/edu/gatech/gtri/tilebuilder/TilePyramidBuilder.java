@@ -0,0 +1,637 @@
+package edu.gatech.gtri.tilebuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+
+import edu.gatech.gtri.common.ESImageReader;
+import edu.gatech.gtri.common.ESImageWriter;
+import edu.gatech.gtri.common.ESTileArchive;
+
+//
+/// \brief Cuts an image or heightmap into the tile pyramid of an
+///    ESTileArchive.
+///
+/// The source is read one row at a time and never held in memory.  It is
+/// resampled with a tent filter, widened when shrinking, to the size of
+/// the deepest level, one band of tileSize rows at a time.  When a band of
+/// a level is complete its tiles are cut out and queued for compression,
+/// and the band is halved with a 2 x 2 box filter into the band of the
+/// level above.  Memory is therefore bounded by about twice the size of a
+/// deepest-level band, width x tileSize pixels, whatever the height of the
+/// source.
+///
+/// Images are filtered in linear light: color samples are converted from
+/// sRGB before averaging and back after, alpha is averaged as is.
+/// Heightmaps keep the first channel of the source as 16-bit gray.
+///
+/// Resampling, halving and PNG compression run on a ForkJoinPool; reading
+/// the source is the only sequential step.
+//
+public class TilePyramidBuilder
+{
+    //
+    ///
+    /// \brief Create a builder
+    /// \param tileSize Width and height of the tiles in pixels, even
+    /// \param rootTilesX, rootTilesY Tiles of level 0, e.g. 2 x 1 for a
+    ///    globe or 1 x 1 for a terrain
+    /// \param heightmap Build 16-bit gray height tiles instead of image tiles
+    //
+    public TilePyramidBuilder ( int tileSize, int rootTilesX, int rootTilesY, boolean heightmap )
+    {
+        if ( tileSize < 2 || ( tileSize & 1 ) != 0 || rootTilesX <= 0 || rootTilesY <= 0 )
+        {
+            throw new IllegalArgumentException ( "Invalid tile size or root tiles" );
+        }
+
+        mTileSize = tileSize;
+        mRootTilesX = rootTilesX;
+        mRootTilesY = rootTilesY;
+        mHeightmap = heightmap;
+    }
+
+    //
+    ///
+    /// \brief Set the number of levels, 0 to pick the fewest whose deepest
+    ///    level is at least as large as the source
+    //
+    public void setLevels ( int levels )
+    {
+        mLevels = levels;
+    }
+
+    public void setCompressionLevel ( int level )
+    {
+        mCompressionLevel = level;
+    }
+
+    public int getTilesWritten() { return mTilesWritten.get(); }
+
+    //
+    ///
+    /// \brief Fewest levels whose deepest level covers a source at one
+    ///    pixel per source pixel or more
+    //
+    public int chooseLevels ( int width, int height )
+    {
+        int levels = 1;
+
+        while ( ( ( long ) mRootTilesX * mTileSize << ( levels - 1 ) ) < width ||
+                ( ( long ) mRootTilesY * mTileSize << ( levels - 1 ) ) < height )
+        {
+            levels++;
+        }
+
+        return levels;
+    }
+
+    //
+    ///
+    /// \brief Build the pyramid of a source image into an archive
+    /// \param source Image positioned at its first row; it is read to the
+    ///    end but not closed
+    /// \param output Archive file, replaced if it exists
+    /// \param pool Pool to work on, or null to work on the calling thread
+    //
+    public void build ( ESImageReader source, File output, ForkJoinPool pool ) throws IOException
+    {
+        int levels = ( mLevels > 0 ) ? mLevels : chooseLevels ( source.getWidth(), source.getHeight() );
+        int deepest = levels - 1;
+
+        mSource = source;
+        mChannels = mHeightmap ? 1 : source.getChannels();
+        mBytesPerSample = mHeightmap ? 2 : 1;
+        mPool = pool;
+        mFailure.set ( null );
+        mTilesWritten.set ( 0 );
+
+        long bandBytes = ( ( long ) mRootTilesX * mTileSize << deepest ) * mTileSize * mChannels * mBytesPerSample;
+
+        if ( bandBytes > Integer.MAX_VALUE )
+        {
+            throw new IllegalArgumentException ( "Pyramid is too wide, use fewer levels or smaller tiles" );
+        }
+
+        mBands = new Band[levels];
+
+        for ( int level = 0; level < levels; level++ )
+        {
+            mBands[level] = new Band ( mRootTilesX * mTileSize << level, mRootTilesY << level );
+        }
+
+        Band band = mBands[deepest];
+        int width = band.mWidth;
+        int height = mRootTilesY * mTileSize << deepest;
+
+        mColumns = new Taps ( source.getWidth(), width );
+        mRows = new Taps ( source.getHeight(), height );
+
+        // Ring of source rows, large enough for the rows of one band
+        int ringRows = 1;
+
+        for ( int y = 0; y < height; y += mTileSize )
+        {
+            ringRows = Math.max ( ringRows, mRows.last ( y + mTileSize - 1 ) - mRows.first ( y ) + 1 );
+        }
+
+        mRing = new byte[Math.min ( ringRows, source.getHeight() )][source.getRowBytes()];
+        mRowsRead = 0;
+
+        int permits = ( pool != null ) ? pool.getParallelism() * 2 : 1;
+        mInFlight = new Semaphore ( permits );
+        mWriter = new ESTileArchive.Writer ( output, mTileSize, mRootTilesX, mRootTilesY, levels,
+                                             mChannels, mBytesPerSample );
+
+        try
+        {
+            for ( int y = 0; y < height; y += mTileSize )
+            {
+                // Read ahead the source rows of the band, then resample
+                while ( mRowsRead <= mRows.last ( y + mTileSize - 1 ) )
+                {
+                    if ( source.readRow ( mRing[mRowsRead % mRing.length] ) < 0 )
+                    {
+                        throw new IOException ( "Source image ended early" );
+                    }
+
+                    mRowsRead++;
+                }
+
+                run ( new ResampleTask ( band, y, 0, mTileSize ) );
+                flush ( deepest );
+            }
+        }
+        finally
+        {
+            // Wait for the last tiles
+            mInFlight.acquireUninterruptibly ( permits );
+            mWriter.close();
+            mBands = null;
+            mRing = null;
+        }
+
+        checkFailure();
+    }
+
+    // A complete band: queue its tiles and halve it into the level above
+    private void flush ( int level ) throws IOException
+    {
+        Band band = mBands[level];
+
+        for ( int x = 0; x < band.mWidth / mTileSize; x++ )
+        {
+            emitTile ( level, x, band );
+        }
+
+        band.mTileRow++;
+        band.mRowsFilled = 0;
+
+        if ( level > 0 )
+        {
+            Band parent = mBands[level - 1];
+
+            run ( new HalveTask ( band, parent, parent.mRowsFilled, 0, mTileSize / 2 ) );
+            parent.mRowsFilled += mTileSize / 2;
+
+            if ( parent.mRowsFilled == mTileSize )
+            {
+                flush ( level - 1 );
+            }
+        }
+    }
+
+    private void emitTile ( final int level, int x, Band band ) throws IOException
+    {
+        final int pixelBytes = mChannels * mBytesPerSample;
+        final int tileRowBytes = mTileSize * pixelBytes;
+        final byte[] pixels = new byte[tileRowBytes * mTileSize];
+        boolean bottomUp = mSource.isBottomUp();
+        final int tileX = x;
+        final int tileY = bottomUp ? band.mTilesY - 1 - band.mTileRow : band.mTileRow;
+
+        // Rows arrive bottom first from a bottom-up source
+        for ( int r = 0; r < mTileSize; r++ )
+        {
+            int dst = ( bottomUp ? mTileSize - 1 - r : r ) * tileRowBytes;
+            System.arraycopy ( band.mPixels, r * band.mRowBytes + x * tileRowBytes, pixels, dst, tileRowBytes );
+        }
+
+        mInFlight.acquireUninterruptibly();
+        checkFailure();
+
+        Runnable encode = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    byte[] png = ESImageWriter.encodePNG ( pixels, mTileSize, mTileSize, mChannels,
+                                                          mBytesPerSample, mCompressionLevel );
+
+                    mWriter.writeTile ( level, tileX, tileY, png, png.length );
+                    mTilesWritten.incrementAndGet();
+                }
+                catch ( Throwable t )
+                {
+                    mFailure.compareAndSet ( null, t );
+                }
+                finally
+                {
+                    mInFlight.release();
+                }
+            }
+        };
+
+        if ( mPool != null )
+        {
+            mPool.execute ( encode );
+        }
+        else
+        {
+            encode.run();
+        }
+    }
+
+    private void checkFailure() throws IOException
+    {
+        Throwable failure = mFailure.get();
+
+        if ( failure != null )
+        {
+            throw new IOException ( "Failed to write a tile", failure );
+        }
+    }
+
+    private void run ( RecursiveAction task )
+    {
+        if ( mPool != null )
+        {
+            mPool.invoke ( task );
+        }
+        else
+        {
+            task.invoke();
+        }
+    }
+
+    // Decode a source sample to a linear value
+    private float decode ( byte[] row, int x, int channel )
+    {
+        int sample = mSource.getSample ( row, x, channel );
+
+        if ( mHeightmap )
+        {
+            return sample;
+        }
+
+        return isAlpha ( channel ) ? sample * ( 1.0f / 65535.0f ) : SRGB_TO_LINEAR_16[sample];
+    }
+
+    // Encode a linear value into a band
+    private void encode ( float value, byte[] pixels, int offset, int channel )
+    {
+        if ( mHeightmap )
+        {
+            int height = Math.max ( 0, Math.min ( 65535, Math.round ( value ) ) );
+
+            pixels[offset] = ( byte ) ( height >> 8 );
+            pixels[offset + 1] = ( byte ) height;
+        }
+        else if ( isAlpha ( channel ) )
+        {
+            pixels[offset] = ( byte ) Math.max ( 0, Math.min ( 255, Math.round ( value * 255.0f ) ) );
+        }
+        else
+        {
+            int index = ( int ) ( value * ( LINEAR_TO_SRGB.length - 1 ) + 0.5f );
+
+            pixels[offset] = LINEAR_TO_SRGB[Math.max ( 0, Math.min ( LINEAR_TO_SRGB.length - 1, index ) )];
+        }
+    }
+
+    private boolean isAlpha ( int channel )
+    {
+        return ( mChannels == 2 || mChannels == 4 ) && channel == mChannels - 1;
+    }
+
+    ///
+    // Resample rows of the deepest band from the source ring
+    //
+    private class ResampleTask extends RecursiveAction
+    {
+        ResampleTask ( Band band, int y0, int start, int end )
+        {
+            mBand = band;
+            mY0 = y0;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mEnd - mStart > ROWS_PER_TASK )
+            {
+                int mid = ( mStart + mEnd ) >>> 1;
+                invokeAll ( new ResampleTask ( mBand, mY0, mStart, mid ),
+                            new ResampleTask ( mBand, mY0, mid, mEnd ) );
+                return;
+            }
+
+            // Filter the source rows of these band rows across, once each
+            int first = mRows.first ( mY0 + mStart );
+            int last = mRows.last ( mY0 + mEnd - 1 );
+            int width = mBand.mWidth;
+            int srcWidth = mSource.getWidth();
+            float[][] across = new float[last - first + 1][width * mChannels];
+            float[] decoded = new float[srcWidth];
+
+            for ( int s = first; s <= last; s++ )
+            {
+                byte[] row = mRing[s % mRing.length];
+                float[] out = across[s - first];
+
+                for ( int c = 0; c < mChannels; c++ )
+                {
+                    for ( int x = 0; x < srcWidth; x++ )
+                    {
+                        decoded[x] = decode ( row, x, c );
+                    }
+
+                    for ( int x = 0; x < width; x++ )
+                    {
+                        float sum = 0.0f;
+
+                        for ( int t = mColumns.mCount[x] - 1; t >= 0; t-- )
+                        {
+                            int tap = x * mColumns.mMaxTaps + t;
+                            sum += mColumns.mWeight[tap] * decoded[mColumns.mIndex[tap]];
+                        }
+
+                        out[x * mChannels + c] = sum;
+                    }
+                }
+            }
+
+            // Then down
+            for ( int r = mStart; r < mEnd; r++ )
+            {
+                int y = mY0 + r;
+                int offset = r * mBand.mRowBytes;
+
+                for ( int i = 0; i < width * mChannels; i++ )
+                {
+                    float sum = 0.0f;
+
+                    for ( int t = mRows.mCount[y] - 1; t >= 0; t-- )
+                    {
+                        int tap = y * mRows.mMaxTaps + t;
+                        sum += mRows.mWeight[tap] * across[mRows.mIndex[tap] - first][i];
+                    }
+
+                    encode ( sum, mBand.mPixels, offset + i * mBytesPerSample, i % mChannels );
+                }
+            }
+        }
+
+        private final Band mBand;
+        private final int mY0;
+        private final int mStart;
+        private final int mEnd;
+    }
+
+    ///
+    // Halve rows of a complete band into rows of the band above
+    //
+    private class HalveTask extends RecursiveAction
+    {
+        HalveTask ( Band child, Band parent, int parentRow, int start, int end )
+        {
+            mChild = child;
+            mParent = parent;
+            mParentRow = parentRow;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( mEnd - mStart > ROWS_PER_TASK )
+            {
+                int mid = ( mStart + mEnd ) >>> 1;
+                invokeAll ( new HalveTask ( mChild, mParent, mParentRow, mStart, mid ),
+                            new HalveTask ( mChild, mParent, mParentRow, mid, mEnd ) );
+                return;
+            }
+
+            byte[] src = mChild.mPixels;
+            byte[] dst = mParent.mPixels;
+            int bps = mBytesPerSample;
+            int pixelBytes = mChannels * bps;
+
+            for ( int r = mStart; r < mEnd; r++ )
+            {
+                int row0 = 2 * r * mChild.mRowBytes;
+                int row1 = row0 + mChild.mRowBytes;
+                int out = ( mParentRow + r ) * mParent.mRowBytes;
+
+                for ( int x = 0; x < mParent.mWidth; x++ )
+                {
+                    for ( int c = 0; c < mChannels; c++ )
+                    {
+                        int a = row0 + 2 * x * pixelBytes + c * bps;
+                        int b = row1 + 2 * x * pixelBytes + c * bps;
+                        int d = out + x * pixelBytes + c * bps;
+
+                        if ( mHeightmap )
+                        {
+                            int sum = read16 ( src, a ) + read16 ( src, a + pixelBytes ) +
+                                      read16 ( src, b ) + read16 ( src, b + pixelBytes );
+
+                            dst[d] = ( byte ) ( ( sum + 2 ) >> 10 );
+                            dst[d + 1] = ( byte ) ( ( sum + 2 ) >> 2 );
+                        }
+                        else if ( isAlpha ( c ) )
+                        {
+                            int sum = ( src[a] & 0xFF ) + ( src[a + pixelBytes] & 0xFF ) +
+                                      ( src[b] & 0xFF ) + ( src[b + pixelBytes] & 0xFF );
+
+                            dst[d] = ( byte ) ( ( sum + 2 ) >> 2 );
+                        }
+                        else
+                        {
+                            float sum = SRGB_TO_LINEAR[src[a] & 0xFF] + SRGB_TO_LINEAR[src[a + pixelBytes] & 0xFF] +
+                                        SRGB_TO_LINEAR[src[b] & 0xFF] + SRGB_TO_LINEAR[src[b + pixelBytes] & 0xFF];
+
+                            encode ( sum * 0.25f, dst, d, c );
+                        }
+                    }
+                }
+            }
+        }
+
+        private final Band mChild;
+        private final Band mParent;
+        private final int mParentRow;
+        private final int mStart;
+        private final int mEnd;
+    }
+
+    private static int read16 ( byte[] b, int offset )
+    {
+        return ( ( b[offset] & 0xFF ) << 8 ) | ( b[offset + 1] & 0xFF );
+    }
+
+    ///
+    // One row of tiles of a level, filled top to bottom
+    //
+    private class Band
+    {
+        Band ( int width, int tilesY )
+        {
+            mWidth = width;
+            mTilesY = tilesY;
+            mRowBytes = width * mChannels * mBytesPerSample;
+            mPixels = new byte[mRowBytes * mTileSize];
+        }
+
+        final int mWidth;
+        final int mTilesY;
+        final int mRowBytes;
+        final byte[] mPixels;
+        int mRowsFilled;
+        int mTileRow;
+    }
+
+    ///
+    // Tent filter taps resampling one axis from srcSize to dstSize samples,
+    // the tent widened to the source spacing when shrinking
+    //
+    private static class Taps
+    {
+        Taps ( int srcSize, int dstSize )
+        {
+            double scale = ( double ) srcSize / dstSize;
+            double radius = Math.max ( 1.0, scale );
+
+            mMaxTaps = 2 * ( int ) Math.ceil ( radius ) + 1;
+            mIndex = new int[dstSize * mMaxTaps];
+            mWeight = new float[dstSize * mMaxTaps];
+            mCount = new int[dstSize];
+
+            for ( int i = 0; i < dstSize; i++ )
+            {
+                double center = ( i + 0.5 ) * scale - 0.5;
+                int lo = ( int ) Math.ceil ( center - radius );
+                int hi = ( int ) Math.floor ( center + radius );
+                double total = 0.0;
+                int base = i * mMaxTaps;
+                int count = 0;
+
+                for ( int k = lo; k <= hi; k++ )
+                {
+                    double w = 1.0 - Math.abs ( k - center ) / radius;
+
+                    if ( w <= 0.0 )
+                    {
+                        continue;
+                    }
+
+                    // Samples past the edges repeat the edge
+                    int index = Math.max ( 0, Math.min ( srcSize - 1, k ) );
+
+                    if ( count > 0 && mIndex[base + count - 1] == index )
+                    {
+                        mWeight[base + count - 1] += ( float ) w;
+                    }
+                    else
+                    {
+                        mIndex[base + count] = index;
+                        mWeight[base + count] = ( float ) w;
+                        count++;
+                    }
+
+                    total += w;
+                }
+
+                for ( int t = 0; t < count; t++ )
+                {
+                    mWeight[base + t] /= total;
+                }
+
+                mCount[i] = count;
+            }
+        }
+
+        // First and last source sample of a destination sample
+        int first ( int i ) { return mIndex[i * mMaxTaps]; }
+        int last ( int i ) { return mIndex[i * mMaxTaps + mCount[i] - 1]; }
+
+        final int mMaxTaps;
+        final int[] mIndex;
+        final float[] mWeight;
+        final int[] mCount;
+    }
+
+    // Member variables
+    private final int mTileSize;
+    private final int mRootTilesX;
+    private final int mRootTilesY;
+    private final boolean mHeightmap;
+    private int mLevels;
+    private int mCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    // State of a build
+    private ESImageReader mSource;
+    private int mChannels;
+    private int mBytesPerSample;
+    private ForkJoinPool mPool;
+    private Band[] mBands;
+    private Taps mColumns;
+    private Taps mRows;
+    private byte[][] mRing;
+    private int mRowsRead;
+    private ESTileArchive.Writer mWriter;
+    private Semaphore mInFlight;
+    private final AtomicReference<Throwable> mFailure = new AtomicReference<Throwable>();
+    private final AtomicInteger mTilesWritten = new AtomicInteger();
+
+    // Some constants
+    private static final int ROWS_PER_TASK = 8;
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+    private static final float[] SRGB_TO_LINEAR_16 = new float[65536];
+    private static final byte[] LINEAR_TO_SRGB = new byte[16384];
+
+    static
+    {
+        for ( int i = 0; i < SRGB_TO_LINEAR_16.length; i++ )
+        {
+            SRGB_TO_LINEAR_16[i] = ( float ) toLinear ( i / 65535.0 );
+        }
+
+        for ( int i = 0; i < SRGB_TO_LINEAR.length; i++ )
+        {
+            SRGB_TO_LINEAR[i] = SRGB_TO_LINEAR_16[i * 257];
+        }
+
+        for ( int i = 0; i < LINEAR_TO_SRGB.length; i++ )
+        {
+            double linear = ( double ) i / ( LINEAR_TO_SRGB.length - 1 );
+            double srgb = ( linear <= 0.0031308 ) ? linear * 12.92 : 1.055 * Math.pow ( linear, 1.0 / 2.4 ) - 0.055;
+
+            LINEAR_TO_SRGB[i] = ( byte ) Math.round ( srgb * 255.0 );
+        }
+    }
+
+    private static double toLinear ( double srgb )
+    {
+        return ( srgb <= 0.04045 ) ? srgb / 12.92 : Math.pow ( ( srgb + 0.055 ) / 1.055, 2.4 );
+    }
+}
@@ -0,0 +1,253 @@
+package edu.gatech.gtri.tilebuilder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.gatech.gtri.common.ESImageReader;
+import edu.gatech.gtri.common.ESImageWriter;
+import edu.gatech.gtri.common.ESTileArchive;
+
+import static org.junit.Assert.*;
+
+public class TilePyramidBuilderTest
+{
+    private static ESTileArchive build ( TilePyramidBuilder builder, byte[] image, ForkJoinPool pool ) throws IOException
+    {
+        File file = File.createTempFile ( "pyramid", ".esta" );
+
+        file.deleteOnExit();
+        builder.build ( new ESImageReader ( new ByteArrayInputStream ( image ) ), file, pool );
+        return new ESTileArchive ( file );
+    }
+
+    // Decoded pixels of a tile
+    private static byte[] tile ( ESTileArchive archive, int level, int x, int y ) throws IOException
+    {
+        ESImageReader reader = new ESImageReader ( new ByteArrayInputStream ( archive.readTile ( level, x, y ) ) );
+        byte[] pixels = new byte[reader.getRowBytes() * reader.getHeight()];
+        byte[] row = new byte[reader.getRowBytes()];
+        int r;
+
+        assertEquals ( archive.getTileSize(), reader.getWidth() );
+        assertEquals ( archive.getChannels(), reader.getChannels() );
+
+        while ( ( r = reader.readRow ( row ) ) >= 0 )
+        {
+            System.arraycopy ( row, 0, pixels, r * row.length, row.length );
+        }
+
+        return pixels;
+    }
+
+    private static byte[] randomPixels ( int count, long seed )
+    {
+        byte[] pixels = new byte[count];
+        new Random ( seed ).nextBytes ( pixels );
+        return pixels;
+    }
+
+    private static double toLinear ( int srgb )
+    {
+        double s = srgb / 255.0;
+        return ( s <= 0.04045 ) ? s / 12.92 : Math.pow ( ( s + 0.055 ) / 1.055, 2.4 );
+    }
+
+    private static double toSRGB ( double linear )
+    {
+        return 255.0 * ( ( linear <= 0.0031308 ) ? linear * 12.92 : 1.055 * Math.pow ( linear, 1.0 / 2.4 ) - 0.055 );
+    }
+
+    @Test
+    public void deepestLevelKeepsSourcePixelsAndCoarserLevelsAverageInLinearLight() throws IOException
+    {
+        int tileSize = 16;
+        byte[] pixels = randomPixels ( 64 * 32 * 3, 1 );
+        byte[] png = ESImageWriter.encodePNG ( pixels, 64, 32, 3, 1, 6 );
+        TilePyramidBuilder builder = new TilePyramidBuilder ( tileSize, 2, 1, false );
+        ESTileArchive archive = build ( builder, png, null );
+
+        assertEquals ( 2, archive.getNumLevels() );
+        assertEquals ( 2 + 8, builder.getTilesWritten() );
+
+        // Level 1 is the source, cut into 4 x 2 tiles
+        for ( int ty = 0; ty < 2; ty++ )
+        {
+            for ( int tx = 0; tx < 4; tx++ )
+            {
+                byte[] t = tile ( archive, 1, tx, ty );
+
+                for ( int y = 0; y < tileSize; y++ )
+                {
+                    for ( int i = 0; i < tileSize * 3; i++ )
+                    {
+                        int src = ( ( ty * tileSize + y ) * 64 + tx * tileSize ) * 3 + i;
+                        assertEquals ( pixels[src], t[y * tileSize * 3 + i] );
+                    }
+                }
+            }
+        }
+
+        // Level 0 averages 2 x 2 pixels in linear light
+        byte[] t = tile ( archive, 0, 1, 0 );
+
+        for ( int y = 0; y < tileSize; y++ )
+        {
+            for ( int x = 0; x < tileSize; x++ )
+            {
+                for ( int c = 0; c < 3; c++ )
+                {
+                    double sum = 0.0;
+
+                    for ( int k = 0; k < 4; k++ )
+                    {
+                        int sx = 32 + 2 * x + ( k & 1 ), sy = 2 * y + ( k >> 1 );
+                        sum += toLinear ( pixels[( sy * 64 + sx ) * 3 + c] & 0xFF );
+                    }
+
+                    assertEquals ( toSRGB ( sum / 4.0 ), t[( y * tileSize + x ) * 3 + c] & 0xFF, 0.6 );
+                }
+            }
+        }
+
+        archive.close();
+    }
+
+    @Test
+    public void heightsAreAveragedExactly() throws IOException
+    {
+        byte[] pixels = randomPixels ( 32 * 32 * 2, 2 );
+        byte[] png = ESImageWriter.encodePNG ( pixels, 32, 32, 1, 2, 6 );
+        ESTileArchive archive = build ( new TilePyramidBuilder ( 8, 1, 1, true ), png, null );
+
+        assertEquals ( 3, archive.getNumLevels() );
+        assertEquals ( 2, archive.getBytesPerSample() );
+
+        byte[] level1 = new byte[16 * 16 * 2];
+
+        for ( int ty = 0; ty < 2; ty++ )
+        {
+            for ( int tx = 0; tx < 2; tx++ )
+            {
+                byte[] t = tile ( archive, 1, tx, ty );
+
+                for ( int y = 0; y < 8; y++ )
+                {
+                    System.arraycopy ( t, y * 16, level1, ( ( ty * 8 + y ) * 16 + tx * 8 ) * 2, 16 );
+                }
+            }
+        }
+
+        for ( int y = 0; y < 16; y++ )
+        {
+            for ( int x = 0; x < 16; x++ )
+            {
+                int sum = 0;
+
+                for ( int k = 0; k < 4; k++ )
+                {
+                    int i = ( ( 2 * y + ( k >> 1 ) ) * 32 + 2 * x + ( k & 1 ) ) * 2;
+                    sum += ( ( pixels[i] & 0xFF ) << 8 ) | ( pixels[i + 1] & 0xFF );
+                }
+
+                int i = ( y * 16 + x ) * 2;
+                assertEquals ( ( sum + 2 ) >> 2, ( ( level1[i] & 0xFF ) << 8 ) | ( level1[i + 1] & 0xFF ) );
+            }
+        }
+
+        archive.close();
+    }
+
+    @Test
+    public void parallelBuildMatchesSequential() throws IOException
+    {
+        byte[] pixels = randomPixels ( 100 * 45 * 4, 3 );
+        byte[] png = ESImageWriter.encodePNG ( pixels, 100, 45, 4, 1, 6 );
+        ForkJoinPool pool = new ForkJoinPool ( 4 );
+        ESTileArchive sequential = build ( new TilePyramidBuilder ( 16, 2, 1, false ), png, null );
+        ESTileArchive parallel = build ( new TilePyramidBuilder ( 16, 2, 1, false ), png, pool );
+
+        pool.shutdown();
+
+        // A 100 x 45 source needs 128 x 64 pixels at the deepest level
+        assertEquals ( 3, sequential.getNumLevels() );
+
+        for ( int level = 0; level < 3; level++ )
+        {
+            for ( int y = 0; y < sequential.getTilesY ( level ); y++ )
+            {
+                for ( int x = 0; x < sequential.getTilesX ( level ); x++ )
+                {
+                    assertArrayEquals ( sequential.readTile ( level, x, y ), parallel.readTile ( level, x, y ) );
+                }
+            }
+        }
+
+        sequential.close();
+        parallel.close();
+    }
+
+    @Test
+    public void bottomUpSourceGivesTheSameTiles() throws IOException
+    {
+        int width = 48, height = 24;
+        byte[] pixels = randomPixels ( width * height, 4 );
+        byte[] tga = new byte[18 + pixels.length];
+
+        // Uncompressed bottom-up gray TGA
+        tga[2] = 3;
+        tga[12] = ( byte ) width;
+        tga[14] = ( byte ) height;
+        tga[16] = 8;
+
+        for ( int y = 0; y < height; y++ )
+        {
+            System.arraycopy ( pixels, y * width, tga, 18 + ( height - 1 - y ) * width, width );
+        }
+
+        byte[] png = ESImageWriter.encodePNG ( pixels, width, height, 1, 1, 6 );
+        ESTileArchive fromPNG = build ( new TilePyramidBuilder ( 8, 2, 1, false ), png, null );
+        ESTileArchive fromTGA = build ( new TilePyramidBuilder ( 8, 2, 1, false ), tga, null );
+
+        for ( int level = 0; level < fromPNG.getNumLevels(); level++ )
+        {
+            for ( int y = 0; y < fromPNG.getTilesY ( level ); y++ )
+            {
+                for ( int x = 0; x < fromPNG.getTilesX ( level ); x++ )
+                {
+                    assertArrayEquals ( tile ( fromPNG, level, x, y ), tile ( fromTGA, level, x, y ) );
+                }
+            }
+        }
+
+        fromPNG.close();
+        fromTGA.close();
+    }
+
+    @Test
+    public void shrinkingFilterKeepsFlatImagesFlat() throws IOException
+    {
+        byte[] pixels = new byte[300 * 150 * 3];
+
+        Arrays.fill ( pixels, ( byte ) 200 );
+
+        TilePyramidBuilder builder = new TilePyramidBuilder ( 32, 2, 1, false );
+
+        // Two levels put a 300 x 150 source on 128 x 64 pixels
+        builder.setLevels ( 2 );
+
+        ESTileArchive archive = build ( builder, ESImageWriter.encodePNG ( pixels, 300, 150, 3, 1, 6 ), null );
+
+        for ( byte b : tile ( archive, 1, 3, 1 ) )
+        {
+            assertEquals ( 200, b & 0xFF );
+        }
+
+        archive.close();
+    }
+}